@@ -24,10 +24,12 @@ import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.SortedMap;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.TreeMap;
 import java.util.Date;
@@ -40,7 +42,8 @@ import java.text.SimpleDateFormat;
 
 
 /**
- * Generates source code for JFlex Unicode character property handling.
+ * Generates source code and data resources for JFlex Unicode character
+ * property handling.
  * 
  * @goal generate-unicode-properties
  * @phase generate-sources
@@ -74,6 +77,23 @@ public class JFlexUnicodeMojo extends AbstractMojo {
    */
   private File outputDirectory = null;
 
+  /**
+   * Name of the directory into which the binary Unicode data resources,
+   * one per Unicode version, will be generated.
+   *
+   * @parameter expression="${basedir}/src/main/resources/jflex/unicode/data"
+   */
+  private File resourceDirectory = null;
+
+  /**
+   * A local copy of <a href="http://www.unicode.org/Public/">Unicode.org</a>
+   * with the same directory layout, to read the Unicode data from instead of
+   * downloading it. If not set, the data is downloaded.
+   *
+   * @parameter expression="${ucdDirectory}"
+   */
+  private File ucdDirectory = null;
+
   /**
    * Maps validated major.minor unicode versions to information about the
    * version.
@@ -99,7 +119,8 @@ public class JFlexUnicodeMojo extends AbstractMojo {
   /**
    * <ol>
    *   <li>Collects and validates Unicode versions to support from
-   *       <a href="http://www.unicode.org/Public/">Unicode.org</a>;
+   *       <a href="http://www.unicode.org/Public/">Unicode.org</a>, or
+   *       from a local copy of it (see {@link #ucdDirectory});
    *       finds the most recent updates for non-beta versions, so that
    *       JFlex scanner specs can specify major or major.minor Unicode
    *       versions as an optional parameter to the %unicode option.</li>
@@ -134,11 +155,10 @@ public class JFlexUnicodeMojo extends AbstractMojo {
    *           of Unicode to that supported by the JRE, for JFlex
    *           specifications that have parameter-less %unicode
    *           options.</li>
-   *       <li>Has per-Unicode-version compressed tables for each
-   *           property value, which will be unpacked by the
-   *           constructor for the selected Unicode version.</li>
-   *       <li>Binds the Unicode-version-specific unpacked tables
-   *           to code point ranges for named property values.</li>
+   *       <li>Reads the per-Unicode-version binary resource for the
+   *           selected Unicode version, unpacking the compressed
+   *           code point ranges of each property value on first
+   *           request.</li>
    *       <li>Binds property value aliases, e.g. \p{Letter} for \p{L} (which
    *           is [\p{Lu}\p{Ll}\p{Lt}\p{Lm}\p{Lo}] ) - see
    *           <a href="http://www.unicode.org/Public/UNIDATA/UCD.html#General_Category_Values">
@@ -146,11 +166,13 @@ public class JFlexUnicodeMojo extends AbstractMojo {
    *       <li>Has Unicode-version-specific method maximumCodePoint():int.</li>
    *     </ol>
    *   </li>
+   *   <li>Writes the binary resource Unicode_X_Y.bin for each version
+   *       (see {@link UnicodeDataWriter}).</li>
    * </ol>
    */
   public void execute() throws MojoExecutionException, MojoFailureException {
     try {
-      getLog().info("Downloading Unicode data from " + UNICODE_DOT_ORG_URL + "\n");
+      getLog().info("Reading Unicode data from " + getBaseURL() + "\n");
       collectUnicodeVersions();
       emitUnicodeProperties();
       emitVersionedUnicodeData();
@@ -172,7 +194,7 @@ public class JFlexUnicodeMojo extends AbstractMojo {
     SortedMap<String,SortedMap<Integer,String>> allUnicodeVersions
       = new TreeMap<String,SortedMap<Integer,String>>();
 
-    URL unicodeURL = new URL(UNICODE_DOT_ORG_URL);
+    URL unicodeURL = getBaseURL();
     Matcher matcher
       = UNICODE_VERSION_LINK_PATTERN.matcher(getPageContent(unicodeURL));
     while (matcher.find()) {
@@ -219,7 +241,7 @@ public class JFlexUnicodeMojo extends AbstractMojo {
     // etc.  The first relative URL with a non-beta UnicodeData-X.X.X.txt
     // will be used.
     for (String relativeURL : relativeURLs.values()) {
-      URL baseURL = new URL(UNICODE_DOT_ORG_URL + relativeURL);
+      URL baseURL = new URL(getBaseURL(), relativeURL);
       String versionedDirectoryListing = getPageContent(baseURL);
 
       // As of version 4.1.0, UnicodeData.txt lives in the ucd/ subdir.
@@ -267,13 +289,44 @@ public class JFlexUnicodeMojo extends AbstractMojo {
   }
 
   /**
-   * Fetches the contents of the page at the given URL.
+   * Returns the top-level directory URL from which to read Unicode data:
+   * {@link #ucdDirectory}, if set, and {@value #UNICODE_DOT_ORG_URL}
+   * otherwise.
+   *
+   * @return The top-level directory URL
+   * @throws IOException If {@link #ucdDirectory} is not a directory
+   */
+  private URL getBaseURL() throws IOException {
+    if (null == ucdDirectory) {
+      return new URL(UNICODE_DOT_ORG_URL);
+    }
+    if ( ! ucdDirectory.isDirectory()) {
+      throw new IOException("Not a directory: " + ucdDirectory);
+    }
+    return ucdDirectory.toURI().toURL();
+  }
+
+  /**
+   * Fetches the contents of the page at the given URL. For local
+   * directories, returns a listing in the form of the directory
+   * listing pages on unicode.org.
    *
    * @param url The location of the page to fetch.
    * @return The contents of the fetched page
    * @throws IOException If there is an error fetching the given page.
    */
   private String getPageContent(URL url) throws IOException {
+    if ("file".equals(url.getProtocol())) {
+      File file;
+      try {
+        file = new File(url.toURI());
+      } catch (URISyntaxException e) {
+        throw new IOException("Invalid file URL: " + url);
+      }
+      if (file.isDirectory()) {
+        return getDirectoryListing(file);
+      }
+    }
     InputStreamReader reader = new InputStreamReader(url.openStream(), "UTF-8");
     StringBuilder builder = new StringBuilder();
     char[] buf = new char[BUF_SIZE];
@@ -284,6 +337,29 @@ public class JFlexUnicodeMojo extends AbstractMojo {
     return builder.toString();
   }
 
+  /**
+   * Lists the files and sub-directories of a local directory as links, in
+   * the form matched by {@link #DIRECTORY_LINK_PATTERN},
+   * {@link #UNICODE_VERSION_LINK_PATTERN} and
+   * {@link DataFileType#getFileName(String)}.
+   *
+   * @param directory The directory to list
+   * @return The listing
+   */
+  private String getDirectoryListing(File directory) {
+    String[] names = directory.list();
+    Arrays.sort(names);
+    StringBuilder builder = new StringBuilder();
+    for (String name : names) {
+      builder.append("<a href=\"").append(name);
+      if (new File(directory, name).isDirectory()) {
+        builder.append('/');
+      }
+      builder.append("\">").append(name).append("</a>\n");
+    }
+    return builder.toString();
+  }
+
   /**
    * Writes out UnicodeProperties.java based on data fetched from unicode.org.
    *
@@ -325,8 +401,11 @@ public class JFlexUnicodeMojo extends AbstractMojo {
   }
 
   private void emitVersionedUnicodeData() throws IOException {
+    if ( ! resourceDirectory.isDirectory() && ! resourceDirectory.mkdirs()) {
+      throw new IOException("Cannot create directory " + resourceDirectory);
+    }
     for (UnicodeVersion unicodeVersion : unicodeVersions.values()) {
-      unicodeVersion.emitToDir(new File(outputDirectory, "data"));
+      unicodeVersion.emitToDir(resourceDirectory, getLog());
     }
   }
 
@@ -354,17 +433,12 @@ public class JFlexUnicodeMojo extends AbstractMojo {
           .append("\") || ");
       }
       UnicodeVersion unicodeVersion = unicodeVersions.get(majorMinorVersion);
-      String versionSuffix = unicodeVersion.getVersionSuffix();
       builder.append("version.equals(\"").append(majorMinorVersion)
         .append("\") || version.equals(\"")
         .append(unicodeVersion.majorMinorUpdateVersion).append("\")) {\n")
-        .append("      bind(Unicode").append(versionSuffix).append(".propertyValues")
-        .append(", Unicode").append(versionSuffix).append(".intervals")
-        .append(", Unicode").append(versionSuffix).append(".propertyValueAliases")
-        .append(",\n         Unicode").append(versionSuffix).append(".maximumCodePoint")
-        .append(", Unicode").append(versionSuffix).append(".caselessMatchPartitions")
-        .append(", Unicode").append(versionSuffix).append(".caselessMatchPartitionSize")
-        .append(");\n");
+        .append("      bind(\"").append(majorMinorVersion).append("\", \"")
+        .append("Unicode").append(unicodeVersion.getVersionSuffix())
+        .append(".bin\");\n");
     }
     builder.append("    } else {\n")
       .append("      throw new UnsupportedUnicodeVersionException();\n")
@@ -0,0 +1,196 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex Unicode plugin                                                    *
+ * Copyright (c) 2008 Steve Rowe <steve_rowe@users.sf.net>                 *
+ *                                                                         *
+ *                                                                         *
+ * This program is free software; you can redistribute it and/or modify    *
+ * it under the terms of the GNU General Public License. See the file      *
+ * COPYRIGHT for more information.                                         *
+ *                                                                         *
+ * This program is distributed in the hope that it will be useful,         *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License along *
+ * with this program; if not, write to the Free Software Foundation, Inc., *
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA                 *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+
+/**
+ * Writes the Unicode data of one version as a binary resource, read by
+ * UnicodeProperties in the generated JFlex sources.
+ * <p/>
+ * All numbers are unsigned variable length integers (7 bits per byte,
+ * least significant group first, high bit set on all but the last byte);
+ * strings are written with {@link DataOutputStream#writeUTF(String)}.
+ * <pre>
+ *   int     {@value #MAGIC}
+ *   number  maximum code point
+ *   number  count of property values, then per property value in sorted
+ *           order: name (string), number of its run
+ *   number  count of aliases, then per alias in sorted order:
+ *           alias (string), target property value (string)
+ *   number  count of runs, then the length in bytes of each run
+ *   bytes   the runs
+ *   number  count of caseless match partitions, then per partition:
+ *           count of members, members in ascending order, each as the
+ *           difference to the previous member (the first to 0)
+ * </pre>
+ * A run is the list of code point intervals of a property value, each as
+ * the zigzag encoded difference of its start to the end of the previous
+ * interval plus one (the first to 0), then its length minus one. Equal
+ * runs are written only once, so property values with the same code
+ * points (e.g. a script and its block) share their run.
+ */
+class UnicodeDataWriter {
+
+  /** The first four bytes of the resource: "JFU" and the format version */
+  static final int MAGIC = 0x4A465501;
+
+  private final int maximumCodePoint;
+
+  /** The number of the run of each property value, sorted by name */
+  private final SortedMap<String,Integer> propertyValues;
+
+  private final SortedMap<String,String> aliases;
+
+  private final Collection<? extends Collection<Integer>> partitions;
+
+  /** The encoded runs, without duplicates */
+  private final List<byte[]> runs = new ArrayList<byte[]>();
+
+  /** Maps the contents of each encoded run to its number */
+  private final Map<String,Integer> runNumbers = new HashMap<String,Integer>();
+
+
+  /**
+   * @param maximumCodePoint The greatest code point of the version
+   * @param intervals The code point intervals of each property value, as
+   *  alternating start and end points
+   * @param aliases Maps property value aliases to their target property values
+   * @param partitions The caseless match partitions, each sorted
+   */
+  UnicodeDataWriter(int maximumCodePoint, SortedMap<String,int[]> intervals,
+                    SortedMap<String,String> aliases,
+                    Collection<? extends Collection<Integer>> partitions) {
+    this.maximumCodePoint = maximumCodePoint;
+    this.aliases = aliases;
+    this.partitions = partitions;
+    this.propertyValues = new TreeMap<String,Integer>();
+    for (SortedMap.Entry<String,int[]> entry : intervals.entrySet()) {
+      propertyValues.put(entry.getKey(), addRun(encodeRun(entry.getValue())));
+    }
+  }
+
+  /**
+   * @return the number of property values
+   */
+  int getNumPropertyValues() {
+    return propertyValues.size();
+  }
+
+  /**
+   * @return the number of distinct runs
+   */
+  int getNumRuns() {
+    return runs.size();
+  }
+
+  /**
+   * Writes the resource.
+   *
+   * @param stream Where to write the resource; not closed.
+   * @throws IOException If there is an error writing
+   */
+  void write(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(MAGIC);
+    writeNumber(out, maximumCodePoint);
+
+    writeNumber(out, propertyValues.size());
+    for (SortedMap.Entry<String,Integer> entry : propertyValues.entrySet()) {
+      out.writeUTF(entry.getKey());
+      writeNumber(out, entry.getValue());
+    }
+
+    writeNumber(out, aliases.size());
+    for (SortedMap.Entry<String,String> entry : aliases.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeUTF(entry.getValue());
+    }
+
+    writeNumber(out, runs.size());
+    for (byte[] run : runs) {
+      writeNumber(out, run.length);
+    }
+    for (byte[] run : runs) {
+      out.write(run);
+    }
+
+    writeNumber(out, partitions.size());
+    for (Collection<Integer> partition : partitions) {
+      writeNumber(out, partition.size());
+      int previous = 0;
+      for (int c : partition) {
+        writeNumber(out, c - previous);
+        previous = c;
+      }
+    }
+    out.flush();
+  }
+
+  private int addRun(byte[] run) {
+    String key = Arrays.toString(run);
+    Integer number = runNumbers.get(key);
+    if (null == number) {
+      number = runs.size();
+      runs.add(run);
+      runNumbers.put(key, number);
+    }
+    return number;
+  }
+
+  private static byte[] encodeRun(int[] intervals) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      int next = 0;
+      for (int n = 0 ; n < intervals.length ; n += 2) {
+        int delta = intervals[n] - next;
+        writeNumber(out, (delta << 1) ^ (delta >> 31));
+        writeNumber(out, intervals[n + 1] - intervals[n]);
+        next = intervals[n + 1] + 1;
+      }
+    } catch (IOException e) {
+      throw new Error(e.toString());
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeNumber(DataOutputStream out, int number)
+    throws IOException {
+    while ((number & ~0x7F) != 0) {
+      out.writeByte((number & 0x7F) | 0x80);
+      number >>>= 7;
+    }
+    out.writeByte(number);
+  }
+}
@@ -22,9 +22,11 @@ package jflex;
 
 import org.apache.maven.plugin.logging.Log;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -55,10 +57,10 @@ import java.util.regex.Pattern;
  *   <li>Blocks(-X.X.X).txt</li>
  *   <li>PropList(-X.X.X).txt</li>
  * </ul>
- * and for emitting (into the source file generated by
- * jflex-unicode-maven-plugin: UnicodeProperties.java) the set of Property
- * Values supported by this version of Unicode, as well as the corresponding
- * code point interval sets for each member of the Property Value set.
+ * and for emitting (into the binary resource Unicode_X_Y.bin read by the
+ * generated UnicodeProperties.java) the set of Property Values supported by
+ * this version of Unicode, as well as the corresponding code point interval
+ * sets for each member of the Property Value set.
  */
 class UnicodeVersion {
 
@@ -80,29 +82,6 @@ class UnicodeVersion {
   /** Normalized Script property name */
   private static final String NORMALIZED_SCRIPT = normalize("Script"); 
   
-  /**
-   * The number of code point ranges to output per line in
-   * UnicodeProperties.java.
-   */
-  private static final int INTERVALS_PER_LINE = 4;
-
-  /**
-   * The number of alias/target property value pairs to output per line in
-   * UnicodeProperties.java.
-   */
-  private static final int PROPERTY_VALUE_ALIAS_MAPPINGS_PER_LINE = 2;
-
-  /**
-   * The number of property values to output per line in UnicodeProperties.java.
-   */
-  private static final int PROPERTY_VALUES_PER_LINE = 6;
-
-  /**
-   * The number of caseless match partitions to output per line in
-   * UnicodeProperties.java.
-   */
-  private static final int CASELESS_MATCH_PARTITIONS_PER_LINE = 3;
-
   /** The property values that represent surrogates [U+D800-U+DFFF] */
   private static final Pattern SURROGATE_PATTERN
     = Pattern.compile("^cs$|surrogate", Pattern.CASE_INSENSITIVE);
@@ -150,9 +129,6 @@ class UnicodeVersion {
    */
   Map<Integer,SortedSet<Integer>> caselessMatchPartitions
     = new HashMap<Integer,SortedSet<Integer>>();
-
-  /** The maximum size of the partitions in {@link #caselessMatchPartitions}. */
-  int caselessMatchPartitionSize = 0;
   
   private EnumMap<DataFileType,URL> dataFiles;
 
@@ -208,19 +184,50 @@ class UnicodeVersion {
     }
   }
 
-  public void emitToDir(File outputDir) throws IOException {
-    PrintWriter writer = new PrintWriter
-      (new File(outputDir, "Unicode" + getVersionSuffix() + ".java"), "UTF-8");
-    writer.append("package jflex.unicode.data;\n\n");
-    writer.append("public class Unicode").append(getVersionSuffix()).append(" {\n");
-    emitMaximumCodePoint(writer);
-    emitPropertyValuesArray(writer);
-    emitIntervalsArray(writer);
-    emitPropertyValueAliasesArray(writer);
-    emitCaselessMatchPartitions(writer);
-    writer.append("}\n");
-    writer.flush();
-    writer.close();
+  /**
+   * Writes the binary resource "Unicode_X_Y.bin" with this version's maximum
+   * code point, property values and their code point intervals, property
+   * value aliases, and caseless match partitions (see
+   * {@link UnicodeDataWriter} for the format).
+   *
+   * @param outputDir The directory in which to write the resource
+   * @param log Where to put info about the size of the written data
+   * @throws IOException If there is an error writing the resource
+   */
+  public void emitToDir(File outputDir, Log log) throws IOException {
+    SortedMap<String,int[]> intervals = new TreeMap<String,int[]>();
+    for (SortedMap.Entry<String,List<NamedRange>> entry
+        : propertyValueIntervals.entrySet()) {
+      List<NamedRange> ranges = entry.getValue();
+      int[] points = new int[2 * ranges.size()];
+      int n = 0;
+      for (NamedRange range : ranges) {
+        points[n++] = range.start;
+        points[n++] = range.end;
+      }
+      intervals.put(entry.getKey(), points);
+    }
+
+    // Putting all of the partitions into a set ensures there are no duplicates
+    SortedMap<Integer,SortedSet<Integer>> partitions
+      = new TreeMap<Integer,SortedSet<Integer>>();
+    for (SortedSet<Integer> partition: caselessMatchPartitions.values()) {
+      partitions.put(partition.first(), partition);
+    }
+
+    UnicodeDataWriter writer = new UnicodeDataWriter
+      (maximumCodePoint, intervals, getUsedPropertyValueAliases(),
+       partitions.values());
+    File file = new File(outputDir, "Unicode" + getVersionSuffix() + ".bin");
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      writer.write(out);
+    } finally {
+      out.close();
+    }
+    log.info("\t\tWrote " + file.getName() + ": " + file.length() + " bytes, "
+             + writer.getNumPropertyValues() + " property values, "
+             + writer.getNumRuns() + " distinct interval runs");
   }
 
   /**
@@ -288,10 +295,6 @@ class UnicodeVersion {
         partition.add(title);
         caselessMatchPartitions.put(title, partition);
       }
-
-      if (partition.size() > caselessMatchPartitionSize) {
-        caselessMatchPartitionSize = partition.size();
-      }
     }
   }
 
@@ -414,91 +417,7 @@ class UnicodeVersion {
 
 
   /**
-   * Emits an int declaration and definition for the maximum code point listed
-   * for this version in UnicodeData(-X.X.X).txt.
-   *
-   * @param writer Where to emit the maximum code point.
-   */
-  void emitMaximumCodePoint(PrintWriter writer) {
-    writer.append("  public static final int maximumCodePoint")
-      .append(" = 0x").append(Integer.toString(maximumCodePoint, 16))
-      .append(";\n");
-  }
-
-  /**
-   * Emits an array declaration and definition for the set of property values
-   * supported by this version of Unicode.
-   *
-   * @param writer Where to emit the property values array.
-   */
-  void emitPropertyValuesArray(PrintWriter writer) {
-    writer.append("  public static final String[] propertyValues")
-      .append("\n    = { ");
-    int item = 0;
-    for (String propValue : propertyValueIntervals.keySet()) {
-      if (++item == PROPERTY_VALUES_PER_LINE) {
-        writer.append(",\n        ");
-        item = 1;
-      } else if (item > 1) {
-        writer.append(", ");
-      }
-      writer.append("\"").append(propValue).append("\"");
-    }
-    writer.append(" };\n");
-  }
-
-  /**
-   * Emits an array declaration and definition for the set of code point ranges
-   * in this version of Unicode, corresponding to and in the same order as the
-   * array of property values emitted in
-   * {@link #emitPropertyValuesArray(java.io.PrintWriter)}.
-   * <p/>
-   * Note that String form is required for the amount of data associated with
-   * the existing Unicode versions - when coded as static two-dimensional arrays
-   * of int, the Java byte compiler complains that "code too large".  This is
-   * apparently due to size limits in the specification for Java .class format.
-   *
-   * @param writer Where to emit the intervals array
-   */
-  void emitIntervalsArray(PrintWriter writer) {
-    writer.append("  public static final String[] intervals").append(" = {\n");
-
-    boolean isFirst = true;
-    for (SortedMap.Entry<String,List<NamedRange>> entry
-        : propertyValueIntervals.entrySet()) {
-      String propertyValue = entry.getKey();
-      List<NamedRange> intervals = entry.getValue();
-      if (isFirst) {
-        isFirst = false;
-      } else {
-        writer.append(",\n");
-      }
-      writer.append("    // Unicode ").append(majorMinorVersion)
-        .append(" property value: {").append(propertyValue)
-        .append("}\n");
-      int count = 0;
-      boolean isFirstIntervalLine = true;
-      for (NamedRange interval : intervals) {
-        if (++count > INTERVALS_PER_LINE) {
-          writer.append("\n");
-          count = 1;
-        }
-        if (count == 1) {
-          writer.append(isFirstIntervalLine ? "        \"" : "      + \"");
-        } else {
-          writer.append("+\"");
-        }
-        isFirstIntervalLine = false;
-        emitEscapedUTF16Char(writer, interval.start);
-        emitEscapedUTF16Char(writer, interval.end);
-        writer.append("\"");
-      }
-    }
-    writer.append("  };\n");
-  }
-
-  /**
-   * Called by emitPropertyValueAliasesArray() to populate a map of
+   * Called by {@link #emitToDir(File,Log)} to populate a map of
    * all possible aliases for the encountered properties and their values. 
    * 
    * @return a sorted map of all possible aliases for used properties & values
@@ -553,143 +472,10 @@ class UnicodeVersion {
     return usedPropertyValueAliases;
   }
 
-  /**
-   * Emits an array declaration and definition of alternating key/value mappings
-   * from property value aliases to target property values.
-   *
-   * @param writer Where to emit the intervals array
-   */
-  void emitPropertyValueAliasesArray(PrintWriter writer) {
-    writer.append("  public static final String[] propertyValueAliases")
-      .append(" = {\n        ");
-
-    int count = 0;
-    boolean isFirstLine = true;
-    for (SortedMap.Entry<String,String> entry 
-         : getUsedPropertyValueAliases().entrySet()) {
-      if (++count > PROPERTY_VALUE_ALIAS_MAPPINGS_PER_LINE) {
-        writer.append(",\n        ");
-        count = 1;
-      } else if ( ! isFirstLine) {
-        writer.append(",   ");
-      } else {
-        isFirstLine = false;
-      }
-      String alias = entry.getKey();
-      String propertyValue = entry.getValue();
-      writer.append("\"").append(alias).append("\", \"").append(propertyValue)
-        .append("\"");
-    }
-    writer.append("\n  };\n");
-  }
-
-  /**
-   * Emits a constant assigned the size of each partition record (the maximum
-   * partition size) and a string representing a sequence of fixed-length
-   * partition records.  For partitions smaller than the maximum size, the
-   * unused fields are populated with \u0000.
-   *
-   * @param writer Where to emit the caseless match partitions
-   */
-  void emitCaselessMatchPartitions(PrintWriter writer) {
-    writer.append("  public static final int caselessMatchPartitionSize")
-      .append(" = ").append(Integer.toString(caselessMatchPartitionSize))
-      .append(";\n");
-    writer.append("  public static final String caselessMatchPartitions")
-      .append(" =\n");
-
-    // Putting all of the partitions into a set ensures there are no duplicates
-    SortedMap<Integer,SortedSet<Integer>> partitions
-      = new TreeMap<Integer,SortedSet<Integer>>();
-    for (SortedSet<Integer> partition: caselessMatchPartitions.values()) {
-      partitions.put(partition.first(), partition);
-    }
-
-    int count = 0;
-    boolean isFirstPartitionLine = true;
-    for (SortedSet<Integer> partition : partitions.values()) {
-      if (++count > CASELESS_MATCH_PARTITIONS_PER_LINE) {
-        writer.append("\n");
-        count = 1;
-      }
-
-      if (count == 1)
-        writer.append(isFirstPartitionLine ? "        \"" : "      + \"");
-      else
-        writer.append("+\"");
-
-      isFirstPartitionLine = false;
-
-      for (Integer c : partition)
-        emitEscapedUTF16Char(writer, c);
-
-      // Add \u0000 placeholders to fill out the fixed record size
-      for (int i = 0 ; i < caselessMatchPartitionSize - partition.size() ; ++i)
-        emitEscapedUTF16Char(writer, 0);
-
-      writer.append("\"");
-    }
-    writer.append(";\n");
-  }
-
-  /**
-   * Emits an escaped character:
-   * <ul>
-   *   <li>in form "\\uXXXX", where XXXX is the hexadecimal form of the code
-   *       point, if the given point is in the Basic Multilingual Plane (BMP);
-   *       or</li>
-   *   <li>in form "\\uXXXX\\uYYYY", where XXXX and YYYY are the high and low
-   *       surrogates, respectively, representing the given point in UTF-16
-   *       form, if the given code point is above the BMP.</li>
-   * </ul>
-   *
-   * @param writer Where to emit the escaped character.
-   * @param codePoint The code point for which to emit an escaped character.
-   */
-  private void emitEscapedUTF16Char(PrintWriter writer, int codePoint) {
-    if (codePoint <= 0xFFFF) {
-      emitEscapedBMPChar(writer, codePoint);
-    } else { // codePoint > 0xFFFF - above the BMP
-      if (codePoint < 0x110000) {
-        for (char surrogate : Character.toChars(codePoint))
-          emitEscapedBMPChar(writer, (int)surrogate);
-      } else {
-        writer.append("<").append(Integer.toString(codePoint, 16)).append(">");
-      }
-    }
-  }
-
-  /**
-   * Emits an escaped character in the form "\\uXXXX", where XXXX is the
-   * hexadecimal form of the given code point, which must be in the Basic
-   * Multilingual Plane (BMP).  Called from 
-   * {@link #emitEscapedUTF16Char(PrintWriter,int)}
-   *
-   * @param writer Where to emit the escaped character.
-   * @param codePoint The code point for which to emit an escaped character.
-   */
-  private void emitEscapedBMPChar(PrintWriter writer, int codePoint) {
-    switch(codePoint) {
-      // Special treatment for the quotation mark (U+0022).  "\u0022" triggers
-      // a syntax error when it is included in a literal string, because it is 
-      // interpreted as "[...]"[...]" (literally), and leads the compiler to
-      // think that the enclosing quotation marks are unbalanced.
-      case 0x22: writer.append("\\\"");  break;
-      case  0x0: writer.append("\\000"); break;
-      case  0x9: writer.append("\\t");   break;
-      case  0xA: writer.append("\\n");   break;
-      case  0xC: writer.append("\\f");   break;
-      case  0xD: writer.append("\\r");   break;
-      case 0x5C: writer.append("\\\\");  break;
-        default: writer.append(String.format("\\u%04x", codePoint));
-    }
-  }
-
   /**
    * Returns an identifier suffix based on the Unicode major.minor version,
    * substituting an underscore for the period, and with a leading underscore,
-   * for use in naming versioned Unicode data in the generated
-   * UnicodeProperties.java.
+   * for use in naming the versioned Unicode data resources.
    *
    * @return "_X_Y", where X = major version, and Y = minor version.
    */
@@ -58,6 +58,12 @@ final public class Action {
   /** The entry state of the corresponding forward DFA (if general lookahead) */
   private int entryState;
 
+  /** 
+   * True iff the split position of this general lookahead action is
+   * recorded in a register while matching (no forward/backward pass) 
+   */
+  private boolean singlePass;
+
   /**
    * Creates a new Action object with specified content and line number.
    * 
@@ -223,6 +229,27 @@ final public class Action {
   public void setEntryState(int entryState) {
     this.entryState = entryState;
   }
+
+  /**
+   * Return true iff this is a general lookahead action whose split 
+   * position is recorded while matching, such that no forward and 
+   * backward pass over the matched text is necessary.
+   * 
+   * @return true if this general lookahead action is single pass
+   */
+  public boolean isSinglePass() {
+    return singlePass;
+  }
+
+  /**
+   * Set whether the split position of this general lookahead action
+   * can be recorded while matching.
+   * 
+   * @param singlePass  true if no forward and backward pass is needed
+   */
+  public void setSinglePass(boolean singlePass) {
+    this.singlePass = singlePass;
+  }
  
   public Action copyChoice(int length) {
     Action a = new Action(this.content, this.priority);
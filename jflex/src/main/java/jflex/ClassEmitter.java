@@ -0,0 +1,852 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * Writes a scanner directly as class file (option
+ * <code>--classfile</code>), without Java source and without javac.
+ *
+ * The scanner reads a <code>CharSequence</code> and has the methods
+ * <code>yylex</code> (or the <code>%function</code> name),
+ * <code>yytext</code>, <code>yylength</code>, <code>yycharat</code>,
+ * <code>yychar</code> (start of the match), <code>yybegin</code>,
+ * <code>yystate</code> and <code>yypushback</code>, and the lexical
+ * state constants. Its tables are static arrays, unpacked from string
+ * constants when the class is loaded; the main loop keeps them in
+ * local variables.
+ *
+ * Actions are compiled if they only consist of
+ * <code>yybegin(STATE);</code>, <code>yypushback(n);</code> and a
+ * final <code>return n;</code> with an integer literal <code>n</code>.
+ * An action without <code>return</code> continues scanning. All other
+ * actions call <code>public static int action(S scanner, int line)</code>
+ * of the companion class (option <code>--companion</code>), where
+ * <code>S</code> is the <code>%extends</code> class or
+ * <code>Object</code> and <code>line</code> is the line of the action in
+ * the specification. <code>yylex</code> returns the result, unless it
+ * is <code>Integer.MIN_VALUE</code>, which continues scanning.
+ *
+ * User code, <code>%{...%}</code> class code and other options that
+ * need Java source are ignored with a warning.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final public class ClassEmitter {
+
+  /** return value of companion actions that continues scanning */
+  public static final int CONTINUE = Integer.MIN_VALUE;
+
+  /** attribute bit of states where the base of a lookahead expression ends */
+  private static final int LOOKEND = 1;
+
+  private static final String CHAR_SEQUENCE = "java/lang/CharSequence";
+  private static final String ERROR = "java/lang/Error";
+
+  private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+  private static final Pattern IMPORT = Pattern.compile("^\\s*import\\s+(static\\s+)?[\\w.*]+\\s*;", Pattern.MULTILINE);
+  private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/|//[^\\n]*", Pattern.DOTALL);
+  private static final Pattern YYBEGIN = Pattern.compile("yybegin\\s*\\(\\s*(\\w+)\\s*\\)");
+  private static final Pattern PUSHBACK = Pattern.compile("yypushback\\s*\\(\\s*(\\d+)\\s*\\)");
+  private static final Pattern RETURN_LITERAL = Pattern.compile("return\\s+(-?\\s*\\d+)");
+
+  private GeneratorContext context;
+  private File inputFile;
+  private LexScan scanner;
+  private LexParse parser;
+  private DFA dfa;
+
+  /** the internal name of the scanner class and its super class */
+  private String name;
+  private String superName;
+
+  /** the internal name of the companion class, <code>null</code> for none */
+  private String companion;
+
+  private ClassWriter cw;
+
+  /** the access flag of the API methods */
+  private int visibility;
+
+  /** the actions, in order of their case in the action switch */
+  private Map<Action, Integer> actionTable = new LinkedHashMap<Action, Integer>();
+
+  /** the number of columns of the transition table */
+  private int numCols;
+
+  /** the column of each character class */
+  private int [] colMap;
+
+
+  public ClassEmitter(File inputFile, LexParse parser, DFA dfa) {
+    this.context = parser.scanner.context;
+    this.inputFile = inputFile;
+    this.parser = parser;
+    this.scanner = parser.scanner;
+    this.dfa = dfa;
+
+    String className = Emitter.getBaseName(scanner.className);
+    Matcher m = PACKAGE.matcher(scanner.userCode);
+    name = m.find() ? m.group(1).replace('.', '/') + "/" + className : className;
+
+    superName = scanner.isExtending == null
+      ? "java/lang/Object"
+      : Emitter.getBaseName(scanner.isExtending).replace('.', '/');
+
+    String c = context.options.companion;
+    companion = c == null ? null : c.replace('.', '/');
+
+    visibility = scanner.visibility.equals("private")
+      ? ClassWriter.ACC_PRIVATE : ClassWriter.ACC_PUBLIC;
+  }
+
+  /**
+   * Writes the class file, or stores it in the result of an in-memory
+   * run.
+   */
+  public void emit() {
+    checkUnsupported();
+
+    int access = ClassWriter.ACC_FINAL;
+    if (scanner.isPublic) access |= ClassWriter.ACC_PUBLIC;
+    cw = new ClassWriter(access, name, superName, inputFile.getName());
+
+    for (int s = 0; s < dfa.numStates; s++)
+      if (dfa.action[s] != null && !actionTable.containsKey(dfa.action[s]))
+        actionTable.put(dfa.action[s], actionTable.size());
+
+    colMap = dfa.columnMap();
+    for (int i = 0; i < colMap.length; i++)
+      if (colMap[i] >= numCols) numCols = colMap[i]+1;
+
+    if (dfa.numStates >= 0xFFFF || (long) dfa.numStates * numCols > Integer.MAX_VALUE) {
+      Out.error(ErrorMessages.CLASSFILE_TOO_LARGE);
+      throw new GeneratorException();
+    }
+
+    emitFields();
+    emitClassInit();
+    emitConstructor();
+    emitLex();
+    emitAPI();
+    emitUnpack("zzUnpack", "[I", CodeWriter.IASTORE);
+    emitUnpack("zzUnpackCMap", "[C", CodeWriter.CASTORE);
+    if (scanner.bolUsed) emitIsBOL();
+
+    Out.checkErrors();
+
+    byte [] bytes;
+    try {
+      bytes = cw.toBytes();
+    }
+    catch (IllegalStateException e) {
+      Out.error(ErrorMessages.CLASSFILE_TOO_LARGE);
+      throw new GeneratorException();
+    }
+
+    String fileName = Emitter.getBaseName(scanner.className) + ".class";
+
+    if (context.result != null) {
+      context.result.className = Emitter.getBaseName(scanner.className);
+      context.result.binaryName = name.replace('/', '.');
+      context.result.classFile = bytes;
+      return;
+    }
+
+    File outputFile = context.options.keep_unchanged
+      ? Emitter.outputFile(fileName, inputFile, context.options)
+      : Emitter.normalize(fileName, inputFile, context.options);
+
+    Out.println("Writing code to \""+outputFile+"\"");
+    context.addOutputFile(outputFile);
+    Emitter.writeIfChanged(outputFile, bytes, context.options);
+  }
+
+  /**
+   * Reports options that only make sense for Java source, and
+   * lookahead the class file scanner cannot match.
+   */
+  private void checkUnsupported() {
+    List<String> ignored = new ArrayList<String>();
+
+    String userCode = COMMENT.matcher(scanner.userCode).replaceAll("");
+    userCode = PACKAGE.matcher(userCode).replaceAll("");
+    userCode = IMPORT.matcher(userCode).replaceAll("");
+    if (userCode.trim().length() > 0) ignored.add("user code");
+
+    if (scanner.classCode != null) ignored.add("%{...%}");
+    if (scanner.initCode != null) ignored.add("%init");
+    if (scanner.eofCode != null) ignored.add("%eof");
+    if (scanner.eofVal != null) ignored.add("%eofval");
+    if (parser.getEOFActions().numActions() > 0) ignored.add("<<EOF>>");
+    if (scanner.lineCount) ignored.add("%line");
+    if (scanner.columnCount) ignored.add("%column");
+    if (scanner.charCount) ignored.add("%char");
+    if (scanner.cupCompatible) ignored.add("%cup");
+    if (scanner.tokenType != null) ignored.add("%type");
+    if (scanner.isImplementing != null) ignored.add("%implements");
+    if (scanner.debugOption) ignored.add("%debug");
+    if (scanner.standalone) ignored.add("%standalone");
+    if (!scanner.ctorArgs.isEmpty()) ignored.add("%ctorarg");
+    if (!dfa.groupNames.isEmpty()) ignored.add("capture groups");
+    if (scanner.fused) ignored.add("%fused");
+    if (scanner.stateTables) ignored.add("%statetables");
+    if (scanner.tableResource) ignored.add("%tableresource");
+    if (scanner.linearMunch) ignored.add("%linear");
+    if (scanner.profile) ignored.add("%profile");
+    if (context.options.instrument) ignored.add("--instrument");
+    if (context.options.profile != null) ignored.add("--useprofile");
+
+    if (!ignored.isEmpty()) {
+      StringBuilder list = new StringBuilder();
+      for (String s : ignored) {
+        if (list.length() > 0) list.append(", ");
+        list.append(s);
+      }
+      Out.warning(ErrorMessages.get(ErrorMessages.CLASSFILE_IGNORED, list.toString()));
+    }
+
+    for (int s = 0; s < dfa.numStates; s++) {
+      Action a = dfa.action[s];
+      if (a != null && a.lookAhead() == Action.GENERAL_LOOK && !a.isSinglePass()) {
+        Out.error(scanner.file, ErrorMessages.CLASSFILE_LOOKAHEAD, a.priority-1, -1);
+        throw new GeneratorException();
+      }
+    }
+  }
+
+  private void emitFields() {
+    int constant = ClassWriter.ACC_STATIC | ClassWriter.ACC_FINAL | visibility;
+    cw.addField(constant, "YYEOF", "I", -1);
+    for (String state : scanner.states.names())
+      cw.addField(constant, state, "I", 2*scanner.states.getNumber(state));
+
+    int table = ClassWriter.ACC_PRIVATE | ClassWriter.ACC_STATIC | ClassWriter.ACC_FINAL;
+    cw.addField(table, "ZZ_CMAP", "[C", null);
+    cw.addField(table, "ZZ_TRANS", "[I", null);
+    cw.addField(table, "ZZ_ACTION", "[I", null);
+    cw.addField(table, "ZZ_LEXSTATE", "[I", null);
+    if (dfa.lookEndUsed) cw.addField(table, "ZZ_ATTR", "[I", null);
+
+    int field = ClassWriter.ACC_PRIVATE;
+    cw.addField(field, "zzInput", "L"+CHAR_SEQUENCE+";", null);
+    cw.addField(field, "zzStartRead", "I", null);
+    cw.addField(field, "zzMarkedPos", "I", null);
+    cw.addField(field, "zzLexicalState", "I", null);
+    cw.addField(field, "zzAtBOL", "Z", null);
+  }
+
+  /**
+   * The static initializer: unpacks the tables.
+   */
+  private void emitClassInit() {
+    CodeWriter code = new CodeWriter(cw, 3, 2);
+
+    int [] cmap = new int [CharClasses.maxChar+1];
+    CharClassInterval [] intervals = parser.getCharClasses().getIntervals();
+    for (int i = 0; i < intervals.length; i++)
+      for (int c = intervals[i].start; c <= intervals[i].end; c++)
+        cmap[c] = colMap[intervals[i].charClass];
+    emitTable(code, "ZZ_CMAP", "[C", CodeWriter.T_CHAR, "zzUnpackCMap", cmap);
+
+    int [] trans = new int [dfa.numStates*numCols];
+    for (int s = 0; s < dfa.numStates; s++)
+      for (int i = 0; i < dfa.numInput; i++)
+        trans[s*numCols+colMap[i]] = dfa.table[s][i];
+    emitTable(code, "ZZ_TRANS", "[I", CodeWriter.T_INT, "zzUnpack", trans);
+
+    int [] action = new int [dfa.numStates];
+    for (int s = 0; s < dfa.numStates; s++)
+      action[s] = dfa.action[s] == null ? -1 : actionTable.get(dfa.action[s]);
+    emitTable(code, "ZZ_ACTION", "[I", CodeWriter.T_INT, "zzUnpack", action);
+
+    int [] lexState = new int [2*scanner.states.number()];
+    System.arraycopy(dfa.entryState, 0, lexState, 0, lexState.length);
+    emitTable(code, "ZZ_LEXSTATE", "[I", CodeWriter.T_INT, "zzUnpack", lexState);
+
+    if (dfa.lookEndUsed) {
+      int [] attr = new int [dfa.numStates];
+      for (int s = 0; s < dfa.numStates; s++)
+        if (dfa.isLookEnd[s]) attr[s] = LOOKEND;
+      emitTable(code, "ZZ_ATTR", "[I", CodeWriter.T_INT, "zzUnpack", attr);
+    }
+
+    code.op(CodeWriter.RETURN);
+    cw.addMethod(ClassWriter.ACC_STATIC, "<clinit>", "()V", code);
+  }
+
+  /**
+   * Unpacks a table into a new array and stores it in a static field.
+   * The table is run length encoded in string constants: pairs of
+   * count and value+1.
+   */
+  private void emitTable(CodeWriter code, String field, String type, int arrayType,
+                         String unpack, int [] values) {
+    code.push(values.length);
+    code.newArray(arrayType);
+    code.var(CodeWriter.ASTORE, 0);
+    code.push(0);
+    code.var(CodeWriter.ISTORE, 1);
+
+    for (String packed : pack(values)) {
+      code.pushString(packed);
+      code.var(CodeWriter.ALOAD, 0);
+      code.var(CodeWriter.ILOAD, 1);
+      code.invoke(CodeWriter.INVOKESTATIC, name, unpack, "(Ljava/lang/String;"+type+"I)I");
+      code.var(CodeWriter.ISTORE, 1);
+    }
+
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.PUTSTATIC, name, field, type);
+  }
+
+  /**
+   * Run length encodes a table in strings that fit into the constant
+   * pool.
+   */
+  private static List<String> pack(int [] values) {
+    List<String> result = new ArrayList<String>();
+    StringBuilder packed = new StringBuilder();
+    int bytes = 0;
+
+    int i = 0;
+    while (i < values.length) {
+      int value = values[i];
+      int count = 0;
+      while (i < values.length && values[i] == value && count < 0xFFFF) {
+        i++;
+        count++;
+      }
+
+      String pair = new String(new char [] { (char) count, (char) (value+1) });
+      int pairBytes = ClassWriter.utf8Length(pair);
+      if (bytes + pairBytes > ClassWriter.MAX_UTF8) {
+        result.add(packed.toString());
+        packed.setLength(0);
+        bytes = 0;
+      }
+      packed.append(pair);
+      bytes += pairBytes;
+    }
+
+    if (packed.length() > 0) result.add(packed.toString());
+    return result;
+  }
+
+  /**
+   * <code>static int zzUnpack(String packed, T [] result, int offset)</code>,
+   * returns the offset after the unpacked values.
+   */
+  private void emitUnpack(String method, String type, int store) {
+    CodeWriter code = new CodeWriter(cw, 3, 7);
+    int loop = code.newLabel();
+    int repeat = code.newLabel();
+    int end = code.newLabel();
+
+    code.push(0);
+    code.var(CodeWriter.ISTORE, 3);                      // i
+    code.var(CodeWriter.ALOAD, 0);
+    code.invoke(CodeWriter.INVOKEVIRTUAL, "java/lang/String", "length", "()I");
+    code.var(CodeWriter.ISTORE, 4);                      // l
+
+    code.mark(loop);
+    code.var(CodeWriter.ILOAD, 3);
+    code.var(CodeWriter.ILOAD, 4);
+    code.jump(CodeWriter.IF_ICMPGE, end);
+
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ILOAD, 3);
+    code.invoke(CodeWriter.INVOKEVIRTUAL, "java/lang/String", "charAt", "(I)C");
+    code.var(CodeWriter.ISTORE, 5);                      // count
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ILOAD, 3);
+    code.push(1);
+    code.op(CodeWriter.IADD);
+    code.invoke(CodeWriter.INVOKEVIRTUAL, "java/lang/String", "charAt", "(I)C");
+    code.push(1);
+    code.op(CodeWriter.ISUB);
+    code.var(CodeWriter.ISTORE, 6);                      // value
+    code.iinc(3, 2);
+
+    code.mark(repeat);
+    code.var(CodeWriter.ALOAD, 1);
+    code.var(CodeWriter.ILOAD, 2);
+    code.var(CodeWriter.ILOAD, 6);
+    code.op(store);
+    code.iinc(2, 1);
+    code.iinc(5, -1);
+    code.var(CodeWriter.ILOAD, 5);
+    code.jump(CodeWriter.IFGT, repeat);
+    code.jump(CodeWriter.GOTO, loop);
+
+    code.mark(end);
+    code.var(CodeWriter.ILOAD, 2);
+    code.op(CodeWriter.IRETURN);
+
+    cw.addMethod(ClassWriter.ACC_PRIVATE | ClassWriter.ACC_STATIC, method,
+                 "(Ljava/lang/String;"+type+"I)I", code);
+  }
+
+  private void emitConstructor() {
+    CodeWriter code = new CodeWriter(cw, 2, 2);
+    code.var(CodeWriter.ALOAD, 0);
+    code.invoke(CodeWriter.INVOKESPECIAL, superName, "<init>", "()V");
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ALOAD, 1);
+    code.field(CodeWriter.PUTFIELD, name, "zzInput", "L"+CHAR_SEQUENCE+";");
+    code.var(CodeWriter.ALOAD, 0);
+    code.push(1);
+    code.field(CodeWriter.PUTFIELD, name, "zzAtBOL", "Z");
+    code.op(CodeWriter.RETURN);
+    cw.addMethod(visibility, "<init>", "(L"+CHAR_SEQUENCE+";)V", code);
+  }
+
+  // local variables of the scanning method
+  private static final int IN = 1;
+  private static final int LENGTH = 2;
+  private static final int CMAP = 3;
+  private static final int TRANS = 4;
+  private static final int ACTION = 5;
+  private static final int START = 6;
+  private static final int STATE = 7;
+  private static final int MATCH = 8;
+  private static final int POS = 9;
+  private static final int MARKED = 10;
+  private static final int LOOKBASE = 11;
+  private static final int LOOKBASE_MARKED = 12;
+  private static final int ATTR = 13;
+  private static final int NEXT = 14;
+
+  /**
+   * The scanning method: longest match on the tables, then the action
+   * switch. Same semantics as the loop of the skeleton.
+   */
+  private void emitLex() {
+    CodeWriter code = new CodeWriter(cw, 6, 15);
+
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzInput", "L"+CHAR_SEQUENCE+";");
+    code.var(CodeWriter.ASTORE, IN);
+    code.var(CodeWriter.ALOAD, IN);
+    code.invokeInterface(CHAR_SEQUENCE, "length", "()I", 1);
+    code.var(CodeWriter.ISTORE, LENGTH);
+    code.field(CodeWriter.GETSTATIC, name, "ZZ_CMAP", "[C");
+    code.var(CodeWriter.ASTORE, CMAP);
+    code.field(CodeWriter.GETSTATIC, name, "ZZ_TRANS", "[I");
+    code.var(CodeWriter.ASTORE, TRANS);
+    code.field(CodeWriter.GETSTATIC, name, "ZZ_ACTION", "[I");
+    code.var(CodeWriter.ASTORE, ACTION);
+    if (dfa.lookEndUsed) {
+      code.field(CodeWriter.GETSTATIC, name, "ZZ_ATTR", "[I");
+      code.var(CodeWriter.ASTORE, ATTR);
+    }
+
+    int top = code.newLabel();
+    int start = code.newLabel();
+    int loop = code.newLabel();
+    int done = code.newLabel();
+    int match = code.newLabel();
+
+    // next match starts where the last one ended
+    code.mark(top);
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzMarkedPos", "I");
+    code.var(CodeWriter.ISTORE, START);
+
+    if (scanner.bolUsed) {
+      // if the last match was empty, the last value of zzAtBOL can be used
+      int skip = code.newLabel();
+      code.var(CodeWriter.ILOAD, START);
+      code.var(CodeWriter.ALOAD, 0);
+      code.field(CodeWriter.GETFIELD, name, "zzStartRead", "I");
+      code.jump(CodeWriter.IF_ICMPLE, skip);
+      code.var(CodeWriter.ALOAD, 0);
+      code.var(CodeWriter.ALOAD, IN);
+      code.var(CodeWriter.ILOAD, START);
+      code.var(CodeWriter.ILOAD, LENGTH);
+      code.invoke(CodeWriter.INVOKESTATIC, name, "zzIsBOL", "(L"+CHAR_SEQUENCE+";II)Z");
+      code.field(CodeWriter.PUTFIELD, name, "zzAtBOL", "Z");
+      code.mark(skip);
+    }
+
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ILOAD, START);
+    code.field(CodeWriter.PUTFIELD, name, "zzStartRead", "I");
+
+    code.var(CodeWriter.ILOAD, START);
+    code.var(CodeWriter.ILOAD, LENGTH);
+    code.jump(CodeWriter.IF_ICMPLT, start);
+    code.push(-1);
+    code.op(CodeWriter.IRETURN);
+
+    code.mark(start);
+    code.field(CodeWriter.GETSTATIC, name, "ZZ_LEXSTATE", "[I");
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzLexicalState", "I");
+    if (scanner.bolUsed) {
+      code.var(CodeWriter.ALOAD, 0);
+      code.field(CodeWriter.GETFIELD, name, "zzAtBOL", "Z");
+      code.op(CodeWriter.IADD);
+    }
+    code.op(CodeWriter.IALOAD);
+    code.var(CodeWriter.ISTORE, STATE);
+
+    // empty match
+    code.var(CodeWriter.ALOAD, ACTION);
+    code.var(CodeWriter.ILOAD, STATE);
+    code.op(CodeWriter.IALOAD);
+    code.var(CodeWriter.ISTORE, MATCH);
+    code.var(CodeWriter.ILOAD, START);
+    code.var(CodeWriter.ISTORE, POS);
+    code.var(CodeWriter.ILOAD, START);
+    code.var(CodeWriter.ISTORE, MARKED);
+    if (dfa.lookEndUsed) {
+      code.push(0);
+      code.var(CodeWriter.ISTORE, LOOKBASE);
+      code.push(0);
+      code.var(CodeWriter.ISTORE, LOOKBASE_MARKED);
+    }
+
+    // state = ZZ_TRANS[state*numCols + ZZ_CMAP[in.charAt(pos++)]]
+    code.mark(loop);
+    code.var(CodeWriter.ILOAD, POS);
+    code.var(CodeWriter.ILOAD, LENGTH);
+    code.jump(CodeWriter.IF_ICMPGE, done);
+    code.var(CodeWriter.ALOAD, TRANS);
+    code.var(CodeWriter.ILOAD, STATE);
+    code.push(numCols);
+    code.op(CodeWriter.IMUL);
+    code.var(CodeWriter.ALOAD, CMAP);
+    code.var(CodeWriter.ALOAD, IN);
+    code.var(CodeWriter.ILOAD, POS);
+    code.invokeInterface(CHAR_SEQUENCE, "charAt", "(I)C", 2);
+    code.op(CodeWriter.CALOAD);
+    code.op(CodeWriter.IADD);
+    code.op(CodeWriter.IALOAD);
+    code.var(CodeWriter.ISTORE, STATE);
+    code.iinc(POS, 1);
+    code.var(CodeWriter.ILOAD, STATE);
+    code.jump(CodeWriter.IFLT, done);
+
+    if (dfa.lookEndUsed) {
+      int noLookEnd = code.newLabel();
+      code.var(CodeWriter.ALOAD, ATTR);
+      code.var(CodeWriter.ILOAD, STATE);
+      code.op(CodeWriter.IALOAD);
+      code.push(LOOKEND);
+      code.op(CodeWriter.IAND);
+      code.jump(CodeWriter.IFEQ, noLookEnd);
+      code.var(CodeWriter.ILOAD, POS);
+      code.var(CodeWriter.ILOAD, START);
+      code.op(CodeWriter.ISUB);
+      code.var(CodeWriter.ISTORE, LOOKBASE);
+      code.mark(noLookEnd);
+    }
+
+    code.var(CodeWriter.ALOAD, ACTION);
+    code.var(CodeWriter.ILOAD, STATE);
+    code.op(CodeWriter.IALOAD);
+    code.var(CodeWriter.ISTORE, NEXT);
+    code.var(CodeWriter.ILOAD, NEXT);
+    code.jump(CodeWriter.IFLT, loop);
+    code.var(CodeWriter.ILOAD, NEXT);
+    code.var(CodeWriter.ISTORE, MATCH);
+    code.var(CodeWriter.ILOAD, POS);
+    code.var(CodeWriter.ISTORE, MARKED);
+    if (dfa.lookEndUsed) {
+      code.var(CodeWriter.ILOAD, LOOKBASE);
+      code.var(CodeWriter.ISTORE, LOOKBASE_MARKED);
+    }
+    code.jump(CodeWriter.GOTO, loop);
+
+    code.mark(done);
+    code.var(CodeWriter.ILOAD, MATCH);
+    code.jump(CodeWriter.IFGE, match);
+    emitThrow(code, "Error: could not match input");
+
+    code.mark(match);
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ILOAD, MARKED);
+    code.field(CodeWriter.PUTFIELD, name, "zzMarkedPos", "I");
+
+    if (actionTable.isEmpty()) {
+      code.jump(CodeWriter.GOTO, top);
+    }
+    else {
+      int [] cases = new int [actionTable.size()];
+      for (int i = 0; i < cases.length; i++) cases[i] = code.newLabel();
+
+      code.var(CodeWriter.ILOAD, MATCH);
+      code.tableSwitch(0, cases, top);
+
+      for (Map.Entry<Action, Integer> entry : actionTable.entrySet()) {
+        code.mark(cases[entry.getValue()]);
+        emitLookahead(code, entry.getKey());
+        emitAction(code, entry.getKey(), top);
+      }
+    }
+
+    String function = scanner.functionName != null ? scanner.functionName : "yylex";
+    cw.addMethod(visibility, function, "()I", code);
+  }
+
+  private void emitLookahead(CodeWriter code, Action action) {
+    switch (action.lookAhead()) {
+    case Action.FIXED_BASE:
+      code.var(CodeWriter.ALOAD, 0);
+      code.var(CodeWriter.ILOAD, START);
+      code.push(action.getLookLength());
+      code.op(CodeWriter.IADD);
+      code.field(CodeWriter.PUTFIELD, name, "zzMarkedPos", "I");
+      break;
+
+    case Action.FIXED_LOOK:
+    case Action.FINITE_CHOICE:
+      code.var(CodeWriter.ALOAD, 0);
+      code.var(CodeWriter.ILOAD, MARKED);
+      code.push(action.getLookLength());
+      code.op(CodeWriter.ISUB);
+      code.field(CodeWriter.PUTFIELD, name, "zzMarkedPos", "I");
+      break;
+
+    case Action.GENERAL_LOOK:
+      // single pass, checked in checkUnsupported
+      code.var(CodeWriter.ALOAD, 0);
+      code.var(CodeWriter.ILOAD, START);
+      code.var(CodeWriter.ILOAD, LOOKBASE_MARKED);
+      code.op(CodeWriter.IADD);
+      code.field(CodeWriter.PUTFIELD, name, "zzMarkedPos", "I");
+      break;
+    }
+  }
+
+  /**
+   * Compiles an action in restricted form, or calls the companion
+   * class.
+   *
+   * @param top  the label of the start of the next match
+   */
+  private void emitAction(CodeWriter code, Action action, int top) {
+    if (emitRestricted(code, action, top)) return;
+
+    if (companion == null) {
+      Out.error(scanner.file, ErrorMessages.CLASSFILE_ACTION, action.priority-1, -1);
+      return;
+    }
+
+    int next = code.newLabel();
+    code.var(CodeWriter.ALOAD, 0);
+    code.push(action.priority);
+    code.invoke(CodeWriter.INVOKESTATIC, companion, "action", "(L"+superName+";I)I");
+    code.op(CodeWriter.DUP);
+    code.push(CONTINUE);
+    code.jump(CodeWriter.IF_ICMPEQ, next);
+    code.op(CodeWriter.IRETURN);
+    code.mark(next);
+    code.op(CodeWriter.POP);
+    code.jump(CodeWriter.GOTO, top);
+  }
+
+  /**
+   * @return false if the action is not in restricted form, in that
+   *         case no code is written
+   */
+  private boolean emitRestricted(CodeWriter code, Action action, int top) {
+    String [] statements = COMMENT.matcher(action.content).replaceAll("").split(";", -1);
+
+    // the text after the last ";" must be empty
+    if (statements[statements.length-1].trim().length() > 0) return false;
+
+    // check all statements before writing code
+    for (int i = 0; i < statements.length-1; i++) {
+      String s = statements[i].trim();
+      if (s.length() == 0) continue;
+
+      Matcher m = YYBEGIN.matcher(s);
+      if (m.matches() && scanner.states.getNumber(m.group(1)) != null) continue;
+      if (PUSHBACK.matcher(s).matches()) continue;
+      if (RETURN_LITERAL.matcher(s).matches() && i == lastStatement(statements)) continue;
+
+      return false;
+    }
+
+    for (int i = 0; i < statements.length-1; i++) {
+      String s = statements[i].trim();
+
+      Matcher m = YYBEGIN.matcher(s);
+      if (m.matches()) {
+        code.var(CodeWriter.ALOAD, 0);
+        code.push(2*scanner.states.getNumber(m.group(1)));
+        code.field(CodeWriter.PUTFIELD, name, "zzLexicalState", "I");
+        continue;
+      }
+
+      m = PUSHBACK.matcher(s);
+      if (m.matches()) {
+        code.var(CodeWriter.ALOAD, 0);
+        code.var(CodeWriter.ALOAD, 0);
+        code.field(CodeWriter.GETFIELD, name, "zzMarkedPos", "I");
+        code.push(Integer.parseInt(m.group(1)));
+        code.op(CodeWriter.ISUB);
+        code.field(CodeWriter.PUTFIELD, name, "zzMarkedPos", "I");
+        continue;
+      }
+
+      m = RETURN_LITERAL.matcher(s);
+      if (m.matches()) {
+        code.push(Integer.parseInt(m.group(1).replaceAll("\\s", "")));
+        code.op(CodeWriter.IRETURN);
+        return true;
+      }
+    }
+
+    code.jump(CodeWriter.GOTO, top);
+    return true;
+  }
+
+  /**
+   * @return the index of the last non-empty statement
+   */
+  private static int lastStatement(String [] statements) {
+    for (int i = statements.length-2; i >= 0; i--)
+      if (statements[i].trim().length() > 0) return i;
+    return -1;
+  }
+
+  private void emitThrow(CodeWriter code, String message) {
+    code.type(CodeWriter.NEW, ERROR);
+    code.op(CodeWriter.DUP);
+    code.pushString(message);
+    code.invoke(CodeWriter.INVOKESPECIAL, ERROR, "<init>", "(Ljava/lang/String;)V");
+    code.op(CodeWriter.ATHROW);
+  }
+
+  /**
+   * <code>yytext</code>, <code>yylength</code>, <code>yycharat</code>,
+   * <code>yychar</code>, <code>yybegin</code>, <code>yystate</code>
+   * and <code>yypushback</code>.
+   */
+  private void emitAPI() {
+    CodeWriter code = new CodeWriter(cw, 3, 1);
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzInput", "L"+CHAR_SEQUENCE+";");
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzStartRead", "I");
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzMarkedPos", "I");
+    code.invokeInterface(CHAR_SEQUENCE, "subSequence", "(II)L"+CHAR_SEQUENCE+";", 3);
+    code.invokeInterface(CHAR_SEQUENCE, "toString", "()Ljava/lang/String;", 1);
+    code.op(CodeWriter.ARETURN);
+    cw.addMethod(visibility | ClassWriter.ACC_FINAL, "yytext", "()Ljava/lang/String;", code);
+
+    code = new CodeWriter(cw, 2, 1);
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzMarkedPos", "I");
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzStartRead", "I");
+    code.op(CodeWriter.ISUB);
+    code.op(CodeWriter.IRETURN);
+    cw.addMethod(visibility | ClassWriter.ACC_FINAL, "yylength", "()I", code);
+
+    code = new CodeWriter(cw, 3, 2);
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzInput", "L"+CHAR_SEQUENCE+";");
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzStartRead", "I");
+    code.var(CodeWriter.ILOAD, 1);
+    code.op(CodeWriter.IADD);
+    code.invokeInterface(CHAR_SEQUENCE, "charAt", "(I)C", 2);
+    code.op(CodeWriter.IRETURN);
+    cw.addMethod(visibility | ClassWriter.ACC_FINAL, "yycharat", "(I)C", code);
+
+    code = new CodeWriter(cw, 1, 1);
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzStartRead", "I");
+    code.op(CodeWriter.IRETURN);
+    cw.addMethod(visibility | ClassWriter.ACC_FINAL, "yychar", "()I", code);
+
+    code = new CodeWriter(cw, 2, 2);
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ILOAD, 1);
+    code.field(CodeWriter.PUTFIELD, name, "zzLexicalState", "I");
+    code.op(CodeWriter.RETURN);
+    cw.addMethod(visibility | ClassWriter.ACC_FINAL, "yybegin", "(I)V", code);
+
+    code = new CodeWriter(cw, 1, 1);
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzLexicalState", "I");
+    code.op(CodeWriter.IRETURN);
+    cw.addMethod(visibility | ClassWriter.ACC_FINAL, "yystate", "()I", code);
+
+    code = new CodeWriter(cw, 4, 2);
+    int ok = code.newLabel();
+    code.var(CodeWriter.ILOAD, 1);
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzMarkedPos", "I");
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzStartRead", "I");
+    code.op(CodeWriter.ISUB);
+    code.jump(CodeWriter.IF_ICMPLE, ok);
+    emitThrow(code, "Error: pushback value was too large");
+    code.mark(ok);
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ALOAD, 0);
+    code.field(CodeWriter.GETFIELD, name, "zzMarkedPos", "I");
+    code.var(CodeWriter.ILOAD, 1);
+    code.op(CodeWriter.ISUB);
+    code.field(CodeWriter.PUTFIELD, name, "zzMarkedPos", "I");
+    code.op(CodeWriter.RETURN);
+    cw.addMethod(visibility | ClassWriter.ACC_FINAL, "yypushback", "(I)V", code);
+  }
+
+  /**
+   * <code>static boolean zzIsBOL(CharSequence in, int pos, int length)</code>:
+   * true iff the character before <code>pos</code> ends a line.
+   */
+  private void emitIsBOL() {
+    CodeWriter code = new CodeWriter(cw, 3, 3);
+    int yes = code.newLabel();
+    int no = code.newLabel();
+    int cr = code.newLabel();
+
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ILOAD, 1);
+    code.push(1);
+    code.op(CodeWriter.ISUB);
+    code.invokeInterface(CHAR_SEQUENCE, "charAt", "(I)C", 2);
+    code.lookupSwitch(new int [] { '\n', '\u000B', '\u000C', '\r', '\u0085', '\u2028', '\u2029' },
+                      new int [] { yes, yes, yes, cr, yes, yes, yes }, no);
+
+    code.mark(cr);
+    code.var(CodeWriter.ILOAD, 1);
+    code.var(CodeWriter.ILOAD, 2);
+    code.jump(CodeWriter.IF_ICMPGE, no);
+    code.var(CodeWriter.ALOAD, 0);
+    code.var(CodeWriter.ILOAD, 1);
+    code.invokeInterface(CHAR_SEQUENCE, "charAt", "(I)C", 2);
+    code.push('\n');
+    code.jump(CodeWriter.IF_ICMPEQ, no);
+
+    code.mark(yes);
+    code.push(1);
+    code.op(CodeWriter.IRETURN);
+
+    code.mark(no);
+    code.push(0);
+    code.op(CodeWriter.IRETURN);
+
+    cw.addMethod(ClassWriter.ACC_PRIVATE | ClassWriter.ACC_STATIC, "zzIsBOL",
+                 "(L"+CHAR_SEQUENCE+";II)Z", code);
+  }
+}
@@ -0,0 +1,304 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes a Java class file: constant pool, fields and methods with
+ * their code (see {@link CodeWriter}).
+ *
+ * Only the parts of the class file format that {@link ClassEmitter}
+ * needs are supported. Class files are written in version 49 (Java 5),
+ * which needs no stack map frames, so methods can be written in one
+ * pass without type analysis.
+ *
+ * Names are internal names (<code>java/lang/String</code>), types are
+ * descriptors (<code>Ljava/lang/String;</code>).
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final class ClassWriter {
+
+  static final int ACC_PUBLIC    = 0x0001;
+  static final int ACC_PRIVATE   = 0x0002;
+  static final int ACC_STATIC    = 0x0008;
+  static final int ACC_FINAL     = 0x0010;
+  static final int ACC_SUPER     = 0x0020;
+
+  private static final int CONSTANT_Utf8               = 1;
+  private static final int CONSTANT_Integer            = 3;
+  private static final int CONSTANT_Class              = 7;
+  private static final int CONSTANT_String             = 8;
+  private static final int CONSTANT_Fieldref           = 9;
+  private static final int CONSTANT_Methodref          = 10;
+  private static final int CONSTANT_InterfaceMethodref = 11;
+  private static final int CONSTANT_NameAndType        = 12;
+
+  /** the longest string constant, in bytes of its UTF-8 encoding */
+  static final int MAX_UTF8 = 0xFFFF;
+
+  /** the constant pool, without the first (unused) entry */
+  private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+  private DataOutputStream poolOut = new DataOutputStream(pool);
+
+  /** the index of each constant, keyed by tag and content */
+  private Map<String, Integer> constants = new HashMap<String, Integer>();
+
+  /** the number of the next constant */
+  private int nextConstant = 1;
+
+  private ByteArrayOutputStream fields = new ByteArrayOutputStream();
+  private DataOutputStream fieldsOut = new DataOutputStream(fields);
+  private int numFields;
+
+  private ByteArrayOutputStream methods = new ByteArrayOutputStream();
+  private DataOutputStream methodsOut = new DataOutputStream(methods);
+  private int numMethods;
+
+  private int access;
+  private int thisClass;
+  private int superClass;
+  private int sourceFile;
+
+
+  /**
+   * Starts a class.
+   *
+   * @param access      the access flags of the class
+   * @param name        the internal name of the class
+   * @param superName   the internal name of the super class
+   * @param sourceFile  the name of the source file, <code>null</code> for none
+   */
+  ClassWriter(int access, String name, String superName, String sourceFile) {
+    this.access = access | ACC_SUPER;
+    this.thisClass = classConstant(name);
+    this.superClass = classConstant(superName);
+    this.sourceFile = sourceFile == null ? 0 : utf8(sourceFile);
+  }
+
+  /**
+   * Adds a field.
+   *
+   * @param access      the access flags of the field
+   * @param name        the name of the field
+   * @param type        the descriptor of the field
+   * @param value       the constant value of a static final field,
+   *                    <code>null</code> for none
+   */
+  void addField(int access, String name, String type, Integer value) {
+    try {
+      fieldsOut.writeShort(access);
+      fieldsOut.writeShort(utf8(name));
+      fieldsOut.writeShort(utf8(type));
+      if (value == null) {
+        fieldsOut.writeShort(0);
+      }
+      else {
+        fieldsOut.writeShort(1);
+        fieldsOut.writeShort(utf8("ConstantValue"));
+        fieldsOut.writeInt(2);
+        fieldsOut.writeShort(intConstant(value));
+      }
+    }
+    catch (IOException e) {
+      throw new Error(e.toString());
+    }
+    numFields++;
+  }
+
+  /**
+   * Adds a method.
+   *
+   * @param access  the access flags of the method
+   * @param name    the name of the method
+   * @param type    the descriptor of the method
+   * @param code    the code of the method, complete
+   */
+  void addMethod(int access, String name, String type, CodeWriter code) {
+    byte [] bytes = code.toBytes();
+
+    try {
+      methodsOut.writeShort(access);
+      methodsOut.writeShort(utf8(name));
+      methodsOut.writeShort(utf8(type));
+      methodsOut.writeShort(1);
+      methodsOut.writeShort(utf8("Code"));
+      methodsOut.writeInt(12 + bytes.length);
+      methodsOut.writeShort(code.getMaxStack());
+      methodsOut.writeShort(code.getMaxLocals());
+      methodsOut.writeInt(bytes.length);
+      methodsOut.write(bytes);
+      methodsOut.writeShort(0);  // exception table
+      methodsOut.writeShort(0);  // attributes
+    }
+    catch (IOException e) {
+      throw new Error(e.toString());
+    }
+    numMethods++;
+  }
+
+  /**
+   * @return the class file
+   */
+  byte [] toBytes() {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(result);
+
+    try {
+      int sourceAttribute = sourceFile == 0 ? 0 : utf8("SourceFile");
+
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);   // minor version
+      out.writeShort(49);  // major version: Java 5
+      out.writeShort(nextConstant);
+      pool.writeTo(out);
+      out.writeShort(access);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0);   // interfaces
+      out.writeShort(numFields);
+      fields.writeTo(out);
+      out.writeShort(numMethods);
+      methods.writeTo(out);
+
+      if (sourceFile == 0) {
+        out.writeShort(0);
+      }
+      else {
+        out.writeShort(1);
+        out.writeShort(sourceAttribute);
+        out.writeInt(2);
+        out.writeShort(sourceFile);
+      }
+    }
+    catch (IOException e) {
+      throw new Error(e.toString());
+    }
+
+    return result.toByteArray();
+  }
+
+  /**
+   * @return the number of bytes of the modified UTF-8 encoding of a
+   *         string in a class file
+   */
+  static int utf8Length(String s) {
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c >= 1 && c <= 0x7F) length += 1;
+      else if (c <= 0x7FF) length += 2;
+      else length += 3;
+    }
+    return length;
+  }
+
+  int utf8(String value) {
+    Integer index = constants.get("U" + value);
+    if (index != null) return index;
+
+    try {
+      poolOut.writeByte(CONSTANT_Utf8);
+      poolOut.writeUTF(value);
+    }
+    catch (IOException e) {
+      throw new Error(e.toString());
+    }
+    return add("U" + value, 1);
+  }
+
+  int intConstant(int value) {
+    Integer index = constants.get("I" + value);
+    if (index != null) return index;
+
+    try {
+      poolOut.writeByte(CONSTANT_Integer);
+      poolOut.writeInt(value);
+    }
+    catch (IOException e) {
+      throw new Error(e.toString());
+    }
+    return add("I" + value, 1);
+  }
+
+  int stringConstant(String value) {
+    Integer index = constants.get("S" + value);
+    if (index != null) return index;
+
+    int utf8 = utf8(value);
+    write(CONSTANT_String, utf8);
+    return add("S" + value, 1);
+  }
+
+  int classConstant(String name) {
+    Integer index = constants.get("C" + name);
+    if (index != null) return index;
+
+    int utf8 = utf8(name);
+    write(CONSTANT_Class, utf8);
+    return add("C" + name, 1);
+  }
+
+  int fieldConstant(String owner, String name, String type) {
+    return member(CONSTANT_Fieldref, owner, name, type);
+  }
+
+  int methodConstant(String owner, String name, String type) {
+    return member(CONSTANT_Methodref, owner, name, type);
+  }
+
+  int interfaceMethodConstant(String owner, String name, String type) {
+    return member(CONSTANT_InterfaceMethodref, owner, name, type);
+  }
+
+  private int member(int tag, String owner, String name, String type) {
+    String key = tag + owner + "." + name + ":" + type;
+    Integer index = constants.get(key);
+    if (index != null) return index;
+
+    int ownerIndex = classConstant(owner);
+    int nameAndType = nameAndType(name, type);
+    write(tag, ownerIndex, nameAndType);
+    return add(key, 1);
+  }
+
+  private int nameAndType(String name, String type) {
+    String key = "N" + name + ":" + type;
+    Integer index = constants.get(key);
+    if (index != null) return index;
+
+    int nameIndex = utf8(name);
+    int typeIndex = utf8(type);
+    write(CONSTANT_NameAndType, nameIndex, typeIndex);
+    return add(key, 1);
+  }
+
+  private void write(int tag, int... indices) {
+    try {
+      poolOut.writeByte(tag);
+      for (int i = 0; i < indices.length; i++)
+        poolOut.writeShort(indices[i]);
+    }
+    catch (IOException e) {
+      throw new Error(e.toString());
+    }
+  }
+
+  private int add(String key, int size) {
+    int index = nextConstant;
+    nextConstant += size;
+    if (nextConstant > 0xFFFF) throw new IllegalStateException("constant pool too large");
+    constants.put(key, index);
+    return index;
+  }
+}
@@ -0,0 +1,142 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * Thin client of a {@link Server}: sends a JFlex commandline to a
+ * running server and reports its messages and exit status.
+ *
+ * Usage: <code>java -cp JFlex.jar jflex.Client [--port &lt;port&gt;]
+ * &lt;options&gt; &lt;input-files&gt;</code>, with the options of
+ * {@link Main}. If no server of the user is running (see
+ * {@link #tokenFile}), the client generates the scanners itself.
+ *
+ * The client does not load the generator classes when it reaches a
+ * server, so it starts as fast as the JVM.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class Client {
+
+  /**
+   * Returns the file in which the server at a port stores its token:
+   * <code>.jflex-server-&lt;port&gt;</code> in the user's home directory.
+   *
+   * @param port  the port of the server
+   */
+  public static File tokenFile(int port) {
+    return new File(System.getProperty("user.home"), ".jflex-server-"+port);
+  }
+
+  /**
+   * Reads the token of the server at a port.
+   *
+   * @param port  the port of the server
+   * @throws FileNotFoundException  if no server of this user runs at the port
+   * @throws IOException            if the token file cannot be read
+   */
+  static String readToken(int port) throws IOException {
+    BufferedReader in = new BufferedReader(
+      new InputStreamReader(new FileInputStream(tokenFile(port)), "UTF-8"));
+    try {
+      String token = in.readLine();
+      if (token == null) throw new FileNotFoundException(tokenFile(port).toString());
+      return token;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Sends a commandline to a server.
+   *
+   * @param port      the port of the server
+   * @param base      the directory relative file names refer to
+   * @param argv      the commandline
+   * @param messages  where to write the messages of the server
+   * @return the exit status
+   * @throws FileNotFoundException  if the user has no token for the port
+   * @throws IOException  if there is no server at the port or the
+   *                      connection fails
+   */
+  public static int run(int port, File base, String [] argv, OutputStream messages)
+    throws IOException {
+
+    String token = readToken(port);
+
+    Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+    try {
+      DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(socket.getOutputStream()));
+      out.writeUTF(token);
+      out.writeUTF(base.getAbsolutePath());
+      out.writeInt(argv.length);
+      for (int i = 0; i < argv.length; i++)
+        out.writeUTF(argv[i]);
+      out.flush();
+
+      DataInputStream in = new DataInputStream(
+        new BufferedInputStream(socket.getInputStream()));
+      int status = in.readInt();
+      byte [] buf = new byte [in.readInt()];
+      in.readFully(buf);
+      messages.write(buf);
+      messages.flush();
+
+      return status;
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  public static void main(String argv[]) {
+    int port = Server.DEFAULT_PORT;
+
+    if (argv.length >= 2 && argv[0].equals("--port")) {
+      try {
+        port = Integer.parseInt(argv[1]);
+      }
+      catch (NumberFormatException e) {
+        System.err.println("Error: \""+argv[1]+"\" is not a port number.");
+        System.exit(1);
+      }
+      String [] rest = new String [argv.length-2];
+      System.arraycopy(argv, 2, rest, 0, rest.length);
+      argv = rest;
+    }
+
+    int status;
+    try {
+      status = run(port, new File("."), argv, System.out);
+    }
+    catch (FileNotFoundException e) {
+      // no server of this user running
+      Main.main(argv);
+      return;
+    }
+    catch (ConnectException e) {
+      // no server running
+      Main.main(argv);
+      return;
+    }
+    catch (IOException e) {
+      System.err.println("Error: "+e);
+      status = 1;
+    }
+
+    System.exit(status);
+  }
+}
@@ -0,0 +1,334 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.*;
+
+/**
+ * Writes the byte code of one method for a {@link ClassWriter}.
+ *
+ * Jump targets are labels, numbered by {@link #newLabel} and placed by
+ * {@link #mark}. Jumps to labels that are placed later are patched
+ * when the label is placed. The maximum stack depth is given by the
+ * caller, no stack analysis is done.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final class CodeWriter {
+
+  static final int ICONST_0      = 0x03;
+  static final int BIPUSH        = 0x10;
+  static final int SIPUSH        = 0x11;
+  static final int LDC_W         = 0x13;
+  static final int ILOAD         = 0x15;
+  static final int ALOAD         = 0x19;
+  static final int IALOAD        = 0x2E;
+  static final int CALOAD        = 0x34;
+  static final int ISTORE        = 0x36;
+  static final int ASTORE        = 0x3A;
+  static final int IASTORE       = 0x4F;
+  static final int CASTORE       = 0x55;
+  static final int POP           = 0x57;
+  static final int DUP           = 0x59;
+  static final int IADD          = 0x60;
+  static final int ISUB          = 0x64;
+  static final int IMUL          = 0x68;
+  static final int IAND          = 0x7E;
+  static final int IINC          = 0x84;
+  static final int IFEQ          = 0x99;
+  static final int IFNE          = 0x9A;
+  static final int IFLT          = 0x9B;
+  static final int IFGE          = 0x9C;
+  static final int IFGT          = 0x9D;
+  static final int IFLE          = 0x9E;
+  static final int IF_ICMPEQ     = 0x9F;
+  static final int IF_ICMPNE     = 0xA0;
+  static final int IF_ICMPLT     = 0xA1;
+  static final int IF_ICMPGE     = 0xA2;
+  static final int IF_ICMPGT     = 0xA3;
+  static final int IF_ICMPLE     = 0xA4;
+  static final int GOTO          = 0xA7;
+  static final int TABLESWITCH   = 0xAA;
+  static final int LOOKUPSWITCH  = 0xAB;
+  static final int IRETURN       = 0xAC;
+  static final int ARETURN       = 0xB0;
+  static final int RETURN        = 0xB1;
+  static final int GETSTATIC     = 0xB2;
+  static final int PUTSTATIC     = 0xB3;
+  static final int GETFIELD      = 0xB4;
+  static final int PUTFIELD      = 0xB5;
+  static final int INVOKEVIRTUAL = 0xB6;
+  static final int INVOKESPECIAL = 0xB7;
+  static final int INVOKESTATIC  = 0xB8;
+  static final int INVOKEINTERFACE = 0xB9;
+  static final int NEW           = 0xBB;
+  static final int NEWARRAY      = 0xBC;
+  static final int ATHROW        = 0xBF;
+
+  /** array types of <code>NEWARRAY</code> */
+  static final int T_CHAR = 5;
+  static final int T_INT  = 10;
+
+  /** the longest method, in bytes */
+  static final int MAX_CODE = 0xFFFF;
+
+  private ClassWriter cw;
+
+  private byte [] code = new byte [256];
+  private int length;
+
+  private int maxStack;
+  private int maxLocals;
+
+  /** the position of each placed label, -1 for labels not placed yet */
+  private int [] labels = new int [16];
+  private int numLabels;
+
+  /**
+   * jumps to labels not placed yet: label, start of the instruction,
+   * position of the offset, size of the offset (2 or 4)
+   */
+  private List<int []> fixups = new ArrayList<int []>();
+
+
+  /**
+   * @param cw         the class of the method, for constants
+   * @param maxStack   the maximum depth of the operand stack
+   * @param maxLocals  the number of local variables, including
+   *                   <code>this</code> and the parameters
+   */
+  CodeWriter(ClassWriter cw, int maxStack, int maxLocals) {
+    this.cw = cw;
+    this.maxStack = maxStack;
+    this.maxLocals = maxLocals;
+  }
+
+  int getMaxStack() {
+    return maxStack;
+  }
+
+  int getMaxLocals() {
+    return maxLocals;
+  }
+
+  /**
+   * @return the code of the method
+   * @throws IllegalStateException  if a label is used but not placed,
+   *                                or the method is too long
+   */
+  byte [] toBytes() {
+    if (!fixups.isEmpty()) throw new IllegalStateException("label not placed");
+    if (length > MAX_CODE) throw new IllegalStateException("method too long");
+
+    byte [] result = new byte [length];
+    System.arraycopy(code, 0, result, 0, length);
+    return result;
+  }
+
+  /**
+   * @return the current length of the code
+   */
+  int length() {
+    return length;
+  }
+
+  void op(int opcode) {
+    u1(opcode);
+  }
+
+  /** an instruction with a local variable operand */
+  void var(int opcode, int local) {
+    u1(opcode);
+    u1(local);
+  }
+
+  void iinc(int local, int increment) {
+    u1(IINC);
+    u1(local);
+    u1(increment);
+  }
+
+  /** pushes an int constant */
+  void push(int value) {
+    if (value >= -1 && value <= 5) {
+      u1(ICONST_0 + value);
+    }
+    else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      u1(BIPUSH);
+      u1(value);
+    }
+    else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      u1(SIPUSH);
+      u2(value);
+    }
+    else {
+      u1(LDC_W);
+      u2(cw.intConstant(value));
+    }
+  }
+
+  /** pushes a string constant */
+  void pushString(String value) {
+    u1(LDC_W);
+    u2(cw.stringConstant(value));
+  }
+
+  void field(int opcode, String owner, String name, String type) {
+    u1(opcode);
+    u2(cw.fieldConstant(owner, name, type));
+  }
+
+  void invoke(int opcode, String owner, String name, String type) {
+    u1(opcode);
+    u2(cw.methodConstant(owner, name, type));
+  }
+
+  /**
+   * @param args  the number of argument words, including the receiver
+   */
+  void invokeInterface(String owner, String name, String type, int args) {
+    u1(INVOKEINTERFACE);
+    u2(cw.interfaceMethodConstant(owner, name, type));
+    u1(args);
+    u1(0);
+  }
+
+  /** an instruction with a class operand */
+  void type(int opcode, String name) {
+    u1(opcode);
+    u2(cw.classConstant(name));
+  }
+
+  void newArray(int type) {
+    u1(NEWARRAY);
+    u1(type);
+  }
+
+  /**
+   * @return a new label, not placed yet
+   */
+  int newLabel() {
+    if (numLabels == labels.length) {
+      int [] newLabels = new int [2*labels.length];
+      System.arraycopy(labels, 0, newLabels, 0, numLabels);
+      labels = newLabels;
+    }
+    labels[numLabels] = -1;
+    return numLabels++;
+  }
+
+  /**
+   * Places a label at the current position.
+   */
+  void mark(int label) {
+    labels[label] = length;
+
+    for (Iterator<int []> i = fixups.iterator(); i.hasNext(); ) {
+      int [] fixup = i.next();
+      if (fixup[0] != label) continue;
+
+      patch(fixup[2], length - fixup[1], fixup[3]);
+      i.remove();
+    }
+  }
+
+  /** a jump instruction */
+  void jump(int opcode, int label) {
+    int start = length;
+    u1(opcode);
+    offset(label, start, 2);
+  }
+
+  /**
+   * A <code>tableswitch</code> instruction.
+   *
+   * @param low      the first key
+   * @param targets  the label of each key from <code>low</code> on
+   * @param dflt     the label for all other keys
+   */
+  void tableSwitch(int low, int [] targets, int dflt) {
+    int start = length;
+    u1(TABLESWITCH);
+    while (length % 4 != 0) u1(0);
+
+    offset(dflt, start, 4);
+    u4(low);
+    u4(low + targets.length - 1);
+    for (int i = 0; i < targets.length; i++)
+      offset(targets[i], start, 4);
+  }
+
+  /**
+   * A <code>lookupswitch</code> instruction.
+   *
+   * @param keys     the keys, in ascending order
+   * @param targets  the label of each key
+   * @param dflt     the label for all other keys
+   */
+  void lookupSwitch(int [] keys, int [] targets, int dflt) {
+    int start = length;
+    u1(LOOKUPSWITCH);
+    while (length % 4 != 0) u1(0);
+
+    offset(dflt, start, 4);
+    u4(keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      u4(keys[i]);
+      offset(targets[i], start, 4);
+    }
+  }
+
+  private void offset(int label, int start, int size) {
+    if (labels[label] >= 0) {
+      int pos = length;
+      if (size == 2) u2(0); else u4(0);
+      patch(pos, labels[label] - start, size);
+    }
+    else {
+      fixups.add(new int [] { label, start, length, size });
+      if (size == 2) u2(0); else u4(0);
+    }
+  }
+
+  private void patch(int pos, int offset, int size) {
+    if (size == 2) {
+      if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+        throw new IllegalStateException("jump too far");
+      code[pos]   = (byte) (offset >> 8);
+      code[pos+1] = (byte) offset;
+    }
+    else {
+      code[pos]   = (byte) (offset >> 24);
+      code[pos+1] = (byte) (offset >> 16);
+      code[pos+2] = (byte) (offset >> 8);
+      code[pos+3] = (byte) offset;
+    }
+  }
+
+  private void u1(int b) {
+    if (length == code.length) {
+      byte [] newCode = new byte [2*code.length];
+      System.arraycopy(code, 0, newCode, 0, length);
+      code = newCode;
+    }
+    code[length++] = (byte) b;
+  }
+
+  private void u2(int s) {
+    u1(s >> 8);
+    u1(s);
+  }
+
+  private void u4(int i) {
+    u2(i >> 16);
+    u2(i);
+  }
+}
@@ -0,0 +1,205 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.*;
+
+/**
+ * Row displacement ("comb") compression of a transition table.
+ *
+ * The rows of the table are overlaid in one array <code>next</code>,
+ * row <code>r</code> starting at index <code>base[r]</code>. Entry
+ * <code>next[i]</code> belongs to the row with base <code>check[i]</code>
+ * (all bases are distinct). Each row may have a default row: entries
+ * of a row that are equal to the entry of its default row are not stored.
+ * Default rows do not have default rows themselves, so a lookup needs
+ * at most two probes:
+ *
+ * <pre>
+ *   i = base[r] + c
+ *   if (check[i] != base[r]) { i = def[r] + c }
+ *   value = check[i] == base[r] or def[r] ? next[i] : NO_TARGET
+ * </pre>
+ *
+ * A row without default row has <code>def[r] == base[r]</code>.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final public class CombTable {
+
+  /** the start index of each row in <code>next</code> and <code>check</code> */
+  int [] base;
+
+  /** the base of the default row of each row */
+  int [] def;
+
+  /** the overlaid rows */
+  int [] next;
+
+  /** the base of the row each entry in <code>next</code> belongs to, -1 if unused */
+  int [] check;
+
+  /** number of used entries in <code>next</code> */
+  int size;
+
+  /**
+   * Compresses a table.
+   *
+   * @param table  the table, <code>table[r][c]</code> is the entry
+   *               of row <code>r</code> at column <code>c</code>.
+   *               All rows must have the same length.
+   * @param empty  the entry that need not be stored
+   */
+  public CombTable(int [][] table, int empty) {
+    int numRows = table.length;
+    int numCols = numRows > 0 ? table[0].length : 0;
+
+    // choose default rows: dense rows make the best templates. A row 
+    // becomes a template itself if no template covers at least half of it.
+    final int [] entries = new int [numRows];
+    Integer [] dense = new Integer [numRows];
+    for (int r = 0; r < numRows; r++) {
+      entries[r] = count(table[r], empty);
+      dense[r] = r;
+    }
+
+    Arrays.sort(dense, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return entries[b] - entries[a];
+      }
+    });
+
+    int [] defRow = new int [numRows];
+    List<Integer> templates = new ArrayList<Integer>();
+
+    for (int r : dense) {
+      int best = entries[r];
+      defRow[r] = -1;
+
+      for (int t : templates) {
+        int d = diff(table[r], table[t], best);
+        if (d < best) {
+          best = d;
+          defRow[r] = t;
+        }
+      }
+
+      if (2*best > entries[r]) {
+        defRow[r] = -1;
+        templates.add(r);
+      }
+    }
+
+    // the columns to store for each row
+    int [][] columns = new int [numRows][];
+    Integer [] order = new Integer [numRows];
+
+    for (int r = 0; r < numRows; r++) {
+      int [] row = table[r];
+      int [] d = defRow[r] < 0 ? null : table[defRow[r]];
+
+      int n = 0;
+      int [] cols = new int [numCols];
+      for (int c = 0; c < numCols; c++) {
+        if ( d == null ? row[c] != empty : row[c] != d[c] )
+          cols[n++] = c;
+      }
+
+      columns[r] = new int [n];
+      System.arraycopy(cols, 0, columns[r], 0, n);
+      order[r] = r;
+    }
+
+    // place the fullest rows first
+    final int [][] cols = columns;
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return cols[b].length - cols[a].length;
+      }
+    });
+
+    base = new int [numRows];
+    BitSet used = new BitSet();
+    BitSet bases = new BitSet();
+    int firstFree = 0;
+
+    for (int r : order) {
+      int [] rc = columns[r];
+      int b = rc.length > 0 ? Math.max(0, firstFree - rc[0]) : 0;
+
+      while ( bases.get(b) || !fits(used, rc, b) ) b++;
+
+      base[r] = b;
+      bases.set(b);
+      for (int c : rc) used.set(b+c);
+
+      while ( used.get(firstFree) ) firstFree++;
+    }
+
+    // fill arrays
+    int length = 0;
+    for (int r = 0; r < numRows; r++)
+      length = Math.max(length, base[r] + numCols);
+
+    next = new int [length];
+    check = new int [length];
+    Arrays.fill(next, empty);
+    Arrays.fill(check, -1);
+
+    def = new int [numRows];
+
+    for (int r = 0; r < numRows; r++) {
+      def[r] = defRow[r] < 0 ? base[r] : base[defRow[r]];
+      for (int c : columns[r]) {
+        next[base[r]+c] = table[r][c];
+        check[base[r]+c] = base[r];
+        size++;
+      }
+    }
+  }
+
+  /**
+   * Returns the entry of row <code>r</code> in column <code>c</code>.
+   */
+  public int get(int r, int c, int empty) {
+    int i = base[r] + c;
+    int b = base[r];
+    if (check[i] != b) {
+      i = def[r] + c;
+      b = def[r];
+    }
+    return check[i] == b ? next[i] : empty;
+  }
+
+  private static int count(int [] row, int empty) {
+    int n = 0;
+    for (int c = 0; c < row.length; c++)
+      if (row[c] != empty) n++;
+    return n;
+  }
+
+  /**
+   * Number of positions in which two rows differ, stops counting
+   * at <code>max</code>.
+   */
+  private static int diff(int [] a, int [] b, int max) {
+    int n = 0;
+    for (int c = 0; c < a.length && n < max; c++)
+      if (a[c] != b[c]) n++;
+    return n;
+  }
+
+  private static boolean fits(BitSet used, int [] columns, int b) {
+    for (int c : columns)
+      if ( used.get(b+c) ) return false;
+    return true;
+  }
+}
@@ -0,0 +1,227 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.*;
+
+/**
+ * A lexer compiled at runtime from a {@link RuleSet}.
+ *
+ * Holds the tables of the minimized DFA of the rules: the character
+ * map, the transition table with equal columns shared, the action of
+ * each state and the entry states of all lexical states. Matches are
+ * found by {@link LexerMatcher}s, which interpret these tables the way
+ * the code of the skeleton runs the tables of a generated scanner.
+ *
+ * Compiled lexers are immutable and can be used by any number of
+ * threads at once, each with its own matcher.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class CompiledLexer {
+
+  /** the column of each character in the transition table */
+  final char [] charMap;
+
+  /** the number of columns of the transition table */
+  final int numCols;
+
+  /**
+   * transitions, <code>table[state*numCols+column]</code> is the next
+   * state or <code>DFA.NO_TARGET</code>
+   */
+  final int [] table;
+
+  /** <code>isFinal[state]</code> iff the state is final */
+  final boolean [] isFinal;
+
+  /**
+   * <code>isLookEnd[state]</code> iff the base of a general lookahead
+   * expression ends in the state (see {@link DFA#isLookEnd})
+   */
+  final boolean [] isLookEnd;
+
+  /**
+   * the index of the action of each state, <code>-1</code> if the state
+   * has no action of a rule
+   */
+  final int [] action;
+
+  /** the rule id of each action */
+  final int [] ruleId;
+
+  /** the lookahead kind of each action (see {@link Action#lookAhead}) */
+  final int [] lookAhead;
+
+  /** the lookahead length of each action */
+  final int [] lookLength;
+
+  /** the index of the forward and backward entry states of each action */
+  final int [] lookEntry;
+
+  /**
+   * true iff the split position of a general lookahead action is
+   * recorded while matching (see {@link Action#isSinglePass})
+   */
+  final boolean [] singlePass;
+
+  /**
+   * the entry states, <code>2*n</code> for lexical state
+   * <code>n</code>, <code>2*n+1</code> at the beginning of a line
+   */
+  final int [] entryState;
+
+  /** true iff a rule matches only at the beginning of a line */
+  final boolean bolUsed;
+
+  /** the number of each lexical state */
+  private final Map<String, Integer> states;
+
+  /** the name of each lexical state */
+  private final String [] stateNames;
+
+
+  /**
+   * Builds the tables of a minimized DFA.
+   *
+   * @param dfa      the minimized DFA
+   * @param classes  the character classes the DFA reads
+   * @param scanner  the scanner of the rule set
+   * @param ruleIds  the rule id of each action by its priority (the
+   *                 line of the action in the specification)
+   */
+  CompiledLexer(DFA dfa, CharClasses classes, LexScan scanner, Map<Integer, Integer> ruleIds) {
+    LexicalStates states = scanner.states;
+    bolUsed = scanner.bolUsed;
+
+    int [] colMap = dfa.columnMap();
+    int cols = 0;
+    for (int i = 0; i < colMap.length; i++)
+      if (colMap[i] >= cols) cols = colMap[i]+1;
+    numCols = cols;
+
+    charMap = new char [CharClasses.maxChar+1];
+    CharClassInterval [] intervals = classes.getIntervals();
+    for (int i = 0; i < intervals.length; i++) {
+      char col = (char) colMap[intervals[i].charClass];
+      for (int c = intervals[i].start; c <= intervals[i].end; c++)
+        charMap[c] = col;
+    }
+
+    int numStates = dfa.numStates;
+    table = new int [numStates*numCols];
+    isFinal = new boolean [numStates];
+    isLookEnd = new boolean [numStates];
+    action = new int [numStates];
+
+    Map<Action, Integer> index = new IdentityHashMap<Action, Integer>();
+    List<Action> actions = new ArrayList<Action>();
+
+    for (int s = 0; s < numStates; s++) {
+      for (int i = 0; i < dfa.numInput; i++)
+        table[s*numCols+colMap[i]] = dfa.table[s][i];
+
+      isFinal[s] = dfa.isFinal[s];
+      isLookEnd[s] = dfa.isLookEnd[s];
+
+      Action a = dfa.action[s];
+      if (a == null || !a.isEmittable()) {
+        action[s] = -1;
+        continue;
+      }
+
+      Integer n = index.get(a);
+      if (n == null) {
+        n = actions.size();
+        index.put(a, n);
+        actions.add(a);
+      }
+      action[s] = n;
+    }
+
+    ruleId = new int [actions.size()];
+    lookAhead = new int [actions.size()];
+    lookLength = new int [actions.size()];
+    lookEntry = new int [actions.size()];
+    singlePass = new boolean [actions.size()];
+
+    for (int i = 0; i < ruleId.length; i++) {
+      Action a = actions.get(i);
+      ruleId[i] = ruleIds.get(a.priority);
+      lookAhead[i] = a.lookAhead();
+      lookLength[i] = a.getLookLength();
+      lookEntry[i] = a.getEntryState();
+      singlePass[i] = a.isSinglePass();
+    }
+
+    entryState = new int [dfa.entryState.length];
+    System.arraycopy(dfa.entryState, 0, entryState, 0, entryState.length);
+
+    Map<String, Integer> stateMap = new HashMap<String, Integer>();
+    stateNames = new String [states.number()];
+    for (String name : states.names()) {
+      int num = states.getNumber(name);
+      stateMap.put(name, num);
+      stateNames[num] = name;
+    }
+    this.states = Collections.unmodifiableMap(stateMap);
+  }
+
+  /**
+   * Creates a matcher that splits an input into tokens. The matcher
+   * starts in lexical state <code>YYINITIAL</code>.
+   *
+   * @param input  the input, must not change while it is matched
+   * @return a matcher at the start of the input
+   */
+  public LexerMatcher matcher(CharSequence input) {
+    return new LexerMatcher(this, input);
+  }
+
+  /**
+   * @return the names of the lexical states
+   */
+  public Set<String> getStates() {
+    return states.keySet();
+  }
+
+  /**
+   * @return the number of states of the minimized DFA
+   */
+  public int getDFAStates() {
+    return isFinal.length;
+  }
+
+  /**
+   * @return the number of a lexical state
+   * @throws IllegalArgumentException  if there is no such state
+   */
+  int stateNumber(String name) {
+    Integer num = states.get(name);
+    if (num == null) throw new IllegalArgumentException("unknown lexical state "+name);
+    return num;
+  }
+
+  /**
+   * @return the name of a lexical state
+   */
+  String stateName(int num) {
+    return stateNames[num];
+  }
+
+  /**
+   * @return the state after reading a character, <code>DFA.NO_TARGET</code>
+   *         if there is no transition
+   */
+  int next(int state, char c) {
+    return table[state*numCols+charMap[c]];
+  }
+}
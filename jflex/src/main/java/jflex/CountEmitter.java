@@ -39,35 +39,35 @@ public class CountEmitter extends PackEmitter {
    */
   public void emitUnpack() {
     // close last string chunk:
-    println("\";");
+    emitClose();
     
     nl();
-    println("  private static int [] zzUnpack"+name+"() {");
-    println("    int [] result = new int["+numEntries+"];");
+    println("  private static "+type+" [] zzUnpack"+name+"() {");
+    println("    "+type+" [] result = new "+type+"["+numEntries+"];");
     println("    int offset = 0;");
 
     for (int i = 0; i < chunks; i++) {
-      println("    offset = zzUnpack"+name+"("+constName()+"_PACKED_"+i+", offset, result);");
+      println("    offset = zzUnpack"+name+"("+chunk(i)+", offset, result);");
     }
 
     println("    return result;");
     println("  }");
     nl();
 
-    println("  private static int zzUnpack"+name+"(String packed, int offset, int [] result) {");
+    println("  private static int zzUnpack"+name+"("+packedType()+" packed, int offset, "+type+" [] result) {");
     println("    int i = 0;       /* index in packed string  */");
     println("    int j = offset;  /* index in unpacked array */");
-    println("    int l = packed.length();");
+    println("    int l = "+packedLength()+";");
     println("    while (i < l) {");
-    println("      int count = packed.charAt(i++);");
-    println("      int value = packed.charAt(i++);");
+    println("      int count = "+packedNext()+";");
+    println("      int value = "+packedNext()+";");
     if (translate == 1) {
       println("      value--;");
     } 
     else if (translate != 0) {
       println("      value-= "+translate);
     }
-    println("      do result[j++] = value; while (--count > 0);");
+    println("      do result[j++] = "+cast()+"value; while (--count > 0);");
     println("    }");
     println("    return j;");
     println("  }");
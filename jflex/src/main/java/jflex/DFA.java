@@ -47,6 +47,23 @@ final public class DFA {
    */
   boolean [] isFinal;
 
+
+  /**
+   * <code>isLookEnd[state] == true</code> <=> the base expression of a 
+   * single pass general lookahead rule <code>r1/r2</code> can end in 
+   * <code>state</code>, i.e. the split position has to be recorded 
+   * when <code>state</code> is reached.
+   */
+  boolean [] isLookEnd;
+
+
+  /**
+   * <code>tags[state]</code> are the capture group registers that record
+   * the current position when <code>state</code> is reached, 
+   * <code>null</code> if there are none.
+   */
+  int [] [] tags;
+
   
   /**
    * <code>action[state]</code> is the action that is to be carried out in
@@ -81,10 +98,24 @@ final public class DFA {
    */
   Map<Action, Action> usedActions = new HashMap<Action, Action>();
 
-  /** True iff this DFA contains general lookahead */
+  /** True iff this DFA contains forward and backward DFAs for general lookahead */
   boolean lookaheadUsed;
+
+  /** True iff this DFA contains states that record a lookahead split position */
+  boolean lookEndUsed;
+
+  /** the names of the capture groups, register <code>2*i</code> and <code>2*i+1</code> belong to group <code>i</code> */
+  List<String> groupNames = new ArrayList<String>();
+
+  /** the context of the generator run */
+  private GeneratorContext context;
   
   public DFA(int numEntryStates, int numInp, int numLexStates) {
+    this(numEntryStates, numInp, numLexStates, GeneratorContext.current());
+  }
+
+  public DFA(int numEntryStates, int numInp, int numLexStates, GeneratorContext context) {
+    this.context = context;
     numInput = numInp; 
     
     int statesNeeded = Math.max(numEntryStates, STATES);
@@ -92,6 +123,8 @@ final public class DFA {
     table       = new int [statesNeeded] [numInput];
     action      = new Action [statesNeeded];
     isFinal     = new boolean [statesNeeded];
+    isLookEnd   = new boolean [statesNeeded];
+    tags        = new int [statesNeeded] [];
     entryState  = new int [numEntryStates];
     numStates   = 0;
 
@@ -105,6 +138,8 @@ final public class DFA {
 
 
   public void setEntryState(int eState, int trueState) {
+    ensureStateCapacity(trueState+1);
+    if (trueState >= numStates) numStates = trueState+1;
     entryState[eState] = trueState;
   }
 
@@ -117,11 +152,14 @@ final public class DFA {
     while ( newLength <= newNumStates ) newLength*= 2;
 
     boolean [] newFinal    = new boolean [newLength];
-    boolean [] newPushback = new boolean [newLength];
+    boolean [] newLookEnd  = new boolean [newLength];
+    int [] []  newTags     = new int [newLength] [];
     Action  [] newAction   = new Action  [newLength];
     int [] []  newTable    = new int [newLength] [numInput];
     
     System.arraycopy(isFinal,0,newFinal,0,numStates);
+    System.arraycopy(isLookEnd,0,newLookEnd,0,numStates);
+    System.arraycopy(tags,0,newTags,0,numStates);
     System.arraycopy(action,0,newAction,0,numStates);
     System.arraycopy(table,0,newTable,0,oldLength);
   
@@ -134,6 +172,8 @@ final public class DFA {
     }
 
     isFinal    = newFinal;
+    isLookEnd  = newLookEnd;
+    tags       = newTags;
     action     = newAction;
     table      = newTable;
   }
@@ -143,7 +183,7 @@ final public class DFA {
     action[state]    = stateAction;
     if (stateAction != null) {
       usedActions.put(stateAction,stateAction);
-      lookaheadUsed |= stateAction.isGenLookAction();
+      lookaheadUsed |= !stateAction.isEmittable();
     }
   }
   
@@ -151,6 +191,15 @@ final public class DFA {
     isFinal[state] = isFinalState;
   }
 
+  public void setLookEnd(int state, boolean isLookEndState) {
+    isLookEnd[state] = isLookEndState;
+    lookEndUsed |= isLookEndState;
+  }
+
+  public void setTags(int state, int [] stateTags) {
+    tags[state] = stateTags;
+  }
+
   public void addTransition(int start, char input, int dest) {
     int max = Math.max(start,dest)+1;
     ensureStateCapacity(max);
@@ -162,6 +211,98 @@ final public class DFA {
   }
 
 
+  /**
+   * Maps each input character class to a column of the transition
+   * table. Character classes with equal transitions in all states
+   * share a column, columns are numbered in order of their first
+   * character class.
+   *
+   * @return the column of each input character class
+   */
+  public int [] columnMap() {
+    int [] colMap = new int [numInput];
+    int numCols = 0;
+
+    for (int i = 0; i < numInput; i++) {
+      colMap[i] = numCols;
+
+      for (int j = 0; j < i; j++) {
+        int k = 0;
+        while (k < numStates && table[k][i] == table[k][j]) k++;
+
+        if (k == numStates) {
+          colMap[i] = colMap[j];
+          break;
+        }
+      }
+
+      if (colMap[i] == numCols) numCols++;
+    }
+
+    return colMap;
+  }
+
+
+  /**
+   * A hash of the transition table and final states of this DFA.
+   * Does not depend on the JVM, so it can be stored in files to
+   * identify the automaton in later runs.
+   */
+  public int signature() {
+    int h = 31*numStates + numInput;
+
+    for (int s = 0; s < numStates; s++) {
+      h = 31*h + (isFinal[s] ? 1 : 0);
+      for (int i = 0; i < numInput; i++)
+        h = 31*h + table[s][i];
+    }
+
+    return h;
+  }
+
+
+  /**
+   * Gives each state of this DFA a new number.
+   *
+   * @param newNumber  <code>newNumber[s]</code> is the new number
+   *                   of state <code>s</code>, must be a permutation
+   *                   of <code>0..numStates-1</code>
+   */
+  public void renumber(int [] newNumber) {
+    int length = isFinal.length;
+
+    boolean [] newFinal    = new boolean [length];
+    boolean [] newLookEnd  = new boolean [length];
+    int [] []  newTags     = new int [length] [];
+    Action  [] newAction   = new Action  [length];
+    int [] []  newTable    = new int [length] [];
+
+    for (int s = 0; s < numStates; s++) {
+      int n = newNumber[s];
+      newFinal[n]   = isFinal[s];
+      newLookEnd[n] = isLookEnd[s];
+      newTags[n]    = tags[s];
+      newAction[n]  = action[s];
+      newTable[n]   = table[s];
+
+      for (int i = 0; i < numInput; i++)
+        if (table[s][i] != NO_TARGET) table[s][i] = newNumber[table[s][i]];
+    }
+
+    for (int s = numStates; s < length; s++)
+      newTable[s] = table[s];
+
+    for (int i = 0; i < entryState.length; i++)
+      entryState[i] = newNumber[entryState[i]];
+
+    isFinal    = newFinal;
+    isLookEnd  = newLookEnd;
+    tags       = newTags;
+    action     = newAction;
+    table      = newTable;
+  }
+
+
 
   public String toString() {
     StringBuilder result = new StringBuilder();
@@ -177,6 +318,8 @@ final public class DFA {
         }
         result.append("] ");
       }
+      if ( isLookEnd[i] ) result.append("[LOOK_END] ");
+      if ( tags[i] != null ) result.append("[TAGS "+Arrays.toString(tags[i])+"] ");
       result.append(i+":"+Out.NL);
      
       for (char j=0; j < numInput; j++) {
@@ -244,6 +387,137 @@ final public class DFA {
   }
 
 
+  /**
+   * Writes this DFA in the format read by {@link #read}. Actions are
+   * written as their index in a list of actions. Rows of the transition
+   * table are run length encoded.
+   *
+   * @param out    where to write the DFA
+   * @param index  the index of each action of this DFA
+   * @throws IOException  if <code>out</code> throws it
+   */
+  void write(DataOutput out, Map<Action, Integer> index) throws IOException {
+    out.writeInt(numInput);
+    out.writeInt(numLexStates);
+    out.writeInt(entryState.length);
+    for (int i = 0; i < entryState.length; i++) 
+      out.writeInt(entryState[i]);
+
+    out.writeInt(numStates);
+    for (int s = 0; s < numStates; s++) {
+      out.writeBoolean(isFinal[s]);
+      out.writeBoolean(isLookEnd[s]);
+      out.writeInt(action[s] == null ? -1 : index(index, action[s]));
+
+      if (tags[s] == null) {
+        out.writeInt(-1);
+      }
+      else {
+        out.writeInt(tags[s].length);
+        for (int i = 0; i < tags[s].length; i++) 
+          out.writeInt(tags[s][i]);
+      }
+
+      int c = 0;
+      while (c < numInput) {
+        int target = table[s][c];
+        int start = c;
+        while (c < numInput && table[s][c] == target) c++;
+        out.writeInt(c-start);
+        out.writeInt(target);
+      }
+    }
+
+    out.writeInt(usedActions.size());
+    for (Action a : usedActions.values()) 
+      out.writeInt(index(index, a));
+
+    out.writeBoolean(lookaheadUsed);
+    out.writeBoolean(lookEndUsed);
+
+    out.writeInt(groupNames.size());
+    for (String name : groupNames) 
+      out.writeUTF(name);
+  }
+
+
+  /**
+   * Reads a DFA written by {@link #write}.
+   *
+   * @param in       where to read the DFA from
+   * @param actions  the actions by index
+   * @param context  the context of the generator run
+   * @return the DFA
+   * @throws IOException  if <code>in</code> throws it, or if the data
+   *                      does not describe a DFA with these actions
+   */
+  static DFA read(DataInput in, List<Action> actions, GeneratorContext context) throws IOException {
+    int numInput = in.readInt();
+    int numLexStates = in.readInt();
+    int numEntryStates = in.readInt();
+
+    DFA dfa = new DFA(numEntryStates, numInput, numLexStates, context);
+    
+    for (int i = 0; i < numEntryStates; i++) 
+      dfa.entryState[i] = in.readInt();
+
+    int numStates = in.readInt();
+    dfa.ensureStateCapacity(numStates);
+    dfa.numStates = numStates;
+
+    for (int s = 0; s < dfa.numStates; s++) {
+      dfa.isFinal[s] = in.readBoolean();
+      dfa.isLookEnd[s] = in.readBoolean();
+
+      int a = in.readInt();
+      if (a >= 0) dfa.action[s] = action(actions, a);
+
+      int numTags = in.readInt();
+      if (numTags >= 0) {
+        dfa.tags[s] = new int [numTags];
+        for (int i = 0; i < numTags; i++) 
+          dfa.tags[s][i] = in.readInt();
+      }
+
+      int c = 0;
+      while (c < numInput) {
+        int length = in.readInt();
+        int target = in.readInt();
+        if (length <= 0 || c+length > numInput || target < NO_TARGET || target >= dfa.numStates)
+          throw new IOException("corrupt transition table");
+        while (length-- > 0) dfa.table[s][c++] = target;
+      }
+    }
+
+    int numUsed = in.readInt();
+    for (int i = 0; i < numUsed; i++) {
+      Action a = action(actions, in.readInt());
+      dfa.usedActions.put(a, a);
+    }
+
+    dfa.lookaheadUsed = in.readBoolean();
+    dfa.lookEndUsed = in.readBoolean();
+
+    int numGroups = in.readInt();
+    for (int i = 0; i < numGroups; i++) 
+      dfa.groupNames.add(in.readUTF());
+
+    return dfa;
+  }
+
+  private static int index(Map<Action, Integer> index, Action a) throws IOException {
+    Integer i = index.get(a);
+    if (i == null) throw new IOException("unknown action "+a);
+    return i;
+  }
+
+  private static Action action(List<Action> actions, int index) throws IOException {
+    if (index < 0 || index >= actions.size()) 
+      throw new IOException("unknown action "+index);
+    return actions.get(index);
+  }
+
+
   /**
    * Implementation of Hopcroft's O(n log n) minimization algorithm, follows
    * description by D. Gries.
@@ -259,7 +533,7 @@ final public class DFA {
       throw new GeneratorException();
     }
 
-    if (Options.no_minimize) {
+    if (context.options.no_minimize) {
       Out.println("minimization skipped.");
       return;
     }
@@ -384,6 +658,8 @@ final public class DFA {
         else {
           found = !isFinal[t-1];
         }
+        found = found && isLookEnd[s-1] == isLookEnd[t-1]
+                      && Arrays.equals(tags[s-1], tags[t-1]);
       
         if (found) { // found -> add state s to block b
           // System.out.println("Found! Adding to block "+(b-b0));
@@ -700,6 +976,8 @@ final public class DFA {
         }
 
         isFinal[j] = isFinal[i];
+        isLookEnd[j] = isLookEnd[i];
+        tags[j] = tags[i];
         action[j] = action[i];
         
         j++;
@@ -781,7 +1059,7 @@ final public class DFA {
       throw new GeneratorException();
     }
 
-    if (Options.no_minimize) {
+    if (context.options.no_minimize) {
       Out.println("minimization skipped.");
       return null;
     }
@@ -807,6 +1085,9 @@ final public class DFA {
           equiv[i][j] = action[i].isEquiv(action[j]);        
         else
           equiv[i][j] = !isFinal[j] && !isFinal[i];
+
+        equiv[i][j] = equiv[i][j] && isLookEnd[i] == isLookEnd[j]
+                                  && Arrays.equals(tags[i], tags[j]);
       }
     }
 
@@ -0,0 +1,79 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+
+/**
+ * The limits of one DFA construction (<code>--maxstates</code>,
+ * <code>--maxmemory</code>, <code>--maxtime</code>).
+ *
+ * The memory of a DFA state is estimated from its transition table row,
+ * its set of NFA states and the bookkeeping of the subset construction.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final class DFABudget {
+
+  /** 0 for no limit */
+  private int maxStates;
+  private long maxBytes;
+  private long maxMillis;
+
+  private long bytesPerState;
+  private long start;
+
+
+  /**
+   * Starts the clock for a DFA construction.
+   *
+   * @param options    the budgets
+   * @param numStates  the number of NFA states
+   * @param numInput   the number of input character classes
+   */
+  DFABudget(GeneratorOptions options, int numStates, int numInput) {
+    this.maxStates = options.maxStates;
+    this.maxBytes = options.maxMemory * 1024L * 1024L;
+    this.maxMillis = options.maxTime * 1000L;
+
+    // table row, bits of the state set, hash entry and objects
+    this.bytesPerState = 4L*numInput + 8L*(numStates/64+1) + 128;
+    this.start = System.currentTimeMillis();
+  }
+
+  /**
+   * @return <code>true</code> iff some budget is set
+   */
+  boolean isLimited() {
+    return maxStates > 0 || maxBytes > 0 || maxMillis > 0;
+  }
+
+  /**
+   * Checks the budgets after a new DFA state has been added.
+   *
+   * @param numDFAStates  the number of DFA states so far
+   * @return the description of the exceeded budget,
+   *         <code>null</code> if all budgets are kept
+   */
+  String check(int numDFAStates) {
+    if (maxStates > 0 && numDFAStates > maxStates)
+      return ErrorMessages.get(ErrorMessages.DFA_BUDGET_STATES, maxStates);
+
+    if (maxBytes > 0 && numDFAStates * bytesPerState > maxBytes)
+      return ErrorMessages.get(ErrorMessages.DFA_BUDGET_MEMORY,
+                               String.valueOf(numDFAStates), String.valueOf(maxBytes >> 20));
+
+    if (maxMillis > 0 && System.currentTimeMillis() - start > maxMillis)
+      return ErrorMessages.get(ErrorMessages.DFA_BUDGET_TIME,
+                               String.valueOf(numDFAStates), String.valueOf(maxMillis / 1000));
+
+    return null;
+  }
+}
@@ -0,0 +1,220 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A directory of minimized DFAs of earlier generator runs (option
+ * <code>--cache</code>).
+ *
+ * The cache file of an NFA is named after a hash of everything its
+ * minimal DFA depends on (see {@link NFA#writeKey}), of the JFlex
+ * version and of the minimization option. Action code, user code and
+ * the code generation method are not part of the key, so changing
+ * only those reuses the DFA of an earlier run, and only the emitter
+ * runs again.
+ *
+ * File format: magic number, format version, the key, the number of
+ * DFA states before minimization, the DFA (see {@link DFA#write}) and
+ * the single pass flags of all actions.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final public class DFACache {
+
+  /** file name suffix of cache files */
+  public static final String SUFFIX = ".dfa";
+
+  /** first bytes of each cache file */
+  private static final int MAGIC = 0x4A464446;
+
+  /** version of the file format, part of the key */
+  private static final int FORMAT = 2;
+
+  /** the cache file for the NFA */
+  private File file;
+
+  /** the key of the NFA */
+  private byte [] key;
+
+  /** the actions of the NFA, by index */
+  private List<Action> actions;
+
+  /** the index of each action of the NFA */
+  private Map<Action, Integer> index = new IdentityHashMap<Action, Integer>();
+
+  /** the number of DFA states before minimization, after {@link #read} */
+  private int dfaStates = -1;
+
+
+  /**
+   * Computes the key of an NFA.
+   *
+   * @param dir      the cache directory
+   * @param nfa      the NFA, before it is converted to a DFA
+   * @param options  the options of the run
+   * @throws IOException  if the key cannot be computed
+   */
+  public DFACache(File dir, NFA nfa, GeneratorOptions options) throws IOException {
+    actions = nfa.actions();
+    for (int i = 0; i < actions.size(); i++)
+      index.put(actions.get(i), i);
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      // every Java platform provides SHA-256
+      throw new Error(e.toString());
+    }
+
+    OutputStream discard = new OutputStream() {
+      public void write(int b) { }
+      public void write(byte [] b, int off, int len) { }
+    };
+
+    DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(new DigestOutputStream(discard, digest)));
+    out.writeInt(FORMAT);
+    out.writeUTF(Main.version);
+    out.writeBoolean(options.no_minimize);
+    nfa.writeKey(out, index);
+    out.close();
+
+    key = digest.digest();
+
+    StringBuilder name = new StringBuilder(2*key.length+SUFFIX.length());
+    for (int i = 0; i < key.length; i++) {
+      name.append(Character.forDigit((key[i] >> 4) & 0xF, 16));
+      name.append(Character.forDigit(key[i] & 0xF, 16));
+    }
+    name.append(SUFFIX);
+
+    file = new File(dir, name.toString());
+  }
+
+  /**
+   * @return the cache file for the NFA
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return the number of DFA states before minimization of the DFA
+   *         read from the cache, -1 if none was read
+   */
+  public int getDFAStates() {
+    return dfaStates;
+  }
+
+  /**
+   * Reads the minimized DFA of the NFA from the cache.
+   *
+   * Restores the single pass flags of general lookahead actions, which
+   * are otherwise determined while the NFA is converted.
+   *
+   * @param context  the context of the generator run
+   * @return the DFA, <code>null</code> if the cache has no valid DFA
+   *         for the NFA
+   */
+  public DFA read(GeneratorContext context) {
+    if (!file.isFile()) return null;
+
+    try {
+      DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT) return null;
+
+        byte [] fileKey = new byte [key.length];
+        in.readFully(fileKey);
+        if (!Arrays.equals(key, fileKey)) return null;
+
+        int numStates = in.readInt();
+        DFA dfa = DFA.read(in, actions, context);
+
+        boolean [] singlePass = new boolean [actions.size()];
+        for (int i = 0; i < singlePass.length; i++)
+          singlePass[i] = in.readBoolean();
+
+        for (int i = 0; i < singlePass.length; i++)
+          actions.get(i).setSinglePass(singlePass[i]);
+
+        dfaStates = numStates;
+        return dfa;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+    catch (RuntimeException e) {
+      // corrupt cache file
+      return null;
+    }
+  }
+
+  /**
+   * Stores the minimized DFA of the NFA in the cache. The file is
+   * written under a temporary name and then renamed, so that
+   * concurrent runs never read a partially written file.
+   *
+   * Failures are reported as warnings, the run does not depend on
+   * the cache.
+   *
+   * @param dfa        the minimized DFA, before states are renumbered
+   * @param dfaStates  the number of states of the DFA before minimization
+   */
+  public void write(DFA dfa, int dfaStates) {
+    File temp = null;
+
+    try {
+      File dir = file.getParentFile();
+      if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException();
+
+      temp = File.createTempFile("jflex", ".tmp", dir);
+
+      DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.write(key);
+        out.writeInt(dfaStates);
+        dfa.write(out, index);
+        for (Action a : actions)
+          out.writeBoolean(a.isSinglePass());
+      }
+      finally {
+        out.close();
+      }
+
+      if (!temp.renameTo(file)) {
+        // another run may have stored the same DFA in the meantime
+        file.delete();
+        if (!temp.renameTo(file)) throw new IOException();
+      }
+    }
+    catch (IOException e) {
+      if (temp != null) temp.delete();
+      Out.warning(ErrorMessages.get(ErrorMessages.DFA_CACHE_WRITE, file.toString()));
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.File;
+
+/**
+ * An error or warning reported by a generator run.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class Diagnostic {
+
+  private final boolean error;
+  private final File file;
+  private final int line;
+  private final int column;
+  private final String message;
+
+  /**
+   * @param error    true for errors, false for warnings
+   * @param file     the file of the position, may be <code>null</code>
+   * @param line     the line of the position (starting at 0), -1 if unknown
+   * @param column   the column of the position (starting at 0), -1 if unknown
+   * @param message  the message
+   */
+  Diagnostic(boolean error, File file, int line, int column, String message) {
+    this.error = error;
+    this.file = file;
+    this.line = line;
+    this.column = column;
+    this.message = message.trim();
+  }
+
+  /**
+   * @return true for errors, false for warnings
+   */
+  public boolean isError() {
+    return error;
+  }
+
+  /**
+   * @return the file of the position, <code>null</code> if unknown
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return the line of the position (starting at 1), 0 if unknown
+   */
+  public int getLine() {
+    return line+1;
+  }
+
+  /**
+   * @return the column of the position (starting at 1), 0 if unknown
+   */
+  public int getColumn() {
+    return column+1;
+  }
+
+  /**
+   * @return the message
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  public String toString() {
+    StringBuilder result = new StringBuilder(error ? "Error" : "Warning");
+    if (file != null) result.append(" in file \"").append(file).append("\"");
+    if (line >= 0) result.append(" (line ").append(line+1).append(")");
+    return result.append(": ").append(message).toString();
+  }
+}
@@ -26,8 +26,17 @@ final public class Emitter {
     
   // bit masks for state attributes
   static final private int FINAL = 1;
+  static final private int LOOKEND = 2;
+  static final private int TAG = 4;
   static final private int NOLOOK = 8;
 
+  // bit masks for states in fused transition tables
+  static final private int FUSED_FINAL = 1;
+  static final private int FUSED_NOLOOK = 2;
+
+  // the number of DFA states lazy scanners keep at least (see GeneratorOptions.lazy)
+  static final private int LAZY_SIZE = 1024;
+
   static final private String date = (new SimpleDateFormat()).format(new Date());
 
   private File inputFile;
@@ -38,6 +47,12 @@ final public class Emitter {
   private LexParse parser;
   private DFA dfa;
 
+  /** 
+   * the NFA of a scanner that builds its DFA while scanning 
+   * (see {@link GeneratorOptions#lazy}), <code>null</code> otherwise
+   */
+  private NFA nfa;
+
   // for switch statement:
   // table[i][j] is the set of input characters that leads from state i to state j
   private CharSet table[][];
@@ -54,6 +69,25 @@ final public class Emitter {
   
   // for col killing:
   private int numCols;
+
+  // element types of the generated tables
+  private String transType;
+  private String rowMapType;
+  private String checkType;
+  private String attrType = PackEmitter.typeFor(0, FINAL|LOOKEND|TAG|NOLOOK);
+
+  // true iff ZZ_TRANS contains fused states (see fusedState)
+  private boolean fused;
+
+  // true iff ZZ_TRANS is packed (%pack, %comb or %tableresource)
+  private boolean packed;
+
+  // the packed tables for %tableresource, null otherwise
+  private TableResource resource;
+
+  // the lexical state partition for %statetables, null otherwise
+  private LexStatePartition partition;
+
   private int [] colMap;
   private boolean [] colKilled;
   
@@ -65,21 +99,64 @@ final public class Emitter {
 
   private String visibility = "public";
 
+  /** the context of the generator run */
+  private GeneratorContext context;
+
+  /** the options of the generator run */
+  private GeneratorOptions options;
+
+  /** the file to write the scanner to */
+  private File outputFile;
+
+  /** 
+   * the scanner code, if the output file is written only after it is
+   * complete (see {@link GeneratorOptions#keep_unchanged}), or if the
+   * run keeps it in memory (see {@link JFlex})
+   */
+  private StringWriter buffer;
+
   public Emitter(File inputFile, LexParse parser, DFA dfa) throws IOException {
 
+    this.context = parser.scanner.context;
+    this.options = context.options;
+
     String name = getBaseName(parser.scanner.className) + ".java";
 
-    File outputFile = normalize(name, inputFile);
+    if (context.result != null) {
+      context.result.className = getBaseName(parser.scanner.className);
+      buffer = new StringWriter();
+      this.out = new PrintWriter(buffer);
+    }
+    else if (options.keep_unchanged) {
+      outputFile = outputFile(name, inputFile, options);
+      buffer = new StringWriter();
+      this.out = new PrintWriter(buffer);
+    }
+    else {
+      outputFile = normalize(name, inputFile, options);
+      this.out = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
+    }
 
-    Out.println("Writing code to \""+outputFile+"\"");
+    if (outputFile != null) {
+      Out.println("Writing code to \""+outputFile+"\"");
+      context.addOutputFile(outputFile);
+    }
     
-    this.out = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
     this.parser = parser;
     this.scanner = parser.scanner;
     this.visibility = scanner.visibility;
     this.inputFile = inputFile;
     this.dfa = dfa;
-    this.skel = new Skeleton(out);
+    this.skel = new Skeleton(out, context.skeleton);
+  }
+
+  /**
+   * Creates an emitter for a scanner that builds its DFA from 
+   * <code>nfa</code> while scanning (see {@link GeneratorOptions#lazy}).
+   */
+  public Emitter(File inputFile, LexParse parser, NFA nfa) throws IOException {
+    this(inputFile, parser, (DFA) null);
+    this.nfa = nfa;
   }
 
   /**
@@ -110,17 +187,48 @@ final public class Emitter {
    * @return The constructed File
    */
   public static File normalize(String name, File input) {
-    File outputFile;
+    return normalize(name, input, GeneratorContext.current().options);
+  }
+
+
+  /**
+   * Constructs a file in the output directory of a generator run or in
+   * the same directory as another file. Makes a backup if the file
+   * already exists and the run makes backups.
+   *
+   * @param name    the name (without path) of the file
+   * @param input   fall back location if path = <tt>null</tt>
+   *                (expected to be a file in the directory to write to)   
+   * @param options the options of the run
+   * @return The constructed File
+   */
+  public static File normalize(String name, File input, GeneratorOptions options) {
+    File outputFile = outputFile(name, input, options);
+    backup(outputFile, options);
+    return outputFile;
+  }
 
-    if ( Options.getDir() == null ) 
+
+  /**
+   * Constructs a file in the output directory of a generator run or in
+   * the same directory as another file.
+   */
+  static File outputFile(String name, File input, GeneratorOptions options) {
+    if ( options.getDir() == null ) 
       if ( input == null || input.getParent() == null )
-        outputFile = new File(name);
+        return new File(name);
       else
-        outputFile = new File(input.getParent(), name);
+        return new File(input.getParent(), name);
     else 
-      outputFile = new File(Options.getDir(), name);
-        
-    if ( outputFile.exists() && !Options.no_backup ) {      
+      return new File(options.getDir(), name);
+  }
+
+
+  /**
+   * Makes a backup of a file if it exists and the run makes backups.
+   */
+  private static void backup(File outputFile, GeneratorOptions options) {
+    if ( outputFile.exists() && !options.no_backup ) {      
       File backup = new File( outputFile.toString()+"~" );
       
       if ( backup.exists() ) backup.delete();
@@ -130,8 +238,48 @@ final public class Emitter {
       else
         Out.println("Couldn't save old file \""+outputFile+"\", overwriting!");
     }
+  }
 
-    return outputFile;
+
+  /**
+   * Writes a file, unless it already has the same content.
+   *
+   * @param file     the file to write
+   * @param content  the new content
+   * @param options  the options of the run
+   */
+  static void writeIfChanged(File file, byte [] content, GeneratorOptions options) {
+    try {
+      if ( file.isFile() && file.length() == content.length ) {
+        byte [] old = new byte [content.length];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+          in.readFully(old);
+        }
+        finally {
+          in.close();
+        }
+
+        if ( Arrays.equals(old, content) ) {
+          Out.println("File \""+file+"\" is unchanged");
+          return;
+        }
+      }
+
+      backup(file, options);
+
+      OutputStream stream = new FileOutputStream(file);
+      try {
+        stream.write(content);
+      }
+      finally {
+        stream.close();
+      }
+    }
+    catch (IOException e) {
+      Out.error(ErrorMessages.FILE_WRITE, file);
+      throw new GeneratorException();
+    }
   }
   
   private void println() {
@@ -171,9 +319,80 @@ final public class Emitter {
   }
 
   private boolean hasGenLookAhead() {
+    if (nfa != null) return nfa.numEntryStates() > 2*nfa.numLexStates;
     return dfa.lookaheadUsed;
   }
+
+  private boolean hasLookRegister() {
+    // lazy scanners find all general lookahead split positions in two passes
+    return nfa == null && dfa.lookEndUsed;
+  }
+
+  private boolean hasGroups() {
+    return nfa == null && !dfa.groupNames.isEmpty();
+  }
   
+  private void emitTableLoader() {
+    if (resource == null) return;
+
+    String className = getBaseName(scanner.className);
+    String file = className+".bin";
+
+    println("  /** the name of the class path resource with the packed tables */");
+    println("  private static final String ZZ_TABLE_RESOURCE = \""+file+"\";");
+    println();
+    println("  /** the CRC32 checksum of ZZ_TABLE_RESOURCE */");
+    println("  private static final long ZZ_TABLE_CRC = "+resource.checksum()+"L;");
+    println();
+    println("  /** the packed tables, read on first use */");
+    println("  private static char [][] zzTables;");
+    println();
+    println("  /**");
+    println("   * Returns a packed table from ZZ_TABLE_RESOURCE.");
+    println("   *");
+    println("   * @param i  the number of the table");
+    println("   */");
+    println("  private static char [] zzTable(int i) {");
+    println("    if (zzTables == null) {");
+    println("      try {");
+    println("        java.io.InputStream in = "+className+".class.getResourceAsStream(ZZ_TABLE_RESOURCE);");
+    println("        if (in == null) throw new Error(\"Cannot find scanner tables \"+ZZ_TABLE_RESOURCE);");
+    println();
+    println("        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();");
+    println("        try {");
+    println("          byte [] buffer = new byte[8192];");
+    println("          int n;");
+    println("          while ( (n = in.read(buffer)) > 0 ) bytes.write(buffer, 0, n);");
+    println("        }");
+    println("        finally {");
+    println("          in.close();");
+    println("        }");
+    println();
+    println("        byte [] data = bytes.toByteArray();");
+    println("        java.util.zip.CRC32 crc = new java.util.zip.CRC32();");
+    println("        crc.update(data);");
+    println("        if (crc.getValue() != ZZ_TABLE_CRC)");
+    println("          throw new Error(ZZ_TABLE_RESOURCE+\" does not belong to this version of "+className+"\");");
+    println();
+    println("        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(data);");
+    println("        buffer.position(6);  // magic and version");
+    println("        char [][] tables = new char[buffer.getInt()][];");
+    println("        for (int t = 0; t < tables.length; t++) {");
+    println("          tables[t] = new char[buffer.getInt()];");
+    println("          buffer.asCharBuffer().get(tables[t]);");
+    println("          buffer.position(buffer.position() + 2*tables[t].length);");
+    println("        }");
+    println("        zzTables = tables;");
+    println("      }");
+    println("      catch (java.io.IOException e) {");
+    println("        throw new Error(\"Cannot read scanner tables \"+ZZ_TABLE_RESOURCE+\": \"+e);");
+    println("      }");
+    println("    }");
+    println("    return zzTables[i];");
+    println("  }");
+    println();
+  }
+
   private void emitLookBuffer() {
     if (!hasGenLookAhead()) return;
     
@@ -182,6 +401,359 @@ final public class Emitter {
     println();
   }
   
+  private void emitGroups() {
+    if (!hasGroups()) return;
+
+    int registers = 2*dfa.groupNames.size();
+
+    println("  /** the names of the capture groups */");
+    println("  private static final String ZZ_GROUP_NAMES [] = {");
+    for (int i = 0; i < dfa.groupNames.size(); i++) {
+      print("    \""+dfa.groupNames.get(i)+"\"");
+      println(i+1 < dfa.groupNames.size() ? "," : "");
+    }
+    println("  };");
+    println();
+
+    println("  /** capture group positions in the current match attempt, relative to zzStartRead */");
+    println("  private int zzTagPos [] = new int ["+registers+"];");
+    println();
+    println("  /** capture group positions of the last accepted match, relative to zzStartRead */");
+    println("  private int zzGroupPos [] = new int ["+registers+"];");
+    println();
+
+    if (scanner.useRowMap) {
+      // states with the same registers share their case
+      Map<String, List<Integer>> cases = new LinkedHashMap<String, List<Integer>>();
+      Map<String, int []> registersOf = new HashMap<String, int []>();
+      for (int i = 0; i < dfa.numStates; i++) {
+        if (dfa.tags[i] == null) continue;
+        String key = Arrays.toString(dfa.tags[i]);
+        if (!cases.containsKey(key)) {
+          cases.put(key, new ArrayList<Integer>());
+          registersOf.put(key, dfa.tags[i]);
+        }
+        cases.get(key).add(i);
+      }
+
+      println("  /**");
+      println("   * Records the position <code>zzPos</code> in all capture group");
+      println("   * registers that are written in state <code>zzState</code>.");
+      println("   */");
+      println("  private void zzTag(int zzState, int zzPos) {");
+      println("    switch (zzState) {");
+      for (Map.Entry<String, List<Integer>> c : cases.entrySet()) {
+        for (int state : c.getValue())
+          println("      case "+state+":");
+        for (int k : registersOf.get(c.getKey()))
+          println("        zzTagPos["+k+"] = zzPos;");
+        println("        break;");
+      }
+      println("    }");
+      println("  }");
+      println();
+    }
+
+    println("  private int zzGroupIndex(String name) {");
+    println("    for (int i = 0; i < ZZ_GROUP_NAMES.length; i++)");
+    println("      if (ZZ_GROUP_NAMES[i].equals(name)) return i;");
+    println("    throw new IllegalArgumentException(\"Unknown capture group: \"+name);");
+    println("  }");
+    println();
+
+    println("  /**");
+    println("   * Returns the start of the capture group <code>name</code> in the");
+    println("   * matched text, relative to yytext(). Returns -1 if the group did");
+    println("   * not participate in the match.");
+    println("   *");
+    println("   * Only defined in the action of a rule that contains the group.");
+    println("   *");
+    println("   * @param name  the name of the capture group");
+    println("   */");
+    println("  "+visibility+" int yygroupStart(String name) {");
+    println("    int group = zzGroupIndex(name);");
+    println("    int start = zzGroupPos[2*group];");
+    println("    return start >= 0 && zzGroupPos[2*group+1] >= start ? start : -1;");
+    println("  }");
+    println();
+
+    println("  /**");
+    println("   * Returns the end of the capture group <code>name</code> in the");
+    println("   * matched text, relative to yytext(). Returns -1 if the group did");
+    println("   * not participate in the match.");
+    println("   *");
+    println("   * Only defined in the action of a rule that contains the group.");
+    println("   *");
+    println("   * @param name  the name of the capture group");
+    println("   */");
+    println("  "+visibility+" int yygroupEnd(String name) {");
+    println("    int group = zzGroupIndex(name);");
+    println("    return yygroupStart(name) >= 0 ? zzGroupPos[2*group+1] : -1;");
+    println("  }");
+    println();
+
+    println("  /**");
+    println("   * Returns the text matched by the capture group <code>name</code>,");
+    println("   * <code>null</code> if the group did not participate in the match.");
+    println("   *");
+    println("   * Only defined in the action of a rule that contains the group.");
+    println("   *");
+    println("   * @param name  the name of the capture group");
+    println("   */");
+    println("  "+visibility+" String yygroup(String name) {");
+    println("    int start = yygroupStart(name);");
+    println("    if (start < 0) return null;");
+    println("    return new String( zzBuffer, zzStartRead+start, yygroupEnd(name)-start );");
+    println("  }");
+    println();
+  }
+
+  private void emitInstrumentation() {
+    if (!options.instrument || nfa != null) return;
+
+    println("  /** ");
+    println("   * For the transition profile: <code>ZZ_PROFILE[s*"+numCols+"+c]</code> is how");
+    println("   * often state <code>s</code> was left with input column <code>c</code>");
+    println("   */");
+    println("  private static final long ZZ_PROFILE [] = new long ["+dfa.numStates*numCols+"];");
+    println();
+    println("  /**");
+    println("   * Writes the transitions taken by all scanners of this class so far");
+    println("   * in the profile format of the JFlex option <code>--useprofile</code>.");
+    println("   *");
+    println("   * @param out  the writer to write the profile to");
+    println("   * @exception java.io.IOException  if an IO error occurs");
+    println("   */");
+    println("  "+visibility+" static void yywriteProfile(java.io.Writer out) throws java.io.IOException {");
+    println("    out.write(\"jflex-profile "+dfa.signature()+" "+dfa.numStates+" "+numCols+"\\n\");");
+    println("    for (int i = 0; i < ZZ_PROFILE.length; i++) {");
+    println("      if (ZZ_PROFILE[i] != 0)");
+    println("        out.write((i / "+numCols+")+\" \"+(i % "+numCols+")+\" \"+ZZ_PROFILE[i]+\"\\n\");");
+    println("    }");
+    println("    out.flush();");
+    println("  }");
+    println();
+  }
+
+  private void emitProfile() {
+    if (!scanner.profile) return;
+
+    int numActions = actionTable.size()+1;
+
+    int [] lines = new int [numActions];
+    for (Map.Entry<Action,Integer> entry : actionTable.entrySet()) 
+      lines[entry.getValue()] = entry.getKey().priority;
+
+    println("  /** For %profile: the specification line of each action switch label */");
+    print("  private static final int ZZ_PROFILE_LINES [] = {");
+    for (int i = 0; i < numActions; i++) {
+      if (i % 10 == 0) {
+        println();
+        print("    ");
+      }
+      print(lines[i]+", ");
+    }
+    println();
+    println("  };");
+    println();
+    println("  /** For %profile: how often each action (by switch label) was executed */");
+    println("  private long zzProfileActions [] = new long ["+numActions+"];");
+    println();
+    println("  /** For %profile: how often each DFA state was entered */");
+    println("  private long zzProfileStates [] = new long ["+dfa.numStates+"];");
+    println();
+    println("  /** For %profile: calls of zzRefill, characters read and buffer growths */");
+    println("  private long zzProfileRefills;");
+    println("  private long zzProfileChars;");
+    println("  private long zzProfileGrowths;");
+    println();
+    println("  /** For %profile: sum and maximum of the characters read beyond matches */");
+    println("  private long zzProfileBacktrack;");
+    println("  private long zzProfileBacktrackMax;");
+    println();
+    println("  /** For %profile: number of general lookahead re-scans */");
+    println("  private long zzProfileRescans;");
+    println();
+    println("  /**");
+    println("   * Counters of a scanner generated with <code>%profile</code>,");
+    println("   * see {@link #yyprofile()}.");
+    println("   */");
+    println("  public static final class YYProfile {");
+    println("    /** the specification line of each action, 0 for unused entries */");
+    println("    public final int [] actionLines;");
+    println("    /** how often each action was executed, same order as actionLines */");
+    println("    public final long [] actionMatches;");
+    println("    /** how often each DFA state was entered */");
+    println("    public final long [] stateVisits;");
+    println("    /** number of times the input buffer was refilled */");
+    println("    public final long refills;");
+    println("    /** number of characters read from the input */");
+    println("    public final long charsRead;");
+    println("    /** number of times the input buffer had to grow */");
+    println("    public final long bufferGrowths;");
+    println("    /** characters read beyond the end of a match, summed over all matches */");
+    println("    public final long backtrackTotal;");
+    println("    /** maximum number of characters read beyond the end of a match */");
+    println("    public final long backtrackMax;");
+    println("    /** number of times general lookahead had to re-scan a match */");
+    println("    public final long lookaheadRescans;");
+    println();
+    println("    YYProfile(long [] actionMatches, long [] stateVisits, long refills, long charsRead,");
+    println("              long bufferGrowths, long backtrackTotal, long backtrackMax, long lookaheadRescans) {");
+    println("      this.actionLines = ZZ_PROFILE_LINES.clone();");
+    println("      this.actionMatches = actionMatches;");
+    println("      this.stateVisits = stateVisits;");
+    println("      this.refills = refills;");
+    println("      this.charsRead = charsRead;");
+    println("      this.bufferGrowths = bufferGrowths;");
+    println("      this.backtrackTotal = backtrackTotal;");
+    println("      this.backtrackMax = backtrackMax;");
+    println("      this.lookaheadRescans = lookaheadRescans;");
+    println("    }");
+    println();
+    println("    /**");
+    println("     * Writes the counters as text, one counter per line. The format");
+    println("     * only depends on the specification, not on the JFlex version.");
+    println("     *");
+    println("     * @param out  the writer to write the counters to");
+    println("     * @exception java.io.IOException  if an IO error occurs");
+    println("     */");
+    println("    public void write(java.io.Writer out) throws java.io.IOException {");
+    println("      out.write(\"# JFlex scanner profile\\n\");");
+    println("      out.write(\"scanner "+scanner.className+"\\n\");");
+    println("      out.write(\"refills \"+refills+\"\\n\");");
+    println("      out.write(\"chars-read \"+charsRead+\"\\n\");");
+    println("      out.write(\"buffer-growths \"+bufferGrowths+\"\\n\");");
+    println("      out.write(\"backtrack-total \"+backtrackTotal+\"\\n\");");
+    println("      out.write(\"backtrack-max \"+backtrackMax+\"\\n\");");
+    println("      out.write(\"lookahead-rescans \"+lookaheadRescans+\"\\n\");");
+    println("      for (int i = 0; i < actionMatches.length; i++) {");
+    println("        if (actionLines[i] > 0)");
+    println("          out.write(\"action \"+actionLines[i]+\" \"+actionMatches[i]+\"\\n\");");
+    println("      }");
+    println("      for (int i = 0; i < stateVisits.length; i++) {");
+    println("        if (stateVisits[i] != 0)");
+    println("          out.write(\"state \"+i+\" \"+stateVisits[i]+\"\\n\");");
+    println("      }");
+    println("      out.flush();");
+    println("    }");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * Returns a snapshot of the counters of this scanner.");
+    println("   */");
+    println("  "+visibility+" YYProfile yyprofile() {");
+    println("    return new YYProfile(zzProfileActions.clone(), zzProfileStates.clone(),");
+    println("                         zzProfileRefills, zzProfileChars, zzProfileGrowths,");
+    println("                         zzProfileBacktrack, zzProfileBacktrackMax, zzProfileRescans);");
+    println("  }");
+    println();
+  }
+
+  private void emitStateVisit(String indent) {
+    if (!scanner.profile) return;
+
+    if (fused)
+      println(indent+"zzProfileStates[(zzState >> 2) / "+numCols+"]++;");
+    else
+      println(indent+"zzProfileStates[zzState]++;");
+  }
+
+  private void emitFailureMemo() {
+    if (!scanner.linearMunch) return;
+
+    println("  /**");
+    println("   * For linear time matching: <code>zzFailed[p] == s+1</code> means that");
+    println("   * no final state can be reached from state <code>s</code> at buffer");
+    println("   * position <code>p</code>.");
+    println("   */");
+    println("  private int zzFailed [] = new int [ZZ_BUFFERSIZE+1];");
+    println();
+    println("  /** the state reached at each buffer position in the current match attempt */");
+    println("  private int zzTrail [] = new int [ZZ_BUFFERSIZE+1];");
+    println();
+    println("  /** the input stream <code>zzFailed</code> refers to */");
+    println("  private java.io.Reader zzFailedReader;");
+    println();
+
+    println("  /**");
+    println("   * Forgets all recorded failures, e.g. for a new input stream.");
+    println("   */");
+    println("  private void zzFailedReset() {");
+    println("    zzFailedReader = zzReader;");
+    println("    if (zzFailed.length > zzBuffer.length) {");
+    println("      java.util.Arrays.fill(zzFailed, 0);");
+    println("    }");
+    println("    else {");
+    println("      zzFailed = new int [zzBuffer.length+1];");
+    println("      zzTrail = new int [zzBuffer.length+1];");
+    println("    }");
+    println("  }");
+    println();
+
+    println("  /**");
+    println("   * Translates recorded failures after the input buffer has been refilled.");
+    println("   *");
+    println("   * @param shift  the number of positions the buffer content has moved");
+    println("   */");
+    println("  private void zzFailedRefill(int shift) {");
+    println("    if (shift > 0) {");
+    println("      int length = zzFailed.length-shift;");
+    println("      System.arraycopy(zzFailed, shift, zzFailed, 0, length);");
+    println("      System.arraycopy(zzTrail, shift, zzTrail, 0, length);");
+    println("      java.util.Arrays.fill(zzFailed, length, zzFailed.length, 0);");
+    println("    }");
+    println();
+    println("    if (zzFailed.length <= zzBuffer.length) {");
+    println("      int newFailed [] = new int [zzBuffer.length+1];");
+    println("      int newTrail [] = new int [zzBuffer.length+1];");
+    println("      System.arraycopy(zzFailed, 0, newFailed, 0, zzFailed.length);");
+    println("      System.arraycopy(zzTrail, 0, newTrail, 0, zzTrail.length);");
+    println("      zzFailed = newFailed;");
+    println("      zzTrail = newTrail;");
+    println("    }");
+    println("  }");
+    println();
+
+    println("  /**");
+    println("   * Refills the input buffer and translates the recorded failures.");
+    println("   * All refills of a linear time scanner must go through here.");
+    println("   *");
+    println("   * @return      <code>false</code>, iff there was new input.");
+    println("   * ");
+    println("   * @exception   java.io.IOException  if any I/O-Error occurs");
+    println("   */");
+    println("  private boolean zzRefillLinear() throws java.io.IOException {");
+    println("    int shift = zzStartRead;");
+    println("    boolean eof = zzRefill();");
+    println("    zzFailedRefill(shift-zzStartRead);");
+    println("    return eof;");
+    println("  }");
+    println();
+  }
+
+  /**
+   * Returns the call that refills the input buffer in generated code.
+   */
+  private String refillCall() {
+    return scanner.linearMunch ? "zzRefillLinear()" : "zzRefill()";
+  }
+
+  /**
+   * Emits the code that stops a match attempt in a state that is known 
+   * to fail and records the states reached otherwise.
+   */
+  private void emitFailureCheck(String indent) {
+    println(indent+"if (zzFailed[zzCurrentPosL] == zzState+1) break zzForAction;");
+    println(indent+"zzTrail[zzCurrentPosL] = zzState;");
+    println(indent+"zzTrailEnd = zzCurrentPosL;");
+    println();
+  }
+
+  private void emitGroupSnapshot(String indent) {
+    println(indent+"System.arraycopy(zzTagPos, 0, zzGroupPos, 0, "+2*dfa.groupNames.size()+");");
+  }
+
   private void emitScanError() {
     print("  private void zzScanError(int errorCode)");
     
@@ -375,7 +947,21 @@ final public class Emitter {
     println("            // store back cached positions");
     println("            zzCurrentPos  = zzCurrentPosL;");
     println("            zzMarkedPos   = zzMarkedPosL;");
-    println("            boolean eof = zzRefill();");
+    if ( scanner.profile ) 
+      println("            int zzProfileLength = zzEndRead - zzStartRead;");
+    if ( scanner.linearMunch ) {
+      println("            int zzShift = zzStartRead;");
+      println("            boolean eof = zzRefillLinear();");
+      println("            zzTrailEnd-= zzShift-zzStartRead;");
+    }
+    else {
+      println("            boolean eof = zzRefill();");
+    }
+    if ( scanner.profile ) {
+      println("            zzProfileRefills++;");
+      println("            zzProfileChars+= zzEndRead - zzStartRead - zzProfileLength;");
+      println("            if (zzBuffer != zzBufferL) zzProfileGrowths++;");
+    }
     println("            // get translated positions and possibly new buffer");
     println("            zzCurrentPosL  = zzCurrentPos;");
     println("            zzMarkedPosL   = zzMarkedPos;");
@@ -481,8 +1067,8 @@ final public class Emitter {
     int i, j = 0;
     print("    ");
     
-    for (i = 0; i < 2*dfa.numLexStates-1; i++) {
-      print( dfa.entryState[i], 2 );
+    for (i = 0; i < 2*scanner.states.number()-1; i++) {
+      print( entryState(i), 2 );
 
       print(", ");
 
@@ -493,10 +1079,19 @@ final public class Emitter {
       }
     }
             
-    println( dfa.entryState[i] );
+    println( entryState(i) );
     println("  };");
   }
 
+  /**
+   * Returns the value of <code>ZZ_LEXSTATE[i]</code>. The entry states 
+   * of lazy scanners are the first states of their DFA cache.
+   */
+  private int entryState(int i) {
+    if (nfa != null) return i;
+    return fused ? fusedState(dfa.entryState[i]) : dfa.entryState[i];
+  }
+
   private void emitDynamicInit() {    
     int count = 0;
     int value = dfa.table[0][0];
@@ -506,7 +1101,9 @@ final public class Emitter {
     println("   */");
 
     CountEmitter e = new CountEmitter("Trans");
+    e.setResource(resource);
     e.setValTranslation(+1); // allow vals in [-1, 0xFFFE]
+    e.setType(transType);
     e.emitInit();
     
     for (int i = 0; i < dfa.numStates; i++) {
@@ -547,13 +1144,27 @@ final public class Emitter {
     println("   * @param packed   the packed character translation table");
     println("   * @return         the unpacked character translation table");
     println("   */");
-    println("  private static char [] zzUnpackCMap(String packed) {");
-    println("    char [] map = new char[0x10000];");
-    println("    int i = 0;  /* index in packed string  */");
-    println("    int j = 0;  /* index in unpacked array */");
-    println("    while (i < "+2*intervals.length+") {");
-    println("      int  count = packed.charAt(i++);");
-    println("      char value = packed.charAt(i++);");
+    if (resource != null) {
+      println("  private static char [] zzUnpackCMap(char [] packed) {");
+      println("    char [] map = new char[0x10000];");
+      println("    int i = 0;  /* index in packed table   */");
+      println("    int j = 0;  /* index in unpacked array */");
+      println("    while (i < packed.length) {");
+      println("      int  count = packed[i++];");
+      println("      char value = packed[i++];");
+    }
+    else {
+      println("  private static char [] zzUnpackCMap(String packed) {");
+      println("    char [] map = new char[0x10000];");
+      println("    int i = 0;  /* index in packed string  */");
+      println("    int j = 0;  /* index in unpacked array */");
+      if (partition != null)
+        println("    while (i < packed.length()) {");
+      else
+        println("    while (i < "+2*intervals.length+") {");
+      println("      int  count = packed.charAt(i++);");
+      println("      char value = packed.charAt(i++);");
+    }
     println("      do map[j++] = value; while (--count > 0);");
     println("    }");
     println("    return map;");
@@ -568,7 +1179,7 @@ final public class Emitter {
     println("  /** ");
     println("   * The transition table of the DFA");
     println("   */");
-    println("  private static final int ZZ_TRANS [] = {"); 
+    println("  private static final "+transType+" ZZ_TRANS [] = {"); 
 
     print("    ");
     for (i = 0; i < dfa.numStates; i++) {
@@ -594,15 +1205,29 @@ final public class Emitter {
     println("  };");
   }
   
-  private void emitCharMapArrayUnPacked() {
+  private void emitCharMapArrayUnPacked(String name, int [] colMap) {
    
     CharClasses cl = parser.getCharClasses();
     
+    if (resource != null) {
+      int table = resource.newTable();
+      for (char c = 0; c <= cl.getMaxCharCode(); c++) 
+        resource.append(table, (char) colMap[cl.getClassCode(c)]);
+
+      println("");
+      println("  /** ");
+      println("   * Translates characters to character classes");
+      println("   */");
+      println("  private static final char [] "+name+" = zzTable("+table+");");
+      println();
+      return;
+    }
+
     println("");
     println("  /** ");
     println("   * Translates characters to character classes");
     println("   */");
-    println("  private static final char [] ZZ_CMAP = {");
+    println("  private static final char [] "+name+" = {");
   
     int n = 0;  // numbers of entries in current line    
     print("    ");
@@ -628,24 +1253,88 @@ final public class Emitter {
     println();
   }
 
-  private void emitCharMapArray() {       
-    CharClasses cl = parser.getCharClasses();
-
-    if ( cl.getMaxCharCode() < 256 ) {
-      emitCharMapArrayUnPacked();
+  private void emitCharMapArray() {
+    if (partition == null) {
+      emitCharMapArray("ZZ_CMAP", colMap);
       return;
     }
 
-    // ignores cl.getMaxCharCode(), emits all intervals instead
+    // partitions with the same columns share their character map
+    String [] cmapName = new String [partition.numParts];
+    for (int p = 0; p < partition.numParts; p++) {
+      for (int q = 0; q < p && cmapName[p] == null; q++) 
+        if (Arrays.equals(partition.colMap[p], partition.colMap[q])) cmapName[p] = cmapName[q];
 
-    intervals = cl.getIntervals();
-    
-    println("");
-    println("  /** ");
-    println("   * Translates characters to character classes");
+      if (cmapName[p] == null) {
+        cmapName[p] = p == 0 ? "ZZ_CMAP" : "ZZ_CMAP_"+p;
+        emitCharMapArray(cmapName[p], partition.colMap[p]);
+      }
+    }
+
+    println("  /**");
+    println("   * ZZ_CMAP_LEXSTATE[l] is the character map for lexical state l");
+    println("   * (l and l+1 as in ZZ_LEXSTATE)");
     println("   */");
-    println("  private static final String ZZ_CMAP_PACKED = ");
-  
+    println("  private static final char [][] ZZ_CMAP_LEXSTATE = { ");
+    print("    ");
+    for (int i = 0; i < 2*dfa.numLexStates; i++) {
+      print(cmapName[partition.lexStatePart[i/2]]);
+      if (i < 2*dfa.numLexStates-1) {
+        print(", ");
+        if (i % 8 == 7) {
+          println();
+          print("    ");
+        }
+      }
+    }
+    println();
+    println("  };");
+    println();
+  }
+
+  private void emitCharMapArray(String name, int [] colMap) {       
+    CharClasses cl = parser.getCharClasses();
+
+    if ( cl.getMaxCharCode() < 256 ) {
+      emitCharMapArrayUnPacked(name, colMap);
+      return;
+    }
+
+    // ignores cl.getMaxCharCode(), emits all intervals instead
+
+    intervals = cl.getIntervals();
+
+    if (partition != null) 
+      intervals = mergeIntervals(intervals, colMap);
+
+    if (resource != null) {
+      int table = resource.newTable();
+      for (CharClassInterval i : intervals) {
+        int count = i.end-i.start+1;
+        // count could be >= 0x10000
+        for (; count > 0xFFFF; count -= 0xFFFF) {
+          resource.append(table, (char) 0xFFFF);
+          resource.append(table, (char) colMap[i.charClass]);
+        }
+        resource.append(table, (char) count);
+        resource.append(table, (char) colMap[i.charClass]);
+      }
+
+      println("");
+      println("  /** ");
+      println("   * Translates characters to character classes");
+      println("   */");
+      println("  private static final char [] "+name+" = zzUnpackCMap(zzTable("+table+"));");
+      println();
+      return;
+    }
+    
+    println("");
+    println("  /** ");
+    println("   * Translates characters to character classes");
+    println("   */");
+    println("  private static final String "+name+"_PACKED = ");
+  
     int n = 0;  // numbers of entries in current line    
     print("    \"");
     
@@ -683,10 +1372,30 @@ final public class Emitter {
     println("  /** ");
     println("   * Translates characters to character classes");
     println("   */");
-    println("  private static final char [] ZZ_CMAP = zzUnpackCMap(ZZ_CMAP_PACKED);");
+    println("  private static final char [] "+name+" = zzUnpackCMap("+name+"_PACKED);");
     println();
   }
 
+  /**
+   * Joins neighbouring intervals that are in the same column.
+   */
+  private CharClassInterval [] mergeIntervals(CharClassInterval [] intervals, int [] colMap) {
+    List<CharClassInterval> merged = new ArrayList<CharClassInterval>();
+    CharClassInterval last = null;
+
+    for (CharClassInterval i : intervals) {
+      if (last != null && last.end+1 == i.start && colMap[last.charClass] == colMap[i.charClass]) 
+        last = new CharClassInterval(last.start, i.end, last.charClass);
+      else {
+        if (last != null) merged.add(last);
+        last = i;
+      }
+    }
+    if (last != null) merged.add(last);
+
+    return merged.toArray(new CharClassInterval[merged.size()]);
+  }
+
 
   /**
    * Print number as octal/unicode escaped string character.
@@ -707,13 +1416,285 @@ final public class Emitter {
   }
 
 
+  private void emitCombTable() {
+    int [][] rows = new int [numRows][numCols];
+
+    for (int i = 0; i < dfa.numStates; i++) {
+      if ( !rowKilled[i] ) {
+        int n = 0;
+        for (int c = 0; c < dfa.numInput; c++) 
+          if ( !colKilled[c] ) rows[rowMap[i]][n++] = dfa.table[i][c];
+      }
+    }
+
+    CombTable comb = new CombTable(rows, DFA.NO_TARGET);
+
+    int maxBase = 0;
+    for (int i = 0; i < comb.base.length; i++) 
+      maxBase = Math.max(maxBase, comb.base[i]);
+
+    rowMapType = PackEmitter.typeFor(0, maxBase);
+    checkType = PackEmitter.typeFor(-1, maxBase);
+
+    println("");
+    println("  /** ");
+    println("   * Translates a state to its row in the displaced transition table");
+    println("   */");
+
+    HiLowEmitter e = new HiLowEmitter("RowMap");
+    e.setResource(resource);
+    e.setType(rowMapType);
+    e.emitInit();
+    for (int i = 0; i < dfa.numStates; i++) 
+      e.emit(comb.base[rowMap[i]]);
+    e.emitUnpack();
+    println(e.toString());
+
+    println("  /** ");
+    println("   * Translates a state to the row of its default transitions");
+    println("   */");
+
+    e = new HiLowEmitter("DefRow");
+    e.setResource(resource);
+    e.setType(rowMapType);
+    e.emitInit();
+    for (int i = 0; i < dfa.numStates; i++) 
+      e.emit(comb.def[rowMap[i]]);
+    e.emitUnpack();
+    println(e.toString());
+
+    println("  /** ");
+    println("   * The transition table of the DFA, rows overlaid by displacement");
+    println("   */");
+
+    CountEmitter t = new CountEmitter("Trans");
+    t.setResource(resource);
+    t.setValTranslation(+1); // allow vals in [-1, 0xFFFE]
+    t.setType(transType);
+    t.emitInit();
+    emitRuns(t, comb.next);
+    t.emitUnpack();
+    println(t.toString());
+
+    println("  /** ");
+    println("   * ZZ_CHECK[i] is the row that entry i of ZZ_TRANS belongs to");
+    println("   */");
+
+    e = new HiLowEmitter("Check");
+    e.setResource(resource);
+    e.setType(checkType);
+    e.emitInit();
+    for (int i = 0; i < comb.check.length; i++) 
+      e.emit(comb.check[i]);
+    e.emitUnpack();
+    println(e.toString());
+
+    println("  /**");
+    println("   * Returns the successor of a state in the transition table, -1 if none.");
+    println("   */");
+    println("  private static int zzTransition(int zzState, int zzColumn) {");
+    println("    int zzBase = ZZ_ROWMAP[zzState];");
+    println("    int zzIndex = zzBase + zzColumn;");
+    println("    if (ZZ_CHECK[zzIndex] != zzBase) {");
+    println("      zzBase = ZZ_DEFROW[zzState];");
+    println("      zzIndex = zzBase + zzColumn;");
+    println("    }");
+    println("    return ZZ_CHECK[zzIndex] == zzBase ? ZZ_TRANS[zzIndex] : -1;");
+    println("  }");
+    println();
+  }
+
+  private void emitRuns(CountEmitter e, int [] values) {
+    int count = 1;
+    int value = values[0];
+
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] == value) {
+        count++;
+      }
+      else {
+        e.emit(count, value);
+        count = 1;
+        value = values[i];
+      }
+    }
+
+    e.emit(count, value);
+  }
+
+  /**
+   * Returns the expression for the successor state of <code>state</code>
+   * on input character <code>input</code> in table driven scanners.
+   */
+  private String transition(String state, String input) {
+    if (nfa != null)
+      return "zzLazyNext("+state+", zzCMapL["+input+"])";
+    else if (scanner.comb)
+      return "zzTransition("+state+", zzCMapL["+input+"])";
+    else
+      return "zzTransL[ zzRowMapL["+state+"] + zzCMapL["+input+"] ]";
+  }
+
+  /**
+   * Encodes a state for fused transition tables: the offset of its 
+   * row in ZZ_TRANS, shifted left by two, with the bits 
+   * <code>FUSED_FINAL</code> and <code>FUSED_NOLOOK</code>.
+   */
+  private int fusedState(int state) {
+    int result = (state*numCols) << 2;
+    if ( dfa.isFinal[state] ) result|= FUSED_FINAL;
+    if ( !isTransition[state] ) result|= FUSED_NOLOOK;
+    return result;
+  }
+
+  private void emitFusedTrans() {
+    int [] values = new int [dfa.numStates*numCols];
+    int max = 0;
+    int n = 0;
+
+    for (int i = 0; i < dfa.numStates; i++) {
+      for (int c = 0; c < dfa.numInput; c++) {
+        if ( !colKilled[c] ) {
+          int next = dfa.table[i][c];
+          values[n] = next == DFA.NO_TARGET ? DFA.NO_TARGET : fusedState(next);
+          max = Math.max(max, values[n++]);
+        }
+      }
+    }
+
+    transType = PackEmitter.typeFor(DFA.NO_TARGET, max);
+
+    println("  /** ");
+    println("   * The transition table of the DFA. Entries are the row offset of the");
+    println("   * target state shifted left by two, bit 0 set for final states, bit 1");
+    println("   * set for states without outgoing transitions, or -1 for no transition.");
+    println("   */");
+
+    if (packed) {
+      if ( max >= 0xFFFE ) {
+        HiLowEmitter h = new HiLowEmitter("Trans");
+        h.setResource(resource);
+        h.setType(transType);
+        h.emitInit();
+        for (int i = 0; i < values.length; i++) 
+          h.emit(values[i]);
+        h.emitUnpack();
+        println(h.toString());
+      }
+      else {
+        CountEmitter e = new CountEmitter("Trans");
+        e.setResource(resource);
+        e.setType(transType);
+        e.setValTranslation(+1); // allow vals in [-1, 0xFFFE]
+        e.emitInit();
+        emitRuns(e, values);
+        e.emitUnpack();
+        println(e.toString());
+      }
+    }
+    else {
+      println("  private static final "+transType+" ZZ_TRANS [] = {"); 
+      print("    ");
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0 && i % 10 == 0) {
+          println();
+          print("    ");
+        }
+        print( values[i] );
+        if (i < values.length-1) print( ", ");
+      }
+      println();
+      println("  };");
+    }
+  }
+
+  private void emitStateTables() {
+    // rows of different width, back to back; equal rows are stored once
+    Map<List<Integer>, Integer> bases = new HashMap<List<Integer>, Integer>();
+    List<Integer> trans = new ArrayList<Integer>();
+    int [] base = new int [dfa.numStates];
+
+    for (int i = 0; i < dfa.numStates; i++) {
+      List<Integer> row = new ArrayList<Integer>();
+      for (int t : partition.row(i)) row.add(t);
+
+      Integer b = bases.get(row);
+      if (b == null) {
+        b = trans.size();
+        bases.put(row, b);
+        trans.addAll(row);
+      }
+      base[i] = b;
+    }
+
+    int maxBase = 0;
+    for (int i = 0; i < dfa.numStates; i++) 
+      maxBase = Math.max(maxBase, base[i]);
+
+    rowMapType = PackEmitter.typeFor(0, maxBase);
+
+    println("");
+    println("  /** ");
+    println("   * Translates a state to a row index in the transition table");
+    println("   */");
+
+    HiLowEmitter e = new HiLowEmitter("RowMap");
+    e.setResource(resource);
+    e.setType(rowMapType);
+    e.emitInit();
+    for (int i = 0; i < dfa.numStates; i++) 
+      e.emit(base[i]);
+    e.emitUnpack();
+    println(e.toString());
+
+    println("  /** ");
+    println("   * The transition table of the DFA, the rows of each lexical state");
+    println("   * have the columns of its character map");
+    println("   */");
+
+    int [] values = new int [trans.size()];
+    for (int i = 0; i < values.length; i++) 
+      values[i] = trans.get(i);
+
+    if (packed) {
+      CountEmitter t = new CountEmitter("Trans");
+      t.setResource(resource);
+      t.setValTranslation(+1); // allow vals in [-1, 0xFFFE]
+      t.setType(transType);
+      t.emitInit();
+      emitRuns(t, values);
+      t.emitUnpack();
+      println(t.toString());
+    }
+    else {
+      println("  private static final "+transType+" ZZ_TRANS [] = {"); 
+      print("    ");
+      for (int i = 0; i < values.length; i++) {
+        print(values[i]);
+        if (i < values.length-1) {
+          print(", ");
+          if (i % 10 == 9) {
+            println();
+            print("    ");
+          }
+        }
+      }
+      println();
+      println("  };");
+    }
+  }
+
   private void emitRowMapArray() {
     println("");
     println("  /** ");
     println("   * Translates a state to a row index in the transition table");
     println("   */");
     
+    rowMapType = PackEmitter.typeFor(0, (numRows-1)*numCols);
+
     HiLowEmitter e = new HiLowEmitter("RowMap");
+    e.setResource(resource);
+    e.setType(rowMapType);
     e.emitInit();
     for (int i = 0; i < dfa.numStates; i++) {
       e.emit(rowMap[i]*numCols);
@@ -729,16 +1710,22 @@ final public class Emitter {
     println("   */");
     
     CountEmitter e = new CountEmitter("Attribute");    
+    e.setResource(resource);
+    e.setType(attrType);
     e.emitInit();
     
     int count = 1;
     int value = 0; 
     if ( dfa.isFinal[0]    ) value = FINAL;
+    if ( dfa.isLookEnd[0]  ) value|= LOOKEND;
+    if ( dfa.tags[0] != null ) value|= TAG;
     if ( !isTransition[0]  ) value|= NOLOOK;
        
     for (int i = 1;  i < dfa.numStates; i++) {      
       int attribute = 0;      
       if ( dfa.isFinal[i]    ) attribute = FINAL;
+      if ( dfa.isLookEnd[i]  ) attribute|= LOOKEND;
+      if ( dfa.tags[i] != null ) attribute|= TAG;
       if ( !isTransition[i]  ) attribute|= NOLOOK;
 
       if (value == attribute) {
@@ -799,6 +1786,9 @@ final public class Emitter {
     
     println(" {");
 
+    if ( nfa != null ) 
+      println("    zzLazyFlush();");
+
     if ( scanner.initCode != null && printCtorArgs) {
       print("  ");
       print( scanner.initCode );
@@ -918,11 +1908,34 @@ final public class Emitter {
     
     skel.emitNext();
 
-    if ( scanner.useRowMap ) {
-      println("    int [] zzTransL = ZZ_TRANS;");
-      println("    int [] zzRowMapL = ZZ_ROWMAP;");
-      println("    int [] zzAttrL = ZZ_ATTRIBUTE;");
+    if ( nfa != null ) {
+      println("    int [] zzTransL = zzLazyTrans;");
+      println("    int [] zzAttrL = zzLazyAttr;");
+      println("    int [] zzActionL = zzLazyAction;");
+    }
+    else if ( scanner.useRowMap ) {
+      println("    "+transType+" [] zzTransL = ZZ_TRANS;");
+    }
+
+    if ( nfa == null && scanner.useRowMap && !fused ) {
+      println("    "+rowMapType+" [] zzRowMapL = ZZ_ROWMAP;");
+      println("    "+attrType+" [] zzAttrL = ZZ_ATTRIBUTE;");
+      if ( scanner.comb ) {
+        println("    "+rowMapType+" [] zzDefRowL = ZZ_DEFROW;");
+        println("    "+checkType+" [] zzCheckL = ZZ_CHECK;");
+      }
+
+    }
+
+    if ( scanner.linearMunch ) {
+      println("    // last buffer position recorded in zzTrail");
+      println("    int zzTrailEnd = 0;");
+    }
 
+    if ( hasLookRegister() ) {
+      println("    // general lookahead split positions, relative to zzStartRead");
+      println("    int zzLookBase = 0;");
+      println("    int zzLookBaseMarked = 0;");
     }
 
     skel.emitNext();    
@@ -931,6 +1944,11 @@ final public class Emitter {
       println("      yychar+= zzMarkedPosL-zzStartRead;");
       println("");
     }
+
+    if ( nfa != null ) {
+      println("      zzLazyChars+= zzMarkedPosL-zzStartRead;");
+      println("");
+    }
     
     if ( scanner.lineCount || scanner.columnCount ) {
       println("      boolean zzR = false;");
@@ -982,7 +2000,7 @@ final public class Emitter {
         println("        else if (zzAtEOF)");
         println("          zzPeek = false;");
         println("        else {");
-        println("          boolean eof = zzRefill();");
+        println("          boolean eof = "+refillCall()+";");
         println("          zzEndReadL = zzEndRead;");
         println("          zzMarkedPosL = zzMarkedPos;");
         println("          zzBufferL = zzBuffer;");
@@ -1016,7 +2034,7 @@ final public class Emitter {
       println("          else if (zzAtEOF)");
       println("            zzAtBOL = false;");
       println("          else {");
-      println("            boolean eof = zzRefill();");
+      println("            boolean eof = "+refillCall()+";");
       println("            zzMarkedPosL = zzMarkedPos;");
       println("            zzEndReadL = zzEndRead;");
       println("            zzBufferL = zzBuffer;");
@@ -1046,7 +2064,67 @@ final public class Emitter {
       println();
     }
 
-    if (scanner.useRowMap) {
+    if ( partition != null ) {
+      println("      zzCMapL = ZZ_CMAP_LEXSTATE[zzLexicalState];");
+      println();
+    }
+
+    if ( scanner.profile ) {
+      emitStateVisit("      ");
+      println();
+    }
+
+    if ( hasLookRegister() ) {
+      println("      zzLookBase = 0;");
+      println();
+    }
+
+    if ( scanner.linearMunch ) {
+      println("      if (zzEndRead == 0 || zzReader != zzFailedReader || zzFailed.length <= zzBuffer.length)");
+      println("        zzFailedReset();");
+      println("      zzTrailEnd = zzStartRead;");
+      println();
+    }
+
+    if ( hasGroups() ) {
+      println("      java.util.Arrays.fill(zzTagPos, -1);");
+      if (scanner.useRowMap) {
+        println("      zzTag(zzState, 0);");
+      }
+      else {
+        Set<Integer> entries = new TreeSet<Integer>();
+        for (int i = 0; i < dfa.numLexStates*2; i++) 
+          entries.add(dfa.entryState[i]);
+
+        for (int i : entries) {
+          if ( dfa.tags[i] != null ) {
+            println("      if (zzState == "+i+") {");
+            for (int k : dfa.tags[i]) 
+              println("        zzTagPos["+k+"] = 0;");
+            println("      }");
+          }
+        }
+      }
+      emitGroupSnapshot("      ");
+      println();
+    }
+
+    if (nfa != null) {
+      println("      // set up zzAction for empty match case:");
+      println("      int zzAttributes = zzAttrL[zzState];");
+      println("      if ( (zzAttributes & 1) == 1 ) {");
+      println("        zzAction = zzActionL[zzState];");
+      println("      }");
+      println();
+    }
+    else if (fused) {
+      println("      // set up zzAction for empty match case:");
+      println("      if ( (zzState & "+FUSED_FINAL+") == "+FUSED_FINAL+" ) {");
+      println("        zzAction = zzState;");
+      println("      }");
+      println();
+    }
+    else if (scanner.useRowMap) {
       println("      // set up zzAction for empty match case:");
       println("      int zzAttributes = zzAttrL[zzState];");
       println("      if ( (zzAttributes & 1) == 1 ) {");
@@ -1059,17 +2137,92 @@ final public class Emitter {
   }
 
   
+  /**
+   * Emits the transition of lazy scanners: from the DFA cache if it 
+   * is there, computed from the NFA otherwise.
+   */
+  private void emitLazyNext() {
+    println("          int zzNext = zzTransL[ zzState*ZZ_LAZY_COLS + zzCMapL[zzInput] ];");
+    println("          if (zzNext == ZZ_LAZY_UNKNOWN) zzNext = zzLazyStep(zzState, zzCMapL[zzInput]);");
+    println("          if (zzNext == "+DFA.NO_TARGET+") break zzForAction;");
+    println("          zzState = zzNext;");
+    println();
+    println("          zzAttributes = zzAttrL[zzState];");
+    println("          if ( (zzAttributes & "+FINAL+") == "+FINAL+" ) {");
+
+    skel.emitNext();
+
+    println("            zzAction = zzActionL[zzState];");
+    println("            if ( (zzAttributes & "+NOLOOK+") == "+NOLOOK+" ) break zzForAction;");
+
+    skel.emitNext();
+  }
+
   private void emitGetRowMapNext() {
-    println("          int zzNext = zzTransL[ zzRowMapL[zzState] + zzCMapL[zzInput] ];");
+    if (fused) {
+      if (options.instrument) 
+        println("          ZZ_PROFILE[ (zzState >> 2) + zzCMapL[zzInput] ]++;");
+      println("          int zzNext = zzTransL[ (zzState >> 2) + zzCMapL[zzInput] ];");
+      println("          if (zzNext == "+DFA.NO_TARGET+") break zzForAction;");
+      println("          zzState = zzNext;");
+      emitStateVisit("          ");
+      println();
+      println("          if ( (zzState & "+FUSED_FINAL+") == "+FUSED_FINAL+" ) {");
+
+      skel.emitNext();
+
+      println("            if ( (zzState & "+FUSED_NOLOOK+") == "+FUSED_NOLOOK+" ) break zzForAction;");
+
+      skel.emitNext();
+      return;
+    }
+
+    if (options.instrument) 
+      println("          ZZ_PROFILE[ zzState*"+numCols+" + zzCMapL[zzInput] ]++;");
+
+    if ( scanner.comb ) {
+      println("          int zzBase = zzRowMapL[zzState];");
+      println("          int zzIndex = zzBase + zzCMapL[zzInput];");
+      println("          if (zzCheckL[zzIndex] != zzBase) {");
+      println("            zzBase = zzDefRowL[zzState];");
+      println("            zzIndex = zzBase + zzCMapL[zzInput];");
+      println("          }");
+      println("          int zzNext = zzCheckL[zzIndex] == zzBase ? zzTransL[zzIndex] : "+DFA.NO_TARGET+";");
+    }
+    else {
+      println("          int zzNext = zzTransL[ zzRowMapL[zzState] + zzCMapL[zzInput] ];");
+    }
     println("          if (zzNext == "+DFA.NO_TARGET+") break zzForAction;");
     println("          zzState = zzNext;");
+    emitStateVisit("          ");
     println();
 
+    if ( scanner.linearMunch ) 
+      emitFailureCheck("          ");
+
     println("          zzAttributes = zzAttrL[zzState];");
 
+    if ( hasLookRegister() ) {
+      println("          if ( (zzAttributes & "+LOOKEND+") == "+LOOKEND+" ) {");
+      println("            zzLookBase = zzCurrentPosL - zzStartRead;");
+      println("          }");
+    }
+
+    if ( hasGroups() ) {
+      println("          if ( (zzAttributes & "+TAG+") == "+TAG+" ) {");
+      println("            zzTag(zzState, zzCurrentPosL - zzStartRead);");
+      println("          }");
+    }
+
     println("          if ( (zzAttributes & "+FINAL+") == "+FINAL+" ) {");
 
     skel.emitNext();
+
+    if ( hasLookRegister() ) 
+      println("            zzLookBaseMarked = zzLookBase;");
+
+    if ( hasGroups() ) 
+      emitGroupSnapshot("            ");
     
     println("            if ( (zzAttributes & "+NOLOOK+") == "+NOLOOK+" ) break zzForAction;");
 
@@ -1082,6 +2235,11 @@ final public class Emitter {
     println("          zzInput = zzCMapL[zzInput];");
     println();
 
+    if (options.instrument) {
+      println("          ZZ_PROFILE[ zzState*"+numCols+" + zzInput ]++;");
+      println();
+    }
+
     println("          boolean zzIsFinal = false;");
     println("          boolean zzNoLookAhead = false;");
     println();
@@ -1097,10 +2255,24 @@ final public class Emitter {
     println("              break;");
     println("          } }");
     println();
+
+    if ( scanner.profile ) {
+      emitStateVisit("          ");
+      println();
+    }
+
+    if ( scanner.linearMunch ) 
+      emitFailureCheck("          ");
     
     println("          if ( zzIsFinal ) {");
     
     skel.emitNext();
+
+    if ( hasLookRegister() ) 
+      println("            zzLookBaseMarked = zzLookBase;");
+
+    if ( hasGroups() ) 
+      emitGroupSnapshot("            ");
     
     println("            if ( zzNoLookAhead ) break zzForAction;");
 
@@ -1143,6 +2315,8 @@ final public class Emitter {
     println("   * Translates DFA states to action switch labels.");
     println("   */");
     CountEmitter e = new CountEmitter("Action");    
+    e.setResource(resource);
+    e.setType(PackEmitter.typeFor(0, dfa.usedActions.size()));
     e.emitInit();
 
     for (int i = 0; i < dfa.numStates; i++) {
@@ -1175,8 +2349,472 @@ final public class Emitter {
     println(e.toString());
   }
 
+  /**
+   * Emits the NFA of a lazy scanner: its edges, the action of each 
+   * NFA state and the size of the DFA cache.
+   */
+  private void emitLazyTables() {
+    // the last NFA state of each action, for actions of the same priority
+    final Map<Action, Integer> lastState = new IdentityHashMap<Action, Integer>();
+    for (int s = 0; s < nfa.numStates; s++) 
+      if (nfa.action[s] != null) lastState.put(nfa.action[s], s);
+
+    // the higher the priority, the lower the rank (see NFA.getAction)
+    List<Action> ranked = new ArrayList<Action>(lastState.keySet());
+    Collections.sort(ranked, new Comparator<Action>() {
+      public int compare(Action a, Action b) {
+        if (a.priority != b.priority) return a.priority < b.priority ? -1 : 1;
+        return lastState.get(b) - lastState.get(a);
+      }
+    });
+
+    Map<Action, Integer> rank = new IdentityHashMap<Action, Integer>();
+    int [] labels = new int [ranked.size()+1];
+    int lastAction = 1;
+
+    for (int r = 0; r < ranked.size(); r++) {
+      Action action = ranked.get(r);
+      rank.put(action, r+1);
+      if (action.isEmittable()) {
+        Integer stored = actionTable.get(action);
+        if ( stored == null ) { 
+          stored = lastAction++;
+          actionTable.put(action, stored);
+        }
+        labels[r+1] = stored;
+      }
+    }
+
+    int size = Math.max(LAZY_SIZE, 2*nfa.numEntryStates());
+    int hashSize = 1;
+    while (hashSize < 2*size) hashSize*= 2;
+
+    println("  /** the number of states the DFA cache keeps */");
+    println("  private static final int ZZ_LAZY_SIZE = "+size+";");
+    println();
+    println("  /** the size of the hash table of the DFA cache, a power of two */");
+    println("  private static final int ZZ_LAZY_HASH = "+hashSize+";");
+    println();
+    println("  /** the number of input columns */");
+    println("  private static final int ZZ_LAZY_COLS = "+numCols+";");
+    println();
+    println("  /** the number of entry states, they are never removed from the cache */");
+    println("  private static final int ZZ_LAZY_ENTRIES = "+nfa.numEntryStates()+";");
+    println();
+    println("  /** a transition that is not computed yet */");
+    println("  private static final int ZZ_LAZY_UNKNOWN = -2;");
+    println();
+    println("  /** ");
+    println("   * the cache thrashes if fewer characters than this per cached state ");
+    println("   * are matched between two flushes");
+    println("   */");
+    println("  private static final int ZZ_LAZY_MIN_CHARS = 10;");
+    println();
+    println("  /** the number of thrashing flushes in a row after which the NFA is simulated */");
+    println("  private static final int ZZ_LAZY_MAX_THRASH = 3;");
+    println();
+    println("  /** the number of NFA states */");
+    println("  private static final int ZZ_NFA_STATES = "+nfa.numStates+";");
+    println();
+
+    println("  /**");
+    println("   * The edges of NFA state s are the pairs (input column, target) in");
+    println("   * ZZ_NFAEDGE[ZZ_NFAROW[s]] to ZZ_NFAEDGE[ZZ_NFAROW[s+1]-1], with");
+    println("   * input column -1 for epsilon edges.");
+    println("   */");
+
+    HiLowEmitter rows = new HiLowEmitter("NfaRow");
+    HiLowEmitter edges = new HiLowEmitter("NfaEdge");
+    rows.emitInit();
+    edges.emitInit();
+
+    StateSetEnumerator states = new StateSetEnumerator();
+    int numEdges = 0;
+
+    for (int s = 0; s < nfa.numStates; s++) {
+      rows.emit(numEdges);
+
+      if (nfa.epsilon[s] != null) {
+        states.reset(nfa.epsilon[s]);
+        while (states.hasMoreElements()) {
+          edges.emit(-1);
+          edges.emit(states.nextElement());
+          numEdges+= 2;
+        }
+      }
+
+      for (int c = 0; c < nfa.numInput; c++) {
+        if (nfa.table[s][c] == null) continue;
+        states.reset(nfa.table[s][c]);
+        while (states.hasMoreElements()) {
+          edges.emit(c);
+          edges.emit(states.nextElement());
+          numEdges+= 2;
+        }
+      }
+    }
+    rows.emit(numEdges);
+
+    rows.emitUnpack();
+    println(rows.toString());
+    edges.emitUnpack();
+    println(edges.toString());
+
+    println("  /** ");
+    println("   * The action of each NFA state, by priority: 0 for none, ");
+    println("   * lower values for higher priorities");
+    println("   */");
+    CountEmitter e = new CountEmitter("NfaAction");
+    e.setType(PackEmitter.typeFor(0, ranked.size()));
+    e.emitInit();
+
+    int count = 0;
+    int value = 0;
+    for (int s = 0; s < nfa.numStates; s++) {
+      int newVal = nfa.action[s] == null ? 0 : rank.get(nfa.action[s]);
+      if (value == newVal) {
+        count++;
+      }
+      else {
+        if (count > 0) e.emit(count, value);
+        count = 1;
+        value = newVal;
+      }
+    }
+    if (count > 0) e.emit(count, value);
+
+    e.emitUnpack();
+    println(e.toString());
+
+    println("  /** Translates the actions of NFA states to action switch labels. */");
+    e = new CountEmitter("LazyLabel");
+    e.setType(PackEmitter.typeFor(0, actionTable.size()));
+    e.emitInit();
+    for (int r = 0; r < labels.length; r++) 
+      e.emit(1, labels[r]);
+    e.emitUnpack();
+    println(e.toString());
+  }
+
+  /**
+   * Emits the DFA cache of lazy scanners and the subset construction 
+   * that fills it. The cache holds a bounded number of DFA states and 
+   * is flushed when it is full. If it is flushed too often, the scanner
+   * stops caching and simulates the NFA.
+   */
+  private void emitLazyDFA() {
+    if (nfa == null) return;
+
+    println("  /**");
+    println("   * The states of the lazy DFA: the NFA states of each state (sorted),");
+    println("   * <code>null</code> if the state is not in use. The first ZZ_LAZY_ENTRIES ");
+    println("   * states are the entry states, the two states after the ZZ_LAZY_SIZE ");
+    println("   * cached states are used for NFA simulation.");
+    println("   */");
+    println("  private int [][] zzLazySet = new int [ZZ_LAZY_SIZE+2][];");
+    println();
+    println("  /** ");
+    println("   * zzLazyTrans[s*ZZ_LAZY_COLS+c] is the successor of state s on input");
+    println("   * column c, ZZ_LAZY_UNKNOWN if it is not computed yet.");
+    println("   */");
+    println("  private int [] zzLazyTrans = new int [(ZZ_LAZY_SIZE+2)*ZZ_LAZY_COLS];");
+    println();
+    println("  /** the attributes of the states of the lazy DFA (final, no successors) */");
+    println("  private int [] zzLazyAttr = new int [ZZ_LAZY_SIZE+2];");
+    println();
+    println("  /** the action switch labels of the states of the lazy DFA */");
+    println("  private int [] zzLazyAction = new int [ZZ_LAZY_SIZE+2];");
+    println();
+    println("  /** hash table of the cached states: state+1, 0 for free entries */");
+    println("  private int [] zzLazyHash = new int [ZZ_LAZY_HASH];");
+    println();
+    println("  /** the number of cached states */");
+    println("  private int zzLazyStates;");
+    println();
+    println("  /** characters matched so far, and when the cache was flushed last */");
+    println("  private long zzLazyChars;");
+    println("  private long zzLazyFlushChars;");
+    println();
+    println("  /** the number of flushes in a row that came too soon */");
+    println("  private int zzLazyThrash;");
+    println();
+    println("  /** true iff the cache thrashed, the NFA is simulated without caching */");
+    println("  private boolean zzLazyNFA;");
+    println();
+    println("  /** work space for the subset construction */");
+    println("  private int [] zzLazyMark = new int [ZZ_NFA_STATES];");
+    println("  private int zzLazyStamp;");
+    println("  private int [] zzLazyStack = new int [ZZ_NFA_STATES];");
+    println("  private int [] zzLazyList = new int [ZZ_NFA_STATES];");
+    println();
+    println("  /**");
+    println("   * Empties the cache of the lazy DFA except for its entry states.");
+    println("   */");
+    println("  private void zzLazyFlush() {");
+    println("    java.util.Arrays.fill(zzLazyTrans, ZZ_LAZY_UNKNOWN);");
+    println("    java.util.Arrays.fill(zzLazyHash, 0);");
+    println("    java.util.Arrays.fill(zzLazySet, ZZ_LAZY_ENTRIES, zzLazySet.length, null);");
+    println();
+    println("    for (zzLazyStates = 0; zzLazyStates < ZZ_LAZY_ENTRIES; zzLazyStates++) {");
+    println("      if (zzLazySet[zzLazyStates] == null) {");
+    println("        zzLazyNewMark();");
+    println("        zzLazyMark[zzLazyStates] = zzLazyStamp;");
+    println("        zzLazyStack[0] = zzLazyStates;");
+    println("        zzLazyDefine(zzLazyStates, zzLazyClosure(1));");
+    println("      }");
+    println("      zzLazyInsert(zzLazyStates);");
+    println("    }");
+    println();
+    println("    zzLazyFlushChars = zzLazyChars;");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * Returns the successor of a state of the lazy DFA.");
+    println("   *");
+    println("   * @param state  the state");
+    println("   * @param input  the input column");
+    println("   * @return the successor, -1 if there is none");
+    println("   */");
+    println("  private int zzLazyNext(int state, int input) {");
+    println("    int next = zzLazyTrans[state*ZZ_LAZY_COLS + input];");
+    println("    return next == ZZ_LAZY_UNKNOWN ? zzLazyStep(state, input) : next;");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * Computes the successor of a state of the lazy DFA that is not in");
+    println("   * the cache. Flushes the cache if it is full, and stops caching if");
+    println("   * it is flushed too often.");
+    println("   *");
+    println("   * @param state  the state");
+    println("   * @param input  the input column");
+    println("   * @return the successor, -1 if there is none");
+    println("   */");
+    println("  private int zzLazyStep(int state, int input) {");
+    println("    int [] row = ZZ_NFAROW;");
+    println("    int [] edge = ZZ_NFAEDGE;");
+    println("    int [] set = zzLazySet[state];");
+    println("    int top = 0;");
+    println();
+    println("    zzLazyNewMark();");
+    println("    for (int i = 0; i < set.length; i++) {");
+    println("      int s = set[i];");
+    println("      for (int e = row[s]; e < row[s+1]; e+= 2) {");
+    println("        int t = edge[e+1];");
+    println("        if (edge[e] == input && zzLazyMark[t] != zzLazyStamp) {");
+    println("          zzLazyMark[t] = zzLazyStamp;");
+    println("          zzLazyStack[top++] = t;");
+    println("        }");
+    println("      }");
+    println("    }");
+    println();
+    println("    int [] next = zzLazyClosure(top);");
+    println();
+    println("    if (!zzLazyNFA) {");
+    println("      int result = next == null ? -1 : zzLazyFind(next);");
+    println();
+    println("      if (next != null && result < 0) {");
+    println("        if (zzLazyStates == ZZ_LAZY_SIZE) {");
+    println("          // too few characters for the states computed: the cache thrashes");
+    println("          if (zzLazyChars - zzLazyFlushChars < (long) ZZ_LAZY_MIN_CHARS*ZZ_LAZY_SIZE) ");
+    println("            zzLazyThrash++;");
+    println("          else");
+    println("            zzLazyThrash = 0;");
+    println();
+    println("          zzLazyNFA = zzLazyThrash >= ZZ_LAZY_MAX_THRASH;");
+    println("          zzLazyFlush();");
+    println("          if (zzLazyNFA) return zzLazySimulate(state, next);");
+    println();
+    println("          // state is not cached any more");
+    println("          result = zzLazyStates++;");
+    println("          zzLazyDefine(result, next);");
+    println("          zzLazyInsert(result);");
+    println("          return result;");
+    println("        }");
+    println();
+    println("        result = zzLazyStates++;");
+    println("        zzLazyDefine(result, next);");
+    println("        zzLazyInsert(result);");
+    println("      }");
+    println();
+    println("      zzLazyTrans[state*ZZ_LAZY_COLS + input] = result;");
+    println("      return result;");
+    println("    }");
+    println();
+    println("    return next == null ? -1 : zzLazySimulate(state, next);");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * NFA simulation: uses the two states after the cached ones in turn,");
+    println("   * without adding transitions to the cache.");
+    println("   *");
+    println("   * @param state  the current state");
+    println("   * @param next   the NFA states of the successor");
+    println("   * @return the successor");
+    println("   */");
+    println("  private int zzLazySimulate(int state, int [] next) {");
+    println("    int result = state == ZZ_LAZY_SIZE ? ZZ_LAZY_SIZE+1 : ZZ_LAZY_SIZE;");
+    println("    zzLazyDefine(result, next);");
+    println("    return result;");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * Starts a new set of marked NFA states.");
+    println("   */");
+    println("  private void zzLazyNewMark() {");
+    println("    if (++zzLazyStamp == 0) {");
+    println("      java.util.Arrays.fill(zzLazyMark, 0);");
+    println("      zzLazyStamp = 1;");
+    println("    }");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * Computes the NFA states reachable by epsilon edges from the ");
+    println("   * (marked) states zzLazyStack[0..top-1].");
+    println("   *");
+    println("   * @param top  the number of states on the stack");
+    println("   * @return the reachable NFA states, sorted, <code>null</code> if there are none");
+    println("   */");
+    println("  private int [] zzLazyClosure(int top) {");
+    println("    int [] row = ZZ_NFAROW;");
+    println("    int [] edge = ZZ_NFAEDGE;");
+    println("    int size = 0;");
+    println();
+    println("    while (top > 0) {");
+    println("      int s = zzLazyStack[--top];");
+    println("      zzLazyList[size++] = s;");
+    println("      for (int e = row[s]; e < row[s+1]; e+= 2) {");
+    println("        int t = edge[e+1];");
+    println("        if (edge[e] == -1 && zzLazyMark[t] != zzLazyStamp) {");
+    println("          zzLazyMark[t] = zzLazyStamp;");
+    println("          zzLazyStack[top++] = t;");
+    println("        }");
+    println("      }");
+    println("    }");
+    println();
+    println("    if (size == 0) return null;");
+    println();
+    println("    int [] result = new int [size];");
+    println("    System.arraycopy(zzLazyList, 0, result, 0, size);");
+    println("    java.util.Arrays.sort(result);");
+    println("    return result;");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * Sets the NFA states of a state of the lazy DFA, and with them its");
+    println("   * attributes and action.");
+    println("   */");
+    println("  private void zzLazyDefine(int state, int [] set) {");
+    println("    int [] row = ZZ_NFAROW;");
+    println("    int [] edge = ZZ_NFAEDGE;");
+    println("    int rank = 0;");
+    println("    int attributes = "+NOLOOK+";");
+    println();
+    println("    for (int i = 0; i < set.length; i++) {");
+    println("      int s = set[i];");
+    println("      int r = ZZ_NFAACTION[s];");
+    println("      if (r != 0 && (rank == 0 || r < rank)) rank = r;");
+    println("      for (int e = row[s]; e < row[s+1]; e+= 2) {");
+    println("        if (edge[e] != -1) attributes = 0;");
+    println("      }");
+    println("    }");
+    println();
+    println("    if (rank != 0) attributes|= "+FINAL+";");
+    println();
+    println("    zzLazySet[state] = set;");
+    println("    zzLazyAttr[state] = attributes;");
+    println("    zzLazyAction[state] = ZZ_LAZYLABEL[rank];");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * @return the cached state with the NFA states <code>set</code>, -1 if there is none");
+    println("   */");
+    println("  private int zzLazyFind(int [] set) {");
+    println("    int i = zzLazyHashCode(set);");
+    println("    while (zzLazyHash[i] != 0) {");
+    println("      int state = zzLazyHash[i]-1;");
+    println("      if (java.util.Arrays.equals(zzLazySet[state], set)) return state;");
+    println("      i = (i+1) & (ZZ_LAZY_HASH-1);");
+    println("    }");
+    println("    return -1;");
+    println("  }");
+    println();
+    println("  /**");
+    println("   * Adds a state to the hash table of the cached states.");
+    println("   */");
+    println("  private void zzLazyInsert(int state) {");
+    println("    int i = zzLazyHashCode(zzLazySet[state]);");
+    println("    while (zzLazyHash[i] != 0) i = (i+1) & (ZZ_LAZY_HASH-1);");
+    println("    zzLazyHash[i] = state+1;");
+    println("  }");
+    println();
+    println("  private static int zzLazyHashCode(int [] set) {");
+    println("    int h = java.util.Arrays.hashCode(set);");
+    println("    return (h ^ (h >>> 16)) & (ZZ_LAZY_HASH-1);");
+    println("  }");
+  }
+
+  /**
+   * Reports the options that lazy scanners do not support and 
+   * switches them off.
+   */
+  private void checkLazy() {
+    List<String> ignored = new ArrayList<String>();
+
+    if (scanner.fused) ignored.add("%fused");
+    if (scanner.stateTables) ignored.add("%statetables");
+    if (scanner.tableResource) ignored.add("%tableresource");
+    if (scanner.linearMunch) ignored.add("%linear");
+    if (scanner.profile) ignored.add("%profile");
+    if (options.instrument) ignored.add("--instrument");
+    if (options.profile != null) ignored.add("--useprofile");
+
+    if (!ignored.isEmpty()) {
+      StringBuilder list = new StringBuilder();
+      for (String s : ignored) {
+        if (list.length() > 0) list.append(", ");
+        list.append(s);
+      }
+      Out.warning(ErrorMessages.get(ErrorMessages.LAZY_IGNORED, list.toString()));
+    }
+
+    scanner.fused = false;
+    scanner.stateTables = false;
+    scanner.tableResource = false;
+    scanner.linearMunch = false;
+    scanner.profile = false;
+  }
+
+  /**
+   * Returns the state in <code>ZZ_LEXSTATE</code> style for an entry 
+   * state of the forward or backward pass of general lookahead.
+   */
+  private int lookEntryState(int entry) {
+    return nfa != null ? entry : dfa.entryState[entry];
+  }
+
   private void emitActions() {
-    println("      switch (zzAction < 0 ? zzAction : ZZ_ACTION[zzAction]) {");
+    if ( scanner.linearMunch ) {
+      println("      // no final state is reachable from the states after the match");
+      println("      for (int zzPos = zzMarkedPosL+1; zzPos <= zzTrailEnd; zzPos++)");
+      println("        zzFailed[zzPos] = zzTrail[zzPos]+1;");
+      println();
+    }
+
+    if ( scanner.profile ) {
+      println("      if (zzAction >= 0) {");
+      println("        int zzBacktrack = zzCurrentPosL - zzMarkedPosL;");
+      println("        zzProfileBacktrack+= zzBacktrack;");
+      println("        if (zzBacktrack > zzProfileBacktrackMax) zzProfileBacktrackMax = zzBacktrack;");
+      println("      }");
+      println();
+    }
+
+    if (nfa != null)
+      println("      switch (zzAction) {");
+    else if (fused)
+      println("      switch (zzAction < 0 ? zzAction : ZZ_ACTION[(zzAction >> 2) / "+numCols+"]) {");
+    else
+      println("      switch (zzAction < 0 ? zzAction : ZZ_ACTION[zzAction]) {");
 
     int i = actionTable.size()+1;
     
@@ -1185,6 +2823,9 @@ final public class Emitter {
       int label = entry.getValue();
 
       println("        case "+label+": "); 
+
+      if ( scanner.profile ) 
+        println("          zzProfileActions["+label+"]++;");
       
       if (action.lookAhead() == Action.FIXED_BASE) {
         println("          // lookahead expression with fixed base length");
@@ -1197,24 +2838,31 @@ final public class Emitter {
         println("          yypushback("+action.getLookLength()+");");        
       }
       
-      if (action.lookAhead() == Action.GENERAL_LOOK) {
+      if (action.lookAhead() == Action.GENERAL_LOOK && action.isSinglePass()) {
+        println("          // general lookahead, split position recorded while matching");
+        println("          zzMarkedPos = zzStartRead + zzLookBaseMarked;");
+      }
+
+      if (action.lookAhead() == Action.GENERAL_LOOK && !action.isSinglePass()) {
         println("          // general lookahead, find correct zzMarkedPos");
-        println("          { int zzFState = "+dfa.entryState[action.getEntryState()]+";");
+        if ( scanner.profile ) 
+          println("          zzProfileRescans++;");
+        println("          { int zzFState = "+lookEntryState(action.getEntryState())+";");
         println("            int zzFPos = zzStartRead;");
         println("            if (zzFin.length <= zzBufferL.length) { zzFin = new boolean[zzBufferL.length+1]; }");
         println("            boolean zzFinL[] = zzFin;");
         println("            while (zzFState != -1 && zzFPos < zzMarkedPos) {");
         println("              if ((zzAttrL[zzFState] & 1) == 1) { zzFinL[zzFPos] = true; } ");
         println("              zzInput = zzBufferL[zzFPos++];");
-        println("              zzFState = zzTransL[ zzRowMapL[zzFState] + zzCMapL[zzInput] ];");
+        println("              zzFState = "+transition("zzFState", "zzInput")+";");
         println("            }");
         println("            if (zzFState != -1 && (zzAttrL[zzFState] & 1) == 1) { zzFinL[zzFPos] = true; } ");
         println();                
-        println("            zzFState = "+dfa.entryState[action.getEntryState()+1]+";");
+        println("            zzFState = "+lookEntryState(action.getEntryState()+1)+";");
         println("            zzFPos = zzMarkedPos;");
         println("            while (!zzFinL[zzFPos] || (zzAttrL[zzFState] & 1) != 1) {");
         println("              zzInput = zzBufferL[--zzFPos];");
-        println("              zzFState = zzTransL[ zzRowMapL[zzFState] + zzCMapL[zzInput] ];");
+        println("              zzFState = "+transition("zzFState", "zzInput")+";");
         println("            };");
         println("            zzMarkedPos = zzFPos;");
         println("          }");
@@ -1249,7 +2897,7 @@ final public class Emitter {
       
       // pick a start value for break case labels. 
       // must be larger than any value of a lex state:
-      int last = dfa.numStates;
+      int last = nfa != null ? nfa.numEntryStates() : dfa.numStates;
       
       for (String name : scanner.states.names()) {
         int num = scanner.states.getNumber(name);
@@ -1358,6 +3006,11 @@ final public class Emitter {
     if ( nextState != DFA.NO_TARGET ) {
       if ( dfa.isFinal[nextState] )
         print("zzIsFinal = true; ");
+
+      if ( dfa.isLookEnd[nextState] )
+        print("zzLookBase = zzCurrentPosL - zzStartRead; ");
+
+      emitTagTransition(nextState);
         
       if ( !isTransition[nextState] )
         print("zzNoLookAhead = true; ");
@@ -1377,6 +3030,11 @@ final public class Emitter {
     if ( nextState != DFA.NO_TARGET ) {
       if ( dfa.isFinal[nextState] )
         print("zzIsFinal = true; ");
+
+      if ( dfa.isLookEnd[nextState] )
+        print("zzLookBase = zzCurrentPosL - zzStartRead; ");
+
+      emitTagTransition(nextState);
         
       if ( !isTransition[nextState] )
         print("zzNoLookAhead = true; ");
@@ -1390,6 +3048,13 @@ final public class Emitter {
       println( "break zzForAction;" );
   }
   
+  private void emitTagTransition(int nextState) {
+    if ( dfa.tags[nextState] == null ) return;
+
+    for (int k : dfa.tags[nextState])
+      print("zzTagPos["+k+"] = zzCurrentPosL - zzStartRead; ");
+  }
+
   private int getDefaultTransition(int state) {
     int max = 0;
     
@@ -1453,36 +3118,17 @@ final public class Emitter {
 
   
   private void reduceColumns() {
-    colMap = new int [dfa.numInput];
+    colMap = dfa.columnMap();
     colKilled = new boolean [dfa.numInput];
 
-    int i,j,k;
-    int translate = 0;
-    boolean equal;
-
-    numCols = dfa.numInput;
+    numCols = 0;
 
-    for (i = 0; i < dfa.numInput; i++) {
-      
-      colMap[i] = i-translate;
-      
-      for (j = 0; j < i; j++) {
-        
-        // test for equality:
-        k = -1;
-        equal = true;        
-        while (equal && ++k < dfa.numStates) 
-          equal = dfa.table[k][i] == dfa.table[k][j];
-        
-        if (equal) {
-          translate++;
-          colMap[i] = colMap[j];
-          colKilled[i] = true;
-          numCols--;
-          break;
-        } // if
-      } // for j
-    } // for i
+    for (int i = 0; i < dfa.numInput; i++) {
+      if (colMap[i] == numCols) 
+        numCols++;
+      else
+        colKilled[i] = true;
+    }
   }
   
   private void reduceRows() {
@@ -1544,8 +3190,38 @@ final public class Emitter {
     if (scanner.functionName == null) 
       scanner.functionName = "yylex";
 
-    reduceColumns();
-    findActionStates();
+    if (nfa != null) {
+      checkLazy();
+
+      numCols = nfa.numInput;
+      colMap = new int [numCols];
+      for (int i = 0; i < numCols; i++) colMap[i] = i;
+    }
+    else {
+      reduceColumns();
+      findActionStates();
+
+      transType = PackEmitter.typeFor(DFA.NO_TARGET, dfa.numStates-1);
+    }
+
+    fused = scanner.fused && scanner.useRowMap && !scanner.comb && 
+            !hasGenLookAhead() && !hasLookRegister() && !hasGroups() && 
+            !scanner.linearMunch;
+
+    if (scanner.fused && !fused) 
+      Out.warning(ErrorMessages.get(ErrorMessages.FUSED_UNAVAILABLE));
+
+    if (scanner.tableResource) 
+      resource = new TableResource();
+
+    if (scanner.stateTables) {
+      if (scanner.useRowMap && !scanner.comb && !fused && !hasGenLookAhead() && !options.instrument) 
+        partition = new LexStatePartition(dfa);
+      else
+        Out.warning(ErrorMessages.get(ErrorMessages.STATETABLES_UNAVAILABLE));
+    }
+
+    packed = scanner.packed || scanner.tableResource;
 
     emitHeader();
     emitUserCode();
@@ -1565,28 +3241,54 @@ final public class Emitter {
    
     emitCharMapArray();
     
-    emitActionTable();
+    if (nfa != null)
+      emitLazyTables();
+    else
+      emitActionTable();
     
-    if (scanner.useRowMap) {
+    if (nfa == null && scanner.useRowMap) {
      reduceRows();
-    
-      emitRowMapArray();
 
-      if (scanner.packed)
-        emitDynamicInit();
-      else
-        emitZZTrans();
+      if (scanner.comb) {
+        emitCombTable();
+      }
+      else if (fused) {
+        emitFusedTrans();
+      }
+      else if (partition != null) {
+        emitStateTables();
+      }
+      else {
+        emitRowMapArray();
+
+        if (packed)
+          emitDynamicInit();
+        else
+          emitZZTrans();
+      }
     }
     
     skel.emitNext();
     
-    if (scanner.useRowMap) 
+    if (nfa == null && scanner.useRowMap && !fused) 
       emitAttributes();    
 
     skel.emitNext();
+
+    emitTableLoader();
     
     emitLookBuffer();
+
+    emitGroups();
+
+    emitFailureMemo();
     
+    emitInstrumentation();
+
+    emitProfile();
+
+    emitLazyDFA();
+
     emitClassCode();
     
     skel.emitNext();
@@ -1609,7 +3311,9 @@ final public class Emitter {
     
     emitNextInput();
 
-    if (scanner.useRowMap)
+    if (nfa != null)
+      emitLazyNext();
+    else if (scanner.useRowMap)
       emitGetRowMapNext();
     else
       emitTransitionTable();
@@ -1633,6 +3337,37 @@ final public class Emitter {
     skel.emitNext();
 
     out.close();
+
+    if (context.result != null) {
+      context.result.source = buffer.toString();
+      if (resource != null)
+        context.result.resources.put(getBaseName(scanner.className)+".bin", resource.toBytes());
+      return;
+    }
+
+    if (buffer != null) 
+      writeIfChanged(outputFile, buffer.toString().getBytes(), options);
+
+    if (resource != null) {
+      String name = getBaseName(scanner.className)+".bin";
+
+      if (options.keep_unchanged) {
+        File file = outputFile(name, inputFile, options);
+        context.addOutputFile(file);
+        writeIfChanged(file, resource.toBytes(), options);
+        return;
+      }
+
+      File file = normalize(name, inputFile, options);
+      context.addOutputFile(file);
+      try {
+        resource.write(file);
+      }
+      catch (IOException e) {
+        Out.error(ErrorMessages.FILE_WRITE, file);
+        throw new GeneratorException();
+      }
+    }
   }
 
 }
@@ -117,6 +117,7 @@ public class ErrorMessages {
   public static ErrorMessages CANNOT_OPEN = new ErrorMessages("CANNOT_OPEN");
   public static ErrorMessages NFA_IS = new ErrorMessages("NFA_IS");
   public static ErrorMessages NFA_STATES = new ErrorMessages("NFA_STATES");
+  public static ErrorMessages NFA_NORMALIZED = new ErrorMessages("NFA_NORMALIZED");
   public static ErrorMessages DFA_TOOK = new ErrorMessages("DFA_TOOK");
   public static ErrorMessages DFA_IS = new ErrorMessages("DFA_IS");
   public static ErrorMessages MIN_TOOK = new ErrorMessages("MIN_TOOK");
@@ -137,4 +138,36 @@ public class ErrorMessages {
   public static ErrorMessages INT_AND_TYPE = new ErrorMessages("INT_AND_TYPE");
   public static ErrorMessages UNSUPPORTED_UNICODE_VERSION = new ErrorMessages("UNSUPPORTED_UNICODE_VERSION");
   public static ErrorMessages INVALID_UNICODE_PROPERTY = new ErrorMessages("INVALID_UNICODE_PROPERTY");
+  public static ErrorMessages GROUP_AMBIGUOUS = new ErrorMessages("GROUP_AMBIGUOUS");
+  public static ErrorMessages FUSED_UNAVAILABLE = new ErrorMessages("FUSED_UNAVAILABLE");
+  public static ErrorMessages NO_PROFILE_FILE = new ErrorMessages("NO_PROFILE_FILE");
+  public static ErrorMessages READING_PROFILE = new ErrorMessages("READING_PROFILE");
+  public static ErrorMessages PROFILE_FORMAT = new ErrorMessages("PROFILE_FORMAT");
+  public static ErrorMessages PROFILE_MISMATCH = new ErrorMessages("PROFILE_MISMATCH");
+  public static ErrorMessages PROFILE_IGNORED = new ErrorMessages("PROFILE_IGNORED");
+  public static ErrorMessages WRITING_TABLES = new ErrorMessages("WRITING_TABLES");
+  public static ErrorMessages STATETABLES_UNAVAILABLE = new ErrorMessages("STATETABLES_UNAVAILABLE");
+  public static ErrorMessages NO_CACHE_DIR = new ErrorMessages("NO_CACHE_DIR");
+  public static ErrorMessages DFA_CACHE_HIT = new ErrorMessages("DFA_CACHE_HIT");
+  public static ErrorMessages DFA_CACHE_WRITE = new ErrorMessages("DFA_CACHE_WRITE");
+  public static ErrorMessages NO_INPUT_FILES = new ErrorMessages("NO_INPUT_FILES");
+  public static ErrorMessages SERVER_LISTENING = new ErrorMessages("SERVER_LISTENING");
+  public static ErrorMessages SERVER_USAGE = new ErrorMessages("SERVER_USAGE");
+  public static ErrorMessages NO_COMPANION = new ErrorMessages("NO_COMPANION");
+  public static ErrorMessages CLASSFILE_ACTION = new ErrorMessages("CLASSFILE_ACTION");
+  public static ErrorMessages CLASSFILE_LOOKAHEAD = new ErrorMessages("CLASSFILE_LOOKAHEAD");
+  public static ErrorMessages CLASSFILE_IGNORED = new ErrorMessages("CLASSFILE_IGNORED");
+  public static ErrorMessages CLASSFILE_TOO_LARGE = new ErrorMessages("CLASSFILE_TOO_LARGE");
+  public static ErrorMessages LAZY_UNAVAILABLE = new ErrorMessages("LAZY_UNAVAILABLE");
+  public static ErrorMessages LAZY_IGNORED = new ErrorMessages("LAZY_IGNORED");
+  public static ErrorMessages NO_BUDGET = new ErrorMessages("NO_BUDGET");
+  public static ErrorMessages DFA_BUDGET = new ErrorMessages("DFA_BUDGET");
+  public static ErrorMessages DFA_BUDGET_STATES = new ErrorMessages("DFA_BUDGET_STATES");
+  public static ErrorMessages DFA_BUDGET_MEMORY = new ErrorMessages("DFA_BUDGET_MEMORY");
+  public static ErrorMessages DFA_BUDGET_TIME = new ErrorMessages("DFA_BUDGET_TIME");
+  public static ErrorMessages DFA_CULPRIT_RULE = new ErrorMessages("DFA_CULPRIT_RULE");
+  public static ErrorMessages DFA_CULPRIT_REPEAT = new ErrorMessages("DFA_CULPRIT_REPEAT");
+  public static ErrorMessages DFA_CULPRIT_COMPLEMENT = new ErrorMessages("DFA_CULPRIT_COMPLEMENT");
+  public static ErrorMessages DFA_CULPRIT_UPTO = new ErrorMessages("DFA_CULPRIT_UPTO");
+  public static ErrorMessages DFA_CULPRIT_STATE = new ErrorMessages("DFA_CULPRIT_STATE");
 }
\ No newline at end of file
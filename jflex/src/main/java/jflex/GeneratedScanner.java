@@ -0,0 +1,150 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.*;
+
+/**
+ * The result of an in-memory generator run (see {@link JFlex}): the
+ * scanner source or class file, the table resource for
+ * <code>%tableresource</code>, all messages and diagnostics, and
+ * statistics.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class GeneratedScanner {
+
+  /** the name of the generated class, e.g. <code>Yylex</code> */
+  String className;
+
+  /** the source code of the scanner, <code>null</code> if there were errors */
+  String source;
+
+  /** the binary name of the class, for class files */
+  String binaryName;
+
+  /**
+   * the class file of the scanner (see {@link GeneratorOptions#classfile}),
+   * <code>null</code> if there were errors or source was generated
+   */
+  byte [] classFile;
+
+  /** generated resource files by name */
+  Map<String, byte[]> resources = new LinkedHashMap<String, byte[]>();
+
+  /** errors and warnings */
+  List<Diagnostic> diagnostics = Collections.emptyList();
+
+  /** the messages of the run, as JFlex would print them */
+  String messages = "";
+
+  /** automaton sizes and times */
+  GeneratorStats stats;
+
+  GeneratedScanner() {
+  }
+
+  /**
+   * @return true iff the run reported no errors and produced a scanner
+   */
+  public boolean isSuccess() {
+    if (source == null && classFile == null) return false;
+    for (Diagnostic d : diagnostics)
+      if (d.isError()) return false;
+    return true;
+  }
+
+  /**
+   * @return the simple name of the scanner class (without type
+   *         parameters), <code>null</code> if the run failed before
+   *         it was known
+   */
+  public String getClassName() {
+    return className;
+  }
+
+  /**
+   * @return the source code of the scanner class, <code>null</code>
+   *         if the run failed
+   */
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * @return the class file of the scanner, <code>null</code> if the
+   *         run failed or generated source code
+   */
+  public byte [] getClassFile() {
+    return classFile;
+  }
+
+  /**
+   * Defines the class of a class file scanner in a new class loader.
+   * The scanner sees the classes of <code>parent</code>, e.g. its
+   * super class and companion class.
+   *
+   * @param parent  the class loader the scanner's class loader delegates to
+   * @return the scanner class
+   * @throws IllegalStateException  if the run produced no class file
+   */
+  public Class<?> defineClass(ClassLoader parent) {
+    if (classFile == null) throw new IllegalStateException("no class file generated");
+    return new Loader(parent).define(binaryName, classFile);
+  }
+
+  /**
+   * Returns the resource files of the scanner, e.g. the packed tables
+   * of a <code>%tableresource</code> scanner, which the scanner loads
+   * from the class path next to its class.
+   *
+   * @return the content of the resource files by file name
+   */
+  public Map<String, byte[]> getResources() {
+    return resources;
+  }
+
+  /**
+   * @return the errors and warnings of the run, in the order they
+   *         were reported
+   */
+  public List<Diagnostic> getDiagnostics() {
+    return diagnostics;
+  }
+
+  /**
+   * @return all messages of the run, including progress messages if
+   *         the options ask for them
+   */
+  public String getMessages() {
+    return messages;
+  }
+
+  /**
+   * @return automaton sizes and times of the run
+   */
+  public GeneratorStats getStats() {
+    return stats;
+  }
+
+  /**
+   * Loads the class of one scanner.
+   */
+  private static final class Loader extends ClassLoader {
+    Loader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte [] b) {
+      return defineClass(name, b, 0, b.length);
+    }
+  }
+}
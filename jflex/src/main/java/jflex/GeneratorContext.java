@@ -0,0 +1,275 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.util.*;
+
+import jflex.unicode.UnicodeProperties;
+
+/**
+ * The state of one generator run: options, skeleton, diagnostics and
+ * Unicode data.
+ *
+ * Runs with different contexts do not share any mutable state, so
+ * independent specifications can be generated in parallel threads
+ * (see {@link Main#generate(File, GeneratorContext)}). A context must
+ * not be used by more than one run at a time.
+ *
+ * While a run is in progress, its context is bound to the thread
+ * executing it, and the static methods of {@link Out} report to the
+ * context. The static API ({@link Options}, {@link Skeleton},
+ * {@link Out} outside of runs) provides the defaults for new contexts.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class GeneratorContext {
+
+  /** the context of the run in progress in each thread */
+  private static final ThreadLocal<GeneratorContext> bound = new ThreadLocal<GeneratorContext>();
+
+  /** the options of this run */
+  public final GeneratorOptions options;
+
+  /** the skeleton sections of this run */
+  String [] skeleton;
+
+  /** the output device for messages */
+  StdOutWriter out;
+
+  /** number of warnings reported */
+  int warnings;
+
+  /** number of errors reported */
+  int errors;
+
+  /** the errors and warnings reported */
+  private List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+
+  /** automaton sizes and times of this run */
+  GeneratorStats stats = new GeneratorStats();
+
+  /** 
+   * the result of an in-memory run (see {@link JFlex}), <code>null</code>
+   * if the run writes files 
+   */
+  GeneratedScanner result;
+
+  /** opens included files, <code>null</code> to read them from disk */
+  IncludeResolver includeResolver;
+
+  /** the files read by this run */
+  private List<File> inputFiles = new ArrayList<File>();
+
+  /** the files written by this run */
+  private List<File> outputFiles = new ArrayList<File>();
+
+  /** Unicode properties by version, loaded on first use */
+  private Map<String, UnicodeProperties> unicodeProperties = new HashMap<String, UnicodeProperties>();
+
+
+  /**
+   * Creates a context from the current values of the static
+   * {@link Options}, the static skeleton and output device of
+   * {@link Out}.
+   */
+  public GeneratorContext() {
+    this(GeneratorOptions.fromOptions());
+    skeleton = Skeleton.line;
+    out = Out.getOutput();
+  }
+
+  /**
+   * Creates a context with the default skeleton that writes messages
+   * to <code>System.out</code>.
+   *
+   * @param options  the options of the run
+   */
+  public GeneratorContext(GeneratorOptions options) {
+    this.options = options;
+    this.skeleton = Skeleton.getDefault();
+    this.out = new StdOutWriter();
+  }
+
+  /**
+   * Reads an external skeleton file for this run.
+   *
+   * @param file  the skeleton file
+   */
+  public void setSkeleton(File file) {
+    skeleton = Skeleton.readSections(file);
+  }
+
+  /**
+   * Replaces all occurences of " public " in the skeleton with " private ".
+   */
+  public void makePrivate() {
+    skeleton = Skeleton.makePrivate(skeleton);
+  }
+
+  /**
+   * Sets the output stream for messages of this run.
+   *
+   * @param stream  the new output stream
+   */
+  public void setOutputStream(OutputStream stream) {
+    out = new StdOutWriter(stream);
+  }
+
+  /**
+   * @return the number of warnings reported in this context
+   */
+  public int getWarnings() {
+    return warnings;
+  }
+
+  /**
+   * @return the number of errors reported in this context
+   */
+  public int getErrors() {
+    return errors;
+  }
+
+  /**
+   * @return the errors and warnings reported in this context
+   */
+  public List<Diagnostic> getDiagnostics() {
+    return diagnostics;
+  }
+
+  /**
+   * @return automaton sizes and times of the last run in this context
+   */
+  public GeneratorStats getStats() {
+    return stats;
+  }
+
+  /**
+   * Counts and records an error or warning.
+   */
+  void report(Diagnostic diagnostic) {
+    if (diagnostic.isError()) errors++; else warnings++;
+    diagnostics.add(diagnostic);
+  }
+
+  /**
+   * @return the specification, included files and other files the run
+   *         read, in the order they were read
+   */
+  public List<File> getInputFiles() {
+    return inputFiles;
+  }
+
+  /**
+   * @return the files the run wrote (or kept, because their content
+   *         did not change)
+   */
+  public List<File> getOutputFiles() {
+    return outputFiles;
+  }
+
+  /**
+   * Records a file the run reads.
+   */
+  void addInputFile(File file) {
+    inputFiles.add(file.getAbsoluteFile());
+  }
+
+  /**
+   * Records a file the run writes.
+   */
+  void addOutputFile(File file) {
+    outputFiles.add(file.getAbsoluteFile());
+  }
+
+  /**
+   * Shares the Unicode properties loaded by this context with other
+   * contexts, e.g. with all runs of a {@link Server}. 
+   *
+   * @param cache  the Unicode properties by version, shared by all contexts
+   *               that use it
+   */
+  void shareUnicodeProperties(Map<String, UnicodeProperties> cache) {
+    unicodeProperties = cache;
+  }
+
+  /**
+   * Returns the Unicode properties of a Unicode version.
+   *
+   * @param version  the version, <code>null</code> for the default version
+   * @throws UnicodeProperties.UnsupportedUnicodeVersionException
+   *         if the version is not supported
+   */
+  public UnicodeProperties getUnicodeProperties(String version)
+    throws UnicodeProperties.UnsupportedUnicodeVersionException {
+
+    String key = version == null ? "" : version;
+
+    synchronized (unicodeProperties) {
+      UnicodeProperties properties = unicodeProperties.get(key);
+
+      if (properties == null) {
+        properties = version == null ? new UnicodeProperties() : new UnicodeProperties(version);
+        unicodeProperties.put(key, properties);
+      }
+
+      return properties;
+    }
+  }
+
+  /**
+   * Returns the context bound to the current thread, or a new context
+   * with the values of the static API if there is none.
+   */
+  public static GeneratorContext current() {
+    GeneratorContext context = bound.get();
+    return context != null ? context : new GeneratorContext();
+  }
+
+  /**
+   * Returns the context bound to the current thread, <code>null</code>
+   * if there is none.
+   */
+  static GeneratorContext bound() {
+    return bound.get();
+  }
+
+  /**
+   * Binds this context to the current thread.
+   *
+   * @return the context bound before, to be passed to {@link #unbind}
+   */
+  GeneratorContext bind() {
+    GeneratorContext previous = bound.get();
+    bound.set(this);
+    return previous;
+  }
+
+  /**
+   * Restores the binding before {@link #bind}. The error and warning
+   * counts of this context become the counts of the previous context
+   * (or of the static API), so that {@link Out#statistics()} reports
+   * them after the run.
+   *
+   * @param previous  the context returned by {@link #bind}
+   */
+  void unbind(GeneratorContext previous) {
+    if (previous != null) {
+      previous.errors = errors;
+      previous.warnings = warnings;
+      bound.set(previous);
+    }
+    else {
+      bound.remove();
+      Out.setCounters(errors, warnings);
+    }
+  }
+}
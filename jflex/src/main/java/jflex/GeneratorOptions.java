@@ -0,0 +1,152 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.File;
+
+/**
+ * The options of one generator run (see {@link GeneratorContext}).
+ *
+ * The fields have the same meaning as the static fields of
+ * {@link Options}, which only provide the defaults for runs started
+ * through the static API.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public class GeneratorOptions {
+
+  /** output directory */
+  private File directory;
+  /** strict JLex compatibility */
+  public boolean jlex;
+  /** don't run minimization algorithm if this is true */
+  public boolean no_minimize;
+  /** don't write backup files if this is true */
+  public boolean no_backup;
+  /** default code generation method */
+  public int gen_method = Options.PACK;
+  /** If false, only error/warning output will be generated */
+  public boolean verbose = true;
+  /** If true, progress dots will be printed */
+  public boolean progress = true;
+  /** If true, jflex will print time statistics about the generation process */
+  public boolean time;
+  /** If true, jflex will write graphviz .dot files for generated automata */
+  public boolean dot;
+  /** If true, you will be flooded with information (e.g. dfa tables).  */
+  public boolean dump;
+  /** If true, generated scanners count their transitions for a profile */
+  public boolean instrument;
+  /** transition profile to order the DFA states by, may be <code>null</code> */
+  public File profile;
+  /** don't rewrite output files whose content did not change if this is true */
+  public boolean keep_unchanged;
+  /** directory to cache minimized DFAs in, may be <code>null</code> */
+  public File cache;
+  /** If true, scanners are written as class files instead of Java source */
+  public boolean classfile;
+  /** class with the actions of class file scanners, may be <code>null</code> */
+  public String companion;
+  /** If true, scanners build their DFA while scanning, from the NFA */
+  public boolean lazy;
+  /** maximum number of DFA states before generation is aborted, 0 for no limit */
+  public int maxStates;
+  /** maximum estimated size of the DFA in MB before generation is aborted, 0 for no limit */
+  public int maxMemory;
+  /** maximum time in seconds for the DFA construction, 0 for no limit */
+  public int maxTime;
+
+
+  /**
+   * Creates options with default values.
+   */
+  public GeneratorOptions() {
+  }
+
+  /**
+   * Returns a copy of the current values of the static {@link Options}.
+   */
+  public static GeneratorOptions fromOptions() {
+    GeneratorOptions o = new GeneratorOptions();
+    o.directory = Options.getDir();
+    o.jlex = Options.jlex;
+    o.no_minimize = Options.no_minimize;
+    o.no_backup = Options.no_backup;
+    o.gen_method = Options.gen_method;
+    o.verbose = Options.verbose;
+    o.progress = Options.progress;
+    o.time = Options.time;
+    o.dot = Options.dot;
+    o.dump = Options.dump;
+    o.instrument = Options.instrument;
+    o.profile = Options.profile;
+    o.cache = Options.cache;
+    o.classfile = Options.classfile;
+    o.companion = Options.companion;
+    o.lazy = Options.lazy;
+    o.maxStates = Options.maxStates;
+    o.maxMemory = Options.maxMemory;
+    o.maxTime = Options.maxTime;
+    return o;
+  }
+
+  /**
+   * Sets the static {@link Options} to these options.
+   */
+  public void toOptions() {
+    if (directory != null) Options.setDir(directory);
+    Options.jlex = jlex;
+    Options.no_minimize = no_minimize;
+    Options.no_backup = no_backup;
+    Options.gen_method = gen_method;
+    Options.verbose = verbose;
+    Options.progress = progress;
+    Options.time = time;
+    Options.dot = dot;
+    Options.dump = dump;
+    Options.instrument = instrument;
+    Options.profile = profile;
+    Options.cache = cache;
+    Options.classfile = classfile;
+    Options.companion = companion;
+    Options.lazy = lazy;
+    Options.maxStates = maxStates;
+    Options.maxMemory = maxMemory;
+    Options.maxTime = maxTime;
+  }
+
+  /**
+   * @return the output directory, <code>null</code> for the directory
+   *         of the specification
+   */
+  public File getDir() {
+    return directory;
+  }
+
+  /**
+   * Set output directory
+   *
+   * @param d  the directory to write output files to
+   */
+  public void setDir(File d) {
+    if ( d.isFile() ) {
+      Out.error("Error: \""+d+"\" is not a directory.");
+      throw new GeneratorException();
+    }
+
+    if ( !d.isDirectory() && !d.mkdirs() ) {
+      Out.error("Error: couldn't create directory \""+d+"\"");
+      throw new GeneratorException();
+    }
+
+    directory = d;
+  }
+}
@@ -0,0 +1,66 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+/**
+ * Automaton sizes and times of a generator run.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class GeneratorStats {
+
+  /** number of NFA states */
+  int nfaStates = -1;
+
+  /** number of DFA states before minimization */
+  int dfaStates = -1;
+
+  /** number of DFA states after minimization */
+  int minimizedStates = -1;
+
+  /** total time of the run in milliseconds */
+  long time;
+
+  /**
+   * @return the number of NFA states, -1 if the run failed before
+   */
+  public int getNFAStates() {
+    return nfaStates;
+  }
+
+  /**
+   * @return the number of DFA states before minimization, -1 if the
+   *         run failed before
+   */
+  public int getDFAStates() {
+    return dfaStates;
+  }
+
+  /**
+   * @return the number of DFA states after minimization, -1 if the
+   *         run failed before
+   */
+  public int getMinimizedStates() {
+    return minimizedStates;
+  }
+
+  /**
+   * @return the total time of the run in milliseconds
+   */
+  public long getTime() {
+    return time;
+  }
+
+  public String toString() {
+    return nfaStates+" NFA states, "+dfaStates+" DFA states, "+
+      minimizedStates+" states after minimization, "+time+"ms";
+  }
+}
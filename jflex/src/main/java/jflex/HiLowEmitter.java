@@ -36,27 +36,30 @@ public class HiLowEmitter extends PackEmitter {
    */
   public void emitUnpack() {
     // close last string chunk:
-    println("\";");
+    emitClose();
     nl();
-    println("  private static int [] zzUnpack"+name+"() {");
-    println("    int [] result = new int["+numEntries+"];");
+    println("  private static "+type+" [] zzUnpack"+name+"() {");
+    println("    "+type+" [] result = new "+type+"["+numEntries+"];");
     println("    int offset = 0;");
 
     for (int i = 0; i < chunks; i++) {
-      println("    offset = zzUnpack"+name+"("+constName()+"_PACKED_"+i+", offset, result);");
+      println("    offset = zzUnpack"+name+"("+chunk(i)+", offset, result);");
     }
 
     println("    return result;");
     println("  }");
 
     nl();
-    println("  private static int zzUnpack"+name+"(String packed, int offset, int [] result) {");
+    println("  private static int zzUnpack"+name+"("+packedType()+" packed, int offset, "+type+" [] result) {");
     println("    int i = 0;  /* index in packed string  */");
     println("    int j = offset;  /* index in unpacked array */");
-    println("    int l = packed.length();");
+    println("    int l = "+packedLength()+";");
     println("    while (i < l) {");
-    println("      int high = packed.charAt(i++) << 16;");
-    println("      result[j++] = high | packed.charAt(i++);");
+    println("      int high = "+packedNext()+" << 16;");
+    if (type.equals("int"))
+      println("      result[j++] = high | "+packedNext()+";");
+    else
+      println("      result[j++] = "+cast()+"(high | "+packedNext()+");");
     println("    }");
     println("    return j;");
     println("  }");
@@ -71,7 +74,7 @@ public class HiLowEmitter extends PackEmitter {
   public void emit(int val) {
     numEntries+= 1;
     breaks();
-    emitUC(val >> 16);
+    emitUC(val >>> 16);
     emitUC(val & 0xFFFF);        
   }
 }
@@ -0,0 +1,33 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Supplies the content of files included with <code>%include</code>
+ * in specifications generated by {@link JFlex}.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public interface IncludeResolver {
+
+  /**
+   * Opens an included file.
+   *
+   * @param name  the name in the <code>%include</code> directive
+   * @return a reader for the content, <code>null</code> if there
+   *         is no such file
+   * @throws IOException  if the content cannot be read
+   */
+  Reader open(String name) throws IOException;
+}
@@ -354,14 +354,9 @@ public final class IntCharSet {
     IntCharSet n = copy();
         
     int size = intervals.size();
-    for (int i=0; i < size; i++) {
-      Interval elem = intervals.get(i);
-      for (char c = elem.start; c <= elem.end; c++) {
-        IntCharSet equivalenceClass = unicodeProperties.getCaselessMatches(c);
-        if (null != equivalenceClass)
-          n.add(equivalenceClass);
-      }
-    }
+    for (int i=0; i < size; i++) 
+      unicodeProperties.addCaselessMatches(intervals.get(i), n);
+
     return n;
   }
 
@@ -77,6 +77,14 @@ public final class Interval {
     Interval other = (Interval) o;
     return other.start == this.start && other.end == this.end;
   }
+
+
+  /**
+   * Return a hash code consistent with {@link #equals(Object)}.
+   */
+  public int hashCode() {
+    return (start << 16) | end;
+  }
   
 
   /**
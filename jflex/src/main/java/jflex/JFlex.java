@@ -0,0 +1,93 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+
+/**
+ * Generates scanners in memory, for tools that embed JFlex (annotation
+ * processors, test harnesses).
+ *
+ * Specifications are read from a <code>Reader</code>, and included
+ * files through an {@link IncludeResolver}. The generated source is
+ * returned in a {@link GeneratedScanner} instead of being written to a
+ * file, no backup files are made, and messages are collected instead
+ * of printed. Only options that name files explicitly
+ * ({@link GeneratorOptions#profile}, {@link GeneratorOptions#cache},
+ * {@link GeneratorOptions#dot}) still read or write files.
+ *
+ * Each call has its own {@link GeneratorContext}, so this class can be
+ * used from several threads at once. The options are only read and
+ * may be shared.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class JFlex {
+
+  /** the name of specifications that are generated without name */
+  public static final String DEFAULT_NAME = "spec.flex";
+
+  private JFlex() {
+  }
+
+  /**
+   * Generates a scanner from a specification without
+   * <code>%include</code> directives.
+   *
+   * @param spec     the specification
+   * @param options  the options of the run
+   * @return the scanner and the diagnostics of the run
+   */
+  public static GeneratedScanner generate(Reader spec, GeneratorOptions options) {
+    return generate(DEFAULT_NAME, spec, options, null);
+  }
+
+  /**
+   * Generates a scanner from a specification.
+   *
+   * @param name      the name of the specification in messages and 
+   *                  in the comment of the generated class
+   * @param spec      the specification
+   * @param options   the options of the run
+   * @param resolver  supplies the files included by the specification,
+   *                  <code>null</code> to report <code>%include</code>
+   *                  as error
+   * @return the scanner and the diagnostics of the run
+   */
+  public static GeneratedScanner generate(String name, Reader spec, GeneratorOptions options,
+                                          IncludeResolver resolver) {
+    GeneratedScanner result = new GeneratedScanner();
+
+    GeneratorContext context = new GeneratorContext(options);
+    ByteArrayOutputStream messages = new ByteArrayOutputStream();
+    context.setOutputStream(messages);
+    context.result = result;
+    context.includeResolver = resolver != null ? resolver : new IncludeResolver() {
+      public Reader open(String name) {
+        return null;
+      }
+    };
+
+    try {
+      Main.generate(new File(name), spec, context);
+    }
+    catch (GeneratorException e) {
+      // reported in the diagnostics
+      result.source = null;
+    }
+
+    context.out.flush();
+    result.messages = messages.toString();
+    result.diagnostics = context.getDiagnostics();
+    result.stats = context.stats;
+    return result;
+  }
+}
@@ -0,0 +1,213 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.*;
+
+/**
+ * Partitions the states of a DFA by lexical states for option
+ * <code>%statetables</code>, and computes character classes for
+ * each partition.
+ *
+ * Two lexical states are in the same partition, if they can reach
+ * a common DFA state that has transitions. Each state with transitions
+ * then belongs to exactly one partition, and its row in the transition
+ * table only needs the columns that input characters make a difference
+ * for in that partition. States without transitions can be shared by
+ * all partitions, their row consists of <code>NO_TARGET</code> entries
+ * only.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final public class LexStatePartition {
+
+  /** the automaton */
+  private DFA dfa;
+
+  /** the number of partitions */
+  int numParts;
+
+  /** the partition of each lexical state */
+  int [] lexStatePart;
+
+  /**
+   * the partition of each DFA state, -1 for states without transitions
+   * (and states that are not reachable from any lexical state)
+   */
+  int [] statePart;
+
+  /**
+   * <code>colMap[p][c]</code> is the column of input character class
+   * <code>c</code> in partition <code>p</code>
+   */
+  int [][] colMap;
+
+  /** the number of columns of each partition */
+  int [] numCols;
+
+  /** the maximum number of columns of all partitions */
+  int maxCols;
+
+  /**
+   * Computes the partition of a DFA.
+   *
+   * @param dfa  the (minimized) DFA
+   */
+  public LexStatePartition(DFA dfa) {
+    this.dfa = dfa;
+
+    int numStates = dfa.numStates;
+    int numLexStates = dfa.numLexStates;
+
+    boolean [] dead = new boolean [numStates];
+    for (int s = 0; s < numStates; s++) {
+      dead[s] = true;
+      for (int c = 0; c < dfa.numInput && dead[s]; c++)
+        dead[s] = dfa.table[s][c] == DFA.NO_TARGET;
+    }
+
+    // union find on lexical states
+    int [] parent = new int [numLexStates];
+    for (int l = 0; l < numLexStates; l++) parent[l] = l;
+
+    int [] owner = new int [numStates];
+    Arrays.fill(owner, -1);
+
+    boolean [] visited = new boolean [numStates];
+    int [] stack = new int [numStates];
+
+    for (int l = 0; l < numLexStates; l++) {
+      Arrays.fill(visited, false);
+      int top = 0;
+      boolean live = false;
+
+      for (int bol = 0; bol < 2; bol++) {
+        int entry = dfa.entryState[2*l+bol];
+        if (!visited[entry]) {
+          visited[entry] = true;
+          stack[top++] = entry;
+        }
+      }
+
+      while (top > 0) {
+        int s = stack[--top];
+        if (dead[s]) continue;
+
+        live = true;
+        if (owner[s] < 0)
+          owner[s] = l;
+        else
+          union(parent, owner[s], l);
+
+        for (int c = 0; c < dfa.numInput; c++) {
+          int t = dfa.table[s][c];
+          if (t != DFA.NO_TARGET && !visited[t]) {
+            visited[t] = true;
+            stack[top++] = t;
+          }
+        }
+      }
+
+      // the character map of a lexical state without transitions
+      // does not matter, it joins the partition of the first one
+      if (!live) union(parent, 0, l);
+    }
+
+    // number partitions in the order of their first lexical state
+    int [] partOfRoot = new int [numLexStates];
+    Arrays.fill(partOfRoot, -1);
+    lexStatePart = new int [numLexStates];
+
+    for (int l = 0; l < numLexStates; l++) {
+      int root = find(parent, l);
+      if (partOfRoot[root] < 0) partOfRoot[root] = numParts++;
+      lexStatePart[l] = partOfRoot[root];
+    }
+
+    statePart = new int [numStates];
+    for (int s = 0; s < numStates; s++)
+      statePart[s] = owner[s] < 0 ? -1 : lexStatePart[owner[s]];
+
+    // character classes of each partition
+    colMap = new int [numParts] [];
+    numCols = new int [numParts];
+
+    for (int p = 0; p < numParts; p++) {
+      int [] states = statesOf(p);
+      colMap[p] = new int [dfa.numInput];
+
+      for (int i = 0; i < dfa.numInput; i++) {
+        colMap[p][i] = numCols[p];
+
+        for (int j = 0; j < i; j++) {
+          int k = 0;
+          while (k < states.length && dfa.table[states[k]][i] == dfa.table[states[k]][j]) k++;
+
+          if (k == states.length) {
+            colMap[p][i] = colMap[p][j];
+            break;
+          }
+        }
+
+        if (colMap[p][i] == numCols[p]) numCols[p]++;
+      }
+
+      maxCols = Math.max(maxCols, numCols[p]);
+    }
+  }
+
+  private int [] statesOf(int p) {
+    int n = 0;
+    for (int s = 0; s < dfa.numStates; s++)
+      if (statePart[s] == p) n++;
+
+    int [] states = new int [n];
+    n = 0;
+    for (int s = 0; s < dfa.numStates; s++)
+      if (statePart[s] == p) states[n++] = s;
+
+    return states;
+  }
+
+  private static int find(int [] parent, int l) {
+    while (parent[l] != l) l = parent[l] = parent[parent[l]];
+    return l;
+  }
+
+  private static void union(int [] parent, int a, int b) {
+    a = find(parent, a);
+    b = find(parent, b);
+    if (a < b) parent[b] = a; else parent[a] = b;
+  }
+
+  /**
+   * Returns the row of a state in the columns of its partition.
+   * States without partition get a row of {@link #maxCols}
+   * <code>NO_TARGET</code> entries, which fits all partitions.
+   *
+   * @param state  the DFA state
+   */
+  public int [] row(int state) {
+    int p = statePart[state];
+
+    if (p < 0) {
+      int [] row = new int [maxCols];
+      Arrays.fill(row, DFA.NO_TARGET);
+      return row;
+    }
+
+    int [] row = new int [numCols[p]];
+    for (int c = 0; c < dfa.numInput; c++)
+      row[colMap[p][c]] = dfa.table[state][c];
+
+    return row;
+  }
+}
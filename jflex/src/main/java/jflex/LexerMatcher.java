@@ -0,0 +1,226 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.Arrays;
+
+/**
+ * Splits an input into the tokens of a {@link CompiledLexer}.
+ *
+ * Each call of {@link #next} finds the longest match at the current
+ * position among the rules of the current lexical state, the earliest
+ * rule if several rules match the longest text, and reports its rule
+ * id and span. Beginning of line, trailing context and lexical states
+ * behave as in a generated scanner; {@link #setState} and
+ * {@link #pushback} correspond to <code>yybegin</code> and
+ * <code>yypushback</code>.
+ *
+ * A matcher is not thread safe, use one matcher per thread.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class LexerMatcher {
+
+  private final CompiledLexer lexer;
+  private final CharSequence input;
+
+  /** the current lexical state */
+  private int state;
+
+  /** true iff the next match starts at the beginning of a line */
+  private boolean atBOL = true;
+
+  /** start of the last match */
+  private int start;
+
+  /** end of the last match, where the next match starts */
+  private int end;
+
+  /** the rule id of the last match */
+  private int rule = -1;
+
+  /** marks end positions of the forward pass of general lookahead */
+  private boolean [] fin = new boolean [0];
+
+
+  LexerMatcher(CompiledLexer lexer, CharSequence input) {
+    this.lexer = lexer;
+    this.input = input;
+  }
+
+  /**
+   * Finds the next token.
+   *
+   * @return <code>false</code> at the end of the input
+   * @throws IllegalStateException  if no rule matches at the current
+   *                                position
+   */
+  public boolean next() {
+    int length = input.length();
+
+    if (end > start) {
+      switch (input.charAt(end-1)) {
+      case '\u000B':
+      case '\u000C':
+      case '\u0085':
+      case '\u2028':
+      case '\u2029':
+      case '\n':
+        atBOL = true;
+        break;
+      case '\r':
+        atBOL = end < length && input.charAt(end) != '\n';
+        break;
+      default:
+        atBOL = false;
+      }
+    }
+
+    start = end;
+    if (start >= length) {
+      rule = -1;
+      return false;
+    }
+
+    int current = lexer.entryState[2*state + (lexer.bolUsed && atBOL ? 1 : 0)];
+    int action = lexer.action[current];
+    int marked = start;
+    int lookBase = 0;
+    int lookBaseMarked = 0;
+
+    int pos = start;
+    while (pos < length) {
+      current = lexer.next(current, input.charAt(pos++));
+      if (current == DFA.NO_TARGET) break;
+
+      if (lexer.isLookEnd[current]) lookBase = pos - start;
+
+      if (lexer.action[current] >= 0) {
+        action = lexer.action[current];
+        marked = pos;
+        lookBaseMarked = lookBase;
+      }
+    }
+
+    if (action < 0) {
+      rule = -1;
+      throw new IllegalStateException("could not match input at position "+start);
+    }
+
+    switch (lexer.lookAhead[action]) {
+    case Action.FIXED_BASE:
+      marked = start + lexer.lookLength[action];
+      break;
+
+    case Action.FIXED_LOOK:
+    case Action.FINITE_CHOICE:
+      marked -= lexer.lookLength[action];
+      break;
+
+    case Action.GENERAL_LOOK:
+      if (lexer.singlePass[action])
+        marked = start + lookBaseMarked;
+      else
+        marked = lookBase(lexer.lookEntry[action], marked);
+      break;
+    }
+
+    end = marked;
+    rule = lexer.ruleId[action];
+    return true;
+  }
+
+  /**
+   * Finds the end of the base of a match with general lookahead that
+   * cannot be recorded while matching: the
+   * last position that is the end of a match of the base (forward
+   * pass) and, read backwards from the end of the match, the start
+   * of a match of the lookahead (backward pass).
+   */
+  private int lookBase(int entry, int marked) {
+    if (fin.length <= marked - start) fin = new boolean [marked - start + 1];
+    else Arrays.fill(fin, 0, marked - start + 1, false);
+
+    int fState = lexer.entryState[entry];
+    int fPos = start;
+    while (fState != DFA.NO_TARGET && fPos < marked) {
+      if (lexer.isFinal[fState]) fin[fPos - start] = true;
+      fState = lexer.next(fState, input.charAt(fPos++));
+    }
+    if (fState != DFA.NO_TARGET && lexer.isFinal[fState]) fin[fPos - start] = true;
+
+    fState = lexer.entryState[entry+1];
+    fPos = marked;
+    while (!fin[fPos - start] || !lexer.isFinal[fState])
+      fState = lexer.next(fState, input.charAt(--fPos));
+
+    return fPos;
+  }
+
+  /**
+   * @return the rule id of the last match, <code>-1</code> before the
+   *         first and after the last match
+   */
+  public int rule() {
+    return rule;
+  }
+
+  /**
+   * @return the start of the last match
+   */
+  public int start() {
+    return start;
+  }
+
+  /**
+   * @return the end of the last match (exclusive)
+   */
+  public int end() {
+    return end;
+  }
+
+  /**
+   * @return the text of the last match
+   */
+  public String text() {
+    return input.subSequence(start, end).toString();
+  }
+
+  /**
+   * Pushes characters of the last match back into the input. They will
+   * be read again by the next match.
+   *
+   * @param number  the number of characters, at most the length of the
+   *                last match
+   */
+  public void pushback(int number) {
+    if (number < 0 || number > end - start)
+      throw new IllegalArgumentException("cannot push back "+number+" characters");
+    end -= number;
+  }
+
+  /**
+   * Enters a lexical state.
+   *
+   * @param name  the name of the state
+   * @throws IllegalArgumentException  if the lexer has no such state
+   */
+  public void setState(String name) {
+    state = lexer.stateNumber(name);
+  }
+
+  /**
+   * @return the name of the current lexical state
+   */
+  public String getState() {
+    return lexer.stateName(state);
+  }
+}
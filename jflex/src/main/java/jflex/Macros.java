@@ -161,6 +161,7 @@ final public class Macros {
     case sym.STAR:
     case sym.PLUS:
     case sym.QUESTION: 
+    case sym.GROUP:
     case sym.BANG:
     case sym.TILDE:
       RegExp1 unary = (RegExp1) definition;
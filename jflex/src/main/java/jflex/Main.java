@@ -35,22 +35,66 @@ public class Main {
    *                   to generate a scanner for.
    */
   public static void generate(File inputFile) {
+    generate(inputFile, new GeneratorContext());
+  }
+
+
+  /**
+   * Generates a scanner for the specified input file with the options,
+   * skeleton and message output of a generator context. Generator runs
+   * with different contexts can run in parallel.
+   *
+   * @param inputFile  a file containing a lexical specification
+   *                   to generate a scanner for.
+   * @param context    the context of this run
+   */
+  public static void generate(File inputFile, GeneratorContext context) {
+    generate(inputFile, null, context);
+  }
+
+
+  /**
+   * Generates a scanner for a specification read from a reader.
+   *
+   * @param inputFile  the name of the specification
+   * @param reader     the specification, <code>null</code> to read
+   *                   <code>inputFile</code>
+   * @param context    the context of this run
+   */
+  static void generate(File inputFile, Reader reader, GeneratorContext context) {
+    GeneratorContext previous = context.bind();
+    try {
+      run(inputFile, reader, context);
+    }
+    finally {
+      context.unbind(previous);
+    }
+  }
+
+
+  private static void run(File inputFile, Reader reader, GeneratorContext context) {
+    GeneratorOptions options = context.options;
 
     Out.resetCounters();
+    context.stats = new GeneratorStats();
 
     Timer totalTime = new Timer();
     Timer time      = new Timer();
       
     LexScan scanner = null;
     LexParse parser = null;
-    FileReader inputReader = null;
+    Reader inputReader = reader;
     
     totalTime.start();      
 
     try {  
       Out.println(ErrorMessages.READING, inputFile.toString());
-      inputReader = new FileReader(inputFile);
+      if (inputReader == null) {
+        inputReader = new FileReader(inputFile);
+        context.addInputFile(inputFile);
+      }
       scanner = new LexScan(inputReader);
+      scanner.setContext(context);
       scanner.setFile(inputFile);
       parser = new LexParse(scanner);
     }
@@ -64,54 +108,123 @@ public class Main {
 
       Out.checkErrors();
 
-      if (Options.dump) Out.dump(ErrorMessages.get(ErrorMessages.NFA_IS)+
+      if (options.dump) Out.dump(ErrorMessages.get(ErrorMessages.NFA_IS)+
                                  Out.NL+nfa+Out.NL); 
       
-      if (Options.dot) 
-        nfa.writeDot(Emitter.normalize("nfa.dot", null));       //$NON-NLS-1$
+      if (options.dot) 
+        nfa.writeDot(Emitter.normalize("nfa.dot", null, options));       //$NON-NLS-1$
 
       Out.println(ErrorMessages.NFA_STATES, nfa.numStates);
+      context.stats.nfaStates = nfa.numStates;
+
+      if (options.lazy) {
+        if (options.classfile || nfa.hasGroups()) {
+          Out.warning(ErrorMessages.get(ErrorMessages.LAZY_UNAVAILABLE));
+        }
+        else {
+          time.start();
+          new Emitter(inputFile, parser, nfa).emit();
+          time.stop();
+
+          Out.time(ErrorMessages.WRITE_TOOK, time); 
+
+          totalTime.stop();
+          context.stats.time = totalTime.diff();
+
+          Out.time(ErrorMessages.TOTAL_TIME, totalTime); 
+          return;
+        }
+      }
       
-      time.start();
-      DFA dfa = nfa.getDFA();
-      time.stop();
-      Out.time(ErrorMessages.DFA_TOOK, time); 
+      DFACache cache = null;
+      DFA dfa = null;
 
-      dfa.checkActions(scanner, parser);
+      // dumps and dot files show the automata of all steps
+      if (options.cache != null && !options.dump && !options.dot) {
+        cache = new DFACache(options.cache, nfa, options);
+        dfa = cache.read(context);
+      }
 
-      nfa = null;
+      if (dfa != null) {
+        Out.println(ErrorMessages.DFA_CACHE_HIT, cache.getFile().toString());
+        context.stats.dfaStates = cache.getDFAStates();
 
-      if (Options.dump) Out.dump(ErrorMessages.get(ErrorMessages.DFA_IS)+
-                                 Out.NL+dfa+Out.NL);       
+        // the same warnings as for a new DFA, with the current rule positions
+        dfa.checkActions(scanner, parser);
 
-      if (Options.dot) 
-        dfa.writeDot(Emitter.normalize("dfa-big.dot", null)); //$NON-NLS-1$
+        Out.print(cache.getDFAStates()+" states before minimization, ");
+        if (options.no_minimize) 
+          Out.println("minimization skipped.");
+        else 
+          Out.println(dfa.numStates+" states in minimized DFA");
 
-      Out.checkErrors();
+        nfa = null;
+      }
+      else {
+        time.start();
+        dfa = nfa.getDFA();
+        time.stop();
+        context.stats.dfaStates = dfa.numStates;
+        Out.time(ErrorMessages.DFA_TOOK, time); 
 
-      time.start();
-      dfa.minimize();
-      time.stop();
+        dfa.checkActions(scanner, parser);
+
+        nfa = null;
+
+        if (options.dump) Out.dump(ErrorMessages.get(ErrorMessages.DFA_IS)+
+                                   Out.NL+dfa+Out.NL);       
+
+        if (options.dot) 
+          dfa.writeDot(Emitter.normalize("dfa-big.dot", null, options)); //$NON-NLS-1$
 
-      Out.time(ErrorMessages.MIN_TOOK, time); 
+        Out.checkErrors();
+
+        time.start();
+        dfa.minimize();
+        time.stop();
+
+        Out.time(ErrorMessages.MIN_TOOK, time); 
             
-      if (Options.dump) 
-        Out.dump(ErrorMessages.get(ErrorMessages.MIN_DFA_IS)+
-                                   Out.NL+dfa); 
+        if (options.dump) 
+          Out.dump(ErrorMessages.get(ErrorMessages.MIN_DFA_IS)+
+                                     Out.NL+dfa); 
 
-      if (Options.dot) 
-        dfa.writeDot(Emitter.normalize("dfa-min.dot", null)); //$NON-NLS-1$
+        if (options.dot) 
+          dfa.writeDot(Emitter.normalize("dfa-min.dot", null, options)); //$NON-NLS-1$
+
+        if (cache != null) cache.write(dfa, context.stats.dfaStates);
+      }
+
+      context.stats.minimizedStates = dfa.numStates;
+
+      if (options.profile != null) {
+        if (options.instrument) {
+          Out.warning(ErrorMessages.get(ErrorMessages.PROFILE_IGNORED));
+        }
+        else {
+          StateProfile profile = new StateProfile(dfa);
+          context.addInputFile(options.profile);
+          if (profile.read(options.profile)) 
+            dfa.renumber(profile.order());
+        }
+      }
 
       time.start();
       
-      Emitter e = new Emitter(inputFile, parser, dfa);
-      e.emit();
+      if (options.classfile) {
+        new ClassEmitter(inputFile, parser, dfa).emit();
+      }
+      else {
+        Emitter e = new Emitter(inputFile, parser, dfa);
+        e.emit();
+      }
 
       time.stop();
 
       Out.time(ErrorMessages.WRITE_TOOK, time); 
       
       totalTime.stop();
+      context.stats.time = totalTime.diff();
       
       Out.time(ErrorMessages.TOTAL_TIME, totalTime); 
     }
@@ -142,6 +255,41 @@ public class Main {
   }
 
   public static List<File> parseOptions(String argv[]) throws SilentExit {
+    GeneratorContext context = new GeneratorContext();
+    List<File> files;
+
+    // messages while parsing already follow -q and -v
+    GeneratorContext previous = context.bind();
+    try {
+      files = parseOptions(argv, null, context);
+    }
+    finally {
+      context.unbind(previous);
+    }
+
+    context.options.toOptions();
+    Skeleton.line = context.skeleton;
+
+    return files;
+  }
+
+
+  /**
+   * Parses the options of a commandline into the options and skeleton 
+   * of a generator context, without changing the static {@link Options}.
+   *
+   * @param argv     the commandline
+   * @param base     the directory relative file names refer to, 
+   *                 <code>null</code> for the current directory
+   * @param context  the context to set the options of
+   * @return the input files of the commandline
+   * @throws SilentExit  if the commandline only asks for information
+   *                     (e.g. <code>--help</code>)
+   */
+  static List<File> parseOptions(String argv[], File base, GeneratorContext context) 
+    throws SilentExit {
+
+    GeneratorOptions options = context.options;
     List<File> files = new ArrayList<File>();
 
     for (int i = 0; i < argv.length; i++) {
@@ -151,7 +299,7 @@ public class Main {
           Out.error(ErrorMessages.NO_DIRECTORY); 
           throw new GeneratorException();
         }
-        Options.setDir(argv[i]);
+        options.setDir(file(base, argv[i]));
         continue;
       }
 
@@ -161,34 +309,34 @@ public class Main {
           throw new GeneratorException();
         }
 
-        Options.setSkeleton(new File(argv[i]));
+        context.setSkeleton(file(base, argv[i]));
         continue;
       }
 
       if ( argv[i].equals("-jlex") || argv[i].equals("--jlex") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.jlex = true;
+        options.jlex = true;
         continue;
       }
 
       if ( argv[i].equals("-v") || argv[i].equals("--verbose") || argv[i].equals("-verbose") ) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        Options.verbose = true;
-        Options.progress = true;
+        options.verbose = true;
+        options.progress = true;
         continue;
       }
 
       if ( argv[i].equals("-q") || argv[i].equals("--quiet") || argv[i].equals("-quiet") ) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        Options.verbose = false;
-        Options.progress = false;
+        options.verbose = false;
+        options.progress = false;
         continue;
       }
 
       if ( argv[i].equals("--dump") || argv[i].equals("-dump") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.dump = true;
+        options.dump = true;
         continue;
       }
 
       if ( argv[i].equals("--time") || argv[i].equals("-time") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.time = true;
+        options.time = true;
         continue;
       }
 
@@ -198,7 +346,7 @@ public class Main {
       }
 
       if ( argv[i].equals("--dot") || argv[i].equals("-dot") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.dot = true;
+        options.dot = true;
         continue;
       }
 
@@ -213,27 +361,89 @@ public class Main {
       }
       
       if ( argv[i].equals("--nomin") || argv[i].equals("-nomin") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.no_minimize = true;
+        options.no_minimize = true;
         continue;
       }
 
       if ( argv[i].equals("--pack") || argv[i].equals("-pack") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.gen_method = Options.PACK;
+        options.gen_method = Options.PACK;
         continue;
       }
 
       if ( argv[i].equals("--table") || argv[i].equals("-table") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.gen_method = Options.TABLE;
+        options.gen_method = Options.TABLE;
         continue;
       }
 
       if ( argv[i].equals("--switch") || argv[i].equals("-switch") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.gen_method = Options.SWITCH;
+        options.gen_method = Options.SWITCH;
+        continue;
+      }
+
+      if ( argv[i].equals("--comb") || argv[i].equals("-comb") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        options.gen_method = Options.COMB;
         continue;
       }
       
       if ( argv[i].equals("--nobak") || argv[i].equals("-nobak") ) { //$NON-NLS-1$ //$NON-NLS-2$
-        Options.no_backup = true;
+        options.no_backup = true;
+        continue;
+      }
+
+      if ( argv[i].equals("--instrument") || argv[i].equals("-instrument") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        options.instrument = true;
+        continue;
+      }
+
+      if ( argv[i].equals("--useprofile") || argv[i].equals("-useprofile") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        if ( ++i >= argv.length ) {
+          Out.error(ErrorMessages.NO_PROFILE_FILE);
+          throw new GeneratorException();
+        }
+        options.profile = file(base, argv[i]);
+        continue;
+      }
+
+      if ( argv[i].equals("--cache") || argv[i].equals("-cache") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        if ( ++i >= argv.length ) {
+          Out.error(ErrorMessages.NO_CACHE_DIR);
+          throw new GeneratorException();
+        }
+        options.cache = file(base, argv[i]);
+        continue;
+      }
+
+      if ( argv[i].equals("--classfile") || argv[i].equals("-classfile") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        options.classfile = true;
+        continue;
+      }
+
+      if ( argv[i].equals("--companion") || argv[i].equals("-companion") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        if ( ++i >= argv.length ) {
+          Out.error(ErrorMessages.NO_COMPANION);
+          throw new GeneratorException();
+        }
+        options.companion = argv[i];
+        continue;
+      }
+
+      if ( argv[i].equals("--lazy") || argv[i].equals("-lazy") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        options.lazy = true;
+        continue;
+      }
+
+      if ( argv[i].equals("--maxstates") || argv[i].equals("-maxstates") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        options.maxStates = budget(argv, ++i);
+        continue;
+      }
+
+      if ( argv[i].equals("--maxmemory") || argv[i].equals("-maxmemory") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        options.maxMemory = budget(argv, ++i);
+        continue;
+      }
+
+      if ( argv[i].equals("--maxtime") || argv[i].equals("-maxtime") ) { //$NON-NLS-1$ //$NON-NLS-2$
+        options.maxTime = budget(argv, ++i);
         continue;
       }
       
@@ -244,7 +454,7 @@ public class Main {
       }
 
       // if argv[i] is not an option, try to read it as file 
-      File f = new File(argv[i]);
+      File f = file(base, argv[i]);
       if ( f.isFile() && f.canRead() ) 
         files.add(f);      
       else {
@@ -257,6 +467,35 @@ public class Main {
   }
 
 
+  /**
+   * @return the positive number <code>argv[i]</code> given for the 
+   *         budget option <code>argv[i-1]</code>
+   */
+  private static int budget(String [] argv, int i) {
+    try {
+      if (i < argv.length) {
+        int n = Integer.parseInt(argv[i]);
+        if (n > 0) return n;
+      }
+    }
+    catch (NumberFormatException e) {
+    }
+
+    Out.error(ErrorMessages.NO_BUDGET, argv[i-1]);
+    throw new GeneratorException();
+  }
+
+
+  /**
+   * @return the file <code>name</code>, relative to <code>base</code> 
+   *         if it is not absolute
+   */
+  private static File file(File base, String name) {
+    File f = new File(name);
+    return base == null || f.isAbsolute() ? f : new File(base, name);
+  }
+
+
   public static void printUsage() {
     Out.println(""); //$NON-NLS-1$
     Out.println("Usage: jflex <options> <input-files>");
@@ -266,10 +505,24 @@ public class Main {
     Out.println("--skel <file>    use external skeleton <file>");
     Out.println("--switch");
     Out.println("--table");
+    Out.println("--comb");
     Out.println("--pack           set default code generation method");
     Out.println("--jlex           strict JLex compatibility");
     Out.println("--nomin          skip minimization step");
     Out.println("--nobak          don't create backup files");
+    Out.println("--instrument     count transitions in the generated scanner (see --useprofile)");
+    Out.println("--useprofile <file>");
+    Out.println("                 order states by the transition counts in profile <file>");
+    Out.println("--cache <dir>    reuse minimized DFAs of earlier runs stored in directory <dir>");
+    Out.println("--classfile      write the scanner as class file instead of Java source");
+    Out.println("--companion <class>");
+    Out.println("                 call <class>.action for actions a class file cannot contain");
+    Out.println("--lazy           build the DFA while scanning instead of generating it");
+    Out.println("--maxstates <n>  abort if the DFA gets more than <n> states");
+    Out.println("--maxmemory <MB> abort if the DFA is estimated to need more than <MB> megabytes");
+    Out.println("--maxtime <s>    abort if the DFA construction takes more than <s> seconds");
+    Out.println("--server [--port <port>] [--idle <seconds>] [--threads <n>]");
+    Out.println("                 keep a generator running for jflex.Client (only option)");
     Out.println("--dump           display transition tables"); 
     Out.println("--dot            write graphviz .dot files for the generated automata (alpha)");
     Out.println("--verbose");
@@ -303,11 +556,19 @@ public class Main {
   /**
    * Starts the generation process with the files in <code>argv</code> or
    * pops up a window to choose a file, when <code>argv</code> doesn't have
-   * any file entries.
+   * any file entries. With <code>--server</code> as first argument, starts
+   * a {@link Server} instead.
    *
    * @param argv the commandline.
    */
   public static void main(String argv[]) {
+    if (argv.length > 0 && argv[0].equals("--server")) { //$NON-NLS-1$
+      String [] serverArgs = new String [argv.length-1];
+      System.arraycopy(argv, 1, serverArgs, 0, serverArgs.length);
+      Server.main(serverArgs);
+      return;
+    }
+
     try {
       generate(argv);
     }
@@ -0,0 +1,221 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Records what a generated scanner depends on, for incremental builds
+ * in the build tool integrations.
+ *
+ * A manifest holds content hashes of the specification, of every file
+ * it includes, of the profile and of the files the run wrote, together
+ * with the JFlex version, the options that influence the generated
+ * code and a hash of the skeleton. A scanner does not need to be
+ * generated again as long as all of these are unchanged.
+ *
+ * File format (one entry per line, hashes are SHA-256 in hex):
+ *
+ * <pre>
+ *   version  JFlex version
+ *   spec     absolute path of the specification
+ *   options  hash of the options
+ *   skeleton hash of the skeleton
+ *   input    hash absolute path
+ *   output   hash absolute path
+ * </pre>
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class Manifest {
+
+  /** file name suffix of manifests */
+  public static final String SUFFIX = ".manifest";
+
+  /** the manifest file */
+  private File file;
+
+  /** the context of the generator run */
+  private GeneratorContext context;
+
+  /** version, spec, options and skeleton entries, computed before the run */
+  private List<String> header = new ArrayList<String>();
+
+
+  /**
+   * Creates the manifest of a generator run, before the run starts.
+   *
+   * @param file       the manifest file
+   * @param inputFile  the specification
+   * @param context    the context of the run
+   */
+  public Manifest(File file, File inputFile, GeneratorContext context) {
+    this.file = file;
+    this.context = context;
+
+    GeneratorOptions options = context.options;
+
+    StringBuilder o = new StringBuilder();
+    o.append("jlex=").append(options.jlex);
+    o.append(",no_minimize=").append(options.no_minimize);
+    o.append(",gen_method=").append(options.gen_method);
+    o.append(",dot=").append(options.dot);
+    o.append(",instrument=").append(options.instrument);
+    o.append(",profile=").append(options.profile == null ? "" : options.profile.getAbsolutePath());
+    o.append(",dir=").append(options.getDir() == null ? "" : options.getDir().getAbsolutePath());
+    o.append(",classfile=").append(options.classfile);
+    o.append(",companion=").append(options.companion == null ? "" : options.companion);
+    o.append(",lazy=").append(options.lazy);
+
+    MessageDigest skeleton = digest();
+    for (int i = 0; i < context.skeleton.length; i++)
+      update(skeleton, context.skeleton[i]);
+
+    MessageDigest optionHash = digest();
+    update(optionHash, o.toString());
+
+    header.add("version "+Main.version);
+    header.add("spec "+inputFile.getAbsolutePath());
+    header.add("options "+hex(optionHash.digest()));
+    header.add("skeleton "+hex(skeleton.digest()));
+  }
+
+  /**
+   * Returns the manifest file for a generated file: the generated file
+   * with suffix {@link #SUFFIX}.
+   *
+   * @param generatedFile  the generated scanner
+   */
+  public static File fileFor(File generatedFile) {
+    return new File(generatedFile.getPath()+SUFFIX);
+  }
+
+  /**
+   * Checks if the manifest file was written by a run with the same
+   * version, specification, options and skeleton, and if all files
+   * it records still have the recorded content.
+   *
+   * @return true iff the run does not need to be repeated
+   */
+  public boolean isUpToDate() {
+    if (!file.isFile()) return false;
+
+    try {
+      BufferedReader reader = new BufferedReader(new FileReader(file));
+      try {
+        for (String entry : header) {
+          if (!entry.equals(reader.readLine())) return false;
+        }
+
+        boolean output = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String [] entry = line.split(" ", 3);
+          if (entry.length != 3) return false;
+
+          File f = new File(entry[2]);
+          if (!f.isFile() || !entry[1].equals(hash(f))) return false;
+
+          output |= entry[0].equals("output");
+        }
+
+        return output;
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes the manifest file after a successful run.
+   *
+   * @throws IOException  if the manifest or a recorded file cannot be read or written
+   */
+  public void write() throws IOException {
+    StringBuilder text = new StringBuilder();
+
+    for (String entry : header)
+      text.append(entry).append(Out.NL);
+
+    for (File f : new LinkedHashSet<File>(context.getInputFiles()))
+      text.append("input ").append(hash(f)).append(' ').append(f).append(Out.NL);
+
+    for (File f : new LinkedHashSet<File>(context.getOutputFiles()))
+      text.append("output ").append(hash(f)).append(' ').append(f).append(Out.NL);
+
+    Writer writer = new FileWriter(file);
+    try {
+      writer.write(text.toString());
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Returns the content hash of a file.
+   *
+   * @param file  the file to read
+   * @return the SHA-256 hash in hex
+   * @throws IOException  if the file cannot be read
+   */
+  public static String hash(File file) throws IOException {
+    MessageDigest digest = digest();
+    byte [] buf = new byte [8192];
+
+    InputStream in = new FileInputStream(file);
+    try {
+      int n;
+      while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+    }
+    finally {
+      in.close();
+    }
+
+    return hex(digest.digest());
+  }
+
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      // every Java platform provides SHA-256
+      throw new Error(e.toString());
+    }
+  }
+
+  private static void update(MessageDigest digest, String s) {
+    try {
+      digest.update(s.getBytes("UTF-8"));
+    }
+    catch (UnsupportedEncodingException e) {
+      // every Java platform provides UTF-8
+      throw new Error(e.toString());
+    }
+  }
+
+  private static String hex(byte [] bytes) {
+    StringBuilder result = new StringBuilder(2*bytes.length);
+    for (int i = 0; i < bytes.length; i++) {
+      result.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+      result.append(Character.forDigit(bytes[i] & 0xF, 16));
+    }
+    return result.toString();
+  }
+}
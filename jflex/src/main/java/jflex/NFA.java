@@ -56,11 +56,89 @@ final public class NFA {
   LexScan scanner;
   RegExps regExps;
 
+  /** 
+   * For general lookahead rules <code>r1/r2</code>: maps the action of 
+   * the rule to the NFA state in which <code>r1</code> ends 
+   */
+  private Map<Action, Integer> lookEnd = new LinkedHashMap<Action, Integer>();
+
+  /** 
+   * For general lookahead rules <code>r1/r2</code>: maps the action of 
+   * the rule to the range [start,end) of NFA states of <code>r2</code>
+   */
+  private Map<Action, IntPair> lookStates = new LinkedHashMap<Action, IntPair>();
+
+  /** 
+   * Capture group tags: <code>tagRegister.get(s)</code> is the register that 
+   * records the current position when state <code>s</code> is reached. 
+   * Group <code>i</code> has registers <code>2*i</code> (start) and 
+   * <code>2*i+1</code> (end).
+   */
+  private Map<Integer, Integer> tagRegister = new LinkedHashMap<Integer, Integer>();
+
+  /** the names of all capture groups, in register order */
+  private List<String> groupNames = new ArrayList<String>();
+
+  /** the start states of all rules that contain capture groups */
+  private List<Integer> groupRules = new ArrayList<Integer>();
+
+  /** 
+   * The action of the rule whose base expression is being inserted, 
+   * <code>null</code> if capture groups are not recorded at the moment. 
+   */
+  private Action groupAction;
+
+  /** 
+   * <code>tagConflicts[k]</code> is the set of states that must not be 
+   * active next to a tag of register <code>k</code> unless they are 
+   * reached from that tag.
+   */
+  private StateSet [] tagConflicts;
+
+  /** the range [start,end) of NFA states of each rule, for DFA size diagnostics */
+  private List<IntPair> ruleStates = new ArrayList<IntPair>();
+
+  /** the spec line of each rule in <code>ruleStates</code> */
+  private List<Integer> ruleLines = new ArrayList<Integer>();
+
+  /** 
+   * kind, line and column (see {@link RegExps#getConstruct}) and the range 
+   * [start,end) of NFA states of each inserted bounded repeat, complement 
+   * and upto expression
+   */
+  private List<int []> constructStates = new ArrayList<int []>();
+
+  /** the NFA entry state each DFA state under construction was reached from */
+  private List<Integer> dfaOrigin;
+
+  /** the limits of the DFA construction, <code>null</code> if there are none */
+  private DFABudget budget;
+
+  /** the context of the generator run */
+  private GeneratorContext context;
+
+  /** the char class expressions among the expressions inserted so far */
+  private Map<RegExp, Boolean> charClassExps = new IdentityHashMap<RegExp, Boolean>();
+
+  /** the class codes of each char class expression inserted so far */
+  private Map<RegExp, int []> classCodes = new IdentityHashMap<RegExp, int []>();
+
+  /** 
+   * The start states of the tries of literal rules, one for each BOL flag 
+   * (first element, 1 for BOL) and list of lexical states (the others)
+   * @see #insertLiteralNFA
+   */
+  private Map<List<Integer>, Integer> literalRoots = new HashMap<List<Integer>, Integer>();
+
+  /** the transitions of the literal tries: state and class code to next state */
+  private Map<IntPair, Integer> literalEdges = new HashMap<IntPair, Integer>();
+
   // will be reused by several methods (avoids excessive object creation)
-  private static StateSetEnumerator states = new StateSetEnumerator();
-  private static StateSet     tempStateSet = new StateSet();
+  private StateSetEnumerator states = new StateSetEnumerator();
+  private StateSet     tempStateSet = new StateSet();
   
   public NFA(int numInput, int estSize) {
+    this.context = GeneratorContext.current();
     this.numInput = numInput;
     this.estSize = estSize;
     numStates = 0;
@@ -74,12 +152,13 @@ final public class NFA {
    * Construct new NFA.
    * 
    * Assumes that lookahead cases and numbers are already resolved in RegExps.
-   * @see RegExps#checkLookAheads()
+   * @see RegExps#checkLookAheads(Macros)
    */ 
   public NFA(int numInput, LexScan scanner, RegExps regExps, 
              Macros macros, CharClasses classes) {
     this(numInput, regExps.NFASize(macros)+2*scanner.states.number());
 
+    this.context = scanner.context;
     this.scanner = scanner;
     this.regExps = regExps;
     this.macros  = macros;
@@ -96,6 +175,13 @@ final public class NFA {
   public int numEntryStates() {
     return 2*(numLexStates+regExps.gen_look_count);
   }
+
+  /**
+   * Returns <code>true</code> iff some rule of this NFA has capture groups.
+   */
+  boolean hasGroups() {
+    return !groupNames.isEmpty();
+  }
   
   /**
    * Add a standalone rule that has minimum priority, fires a transition
@@ -125,13 +211,38 @@ final public class NFA {
     if (Options.DEBUG)
       Out.debug("Adding nfa for regexp "+regExpNum+" :"+Out.NL+regExps.getRegExp(regExpNum));
     
-    IntPair nfa = insertNFA( regExps.getRegExp(regExpNum) );
-    
+    int numTags = tagRegister.size();
+    int firstState = numStates;
+
     List<Integer> lexStates = regExps.getStates(regExpNum);
     
     if ( lexStates.isEmpty() )
       lexStates = scanner.states.getInclusiveStates();
 
+    RegExp regExp = regExps.getRegExp(regExpNum);
+    if ( regExps.getLookAhead(regExpNum) == null && 
+         (regExp.type == sym.STRING || regExp.type == sym.CHAR) ) {
+      String literal = ((RegExp1) regExp).content.toString();
+      int end = insertLiteralNFA(literal, lexStates, regExps.isBOL(regExpNum));
+      if ( isFinal[end] ) {
+        // same literal as an earlier rule, the priority decides
+        addEpsilonTransition(end, numStates);
+        end = numStates-1;
+      }
+      action[end] = regExps.getAction(regExpNum);
+      isFinal[end] = true;
+
+      ruleStates.add(new IntPair(firstState, numStates));
+      ruleLines.add(regExps.getLine(regExpNum));
+      return;
+    }
+
+    groupAction = regExps.getAction(regExpNum);
+    IntPair nfa = insertNFA(regExp);
+    groupAction = null;
+
+    if ( tagRegister.size() > numTags ) groupRules.add(nfa.start);
+    
     for (Integer stateNum : lexStates) {
       if ( !regExps.isBOL(regExpNum) )
         addEpsilonTransition(2*stateNum, nfa.start);
@@ -153,7 +264,9 @@ final public class NFA {
         RegExp r1 = regExps.getRegExp(regExpNum);
         RegExp r2 = regExps.getLookAhead(regExpNum);
   
+        int lookStart = numStates;
         IntPair look = insertNFA(r2);
+        int lookStop = numStates;
         
         addEpsilonTransition(nfa.end, look.start);
   
@@ -177,6 +290,9 @@ final public class NFA {
           addEpsilonTransition(entry+1, backward.start);
           
           a.setEntryState(entry);
+
+          lookEnd.put(a, nfa.end);
+          lookStates.put(a, new IntPair(lookStart, lookStop));
         }
       }
     }
@@ -184,6 +300,51 @@ final public class NFA {
       action[nfa.end] = regExps.getAction(regExpNum);
       isFinal[nfa.end] = true;
     }
+
+    ruleStates.add(new IntPair(firstState, numStates));
+    ruleLines.add(regExps.getLine(regExpNum));
+  }
+
+  /**
+   * Inserts a literal rule into the trie of the literal rules with the 
+   * same lexical states and BOL flag, so that rules with common prefixes
+   * (e.g. keywords) share the states of these prefixes.
+   *
+   * @param literal    the string the rule matches
+   * @param lexStates  the lexical states of the rule
+   * @param isBOL      whether the rule only matches at the beginning of a line
+   * @return the state in which the literal ends
+   */
+  private int insertLiteralNFA(String literal, List<Integer> lexStates, boolean isBOL) {
+    List<Integer> key = new ArrayList<Integer>(lexStates.size()+1);
+    key.add(isBOL ? 1 : 0);
+    key.addAll(lexStates);
+
+    Integer state = literalRoots.get(key);
+    if ( state == null ) {
+      state = numStates;
+      ensureCapacity(numStates+1);
+      numStates++;
+
+      for (Integer stateNum : lexStates) {
+        if ( !isBOL ) addEpsilonTransition(2*stateNum, state);
+        addEpsilonTransition(2*stateNum+1, state);        
+      }
+      literalRoots.put(key, state);
+    }
+
+    for (int i = 0; i < literal.length(); i++) {
+      IntPair edge = new IntPair(state, classes.getClassCode(literal.charAt(i)));
+      Integer next = literalEdges.get(edge);
+      if ( next == null ) {
+        next = numStates;
+        addTransition(state, edge.end, next);
+        literalEdges.put(edge, next);
+      }
+      state = next;
+    }
+
+    return state;
   }
 
   /**
@@ -193,7 +354,7 @@ final public class NFA {
    * @param baseEnd     the end state of the base expression NFA
    * @param a           the action of the expression
    *  
-   * @see SemCheck#isFiniteChoice(RegExp) 
+   * @see SemCheck#isFiniteChoice(RegExp, Macros) 
    */
   private void insertLookAheadChoices(int baseEnd, Action a, RegExp lookAhead) {
     if (lookAhead.type == sym.BAR) {
@@ -206,7 +367,7 @@ final public class NFA {
       insertLookAheadChoices(baseEnd, a, macros.getDefinition((String) r.content));
     }
     else {
-      int len = SemCheck.length(lookAhead);
+      int len = SemCheck.length(lookAhead, macros);
       
       if (len >= 0) {
         // termination case
@@ -447,44 +608,106 @@ final public class NFA {
     Map<StateSet, Integer> dfaStates = new HashMap<StateSet, Integer>(numStates);
     List<StateSet> dfaList = new ArrayList<StateSet>(numStates);
 
-    DFA dfa = new DFA(numEntryStates(), numInput, numLexStates);
+    DFA dfa = new DFA(numEntryStates(), numInput, numLexStates, context);
 
-    int numDFAStates = 0;
-    int currentDFAState = 0;
+    dfaOrigin = new ArrayList<Integer>(numStates);
+    budget = new DFABudget(context.options, numStates, numInput);
+    if (!budget.isLimited()) budget = null;
 
     Out.println("Converting NFA to DFA : ");
 
+    // needs the plain epsilon transitions
+    prepareGroups();
+
     epsilonFill();
 
-    StateSet currentState, newState;
-    
     // create the initial states of the DFA
-    for ( int i = 0;  i < numEntryStates();  i++ ) {
-      newState = epsilon[i];
-  
-      dfaStates.put(newState, numDFAStates);
-      dfaList.add(newState);
-  
-      dfa.setEntryState( i, numDFAStates );
-        
-      dfa.setFinal( numDFAStates, containsFinal(newState) );
-      dfa.setAction( numDFAStates, getAction(newState) );
-
-      numDFAStates++;
-    }
-     
-    numDFAStates--;
+    for ( int i = 0;  i < 2*numLexStates;  i++ ) 
+      addEntryState(dfa, dfaStates, dfaList, i);
 
     if (Options.DEBUG)
       Out.debug("DFA start states are :"+Out.NL+dfaStates+Out.NL+Out.NL+"ordered :"+Out.NL+dfaList);
      
-    currentDFAState = 0;
-      
-    StateSet tempStateSet  = NFA.tempStateSet;    
-    StateSetEnumerator states = NFA.states;
+    fillDFA(dfa, dfaStates, dfaList, 0);
+
+    // general lookahead: only those rules that can not record their split 
+    // position while matching need the forward and backward DFAs
+    int lexStatesDone = dfaList.size();
+
+    checkSinglePass(dfaList);
+    checkGroups(dfa, dfaList);
+
+    for (Action a : lookEnd.keySet()) {
+      if (!a.isSinglePass()) {
+        addEntryState(dfa, dfaStates, dfaList, a.getEntryState());
+        addEntryState(dfa, dfaStates, dfaList, a.getEntryState()+1);
+      }
+    }
+
+    fillDFA(dfa, dfaStates, dfaList, lexStatesDone);
+
+    for (int i = 0; i < lexStatesDone; i++) 
+      dfa.setLookEnd( i, containsLookEnd(dfaList.get(i)) );
+    
+    if (context.options.verbose) Out.println("");
+
+    dfaOrigin = null;
+    budget = null;
+
+    return dfa;
+  }
+
+
+  /**
+   * Adds the DFA state for the epsilon closure of an NFA entry state 
+   * (if it is not already present) and registers it as entry state.
+   *
+   * @param dfa        the DFA under construction
+   * @param dfaStates  maps NFA state sets to DFA states
+   * @param dfaList    the NFA state sets of all DFA states so far
+   * @param entry      the NFA entry state
+   */
+  private void addEntryState(DFA dfa, Map<StateSet, Integer> dfaStates, 
+                             List<StateSet> dfaList, int entry) {
+    StateSet newState = epsilon[entry];
+    Integer dfaState = dfaStates.get(newState);
+
+    if (dfaState == null) {
+      dfaState = dfaList.size();
+      dfaStates.put(newState, dfaState);
+      dfaList.add(newState);
+      dfaOrigin.add(entry);
+      checkBudget(dfaList);
+
+      dfa.setEntryState( entry, dfaState );
+      dfa.setFinal( dfaState, containsFinal(newState) );
+      dfa.setAction( dfaState, getAction(newState) );
+    }
+    else {
+      dfa.setEntryState( entry, dfaState );
+    }
+  }
+
+
+  /**
+   * Subset construction: adds all DFA states that are reachable from 
+   * DFA state <code>currentDFAState</code> or later ones.
+   *
+   * @param dfa              the DFA under construction
+   * @param dfaStates        maps NFA state sets to DFA states
+   * @param dfaList          the NFA state sets of all DFA states so far
+   * @param currentDFAState  the first DFA state to compute transitions for
+   */
+  private void fillDFA(DFA dfa, Map<StateSet, Integer> dfaStates, 
+                       List<StateSet> dfaList, int currentDFAState) {
+
+    int numDFAStates = dfaList.size()-1;
+
+    StateSet tempStateSet  = this.tempStateSet;    
+    StateSetEnumerator states = this.states;
 
     // will be reused
-    newState = new StateSet(numStates);
+    StateSet currentState, newState = new StateSet(numStates);
 
     while ( currentDFAState <= numDFAStates ) {
 
@@ -524,7 +747,7 @@ final public class NFA {
 	          dfa.addTransition(currentDFAState, input, nextDFAState);
 	        }
 	        else {
-            if (Options.progress) Out.print(".");
+            if (context.options.progress) Out.print(".");
 	          // Out.debug("NOT FOUND!");
 	          // Out.debug("Table was "+dfaStates);
             numDFAStates++;
@@ -534,6 +757,8 @@ final public class NFA {
 
 	          dfaStates.put(storeState, numDFAStates);
 	          dfaList.add(storeState);
+            dfaOrigin.add(dfaOrigin.get(currentDFAState));
+            checkBudget(dfaList);
 	    
 	          dfa.addTransition(currentDFAState, input, numDFAStates);
 	          dfa.setFinal( numDFAStates, containsFinal(storeState) );
@@ -544,10 +769,347 @@ final public class NFA {
       
       currentDFAState++;     
     }
-    
-    if (Options.verbose) Out.println("");
+  }
 
-    return dfa;
+
+  /** the smallest share of a culprit to report, in percent */
+  private static final int CULPRIT_PERCENT = 10;
+
+  /** the largest number of culprits of one kind to report */
+  private static final int MAX_CULPRITS = 3;
+
+
+  /**
+   * Aborts the DFA construction with a diagnostic of the culprits
+   * if a budget is exceeded.
+   *
+   * @param dfaList  the NFA state sets of all DFA states so far
+   */
+  private void checkBudget(List<StateSet> dfaList) {
+    if (budget == null) return;
+
+    String exceeded = budget.check(dfaList.size());
+    if (exceeded == null) return;
+
+    if (context.options.progress) Out.println("");
+    Out.error(ErrorMessages.DFA_BUDGET, exceeded);
+    reportCulprits(dfaList);
+    throw new GeneratorException();
+  }
+
+
+  /**
+   * Reports the rules, bounded repeats, complements and lexical states 
+   * that contribute most to the DFA states constructed so far.
+   *
+   * An NFA state that occurs in all or in none of the DFA states does 
+   * not tell them apart, the number of DFA states grows with the NFA 
+   * states that occur in some of them only. If <code>k</code> of the 
+   * <code>n</code> DFA states contain an NFA state, the state is weighted 
+   * with <code>min(k,n-k)</code>, and each rule and construct with the 
+   * weights of its NFA states.
+   *
+   * @param dfaList  the NFA state sets of all DFA states so far
+   */
+  private void reportCulprits(List<StateSet> dfaList) {
+    int n = dfaList.size();
+
+    int [] count = new int [numStates];
+    for (StateSet set : dfaList) {
+      states.reset(set);
+      while ( states.hasMoreElements() ) 
+        count[states.nextElement()]++;
+    }
+
+    // weight[s] is the weight of all NFA states before s
+    long [] weight = new long [numStates+1];
+    for (int s = 0; s < numStates; s++)
+      weight[s+1] = weight[s] + Math.min(count[s], n-count[s]);
+
+    long total = weight[numStates];
+
+    if (total > 0) {
+      Map<IntPair, Long> rules = new HashMap<IntPair, Long>();
+      for (int i = 0; i < ruleStates.size(); i++) {
+        IntPair range = ruleStates.get(i);
+        addWeight(rules, new IntPair(ruleLines.get(i), -1), weight[range.end] - weight[range.start]);
+      }
+      reportCulprits(rules, ErrorMessages.DFA_CULPRIT_RULE, total);
+
+      Map<IntPair, Long> repeats = new HashMap<IntPair, Long>();
+      Map<IntPair, Long> complements = new HashMap<IntPair, Long>();
+      Map<IntPair, Long> uptos = new HashMap<IntPair, Long>();
+      for (int [] c : constructStates) {
+        Map<IntPair, Long> kind = c[0] == sym.REPEAT ? repeats : c[0] == sym.BANG ? complements : uptos;
+        addWeight(kind, new IntPair(c[1], c[2]), weight[c[4]] - weight[c[3]]);
+      }
+      reportCulprits(repeats, ErrorMessages.DFA_CULPRIT_REPEAT, total);
+      reportCulprits(complements, ErrorMessages.DFA_CULPRIT_COMPLEMENT, total);
+      reportCulprits(uptos, ErrorMessages.DFA_CULPRIT_UPTO, total);
+    }
+
+    if (scanner == null) return;
+
+    int [] lexStates = new int [numLexStates];
+    for (int entry : dfaOrigin) 
+      if (entry < 2*numLexStates) lexStates[entry/2]++;
+
+    for (String name : scanner.states.names()) {
+      int state = scanner.states.getNumber(name);
+      int percent = (int) (100L*lexStates[state]/n);
+      if (percent >= CULPRIT_PERCENT) 
+        Out.warning(ErrorMessages.get(ErrorMessages.DFA_CULPRIT_STATE, name, String.valueOf(percent)));
+    }
+  }
+
+  private static void addWeight(Map<IntPair, Long> weights, IntPair position, long weight) {
+    Long old = weights.get(position);
+    weights.put(position, old == null ? weight : old + weight);
+  }
+
+  /**
+   * Warns about the positions with the largest weights.
+   *
+   * @param weights  the weight of each position (line, column)
+   * @param message  the warning, with the share in percent as data
+   * @param total    the weight of all NFA states
+   */
+  private void reportCulprits(final Map<IntPair, Long> weights, ErrorMessages message, long total) {
+    List<IntPair> positions = new ArrayList<IntPair>(weights.keySet());
+    Collections.sort(positions, new Comparator<IntPair>() {
+      public int compare(IntPair a, IntPair b) {
+        return weights.get(b).compareTo(weights.get(a));
+      }
+    });
+
+    for (int i = 0; i < positions.size() && i < MAX_CULPRITS; i++) {
+      IntPair position = positions.get(i);
+      int percent = (int) (100*weights.get(position)/total);
+      if (percent < CULPRIT_PERCENT) break;
+
+      Out.warning(scanner == null ? null : scanner.file, message, String.valueOf(percent), 
+                  position.start, position.end);
+    }
+  }
+
+
+  /**
+   * Decides for each general lookahead rule <code>r1/r2</code> if its split 
+   * position can be recorded in a single register while matching.
+   *
+   * This is the case if, whenever the end of some base expression 
+   * <code>r1</code> is reached, all states of <code>r2</code> that are 
+   * still active belong to a run of <code>r2</code> that starts at the 
+   * current position. Older runs are then subsumed by the new one, 
+   * and the last recorded position is the longest possible match of 
+   * <code>r1</code>. Rules for which this is not the case keep the 
+   * forward and backward pass over the matched text.
+   *
+   * @param dfaList  the NFA state sets of the DFA states of all lexical states
+   */
+  private void checkSinglePass(List<StateSet> dfaList) {
+    if (lookEnd.isEmpty()) return;
+
+    Set<Action> failed = new HashSet<Action>();
+
+    for (StateSet set : dfaList) {
+      boolean isLookEnd = false;
+      for (int end : lookEnd.values()) 
+        isLookEnd |= set.isElement(end);
+
+      if ( !isLookEnd ) continue;
+
+      states.reset(set);
+      while ( states.hasMoreElements() ) {
+        int s = states.nextElement();
+        for (Map.Entry<Action, IntPair> entry : lookStates.entrySet()) {
+          IntPair range = entry.getValue();
+          if (s >= range.start && s < range.end) {
+            int end = lookEnd.get(entry.getKey());
+            if ( !set.isElement(end) || !epsilon[end].isElement(s) ) 
+              failed.add(entry.getKey());
+          }
+        }
+      }
+    }
+
+    for (Action a : lookEnd.keySet()) 
+      a.setSinglePass( !failed.contains(a) );
+  }
+
+
+  /**
+   * Computes the states that may not be active next to a capture group 
+   * tag (see <code>tagConflicts</code>). These are the states that can 
+   * only be reached through a tag of the register (a run that passed the 
+   * tag earlier) and, for end registers, the states from which the rule 
+   * can still be matched without passing an end tag of the register (a 
+   * run in which the group does not participate).
+   *
+   * Must be called before the epsilon closures are computed.
+   */
+  private void prepareGroups() {
+    tagConflicts = new StateSet[2*groupNames.size()];
+    for (int k = 0; k < tagConflicts.length; k++) 
+      tagConflicts[k] = new StateSet(numStates);
+
+    for (int start : groupRules) {
+      StateSet rule = reach(start, StateSet.EMPTY);
+
+      for (Map.Entry<Integer, Integer> tag : tagRegister.entrySet()) {
+        if ( !rule.isElement(tag.getKey()) ) continue;
+
+        StateSet bypass = reach(start, new StateSet(numStates, tag.getKey()));
+        StateSet after = reach(tag.getKey(), StateSet.EMPTY);
+
+        states.reset(after);
+        while ( states.hasMoreElements() ) {
+          int s = states.nextElement();
+          if ( !bypass.isElement(s) ) tagConflicts[tag.getValue()].addState(s);
+        }
+      }
+
+      for (int k = 1; k < tagConflicts.length; k+= 2) {
+        StateSet endTags = new StateSet(numStates);
+        for (Map.Entry<Integer, Integer> tag : tagRegister.entrySet()) 
+          if ( tag.getValue() == k && rule.isElement(tag.getKey()) ) 
+            endTags.addState(tag.getKey());
+
+        if ( !endTags.containsElements() ) continue;
+
+        states.reset(rule);
+        while ( states.hasMoreElements() ) {
+          int s = states.nextElement();
+          if ( !endTags.isElement(s) && containsFinal(reach(s, endTags)) )
+            tagConflicts[k].addState(s);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the set of states that are reachable from <code>start</code>
+   * via plain (not yet closed) epsilon and input transitions without 
+   * passing through one of the states in <code>avoid</code>.
+   *
+   * @param start  the state to start from
+   * @param avoid  the states that must not be entered
+   */
+  private StateSet reach(int start, StateSet avoid) {
+    StateSet result = new StateSet(numStates);
+    if ( avoid.isElement(start) ) return result;
+
+    StateSet notvisited = new StateSet(numStates, start);
+    result.addState(start);
+
+    while ( notvisited.containsElements() ) {
+      int state = notvisited.getAndRemoveElement();
+
+      for (int input = -1; input < numInput; input++) {
+        StateSet next = input < 0 ? epsilon[state] : table[state][input];
+        if (next == null) continue;
+
+        StateSetEnumerator e = next.states();
+        while ( e.hasMoreElements() ) {
+          int s = e.nextElement();
+          if ( !result.isElement(s) && !avoid.isElement(s) ) {
+            result.addState(s);
+            notvisited.addState(s);
+          }
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Determines which capture group registers are written when the DFA 
+   * reaches each of its states, and reports capture groups whose 
+   * boundaries are not determined by the DFA run alone.
+   *
+   * @param dfa      the DFA under construction
+   * @param dfaList  the NFA state sets of the DFA states of all lexical states
+   */
+  private void checkGroups(DFA dfa, List<StateSet> dfaList) {
+    if (groupNames.isEmpty()) return;
+
+    dfa.groupNames = groupNames;
+
+    // the rules in which a tag conflict occurs, in spec order
+    Set<Integer> ambiguous = new TreeSet<Integer>();
+
+    for (int i = 0; i < dfaList.size(); i++) {
+      StateSet set = dfaList.get(i);
+
+      StateSet [] fresh = new StateSet [tagConflicts.length];
+      int numTags = 0;
+
+      for (Map.Entry<Integer, Integer> tag : tagRegister.entrySet()) {
+        if ( set.isElement(tag.getKey()) ) {
+          int k = tag.getValue();
+          if (fresh[k] == null) { 
+            fresh[k] = new StateSet(numStates);
+            numTags++;
+          }
+          fresh[k].add(epsilon[tag.getKey()]);
+        }
+      }
+
+      if (numTags == 0) continue;
+
+      int [] tags = new int [numTags];
+      numTags = 0;
+
+      for (int k = 0; k < fresh.length; k++) {
+        if (fresh[k] == null) continue;
+
+        tags[numTags++] = k;
+
+        states.reset(set);
+        while ( states.hasMoreElements() ) {
+          int s = states.nextElement();
+          if ( tagConflicts[k].isElement(s) && !fresh[k].isElement(s) ) 
+            ambiguous.add(ruleOf(s));
+        }
+      }
+
+      dfa.setTags(i, tags);
+    }
+
+    for (int rule : ambiguous) 
+      Out.error(scanner.file, ErrorMessages.GROUP_AMBIGUOUS, ruleLines.get(rule), -1);
+
+    if (!ambiguous.isEmpty()) throw new GeneratorException();
+  }
+
+  /**
+   * Returns the index of the rule (in <code>ruleStates</code>) the
+   * specified NFA state belongs to.
+   *
+   * @param state  a state of a rule with capture groups
+   */
+  private int ruleOf(int state) {
+    for (int i = 0; i < ruleStates.size(); i++) {
+      IntPair range = ruleStates.get(i);
+      if ( range.start <= state && state < range.end ) return i;
+    }
+    throw new Error("NFA state "+state+" belongs to no rule");
+  }
+
+  /**
+   * Returns <code>true</code>, iff the specified set of states
+   * contains the end state of the base expression of a single pass
+   * general lookahead rule.
+   *
+   * @param set   the set of states that is tested
+   */
+  private boolean containsLookEnd(StateSet set) {
+    for (Map.Entry<Action, Integer> entry : lookEnd.entrySet()) 
+      if ( entry.getKey().isSinglePass() && set.isElement(entry.getValue()) ) 
+        return true;
+
+    return false;
   }
 
 
@@ -586,6 +1148,120 @@ final public class NFA {
     return result.toString();
   }
 
+  /**
+   * Returns the actions of this NFA, each action once, in the order of
+   * the states they belong to, followed by general lookahead actions
+   * without state. The position of an action in this list
+   * identifies it in {@link #writeKey} and in cached DFAs.
+   *
+   * @see DFACache
+   */
+  List<Action> actions() {
+    Map<Action, Integer> index = new IdentityHashMap<Action, Integer>();
+    List<Action> result = new ArrayList<Action>();
+
+    List<Action> all = new ArrayList<Action>(Arrays.asList(action).subList(0, numStates));
+    all.addAll(lookEnd.keySet());
+
+    for (Action a : all) {
+      if (a != null && !index.containsKey(a)) {
+        index.put(a, result.size());
+        result.add(a);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes everything the DFA of this NFA depends on: the transitions,
+   * final states and actions of all states, general lookahead and
+   * capture group data, and the properties of the actions that
+   * determine which actions are distinguished in the DFA.
+   *
+   * The action code itself is not written, only which actions are
+   * equivalent. Two NFAs with the same key therefore have the same
+   * minimal DFA up to actions at the same index in {@link #actions}.
+   *
+   * @param out    where to write the key
+   * @param index  the index of each action in {@link #actions}
+   * @throws IOException  if <code>out</code> throws it
+   */
+  void writeKey(DataOutput out, Map<Action, Integer> index) throws IOException {
+    out.writeInt(numInput);
+    out.writeInt(numLexStates);
+    out.writeInt(numEntryStates());
+    out.writeInt(numStates);
+
+    List<Action> actions = actions();
+
+    // only the order of priorities matters, not the lines of the rules
+    List<Integer> priorities = new ArrayList<Integer>();
+    for (Action a : actions) priorities.add(a.priority);
+    Collections.sort(priorities);
+
+    // actions, and the first equivalent action of each
+    Map<Action, Integer> equiv = new HashMap<Action, Integer>();
+    out.writeInt(actions.size());
+    for (int i = 0; i < actions.size(); i++) {
+      Action a = actions.get(i);
+      Integer first = equiv.get(a);
+      if (first == null) {
+        first = i;
+        equiv.put(a, first);
+      }
+      out.writeInt(first);
+      out.writeInt(Collections.binarySearch(priorities, a.priority));
+      out.writeInt(a.lookAhead());
+      out.writeInt(a.getLookLength());
+      out.writeInt(a.getEntryState());
+    }
+
+    for (int i = 0; i < numStates; i++) {
+      out.writeBoolean(isFinal[i]);
+      out.writeInt(action[i] == null ? -1 : index.get(action[i]));
+      writeKey(out, epsilon[i]);
+      for (int c = 0; c < numInput; c++) 
+        writeKey(out, table[i][c]);
+    }
+
+    out.writeInt(lookEnd.size());
+    for (Map.Entry<Action, Integer> e : lookEnd.entrySet()) {
+      out.writeInt(index.get(e.getKey()));
+      out.writeInt(e.getValue());
+    }
+
+    out.writeInt(lookStates.size());
+    for (Map.Entry<Action, IntPair> e : lookStates.entrySet()) {
+      out.writeInt(index.get(e.getKey()));
+      out.writeInt(e.getValue().start);
+      out.writeInt(e.getValue().end);
+    }
+
+    out.writeInt(tagRegister.size());
+    for (Map.Entry<Integer, Integer> e : tagRegister.entrySet()) {
+      out.writeInt(e.getKey());
+      out.writeInt(e.getValue());
+    }
+
+    out.writeInt(groupNames.size());
+    for (String name : groupNames) 
+      out.writeUTF(name);
+
+    out.writeInt(groupRules.size());
+    for (Integer start : groupRules) 
+      out.writeInt(start);
+  }
+
+  private void writeKey(DataOutput out, StateSet set) throws IOException {
+    if (set != null) {
+      states.reset(set);
+      while (states.hasMoreElements()) 
+        out.writeInt(states.nextElement());
+    }
+    out.writeInt(-1);
+  }
+
   public void writeDot(File file) {
     try {
       PrintWriter writer = new PrintWriter(new FileWriter(file));
@@ -642,21 +1318,6 @@ final public class NFA {
   //-----------------------------------------------------------------------
   // Functions for constructing NFAs out of regular expressions.
 
-  private void insertLetterNFA(boolean caseless, char letter, int start, int end) {
-    if (caseless) {
-      IntCharSet set = new IntCharSet(letter);
-      IntCharSet caselessSet = set.getCaseless(scanner.getUnicodeProperties());
-      for (Interval interval : caselessSet.getIntervals()) {
-        for (char ch = interval.start ; ch <= interval.end ; ++ch) {
-          addTransition(start, classes.getClassCode(ch), end);
-        }
-      }
-    }
-    else {
-      addTransition(start, classes.getClassCode(letter), end);
-    }
-  }
-  
   private IntPair insertStringNFA(boolean caseless, String letters) {
     int start = numStates;
     int i;
@@ -680,21 +1341,6 @@ final public class NFA {
   }
   
 
-  private void insertClassNFA(List<Interval> intervals, int start, int end) {
-    // empty char class is ok:
-    if (intervals == null) return;
-
-    for (int aCl : classes.getClassCodes(intervals)) 
-      addTransition(start, aCl, end);
-  }
-
-  private void insertNotClassNFA(List<Interval> intervals, int start, int end) {
-
-    for (int input : classes.getNotClassCodes(intervals)) 
-      addTransition(start, input, end);
-  }
-  
-
   /**
    * Constructs an NFA accepting the complement of the language
    * of a given NFA.
@@ -755,7 +1401,7 @@ final public class NFA {
             addTransition(dfaStart+currentDFAState, input, dfaStart+nextDFAState);
 	        }
 	        else {
-            if (Options.dump) Out.print("+");
+            if (context.options.dump) Out.print("+");
 	          // Out.debug("NOT FOUND!");
 	          // Out.debug("Table was "+dfaStates);
             numDFAStates++;
@@ -888,37 +1534,80 @@ final public class NFA {
    *         and end state of the NFA.
    */
   private void insertCCLNFA(RegExp regExp, int start, int end) {    
+    for (int input : getClassCodes(regExp))
+      addTransition(start, input, end);
+  }
+
+  /**
+   * Returns the class codes of all characters a char class expression
+   * matches. They are computed only once for each node, so macros and 
+   * shared subexpressions used many times are looked up only once.
+   *
+   * Assumes that regExp.isCharClass(macros) == true
+   *
+   * @param regExp  the char class expression
+   * @return the class codes in ascending order
+   */
+  private int [] getClassCodes(RegExp regExp) {
+    int [] result = classCodes.get(regExp);
+    if (result != null) return result;
+
     switch (regExp.type) {
       
     case sym.BAR:
       RegExp2 r = (RegExp2) regExp;      
-      insertCCLNFA(r.r1, start, end);
-      insertCCLNFA(r.r2, start, end);
-      return;
+      result = union(getClassCodes(r.r1), getClassCodes(r.r2));
+      break;
             
     case sym.CCLASS:
-      insertClassNFA( (List<Interval>) ((RegExp1) regExp).content, start, end);
-      return;
+      List<Interval> intervals = (List<Interval>) ((RegExp1) regExp).content;
+      // empty char class is ok:
+      result = intervals == null ? new int [0] : classes.getClassCodes(intervals);
+      break;
       
     case sym.CCLASSNOT:
-      insertNotClassNFA( (List<Interval>) ((RegExp1) regExp).content, start, end);
-      return;
+      result = classes.getNotClassCodes((List<Interval>) ((RegExp1) regExp).content);
+      break;
       
     case sym.CHAR:
-      insertLetterNFA(false, (Character)((RegExp1)regExp).content, start, end);
-      return;
+      result = new int [] { classes.getClassCode((Character) ((RegExp1) regExp).content) };
+      break;
       
     case sym.CHAR_I:
-      insertLetterNFA(true, (Character)((RegExp1)regExp).content, start, end);
-      return;
+      IntCharSet set = new IntCharSet((Character) ((RegExp1) regExp).content);
+      result = classes.getClassCodes(set.getCaseless(scanner.getUnicodeProperties()).getIntervals());
+      break;
       
     case sym.MACROUSE:
-      insertCCLNFA(macros.getDefinition((String) ((RegExp1) regExp).content), 
-                start, end);
-      return;
+      result = getClassCodes(macros.getDefinition((String) ((RegExp1) regExp).content));
+      break;
+
+    default:
+      throw new Error("Unknown expression type "+regExp.type+" in NFA construction");
     }
     
-    throw new Error("Unknown expression type "+regExp.type+" in NFA construction");
+    classCodes.put(regExp, result);
+    return result;
+  }
+
+  /**
+   * @return the union of two ascending arrays, in ascending order
+   */
+  private static int [] union(int [] a, int [] b) {
+    int [] result = new int [a.length + b.length];
+    int i = 0, j = 0, n = 0;
+    while (i < a.length || j < b.length) {
+      int next;
+      if (j == b.length || (i < a.length && a[i] < b[j])) next = a[i++];
+      else if (i == a.length || b[j] < a[i]) next = b[j++];
+      else { next = a[i++]; j++; }
+      result[n++] = next;
+    }
+    if (n == result.length) return result;
+
+    int [] shorter = new int [n];
+    System.arraycopy(result, 0, shorter, 0, n);
+    return shorter;
   }
 
 
@@ -937,6 +1626,23 @@ final public class NFA {
    *         and end state of the NFA.
    */
   public IntPair insertNFA(RegExp regExp) {
+    int [] construct = regExps == null ? null : regExps.getConstruct(regExp);
+    if (construct == null) return insertRegExpNFA(regExp);
+
+    int firstState = numStates;
+    IntPair nfa = insertRegExpNFA(regExp);
+    constructStates.add(new int [] { construct[0], construct[1], construct[2], 
+                                     firstState, numStates });
+    return nfa;
+  }
+
+  /**
+   * Constructs the NFA of a regular expression without recording it 
+   * as bounded repeat, complement or upto expression. 
+   *
+   * @see #insertNFA(RegExp)
+   */
+  private IntPair insertRegExpNFA(RegExp regExp) {
     
     IntPair nfa1, nfa2;
     int start, end;
@@ -945,7 +1651,7 @@ final public class NFA {
     if (Options.DEBUG)
       Out.debug("Inserting RegExp : "+regExp);
     
-    if (regExp.isCharClass(macros)) {
+    if (regExp.isCharClass(macros, charClassExps)) {
       start = numStates;
       end   = numStates+1;
 
@@ -1021,8 +1727,43 @@ final public class NFA {
       
       return new IntPair(nfa1.start, nfa1.end);
       
+    case sym.GROUP:
+      if (groupAction == null) 
+        return insertNFA( (RegExp) ((RegExp1) regExp).content );
+
+      String name = ((RegExpGroup) regExp).name;
+      int group = groupNames.indexOf(name);
+      if (group < 0) {
+        group = groupNames.size();
+        groupNames.add(name);
+      }
+
+      nfa1 = insertNFA( (RegExp) ((RegExp1) regExp).content );
+
+      // the tag states are separate from start and end, such that 
+      // ?, * and + can bypass the group without passing its tags
+      start = nfa1.end+1;
+      int startTag = nfa1.end+2;
+      int endTag = nfa1.end+3;
+      end   = nfa1.end+4;
+
+      addEpsilonTransition(start, startTag);
+      addEpsilonTransition(startTag, nfa1.start);
+      addEpsilonTransition(nfa1.end, endTag);
+      addEpsilonTransition(endTag, end);
+
+      tagRegister.put(startTag, 2*group);
+      tagRegister.put(endTag, 2*group+1);
+
+      return new IntPair(start, end);
+
     case sym.BANG:
-      return complement(insertNFA((RegExp) ((RegExp1) regExp).content));
+      // capture groups inside a negation are not recorded
+      Action outerAction = groupAction;
+      groupAction = null;
+      nfa1 = complement(insertNFA((RegExp) ((RegExp1) regExp).content));
+      groupAction = outerAction;
+      return nfa1;
 
     case sym.TILDE:
       return insertNFA(regExp.resolveTilde(macros));
@@ -30,6 +30,8 @@ public class Options {
 	final public static int TABLE  = 1;
 	/** code generation method: switch statement */
 	final public static int SWITCH = 2;
+	/** code generation method: packed row displacement table */
+	final public static int COMB   = 3;
 
 
 	/** output directory */
@@ -52,6 +54,24 @@ public class Options {
   public static boolean dot;
   /** If true, you will be flooded with information (e.g. dfa tables).  */
   public static boolean dump;
+  /** If true, generated scanners count their transitions for a profile */
+  public static boolean instrument;
+  /** transition profile to order the DFA states by, may be <code>null</code> */
+  public static File profile;
+  /** directory to cache minimized DFAs in, may be <code>null</code> */
+  public static File cache;
+  /** If true, scanners are written as class files instead of Java source */
+  public static boolean classfile;
+  /** class with the actions of class file scanners, may be <code>null</code> */
+  public static String companion;
+  /** If true, scanners build their DFA while scanning, from the NFA */
+  public static boolean lazy;
+  /** maximum number of DFA states before generation is aborted, 0 for no limit */
+  public static int maxStates;
+  /** maximum estimated size of the DFA in MB before generation is aborted, 0 for no limit */
+  public static int maxMemory;
+  /** maximum time in seconds for the DFA construction, 0 for no limit */
+  public static int maxTime;
 
 	static { setDefaults();	}
 
@@ -106,6 +126,15 @@ public class Options {
     time = false;
     dot = false;
     dump = false;
+    instrument = false;
+    profile = null;
+    cache = null;
+    classfile = false;
+    companion = null;
+    lazy = false;
+    maxStates = 0;
+    maxMemory = 0;
+    maxTime = 0;
     Skeleton.readDefault();
   }
 
@@ -50,7 +50,7 @@ public final class Out {
    * @param text  the message TextArea of the JFlex GUI
    */
   public static void setGUIMode(TextArea text) {
-    out.setGUIMode(text);
+    output().setGUIMode(text);
   }
   
   /**
@@ -59,8 +59,68 @@ public final class Out {
    * @param stream  the new output stream
    */
   public static void setOutputStream(OutputStream stream) {
-    out = new StdOutWriter(stream);
-    out.setGUIMode(null);
+    GeneratorContext context = GeneratorContext.bound();
+    if (context != null) {
+      context.setOutputStream(stream);
+    }
+    else {
+      out = new StdOutWriter(stream);
+      out.setGUIMode(null);
+    }
+  }
+
+  /**
+   * @return the output device for messages outside of generator runs
+   */
+  static StdOutWriter getOutput() {
+    return out;
+  }
+
+  /**
+   * Sets the error and warning counts outside of generator runs.
+   */
+  static void setCounters(int errors, int warnings) {
+    Out.errors = errors;
+    Out.warnings = warnings;
+  }
+
+  /**
+   * @return the output device of the current generator run
+   */
+  private static StdOutWriter output() {
+    GeneratorContext context = GeneratorContext.bound();
+    return context != null ? context.out : out;
+  }
+
+  private static boolean verbose() {
+    GeneratorContext context = GeneratorContext.bound();
+    return context != null ? context.options.verbose : Options.verbose;
+  }
+
+  private static boolean time() {
+    GeneratorContext context = GeneratorContext.bound();
+    return context != null ? context.options.time : Options.time;
+  }
+
+  private static boolean dump() {
+    GeneratorContext context = GeneratorContext.bound();
+    return context != null ? context.options.dump : Options.dump;
+  }
+
+  private static void countWarning(File file, int line, int column, String message) {
+    GeneratorContext context = GeneratorContext.bound();
+    if (context != null) 
+      context.report(new Diagnostic(false, file, line, column, message)); 
+    else 
+      warnings++;
+  }
+
+  private static void countError(File file, int line, int column, String message) {
+    GeneratorContext context = GeneratorContext.bound();
+    if (context != null) 
+      context.report(new Diagnostic(true, file, line, column, message)); 
+    else 
+      errors++;
   }
 
   /**
@@ -70,9 +130,9 @@ public final class Out {
    * @param time     elapsed time
    */
   public static void time(ErrorMessages message, Timer time) {
-    if (Options.time) {
+    if (time()) {
       String msg = ErrorMessages.get(message, time.toString());
-      out.println(msg);
+      output().println(msg);
     } 
   }
   
@@ -82,8 +142,8 @@ public final class Out {
    * @param message  the message to be printed
    */
   public static void time(String message) {
-    if (Options.time) {
-      out.println(message);
+    if (time()) {
+      output().println(message);
     } 
   }
 
@@ -93,8 +153,8 @@ public final class Out {
    * @param message  the message to be printed
    */
   public static void println(String message) {
-    if (Options.verbose) 
-      out.println(message);
+    if (verbose()) 
+      output().println(message);
   }
 
   /**
@@ -104,8 +164,8 @@ public final class Out {
    * @param data     data to be inserted into the message
    */
   public static void println(ErrorMessages message, String data) {
-    if (Options.verbose) {      
-      out.println(ErrorMessages.get(message,data));
+    if (verbose()) {      
+      output().println(ErrorMessages.get(message,data));
     }
   }
 
@@ -116,8 +176,8 @@ public final class Out {
    * @param data     data to be inserted into the message
    */
   public static void println(ErrorMessages message, int data) {
-    if (Options.verbose) {      
-      out.println(ErrorMessages.get(message,data));
+    if (verbose()) {      
+      output().println(ErrorMessages.get(message,data));
     }
   }
 
@@ -127,7 +187,7 @@ public final class Out {
    * @param message  the message to be printed
    */
   public static void print(String message) {
-    if (Options.verbose) out.print(message);
+    if (verbose()) output().print(message);
   }
 
   /**
@@ -152,7 +212,7 @@ public final class Out {
    * @message the message to be printed 
    */
   public static void dump(String message) {
-    if (Options.dump) out.println(message);
+    if (dump()) output().println(message);
   }
 
   
@@ -163,7 +223,7 @@ public final class Out {
    * @message  the message to be printed
    */
   private static void err(String message) {
-    out.println(message);
+    output().println(message);
   }
   
   
@@ -171,7 +231,8 @@ public final class Out {
    * throws a GeneratorException if there are any errors recorded
    */
   public static void checkErrors() {
-    if (errors > 0) throw new GeneratorException();
+    GeneratorContext context = GeneratorContext.bound();
+    if ((context != null ? context.errors : errors) > 0) throw new GeneratorException();
   }
   
 
@@ -179,6 +240,10 @@ public final class Out {
    * print error and warning statistics
    */
   public static void statistics() {    
+    GeneratorContext context = GeneratorContext.bound();
+    int errors = context != null ? context.errors : Out.errors;
+    int warnings = context != null ? context.warnings : Out.warnings;
+
     StringBuilder line = new StringBuilder(errors+" error");
     if (errors != 1) line.append("s");
 
@@ -194,8 +259,15 @@ public final class Out {
    * reset error and warning counters
    */
   public static void resetCounters() {
-    errors = 0;
-    warnings = 0;
+    GeneratorContext context = GeneratorContext.bound();
+    if (context != null) {
+      context.errors = 0;
+      context.warnings = 0;
+    }
+    else {
+      errors = 0;
+      warnings = 0;
+    }
   }
 
   
@@ -205,7 +277,7 @@ public final class Out {
    * @param message   the warning message
    */  
   public static void warning(String message) {
-    warnings++;
+    countWarning(null, -1, -1, message);
 
     err(NL+"Warning : "+message);
   }
@@ -220,7 +292,7 @@ public final class Out {
    * @see ErrorMessages
    */
   public static void warning(ErrorMessages message, int line) {
-    warnings++;
+    countWarning(null, line, -1, ErrorMessages.get(message));
 
     String msg = NL+"Warning";
     if (line > 0) msg = msg+" in line "+(line+1);
@@ -238,19 +310,35 @@ public final class Out {
    * @param column   the column of the position
    */
   public static void warning(File file, ErrorMessages message, int line, int column) {
+    warning(file, message, null, line, column);
+  }
+
+
+  /**
+   * print warning message with data and location information
+   *
+   * @param file     the file the warning is issued for
+   * @param message  the code of the message to print
+   * @param data     data to insert into the message, may be <code>null</code>
+   * @param line     the line number of the position
+   * @param column   the column of the position
+   */
+  public static void warning(File file, ErrorMessages message, String data, int line, int column) {
 
     String msg = NL+"Warning";
     if (file != null) msg += " in file \""+file+"\"";
     if (line >= 0) msg = msg+" (line "+(line+1)+")";
 
+    String text = "";
     try {
-      err(msg+": "+NL+ErrorMessages.get(message));
+      text = data == null ? ErrorMessages.get(message) : ErrorMessages.get(message, data);
+      err(msg+": "+NL+text);
     }
     catch (ArrayIndexOutOfBoundsException e) {
       err(msg);
     }
 
-    warnings++;
+    countWarning(file, line, column, text);
 
     if (line >= 0) {
       if (column >= 0)
@@ -267,7 +355,7 @@ public final class Out {
    * @param message  the message to print
    */
   public static void error(String message) {
-    errors++;
+    countError(null, -1, -1, message);
     err(NL+message);
   }
 
@@ -280,7 +368,7 @@ public final class Out {
    * @see ErrorMessages   
    */ 
   public static void error(ErrorMessages message) {
-    errors++;
+    countError(null, -1, -1, ErrorMessages.get(message));
     err(NL+"Error: "+ErrorMessages.get(message) );
   }
 
@@ -294,7 +382,7 @@ public final class Out {
    * @see ErrorMessages   
    */ 
   public static void error(ErrorMessages message, String data) {
-    errors++;    
+    countError(null, -1, -1, ErrorMessages.get(message,data));
     err(NL+"Error: "+ ErrorMessages.get(message,data));
   }
 
@@ -307,7 +395,7 @@ public final class Out {
    * @param file     the file it occurred for
    */
   public static void error(ErrorMessages message, File file) {
-    errors++;
+    countError(file, -1, -1, ErrorMessages.get(message));
     err(NL+"Error: "+ErrorMessages.get(message)+" ("+file+")");
   }
 
@@ -326,14 +414,16 @@ public final class Out {
     if (file != null) msg += " in file \""+file+"\"";
     if (line >= 0) msg = msg+" (line "+(line+1)+")";
 
+    String text = "";
     try {
-      err(msg+": "+NL+ErrorMessages.get(message));
+      text = ErrorMessages.get(message);
+      err(msg+": "+NL+text);
     }
     catch (ArrayIndexOutOfBoundsException e) {
       err(msg);
     }
 
-    errors++;
+    countError(file, line, column, text);
 
     if (line >= 0) {
       if (column >= 0)
@@ -397,6 +487,10 @@ public final class Out {
    * @throw IOException  if any error occurs
    */
   private static String getLine(File file, int line) throws IOException {
+    // in-memory runs have no files to show
+    GeneratorContext context = GeneratorContext.bound();
+    if (context != null && context.result != null) return null;
+
     BufferedReader reader = new BufferedReader(new FileReader(file));
 
     String msg = "";
@@ -13,8 +13,15 @@ package jflex;
 /**
  * Encodes <code>int</code> arrays as strings.
  * 
+ * The decoded array has the narrowest element type that fits all 
+ * values (see {@link #typeFor(int, int)}), <code>int</code> by default.
+ * 
  * Also splits up strings when longer than 64K in UTF8 encoding.
  * Subclasses emit unpacking code.
+ *
+ * With a {@link TableResource}, the encoded characters go into the
+ * resource instead of string constants, and the unpacking code reads
+ * them from there.
  * 
  * Usage protocol:
  * <code>p.emitInit();</code><br>
@@ -28,6 +35,9 @@ public abstract class PackEmitter {
 
   /** name of the generated array (mixed case, no yy prefix) */
   protected String name;
+
+  /** element type of the generated array */
+  protected String type = "int";
     
   /** current UTF8 length of generated string in current chunk */
   private int UTF8Length;
@@ -43,6 +53,12 @@ public abstract class PackEmitter {
 
   /** number of existing string chunks */ 
   protected int chunks;
+
+  /** the resource to put the encoded array into, <code>null</code> for string constants */
+  private TableResource resource;
+
+  /** index of the array in <code>resource</code> */
+  private int table;
     
   /** maximum size of chunks */
   // String constants are stored as UTF8 with 2 bytes length
@@ -62,6 +78,46 @@ public abstract class PackEmitter {
     this.name = name;
   }
   
+  /**
+   * Set the element type of the generated array.
+   *
+   * @param type  one of <code>byte</code>, <code>short</code>, 
+   *              <code>char</code> or <code>int</code>
+   * @see PackEmitter#typeFor(int, int)
+   */
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  /**
+   * Put the encoded array into a table resource instead of string constants.
+   * Must be called before {@link #emitInit()}.
+   *
+   * @param resource  the resource, <code>null</code> for string constants
+   */
+  public void setResource(TableResource resource) {
+    this.resource = resource;
+  }
+
+  /**
+   * Returns the narrowest Java element type for an array with values
+   * in <code>[min, max]</code>.
+   */
+  public static String typeFor(int min, int max) {
+    if (min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE) return "byte";
+    if (min >= Short.MIN_VALUE && max <= Short.MAX_VALUE) return "short";
+    if (min >= Character.MIN_VALUE && max <= Character.MAX_VALUE) return "char";
+    return "int";
+  }
+
+  /**
+   * Returns a cast to the element type for an <code>int</code> 
+   * expression, the empty string for <code>int</code> arrays.
+   */
+  protected String cast() {
+    return type.equals("int") ? "" : "("+type+") ";
+  }
+
   /**
    * Convert array name into all uppercase internal scanner 
    * constant name.
@@ -84,13 +140,62 @@ public abstract class PackEmitter {
    * Emit declaration of decoded member and open first chunk.
    */  
   public void emitInit() {
-    out.append("  private static final int [] ");
+    out.append("  private static final "+type+" [] ");
     out.append(constName());
     out.append(" = zzUnpack");
     out.append(name);
     out.append("();");
     nl();
-    nextChunk();
+
+    if (resource != null) {
+      table = resource.newTable();
+      chunks = 1;
+    }
+    else {
+      nextChunk();
+    }
+  }
+
+  /**
+   * Close the last string chunk.
+   */
+  protected void emitClose() {
+    if (resource == null) println("\";");
+  }
+
+  /**
+   * Returns the type of the encoded chunks in the unpacking code,
+   * <code>char []</code> for chunks from a table resource.
+   */
+  protected String packedType() {
+    return resource != null ? "char []" : "String";
+  }
+
+  /**
+   * Returns an expression for the length of the encoded chunk <code>packed</code>.
+   */
+  protected String packedLength() {
+    return resource != null ? "packed.length" : "packed.length()";
+  }
+
+  /**
+   * Returns an expression for the next character <code>i++</code> of 
+   * the encoded chunk <code>packed</code>.
+   */
+  protected String packedNext() {
+    return resource != null ? "packed[i++]" : "packed.charAt(i++)";
+  }
+
+  /**
+   * Returns an expression for an encoded chunk.
+   *
+   * @param i  the number of the chunk
+   */
+  protected String chunk(int i) {
+    if (resource != null) 
+      return "zzTable("+table+")";
+    else
+      return constName()+"_PACKED_"+i;
   }
 
   /**
@@ -107,6 +212,11 @@ public abstract class PackEmitter {
   
     // cast ok because of prec  
     char c = (char) i;    
+
+    if (resource != null) {
+      resource.append(table, c);
+      return;
+    }
      
     printUC(c);
     UTF8Length += UTF8Length(c);
@@ -118,6 +228,8 @@ public abstract class PackEmitter {
    * Leave space for at least two chars.
    */  
   public void breaks() {
+    if (resource != null) return;
+
     if (UTF8Length >= maxSize) {
       // close current chunk
       out.append("\";");
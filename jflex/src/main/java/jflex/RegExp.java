@@ -10,7 +10,9 @@
 package jflex;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Stores a regular expression of rules section in a JFlex-specification.
@@ -70,26 +72,45 @@ public class RegExp {
    * @return true if the regexp is equivalent to a char class.
    */
   public boolean isCharClass(Macros macros) {
-    RegExp1 unary;
-    RegExp2 binary;
+    return isCharClass(macros, new IdentityHashMap<RegExp, Boolean>());
+  }
+
+  /**
+   * Find out if this regexp is a char class or equivalent to one,
+   * checking each shared subexpression only once.
+   * 
+   * @param  macros  for macro expansion
+   * @param  known   the results for the subexpressions checked so far
+   * @return true if the regexp is equivalent to a char class.
+   */
+  boolean isCharClass(Macros macros, Map<RegExp, Boolean> known) {
+    Boolean result = known.get(this);
+    if (result != null) return result;
 
     switch (type) {
     case sym.CHAR:
     case sym.CHAR_I:
     case sym.CCLASS:
     case sym.CCLASSNOT:
-      return true;
+      result = true;
+      break;
       
     case sym.BAR: 
-      binary = (RegExp2) this;
-      return binary.r1.isCharClass(macros) && binary.r2.isCharClass(macros);
+      RegExp2 binary = (RegExp2) this;
+      result = binary.r1.isCharClass(macros, known) && binary.r2.isCharClass(macros, known);
+      break;
  
     case sym.MACROUSE:
-      unary = (RegExp1) this;
-      return macros.getDefinition((String) unary.content).isCharClass(macros);
+      RegExp1 unary = (RegExp1) this;
+      result = macros.getDefinition((String) unary.content).isCharClass(macros, known);
+      break;
      
-    default: return false; 
+    default: 
+      result = false; 
     }     
+
+    known.put(this, result);
+    return result;
   }
   
   /**
@@ -99,6 +120,26 @@ public class RegExp {
    * @param macros  macro table for expansion   
    */
   public int size(Macros macros) {
+    return size(macros, new IdentityHashMap<RegExp, Integer>());
+  }
+
+  /**
+   * The approximate number of NFA states this expression will need,
+   * computing the size of each shared subexpression only once.
+   * 
+   * @param macros  macro table for expansion   
+   * @param known   the sizes of the subexpressions computed so far
+   */
+  int size(Macros macros, Map<RegExp, Integer> known) {
+    Integer result = known.get(this);
+    if (result == null) {
+      result = computeSize(macros, known);
+      known.put(this, result);
+    }
+    return result;
+  }
+
+  private int computeSize(Macros macros, Map<RegExp, Integer> known) {
     RegExp1 unary;
     RegExp2 binary;
     RegExp content;
@@ -106,38 +147,43 @@ public class RegExp {
     switch ( type ) {
     case sym.BAR: 
       binary = (RegExp2) this;
-      return binary.r1.size(macros) + binary.r2.size(macros) + 2;
+      return binary.r1.size(macros, known) + binary.r2.size(macros, known) + 2;
 
     case sym.CONCAT:   
       binary = (RegExp2) this;
-      return binary.r1.size(macros) + binary.r2.size(macros);
+      return binary.r1.size(macros, known) + binary.r2.size(macros, known);
       
     case sym.STAR:
       unary = (RegExp1) this;
       content = (RegExp) unary.content;      
-      return content.size(macros) + 2;
+      return content.size(macros, known) + 2;
 
     case sym.PLUS:
       unary = (RegExp1) this;
       content = (RegExp) unary.content;      
-      return content.size(macros) + 2;
+      return content.size(macros, known) + 2;
       
     case sym.QUESTION: 
       unary = (RegExp1) this;
       content = (RegExp) unary.content;      
-      return content.size(macros);
+      return content.size(macros, known);
+
+    case sym.GROUP:
+      unary = (RegExp1) this;
+      content = (RegExp) unary.content;      
+      return content.size(macros, known) + 4;
 
     case sym.BANG:
       unary = (RegExp1) this;
       content = (RegExp) unary.content;      
-      return content.size(macros) * content.size(macros);
+      return content.size(macros, known) * content.size(macros, known);
       // this is only a very rough estimate (worst case 2^n)
       // exact size too complicated (propably requires construction)
       
     case sym.TILDE:
       unary = (RegExp1) this;
       content = (RegExp) unary.content;      
-      return content.size(macros) * content.size(macros) * 3;
+      return content.size(macros, known) * content.size(macros, known) * 3;
       // see sym.BANG
       
     case sym.STRING:
@@ -155,7 +201,7 @@ public class RegExp {
 
     case sym.MACROUSE:
       unary = (RegExp1) this;
-      return macros.getDefinition((String) unary.content).size(macros);
+      return macros.getDefinition((String) unary.content).size(macros, known);
     }
 
     throw new Error("unknown regexp type "+type);
@@ -209,6 +255,11 @@ public class RegExp {
       content = (RegExp) unary.content;      
       return new RegExp1(sym.QUESTION, content.resolveTilde(macros));
 
+    case sym.GROUP:
+      unary = (RegExp1) this;
+      content = (RegExp) unary.content;      
+      return new RegExpGroup(((RegExpGroup) this).name, content.resolveTilde(macros));
+
     case sym.BANG:
       unary = (RegExp1) this;
       content = (RegExp) unary.content;      
@@ -291,6 +342,12 @@ public class RegExp {
       content = (RegExp) unary.content;      
       return new RegExp1(sym.QUESTION, content.rev(macros));
 
+    case sym.GROUP:
+      // capture groups are only recorded in forward direction
+      unary = (RegExp1) this;
+      content = (RegExp) unary.content;      
+      return content.rev(macros);
+
     case sym.BANG:
       unary = (RegExp1) this;
       content = (RegExp) unary.content;      
@@ -0,0 +1,35 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+
+/**
+ * Named capture group in a regular expression (e.g. (?&lt;num&gt; [0-9]+) )
+ *
+ * The child expression is stored as content of the RegExp1.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public class RegExpGroup extends RegExp1 {
+
+  /** the name of the capture group */
+  String name;
+
+  public RegExpGroup(String name, RegExp content) {
+    super(sym.GROUP, content);
+    this.name = name;
+  }
+  
+  public String print(String tab) {
+    return tab+"type = "+type+Out.NL+tab+"group "+name+" :"+Out.NL+ //$NON-NLS-1$ //$NON-NLS-2$
+           ((RegExp) content).print(tab+"  "); //$NON-NLS-1$
+  }
+}
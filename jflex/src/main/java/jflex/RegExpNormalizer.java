@@ -0,0 +1,293 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.*;
+
+
+/**
+ * Rewrites expressions into equivalent ones with smaller NFAs:
+ * <ul>
+ *   <li>alternatives of characters and char classes are merged
+ *       into one char class,</li>
+ *   <li>nested unions are flattened and equal alternatives removed,</li>
+ *   <li>nested or redundant <code>*</code>, <code>+</code> and
+ *       <code>?</code> are collapsed (e.g. <code>(a*|b)+</code>
+ *       to <code>(a|b)*</code>),</li>
+ *   <li>adjacent characters and strings are merged into one string.</li>
+ * </ul>
+ *
+ * Macro uses are replaced by their normalized definitions. All results are
+ * interned (see {@link RegExps#intern}), so equal alternatives are found by
+ * identity and each shared node is normalized only once.
+ *
+ * Expressions with capture groups are left as they are, because the
+ * positions of their tags depend on the structure of the expression.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final class RegExpNormalizer {
+
+  private RegExps regExps;
+  private Macros macros;
+
+  /** the normalized form of each node normalized so far */
+  private Map<RegExp, RegExp> normalized = new IdentityHashMap<RegExp, RegExp>();
+
+  /** the nodes checked for capture groups so far */
+  private Map<RegExp, Boolean> groups = new IdentityHashMap<RegExp, Boolean>();
+
+
+  /**
+   * @param regExps  for interning the results
+   * @param macros   the macro table (in expanded form)
+   */
+  RegExpNormalizer(RegExps regExps, Macros macros) {
+    this.regExps = regExps;
+    this.macros = macros;
+  }
+
+  /**
+   * Returns an expression equivalent to the given one with at most as
+   * many NFA states, the expression itself if it contains capture groups.
+   *
+   * @param regExp  the expression to normalize
+   */
+  RegExp normalize(RegExp regExp) {
+    if (hasGroup(regExp)) return regExp;
+    return norm(regExp);
+  }
+
+  private boolean hasGroup(RegExp regExp) {
+    Boolean result = groups.get(regExp);
+    if (result != null) return result;
+
+    if (regExp instanceof RegExp2)
+      result = hasGroup(((RegExp2) regExp).r1) || hasGroup(((RegExp2) regExp).r2);
+    else if (regExp.type == sym.GROUP)
+      result = true;
+    else if (regExp.type == sym.MACROUSE)
+      result = hasGroup(macros.getDefinition((String) ((RegExp1) regExp).content));
+    else if (regExp instanceof RegExp1 && ((RegExp1) regExp).content instanceof RegExp)
+      result = hasGroup((RegExp) ((RegExp1) regExp).content);
+    else
+      result = false;
+
+    groups.put(regExp, result);
+    return result;
+  }
+
+  private RegExp norm(RegExp regExp) {
+    RegExp result = normalized.get(regExp);
+    if (result != null) return result;
+
+    RegExp2 binary;
+    RegExp content;
+
+    switch (regExp.type) {
+    case sym.BAR:
+      List<RegExp> alternatives = new ArrayList<RegExp>();
+      addAlternatives(norm(((RegExp2) regExp).r1), alternatives);
+      addAlternatives(norm(((RegExp2) regExp).r2), alternatives);
+      result = union(alternatives);
+      break;
+
+    case sym.CONCAT:
+      binary = (RegExp2) regExp;
+      result = concat(binary, norm(binary.r1), norm(binary.r2));
+      break;
+
+    case sym.STAR:
+      result = star(norm(content(regExp)));
+      break;
+
+    case sym.PLUS:
+      result = plus(regExp, norm(content(regExp)));
+      break;
+
+    case sym.QUESTION:
+      result = question(regExp, norm(content(regExp)));
+      break;
+
+    case sym.BANG:
+    case sym.TILDE:
+      content = norm(content(regExp));
+      result = content == content(regExp) ? regExp : new RegExp1(regExp.type, content);
+      break;
+
+    case sym.MACROUSE:
+      result = norm(macros.getDefinition((String) ((RegExp1) regExp).content));
+      break;
+
+    default:
+      result = regExp;
+    }
+
+    result = regExps.intern(result);
+    regExps.copyConstruct(regExp, result);
+    normalized.put(regExp, result);
+    return result;
+  }
+
+  private static RegExp content(RegExp regExp) {
+    return (RegExp) ((RegExp1) regExp).content;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Interval> intervals(RegExp charClass) {
+    return (List<Interval>) ((RegExp1) charClass).content;
+  }
+
+  private static boolean isLiteral(RegExp regExp) {
+    return regExp.type == sym.CHAR || regExp.type == sym.STRING;
+  }
+
+  private static String literal(RegExp regExp) {
+    return ((RegExp1) regExp).content.toString();
+  }
+
+  /**
+   * Adds the alternatives of a normalized union (or the expression itself
+   * if it is no union) to a list.
+   */
+  private static void addAlternatives(RegExp regExp, List<RegExp> alternatives) {
+    if (regExp.type == sym.BAR) {
+      addAlternatives(((RegExp2) regExp).r1, alternatives);
+      addAlternatives(((RegExp2) regExp).r2, alternatives);
+    }
+    else {
+      alternatives.add(regExp);
+    }
+  }
+
+  /**
+   * Builds the union of normalized alternatives: all characters and char
+   * classes become one char class at the position of the first of them,
+   * equal alternatives are dropped.
+   */
+  private RegExp union(List<RegExp> alternatives) {
+    Set<RegExp> distinct = new LinkedHashSet<RegExp>();
+    IntCharSet chars = new IntCharSet();
+    RegExp firstChars = null;
+    int numChars = 0;
+
+    for (RegExp r : alternatives) {
+      if (r.type == sym.CHAR || r.type == sym.CCLASS) {
+        if (firstChars == null) {
+          firstChars = r;
+          distinct.add(r);
+        }
+        if (r.type == sym.CHAR)
+          chars.add((Character) ((RegExp1) r).content);
+        else if (((RegExp1) r).content != null)
+          for (Interval i : intervals(r)) chars.add(i);
+        numChars++;
+      }
+      else {
+        distinct.add(r);
+      }
+    }
+
+    RegExp result = null;
+    for (RegExp r : distinct) {
+      if (r == firstChars && numChars > 1) {
+        List<Interval> intervals = chars.numIntervals() == 0 ? null
+          : new ArrayList<Interval>(chars.getIntervals());
+        r = regExps.intern(new RegExp1(sym.CCLASS, intervals));
+      }
+      result = result == null ? r : regExps.intern(new RegExp2(sym.BAR, result, r));
+    }
+    return result;
+  }
+
+  /**
+   * @param concat  the original concatenation
+   * @param r1      the normalized first part
+   * @param r2      the normalized second part
+   */
+  private RegExp concat(RegExp2 concat, RegExp r1, RegExp r2) {
+    if (isLiteral(r1) && isLiteral(r2))
+      return new RegExp1(sym.STRING, literal(r1)+literal(r2));
+
+    if (r1.type == sym.CONCAT && isLiteral(((RegExp2) r1).r2) && isLiteral(r2)) {
+      RegExp2 left = (RegExp2) r1;
+      RegExp last = regExps.intern(new RegExp1(sym.STRING, literal(left.r2)+literal(r2)));
+      return new RegExp2(sym.CONCAT, left.r1, last);
+    }
+
+    // r* r* = r*
+    if (r1 == r2 && r1.type == sym.STAR) return r1;
+
+    if (r1 == concat.r1 && r2 == concat.r2) return concat;
+    return new RegExp2(sym.CONCAT, r1, r2);
+  }
+
+  /**
+   * @param content  the normalized content of the star
+   */
+  private RegExp star(RegExp content) {
+    return new RegExp1(sym.STAR, stripOptional(content));
+  }
+
+  /**
+   * Removes the outer <code>*</code>, <code>+</code> and <code>?</code>
+   * of an expression and of all its alternatives, which do not change
+   * the language of a star around it.
+   */
+  private RegExp stripOptional(RegExp regExp) {
+    switch (regExp.type) {
+    case sym.STAR:
+    case sym.PLUS:
+    case sym.QUESTION:
+      return stripOptional(content(regExp));
+
+    case sym.BAR:
+      List<RegExp> alternatives = new ArrayList<RegExp>();
+      addAlternatives(regExp, alternatives);
+      for (int i = 0; i < alternatives.size(); i++)
+        alternatives.set(i, stripOptional(alternatives.get(i)));
+      return union(alternatives);
+
+    default:
+      return regExp;
+    }
+  }
+
+  /**
+   * @param plus     the original expression
+   * @param content  the normalized content
+   */
+  private RegExp plus(RegExp plus, RegExp content) {
+    // r++ = r+
+    if (content.type == sym.PLUS) return content;
+
+    // r+ = r* if r matches the empty string
+    if (SemCheck.maybeEmtpy(content, macros)) return star(content);
+
+    if (content == content(plus)) return plus;
+    return new RegExp1(sym.PLUS, content);
+  }
+
+  /**
+   * @param question  the original expression
+   * @param content   the normalized content
+   */
+  private RegExp question(RegExp question, RegExp content) {
+    // r+? = r*
+    if (content.type == sym.PLUS) return star(content(content));
+
+    // r? = r if r matches the empty string
+    if (SemCheck.maybeEmtpy(content, macros)) return content;
+
+    if (content == content(question)) return question;
+    return new RegExp1(sym.QUESTION, content);
+  }
+}
@@ -44,6 +44,19 @@ public class RegExps {
    *  Need 2*gen_look_count additional DFA entry points. */
   int gen_look_count;
 
+  /** 
+   * the bounded repeats, complements and upto expressions: kind 
+   * (<code>sym.REPEAT</code>, <code>sym.BANG</code> or <code>sym.TILDE</code>), 
+   * line and column of each expression, for DFA size diagnostics
+   */
+  private Map<RegExp, int []> constructs = new IdentityHashMap<RegExp, int []>();
+
+  /** the shared node of each distinct expression structure (see {@link #intern}) */
+  private Map<Shape, RegExp> shapes = new HashMap<Shape, RegExp>();
+
+  /** the shared node each node passed to {@link #intern} was replaced by */
+  private Map<RegExp, RegExp> interned = new IdentityHashMap<RegExp, RegExp>();
+
   public RegExps() {
     states = new ArrayList<List<Integer>>();
     regExps = new ArrayList<RegExp>();
@@ -63,10 +76,10 @@ public class RegExps {
     }
 
     states.add(stateList);
-    regExps.add(regExp);
+    regExps.add(intern(regExp));
     actions.add(action);
     BOL.add(isBOL);
-    look.add(lookAhead);
+    look.add(intern(lookAhead));
     lines.add(line);
     look_entry.add(null);
     
@@ -123,6 +136,121 @@ public class RegExps {
     return lines.get(num);
   }
   
+  public void addConstruct(RegExp regExp, int kind, int line, int col) {
+    constructs.put(regExp, new int [] { kind, line, col });
+  }
+
+  /**
+   * @return kind, line and column of a bounded repeat, complement or 
+   *         upto expression, <code>null</code> for other expressions
+   */
+  public int [] getConstruct(RegExp regExp) {
+    return constructs.get(regExp);
+  }
+
+  /**
+   * Records a node that replaces a bounded repeat, complement or upto 
+   * expression as that expression, unless it is recorded already.
+   */
+  void copyConstruct(RegExp regExp, RegExp replacement) {
+    int [] construct = constructs.get(regExp);
+    if (construct != null && !constructs.containsKey(replacement)) 
+      constructs.put(replacement, construct);
+  }
+
+  /**
+   * Returns the shared node of an expression: structurally equal
+   * expressions (same types, contents and subexpressions) are represented
+   * by the same node, the first one that was interned. Subexpressions 
+   * are interned first and replaced in place, so repeated parts of rules 
+   * and macro definitions become one node that later passes (NFA size, 
+   * char class codes) process only once.
+   * 
+   * @param regExp  the expression to intern, may be <code>null</code>
+   * @return the shared node equal to <code>regExp</code>
+   */
+  public RegExp intern(RegExp regExp) {
+    if (regExp == null) return null;
+
+    RegExp result = interned.get(regExp);
+    if (result != null) return result;
+
+    if (regExp instanceof RegExp2) {
+      RegExp2 binary = (RegExp2) regExp;
+      binary.r1 = intern(binary.r1);
+      binary.r2 = intern(binary.r2);
+    }
+    else if (regExp instanceof RegExp1) {
+      RegExp1 unary = (RegExp1) regExp;
+      if (unary.content instanceof RegExp) 
+        unary.content = intern((RegExp) unary.content);
+    }
+
+    Shape shape = new Shape(regExp);
+    result = shapes.get(shape);
+    if (result == null) {
+      shapes.put(shape, regExp);
+      result = regExp;
+    }
+    else {
+      copyConstruct(regExp, result);
+    }
+
+    interned.put(regExp, result);
+    return result;
+  }
+
+  /**
+   * The structure of a node whose subexpressions are interned already:
+   * subexpressions are compared by identity, all other content by value.
+   * The fields are copied, so later macro expansion in the node does 
+   * not change its shape.
+   */
+  private static final class Shape {
+    private final Class<?> kind;
+    private final int type;
+    private final Object first;
+    private final Object second;
+
+    Shape(RegExp regExp) {
+      kind = regExp.getClass();
+      type = regExp.type;
+      if (regExp instanceof RegExp2) {
+        first = ((RegExp2) regExp).r1;
+        second = ((RegExp2) regExp).r2;
+      }
+      else if (regExp instanceof RegExp1) {
+        first = ((RegExp1) regExp).content;
+        second = regExp instanceof RegExpGroup ? ((RegExpGroup) regExp).name : null;
+      }
+      else {
+        first = null;
+        second = null;
+      }
+    }
+
+    private static boolean same(Object a, Object b) {
+      if (a instanceof RegExp || a == null) return a == b;
+      return a.equals(b);
+    }
+
+    private static int hash(Object o) {
+      if (o instanceof RegExp || o == null) return System.identityHashCode(o);
+      return o.hashCode();
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Shape)) return false;
+      Shape other = (Shape) o;
+      return kind == other.kind && type == other.type 
+          && same(first, other.first) && same(second, other.second);
+    }
+
+    public int hashCode() {
+      return (type * 31 + hash(first)) * 31 + hash(second);
+    }
+  }
+
   public int getLookEntry(int num) {
     return look_entry.get(num);
   }
@@ -142,19 +270,35 @@ public class RegExps {
   }
 
   public int NFASize(Macros macros) {
+    // sizes of macros and other shared subexpressions are computed once
+    Map<RegExp, Integer> known = new IdentityHashMap<RegExp, Integer>();
     int size = 0;
     for (RegExp r : regExps)
-      if (r != null) size += r.size(macros);
+      if (r != null) size += r.size(macros, known);
     
     for (RegExp r : look)
-      if (r != null) size += r.size(macros);
+      if (r != null) size += r.size(macros, known);
 
     return size;
   }
 
-  public void checkLookAheads() {
+  /**
+   * Replaces the expressions of all rules by equivalent ones with 
+   * smaller NFAs. Lookahead expressions are kept as they are, their 
+   * structure determines how the lookahead is matched.
+   *
+   * @param macros  the macro table (in expanded form)
+   * @see RegExpNormalizer
+   */
+  public void normalize(Macros macros) {
+    RegExpNormalizer normalizer = new RegExpNormalizer(this, macros);
+    for (int i = 0; i < regExps.size(); i++) 
+      if (regExps.get(i) != null) regExps.set(i, normalizer.normalize(regExps.get(i)));
+  }
+
+  public void checkLookAheads(Macros macros) {
     for (int i=0; i < regExps.size(); i++) 
-      lookAheadCase(i);
+      lookAheadCase(i, macros);
   }
   
   /**
@@ -168,16 +312,17 @@ public class RegExps {
    * the correct amount of space of lookahead DFA entry points.
    * 
    * @param regExpNum   the number of the regexp in RegExps. 
+   * @param macros      the macro table (in expanded form)
    */
-  private void lookAheadCase(int regExpNum) {
+  private void lookAheadCase(int regExpNum, Macros macros) {
     if ( getLookAhead(regExpNum) != null ) {
       RegExp r1 = getRegExp(regExpNum);
       RegExp r2 = getLookAhead(regExpNum);
 
       Action a = getAction(regExpNum);
             
-      int len1 = SemCheck.length(r1);
-      int len2 = SemCheck.length(r2);
+      int len1 = SemCheck.length(r1, macros);
+      int len2 = SemCheck.length(r2, macros);
       
       if (len1 >= 0) {
         a.setLookAction(Action.FIXED_BASE,len1);
@@ -185,7 +330,7 @@ public class RegExps {
       else if (len2 >= 0) {
         a.setLookAction(Action.FIXED_LOOK,len2);
       }
-      else if (SemCheck.isFiniteChoice(r2)) {
+      else if (SemCheck.isFiniteChoice(r2, macros)) {
         a.setLookAction(Action.FINITE_CHOICE,0);
       }
       else {
@@ -0,0 +1,280 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.util.*;
+
+import jflex.unicode.UnicodeProperties;
+
+/**
+ * A set of lexical rules that is compiled at runtime into a
+ * {@link CompiledLexer}, without generating code.
+ *
+ * Rules are regular expressions in JFlex syntax, each with an integer
+ * id that the lexer reports for its matches. Rules may be restricted
+ * to lexical states and may use macros. Earlier rules have priority
+ * over later ones, as in a specification.
+ *
+ * <pre>
+ *   CompiledLexer lexer = new RuleSet()
+ *     .addMacro("digit", "[0-9]")
+ *     .addRule(NUMBER, "{digit}+")
+ *     .addRule(SPACE,  "[ \\t\\n]+")
+ *     .compile();
+ * </pre>
+ *
+ * The rules are compiled with the same scanner, parser, NFA
+ * construction and DFA minimization as a specification with
+ * <code>%unicode</code>. Compiled lexers are cached by their rules, so
+ * compiling an equal rule set again returns the same lexer.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class RuleSet {
+
+  /** the name of the rule set in messages */
+  private static final String NAME = "rules";
+
+  /** the number of compiled lexers the cache keeps */
+  private static final int CACHE_SIZE = 64;
+
+  /** the most recently used compiled lexers, by the text of their rule set */
+  private static final Map<String, CompiledLexer> cache =
+    new LinkedHashMap<String, CompiledLexer>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<String, CompiledLexer> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+
+  /** Unicode properties by version, shared by all compilations */
+  private static final Map<String, UnicodeProperties> unicodeProperties =
+    new HashMap<String, UnicodeProperties>();
+
+  private boolean caseless;
+
+  /** state declarations, macros and rules, one line each */
+  private StringBuilder declarations = new StringBuilder();
+  private StringBuilder rules = new StringBuilder();
+
+  /** the id of each rule, in the order of the rules */
+  private List<Integer> ids = new ArrayList<Integer>();
+
+
+  /**
+   * Makes all rules match regardless of case (<code>%caseless</code>).
+   *
+   * @return this rule set
+   */
+  public RuleSet setCaseless(boolean caseless) {
+    this.caseless = caseless;
+    return this;
+  }
+
+  /**
+   * Declares an inclusive lexical state (<code>%state</code>). Rules
+   * without lexical states are also active in inclusive states.
+   *
+   * @param name  the name of the state
+   * @return this rule set
+   */
+  public RuleSet addState(String name) {
+    declarations.append("%state ").append(identifier(name)).append('\n');
+    return this;
+  }
+
+  /**
+   * Declares an exclusive lexical state (<code>%xstate</code>).
+   *
+   * @param name  the name of the state
+   * @return this rule set
+   */
+  public RuleSet addExclusiveState(String name) {
+    declarations.append("%xstate ").append(identifier(name)).append('\n');
+    return this;
+  }
+
+  /**
+   * Defines a macro that later macros and rules can use as
+   * <code>{name}</code>.
+   *
+   * @param name    the name of the macro
+   * @param regexp  the regular expression of the macro
+   * @return this rule set
+   */
+  public RuleSet addMacro(String name, String regexp) {
+    declarations.append(identifier(name)).append(" = ").append(line(regexp)).append('\n');
+    return this;
+  }
+
+  /**
+   * Adds a rule.
+   *
+   * @param id      the id the lexer reports for matches of the rule
+   * @param regexp  the regular expression of the rule, may use
+   *                <code>^</code>, <code>$</code> and trailing context
+   * @param states  the lexical states the rule is active in, none for
+   *                <code>YYINITIAL</code> and all inclusive states
+   * @return this rule set
+   */
+  public RuleSet addRule(int id, String regexp, String... states) {
+    if (states.length > 0) {
+      rules.append('<');
+      for (int i = 0; i < states.length; i++) {
+        if (i > 0) rules.append(',');
+        rules.append(identifier(states[i]));
+      }
+      rules.append("> ");
+    }
+    rules.append(line(regexp)).append(" { return ").append(id).append("; }\n");
+    ids.add(id);
+    return this;
+  }
+
+  /**
+   * Compiles the rule set, or returns the lexer of an equal rule set
+   * compiled earlier.
+   *
+   * @return the compiled lexer
+   * @throws RuleSetException  if a rule or macro is not valid
+   */
+  public CompiledLexer compile() {
+    String spec = toString();
+
+    CompiledLexer lexer;
+    synchronized (cache) {
+      lexer = cache.get(spec);
+    }
+    if (lexer != null) return lexer;
+
+    lexer = compile(spec, ruleIds());
+
+    synchronized (cache) {
+      cache.put(spec, lexer);
+    }
+    return lexer;
+  }
+
+  /**
+   * @return the specification this rule set is compiled from
+   */
+  public String toString() {
+    return header() + rules;
+  }
+
+  /**
+   * @return the options and declarations section of the specification
+   */
+  private String header() {
+    return "%%\n%unicode\n" + (caseless ? "%caseless\n" : "") + declarations + "%%\n";
+  }
+
+  /**
+   * Returns the id of each rule by the line of its action in the
+   * specification. Each rule takes one line after the header.
+   */
+  private Map<Integer, Integer> ruleIds() {
+    String header = header();
+    int line = 1;
+    for (int i = 0; i < header.length(); i++)
+      if (header.charAt(i) == '\n') line++;
+
+    Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+    for (int id : ids) result.put(line++, id);
+    return result;
+  }
+
+  /**
+   * @param spec     the specification of the rule set
+   * @param ruleIds  the id of each rule by the line of its action
+   */
+  private static CompiledLexer compile(String spec, Map<Integer, Integer> ruleIds) {
+    GeneratorOptions options = new GeneratorOptions();
+    options.verbose = false;
+    options.progress = false;
+
+    GeneratorContext context = new GeneratorContext(options);
+    ByteArrayOutputStream messages = new ByteArrayOutputStream();
+    context.setOutputStream(messages);
+    context.shareUnicodeProperties(unicodeProperties);
+    // no source files to quote in messages, no files to include
+    context.result = new GeneratedScanner();
+    context.includeResolver = new IncludeResolver() {
+      public Reader open(String name) {
+        return null;
+      }
+    };
+
+    CompiledLexer lexer = null;
+
+    GeneratorContext previous = context.bind();
+    try {
+      Out.resetCounters();
+
+      LexScan scanner = new LexScan(new StringReader(spec));
+      scanner.setContext(context);
+      scanner.setFile(new File(NAME));
+      LexParse parser = new LexParse(scanner);
+
+      NFA nfa = (NFA) parser.parse().value;
+      Out.checkErrors();
+
+      DFA dfa = nfa.getDFA();
+      dfa.checkActions(scanner, parser);
+      Out.checkErrors();
+
+      dfa.minimize();
+
+      lexer = new CompiledLexer(dfa, parser.getCharClasses(), scanner, ruleIds);
+    }
+    catch (ScannerException e) {
+      Out.error(e.file, e.message, e.line, e.column);
+    }
+    catch (MacroException e) {
+      Out.error(e.getMessage());
+    }
+    catch (GeneratorException e) {
+      // reported in the diagnostics
+    }
+    catch (OutOfMemoryError e) {
+      Out.error(ErrorMessages.OUT_OF_MEMORY);
+    }
+    catch (Exception e) {
+      Out.error(ErrorMessages.IO_ERROR, e.toString());
+    }
+    finally {
+      context.unbind(previous);
+      context.out.flush();
+    }
+
+    if (lexer == null)
+      throw new RuleSetException(messages.toString(), context.getDiagnostics());
+
+    return lexer;
+  }
+
+  private static String identifier(String name) {
+    boolean valid = name.length() > 0 && Character.isJavaIdentifierStart(name.charAt(0));
+    for (int i = 1; valid && i < name.length(); i++)
+      valid = Character.isJavaIdentifierPart(name.charAt(i));
+
+    if (!valid) throw new IllegalArgumentException("\""+name+"\" is not an identifier");
+    return name;
+  }
+
+  private static String line(String regexp) {
+    if (regexp.indexOf('\n') >= 0 || regexp.indexOf('\r') >= 0)
+      throw new IllegalArgumentException("regular expression contains a line break");
+    return regexp;
+  }
+}
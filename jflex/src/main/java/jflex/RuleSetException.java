@@ -0,0 +1,47 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.List;
+
+/**
+ * This Exception is thrown when a {@link RuleSet} cannot be compiled.
+ * The message contains the messages of the generator.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public class RuleSetException extends RuntimeException {
+
+  private static final long serialVersionUID = -4217906536104915183L;
+
+  /** the errors and warnings of the compilation */
+  private List<Diagnostic> diagnostics;
+
+
+  /**
+   * Creates a new RuleSetException.
+   *
+   * @param message      the messages of the generator
+   * @param diagnostics  the errors and warnings of the compilation
+   */
+  public RuleSetException(String message, List<Diagnostic> diagnostics) {
+    super(message);
+    this.diagnostics = diagnostics;
+  }
+
+  /**
+   * @return the errors and warnings of the compilation, lines refer to
+   *         {@link RuleSet#toString}
+   */
+  public List<Diagnostic> getDiagnostics() {
+    return diagnostics;
+  }
+}
@@ -18,9 +18,6 @@ import java.io.File;
  */
 public final class SemCheck {
 
-  // stored globally since they are used as constants in all checks
-  private static Macros macros;
-  
   /**
    * Performs semantic analysis for all expressions.
    *
@@ -30,15 +27,14 @@ public final class SemCheck {
    * @param m    the macro table (in expanded form)
    * @param f    the spec file containing the rules 
    */
-  public static void check(RegExps rs, Macros m, File f) {
-    macros = m;
+  public static void check(RegExps rs, Macros macros, File f) {
     int num = rs.getNum();
     for (int i = 0; i < num; i++) {
       RegExp r = rs.getRegExp(i);
       RegExp l = rs.getLookAhead(i);
       Action a = rs.getAction(i);
       
-      if (r != null && l != null && maybeEmtpy(r)) {
+      if (r != null && l != null && maybeEmtpy(r, macros)) {
         if (a == null) 
           Out.error(ErrorMessages.EMPTY_MATCH, "");
         else 
@@ -52,28 +48,29 @@ public final class SemCheck {
    * Checks if the expression potentially matches the empty string.
    *    
    */
-  public static boolean maybeEmtpy(RegExp re) {
+  public static boolean maybeEmtpy(RegExp re, Macros macros) {
     RegExp2 r; 
 
     switch (re.type) {      
 
     case sym.BAR: {
       r = (RegExp2) re;
-      return maybeEmtpy(r.r1) || maybeEmtpy(r.r2);
+      return maybeEmtpy(r.r1, macros) || maybeEmtpy(r.r2, macros);
     }
 
     case sym.CONCAT: {
       r = (RegExp2) re;
-      return maybeEmtpy(r.r1) && maybeEmtpy(r.r2);
+      return maybeEmtpy(r.r1, macros) && maybeEmtpy(r.r2, macros);
     }
 
     case sym.STAR:
     case sym.QUESTION:
       return true;
       
-    case sym.PLUS: {
+    case sym.PLUS: 
+    case sym.GROUP: {
       RegExp1 r1 = (RegExp1) re;
-      return maybeEmtpy((RegExp) r1.content);
+      return maybeEmtpy((RegExp) r1.content, macros);
     }
 
     case sym.CCLASS:
@@ -93,11 +90,11 @@ public final class SemCheck {
 
     case sym.BANG: {
       RegExp1 r1 = (RegExp1) re;
-      return !maybeEmtpy((RegExp) r1.content);
+      return !maybeEmtpy((RegExp) r1.content, macros);
     }
 
     case sym.MACROUSE:      
-      return maybeEmtpy(macros.getDefinition((String) ((RegExp1) re).content));
+      return maybeEmtpy(macros.getDefinition((String) ((RegExp1) re).content), macros);
     }
 
     throw new Error("Unkown expression type "+re.type+" in "+re);   //$NON-NLS-1$ //$NON-NLS-2$
@@ -109,16 +106,16 @@ public final class SemCheck {
    * 
    * Negation operators are treated as always variable length.   
    */
-  public static int length(RegExp re) {
+  public static int length(RegExp re, Macros macros) {
     RegExp2 r;
 
     switch (re.type) {      
 
     case sym.BAR: {
       r = (RegExp2) re;
-      int l1 = length(r.r1);
+      int l1 = length(r.r1, macros);
       if (l1 < 0) return -1;
-      int l2 = length(r.r2);
+      int l2 = length(r.r2, macros);
 
       if (l1 == l2) 
         return l1;
@@ -128,9 +125,9 @@ public final class SemCheck {
 
     case sym.CONCAT: {
       r = (RegExp2) re;
-      int l1 = length(r.r1);
+      int l1 = length(r.r1, macros);
       if (l1 < 0) return -1;
-      int l2 = length(r.r2);
+      int l2 = length(r.r2, macros);
       if (l2 < 0) return -1;
       return l1+l2;
     }
@@ -140,6 +137,9 @@ public final class SemCheck {
     case sym.QUESTION:
       return -1;
 
+    case sym.GROUP:
+      return length((RegExp) ((RegExp1) re).content, macros);
+
     case sym.CCLASS:
     case sym.CCLASSNOT:
     case sym.CHAR:
@@ -158,7 +158,7 @@ public final class SemCheck {
       return -1;
 
     case sym.MACROUSE:      
-      return length(macros.getDefinition((String) ((RegExp1) re).content));
+      return length(macros.getDefinition((String) ((RegExp1) re).content), macros);
     }
 
     throw new Error("Unkown expression type "+re.type+" in "+re);   //$NON-NLS-1$ //$NON-NLS-2$
@@ -170,21 +170,21 @@ public final class SemCheck {
    * 
    * Negation operators are treated as always variable length.   
    */
-  public static boolean isFiniteChoice(RegExp re) {
+  public static boolean isFiniteChoice(RegExp re, Macros macros) {
     RegExp2 r;
 
     switch (re.type) {      
 
     case sym.BAR: {
       r = (RegExp2) re;
-      return isFiniteChoice(r.r1) && isFiniteChoice(r.r2);
+      return isFiniteChoice(r.r1, macros) && isFiniteChoice(r.r2, macros);
     }
 
     case sym.CONCAT: {
       r = (RegExp2) re;
-      int l1 = length(r.r1);
+      int l1 = length(r.r1, macros);
       if (l1 < 0) return false;
-      int l2 = length(r.r2);
+      int l2 = length(r.r2, macros);
       return l2 >= 0;
     }
 
@@ -193,6 +193,9 @@ public final class SemCheck {
     case sym.QUESTION:
       return false;
 
+    case sym.GROUP:
+      return isFiniteChoice((RegExp) ((RegExp1) re).content, macros);
+
     case sym.CCLASS:
     case sym.CCLASSNOT:
     case sym.CHAR:
@@ -209,7 +212,7 @@ public final class SemCheck {
       return false;
 
     case sym.MACROUSE:      
-      return isFiniteChoice(macros.getDefinition((String) ((RegExp1) re).content));
+      return isFiniteChoice(macros.getDefinition((String) ((RegExp1) re).content), macros);
     }
 
     throw new Error("Unkown expression type "+re.type+" in "+re);   //$NON-NLS-1$ //$NON-NLS-2$
@@ -0,0 +1,355 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.net.*;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jflex.unicode.UnicodeProperties;
+
+/**
+ * A resident generator process (<code>jflex --server</code>) that
+ * serves the requests of {@link Client}s.
+ *
+ * The server listens on a port of the loopback interface. Each request
+ * is a JFlex commandline together with the working directory of the
+ * client. Since requests read and write files with the rights of the
+ * server, the server only accepts requests of the user that started it:
+ * at start it writes a random token to a file in the user's home
+ * directory that only the user can read (see {@link Client#tokenFile}), and
+ * requests without that token are dropped. Requests are served in
+ * parallel, each with its own
+ * {@link GeneratorContext}. Classes, the default skeleton and the
+ * Unicode properties of each Unicode version stay loaded between
+ * requests, so a request costs about as much as the generation itself.
+ *
+ * The server stops when no request arrived for the idle time. Clients
+ * that do not send their request within the request timeout are
+ * disconnected, so they cannot keep the server busy.
+ *
+ * Protocol (<code>DataInput</code>/<code>DataOutput</code> encoding):
+ *
+ * <pre>
+ *   request:  UTF token, UTF working directory, int argument count, UTF arguments
+ *   response: int exit status, int message length, message bytes
+ * </pre>
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+public final class Server {
+
+  /** the port the server listens on if no other port is given */
+  public static final int DEFAULT_PORT = 8317;
+
+  /** the idle time after which the server stops, in seconds */
+  public static final int DEFAULT_IDLE = 600;
+
+  /** the time a client has to send its request, in seconds */
+  public static final int REQUEST_TIMEOUT = 30;
+
+  /** the port to listen on, 0 for any free port */
+  private int port;
+
+  /** the idle time in milliseconds, 0 for no timeout */
+  private long idle;
+
+  /** the number of requests served in parallel */
+  private int threads;
+
+  /** the time a client has to send its request, in milliseconds */
+  private int timeout = REQUEST_TIMEOUT * 1000;
+
+  /** the server socket, after {@link #start} */
+  private ServerSocket socket;
+
+  /** the token clients must send, after {@link #start} */
+  private String token;
+
+  /** the file the token is stored in, after {@link #start} */
+  private File tokenFile;
+
+  /** the number of requests in progress */
+  private AtomicInteger active = new AtomicInteger();
+
+  /** time the last request finished */
+  private volatile long lastRequest;
+
+  /** Unicode properties by version, shared by all requests */
+  private Map<String, UnicodeProperties> unicodeProperties = new HashMap<String, UnicodeProperties>();
+
+
+  /**
+   * Creates a server.
+   *
+   * @param port     the port to listen on, 0 for any free port
+   * @param idle     the idle time after which the server stops, in seconds,
+   *                 0 for no timeout
+   * @param threads  the number of requests served in parallel
+   */
+  public Server(int port, int idle, int threads) {
+    this.port = port;
+    this.idle = idle * 1000L;
+    this.threads = threads;
+  }
+
+  /**
+   * Opens the server socket, writes the token file and loads the default
+   * skeleton and the Unicode properties of the default version.
+   *
+   * @throws IOException  if the socket cannot be opened or the token 
+   *                      file cannot be written
+   */
+  public void start() throws IOException {
+    socket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+    if (idle > 0) socket.setSoTimeout((int) Math.min(idle, 1000));
+
+    byte [] random = new byte [16];
+    new SecureRandom().nextBytes(random);
+    StringBuilder hex = new StringBuilder();
+    for (byte b : random) hex.append(Integer.toHexString(0x100 | (b & 0xFF)).substring(1));
+    token = hex.toString();
+
+    tokenFile = Client.tokenFile(getPort());
+    try {
+      writeToken(tokenFile, token);
+    }
+    catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+
+    Skeleton.getDefault();
+    GeneratorContext context = new GeneratorContext(new GeneratorOptions());
+    context.shareUnicodeProperties(unicodeProperties);
+    try {
+      context.getUnicodeProperties(null);
+    }
+    catch (UnicodeProperties.UnsupportedUnicodeVersionException e) {
+      // loaded on demand
+    }
+  }
+
+  /**
+   * @return the port the server listens on, after {@link #start}
+   */
+  public int getPort() {
+    return socket.getLocalPort();
+  }
+
+  /**
+   * Writes a token to a file that only the user can read. Access is 
+   * restricted while the file is still empty.
+   */
+  private static void writeToken(File file, String token) throws IOException {
+    file.delete();
+    new FileOutputStream(file).close();
+
+    // on file systems without these permissions (e.g. Windows),
+    // the access rights of the home directory protect the file
+    file.setReadable(false, false);
+    file.setWritable(false, false);
+    file.setExecutable(false, false);
+    file.setReadable(true, true);
+    file.setWritable(true, true);
+
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      out.write(token);
+      out.write('\n');
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Sets the time a client has to send its request.
+   *
+   * @param millis  the timeout in milliseconds
+   */
+  void setTimeout(int millis) {
+    this.timeout = millis;
+  }
+
+  /**
+   * Serves requests until the server has been idle for the idle time.
+   *
+   * @throws IOException  if the server socket fails
+   */
+  public void run() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    lastRequest = System.currentTimeMillis();
+
+    try {
+      while (true) {
+        final Socket client;
+        try {
+          client = socket.accept();
+        }
+        catch (SocketTimeoutException e) {
+          if (active.get() == 0 && System.currentTimeMillis() - lastRequest >= idle)
+            return;
+          continue;
+        }
+
+        active.incrementAndGet();
+        executor.execute(new Runnable() {
+          public void run() {
+            try {
+              serve(client);
+            }
+            finally {
+              lastRequest = System.currentTimeMillis();
+              active.decrementAndGet();
+            }
+          }
+        });
+      }
+    }
+    finally {
+      executor.shutdown();
+      socket.close();
+      tokenFile.delete();
+    }
+  }
+
+  /**
+   * Serves one request. Requests without the token of the server, and
+   * requests that do not arrive within the timeout, are dropped without
+   * an answer.
+   *
+   * @param client  the connection to the client
+   */
+  private void serve(Socket client) {
+    try {
+      try {
+        client.setSoTimeout(timeout);
+        DataInputStream in = new DataInputStream(
+          new BufferedInputStream(client.getInputStream()));
+
+        byte [] given = in.readUTF().getBytes("UTF-8");
+        if (!MessageDigest.isEqual(given, token.getBytes("UTF-8"))) return;
+
+        File base = new File(in.readUTF());
+        String [] argv = new String [in.readInt()];
+        for (int i = 0; i < argv.length; i++)
+          argv[i] = in.readUTF();
+
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        int status = generate(base, argv, messages);
+
+        DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(client.getOutputStream()));
+        out.writeInt(status);
+        out.writeInt(messages.size());
+        messages.writeTo(out);
+        out.flush();
+      }
+      finally {
+        client.close();
+      }
+    }
+    catch (IOException e) {
+      // the client went away, nobody to report to
+    }
+  }
+
+  /**
+   * Runs a commandline as {@link Main#main} would, with its own
+   * generator context.
+   *
+   * @param base      the working directory of the client
+   * @param argv      the commandline
+   * @param messages  where to write the messages of the run
+   * @return the exit status
+   */
+  int generate(File base, String [] argv, OutputStream messages) {
+    GeneratorContext context = new GeneratorContext(new GeneratorOptions());
+    context.setOutputStream(messages);
+    context.shareUnicodeProperties(unicodeProperties);
+
+    GeneratorContext previous = context.bind();
+    try {
+      List<File> files = Main.parseOptions(argv, base, context);
+
+      if (files.isEmpty()) {
+        Out.error(ErrorMessages.NO_INPUT_FILES);
+        return 1;
+      }
+
+      for (File file : files)
+        Main.generate(file, context);
+
+      return 0;
+    }
+    catch (GeneratorException e) {
+      Out.statistics();
+      return 1;
+    }
+    catch (SilentExit e) {
+      return 1;
+    }
+    catch (OutOfMemoryError e) {
+      Out.error(ErrorMessages.OUT_OF_MEMORY);
+      return 1;
+    }
+    finally {
+      context.unbind(previous);
+      context.out.flush();
+    }
+  }
+
+  /**
+   * Starts a server (<code>jflex --server</code>).
+   *
+   * @param argv  <code>--port &lt;port&gt;</code>, <code>--idle &lt;seconds&gt;</code>
+   *              and <code>--threads &lt;n&gt;</code>, all optional
+   */
+  public static void main(String argv[]) {
+    int port = DEFAULT_PORT;
+    int idle = DEFAULT_IDLE;
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    try {
+      for (int i = 0; i < argv.length; i++) {
+        if (argv[i].equals("--port") && i+1 < argv.length)
+          port = Integer.parseInt(argv[++i]);
+        else if (argv[i].equals("--idle") && i+1 < argv.length)
+          idle = Integer.parseInt(argv[++i]);
+        else if (argv[i].equals("--threads") && i+1 < argv.length)
+          threads = Math.max(1, Integer.parseInt(argv[++i]));
+        else
+          throw new NumberFormatException();
+      }
+    }
+    catch (NumberFormatException e) {
+      Out.error(ErrorMessages.SERVER_USAGE);
+      System.exit(1);
+    }
+
+    Server server = new Server(port, idle, threads);
+    try {
+      server.start();
+      Out.println(ErrorMessages.SERVER_LISTENING, String.valueOf(server.getPort()));
+      server.run();
+    }
+    catch (IOException e) {
+      Out.error(ErrorMessages.IO_ERROR, e.toString());
+      System.exit(1);
+    }
+  }
+}
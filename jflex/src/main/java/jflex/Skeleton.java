@@ -23,7 +23,9 @@ import java.util.ArrayList;
  *
  * There is a static part (the skeleton code) and state based iterator
  * part to this class. The iterator part is used to emit consecutive skeleton
- * sections to some <code>PrintWriter</code>. 
+ * sections to some <code>PrintWriter</code>. The static skeleton is the
+ * default for new generator runs, each run works on its own copy of the
+ * sections (see {@link GeneratorContext}).
  *
  * @see jflex.Emitter
  *
@@ -43,6 +45,9 @@ public class Skeleton {
 
   /** The skeleton */  
   public static String line[];
+
+  /** the sections of the default skeleton, read on first use */
+  private static String [] defaultSections;
   
   /** initialization */   
   static { readDefault(); }  
@@ -59,14 +64,31 @@ public class Skeleton {
    */
   private PrintWriter out;
 
+  /**
+   * The sections to emit
+   */
+  private String [] sections;
+
 
   /**
-   * Creates a new skeleton (iterator) instance. 
+   * Creates a new skeleton (iterator) instance for the static skeleton.
    *
    * @param   out  the writer to write the skeleton-parts to
    */
   public Skeleton(PrintWriter out) {
+    this(out, line);
+  }
+
+
+  /**
+   * Creates a new skeleton (iterator) instance. 
+   *
+   * @param   out       the writer to write the skeleton-parts to
+   * @param   sections  the skeleton sections to emit
+   */
+  public Skeleton(PrintWriter out, String [] sections) {
     this.out = out;
+    this.sections = sections;
   }
 
 
@@ -74,7 +96,7 @@ public class Skeleton {
    * Emits the next part of the skeleton
    */
   public void emitNext() {
-    out.print( line[pos++] );
+    out.print( sections[pos++] );
   }
 
 
@@ -84,9 +106,22 @@ public class Skeleton {
    * Replaces all occurences of " public " in the skeleton with " private ". 
    */
   public static void makePrivate() {
-    for (int i=0; i < line.length; i++) {
-      line[i] = replace(" public ", " private ", line[i]);   //$NON-NLS-1$ //$NON-NLS-2$
+    line = makePrivate(line);
+  } 
+
+
+  /**
+   * Returns a private copy of skeleton sections.
+   *
+   * @param sections  the sections, not modified
+   * @return the sections with " private " for all occurences of " public "
+   */
+  static String [] makePrivate(String [] sections) {
+    String [] result = new String [sections.length];
+    for (int i=0; i < sections.length; i++) {
+      result[i] = replace(" public ", " private ", sections[i]);   //$NON-NLS-1$ //$NON-NLS-2$
     }
+    return result;
   } 
 
 
@@ -96,6 +131,17 @@ public class Skeleton {
    * @param skeletonFile  the file to read (must be != null and readable)
    */
   public static void readSkelFile(File skeletonFile) {
+    line = readSections(skeletonFile);
+  }
+
+
+  /**
+   * Reads the sections of an external skeleton file.
+   * 
+   * @param skeletonFile  the file to read (must be != null and readable)
+   * @return the sections of the skeleton
+   */
+  static String [] readSections(File skeletonFile) {
     if (skeletonFile == null)
       throw new IllegalArgumentException("Skeleton file must not be null"); //$NON-NLS-1$
 
@@ -108,7 +154,12 @@ public class Skeleton {
 
     try {
       BufferedReader reader = new BufferedReader(new FileReader(skeletonFile));
-      readSkel(reader);
+      try {
+        return readSections(reader);
+      }
+      finally {
+        reader.close();
+      }
     }
     catch (IOException e) {
       Out.error(ErrorMessages.SKEL_IO_ERROR); 
@@ -125,6 +176,19 @@ public class Skeleton {
    * @throws GeneratorException if the number of skeleton sections does not match 
    */
   public static void readSkel(BufferedReader reader) throws IOException {
+    line = readSections(reader);
+  }
+
+
+  /**
+   * Reads the sections of a skeleton from a BufferedReader.
+   * 
+   * @param  reader             the reader to read from (must be != null)
+   * @return the sections of the skeleton
+   * @throws IOException        if an IO error occurs
+   * @throws GeneratorException if the number of skeleton sections does not match 
+   */
+  static String [] readSections(BufferedReader reader) throws IOException {
     List<String> lines = new ArrayList<String>();
     StringBuilder section = new StringBuilder();
 
@@ -147,9 +211,7 @@ public class Skeleton {
       throw new GeneratorException();
     }
 
-    line = new String[size];
-    for (int i = 0; i < size; i++)
-      line[i] = lines.get(i);
+    return lines.toArray(new String[size]);
   }
   
   /**
@@ -179,9 +241,26 @@ public class Skeleton {
 
   
   /**
-   * (Re)load the default skeleton. Looks in the current system class path.   
+   * (Re)load the default skeleton.
    */
   public static void readDefault() {
+    line = getDefault().clone();
+  }
+
+
+  /**
+   * Returns the sections of the default skeleton. Must not be modified.
+   */
+  static synchronized String [] getDefault() {
+    if (defaultSections == null) defaultSections = readDefaultSections();
+    return defaultSections;
+  }
+
+
+  /**
+   * Reads the default skeleton. Looks in the current system class path.   
+   */
+  private static String [] readDefaultSections() {
     ClassLoader l = Skeleton.class.getClassLoader();
     URL url;
     
@@ -202,8 +281,13 @@ public class Skeleton {
     }
     
     try {
-      InputStreamReader reader = new InputStreamReader(url.openStream());
-      readSkel(new BufferedReader(reader)); 
+      BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream()));
+      try {
+        return readSections(reader); 
+      }
+      finally {
+        reader.close();
+      }
     } catch (IOException e) {
       Out.error(ErrorMessages.SKEL_IO_ERROR_DEFAULT); 
       throw new GeneratorException();
@@ -0,0 +1,203 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Transition counts of a DFA, recorded by a scanner that was generated
+ * with option <code>--instrument</code>.
+ *
+ * A profile file is plain text. It starts with a header line
+ *
+ * <pre>
+ *   jflex-profile &lt;signature&gt; &lt;states&gt; &lt;columns&gt;
+ * </pre>
+ *
+ * that identifies the automaton (see {@link DFA#signature()}), followed
+ * by one line <code>&lt;state&gt; &lt;column&gt; &lt;count&gt;</code> for
+ * each transition that was taken. Columns are the columns of the
+ * generated transition table (see {@link DFA#columnMap()}). Profiles of
+ * several runs may be concatenated into one file, their counts are added.
+ * Empty lines and lines starting with <code>#</code> are ignored.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final public class StateProfile {
+
+  /** the automaton the profile is for */
+  private DFA dfa;
+
+  /** the column of each input character class */
+  private int [] colMap;
+
+  /** the number of columns of the transition table */
+  private int numCols;
+
+  /**
+   * <code>counts[s][c]</code> is how often state <code>s</code>
+   * was left with input column <code>c</code>.
+   */
+  long [][] counts;
+
+  /**
+   * Creates an empty profile for a DFA.
+   *
+   * @param dfa  the (minimized) DFA
+   */
+  public StateProfile(DFA dfa) {
+    this.dfa = dfa;
+    colMap = dfa.columnMap();
+
+    for (int i = 0; i < colMap.length; i++)
+      numCols = Math.max(numCols, colMap[i]+1);
+
+    counts = new long [dfa.numStates] [numCols];
+  }
+
+  /**
+   * Adds the counts of a profile file.
+   *
+   * @param file  the profile file
+   * @return <code>false</code>, iff the profile was recorded for a
+   *         different automaton (a warning has been issued then)
+   * @throws IOException  if the file cannot be read
+   */
+  public boolean read(File file) throws IOException {
+    Out.println(ErrorMessages.READING_PROFILE, file.toString());
+
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    boolean header = false;
+
+    try {
+      String line;
+      while ( (line = reader.readLine()) != null ) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) continue;
+
+        String [] field = line.split("\\s+");
+        if (field.length != 3 && field.length != 4) formatError(file);
+
+        try {
+          if (field[0].equals("jflex-profile")) {
+            if (field.length != 4) formatError(file);
+            header = true;
+
+            if ( Integer.parseInt(field[1]) != dfa.signature() ||
+                 Integer.parseInt(field[2]) != dfa.numStates ||
+                 Integer.parseInt(field[3]) != numCols ) {
+              Out.warning(ErrorMessages.get(ErrorMessages.PROFILE_MISMATCH, file.toString()));
+              return false;
+            }
+          }
+          else {
+            if (!header || field.length != 3) formatError(file);
+
+            int state = Integer.parseInt(field[0]);
+            int col = Integer.parseInt(field[1]);
+            long count = Long.parseLong(field[2]);
+
+            if (state < 0 || state >= dfa.numStates || col < 0 || col >= numCols || count < 0)
+              formatError(file);
+
+            counts[state][col]+= count;
+          }
+        }
+        catch (NumberFormatException e) {
+          formatError(file);
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+
+    return true;
+  }
+
+  private void formatError(File file) {
+    Out.error(ErrorMessages.PROFILE_FORMAT, file);
+    throw new GeneratorException();
+  }
+
+  /**
+   * Computes new state numbers such that frequently used states come
+   * first, each followed by its most frequent successor (if that has not
+   * been numbered yet). This keeps the table rows used in the inner loop
+   * of the scanner close together. States that were never left keep
+   * their relative order at the end.
+   *
+   * @return <code>newNumber</code>, the new number of each state
+   *         (see {@link DFA#renumber(int[])})
+   */
+  public int [] order() {
+    int numStates = dfa.numStates;
+
+    // one input character class of each column
+    int [] input = new int [numCols];
+    for (int i = colMap.length-1; i >= 0; i--)
+      input[colMap[i]] = i;
+
+    final long [] visits = new long [numStates];
+    Integer [] hot = new Integer [numStates];
+
+    for (int s = 0; s < numStates; s++) {
+      for (int c = 0; c < numCols; c++)
+        visits[s]+= counts[s][c];
+      hot[s] = s;
+    }
+
+    // stable, states with equal counts keep their order
+    Arrays.sort(hot, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return visits[b] < visits[a] ? -1 : visits[b] > visits[a] ? 1 : 0;
+      }
+    });
+
+    int [] newNumber = new int [numStates];
+    Arrays.fill(newNumber, -1);
+
+    long [] weight = new long [numStates];
+    int next = 0;
+
+    for (int h : hot) {
+      int s = h;
+
+      while (s >= 0 && newNumber[s] < 0) {
+        newNumber[s] = next++;
+
+        // the most frequent successor of s without number
+        for (int c = 0; c < numCols; c++) {
+          int t = dfa.table[s][input[c]];
+          if (t != DFA.NO_TARGET) weight[t]+= counts[s][c];
+        }
+
+        int best = -1;
+        for (int c = 0; c < numCols; c++) {
+          int t = dfa.table[s][input[c]];
+          if (t == DFA.NO_TARGET) continue;
+          if (newNumber[t] < 0 && weight[t] > 0 && (best < 0 || weight[t] > weight[best]))
+            best = t;
+        }
+
+        for (int c = 0; c < numCols; c++) {
+          int t = dfa.table[s][input[c]];
+          if (t != DFA.NO_TARGET) weight[t] = 0;
+        }
+
+        s = best;
+      }
+    }
+
+    return newNumber;
+  }
+}
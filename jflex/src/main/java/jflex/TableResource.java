@@ -0,0 +1,165 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2009  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Collects the packed tables of a scanner for option
+ * <code>%tableresource</code> and writes them to a binary file
+ * that the scanner reads as class path resource.
+ *
+ * The tables are the same character sequences a {@link PackEmitter}
+ * would otherwise put into string constants, and the character map
+ * (unpacked for 8 bit scanners, as count/value pairs otherwise).
+ * File format (version 1, big endian):
+ *
+ * <pre>
+ *   int    MAGIC
+ *   ushort VERSION
+ *   int    number of tables
+ *   for each table:
+ *     int    number of characters
+ *     char[] the characters
+ * </pre>
+ *
+ * The generated scanner compares the CRC32 checksum of the whole
+ * file to the checksum it was generated with.
+ *
+ * @author Gerwin Klein
+ * @version JFlex 1.5, $Revision$, $Date$
+ */
+final public class TableResource {
+
+  /** first four bytes of a table resource: "JFLX" */
+  public static final int MAGIC = 0x4A464C58;
+
+  /** version of the file format */
+  public static final int VERSION = 1;
+
+  /** the tables */
+  private List<StringBuilder> tables = new ArrayList<StringBuilder>();
+
+  /**
+   * Starts a new table.
+   *
+   * @return the index of the new table
+   */
+  public int newTable() {
+    tables.add(new StringBuilder());
+    return tables.size()-1;
+  }
+
+  /**
+   * Appends a character to a table.
+   *
+   * @param table  the index of the table
+   * @param c      the character
+   */
+  public void append(int table, char c) {
+    tables.get(table).append(c);
+  }
+
+  /**
+   * Returns the contents of a table.
+   */
+  public String get(int table) {
+    return tables.get(table).toString();
+  }
+
+  /**
+   * Returns the number of tables.
+   */
+  public int size() {
+    return tables.size();
+  }
+
+  /**
+   * Returns the file contents.
+   */
+  public byte [] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    try {
+      out.writeInt(MAGIC);
+      out.writeShort(VERSION);
+      out.writeInt(tables.size());
+
+      for (StringBuilder table : tables) {
+        out.writeInt(table.length());
+        out.writeChars(table.toString());
+      }
+
+      out.close();
+    }
+    catch (IOException e) {
+      // cannot happen for a ByteArrayOutputStream
+      throw new RuntimeException(e);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Returns the CRC32 checksum of the file contents.
+   */
+  public long checksum() {
+    CRC32 crc = new CRC32();
+    crc.update(toBytes());
+    return crc.getValue();
+  }
+
+  /**
+   * Writes the tables to a file.
+   *
+   * @param file  the file to write to
+   * @throws IOException  if the file cannot be written
+   */
+  public void write(File file) throws IOException {
+    Out.println(ErrorMessages.WRITING_TABLES, file.toString());
+
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(toBytes());
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads a table resource file.
+   *
+   * @param in  the contents of the file
+   * @return the tables
+   * @throws IOException  if the contents is not a table resource
+   */
+  public static TableResource read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+
+    if ( data.readInt() != MAGIC || data.readUnsignedShort() != VERSION )
+      throw new IOException("not a JFlex table resource");
+
+    TableResource result = new TableResource();
+    int numTables = data.readInt();
+
+    for (int i = 0; i < numTables; i++) {
+      int table = result.newTable();
+      int length = data.readInt();
+      for (int j = 0; j < length; j++)
+        result.append(table, data.readChar());
+    }
+
+    return result;
+  }
+}
@@ -13,7 +13,9 @@ package jflex.anttask;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.BuildException;
 
+import jflex.GeneratorContext;
 import jflex.Main;
+import jflex.Manifest;
 import jflex.Options;
 
 import java.io.*;
@@ -37,6 +39,9 @@ public class JFlexTask extends Task {
 	/** the actual output directory (outputDir = destinationDir + package)) */
 	private File outputDir = null;
 
+  /** decide by content hashes instead of time stamps (see {@link Manifest}) */
+  private boolean incremental;
+
   public JFlexTask() {
     // ant default is different from the rest of JFlex
     setVerbose(false);
@@ -56,7 +61,19 @@ public class JFlexTask extends Task {
         normalizeOutdir();
         File destFile = new File(outputDir, className + ".java");
         
-        if (inputFile.lastModified() > destFile.lastModified()) {      
+        if (incremental) {
+          GeneratorContext context = new GeneratorContext();
+          context.options.keep_unchanged = true;
+          Manifest manifest = new Manifest(Manifest.fileFor(destFile), inputFile, context);
+
+          if (!manifest.isUpToDate()) {
+            Main.generate(inputFile, context);
+            manifest.write();
+            if (!Options.verbose)
+              System.out.println("Generated: " + destFile.getName());
+          }
+        }
+        else if (inputFile.lastModified() > destFile.lastModified()) {      
           Main.generate(inputFile);      
           if (!Options.verbose)
             System.out.println("Generated: " + destFile.getName());
@@ -237,6 +254,39 @@ public class JFlexTask extends Task {
     }    
   }
 
+  public void setComb(boolean b) {
+    if (b) {
+      Options.gen_method = Options.COMB;
+    }
+    else {
+      Options.gen_method = Options.PACK;
+    }
+  }
+
+  public void setInstrument(boolean b) {
+    Options.instrument = b;
+  }
+
+  public void setUseprofile(File profile) {
+    Options.profile = profile;
+  }
+
+  public void setCache(File dir) {
+    Options.cache = dir;
+  }
+
+  public void setMaxstates(int n) {
+    Options.maxStates = n;
+  }
+
+  public void setMaxmemory(int megabytes) {
+    Options.maxMemory = megabytes;
+  }
+
+  public void setMaxtime(int seconds) {
+    Options.maxTime = seconds;
+  }
+
   public void setDot(boolean b) {
     Options.dot = b;
   }
@@ -248,4 +298,12 @@ public class JFlexTask extends Task {
   public void setJLex(boolean b) {    
     Options.jlex = b;
   }
+
+  public void setIncremental(boolean b) {
+    incremental = b;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
 }
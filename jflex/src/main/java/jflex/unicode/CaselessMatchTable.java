@@ -0,0 +1,160 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex Unicode Properties                                                *
+ * Copyright (c) 2008 Steve Rowe <steve_rowe@users.sf.net>                 *
+ *                                                                         *
+ *                                                                         *
+ * This program is free software; you can redistribute it and/or modify    *
+ * it under the terms of the GNU General Public License. See the file      *
+ * COPYRIGHT for more information.                                         *
+ *                                                                         *
+ * This program is distributed in the hope that it will be useful,         *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License along *
+ * with this program; if not, write to the Free Software Foundation, Inc., *
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA                 *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex.unicode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jflex.IntCharSet;
+import jflex.Interval;
+
+
+/**
+ * The caseless match partitions of one Unicode version, as sorted ranges
+ * of characters whose case-insensitive equivalents all lie at the same
+ * distances (e.g. 'A'-'Z' at +32, 'a'-'j' at -32).
+ *
+ * A whole interval of characters is closed under case-insensitivity by
+ * shifting its overlap with each range, instead of looking up each
+ * character on its own. Only characters with caseless matches take up
+ * space, one range for each run of characters with equal distances.
+ */
+final class CaselessMatchTable {
+
+  /** first and last character of each range, sorted and disjoint */
+  private final int [] starts;
+  private final int [] ends;
+
+  /** the distances of the equivalents of the characters in each range */
+  private final int [][] deltas;
+
+  /** the match sets returned so far, by smallest member */
+  private final ConcurrentMap<Integer,IntCharSet> matches
+    = new ConcurrentHashMap<Integer,IntCharSet>();
+
+
+  /**
+   * @param partitions  the characters of each caseless match partition,
+   *                    disjoint, each partition in ascending order
+   */
+  CaselessMatchTable(List<int []> partitions) {
+    // the distances of each character with caseless matches
+    SortedMap<Integer,int []> chars = new TreeMap<Integer,int []>();
+    for (int [] partition : partitions) {
+      for (int c : partition) {
+        int [] d = new int [partition.length - 1];
+        int n = 0;
+        for (int other : partition)
+          if (other != c) d[n++] = other - c;
+        chars.put(c, d);
+      }
+    }
+
+    List<int []> ranges = new ArrayList<int []>();
+    List<int []> rangeDeltas = new ArrayList<int []>();
+    for (Map.Entry<Integer,int []> entry : chars.entrySet()) {
+      int c = entry.getKey();
+      int [] d = entry.getValue();
+      int last = ranges.size() - 1;
+      if (last >= 0 && ranges.get(last)[1] == c - 1
+          && Arrays.equals(rangeDeltas.get(last), d)) {
+        ranges.get(last)[1] = c;
+      }
+      else {
+        ranges.add(new int [] { c, c });
+        rangeDeltas.add(d);
+      }
+    }
+
+    starts = new int [ranges.size()];
+    ends = new int [ranges.size()];
+    deltas = new int [ranges.size()][];
+    for (int i = 0; i < starts.length; i++) {
+      starts[i] = ranges.get(i)[0];
+      ends[i] = ranges.get(i)[1];
+      deltas[i] = rangeDeltas.get(i);
+    }
+  }
+
+  /**
+   * @return the number of ranges
+   */
+  int size() {
+    return starts.length;
+  }
+
+  /**
+   * @return the index of the first range that ends at or after c
+   */
+  private int find(int c) {
+    int lo = 0;
+    int hi = starts.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (ends[mid] < c) lo = mid + 1; else hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * Returns all characters that are case-insensitively equivalent to
+   * the given character, including the character itself. The same set
+   * is returned for all characters of a partition.
+   *
+   * @return the equivalent characters, <code>null</code> if c has no
+   *         caseless matches
+   */
+  IntCharSet getMatches(char c) {
+    int i = find(c);
+    if (i == starts.length || starts[i] > c) return null;
+
+    int smallest = c;
+    for (int d : deltas[i])
+      smallest = Math.min(smallest, c + d);
+
+    IntCharSet result = matches.get(smallest);
+    if (result != null) return result;
+
+    result = new IntCharSet(c);
+    for (int d : deltas[i])
+      result.add((char) (c + d));
+
+    IntCharSet other = matches.putIfAbsent(smallest, result);
+    return other == null ? result : other;
+  }
+
+  /**
+   * Adds all characters that are case-insensitively equivalent to some
+   * character of the given interval to a set.
+   *
+   * @param interval  the characters to find equivalents of
+   * @param set       the set to add the equivalents to
+   */
+  void addMatches(Interval interval, IntCharSet set) {
+    for (int i = find(interval.start); i < starts.length && starts[i] <= interval.end; i++) {
+      int start = Math.max(starts[i], interval.start);
+      int end = Math.min(ends[i], interval.end);
+      for (int d : deltas[i])
+        set.add(new Interval((char) (start + d), (char) (end + d)));
+    }
+  }
+}
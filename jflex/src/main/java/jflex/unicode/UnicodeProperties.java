@@ -20,20 +20,28 @@
 
 package jflex.unicode;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import jflex.IntCharSet;
 import jflex.Interval;
-import jflex.unicode.data.*;
 
 
-
-/**
- * This class was automatically generated by jflex-unicode-maven-plugin based
- * on data files downloaded from unicode.org on 2010-10-11.
+
+/**
+ * This class was automatically generated by jflex-unicode-maven-plugin based
+ * on data files downloaded from unicode.org on 2010-10-11.
  */
 public class UnicodeProperties {
 
@@ -68,12 +76,10 @@ public class UnicodeProperties {
 
   private static final Pattern WORD_SEP_PATTERN = Pattern.compile("[-_\\s()]");
 
-  private int maximumCodePoint;
-  private Map<String,IntCharSet> propertyValueIntervals
-    = new HashMap<String,IntCharSet>();
-  private String caselessMatchPartitions;
-  private int caselessMatchPartitionSize;
-  private IntCharSet caselessMatches[];
+  /** The data of all Unicode versions bound so far, by major.minor version */
+  private static final Map<String,Data> versions = new HashMap<String,Data>();
+
+  private Data data;
 
   /**
    * Unpacks the Unicode data corresponding to the default Unicode version:
@@ -104,7 +110,7 @@ public class UnicodeProperties {
    * @return the maximum code point for the selected Unicode version.
    */
   public int getMaximumCodePoint() {
-    return maximumCodePoint;
+    return data.maximumCodePoint;
   }
 
   /**
@@ -114,10 +120,12 @@ public class UnicodeProperties {
    * @param propertyValue The Unicode property or property value (or alias for
    *  one of these) for which to return the corresponding character intervals.
    * @return The character interval set corresponding to the given property
-   *  value, if a match exists, and null otherwise.
+   *  value, if a match exists, and null otherwise. The set is shared and
+   *  must not be modified.
    */
   public IntCharSet getIntCharSet(String propertyValue) {
-    return propertyValueIntervals.get(normalize(propertyValue));
+    Integer set = data.names.get(normalize(propertyValue));
+    return null == set ? null : data.getSet(set);
   }
 
   /**
@@ -128,7 +136,7 @@ public class UnicodeProperties {
    *  version
    */
   public Set<String> getPropertyValues() {
-    return propertyValueIntervals.keySet();
+    return Collections.unmodifiableSet(data.names.keySet());
   }
 
   /**
@@ -136,43 +144,30 @@ public class UnicodeProperties {
    * that are case-insensitively equivalent to the given character,
    * including the given character itself.
    * <p/>
-   * The first call to this method lazily initializes the backing data.
+   * The first call to this method or to
+   * {@link #addCaselessMatches(Interval,IntCharSet)} lazily initializes the
+   * backing data.
    *
    * @param c The character for which to return case-insensitive equivalents.
    * @return All case-insensitively equivalent characters, or null
    *  if the given character is case-insensitively equivalent only to itself.
+   *  The set is shared and must not be modified.
    */
   public IntCharSet getCaselessMatches(char c) {
-    if (null == caselessMatches)
-      initCaselessMatches();
-    return caselessMatches[c];
+    return data.getCaselessMatches().getMatches(c);
   }
 
   /**
-   * Unpacks the caseless match data. Called from
-   * {@link #getCaselessMatches(char)} to lazily initialize.
+   * Adds all characters that are case-insensitively equivalent to some
+   * character in the given interval to the given set. Whole ranges of
+   * characters with equivalents at the same distance are added at once.
+   *
+   * @param interval The characters for which to add case-insensitive
+   *  equivalents.
+   * @param set The set to add the equivalents to.
    */
-  private void initCaselessMatches() {
-    caselessMatches = new IntCharSet[maximumCodePoint + 1];
-    int[] members = new int[caselessMatchPartitionSize];
-    for (int index = 0 ; index < caselessMatchPartitions.length() ; ) {
-      IntCharSet partition = new IntCharSet();
-      for (int n = 0 ; n < caselessMatchPartitionSize ; ++n) {
-        int c = caselessMatchPartitions.codePointAt(index);
-        index += (c <= 0xFFFF ? 1 : 2);
-        members[n] = c;
-        //TODO: Remove BMP boundary condition
-        if (c > 0 && c <= 0xFFFF)
-          //TODO: Change the character type from char to int
-          partition.add((char)c);
-      }
-      if (partition.containsElements()) {
-        for (int n = 0 ; n < caselessMatchPartitionSize ; ++n) {
-          if (members[n] > 0)
-            caselessMatches[members[n]] = partition;
-        }
-      }
-    }
+  public void addCaselessMatches(Interval interval, IntCharSet set) {
+    data.getCaselessMatches().addMatches(interval, set);
   }
 
   /**
@@ -185,124 +180,98 @@ public class UnicodeProperties {
    */
   private void init(String version) throws UnsupportedUnicodeVersionException {
 
-    if (version.equals("1.1") || version.equals("1.1.5")) {
-      bind(Unicode_1_1.propertyValues, Unicode_1_1.intervals, Unicode_1_1.propertyValueAliases,
-         Unicode_1_1.maximumCodePoint, Unicode_1_1.caselessMatchPartitions, Unicode_1_1.caselessMatchPartitionSize);
-    } else if (version.equals("2") || version.equals("2.0") || version.equals("2.0.14")) {
-      bind(Unicode_2_0.propertyValues, Unicode_2_0.intervals, Unicode_2_0.propertyValueAliases,
-         Unicode_2_0.maximumCodePoint, Unicode_2_0.caselessMatchPartitions, Unicode_2_0.caselessMatchPartitionSize);
-    } else if (version.equals("2.1") || version.equals("2.1.9")) {
-      bind(Unicode_2_1.propertyValues, Unicode_2_1.intervals, Unicode_2_1.propertyValueAliases,
-         Unicode_2_1.maximumCodePoint, Unicode_2_1.caselessMatchPartitions, Unicode_2_1.caselessMatchPartitionSize);
-    } else if (version.equals("3") || version.equals("3.0") || version.equals("3.0.1")) {
-      bind(Unicode_3_0.propertyValues, Unicode_3_0.intervals, Unicode_3_0.propertyValueAliases,
-         Unicode_3_0.maximumCodePoint, Unicode_3_0.caselessMatchPartitions, Unicode_3_0.caselessMatchPartitionSize);
-    } else if (version.equals("3.1") || version.equals("3.1.0")) {
-      bind(Unicode_3_1.propertyValues, Unicode_3_1.intervals, Unicode_3_1.propertyValueAliases,
-         Unicode_3_1.maximumCodePoint, Unicode_3_1.caselessMatchPartitions, Unicode_3_1.caselessMatchPartitionSize);
-    } else if (version.equals("3.2") || version.equals("3.2.0")) {
-      bind(Unicode_3_2.propertyValues, Unicode_3_2.intervals, Unicode_3_2.propertyValueAliases,
-         Unicode_3_2.maximumCodePoint, Unicode_3_2.caselessMatchPartitions, Unicode_3_2.caselessMatchPartitionSize);
-    } else if (version.equals("4") || version.equals("4.0") || version.equals("4.0.1")) {
-      bind(Unicode_4_0.propertyValues, Unicode_4_0.intervals, Unicode_4_0.propertyValueAliases,
-         Unicode_4_0.maximumCodePoint, Unicode_4_0.caselessMatchPartitions, Unicode_4_0.caselessMatchPartitionSize);
-    } else if (version.equals("4.1") || version.equals("4.1.0")) {
-      bind(Unicode_4_1.propertyValues, Unicode_4_1.intervals, Unicode_4_1.propertyValueAliases,
-         Unicode_4_1.maximumCodePoint, Unicode_4_1.caselessMatchPartitions, Unicode_4_1.caselessMatchPartitionSize);
-    } else if (version.equals("5") || version.equals("5.0") || version.equals("5.0.0")) {
-      bind(Unicode_5_0.propertyValues, Unicode_5_0.intervals, Unicode_5_0.propertyValueAliases,
-         Unicode_5_0.maximumCodePoint, Unicode_5_0.caselessMatchPartitions, Unicode_5_0.caselessMatchPartitionSize);
-    } else if (version.equals("5.1") || version.equals("5.1.0")) {
-      bind(Unicode_5_1.propertyValues, Unicode_5_1.intervals, Unicode_5_1.propertyValueAliases,
-         Unicode_5_1.maximumCodePoint, Unicode_5_1.caselessMatchPartitions, Unicode_5_1.caselessMatchPartitionSize);
-    } else if (version.equals("5.2") || version.equals("5.2.0")) {
-      bind(Unicode_5_2.propertyValues, Unicode_5_2.intervals, Unicode_5_2.propertyValueAliases,
-         Unicode_5_2.maximumCodePoint, Unicode_5_2.caselessMatchPartitions, Unicode_5_2.caselessMatchPartitionSize);
-    } else if (version.equals("6") || version.equals("6.0") || version.equals("6.0.0")) {
-      bind(Unicode_6_0.propertyValues, Unicode_6_0.intervals, Unicode_6_0.propertyValueAliases,
-         Unicode_6_0.maximumCodePoint, Unicode_6_0.caselessMatchPartitions, Unicode_6_0.caselessMatchPartitionSize);
-    } else {
-      throw new UnsupportedUnicodeVersionException();
-    }
+    if (version.equals("1.1") || version.equals("1.1.5")) {
+      bind("1.1", "Unicode_1_1.bin");
+    } else if (version.equals("2") || version.equals("2.0") || version.equals("2.0.14")) {
+      bind("2.0", "Unicode_2_0.bin");
+    } else if (version.equals("2.1") || version.equals("2.1.9")) {
+      bind("2.1", "Unicode_2_1.bin");
+    } else if (version.equals("3") || version.equals("3.0") || version.equals("3.0.1")) {
+      bind("3.0", "Unicode_3_0.bin");
+    } else if (version.equals("3.1") || version.equals("3.1.0")) {
+      bind("3.1", "Unicode_3_1.bin");
+    } else if (version.equals("3.2") || version.equals("3.2.0")) {
+      bind("3.2", "Unicode_3_2.bin");
+    } else if (version.equals("4") || version.equals("4.0") || version.equals("4.0.1")) {
+      bind("4.0", "Unicode_4_0.bin");
+    } else if (version.equals("4.1") || version.equals("4.1.0")) {
+      bind("4.1", "Unicode_4_1.bin");
+    } else if (version.equals("5") || version.equals("5.0") || version.equals("5.0.0")) {
+      bind("5.0", "Unicode_5_0.bin");
+    } else if (version.equals("5.1") || version.equals("5.1.0")) {
+      bind("5.1", "Unicode_5_1.bin");
+    } else if (version.equals("5.2") || version.equals("5.2.0")) {
+      bind("5.2", "Unicode_5_2.bin");
+    } else if (version.equals("6") || version.equals("6.0") || version.equals("6.0.0")) {
+      bind("6.0", "Unicode_6_0.bin");
+    } else {
+      throw new UnsupportedUnicodeVersionException();
+    }
 
   }
 
   /**
-   * Unpacks data for the selected Unicode version, populating
-   * {@link #propertyValueIntervals}.
+   * Binds the data of the selected Unicode version. The data of each version
+   * is read once per process and shared by all instances; the character
+   * intervals of a property value are only unpacked when it is requested.
    *
-   * @param propertyValues The list of property values, in same order as the
-   *  packed data corresponding to them, in the given intervals, for the
-   *  selected Unicode version.
-   * @param intervals The packed character intervals corresponding to and in the
-   *  same order as the given propertyValues, for the selected Unicode version.
-   * @param propertyValueAliases Key/value pairs mapping property value aliases
-   *  to property values, for the selected Unicode version.
-   * @param maximumCodePoint The maximum code point for the selected Unicode
-   *  version.
-   * @param caselessMatchPartitions The packed caseless match partition data for
-   *  the selected Unicode version
-   * @param caselessMatchPartitionSize The partition data record length (the
-   *  maximum number of elements in a caseless match partition) for the selected
-   *  Unicode version.
+   * @param version The major.minor version number of the selected version.
+   * @param resource The name of the binary data resource of the selected
+   *  version, in the data/ directory next to this class.
    */
-  private void bind(String[] propertyValues, String[] intervals,
-                    String[] propertyValueAliases, int maximumCodePoint,
-                    String caselessMatchPartitions, int caselessMatchPartitionSize) {
-    // IntCharSet caselessMatches[] is lazily initialized - don't unpack here
-    this.caselessMatchPartitions = caselessMatchPartitions;
-    this.caselessMatchPartitionSize = caselessMatchPartitionSize;
-    this.maximumCodePoint = maximumCodePoint;
-    for (int n = 0 ; n < propertyValues.length ; ++n) {
-      String propertyValue = propertyValues[n];
-      String propertyIntervals = intervals[n];
-      IntCharSet set = new IntCharSet();
-      for (int index = 0 ; index < propertyIntervals.length() ; ) {
-        int start = propertyIntervals.codePointAt(index);
-        index += (start <= 0xFFFF ? 1 : 2);
-        int end = propertyIntervals.codePointAt(index);
-        index += (end <= 0xFFFF ? 1 : 2);
-        //TODO: Remove BMP boundary condition
-        if (start <= 0xFFFF) {
-          //TODO: Change the character type from char to int and remove boundary condition
-          set.add(new Interval((char)start, (char)Math.min(end, 0xFFFF)));
-        }
-      }
-      propertyValueIntervals.put(propertyValue, set);
-      if (2 == propertyValue.length()) {
-        String singleLetter = propertyValue.substring(0, 1);
-        IntCharSet singleLetterPropValueSet
-          = propertyValueIntervals.get(singleLetter);
-        if (null == singleLetterPropValueSet) {
-          singleLetterPropValueSet = new IntCharSet();
-          propertyValueIntervals.put(singleLetter, singleLetterPropValueSet);
+  private void bind(String version, String resource) {
+    synchronized (versions) {
+      data = versions.get(version);
+      if (null == data) {
+        try {
+          data = new Data(readResource("data/" + resource));
+        } catch (IOException e) {
+          throw new IllegalStateException
+            ("Cannot read Unicode " + version + " data: " + e.getMessage());
         }
-        singleLetterPropValueSet.add(set);
+        versions.put(version, data);
       }
     }
-    for (int n = 0 ; n < propertyValueAliases.length ; n += 2) {
-      String alias = propertyValueAliases[n];
-      String propertyValue = propertyValueAliases[n + 1];
-      IntCharSet targetSet = propertyValueIntervals.get(propertyValue);
-      if (null != targetSet) {
-        propertyValueIntervals.put(alias, targetSet);
-      }
+  }
+
+  /**
+   * Reads a resource next to this class completely.
+   *
+   * @param name The name of the resource
+   * @return The contents of the resource
+   * @throws IOException If the resource is missing or cannot be read
+   */
+  private static byte[] readResource(String name) throws IOException {
+    InputStream in = UnicodeProperties.class.getResourceAsStream(name);
+    if (null == in)
+      throw new IOException("missing resource " + name);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int bytesRead;
+      while ((bytesRead = in.read(buf)) > 0)
+        out.write(buf, 0, bytesRead);
+      return out.toByteArray();
+    } finally {
+      in.close();
     }
-    bindInvariantIntervals();
   }
 
   /**
-   * Adds intervals for \p{ASCII} and \p{Any} to {@link #propertyValueIntervals}.
+   * Reads a number in the variable length format of the data resources:
+   * 7 bits per byte, least significant group first, with the high bit
+   * set on all but the last byte.
    */
-  private void bindInvariantIntervals() {
-    //TODO: Change the character type from char to int
-    IntCharSet asciiSet = new IntCharSet(new Interval('\000', '\u007F'));
-    propertyValueIntervals.put(normalize("ASCII"), asciiSet);
-
-    //TODO: Change the character type from char to int
-    //TODO: End of interval should be maximumCodePoint instead of '\uFFFF'
-    IntCharSet anySet = new IntCharSet(new Interval('\000', '\uFFFF'));
-    propertyValueIntervals.put(normalize("Any"), anySet);
+  private static int readNumber(DataInputStream in) throws IOException {
+    int number = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.readUnsignedByte();
+      number |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (0 != (b & 0x80));
+    return number;
   }
 
   /**
@@ -312,13 +281,214 @@ public class UnicodeProperties {
    * @param identifier The identifier to normalize
    * @return The normalized identifier
    */
-  private String normalize(String identifier) {
+  private static String normalize(String identifier) {
     if (null == identifier)
       return identifier;
     Matcher matcher = WORD_SEP_PATTERN.matcher(identifier.toLowerCase());
     return matcher.replaceAll("").replace(':', '=');
   }
 
+  /**
+   * The data of one Unicode version: the names of all property values and
+   * their aliases, and the packed character intervals of each. Instances are
+   * shared by all {@link UnicodeProperties} of the same version, by all
+   * threads. Names are resolved without unpacking any intervals; the sets are
+   * unpacked on first request and never modified afterwards.
+   * <p/>
+   * The data is read from a binary resource written by
+   * jflex-unicode-maven-plugin: a header with the maximum code point, the
+   * sorted property values with the number of their interval run, the
+   * aliases, and the byte length of each run; then the runs of
+   * delta-encoded intervals, shared by property values with equal
+   * intervals; then the caseless match partitions.
+   */
+  private static final class Data {
+    /** The first four bytes of each resource: "JFU" and the format version */
+    private static final int MAGIC = 0x4A465501;
+
+    private final int maximumCodePoint;
+
+    /** the resource; runs and partitions are unpacked from it on request */
+    private final byte[] bytes;
+
+    /** the number of the run of each property value */
+    private final int[] valueRuns;
+
+    /** the offset of each run in bytes, and the end of the last run */
+    private final int[] runOffsets;
+
+    /**
+     * Maps each normalized property value, alias and single letter general
+     * category to the number of its set. Sets below valueRuns.length are
+     * property values, the others unions (single letter categories) or
+     * fixed sets (\p{ASCII}, \p{Any}).
+     */
+    private final Map<String,Integer> names = new HashMap<String,Integer>();
+
+    /** the sets united in each union set, null for the others */
+    private final List<List<Integer>> unions = new ArrayList<List<Integer>>();
+
+    private final AtomicReferenceArray<IntCharSet> sets;
+
+    private volatile CaselessMatchTable caselessMatches;
+
+    Data(byte[] bytes) throws IOException {
+      // caselessMatches is lazily initialized - don't unpack here
+      this.bytes = bytes;
+      DataInputStream in = open(0, bytes.length);
+      if (MAGIC != in.readInt())
+        throw new IOException("unknown format");
+      maximumCodePoint = readNumber(in);
+
+      int numPropertyValues = readNumber(in);
+      valueRuns = new int[numPropertyValues];
+      for (int n = 0 ; n < numPropertyValues ; ++n)
+        unions.add(null);
+      for (int n = 0 ; n < numPropertyValues ; ++n) {
+        String propertyValue = in.readUTF();
+        valueRuns[n] = readNumber(in);
+        names.put(propertyValue, n);
+        if (2 == propertyValue.length()) {
+          String singleLetter = propertyValue.substring(0, 1);
+          Integer singleLetterSet = names.get(singleLetter);
+          if (null == singleLetterSet) {
+            singleLetterSet = newSet(new ArrayList<Integer>());
+            names.put(singleLetter, singleLetterSet);
+          }
+          unions.get(singleLetterSet).add(n);
+        }
+      }
+      int numAliases = readNumber(in);
+      for (int n = 0 ; n < numAliases ; ++n) {
+        String alias = in.readUTF();
+        String propertyValue = in.readUTF();
+        Integer targetSet = names.get(propertyValue);
+        if (null != targetSet) {
+          names.put(alias, targetSet);
+        }
+      }
+
+      int numRuns = readNumber(in);
+      runOffsets = new int[numRuns + 1];
+      int[] lengths = new int[numRuns];
+      for (int n = 0 ; n < numRuns ; ++n)
+        lengths[n] = readNumber(in);
+      runOffsets[0] = bytes.length - in.available();
+      for (int n = 0 ; n < numRuns ; ++n)
+        runOffsets[n + 1] = runOffsets[n] + lengths[n];
+      if (runOffsets[numRuns] > bytes.length)
+        throw new IOException("truncated");
+
+      //TODO: Change the character type from char to int
+      int ascii = newSet(null);
+      names.put(normalize("ASCII"), ascii);
+      //TODO: End of interval should be maximumCodePoint instead of '\uFFFF'
+      int any = newSet(null);
+      names.put(normalize("Any"), any);
+
+      sets = new AtomicReferenceArray<IntCharSet>(unions.size());
+      sets.set(ascii, new IntCharSet(new Interval('\000', '\u007F')));
+      sets.set(any, new IntCharSet(new Interval('\000', '\uFFFF')));
+    }
+
+    /**
+     * @param members the sets united in the new set, null for none
+     * @return the number of the new set
+     */
+    private int newSet(List<Integer> members) {
+      unions.add(members);
+      return unions.size() - 1;
+    }
+
+    /**
+     * @return a stream over the resource from start (inclusive) to
+     *  end (exclusive)
+     */
+    private DataInputStream open(int start, int end) {
+      return new DataInputStream
+        (new ByteArrayInputStream(bytes, start, end - start));
+    }
+
+    /**
+     * Returns the set with the given number, unpacking it on first request.
+     * Concurrent first requests may both unpack the set, but only one of
+     * the results is ever returned.
+     */
+    IntCharSet getSet(int n) {
+      IntCharSet set = sets.get(n);
+      if (null != set)
+        return set;
+
+      set = new IntCharSet();
+      List<Integer> members = unions.get(n);
+      if (null != members) {
+        for (int member : members)
+          set.add(getSet(member));
+      } else {
+        int run = valueRuns[n];
+        DataInputStream in = open(runOffsets[run], runOffsets[run + 1]);
+        try {
+          int next = 0;
+          while (in.available() > 0) {
+            int delta = readNumber(in);
+            int start = next + ((delta >>> 1) ^ -(delta & 1));
+            int end = start + readNumber(in);
+            next = end + 1;
+            //TODO: Remove BMP boundary condition
+            if (start <= 0xFFFF) {
+              //TODO: Change the character type from char to int and remove boundary condition
+              set.add(new Interval((char)start, (char)Math.min(end, 0xFFFF)));
+            }
+          }
+        } catch (IOException e) {
+          throw new IllegalStateException("Corrupt Unicode data: " + e);
+        }
+      }
+      sets.compareAndSet(n, null, set);
+      return sets.get(n);
+    }
+
+    /**
+     * Returns the caseless match data, unpacking it on first request.
+     * The data is only published when it is complete, so it can be
+     * shared by concurrent generator runs.
+     *
+     * @return the caseless match data
+     */
+    CaselessMatchTable getCaselessMatches() {
+      CaselessMatchTable caselessMatches = this.caselessMatches;
+      if (null != caselessMatches)
+        return caselessMatches;
+
+      List<int[]> partitions = new ArrayList<int[]>();
+      DataInputStream in = open(runOffsets[runOffsets.length - 1], bytes.length);
+      try {
+        int numPartitions = readNumber(in);
+        for (int p = 0 ; p < numPartitions ; ++p) {
+          int[] members = new int[readNumber(in)];
+          int numMembers = 0;
+          int c = 0;
+          for (int n = 0 ; n < members.length ; ++n) {
+            c += readNumber(in);
+            //TODO: Remove BMP boundary condition
+            if (c > 0 && c <= 0xFFFF)
+              members[numMembers++] = c;
+          }
+          if (numMembers > 0) {
+            int[] partition = new int[numMembers];
+            System.arraycopy(members, 0, partition, 0, numMembers);
+            partitions.add(partition);
+          }
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException("Corrupt Unicode data: " + e);
+      }
+      caselessMatches = new CaselessMatchTable(partitions);
+      this.caselessMatches = caselessMatches;
+      return caselessMatches;
+    }
+  }
+
   public class UnsupportedUnicodeVersionException extends Exception {
 	private static final long serialVersionUID = -1718158223161422981L;
 
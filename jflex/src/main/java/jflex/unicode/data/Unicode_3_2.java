@@ -1,3353 +0,0 @@
-package jflex.unicode.data;
-
-public class Unicode_3_2 {
-  public static final int maximumCodePoint = 0x10ffff;
-  public static final String[] propertyValues
-    = { "alnum", "alphabetic", "arabic", "armenian", "asciihexdigit",
-        "assigned", "bengali", "bidicontrol", "blank", "block=alphabeticpresentationforms",
-        "block=arabic", "block=arabicpresentationformsa", "block=arabicpresentationformsb", "block=armenian", "block=arrows",
-        "block=basiclatin", "block=bengali", "block=blockelements", "block=bopomofo", "block=bopomofoextended",
-        "block=boxdrawing", "block=braillepatterns", "block=buhid", "block=byzantinemusicalsymbols", "block=cherokee",
-        "block=cjkcompatibility", "block=cjkcompatibilityforms", "block=cjkcompatibilityideographs", "block=cjkcompatibilityideographssupplement", "block=cjkradicalssupplement",
-        "block=cjksymbolsandpunctuation", "block=cjkunifiedideographs", "block=cjkunifiedideographsextensiona", "block=cjkunifiedideographsextensionb", "block=combiningdiacriticalmarks",
-        "block=combiningdiacriticalmarksforsymbols", "block=combininghalfmarks", "block=controlpictures", "block=currencysymbols", "block=cyrillic",
-        "block=cyrillicsupplementary", "block=deseret", "block=devanagari", "block=dingbats", "block=enclosedalphanumerics",
-        "block=enclosedcjklettersandmonths", "block=ethiopic", "block=generalpunctuation", "block=geometricshapes", "block=georgian",
-        "block=gothic", "block=greekandcoptic", "block=greekextended", "block=gujarati", "block=gurmukhi",
-        "block=halfwidthandfullwidthforms", "block=hangulcompatibilityjamo", "block=hanguljamo", "block=hangulsyllables", "block=hanunoo",
-        "block=hebrew", "block=hiragana", "block=ideographicdescriptioncharacters", "block=ipaextensions", "block=kanbun",
-        "block=kangxiradicals", "block=kannada", "block=katakana", "block=katakanaphoneticextensions", "block=khmer",
-        "block=lao", "block=latin1supplement", "block=latinextendeda", "block=latinextendedadditional", "block=latinextendedb",
-        "block=letterlikesymbols", "block=malayalam", "block=mathematicalalphanumericsymbols", "block=mathematicaloperators", "block=miscellaneousmathematicalsymbolsa",
-        "block=miscellaneousmathematicalsymbolsb", "block=miscellaneoussymbols", "block=miscellaneoustechnical", "block=mongolian", "block=musicalsymbols",
-        "block=myanmar", "block=noblock", "block=numberforms", "block=ogham", "block=olditalic",
-        "block=opticalcharacterrecognition", "block=oriya", "block=privateusearea", "block=runic", "block=sinhala",
-        "block=smallformvariants", "block=spacingmodifierletters", "block=specials", "block=superscriptsandsubscripts", "block=supplementalarrowsa",
-        "block=supplementalarrowsb", "block=supplementalmathematicaloperators", "block=supplementaryprivateuseareaa", "block=supplementaryprivateuseareab", "block=syriac",
-        "block=tagalog", "block=tagbanwa", "block=tags", "block=tamil", "block=telugu",
-        "block=thaana", "block=thai", "block=tibetan", "block=unifiedcanadianaboriginalsyllabics", "block=variationselectors",
-        "block=yiradicals", "block=yisyllables", "bopomofo", "buhid", "canadianaboriginal",
-        "cc", "cf", "cherokee", "cn", "co",
-        "common", "cyrillic", "dash", "defaultignorablecodepoint", "deprecated",
-        "deseret", "devanagari", "diacritic", "ethiopic", "extender",
-        "georgian", "gothic", "graph", "graphemebase", "graphemeextend",
-        "graphemelink", "greek", "gujarati", "gurmukhi", "han",
-        "hangul", "hanunoo", "hebrew", "hexdigit", "hiragana",
-        "hyphen", "idcontinue", "ideographic", "idsbinaryoperator", "idstart",
-        "idstrinaryoperator", "inherited", "joincontrol", "kannada", "katakana",
-        "khmer", "lao", "latin", "linebreak=alphabetic", "linebreak=ambiguous",
-        "linebreak=breakafter", "linebreak=breakbefore", "linebreak=breakboth", "linebreak=breaksymbols", "linebreak=carriagereturn",
-        "linebreak=closepunctuation", "linebreak=combiningmark", "linebreak=complexcontext", "linebreak=contingentbreak", "linebreak=exclamation",
-        "linebreak=glue", "linebreak=hyphen", "linebreak=ideographic", "linebreak=infixnumeric", "linebreak=inseperable",
-        "linebreak=linefeed", "linebreak=mandatorybreak", "linebreak=nonstarter", "linebreak=numeric", "linebreak=openpunctuation",
-        "linebreak=postfixnumeric", "linebreak=prefixnumeric", "linebreak=quotation", "linebreak=space", "linebreak=unknown",
-        "linebreak=zwspace", "ll", "lm", "lo", "logicalorderexception",
-        "lowercase", "lt", "lu", "malayalam", "math",
-        "mc", "me", "mn", "mongolian", "myanmar",
-        "nd", "nl", "no", "noncharactercodepoint", "ogham",
-        "olditalic", "oriya", "otheralphabetic", "otherdefaultignorablecodepoint", "othergraphemeextend",
-        "otherlowercase", "othermath", "otheruppercase", "pc", "pd",
-        "pe", "pf", "pi", "po", "print",
-        "ps", "quotationmark", "radical", "runic", "sc",
-        "sinhala", "sk", "sm", "so", "softdotted",
-        "syriac", "tagalog", "tagbanwa", "tamil", "telugu",
-        "terminalpunctuation", "thaana", "thai", "tibetan", "unifiedideograph",
-        "uppercase", "whitespace", "xdigit", "xidcontinue", "xidstart",
-        "yi", "zl", "zp", "zs" };
-  public static final String[] intervals = {
-    // Unicode 3.2 property value: {alnum}
-        "\u0030\u0039"+"\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"
-      + "\u00b5\u00b5"+"\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"
-      + "\u00f8\u0220"+"\u0222\u0233"+"\u0250\u02ad"+"\u02b0\u02b8"
-      + "\u02bb\u02c1"+"\u02d0\u02d1"+"\u02e0\u02e4"+"\u02ee\u02ee"
-      + "\u0345\u0345"+"\u037a\u037a"+"\u0386\u0386"+"\u0388\u038a"
-      + "\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u03ce"+"\u03d0\u03f5"
-      + "\u0400\u0481"+"\u048a\u04ce"+"\u04d0\u04f5"+"\u04f8\u04f9"
-      + "\u0500\u050f"+"\u0531\u0556"+"\u0559\u0559"+"\u0561\u0587"
-      + "\u05b0\u05b9"+"\u05bb\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"
-      + "\u05c4\u05c4"+"\u05d0\u05ea"+"\u05f0\u05f2"+"\u0621\u063a"
-      + "\u0640\u0655"+"\u0660\u0669"+"\u066e\u06d3"+"\u06d5\u06dc"
-      + "\u06e1\u06e8"+"\u06ed\u06ed"+"\u06f0\u06fc"+"\u0710\u072c"
-      + "\u0730\u073f"+"\u0780\u07b1"+"\u0901\u0903"+"\u0905\u0939"
-      + "\u093d\u094c"+"\u0950\u0950"+"\u0958\u0963"+"\u0966\u096f"
-      + "\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"
-      + "\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"+"\u09be\u09c4"
-      + "\u09c7\u09c8"+"\u09cb\u09cc"+"\u09d7\u09d7"+"\u09dc\u09dd"
-      + "\u09df\u09e3"+"\u09e6\u09f1"+"\u0a02\u0a02"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a3e\u0a42"+"\u0a47\u0a48"
-      + "\u0a4b\u0a4c"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a66\u0a74"
-      + "\u0a81\u0a83"+"\u0a85\u0a8b"+"\u0a8d\u0a8d"+"\u0a8f\u0a91"
-      + "\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"
-      + "\u0abd\u0ac5"+"\u0ac7\u0ac9"+"\u0acb\u0acc"+"\u0ad0\u0ad0"
-      + "\u0ae0\u0ae0"+"\u0ae6\u0aef"+"\u0b01\u0b03"+"\u0b05\u0b0c"
-      + "\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"
-      + "\u0b36\u0b39"+"\u0b3d\u0b43"+"\u0b47\u0b48"+"\u0b4b\u0b4c"
-      + "\u0b56\u0b57"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b66\u0b6f"
-      + "\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0bbe\u0bc2"
-      + "\u0bc6\u0bc8"+"\u0bca\u0bcc"+"\u0bd7\u0bd7"+"\u0be7\u0bef"
-      + "\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"
-      + "\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3e\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4c"+"\u0c55\u0c56"+"\u0c60\u0c61"+"\u0c66\u0c6f"
-      + "\u0c82\u0c83"+"\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"
-      + "\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cbe\u0cc4"+"\u0cc6\u0cc8"
-      + "\u0cca\u0ccc"+"\u0cd5\u0cd6"+"\u0cde\u0cde"+"\u0ce0\u0ce1"
-      + "\u0ce6\u0cef"+"\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"
-      + "\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3e\u0d43"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4c"+"\u0d57\u0d57"+"\u0d60\u0d61"+"\u0d66\u0d6f"
-      + "\u0d82\u0d83"+"\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"
-      + "\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"
-      + "\u0dd8\u0ddf"+"\u0df2\u0df3"+"\u0e01\u0e3a"+"\u0e40\u0e46"
-      + "\u0e4d\u0e4d"+"\u0e50\u0e59"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb9"+"\u0ebb\u0ebd"+"\u0ec0\u0ec4"
-      + "\u0ec6\u0ec6"+"\u0ecd\u0ecd"+"\u0ed0\u0ed9"+"\u0edc\u0edd"
-      + "\u0f00\u0f00"+"\u0f20\u0f29"+"\u0f40\u0f47"+"\u0f49\u0f6a"
-      + "\u0f71\u0f81"+"\u0f88\u0f8b"+"\u0f90\u0f97"+"\u0f99\u0fbc"
-      + "\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"+"\u102c\u1032"
-      + "\u1036\u1036"+"\u1038\u1038"+"\u1040\u1049"+"\u1050\u1059"
-      + "\u10a0\u10c5"+"\u10d0\u10f8"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1206"+"\u1208\u1246"+"\u1248\u1248"
-      + "\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"
-      + "\u1260\u1286"+"\u1288\u1288"+"\u128a\u128d"+"\u1290\u12ae"
-      + "\u12b0\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12ce"+"\u12d0\u12d6"+"\u12d8\u12ee"
-      + "\u12f0\u130e"+"\u1310\u1310"+"\u1312\u1315"+"\u1318\u131e"
-      + "\u1320\u1346"+"\u1348\u135a"+"\u1369\u1371"+"\u13a0\u13f4"
-      + "\u1401\u166c"+"\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"
-      + "\u16ee\u16f0"+"\u1700\u170c"+"\u170e\u1713"+"\u1720\u1733"
-      + "\u1740\u1753"+"\u1760\u176c"+"\u176e\u1770"+"\u1772\u1773"
-      + "\u1780\u17c8"+"\u17d7\u17d7"+"\u17dc\u17dc"+"\u17e0\u17e9"
-      + "\u1810\u1819"+"\u1820\u1877"+"\u1880\u18a9"+"\u1e00\u1e9b"
-      + "\u1ea0\u1ef9"+"\u1f00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"
-      + "\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"
-      + "\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fbc"
-      + "\u1fbe\u1fbe"+"\u1fc2\u1fc4"+"\u1fc6\u1fcc"+"\u1fd0\u1fd3"
-      + "\u1fd6\u1fdb"+"\u1fe0\u1fec"+"\u1ff2\u1ff4"+"\u1ff6\u1ffc"
-      + "\u2071\u2071"+"\u207f\u207f"+"\u2102\u2102"+"\u2107\u2107"
-      + "\u210a\u2113"+"\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"
-      + "\u2126\u2126"+"\u2128\u2128"+"\u212a\u212d"+"\u212f\u2131"
-      + "\u2133\u2139"+"\u213d\u213f"+"\u2145\u2149"+"\u2160\u2183"
-      + "\u3005\u3007"+"\u3021\u3029"+"\u3031\u3035"+"\u3038\u303c"
-      + "\u3041\u3096"+"\u309d\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"
-      + "\u3105\u312c"+"\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"
-      + "\u3400\u4db5"+"\u4e00\u9fa5"+"\ua000\ua48c"+"\uac00\ud7a3"
-      + "\uf900\ufa2d"+"\ufa30\ufa6a"+"\ufb00\ufb06"+"\ufb13\ufb17"
-      + "\ufb1d\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe70\ufe74"
-      + "\ufe76\ufefc"+"\uff10\uff19"+"\uff21\uff3a"+"\uff41\uff5a"
-      + "\uff66\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"
-      + "\uffda\uffdc"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"+"\ud801\udc00\ud801\udc25"
-      + "\ud801\udc28\ud801\udc4d"+"\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"
-      + "\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"
-      + "\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"
-      + "\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"
-      + "\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"
-      + "\ud835\udd52\ud835\udea3"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"
-      + "\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"
-      + "\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9"
-      + "\ud835\udfce\ud835\udfff"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {alphabetic}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"
-      + "\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u0220"
-      + "\u0222\u0233"+"\u0250\u02ad"+"\u02b0\u02b8"+"\u02bb\u02c1"
-      + "\u02d0\u02d1"+"\u02e0\u02e4"+"\u02ee\u02ee"+"\u0345\u0345"
-      + "\u037a\u037a"+"\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"
-      + "\u038e\u03a1"+"\u03a3\u03ce"+"\u03d0\u03f5"+"\u0400\u0481"
-      + "\u048a\u04ce"+"\u04d0\u04f5"+"\u04f8\u04f9"+"\u0500\u050f"
-      + "\u0531\u0556"+"\u0559\u0559"+"\u0561\u0587"+"\u05b0\u05b9"
-      + "\u05bb\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"+"\u05c4\u05c4"
-      + "\u05d0\u05ea"+"\u05f0\u05f2"+"\u0621\u063a"+"\u0640\u0655"
-      + "\u066e\u06d3"+"\u06d5\u06dc"+"\u06e1\u06e8"+"\u06ed\u06ed"
-      + "\u06fa\u06fc"+"\u0710\u072c"+"\u0730\u073f"+"\u0780\u07b1"
-      + "\u0901\u0903"+"\u0905\u0939"+"\u093d\u094c"+"\u0950\u0950"
-      + "\u0958\u0963"+"\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"
-      + "\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"
-      + "\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cc"+"\u09d7\u09d7"
-      + "\u09dc\u09dd"+"\u09df\u09e3"+"\u09f0\u09f1"+"\u0a02\u0a02"
-      + "\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"
-      + "\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a3e\u0a42"
-      + "\u0a47\u0a48"+"\u0a4b\u0a4c"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a70\u0a74"+"\u0a81\u0a83"+"\u0a85\u0a8b"+"\u0a8d\u0a8d"
-      + "\u0a8f\u0a91"+"\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"
-      + "\u0ab5\u0ab9"+"\u0abd\u0ac5"+"\u0ac7\u0ac9"+"\u0acb\u0acc"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae0"+"\u0b01\u0b03"+"\u0b05\u0b0c"
-      + "\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"
-      + "\u0b36\u0b39"+"\u0b3d\u0b43"+"\u0b47\u0b48"+"\u0b4b\u0b4c"
-      + "\u0b56\u0b57"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b82\u0b83"
-      + "\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"+"\u0b99\u0b9a"
-      + "\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"+"\u0ba8\u0baa"
-      + "\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcc"+"\u0bd7\u0bd7"+"\u0c01\u0c03"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4c"+"\u0c55\u0c56"
-      + "\u0c60\u0c61"+"\u0c82\u0c83"+"\u0c85\u0c8c"+"\u0c8e\u0c90"
-      + "\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cbe\u0cc4"
-      + "\u0cc6\u0cc8"+"\u0cca\u0ccc"+"\u0cd5\u0cd6"+"\u0cde\u0cde"
-      + "\u0ce0\u0ce1"+"\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"
-      + "\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3e\u0d43"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4c"+"\u0d57\u0d57"+"\u0d60\u0d61"+"\u0d82\u0d83"
-      + "\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"
-      + "\u0dc0\u0dc6"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e01\u0e3a"+"\u0e40\u0e46"+"\u0e4d\u0e4d"
-      + "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ecd\u0ecd"
-      + "\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f40\u0f47"+"\u0f49\u0f6a"
-      + "\u0f71\u0f81"+"\u0f88\u0f8b"+"\u0f90\u0f97"+"\u0f99\u0fbc"
-      + "\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"+"\u102c\u1032"
-      + "\u1036\u1036"+"\u1038\u1038"+"\u1050\u1059"+"\u10a0\u10c5"
-      + "\u10d0\u10f8"+"\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"
-      + "\u1200\u1206"+"\u1208\u1246"+"\u1248\u1248"+"\u124a\u124d"
-      + "\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"+"\u1260\u1286"
-      + "\u1288\u1288"+"\u128a\u128d"+"\u1290\u12ae"+"\u12b0\u12b0"
-      + "\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"
-      + "\u12c8\u12ce"+"\u12d0\u12d6"+"\u12d8\u12ee"+"\u12f0\u130e"
-      + "\u1310\u1310"+"\u1312\u1315"+"\u1318\u131e"+"\u1320\u1346"
-      + "\u1348\u135a"+"\u13a0\u13f4"+"\u1401\u166c"+"\u166f\u1676"
-      + "\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"+"\u1700\u170c"
-      + "\u170e\u1713"+"\u1720\u1733"+"\u1740\u1753"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1772\u1773"+"\u1780\u17c8"+"\u17d7\u17d7"
-      + "\u17dc\u17dc"+"\u1820\u1877"+"\u1880\u18a9"+"\u1e00\u1e9b"
-      + "\u1ea0\u1ef9"+"\u1f00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"
-      + "\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"
-      + "\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fbc"
-      + "\u1fbe\u1fbe"+"\u1fc2\u1fc4"+"\u1fc6\u1fcc"+"\u1fd0\u1fd3"
-      + "\u1fd6\u1fdb"+"\u1fe0\u1fec"+"\u1ff2\u1ff4"+"\u1ff6\u1ffc"
-      + "\u2071\u2071"+"\u207f\u207f"+"\u2102\u2102"+"\u2107\u2107"
-      + "\u210a\u2113"+"\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"
-      + "\u2126\u2126"+"\u2128\u2128"+"\u212a\u212d"+"\u212f\u2131"
-      + "\u2133\u2139"+"\u213d\u213f"+"\u2145\u2149"+"\u2160\u2183"
-      + "\u3005\u3007"+"\u3021\u3029"+"\u3031\u3035"+"\u3038\u303c"
-      + "\u3041\u3096"+"\u309d\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"
-      + "\u3105\u312c"+"\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"
-      + "\u3400\u4db5"+"\u4e00\u9fa5"+"\ua000\ua48c"+"\uac00\ud7a3"
-      + "\uf900\ufa2d"+"\ufa30\ufa6a"+"\ufb00\ufb06"+"\ufb13\ufb17"
-      + "\ufb1d\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe70\ufe74"
-      + "\ufe76\ufefc"+"\uff21\uff3a"+"\uff41\uff5a"+"\uff66\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"+"\ud801\udc00\ud801\udc25"+"\ud801\udc28\ud801\udc4d"
-      + "\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"
-      + "\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"
-      + "\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"
-      + "\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"
-      + "\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"
-      + "\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9"+"\ud840\udc00\ud869\uded6"
-      + "\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {arabic}
-        "\u0621\u063a"+"\u0641\u064a"+"\u066e\u066f"+"\u0671\u06d3"
-      + "\u06d5\u06d5"+"\u06e5\u06e6"+"\u06fa\u06fc"+"\ufb50\ufbb1"
-      + "\ufbd3\ufd3d"+"\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfb"
-      + "\ufe70\ufe74"+"\ufe76\ufefc",
-    // Unicode 3.2 property value: {armenian}
-        "\u0531\u0556"+"\u0559\u0559"+"\u0561\u0587"+"\ufb13\ufb17",
-    // Unicode 3.2 property value: {asciihexdigit}
-        "\u0030\u0039"+"\u0041\u0046"+"\u0061\u0066",
-    // Unicode 3.2 property value: {assigned}
-        "\000\u0220"+"\u0222\u0233"+"\u0250\u02ad"+"\u02b0\u02ee"
-      + "\u0300\u034f"+"\u0360\u036f"+"\u0374\u0375"+"\u037a\u037a"
-      + "\u037e\u037e"+"\u0384\u038a"+"\u038c\u038c"+"\u038e\u03a1"
-      + "\u03a3\u03ce"+"\u03d0\u03f6"+"\u0400\u0486"+"\u0488\u04ce"
-      + "\u04d0\u04f5"+"\u04f8\u04f9"+"\u0500\u050f"+"\u0531\u0556"
-      + "\u0559\u055f"+"\u0561\u0587"+"\u0589\u058a"+"\u0591\u05a1"
-      + "\u05a3\u05b9"+"\u05bb\u05c4"+"\u05d0\u05ea"+"\u05f0\u05f4"
-      + "\u060c\u060c"+"\u061b\u061b"+"\u061f\u061f"+"\u0621\u063a"
-      + "\u0640\u0655"+"\u0660\u06ed"+"\u06f0\u06fe"+"\u0700\u070d"
-      + "\u070f\u072c"+"\u0730\u074a"+"\u0780\u07b1"+"\u0901\u0903"
-      + "\u0905\u0939"+"\u093c\u094d"+"\u0950\u0954"+"\u0958\u0970"
-      + "\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"
-      + "\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bc\u09bc"
-      + "\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cd"+"\u09d7\u09d7"
-      + "\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09fa"+"\u0a02\u0a02"
-      + "\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"
-      + "\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a3c\u0a3c"
-      + "\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"+"\u0a59\u0a5c"
-      + "\u0a5e\u0a5e"+"\u0a66\u0a74"+"\u0a81\u0a83"+"\u0a85\u0a8b"
-      + "\u0a8d\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"+"\u0aaa\u0ab0"
-      + "\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"+"\u0ac7\u0ac9"
-      + "\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae0"+"\u0ae6\u0aef"
-      + "\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"
-      + "\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b36\u0b39"+"\u0b3c\u0b43"
-      + "\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b5c\u0b5d"
-      + "\u0b5f\u0b61"+"\u0b66\u0b70"+"\u0b82\u0b83"+"\u0b85\u0b8a"
-      + "\u0b8e\u0b90"+"\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"
-      + "\u0b9e\u0b9f"+"\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb5"
-      + "\u0bb7\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcd"
-      + "\u0bd7\u0bd7"+"\u0be7\u0bf2"+"\u0c01\u0c03"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4d"+"\u0c55\u0c56"
-      + "\u0c60\u0c61"+"\u0c66\u0c6f"+"\u0c82\u0c83"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"
-      + "\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0ce6\u0cef"+"\u0d02\u0d03"
-      + "\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"
-      + "\u0d3e\u0d43"+"\u0d46\u0d48"+"\u0d4a\u0d4d"+"\u0d57\u0d57"
-      + "\u0d60\u0d61"+"\u0d66\u0d6f"+"\u0d82\u0d83"+"\u0d85\u0d96"
-      + "\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"
-      + "\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df4"+"\u0e01\u0e3a"+"\u0e3f\u0e5b"+"\u0e81\u0e82"
-      + "\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"
-      + "\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"
-      + "\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"+"\u0ebb\u0ebd"
-      + "\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"+"\u0ed0\u0ed9"
-      + "\u0edc\u0edd"+"\u0f00\u0f47"+"\u0f49\u0f6a"+"\u0f71\u0f8b"
-      + "\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fbe\u0fcc"+"\u0fcf\u0fcf"
-      + "\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"+"\u102c\u1032"
-      + "\u1036\u1039"+"\u1040\u1059"+"\u10a0\u10c5"+"\u10d0\u10f8"
-      + "\u10fb\u10fb"+"\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"
-      + "\u1200\u1206"+"\u1208\u1246"+"\u1248\u1248"+"\u124a\u124d"
-      + "\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"+"\u1260\u1286"
-      + "\u1288\u1288"+"\u128a\u128d"+"\u1290\u12ae"+"\u12b0\u12b0"
-      + "\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"
-      + "\u12c8\u12ce"+"\u12d0\u12d6"+"\u12d8\u12ee"+"\u12f0\u130e"
-      + "\u1310\u1310"+"\u1312\u1315"+"\u1318\u131e"+"\u1320\u1346"
-      + "\u1348\u135a"+"\u1361\u137c"+"\u13a0\u13f4"+"\u1401\u1676"
-      + "\u1680\u169c"+"\u16a0\u16f0"+"\u1700\u170c"+"\u170e\u1714"
-      + "\u1720\u1736"+"\u1740\u1753"+"\u1760\u176c"+"\u176e\u1770"
-      + "\u1772\u1773"+"\u1780\u17dc"+"\u17e0\u17e9"+"\u1800\u180e"
-      + "\u1810\u1819"+"\u1820\u1877"+"\u1880\u18a9"+"\u1e00\u1e9b"
-      + "\u1ea0\u1ef9"+"\u1f00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"
-      + "\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"
-      + "\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fc4"
-      + "\u1fc6\u1fd3"+"\u1fd6\u1fdb"+"\u1fdd\u1fef"+"\u1ff2\u1ff4"
-      + "\u1ff6\u1ffe"+"\u2000\u2052"+"\u2057\u2057"+"\u205f\u2063"
-      + "\u206a\u2071"+"\u2074\u208e"+"\u20a0\u20b1"+"\u20d0\u20ea"
-      + "\u2100\u213a"+"\u213d\u214b"+"\u2153\u2183"+"\u2190\u23ce"
-      + "\u2400\u2426"+"\u2440\u244a"+"\u2460\u24fe"+"\u2500\u2613"
-      + "\u2616\u2617"+"\u2619\u267d"+"\u2680\u2689"+"\u2701\u2704"
-      + "\u2706\u2709"+"\u270c\u2727"+"\u2729\u274b"+"\u274d\u274d"
-      + "\u274f\u2752"+"\u2756\u2756"+"\u2758\u275e"+"\u2761\u2794"
-      + "\u2798\u27af"+"\u27b1\u27be"+"\u27d0\u27eb"+"\u27f0\u2aff"
-      + "\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5"+"\u2ff0\u2ffb"
-      + "\u3000\u303f"+"\u3041\u3096"+"\u3099\u30ff"+"\u3105\u312c"
-      + "\u3131\u318e"+"\u3190\u31b7"+"\u31f0\u321c"+"\u3220\u3243"
-      + "\u3251\u327b"+"\u327f\u32cb"+"\u32d0\u32fe"+"\u3300\u3376"
-      + "\u337b\u33dd"+"\u33e0\u33fe"+"\u3400\u4db5"+"\u4e00\u9fa5"
-      + "\ua000\ua48c"+"\ua490\ua4c6"+"\uac00\ud7a3"+"\ue000\ufa2d"
-      + "\ufa30\ufa6a"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb36"
-      + "\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"
-      + "\ufb46\ufbb1"+"\ufbd3\ufd3f"+"\ufd50\ufd8f"+"\ufd92\ufdc7"
-      + "\ufdf0\ufdfc"+"\ufe00\ufe0f"+"\ufe20\ufe23"+"\ufe30\ufe46"
-      + "\ufe49\ufe52"+"\ufe54\ufe66"+"\ufe68\ufe6b"+"\ufe70\ufe74"
-      + "\ufe76\ufefc"+"\ufeff\ufeff"+"\uff01\uffbe"+"\uffc2\uffc7"
-      + "\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"+"\uffe0\uffe6"
-      + "\uffe8\uffee"+"\ufff9\ufffd"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf20\ud800\udf23"
-      + "\ud800\udf30\ud800\udf4a"+"\ud801\udc00\ud801\udc25"+"\ud801\udc28\ud801\udc4d"+"\ud834\udc00\ud834\udcf5"
-      + "\ud834\udd00\ud834\udd26"+"\ud834\udd2a\ud834\udddd"+"\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"
-      + "\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"
-      + "\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"+"\ud835\udea8\ud835\udfc9"+"\ud835\udfce\ud835\udfff"
-      + "\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d"+"\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f"
-      + "\udb80\udc00\udbbf\udffd"+"\udbc0\udc00\udbff\udffd",
-    // Unicode 3.2 property value: {bengali}
-        "\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"
-      + "\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bc\u09bc"
-      + "\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cd"+"\u09d7\u09d7"
-      + "\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09f1",
-    // Unicode 3.2 property value: {bidicontrol}
-        "\u200e\u200f"+"\u202a\u202e",
-    // Unicode 3.2 property value: {blank}
-        "\t\t"+"\u0020\u0020"+"\u00a0\u00a0"+"\u1680\u1680"
-      + "\u2000\u200a"+"\u202f\u202f"+"\u3000\u3000",
-    // Unicode 3.2 property value: {block=alphabeticpresentationforms}
-        "\ufb00\ufb4f",
-    // Unicode 3.2 property value: {block=arabic}
-        "\u0600\u06ff",
-    // Unicode 3.2 property value: {block=arabicpresentationformsa}
-        "\ufb50\ufdff",
-    // Unicode 3.2 property value: {block=arabicpresentationformsb}
-        "\ufe70\ufeff",
-    // Unicode 3.2 property value: {block=armenian}
-        "\u0530\u058f",
-    // Unicode 3.2 property value: {block=arrows}
-        "\u2190\u21ff",
-    // Unicode 3.2 property value: {block=basiclatin}
-        "\000\u007f",
-    // Unicode 3.2 property value: {block=bengali}
-        "\u0980\u09ff",
-    // Unicode 3.2 property value: {block=blockelements}
-        "\u2580\u259f",
-    // Unicode 3.2 property value: {block=bopomofo}
-        "\u3100\u312f",
-    // Unicode 3.2 property value: {block=bopomofoextended}
-        "\u31a0\u31bf",
-    // Unicode 3.2 property value: {block=boxdrawing}
-        "\u2500\u257f",
-    // Unicode 3.2 property value: {block=braillepatterns}
-        "\u2800\u28ff",
-    // Unicode 3.2 property value: {block=buhid}
-        "\u1740\u175f",
-    // Unicode 3.2 property value: {block=byzantinemusicalsymbols}
-        "\ud834\udc00\ud834\udcff",
-    // Unicode 3.2 property value: {block=cherokee}
-        "\u13a0\u13ff",
-    // Unicode 3.2 property value: {block=cjkcompatibility}
-        "\u3300\u33ff",
-    // Unicode 3.2 property value: {block=cjkcompatibilityforms}
-        "\ufe30\ufe4f",
-    // Unicode 3.2 property value: {block=cjkcompatibilityideographs}
-        "\uf900\ufaff",
-    // Unicode 3.2 property value: {block=cjkcompatibilityideographssupplement}
-        "\ud87e\udc00\ud87e\ude1f",
-    // Unicode 3.2 property value: {block=cjkradicalssupplement}
-        "\u2e80\u2eff",
-    // Unicode 3.2 property value: {block=cjksymbolsandpunctuation}
-        "\u3000\u303f",
-    // Unicode 3.2 property value: {block=cjkunifiedideographs}
-        "\u4e00\u9fff",
-    // Unicode 3.2 property value: {block=cjkunifiedideographsextensiona}
-        "\u3400\u4dbf",
-    // Unicode 3.2 property value: {block=cjkunifiedideographsextensionb}
-        "\ud840\udc00\ud869\udedf",
-    // Unicode 3.2 property value: {block=combiningdiacriticalmarks}
-        "\u0300\u036f",
-    // Unicode 3.2 property value: {block=combiningdiacriticalmarksforsymbols}
-        "\u20d0\u20ff",
-    // Unicode 3.2 property value: {block=combininghalfmarks}
-        "\ufe20\ufe2f",
-    // Unicode 3.2 property value: {block=controlpictures}
-        "\u2400\u243f",
-    // Unicode 3.2 property value: {block=currencysymbols}
-        "\u20a0\u20cf",
-    // Unicode 3.2 property value: {block=cyrillic}
-        "\u0400\u04ff",
-    // Unicode 3.2 property value: {block=cyrillicsupplementary}
-        "\u0500\u052f",
-    // Unicode 3.2 property value: {block=deseret}
-        "\ud801\udc00\ud801\udc4f",
-    // Unicode 3.2 property value: {block=devanagari}
-        "\u0900\u097f",
-    // Unicode 3.2 property value: {block=dingbats}
-        "\u2700\u27bf",
-    // Unicode 3.2 property value: {block=enclosedalphanumerics}
-        "\u2460\u24ff",
-    // Unicode 3.2 property value: {block=enclosedcjklettersandmonths}
-        "\u3200\u32ff",
-    // Unicode 3.2 property value: {block=ethiopic}
-        "\u1200\u137f",
-    // Unicode 3.2 property value: {block=generalpunctuation}
-        "\u2000\u206f",
-    // Unicode 3.2 property value: {block=geometricshapes}
-        "\u25a0\u25ff",
-    // Unicode 3.2 property value: {block=georgian}
-        "\u10a0\u10ff",
-    // Unicode 3.2 property value: {block=gothic}
-        "\ud800\udf30\ud800\udf4f",
-    // Unicode 3.2 property value: {block=greekandcoptic}
-        "\u0370\u03ff",
-    // Unicode 3.2 property value: {block=greekextended}
-        "\u1f00\u1fff",
-    // Unicode 3.2 property value: {block=gujarati}
-        "\u0a80\u0aff",
-    // Unicode 3.2 property value: {block=gurmukhi}
-        "\u0a00\u0a7f",
-    // Unicode 3.2 property value: {block=halfwidthandfullwidthforms}
-        "\uff00\uffef",
-    // Unicode 3.2 property value: {block=hangulcompatibilityjamo}
-        "\u3130\u318f",
-    // Unicode 3.2 property value: {block=hanguljamo}
-        "\u1100\u11ff",
-    // Unicode 3.2 property value: {block=hangulsyllables}
-        "\uac00\ud7af",
-    // Unicode 3.2 property value: {block=hanunoo}
-        "\u1720\u173f",
-    // Unicode 3.2 property value: {block=hebrew}
-        "\u0590\u05ff",
-    // Unicode 3.2 property value: {block=hiragana}
-        "\u3040\u309f",
-    // Unicode 3.2 property value: {block=ideographicdescriptioncharacters}
-        "\u2ff0\u2fff",
-    // Unicode 3.2 property value: {block=ipaextensions}
-        "\u0250\u02af",
-    // Unicode 3.2 property value: {block=kanbun}
-        "\u3190\u319f",
-    // Unicode 3.2 property value: {block=kangxiradicals}
-        "\u2f00\u2fdf",
-    // Unicode 3.2 property value: {block=kannada}
-        "\u0c80\u0cff",
-    // Unicode 3.2 property value: {block=katakana}
-        "\u30a0\u30ff",
-    // Unicode 3.2 property value: {block=katakanaphoneticextensions}
-        "\u31f0\u31ff",
-    // Unicode 3.2 property value: {block=khmer}
-        "\u1780\u17ff",
-    // Unicode 3.2 property value: {block=lao}
-        "\u0e80\u0eff",
-    // Unicode 3.2 property value: {block=latin1supplement}
-        "\u0080\u00ff",
-    // Unicode 3.2 property value: {block=latinextendeda}
-        "\u0100\u017f",
-    // Unicode 3.2 property value: {block=latinextendedadditional}
-        "\u1e00\u1eff",
-    // Unicode 3.2 property value: {block=latinextendedb}
-        "\u0180\u024f",
-    // Unicode 3.2 property value: {block=letterlikesymbols}
-        "\u2100\u214f",
-    // Unicode 3.2 property value: {block=malayalam}
-        "\u0d00\u0d7f",
-    // Unicode 3.2 property value: {block=mathematicalalphanumericsymbols}
-        "\ud835\udc00\ud835\udfff",
-    // Unicode 3.2 property value: {block=mathematicaloperators}
-        "\u2200\u22ff",
-    // Unicode 3.2 property value: {block=miscellaneousmathematicalsymbolsa}
-        "\u27c0\u27ef",
-    // Unicode 3.2 property value: {block=miscellaneousmathematicalsymbolsb}
-        "\u2980\u29ff",
-    // Unicode 3.2 property value: {block=miscellaneoussymbols}
-        "\u2600\u26ff",
-    // Unicode 3.2 property value: {block=miscellaneoustechnical}
-        "\u2300\u23ff",
-    // Unicode 3.2 property value: {block=mongolian}
-        "\u1800\u18af",
-    // Unicode 3.2 property value: {block=musicalsymbols}
-        "\ud834\udd00\ud834\uddff",
-    // Unicode 3.2 property value: {block=myanmar}
-        "\u1000\u109f",
-    // Unicode 3.2 property value: {block=noblock}
-        "\u0750\u077f"+"\u07c0\u08ff"+"\u1380\u139f"+"\u18b0\u1dff"
-      + "\u2b00\u2e7f"+"\u2fe0\u2fef"+"\u31c0\u31ef"+"\u4dc0\u4dff"
-      + "\ua4d0\uabff"+"\ud7b0\ud7ff"+"\ufe10\ufe1f"+"\ud800\udc00\ud800\udeff"
-      + "\ud800\udf50\ud800\udfff"+"\ud801\udc50\ud833\udfff"+"\ud834\ude00\ud834\udfff"+"\ud836\udc00\ud83f\udfff"
-      + "\ud869\udee0\ud87d\udfff"+"\ud87e\ude20\udb3f\udfff"+"\udb40\udc80\udb7f\udfff",
-    // Unicode 3.2 property value: {block=numberforms}
-        "\u2150\u218f",
-    // Unicode 3.2 property value: {block=ogham}
-        "\u1680\u169f",
-    // Unicode 3.2 property value: {block=olditalic}
-        "\ud800\udf00\ud800\udf2f",
-    // Unicode 3.2 property value: {block=opticalcharacterrecognition}
-        "\u2440\u245f",
-    // Unicode 3.2 property value: {block=oriya}
-        "\u0b00\u0b7f",
-    // Unicode 3.2 property value: {block=privateusearea}
-        "\ue000\uf8ff",
-    // Unicode 3.2 property value: {block=runic}
-        "\u16a0\u16ff",
-    // Unicode 3.2 property value: {block=sinhala}
-        "\u0d80\u0dff",
-    // Unicode 3.2 property value: {block=smallformvariants}
-        "\ufe50\ufe6f",
-    // Unicode 3.2 property value: {block=spacingmodifierletters}
-        "\u02b0\u02ff",
-    // Unicode 3.2 property value: {block=specials}
-        "\ufff0\uffff",
-    // Unicode 3.2 property value: {block=superscriptsandsubscripts}
-        "\u2070\u209f",
-    // Unicode 3.2 property value: {block=supplementalarrowsa}
-        "\u27f0\u27ff",
-    // Unicode 3.2 property value: {block=supplementalarrowsb}
-        "\u2900\u297f",
-    // Unicode 3.2 property value: {block=supplementalmathematicaloperators}
-        "\u2a00\u2aff",
-    // Unicode 3.2 property value: {block=supplementaryprivateuseareaa}
-        "\udb80\udc00\udbbf\udfff",
-    // Unicode 3.2 property value: {block=supplementaryprivateuseareab}
-        "\udbc0\udc00\udbff\udfff",
-    // Unicode 3.2 property value: {block=syriac}
-        "\u0700\u074f",
-    // Unicode 3.2 property value: {block=tagalog}
-        "\u1700\u171f",
-    // Unicode 3.2 property value: {block=tagbanwa}
-        "\u1760\u177f",
-    // Unicode 3.2 property value: {block=tags}
-        "\udb40\udc00\udb40\udc7f",
-    // Unicode 3.2 property value: {block=tamil}
-        "\u0b80\u0bff",
-    // Unicode 3.2 property value: {block=telugu}
-        "\u0c00\u0c7f",
-    // Unicode 3.2 property value: {block=thaana}
-        "\u0780\u07bf",
-    // Unicode 3.2 property value: {block=thai}
-        "\u0e00\u0e7f",
-    // Unicode 3.2 property value: {block=tibetan}
-        "\u0f00\u0fff",
-    // Unicode 3.2 property value: {block=unifiedcanadianaboriginalsyllabics}
-        "\u1400\u167f",
-    // Unicode 3.2 property value: {block=variationselectors}
-        "\ufe00\ufe0f",
-    // Unicode 3.2 property value: {block=yiradicals}
-        "\ua490\ua4cf",
-    // Unicode 3.2 property value: {block=yisyllables}
-        "\ua000\ua48f",
-    // Unicode 3.2 property value: {bopomofo}
-        "\u3105\u312c"+"\u31a0\u31b7",
-    // Unicode 3.2 property value: {buhid}
-        "\u1740\u1753",
-    // Unicode 3.2 property value: {canadianaboriginal}
-        "\u1401\u166c"+"\u166f\u1676",
-    // Unicode 3.2 property value: {cc}
-        "\000\u001f"+"\u007f\u009f",
-    // Unicode 3.2 property value: {cf}
-        "\u06dd\u06dd"+"\u070f\u070f"+"\u180e\u180e"+"\u200c\u200f"
-      + "\u202a\u202e"+"\u2060\u2063"+"\u206a\u206f"+"\ufeff\ufeff"
-      + "\ufff9\ufffb"+"\ud834\udd73\ud834\udd7a"+"\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f",
-    // Unicode 3.2 property value: {cherokee}
-        "\u13a0\u13f4",
-    // Unicode 3.2 property value: {cn}
-        "\u0221\u0221"+"\u0234\u024f"+"\u02ae\u02af"+"\u02ef\u02ff"
-      + "\u0350\u035f"+"\u0370\u0373"+"\u0376\u0379"+"\u037b\u037d"
-      + "\u037f\u0383"+"\u038b\u038b"+"\u038d\u038d"+"\u03a2\u03a2"
-      + "\u03cf\u03cf"+"\u03f7\u03ff"+"\u0487\u0487"+"\u04cf\u04cf"
-      + "\u04f6\u04f7"+"\u04fa\u04ff"+"\u0510\u0530"+"\u0557\u0558"
-      + "\u0560\u0560"+"\u0588\u0588"+"\u058b\u0590"+"\u05a2\u05a2"
-      + "\u05ba\u05ba"+"\u05c5\u05cf"+"\u05eb\u05ef"+"\u05f5\u060b"
-      + "\u060d\u061a"+"\u061c\u061e"+"\u0620\u0620"+"\u063b\u063f"
-      + "\u0656\u065f"+"\u06ee\u06ef"+"\u06ff\u06ff"+"\u070e\u070e"
-      + "\u072d\u072f"+"\u074b\u077f"+"\u07b2\u0900"+"\u0904\u0904"
-      + "\u093a\u093b"+"\u094e\u094f"+"\u0955\u0957"+"\u0971\u0980"
-      + "\u0984\u0984"+"\u098d\u098e"+"\u0991\u0992"+"\u09a9\u09a9"
-      + "\u09b1\u09b1"+"\u09b3\u09b5"+"\u09ba\u09bb"+"\u09bd\u09bd"
-      + "\u09c5\u09c6"+"\u09c9\u09ca"+"\u09ce\u09d6"+"\u09d8\u09db"
-      + "\u09de\u09de"+"\u09e4\u09e5"+"\u09fb\u0a01"+"\u0a03\u0a04"
-      + "\u0a0b\u0a0e"+"\u0a11\u0a12"+"\u0a29\u0a29"+"\u0a31\u0a31"
-      + "\u0a34\u0a34"+"\u0a37\u0a37"+"\u0a3a\u0a3b"+"\u0a3d\u0a3d"
-      + "\u0a43\u0a46"+"\u0a49\u0a4a"+"\u0a4e\u0a58"+"\u0a5d\u0a5d"
-      + "\u0a5f\u0a65"+"\u0a75\u0a80"+"\u0a84\u0a84"+"\u0a8c\u0a8c"
-      + "\u0a8e\u0a8e"+"\u0a92\u0a92"+"\u0aa9\u0aa9"+"\u0ab1\u0ab1"
-      + "\u0ab4\u0ab4"+"\u0aba\u0abb"+"\u0ac6\u0ac6"+"\u0aca\u0aca"
-      + "\u0ace\u0acf"+"\u0ad1\u0adf"+"\u0ae1\u0ae5"+"\u0af0\u0b00"
-      + "\u0b04\u0b04"+"\u0b0d\u0b0e"+"\u0b11\u0b12"+"\u0b29\u0b29"
-      + "\u0b31\u0b31"+"\u0b34\u0b35"+"\u0b3a\u0b3b"+"\u0b44\u0b46"
-      + "\u0b49\u0b4a"+"\u0b4e\u0b55"+"\u0b58\u0b5b"+"\u0b5e\u0b5e"
-      + "\u0b62\u0b65"+"\u0b71\u0b81"+"\u0b84\u0b84"+"\u0b8b\u0b8d"
-      + "\u0b91\u0b91"+"\u0b96\u0b98"+"\u0b9b\u0b9b"+"\u0b9d\u0b9d"
-      + "\u0ba0\u0ba2"+"\u0ba5\u0ba7"+"\u0bab\u0bad"+"\u0bb6\u0bb6"
-      + "\u0bba\u0bbd"+"\u0bc3\u0bc5"+"\u0bc9\u0bc9"+"\u0bce\u0bd6"
-      + "\u0bd8\u0be6"+"\u0bf3\u0c00"+"\u0c04\u0c04"+"\u0c0d\u0c0d"
-      + "\u0c11\u0c11"+"\u0c29\u0c29"+"\u0c34\u0c34"+"\u0c3a\u0c3d"
-      + "\u0c45\u0c45"+"\u0c49\u0c49"+"\u0c4e\u0c54"+"\u0c57\u0c5f"
-      + "\u0c62\u0c65"+"\u0c70\u0c81"+"\u0c84\u0c84"+"\u0c8d\u0c8d"
-      + "\u0c91\u0c91"+"\u0ca9\u0ca9"+"\u0cb4\u0cb4"+"\u0cba\u0cbd"
-      + "\u0cc5\u0cc5"+"\u0cc9\u0cc9"+"\u0cce\u0cd4"+"\u0cd7\u0cdd"
-      + "\u0cdf\u0cdf"+"\u0ce2\u0ce5"+"\u0cf0\u0d01"+"\u0d04\u0d04"
-      + "\u0d0d\u0d0d"+"\u0d11\u0d11"+"\u0d29\u0d29"+"\u0d3a\u0d3d"
-      + "\u0d44\u0d45"+"\u0d49\u0d49"+"\u0d4e\u0d56"+"\u0d58\u0d5f"
-      + "\u0d62\u0d65"+"\u0d70\u0d81"+"\u0d84\u0d84"+"\u0d97\u0d99"
-      + "\u0db2\u0db2"+"\u0dbc\u0dbc"+"\u0dbe\u0dbf"+"\u0dc7\u0dc9"
-      + "\u0dcb\u0dce"+"\u0dd5\u0dd5"+"\u0dd7\u0dd7"+"\u0de0\u0df1"
-      + "\u0df5\u0e00"+"\u0e3b\u0e3e"+"\u0e5c\u0e80"+"\u0e83\u0e83"
-      + "\u0e85\u0e86"+"\u0e89\u0e89"+"\u0e8b\u0e8c"+"\u0e8e\u0e93"
-      + "\u0e98\u0e98"+"\u0ea0\u0ea0"+"\u0ea4\u0ea4"+"\u0ea6\u0ea6"
-      + "\u0ea8\u0ea9"+"\u0eac\u0eac"+"\u0eba\u0eba"+"\u0ebe\u0ebf"
-      + "\u0ec5\u0ec5"+"\u0ec7\u0ec7"+"\u0ece\u0ecf"+"\u0eda\u0edb"
-      + "\u0ede\u0eff"+"\u0f48\u0f48"+"\u0f6b\u0f70"+"\u0f8c\u0f8f"
-      + "\u0f98\u0f98"+"\u0fbd\u0fbd"+"\u0fcd\u0fce"+"\u0fd0\u0fff"
-      + "\u1022\u1022"+"\u1028\u1028"+"\u102b\u102b"+"\u1033\u1035"
-      + "\u103a\u103f"+"\u105a\u109f"+"\u10c6\u10cf"+"\u10f9\u10fa"
-      + "\u10fc\u10ff"+"\u115a\u115e"+"\u11a3\u11a7"+"\u11fa\u11ff"
-      + "\u1207\u1207"+"\u1247\u1247"+"\u1249\u1249"+"\u124e\u124f"
-      + "\u1257\u1257"+"\u1259\u1259"+"\u125e\u125f"+"\u1287\u1287"
-      + "\u1289\u1289"+"\u128e\u128f"+"\u12af\u12af"+"\u12b1\u12b1"
-      + "\u12b6\u12b7"+"\u12bf\u12bf"+"\u12c1\u12c1"+"\u12c6\u12c7"
-      + "\u12cf\u12cf"+"\u12d7\u12d7"+"\u12ef\u12ef"+"\u130f\u130f"
-      + "\u1311\u1311"+"\u1316\u1317"+"\u131f\u131f"+"\u1347\u1347"
-      + "\u135b\u1360"+"\u137d\u139f"+"\u13f5\u1400"+"\u1677\u167f"
-      + "\u169d\u169f"+"\u16f1\u16ff"+"\u170d\u170d"+"\u1715\u171f"
-      + "\u1737\u173f"+"\u1754\u175f"+"\u176d\u176d"+"\u1771\u1771"
-      + "\u1774\u177f"+"\u17dd\u17df"+"\u17ea\u17ff"+"\u180f\u180f"
-      + "\u181a\u181f"+"\u1878\u187f"+"\u18aa\u1dff"+"\u1e9c\u1e9f"
-      + "\u1efa\u1eff"+"\u1f16\u1f17"+"\u1f1e\u1f1f"+"\u1f46\u1f47"
-      + "\u1f4e\u1f4f"+"\u1f58\u1f58"+"\u1f5a\u1f5a"+"\u1f5c\u1f5c"
-      + "\u1f5e\u1f5e"+"\u1f7e\u1f7f"+"\u1fb5\u1fb5"+"\u1fc5\u1fc5"
-      + "\u1fd4\u1fd5"+"\u1fdc\u1fdc"+"\u1ff0\u1ff1"+"\u1ff5\u1ff5"
-      + "\u1fff\u1fff"+"\u2053\u2056"+"\u2058\u205e"+"\u2064\u2069"
-      + "\u2072\u2073"+"\u208f\u209f"+"\u20b2\u20cf"+"\u20eb\u20ff"
-      + "\u213b\u213c"+"\u214c\u2152"+"\u2184\u218f"+"\u23cf\u23ff"
-      + "\u2427\u243f"+"\u244b\u245f"+"\u24ff\u24ff"+"\u2614\u2615"
-      + "\u2618\u2618"+"\u267e\u267f"+"\u268a\u2700"+"\u2705\u2705"
-      + "\u270a\u270b"+"\u2728\u2728"+"\u274c\u274c"+"\u274e\u274e"
-      + "\u2753\u2755"+"\u2757\u2757"+"\u275f\u2760"+"\u2795\u2797"
-      + "\u27b0\u27b0"+"\u27bf\u27cf"+"\u27ec\u27ef"+"\u2b00\u2e7f"
-      + "\u2e9a\u2e9a"+"\u2ef4\u2eff"+"\u2fd6\u2fef"+"\u2ffc\u2fff"
-      + "\u3040\u3040"+"\u3097\u3098"+"\u3100\u3104"+"\u312d\u3130"
-      + "\u318f\u318f"+"\u31b8\u31ef"+"\u321d\u321f"+"\u3244\u3250"
-      + "\u327c\u327e"+"\u32cc\u32cf"+"\u32ff\u32ff"+"\u3377\u337a"
-      + "\u33de\u33df"+"\u33ff\u33ff"+"\u4db6\u4dff"+"\u9fa6\u9fff"
-      + "\ua48d\ua48f"+"\ua4c7\uabff"+"\ud7a4\ud7ff"+"\ufa2e\ufa2f"
-      + "\ufa6b\ufaff"+"\ufb07\ufb12"+"\ufb18\ufb1c"+"\ufb37\ufb37"
-      + "\ufb3d\ufb3d"+"\ufb3f\ufb3f"+"\ufb42\ufb42"+"\ufb45\ufb45"
-      + "\ufbb2\ufbd2"+"\ufd40\ufd4f"+"\ufd90\ufd91"+"\ufdc8\ufdef"
-      + "\ufdfd\ufdff"+"\ufe10\ufe1f"+"\ufe24\ufe2f"+"\ufe47\ufe48"
-      + "\ufe53\ufe53"+"\ufe67\ufe67"+"\ufe6c\ufe6f"+"\ufe75\ufe75"
-      + "\ufefd\ufefe"+"\uff00\uff00"+"\uffbf\uffc1"+"\uffc8\uffc9"
-      + "\uffd0\uffd1"+"\uffd8\uffd9"+"\uffdd\uffdf"+"\uffe7\uffe7"
-      + "\uffef\ufff8"+"\ufffe\ud800\udeff"+"\ud800\udf1f\ud800\udf1f"+"\ud800\udf24\ud800\udf2f"
-      + "\ud800\udf4b\ud800\udfff"+"\ud801\udc26\ud801\udc27"+"\ud801\udc4e\ud833\udfff"+"\ud834\udcf6\ud834\udcff"
-      + "\ud834\udd27\ud834\udd29"+"\ud834\uddde\ud834\udfff"+"\ud835\udc55\ud835\udc55"+"\ud835\udc9d\ud835\udc9d"
-      + "\ud835\udca0\ud835\udca1"+"\ud835\udca3\ud835\udca4"+"\ud835\udca7\ud835\udca8"+"\ud835\udcad\ud835\udcad"
-      + "\ud835\udcba\ud835\udcba"+"\ud835\udcbc\ud835\udcbc"+"\ud835\udcc1\ud835\udcc1"+"\ud835\udcc4\ud835\udcc4"
-      + "\ud835\udd06\ud835\udd06"+"\ud835\udd0b\ud835\udd0c"+"\ud835\udd15\ud835\udd15"+"\ud835\udd1d\ud835\udd1d"
-      + "\ud835\udd3a\ud835\udd3a"+"\ud835\udd3f\ud835\udd3f"+"\ud835\udd45\ud835\udd45"+"\ud835\udd47\ud835\udd49"
-      + "\ud835\udd51\ud835\udd51"+"\ud835\udea4\ud835\udea7"+"\ud835\udfca\ud835\udfcd"+"\ud836\udc00\ud83f\udfff"
-      + "\ud869\uded7\ud87d\udfff"+"\ud87e\ude1e\udb40\udc00"+"\udb40\udc02\udb40\udc1f"+"\udb40\udc80\udb7f\udfff"
-      + "\udbbf\udffe\udbbf\udfff"+"\udbff\udffe\udbff\udfff",
-    // Unicode 3.2 property value: {co}
-        "\ue000\uf8ff"+"\udb80\udc00\udbbf\udffd"+"\udbc0\udc00\udbff\udffd",
-    // Unicode 3.2 property value: {common}
-        "\000\u0040"+"\u005b\u0060"+"\u007b\u00a9"+"\u00ab\u00b4"
-      + "\u00b6\u00b9"+"\u00bb\u00bf"+"\u00d7\u00d7"+"\u00f7\u00f7"
-      + "\u0221\u0221"+"\u0234\u024f"+"\u02ae\u02af"+"\u02b9\u02df"
-      + "\u02e5\u02ff"+"\u0350\u035f"+"\u0370\u0379"+"\u037b\u0385"
-      + "\u0387\u0387"+"\u038b\u038b"+"\u038d\u038d"+"\u03a2\u03a2"
-      + "\u03cf\u03cf"+"\u03f6\u03ff"+"\u0482\u0482"+"\u0487\u0487"
-      + "\u04cf\u04cf"+"\u04f6\u04f7"+"\u04fa\u04ff"+"\u0510\u0530"
-      + "\u0557\u0558"+"\u055a\u0560"+"\u0588\u0590"+"\u05a2\u05a2"
-      + "\u05ba\u05ba"+"\u05be\u05be"+"\u05c0\u05c0"+"\u05c3\u05c3"
-      + "\u05c5\u05cf"+"\u05eb\u05ef"+"\u05f3\u0620"+"\u063b\u0640"
-      + "\u0656\u066d"+"\u06d4\u06d4"+"\u06e9\u06e9"+"\u06ee\u06f9"
-      + "\u06fd\u070f"+"\u072d\u072f"+"\u074b\u077f"+"\u07b2\u0900"
-      + "\u0904\u0904"+"\u093a\u093b"+"\u094e\u094f"+"\u0955\u0957"
-      + "\u0964\u0965"+"\u0970\u0980"+"\u0984\u0984"+"\u098d\u098e"
-      + "\u0991\u0992"+"\u09a9\u09a9"+"\u09b1\u09b1"+"\u09b3\u09b5"
-      + "\u09ba\u09bb"+"\u09bd\u09bd"+"\u09c5\u09c6"+"\u09c9\u09ca"
-      + "\u09ce\u09d6"+"\u09d8\u09db"+"\u09de\u09de"+"\u09e4\u09e5"
-      + "\u09f2\u0a01"+"\u0a03\u0a04"+"\u0a0b\u0a0e"+"\u0a11\u0a12"
-      + "\u0a29\u0a29"+"\u0a31\u0a31"+"\u0a34\u0a34"+"\u0a37\u0a37"
-      + "\u0a3a\u0a3b"+"\u0a3d\u0a3d"+"\u0a43\u0a46"+"\u0a49\u0a4a"
-      + "\u0a4e\u0a58"+"\u0a5d\u0a5d"+"\u0a5f\u0a65"+"\u0a75\u0a80"
-      + "\u0a84\u0a84"+"\u0a8c\u0a8c"+"\u0a8e\u0a8e"+"\u0a92\u0a92"
-      + "\u0aa9\u0aa9"+"\u0ab1\u0ab1"+"\u0ab4\u0ab4"+"\u0aba\u0abb"
-      + "\u0ac6\u0ac6"+"\u0aca\u0aca"+"\u0ace\u0acf"+"\u0ad1\u0adf"
-      + "\u0ae1\u0ae5"+"\u0af0\u0b00"+"\u0b04\u0b04"+"\u0b0d\u0b0e"
-      + "\u0b11\u0b12"+"\u0b29\u0b29"+"\u0b31\u0b31"+"\u0b34\u0b35"
-      + "\u0b3a\u0b3b"+"\u0b44\u0b46"+"\u0b49\u0b4a"+"\u0b4e\u0b55"
-      + "\u0b58\u0b5b"+"\u0b5e\u0b5e"+"\u0b62\u0b65"+"\u0b70\u0b81"
-      + "\u0b84\u0b84"+"\u0b8b\u0b8d"+"\u0b91\u0b91"+"\u0b96\u0b98"
-      + "\u0b9b\u0b9b"+"\u0b9d\u0b9d"+"\u0ba0\u0ba2"+"\u0ba5\u0ba7"
-      + "\u0bab\u0bad"+"\u0bb6\u0bb6"+"\u0bba\u0bbd"+"\u0bc3\u0bc5"
-      + "\u0bc9\u0bc9"+"\u0bce\u0bd6"+"\u0bd8\u0be6"+"\u0bf3\u0c00"
-      + "\u0c04\u0c04"+"\u0c0d\u0c0d"+"\u0c11\u0c11"+"\u0c29\u0c29"
-      + "\u0c34\u0c34"+"\u0c3a\u0c3d"+"\u0c45\u0c45"+"\u0c49\u0c49"
-      + "\u0c4e\u0c54"+"\u0c57\u0c5f"+"\u0c62\u0c65"+"\u0c70\u0c81"
-      + "\u0c84\u0c84"+"\u0c8d\u0c8d"+"\u0c91\u0c91"+"\u0ca9\u0ca9"
-      + "\u0cb4\u0cb4"+"\u0cba\u0cbd"+"\u0cc5\u0cc5"+"\u0cc9\u0cc9"
-      + "\u0cce\u0cd4"+"\u0cd7\u0cdd"+"\u0cdf\u0cdf"+"\u0ce2\u0ce5"
-      + "\u0cf0\u0d01"+"\u0d04\u0d04"+"\u0d0d\u0d0d"+"\u0d11\u0d11"
-      + "\u0d29\u0d29"+"\u0d3a\u0d3d"+"\u0d44\u0d45"+"\u0d49\u0d49"
-      + "\u0d4e\u0d56"+"\u0d58\u0d5f"+"\u0d62\u0d65"+"\u0d70\u0d81"
-      + "\u0d84\u0d84"+"\u0d97\u0d99"+"\u0db2\u0db2"+"\u0dbc\u0dbc"
-      + "\u0dbe\u0dbf"+"\u0dc7\u0dc9"+"\u0dcb\u0dce"+"\u0dd5\u0dd5"
-      + "\u0dd7\u0dd7"+"\u0de0\u0df1"+"\u0df4\u0e00"+"\u0e3b\u0e3f"
-      + "\u0e4f\u0e4f"+"\u0e5a\u0e80"+"\u0e83\u0e83"+"\u0e85\u0e86"
-      + "\u0e89\u0e89"+"\u0e8b\u0e8c"+"\u0e8e\u0e93"+"\u0e98\u0e98"
-      + "\u0ea0\u0ea0"+"\u0ea4\u0ea4"+"\u0ea6\u0ea6"+"\u0ea8\u0ea9"
-      + "\u0eac\u0eac"+"\u0eba\u0eba"+"\u0ebe\u0ebf"+"\u0ec5\u0ec5"
-      + "\u0ec7\u0ec7"+"\u0ece\u0ecf"+"\u0eda\u0edb"+"\u0ede\u0eff"
-      + "\u0f01\u0f17"+"\u0f1a\u0f1f"+"\u0f34\u0f34"+"\u0f36\u0f36"
-      + "\u0f38\u0f38"+"\u0f3a\u0f3f"+"\u0f48\u0f48"+"\u0f6b\u0f70"
-      + "\u0f85\u0f85"+"\u0f8c\u0f8f"+"\u0f98\u0f98"+"\u0fbd\u0fc5"
-      + "\u0fc7\u0fff"+"\u1022\u1022"+"\u1028\u1028"+"\u102b\u102b"
-      + "\u1033\u1035"+"\u103a\u103f"+"\u104a\u104f"+"\u105a\u109f"
-      + "\u10c6\u10cf"+"\u10f9\u10ff"+"\u115a\u115e"+"\u11a3\u11a7"
-      + "\u11fa\u11ff"+"\u1207\u1207"+"\u1247\u1247"+"\u1249\u1249"
-      + "\u124e\u124f"+"\u1257\u1257"+"\u1259\u1259"+"\u125e\u125f"
-      + "\u1287\u1287"+"\u1289\u1289"+"\u128e\u128f"+"\u12af\u12af"
-      + "\u12b1\u12b1"+"\u12b6\u12b7"+"\u12bf\u12bf"+"\u12c1\u12c1"
-      + "\u12c6\u12c7"+"\u12cf\u12cf"+"\u12d7\u12d7"+"\u12ef\u12ef"
-      + "\u130f\u130f"+"\u1311\u1311"+"\u1316\u1317"+"\u131f\u131f"
-      + "\u1347\u1347"+"\u135b\u1368"+"\u137d\u139f"+"\u13f5\u1400"
-      + "\u166d\u166e"+"\u1677\u1680"+"\u169b\u169f"+"\u16eb\u16ed"
-      + "\u16f1\u16ff"+"\u170d\u170d"+"\u1715\u171f"+"\u1735\u173f"
-      + "\u1754\u175f"+"\u176d\u176d"+"\u1771\u1771"+"\u1774\u177f"
-      + "\u17d4\u17df"+"\u17ea\u180a"+"\u180e\u180f"+"\u181a\u181f"
-      + "\u1878\u187f"+"\u18aa\u1dff"+"\u1e9c\u1e9f"+"\u1efa\u1eff"
-      + "\u1f16\u1f17"+"\u1f1e\u1f1f"+"\u1f46\u1f47"+"\u1f4e\u1f4f"
-      + "\u1f58\u1f58"+"\u1f5a\u1f5a"+"\u1f5c\u1f5c"+"\u1f5e\u1f5e"
-      + "\u1f7e\u1f7f"+"\u1fb5\u1fb5"+"\u1fbd\u1fbd"+"\u1fbf\u1fc1"
-      + "\u1fc5\u1fc5"+"\u1fcd\u1fcf"+"\u1fd4\u1fd5"+"\u1fdc\u1fdf"
-      + "\u1fed\u1ff1"+"\u1ff5\u1ff5"+"\u1ffd\u2070"+"\u2072\u207e"
-      + "\u2080\u20cf"+"\u20eb\u2125"+"\u2127\u2129"+"\u212c\u2e7f"
-      + "\u2e9a\u2e9a"+"\u2ef4\u2eff"+"\u2fd6\u3004"+"\u3006\u3006"
-      + "\u3008\u3020"+"\u3030\u3037"+"\u303c\u3040"+"\u3097\u3098"
-      + "\u309b\u309c"+"\u30a0\u30a0"+"\u30fb\u30fc"+"\u3100\u3104"
-      + "\u312d\u3130"+"\u318f\u319f"+"\u31b8\u31ef"+"\u3200\u33ff"
-      + "\u4db6\u4dff"+"\u9fa6\u9fff"+"\ua48d\ua48f"+"\ua4a2\ua4a3"
-      + "\ua4b4\ua4b4"+"\ua4c1\ua4c1"+"\ua4c5\ua4c5"+"\ua4c7\uabff"
-      + "\ud7a4\uf8ff"+"\ufa2e\ufa2f"+"\ufa6b\ufaff"+"\ufb07\ufb12"
-      + "\ufb18\ufb1c"+"\ufb29\ufb29"+"\ufb37\ufb37"+"\ufb3d\ufb3d"
-      + "\ufb3f\ufb3f"+"\ufb42\ufb42"+"\ufb45\ufb45"+"\ufbb2\ufbd2"
-      + "\ufd3e\ufd4f"+"\ufd90\ufd91"+"\ufdc8\ufdef"+"\ufdfc\ufdff"
-      + "\ufe10\ufe1f"+"\ufe24\ufe6f"+"\ufe75\ufe75"+"\ufefd\uff20"
-      + "\uff3b\uff40"+"\uff5b\uff65"+"\uff70\uff70"+"\uff9e\uff9f"
-      + "\uffbf\uffc1"+"\uffc8\uffc9"+"\uffd0\uffd1"+"\uffd8\uffd9"
-      + "\uffdd\ud800\udeff"+"\ud800\udf1f\ud800\udf2f"+"\ud800\udf4b\ud800\udfff"+"\ud801\udc26\ud801\udc27"
-      + "\ud801\udc4e\ud834\udd66"+"\ud834\udd6a\ud834\udd7a"+"\ud834\udd83\ud834\udd84"+"\ud834\udd8c\ud834\udda9"
-      + "\ud834\uddae\ud83f\udfff"+"\ud869\uded7\ud87d\udfff"+"\ud87e\ude1e\udbff\udfff",
-    // Unicode 3.2 property value: {cyrillic}
-        "\u0400\u0481"+"\u0483\u0486"+"\u048a\u04ce"+"\u04d0\u04f5"
-      + "\u04f8\u04f9"+"\u0500\u050f",
-    // Unicode 3.2 property value: {dash}
-        "\u002d\u002d"+"\u00ad\u00ad"+"\u058a\u058a"+"\u1806\u1806"
-      + "\u2010\u2015"+"\u207b\u207b"+"\u208b\u208b"+"\u2212\u2212"
-      + "\u301c\u301c"+"\u3030\u3030"+"\ufe31\ufe32"+"\ufe58\ufe58"
-      + "\ufe63\ufe63"+"\uff0d\uff0d",
-    // Unicode 3.2 property value: {defaultignorablecodepoint}
-        "\000\u0008"+"\u000e\u001f"+"\u007f\u0084"+"\u0086\u009f"
-      + "\u06dd\u06dd"+"\u070f\u070f"+"\u180b\u180e"+"\u200c\u200f"
-      + "\u202a\u202e"+"\u2060\u206f"+"\ufe00\ufe0f"+"\ufeff\ufeff"
-      + "\ufff0\ufffb"+"\ud834\udd73\ud834\udd7a"+"\udb40\udc00\udb43\udfff",
-    // Unicode 3.2 property value: {deprecated}
-        "\u0340\u0341"+"\u206a\u206f",
-    // Unicode 3.2 property value: {deseret}
-        "\ud801\udc00\ud801\udc25"+"\ud801\udc28\ud801\udc4d",
-    // Unicode 3.2 property value: {devanagari}
-        "\u0901\u0903"+"\u0905\u0939"+"\u093c\u094d"+"\u0950\u0954"
-      + "\u0958\u0963"+"\u0966\u096f",
-    // Unicode 3.2 property value: {diacritic}
-        "\u005e\u005e"+"\u0060\u0060"+"\u00a8\u00a8"+"\u00af\u00af"
-      + "\u00b4\u00b4"+"\u00b7\u00b8"+"\u02b0\u02ee"+"\u0300\u034e"
-      + "\u0360\u0362"+"\u0374\u0375"+"\u037a\u037a"+"\u0384\u0385"
-      + "\u0483\u0486"+"\u0559\u0559"+"\u0591\u05a1"+"\u05a3\u05b9"
-      + "\u05bb\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"+"\u05c4\u05c4"
-      + "\u064b\u0652"+"\u06df\u06e0"+"\u06e5\u06e6"+"\u06ea\u06ec"
-      + "\u0730\u074a"+"\u07a6\u07b0"+"\u093c\u093c"+"\u094d\u094d"
-      + "\u0951\u0954"+"\u09bc\u09bc"+"\u09cd\u09cd"+"\u0a3c\u0a3c"
-      + "\u0a4d\u0a4d"+"\u0abc\u0abc"+"\u0acd\u0acd"+"\u0b3c\u0b3c"
-      + "\u0b4d\u0b4d"+"\u0bcd\u0bcd"+"\u0c4d\u0c4d"+"\u0ccd\u0ccd"
-      + "\u0d4d\u0d4d"+"\u0dca\u0dca"+"\u0e47\u0e4c"+"\u0e4e\u0e4e"
-      + "\u0ec8\u0ecc"+"\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"
-      + "\u0f39\u0f39"+"\u0f3e\u0f3f"+"\u0f82\u0f84"+"\u0f86\u0f87"
-      + "\u0fc6\u0fc6"+"\u1037\u1037"+"\u1039\u1039"+"\u17c9\u17d3"
-      + "\u1fbd\u1fbd"+"\u1fbf\u1fc1"+"\u1fcd\u1fcf"+"\u1fdd\u1fdf"
-      + "\u1fed\u1fef"+"\u1ffd\u1ffe"+"\u302a\u302f"+"\u3099\u309c"
-      + "\u30fc\u30fc"+"\ufb1e\ufb1e"+"\ufe20\ufe23"+"\uff3e\uff3e"
-      + "\uff40\uff40"+"\uff70\uff70"+"\uff9e\uff9f"+"\uffe3\uffe3"
-      + "\ud834\udd67\ud834\udd69"+"\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad",
-    // Unicode 3.2 property value: {ethiopic}
-        "\u1200\u1206"+"\u1208\u1246"+"\u1248\u1248"+"\u124a\u124d"
-      + "\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"+"\u1260\u1286"
-      + "\u1288\u1288"+"\u128a\u128d"+"\u1290\u12ae"+"\u12b0\u12b0"
-      + "\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"
-      + "\u12c8\u12ce"+"\u12d0\u12d6"+"\u12d8\u12ee"+"\u12f0\u130e"
-      + "\u1310\u1310"+"\u1312\u1315"+"\u1318\u131e"+"\u1320\u1346"
-      + "\u1348\u135a"+"\u1369\u137c",
-    // Unicode 3.2 property value: {extender}
-        "\u00b7\u00b7"+"\u02d0\u02d1"+"\u0640\u0640"+"\u0e46\u0e46"
-      + "\u0ec6\u0ec6"+"\u1843\u1843"+"\u3005\u3005"+"\u3031\u3035"
-      + "\u309d\u309e"+"\u30fc\u30fe"+"\uff70\uff70",
-    // Unicode 3.2 property value: {georgian}
-        "\u10a0\u10c5"+"\u10d0\u10f8",
-    // Unicode 3.2 property value: {gothic}
-        "\ud800\udf30\ud800\udf4a",
-    // Unicode 3.2 property value: {graph}
-        "\u0021\u007e"+"\u00a1\u0220"+"\u0222\u0233"+"\u0250\u02ad"
-      + "\u02b0\u02ee"+"\u0300\u034f"+"\u0360\u036f"+"\u0374\u0375"
-      + "\u037a\u037a"+"\u037e\u037e"+"\u0384\u038a"+"\u038c\u038c"
-      + "\u038e\u03a1"+"\u03a3\u03ce"+"\u03d0\u03f6"+"\u0400\u0486"
-      + "\u0488\u04ce"+"\u04d0\u04f5"+"\u04f8\u04f9"+"\u0500\u050f"
-      + "\u0531\u0556"+"\u0559\u055f"+"\u0561\u0587"+"\u0589\u058a"
-      + "\u0591\u05a1"+"\u05a3\u05b9"+"\u05bb\u05c4"+"\u05d0\u05ea"
-      + "\u05f0\u05f4"+"\u060c\u060c"+"\u061b\u061b"+"\u061f\u061f"
-      + "\u0621\u063a"+"\u0640\u0655"+"\u0660\u06ed"+"\u06f0\u06fe"
-      + "\u0700\u070d"+"\u070f\u072c"+"\u0730\u074a"+"\u0780\u07b1"
-      + "\u0901\u0903"+"\u0905\u0939"+"\u093c\u094d"+"\u0950\u0954"
-      + "\u0958\u0970"+"\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"
-      + "\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"
-      + "\u09bc\u09bc"+"\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cd"
-      + "\u09d7\u09d7"+"\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09fa"
-      + "\u0a02\u0a02"+"\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"
-      + "\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a66\u0a74"+"\u0a81\u0a83"
-      + "\u0a85\u0a8b"+"\u0a8d\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"
-      + "\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae0"
-      + "\u0ae6\u0aef"+"\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b36\u0b39"
-      + "\u0b3c\u0b43"+"\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"
-      + "\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b66\u0b70"+"\u0b82\u0b83"
-      + "\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"+"\u0b99\u0b9a"
-      + "\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"+"\u0ba8\u0baa"
-      + "\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcd"+"\u0bd7\u0bd7"+"\u0be7\u0bf2"+"\u0c01\u0c03"
-      + "\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"
-      + "\u0c35\u0c39"+"\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4d"
-      + "\u0c55\u0c56"+"\u0c60\u0c61"+"\u0c66\u0c6f"+"\u0c82\u0c83"
-      + "\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"
-      + "\u0cb5\u0cb9"+"\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"
-      + "\u0cd5\u0cd6"+"\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0ce6\u0cef"
-      + "\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"
-      + "\u0d2a\u0d39"+"\u0d3e\u0d43"+"\u0d46\u0d48"+"\u0d4a\u0d4d"
-      + "\u0d57\u0d57"+"\u0d60\u0d61"+"\u0d66\u0d6f"+"\u0d82\u0d83"
-      + "\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"
-      + "\u0dc0\u0dc6"+"\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"
-      + "\u0dd8\u0ddf"+"\u0df2\u0df4"+"\u0e01\u0e3a"+"\u0e3f\u0e5b"
-      + "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"
-      + "\u0ed0\u0ed9"+"\u0edc\u0edd"+"\u0f00\u0f47"+"\u0f49\u0f6a"
-      + "\u0f71\u0f8b"+"\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fbe\u0fcc"
-      + "\u0fcf\u0fcf"+"\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"
-      + "\u102c\u1032"+"\u1036\u1039"+"\u1040\u1059"+"\u10a0\u10c5"
-      + "\u10d0\u10f8"+"\u10fb\u10fb"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1206"+"\u1208\u1246"+"\u1248\u1248"
-      + "\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"
-      + "\u1260\u1286"+"\u1288\u1288"+"\u128a\u128d"+"\u1290\u12ae"
-      + "\u12b0\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12ce"+"\u12d0\u12d6"+"\u12d8\u12ee"
-      + "\u12f0\u130e"+"\u1310\u1310"+"\u1312\u1315"+"\u1318\u131e"
-      + "\u1320\u1346"+"\u1348\u135a"+"\u1361\u137c"+"\u13a0\u13f4"
-      + "\u1401\u1676"+"\u1681\u169c"+"\u16a0\u16f0"+"\u1700\u170c"
-      + "\u170e\u1714"+"\u1720\u1736"+"\u1740\u1753"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1772\u1773"+"\u1780\u17dc"+"\u17e0\u17e9"
-      + "\u1800\u180e"+"\u1810\u1819"+"\u1820\u1877"+"\u1880\u18a9"
-      + "\u1e00\u1e9b"+"\u1ea0\u1ef9"+"\u1f00\u1f15"+"\u1f18\u1f1d"
-      + "\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"
-      + "\u1fb6\u1fc4"+"\u1fc6\u1fd3"+"\u1fd6\u1fdb"+"\u1fdd\u1fef"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffe"+"\u200b\u2027"+"\u202a\u202e"
-      + "\u2030\u2052"+"\u2057\u2057"+"\u205f\u2063"+"\u206a\u2071"
-      + "\u2074\u208e"+"\u20a0\u20b1"+"\u20d0\u20ea"+"\u2100\u213a"
-      + "\u213d\u214b"+"\u2153\u2183"+"\u2190\u23ce"+"\u2400\u2426"
-      + "\u2440\u244a"+"\u2460\u24fe"+"\u2500\u2613"+"\u2616\u2617"
-      + "\u2619\u267d"+"\u2680\u2689"+"\u2701\u2704"+"\u2706\u2709"
-      + "\u270c\u2727"+"\u2729\u274b"+"\u274d\u274d"+"\u274f\u2752"
-      + "\u2756\u2756"+"\u2758\u275e"+"\u2761\u2794"+"\u2798\u27af"
-      + "\u27b1\u27be"+"\u27d0\u27eb"+"\u27f0\u2aff"+"\u2e80\u2e99"
-      + "\u2e9b\u2ef3"+"\u2f00\u2fd5"+"\u2ff0\u2ffb"+"\u3001\u303f"
-      + "\u3041\u3096"+"\u3099\u30ff"+"\u3105\u312c"+"\u3131\u318e"
-      + "\u3190\u31b7"+"\u31f0\u321c"+"\u3220\u3243"+"\u3251\u327b"
-      + "\u327f\u32cb"+"\u32d0\u32fe"+"\u3300\u3376"+"\u337b\u33dd"
-      + "\u33e0\u33fe"+"\u3400\u4db5"+"\u4e00\u9fa5"+"\ua000\ua48c"
-      + "\ua490\ua4c6"+"\uac00\ud7a3"+"\ud800\ufa2d"+"\ufa30\ufa6a"
-      + "\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb36"+"\ufb38\ufb3c"
-      + "\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"
-      + "\ufbd3\ufd3f"+"\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfc"
-      + "\ufe00\ufe0f"+"\ufe20\ufe23"+"\ufe30\ufe46"+"\ufe49\ufe52"
-      + "\ufe54\ufe66"+"\ufe68\ufe6b"+"\ufe70\ufe74"+"\ufe76\ufefc"
-      + "\ufeff\ufeff"+"\uff01\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"
-      + "\uffd2\uffd7"+"\uffda\uffdc"+"\uffe0\uffe6"+"\uffe8\uffee"
-      + "\ufff9\ufffd",
-    // Unicode 3.2 property value: {graphemebase}
-        "\u0020\u007e"+"\u00a0\u0220"+"\u0222\u0233"+"\u0250\u02ad"
-      + "\u02b0\u02ee"+"\u0374\u0375"+"\u037a\u037a"+"\u037e\u037e"
-      + "\u0384\u038a"+"\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u03ce"
-      + "\u03d0\u03f6"+"\u0400\u0482"+"\u048a\u04ce"+"\u04d0\u04f5"
-      + "\u04f8\u04f9"+"\u0500\u050f"+"\u0531\u0556"+"\u0559\u055f"
-      + "\u0561\u0587"+"\u0589\u058a"+"\u05be\u05be"+"\u05c0\u05c0"
-      + "\u05c3\u05c3"+"\u05d0\u05ea"+"\u05f0\u05f4"+"\u060c\u060c"
-      + "\u061b\u061b"+"\u061f\u061f"+"\u0621\u063a"+"\u0640\u064a"
-      + "\u0660\u066f"+"\u0671\u06d5"+"\u06e5\u06e6"+"\u06e9\u06e9"
-      + "\u06f0\u06fe"+"\u0700\u070d"+"\u0710\u0710"+"\u0712\u072c"
-      + "\u0780\u07a5"+"\u07b1\u07b1"+"\u0905\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0964\u0970"+"\u0985\u098c"
-      + "\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"
-      + "\u09b6\u09b9"+"\u09dc\u09dd"+"\u09df\u09e1"+"\u09e6\u09fa"
-      + "\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"
-      + "\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"
-      + "\u0a5e\u0a5e"+"\u0a66\u0a6f"+"\u0a72\u0a74"+"\u0a85\u0a8b"
-      + "\u0a8d\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"+"\u0aaa\u0ab0"
-      + "\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0abd"+"\u0ad0\u0ad0"
-      + "\u0ae0\u0ae0"+"\u0ae6\u0aef"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b36\u0b39"
-      + "\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b66\u0b70"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0be7\u0bf2"
-      + "\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"
-      + "\u0c35\u0c39"+"\u0c60\u0c61"+"\u0c66\u0c6f"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0ce6\u0cef"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d60\u0d61"
-      + "\u0d66\u0d6f"+"\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"
-      + "\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0df4\u0df4"+"\u0e01\u0e30"
-      + "\u0e32\u0e33"+"\u0e3f\u0e46"+"\u0e4f\u0e5b"+"\u0e81\u0e82"
-      + "\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"
-      + "\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"
-      + "\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb0"+"\u0eb2\u0eb3"
-      + "\u0ebd\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ed0\u0ed9"
-      + "\u0edc\u0edd"+"\u0f00\u0f17"+"\u0f1a\u0f34"+"\u0f36\u0f36"
-      + "\u0f38\u0f38"+"\u0f3a\u0f3d"+"\u0f40\u0f47"+"\u0f49\u0f6a"
-      + "\u0f85\u0f85"+"\u0f88\u0f8b"+"\u0fbe\u0fc5"+"\u0fc7\u0fcc"
-      + "\u0fcf\u0fcf"+"\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"
-      + "\u1040\u1055"+"\u10a0\u10c5"+"\u10d0\u10f8"+"\u10fb\u10fb"
-      + "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1206"
-      + "\u1208\u1246"+"\u1248\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1286"+"\u1288\u1288"
-      + "\u128a\u128d"+"\u1290\u12ae"+"\u12b0\u12b0"+"\u12b2\u12b5"
-      + "\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12ce"
-      + "\u12d0\u12d6"+"\u12d8\u12ee"+"\u12f0\u130e"+"\u1310\u1310"
-      + "\u1312\u1315"+"\u1318\u131e"+"\u1320\u1346"+"\u1348\u135a"
-      + "\u1361\u137c"+"\u13a0\u13f4"+"\u1401\u1676"+"\u1680\u169c"
-      + "\u16a0\u16f0"+"\u1700\u170c"+"\u170e\u1711"+"\u1720\u1731"
-      + "\u1735\u1736"+"\u1740\u1751"+"\u1760\u176c"+"\u176e\u1770"
-      + "\u1780\u17b3"+"\u17d4\u17dc"+"\u17e0\u17e9"+"\u1800\u180a"
-      + "\u1810\u1819"+"\u1820\u1877"+"\u1880\u18a8"+"\u1e00\u1e9b"
-      + "\u1ea0\u1ef9"+"\u1f00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"
-      + "\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"
-      + "\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fc4"
-      + "\u1fc6\u1fd3"+"\u1fd6\u1fdb"+"\u1fdd\u1fef"+"\u1ff2\u1ff4"
-      + "\u1ff6\u1ffe"+"\u2000\u200b"+"\u2010\u2027"+"\u202f\u2052"
-      + "\u2057\u2057"+"\u205f\u205f"+"\u2070\u2071"+"\u2074\u208e"
-      + "\u20a0\u20b1"+"\u2100\u213a"+"\u213d\u214b"+"\u2153\u2183"
-      + "\u2190\u23ce"+"\u2400\u2426"+"\u2440\u244a"+"\u2460\u24fe"
-      + "\u2500\u2613"+"\u2616\u2617"+"\u2619\u267d"+"\u2680\u2689"
-      + "\u2701\u2704"+"\u2706\u2709"+"\u270c\u2727"+"\u2729\u274b"
-      + "\u274d\u274d"+"\u274f\u2752"+"\u2756\u2756"+"\u2758\u275e"
-      + "\u2761\u2794"+"\u2798\u27af"+"\u27b1\u27be"+"\u27d0\u27eb"
-      + "\u27f0\u2aff"+"\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5"
-      + "\u2ff0\u2ffb"+"\u3000\u3029"+"\u3030\u303f"+"\u3041\u3096"
-      + "\u309b\u30ff"+"\u3105\u312c"+"\u3131\u318e"+"\u3190\u31b7"
-      + "\u31f0\u321c"+"\u3220\u3243"+"\u3251\u327b"+"\u327f\u32cb"
-      + "\u32d0\u32fe"+"\u3300\u3376"+"\u337b\u33dd"+"\u33e0\u33fe"
-      + "\u3400\u4db5"+"\u4e00\u9fa5"+"\ua000\ua48c"+"\ua490\ua4c6"
-      + "\uac00\ud7a3"+"\uf900\ufa2d"+"\ufa30\ufa6a"+"\ufb00\ufb06"
-      + "\ufb13\ufb17"+"\ufb1d\ufb1d"+"\ufb1f\ufb36"+"\ufb38\ufb3c"
-      + "\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"
-      + "\ufbd3\ufd3f"+"\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfc"
-      + "\ufe30\ufe46"+"\ufe49\ufe52"+"\ufe54\ufe66"+"\ufe68\ufe6b"
-      + "\ufe70\ufe74"+"\ufe76\ufefc"+"\uff01\uff9d"+"\uffa0\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\uffe0\uffe6"+"\uffe8\uffee"+"\ufffc\ufffd"+"\ud800\udf00\ud800\udf1e"
-      + "\ud800\udf20\ud800\udf23"+"\ud800\udf30\ud800\udf4a"+"\ud801\udc00\ud801\udc25"+"\ud801\udc28\ud801\udc4d"
-      + "\ud834\udc00\ud834\udcf5"+"\ud834\udd00\ud834\udd26"+"\ud834\udd2a\ud834\udd64"+"\ud834\udd6a\ud834\udd6c"
-      + "\ud834\udd83\ud834\udd84"+"\ud834\udd8c\ud834\udda9"+"\ud834\uddae\ud834\udddd"+"\ud835\udc00\ud835\udc54"
-      + "\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"
-      + "\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"
-      + "\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"
-      + "\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"+"\ud835\udea8\ud835\udfc9"
-      + "\ud835\udfce\ud835\udfff"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {graphemeextend}
-        "\u0300\u034e"+"\u0360\u036f"+"\u0483\u0486"+"\u0488\u0489"
-      + "\u0591\u05a1"+"\u05a3\u05b9"+"\u05bb\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c4"+"\u064b\u0655"+"\u0670\u0670"
-      + "\u06d6\u06dc"+"\u06de\u06e4"+"\u06e7\u06e8"+"\u06ea\u06ed"
-      + "\u0711\u0711"+"\u0730\u074a"+"\u07a6\u07b0"+"\u0901\u0903"
-      + "\u093c\u093c"+"\u093e\u094c"+"\u0951\u0954"+"\u0962\u0963"
-      + "\u0981\u0983"+"\u09bc\u09bc"+"\u09be\u09c4"+"\u09c7\u09c8"
-      + "\u09cb\u09cc"+"\u09d7\u09d7"+"\u09e2\u09e3"+"\u0a02\u0a02"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4c"
-      + "\u0a70\u0a71"+"\u0a81\u0a83"+"\u0abc\u0abc"+"\u0abe\u0ac5"
-      + "\u0ac7\u0ac9"+"\u0acb\u0acc"+"\u0b01\u0b03"+"\u0b3c\u0b3c"
-      + "\u0b3e\u0b43"+"\u0b47\u0b48"+"\u0b4b\u0b4c"+"\u0b56\u0b57"
-      + "\u0b82\u0b82"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcc"
-      + "\u0bd7\u0bd7"+"\u0c01\u0c03"+"\u0c3e\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4c"+"\u0c55\u0c56"+"\u0c82\u0c83"+"\u0cbe\u0cc4"
-      + "\u0cc6\u0cc8"+"\u0cca\u0ccc"+"\u0cd5\u0cd6"+"\u0d02\u0d03"
-      + "\u0d3e\u0d43"+"\u0d46\u0d48"+"\u0d4a\u0d4c"+"\u0d57\u0d57"
-      + "\u0d82\u0d83"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e31\u0e31"+"\u0e34\u0e39"+"\u0e47\u0e4e"
-      + "\u0eb1\u0eb1"+"\u0eb4\u0eb9"+"\u0ebb\u0ebc"+"\u0ec8\u0ecd"
-      + "\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f3e\u0f3f"+"\u0f71\u0f84"+"\u0f86\u0f87"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u102c\u1032"+"\u1036\u1038"
-      + "\u1056\u1059"+"\u1712\u1714"+"\u1732\u1734"+"\u1752\u1753"
-      + "\u1772\u1773"+"\u17b4\u17d1"+"\u17d3\u17d3"+"\u180b\u180d"
-      + "\u18a9\u18a9"+"\u20d0\u20ea"+"\u302a\u302f"+"\u3099\u309a"
-      + "\ufb1e\ufb1e"+"\ufe00\ufe0f"+"\ufe20\ufe23"+"\uff9e\uff9f"
-      + "\ud834\udd65\ud834\udd69"+"\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad",
-    // Unicode 3.2 property value: {graphemelink}
-        "\u094d\u094d"+"\u09cd\u09cd"+"\u0a4d\u0a4d"+"\u0acd\u0acd"
-      + "\u0b4d\u0b4d"+"\u0bcd\u0bcd"+"\u0c4d\u0c4d"+"\u0ccd\u0ccd"
-      + "\u0d4d\u0d4d"+"\u0dca\u0dca"+"\u0e3a\u0e3a"+"\u1039\u1039"
-      + "\u17d2\u17d2",
-    // Unicode 3.2 property value: {greek}
-        "\u00b5\u00b5"+"\u037a\u037a"+"\u0386\u0386"+"\u0388\u038a"
-      + "\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u03ce"+"\u03d0\u03f5"
-      + "\u1f00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"
-      + "\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"
-      + "\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"
-      + "\u1fc2\u1fc4"+"\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"
-      + "\u1fe0\u1fec"+"\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u2126\u2126",
-    // Unicode 3.2 property value: {gujarati}
-        "\u0a81\u0a83"+"\u0a85\u0a8b"+"\u0a8d\u0a8d"+"\u0a8f\u0a91"
-      + "\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"
-      + "\u0abc\u0ac5"+"\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"
-      + "\u0ae0\u0ae0"+"\u0ae6\u0aef",
-    // Unicode 3.2 property value: {gurmukhi}
-        "\u0a02\u0a02"+"\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"
-      + "\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a66\u0a74",
-    // Unicode 3.2 property value: {han}
-        "\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5"+"\u3005\u3005"
-      + "\u3007\u3007"+"\u3021\u3029"+"\u3038\u303b"+"\u3400\u4db5"
-      + "\u4e00\u9fa5"+"\uf900\ufa2d"+"\ufa30\ufa6a"+"\ud840\udc00\ud869\uded6"
-      + "\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {hangul}
-        "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u3131\u318e"
-      + "\uac00\ud7a3"+"\uffa0\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"
-      + "\uffd2\uffd7"+"\uffda\uffdc",
-    // Unicode 3.2 property value: {hanunoo}
-        "\u1720\u1734",
-    // Unicode 3.2 property value: {hebrew}
-        "\u05d0\u05ea"+"\u05f0\u05f2"+"\ufb1d\ufb1d"+"\ufb1f\ufb28"
-      + "\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufb4f",
-    // Unicode 3.2 property value: {hexdigit}
-        "\u0030\u0039"+"\u0041\u0046"+"\u0061\u0066"+"\uff10\uff19"
-      + "\uff21\uff26"+"\uff41\uff46",
-    // Unicode 3.2 property value: {hiragana}
-        "\u3041\u3096"+"\u309d\u309f",
-    // Unicode 3.2 property value: {hyphen}
-        "\u002d\u002d"+"\u00ad\u00ad"+"\u058a\u058a"+"\u1806\u1806"
-      + "\u2010\u2011"+"\u30fb\u30fb"+"\ufe63\ufe63"+"\uff0d\uff0d"
-      + "\uff65\uff65",
-    // Unicode 3.2 property value: {idcontinue}
-        "\u0030\u0039"+"\u0041\u005a"+"\u005f\u005f"+"\u0061\u007a"
-      + "\u00aa\u00aa"+"\u00b5\u00b5"+"\u00ba\u00ba"+"\u00c0\u00d6"
-      + "\u00d8\u00f6"+"\u00f8\u0220"+"\u0222\u0233"+"\u0250\u02ad"
-      + "\u02b0\u02b8"+"\u02bb\u02c1"+"\u02d0\u02d1"+"\u02e0\u02e4"
-      + "\u02ee\u02ee"+"\u0300\u034f"+"\u0360\u036f"+"\u037a\u037a"
-      + "\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"
-      + "\u03a3\u03ce"+"\u03d0\u03f5"+"\u0400\u0481"+"\u0483\u0486"
-      + "\u048a\u04ce"+"\u04d0\u04f5"+"\u04f8\u04f9"+"\u0500\u050f"
-      + "\u0531\u0556"+"\u0559\u0559"+"\u0561\u0587"+"\u0591\u05a1"
-      + "\u05a3\u05b9"+"\u05bb\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"
-      + "\u05c4\u05c4"+"\u05d0\u05ea"+"\u05f0\u05f2"+"\u0621\u063a"
-      + "\u0640\u0655"+"\u0660\u0669"+"\u066e\u06d3"+"\u06d5\u06dc"
-      + "\u06df\u06e8"+"\u06ea\u06ed"+"\u06f0\u06fc"+"\u0710\u072c"
-      + "\u0730\u074a"+"\u0780\u07b1"+"\u0901\u0903"+"\u0905\u0939"
-      + "\u093c\u094d"+"\u0950\u0954"+"\u0958\u0963"+"\u0966\u096f"
-      + "\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"
-      + "\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bc\u09bc"
-      + "\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cd"+"\u09d7\u09d7"
-      + "\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09f1"+"\u0a02\u0a02"
-      + "\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"
-      + "\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a3c\u0a3c"
-      + "\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"+"\u0a59\u0a5c"
-      + "\u0a5e\u0a5e"+"\u0a66\u0a74"+"\u0a81\u0a83"+"\u0a85\u0a8b"
-      + "\u0a8d\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"+"\u0aaa\u0ab0"
-      + "\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"+"\u0ac7\u0ac9"
-      + "\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae0"+"\u0ae6\u0aef"
-      + "\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"
-      + "\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b36\u0b39"+"\u0b3c\u0b43"
-      + "\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b5c\u0b5d"
-      + "\u0b5f\u0b61"+"\u0b66\u0b6f"+"\u0b82\u0b83"+"\u0b85\u0b8a"
-      + "\u0b8e\u0b90"+"\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"
-      + "\u0b9e\u0b9f"+"\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb5"
-      + "\u0bb7\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcd"
-      + "\u0bd7\u0bd7"+"\u0be7\u0bef"+"\u0c01\u0c03"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4d"+"\u0c55\u0c56"
-      + "\u0c60\u0c61"+"\u0c66\u0c6f"+"\u0c82\u0c83"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"
-      + "\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0ce6\u0cef"+"\u0d02\u0d03"
-      + "\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"
-      + "\u0d3e\u0d43"+"\u0d46\u0d48"+"\u0d4a\u0d4d"+"\u0d57\u0d57"
-      + "\u0d60\u0d61"+"\u0d66\u0d6f"+"\u0d82\u0d83"+"\u0d85\u0d96"
-      + "\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"
-      + "\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e01\u0e3a"+"\u0e40\u0e4e"+"\u0e50\u0e59"
-      + "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"
-      + "\u0ed0\u0ed9"+"\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f18\u0f19"
-      + "\u0f20\u0f29"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f3e\u0f47"+"\u0f49\u0f6a"+"\u0f71\u0f84"+"\u0f86\u0f8b"
-      + "\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u1000\u1021"
-      + "\u1023\u1027"+"\u1029\u102a"+"\u102c\u1032"+"\u1036\u1039"
-      + "\u1040\u1049"+"\u1050\u1059"+"\u10a0\u10c5"+"\u10d0\u10f8"
-      + "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1206"
-      + "\u1208\u1246"+"\u1248\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1286"+"\u1288\u1288"
-      + "\u128a\u128d"+"\u1290\u12ae"+"\u12b0\u12b0"+"\u12b2\u12b5"
-      + "\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12ce"
-      + "\u12d0\u12d6"+"\u12d8\u12ee"+"\u12f0\u130e"+"\u1310\u1310"
-      + "\u1312\u1315"+"\u1318\u131e"+"\u1320\u1346"+"\u1348\u135a"
-      + "\u1369\u1371"+"\u13a0\u13f4"+"\u1401\u166c"+"\u166f\u1676"
-      + "\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"+"\u1700\u170c"
-      + "\u170e\u1714"+"\u1720\u1734"+"\u1740\u1753"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1772\u1773"+"\u1780\u17d3"+"\u17d7\u17d7"
-      + "\u17dc\u17dc"+"\u17e0\u17e9"+"\u180b\u180d"+"\u1810\u1819"
-      + "\u1820\u1877"+"\u1880\u18a9"+"\u1e00\u1e9b"+"\u1ea0\u1ef9"
-      + "\u1f00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"
-      + "\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"
-      + "\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"
-      + "\u1fc2\u1fc4"+"\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"
-      + "\u1fe0\u1fec"+"\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u203f\u2040"
-      + "\u2071\u2071"+"\u207f\u207f"+"\u20d0\u20dc"+"\u20e1\u20e1"
-      + "\u20e5\u20ea"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u212d"+"\u212f\u2131"+"\u2133\u2139"
-      + "\u213d\u213f"+"\u2145\u2149"+"\u2160\u2183"+"\u3005\u3007"
-      + "\u3021\u302f"+"\u3031\u3035"+"\u3038\u303c"+"\u3041\u3096"
-      + "\u3099\u309a"+"\u309d\u309f"+"\u30a1\u30ff"+"\u3105\u312c"
-      + "\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"
-      + "\u4e00\u9fa5"+"\ua000\ua48c"+"\uac00\ud7a3"+"\uf900\ufa2d"
-      + "\ufa30\ufa6a"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb28"
-      + "\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"+"\ufd50\ufd8f"
-      + "\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe00\ufe0f"+"\ufe20\ufe23"
-      + "\ufe33\ufe34"+"\ufe4d\ufe4f"+"\ufe70\ufe74"+"\ufe76\ufefc"
-      + "\uff10\uff19"+"\uff21\uff3a"+"\uff3f\uff3f"+"\uff41\uff5a"
-      + "\uff65\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"
-      + "\uffda\uffdc"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"+"\ud801\udc00\ud801\udc25"
-      + "\ud801\udc28\ud801\udc4d"+"\ud834\udd65\ud834\udd69"+"\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"
-      + "\ud834\udd85\ud834\udd8b"+"\ud834\uddaa\ud834\uddad"+"\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"
-      + "\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"
-      + "\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"
-      + "\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"
-      + "\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"
-      + "\ud835\udfc4\ud835\udfc9"+"\ud835\udfce\ud835\udfff"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {ideographic}
-        "\u3006\u3007"+"\u3021\u3029"+"\u3038\u303a"+"\u3400\u4db5"
-      + "\u4e00\u9fa5"+"\uf900\ufa2d"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {idsbinaryoperator}
-        "\u2ff0\u2ff1"+"\u2ff4\u2ffb",
-    // Unicode 3.2 property value: {idstart}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"
-      + "\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u0220"
-      + "\u0222\u0233"+"\u0250\u02ad"+"\u02b0\u02b8"+"\u02bb\u02c1"
-      + "\u02d0\u02d1"+"\u02e0\u02e4"+"\u02ee\u02ee"+"\u037a\u037a"
-      + "\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"
-      + "\u03a3\u03ce"+"\u03d0\u03f5"+"\u0400\u0481"+"\u048a\u04ce"
-      + "\u04d0\u04f5"+"\u04f8\u04f9"+"\u0500\u050f"+"\u0531\u0556"
-      + "\u0559\u0559"+"\u0561\u0587"+"\u05d0\u05ea"+"\u05f0\u05f2"
-      + "\u0621\u063a"+"\u0640\u064a"+"\u066e\u066f"+"\u0671\u06d3"
-      + "\u06d5\u06d5"+"\u06e5\u06e6"+"\u06fa\u06fc"+"\u0710\u0710"
-      + "\u0712\u072c"+"\u0780\u07a5"+"\u07b1\u07b1"+"\u0905\u0939"
-      + "\u093d\u093d"+"\u0950\u0950"+"\u0958\u0961"+"\u0985\u098c"
-      + "\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"
-      + "\u09b6\u09b9"+"\u09dc\u09dd"+"\u09df\u09e1"+"\u09f0\u09f1"
-      + "\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"
-      + "\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"
-      + "\u0a5e\u0a5e"+"\u0a72\u0a74"+"\u0a85\u0a8b"+"\u0a8d\u0a8d"
-      + "\u0a8f\u0a91"+"\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"
-      + "\u0ab5\u0ab9"+"\u0abd\u0abd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae0"
-      + "\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"
-      + "\u0b32\u0b33"+"\u0b36\u0b39"+"\u0b3d\u0b3d"+"\u0b5c\u0b5d"
-      + "\u0b5f\u0b61"+"\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"
-      + "\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"
-      + "\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb5"+"\u0bb7\u0bb9"
-      + "\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"
-      + "\u0c35\u0c39"+"\u0c60\u0c61"+"\u0c85\u0c8c"+"\u0c8e\u0c90"
-      + "\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cde\u0cde"
-      + "\u0ce0\u0ce1"+"\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"
-      + "\u0d2a\u0d39"+"\u0d60\u0d61"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0e01\u0e30"
-      + "\u0e32\u0e33"+"\u0e40\u0e46"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb0"+"\u0eb2\u0eb3"+"\u0ebd\u0ebd"
-      + "\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0edc\u0edd"+"\u0f00\u0f00"
-      + "\u0f40\u0f47"+"\u0f49\u0f6a"+"\u0f88\u0f8b"+"\u1000\u1021"
-      + "\u1023\u1027"+"\u1029\u102a"+"\u1050\u1055"+"\u10a0\u10c5"
-      + "\u10d0\u10f8"+"\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"
-      + "\u1200\u1206"+"\u1208\u1246"+"\u1248\u1248"+"\u124a\u124d"
-      + "\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"+"\u1260\u1286"
-      + "\u1288\u1288"+"\u128a\u128d"+"\u1290\u12ae"+"\u12b0\u12b0"
-      + "\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"
-      + "\u12c8\u12ce"+"\u12d0\u12d6"+"\u12d8\u12ee"+"\u12f0\u130e"
-      + "\u1310\u1310"+"\u1312\u1315"+"\u1318\u131e"+"\u1320\u1346"
-      + "\u1348\u135a"+"\u13a0\u13f4"+"\u1401\u166c"+"\u166f\u1676"
-      + "\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"+"\u1700\u170c"
-      + "\u170e\u1711"+"\u1720\u1731"+"\u1740\u1751"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1780\u17b3"+"\u17d7\u17d7"+"\u17dc\u17dc"
-      + "\u1820\u1877"+"\u1880\u18a8"+"\u1e00\u1e9b"+"\u1ea0\u1ef9"
-      + "\u1f00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"
-      + "\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"
-      + "\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"
-      + "\u1fc2\u1fc4"+"\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"
-      + "\u1fe0\u1fec"+"\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u2071\u2071"
-      + "\u207f\u207f"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u212d"+"\u212f\u2131"+"\u2133\u2139"
-      + "\u213d\u213f"+"\u2145\u2149"+"\u2160\u2183"+"\u3005\u3007"
-      + "\u3021\u3029"+"\u3031\u3035"+"\u3038\u303c"+"\u3041\u3096"
-      + "\u309d\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"+"\u3105\u312c"
-      + "\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"
-      + "\u4e00\u9fa5"+"\ua000\ua48c"+"\uac00\ud7a3"+"\uf900\ufa2d"
-      + "\ufa30\ufa6a"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb1d"
-      + "\ufb1f\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe70\ufe74"
-      + "\ufe76\ufefc"+"\uff21\uff3a"+"\uff41\uff5a"+"\uff66\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"+"\ud801\udc00\ud801\udc25"+"\ud801\udc28\ud801\udc4d"
-      + "\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"
-      + "\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"
-      + "\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"
-      + "\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"
-      + "\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"
-      + "\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9"+"\ud840\udc00\ud869\uded6"
-      + "\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {idstrinaryoperator}
-        "\u2ff2\u2ff3",
-    // Unicode 3.2 property value: {inherited}
-        "\u0300\u034f"+"\u0360\u036f"+"\u0488\u0489"+"\u0591\u05a1"
-      + "\u05a3\u05b9"+"\u05bb\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"
-      + "\u05c4\u05c4"+"\u064b\u0655"+"\u0670\u0670"+"\u06d6\u06e4"
-      + "\u06e7\u06e8"+"\u06ea\u06ed"+"\u180b\u180d"+"\u20d0\u20ea"
-      + "\u302a\u302f"+"\u3099\u309a"+"\ufb1e\ufb1e"+"\ufe00\ufe0f"
-      + "\ufe20\ufe23"+"\ud834\udd67\ud834\udd69"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad",
-    // Unicode 3.2 property value: {joincontrol}
-        "\u200c\u200d",
-    // Unicode 3.2 property value: {kannada}
-        "\u0c82\u0c83"+"\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"
-      + "\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cbe\u0cc4"+"\u0cc6\u0cc8"
-      + "\u0cca\u0ccd"+"\u0cd5\u0cd6"+"\u0cde\u0cde"+"\u0ce0\u0ce1"
-      + "\u0ce6\u0cef",
-    // Unicode 3.2 property value: {katakana}
-        "\u30a1\u30fa"+"\u30fd\u30ff"+"\u31f0\u31ff"+"\uff66\uff6f"
-      + "\uff71\uff9d",
-    // Unicode 3.2 property value: {khmer}
-        "\u1780\u17d3"+"\u17e0\u17e9",
-    // Unicode 3.2 property value: {lao}
-        "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"
-      + "\u0ed0\u0ed9"+"\u0edc\u0edd",
-    // Unicode 3.2 property value: {latin}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00ba\u00ba"
-      + "\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u0220"+"\u0222\u0233"
-      + "\u0250\u02ad"+"\u02b0\u02b8"+"\u02e0\u02e4"+"\u1e00\u1e9b"
-      + "\u1ea0\u1ef9"+"\u2071\u2071"+"\u207f\u207f"+"\u212a\u212b"
-      + "\ufb00\ufb06"+"\uff21\uff3a"+"\uff41\uff5a",
-    // Unicode 3.2 property value: {linebreak=alphabetic}
-        "\u0023\u0023"+"\u0026\u0026"+"\u002a\u002a"+"\u003c\u003e"
-      + "\u0040\u005a"+"\u005e\u007a"+"\u007e\u007e"+"\u00a6\u00a6"
-      + "\u00a9\u00a9"+"\u00ac\u00ac"+"\u00ae\u00af"+"\u00b5\u00b5"
-      + "\u00c0\u00c5"+"\u00c7\u00cf"+"\u00d1\u00d6"+"\u00d9\u00dd"
-      + "\u00e2\u00e5"+"\u00e7\u00e7"+"\u00eb\u00eb"+"\u00ee\u00ef"
-      + "\u00f1\u00f1"+"\u00f4\u00f6"+"\u00fb\u00fb"+"\u00fd\u00fd"
-      + "\u00ff\u0100"+"\u0102\u0110"+"\u0112\u0112"+"\u0114\u011a"
-      + "\u011c\u0125"+"\u0128\u012a"+"\u012c\u0130"+"\u0134\u0137"
-      + "\u0139\u013e"+"\u0143\u0143"+"\u0145\u0147"+"\u014b\u014c"
-      + "\u014e\u0151"+"\u0154\u0165"+"\u0168\u016a"+"\u016c\u01cd"
-      + "\u01cf\u01cf"+"\u01d1\u01d1"+"\u01d3\u01d3"+"\u01d5\u01d5"
-      + "\u01d7\u01d7"+"\u01d9\u01d9"+"\u01db\u01db"+"\u01dd\u0220"
-      + "\u0222\u0233"+"\u0250\u0250"+"\u0252\u0260"+"\u0262\u02ad"
-      + "\u02b0\u02c6"+"\u02ce\u02cf"+"\u02d1\u02d7"+"\u02dc\u02dc"
-      + "\u02de\u02ee"+"\u0374\u0375"+"\u037a\u037a"+"\u037e\u037e"
-      + "\u0384\u038a"+"\u038c\u038c"+"\u038e\u0390"+"\u03aa\u03b0"
-      + "\u03c2\u03c2"+"\u03ca\u03ce"+"\u03d0\u03f6"+"\u0400\u0400"
-      + "\u0402\u040f"+"\u0450\u0450"+"\u0452\u0482"+"\u048a\u04ce"
-      + "\u04d0\u04f5"+"\u04f8\u04f9"+"\u0500\u050f"+"\u0531\u0556"
-      + "\u0559\u055f"+"\u0561\u0587"+"\u05be\u05be"+"\u05c0\u05c0"
-      + "\u05c3\u05c3"+"\u05d0\u05ea"+"\u05f0\u05f4"+"\u060c\u060c"
-      + "\u061b\u061b"+"\u061f\u061f"+"\u0621\u063a"+"\u0640\u064a"
-      + "\u066a\u066f"+"\u0671\u06d5"+"\u06e5\u06e6"+"\u06e9\u06e9"
-      + "\u06fa\u06fe"+"\u0700\u070d"+"\u0710\u0710"+"\u0712\u072c"
-      + "\u0780\u07a5"+"\u07b1\u07b1"+"\u0905\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0964\u0965"+"\u0970\u0970"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09dc\u09dd"+"\u09df\u09e1"
-      + "\u09f0\u09f1"+"\u09f4\u09fa"+"\u0a05\u0a0a"+"\u0a0f\u0a10"
-      + "\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"
-      + "\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a72\u0a74"
-      + "\u0a85\u0a8b"+"\u0a8d\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0abd"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae0"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b36\u0b39"
-      + "\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b70\u0b70"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0bf0\u0bf2"
-      + "\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"
-      + "\u0c35\u0c39"+"\u0c60\u0c61"+"\u0c85\u0c8c"+"\u0c8e\u0c90"
-      + "\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cde\u0cde"
-      + "\u0ce0\u0ce1"+"\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"
-      + "\u0d2a\u0d39"+"\u0d60\u0d61"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0df4\u0df4"
-      + "\u0e4f\u0e4f"+"\u0f00\u0f0a"+"\u0f0d\u0f17"+"\u0f1a\u0f1f"
-      + "\u0f2a\u0f34"+"\u0f36\u0f36"+"\u0f38\u0f38"+"\u0f40\u0f47"
-      + "\u0f49\u0f6a"+"\u0f85\u0f85"+"\u0f88\u0f8b"+"\u0fbe\u0fc5"
-      + "\u0fc7\u0fcc"+"\u0fcf\u0fcf"+"\u104a\u104f"+"\u10a0\u10c5"
-      + "\u10d0\u10f8"+"\u10fb\u10fb"+"\u1200\u1206"+"\u1208\u1246"
-      + "\u1248\u1248"+"\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"
-      + "\u125a\u125d"+"\u1260\u1286"+"\u1288\u1288"+"\u128a\u128d"
-      + "\u1290\u12ae"+"\u12b0\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"
-      + "\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12ce"+"\u12d0\u12d6"
-      + "\u12d8\u12ee"+"\u12f0\u130e"+"\u1310\u1310"+"\u1312\u1315"
-      + "\u1318\u131e"+"\u1320\u1346"+"\u1348\u135a"+"\u1362\u1368"
-      + "\u1372\u137c"+"\u13a0\u13f4"+"\u1401\u1676"+"\u1681\u169a"
-      + "\u16a0\u16f0"+"\u1700\u170c"+"\u170e\u1711"+"\u1720\u1731"
-      + "\u1735\u1736"+"\u1740\u1751"+"\u1760\u176c"+"\u176e\u1770"
-      + "\u17dc\u17dc"+"\u1800\u1805"+"\u1807\u180a"+"\u1820\u1877"
-      + "\u1880\u18a8"+"\u1e00\u1e9b"+"\u1ea0\u1ef9"+"\u1f00\u1f15"
-      + "\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"
-      + "\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"
-      + "\u1f80\u1fb4"+"\u1fb6\u1fc4"+"\u1fc6\u1fd3"+"\u1fd6\u1fdb"
-      + "\u1fdd\u1fef"+"\u1ff2\u1ff4"+"\u1ff6\u1ffe"+"\u2017\u2017"
-      + "\u2022\u2023"+"\u2038\u2038"+"\u203d\u2043"+"\u2047\u2052"
-      + "\u2057\u2057"+"\u2061\u2063"+"\u2070\u2071"+"\u2075\u207c"
-      + "\u2080\u2080"+"\u2085\u208c"+"\u2100\u2102"+"\u2104\u2104"
-      + "\u2106\u2108"+"\u210a\u2112"+"\u2114\u2115"+"\u2117\u2120"
-      + "\u2123\u2125"+"\u2127\u212a"+"\u212c\u213a"+"\u213d\u213f"
-      + "\u2141\u214b"+"\u2153\u2153"+"\u2156\u215a"+"\u215c\u215d"
-      + "\u215f\u215f"+"\u216c\u216f"+"\u217a\u2183"+"\u219a\u21d1"
-      + "\u21d3\u21d3"+"\u21d5\u21ff"+"\u2201\u2201"+"\u2204\u2206"
-      + "\u2209\u220a"+"\u220c\u220e"+"\u2210\u2210"+"\u2214\u2214"
-      + "\u2216\u2219"+"\u221b\u221c"+"\u2221\u2222"+"\u2224\u2224"
-      + "\u2226\u2226"+"\u222d\u222d"+"\u222f\u2233"+"\u2238\u223b"
-      + "\u223e\u2247"+"\u2249\u224b"+"\u224d\u2251"+"\u2253\u225f"
-      + "\u2262\u2263"+"\u2268\u2269"+"\u226c\u226d"+"\u2270\u2281"
-      + "\u2284\u2285"+"\u2288\u2294"+"\u2296\u2298"+"\u229a\u22a4"
-      + "\u22a6\u22be"+"\u22c0\u2311"+"\u2313\u2328"+"\u232b\u23b3"
-      + "\u23b7\u23ce"+"\u2400\u2426"+"\u2440\u244a"+"\u24c0\u24cf"
-      + "\u24ea\u24ea"+"\u254c\u254f"+"\u2575\u257f"+"\u2590\u2591"
-      + "\u2596\u259f"+"\u25a2\u25a2"+"\u25aa\u25b1"+"\u25b4\u25b5"
-      + "\u25b8\u25bb"+"\u25be\u25bf"+"\u25c2\u25c5"+"\u25c9\u25ca"
-      + "\u25cc\u25cd"+"\u25d2\u25e1"+"\u25e6\u25ee"+"\u25f0\u2604"
-      + "\u2607\u2608"+"\u260a\u260d"+"\u2610\u2613"+"\u2619\u261b"
-      + "\u261d\u261d"+"\u261f\u263f"+"\u2641\u2641"+"\u2643\u265f"
-      + "\u2662\u2662"+"\u2666\u2666"+"\u266b\u266b"+"\u266e\u266e"
-      + "\u2670\u267d"+"\u2680\u2689"+"\u2701\u2704"+"\u2706\u2709"
-      + "\u270c\u2727"+"\u2729\u274b"+"\u274d\u274d"+"\u274f\u2752"
-      + "\u2756\u2756"+"\u2758\u275a"+"\u2761\u2761"+"\u2764\u2767"
-      + "\u2776\u2794"+"\u2798\u27af"+"\u27b1\u27be"+"\u27d0\u27e5"
-      + "\u27f0\u2982"+"\u2999\u29d7"+"\u29dc\u29fb"+"\u29fe\u2aff"
-      + "\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb1d"+"\ufb1f\ufb36"
-      + "\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"
-      + "\ufb46\ufbb1"+"\ufbd3\ufd3d"+"\ufd50\ufd8f"+"\ufd92\ufdc7"
-      + "\ufdf0\ufdfb"+"\ufe70\ufe74"+"\ufe76\ufefc"+"\uff66\uff66"
-      + "\uff71\uff9d"+"\uffa0\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"
-      + "\uffd2\uffd7"+"\uffda\uffdc"+"\uffe8\uffee"+"\ud800\udf00\ud800\udf1e"
-      + "\ud800\udf20\ud800\udf23"+"\ud800\udf30\ud800\udf4a"+"\ud801\udc00\ud801\udc25"+"\ud801\udc28\ud801\udc4d"
-      + "\ud834\udc00\ud834\udcf5"+"\ud834\udd00\ud834\udd26"+"\ud834\udd2a\ud834\udd64"+"\ud834\udd6a\ud834\udd6c"
-      + "\ud834\udd83\ud834\udd84"+"\ud834\udd8c\ud834\udda9"+"\ud834\uddae\ud834\udddd"+"\ud835\udc00\ud835\udc54"
-      + "\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"
-      + "\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"
-      + "\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"
-      + "\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"+"\ud835\udea8\ud835\udfc9",
-    // Unicode 3.2 property value: {linebreak=ambiguous}
-        "\u00a1\u00a1"+"\u00a7\u00a8"+"\u00aa\u00aa"+"\u00b2\u00b3"
-      + "\u00b6\u00ba"+"\u00bc\u00bf"+"\u00c6\u00c6"+"\u00d0\u00d0"
-      + "\u00d7\u00d8"+"\u00de\u00e1"+"\u00e6\u00e6"+"\u00e8\u00ea"
-      + "\u00ec\u00ed"+"\u00f0\u00f0"+"\u00f2\u00f3"+"\u00f7\u00fa"
-      + "\u00fc\u00fc"+"\u00fe\u00fe"+"\u0101\u0101"+"\u0111\u0111"
-      + "\u0113\u0113"+"\u011b\u011b"+"\u0126\u0127"+"\u012b\u012b"
-      + "\u0131\u0133"+"\u0138\u0138"+"\u013f\u0142"+"\u0144\u0144"
-      + "\u0148\u014a"+"\u014d\u014d"+"\u0152\u0153"+"\u0166\u0167"
-      + "\u016b\u016b"+"\u01ce\u01ce"+"\u01d0\u01d0"+"\u01d2\u01d2"
-      + "\u01d4\u01d4"+"\u01d6\u01d6"+"\u01d8\u01d8"+"\u01da\u01da"
-      + "\u01dc\u01dc"+"\u0251\u0251"+"\u0261\u0261"+"\u02c7\u02c7"
-      + "\u02c9\u02cb"+"\u02cd\u02cd"+"\u02d0\u02d0"+"\u02d8\u02db"
-      + "\u02dd\u02dd"+"\u0391\u03a1"+"\u03a3\u03a9"+"\u03b1\u03c1"
-      + "\u03c3\u03c9"+"\u0401\u0401"+"\u0410\u044f"+"\u0451\u0451"
-      + "\u2015\u2016"+"\u2020\u2021"+"\u203b\u203b"+"\u2074\u2074"
-      + "\u207f\u207f"+"\u2081\u2084"+"\u2105\u2105"+"\u2113\u2113"
-      + "\u2121\u2122"+"\u212b\u212b"+"\u2140\u2140"+"\u2154\u2155"
-      + "\u215b\u215b"+"\u215e\u215e"+"\u2160\u216b"+"\u2170\u2179"
-      + "\u2190\u2199"+"\u21d2\u21d2"+"\u21d4\u21d4"+"\u2200\u2200"
-      + "\u2202\u2203"+"\u2207\u2208"+"\u220b\u220b"+"\u220f\u220f"
-      + "\u2211\u2211"+"\u2215\u2215"+"\u221a\u221a"+"\u221d\u2220"
-      + "\u2223\u2223"+"\u2225\u2225"+"\u2227\u222c"+"\u222e\u222e"
-      + "\u2234\u2237"+"\u223c\u223d"+"\u2248\u2248"+"\u224c\u224c"
-      + "\u2252\u2252"+"\u2260\u2261"+"\u2264\u2267"+"\u226a\u226b"
-      + "\u226e\u226f"+"\u2282\u2283"+"\u2286\u2287"+"\u2295\u2295"
-      + "\u2299\u2299"+"\u22a5\u22a5"+"\u22bf\u22bf"+"\u2312\u2312"
-      + "\u2460\u24bf"+"\u24d0\u24e9"+"\u24eb\u24fe"+"\u2500\u254b"
-      + "\u2550\u2574"+"\u2580\u258f"+"\u2592\u2595"+"\u25a0\u25a1"
-      + "\u25a3\u25a9"+"\u25b2\u25b3"+"\u25b6\u25b7"+"\u25bc\u25bd"
-      + "\u25c0\u25c1"+"\u25c6\u25c8"+"\u25cb\u25cb"+"\u25ce\u25d1"
-      + "\u25e2\u25e5"+"\u25ef\u25ef"+"\u2605\u2606"+"\u2609\u2609"
-      + "\u260e\u260f"+"\u2616\u2617"+"\u261c\u261c"+"\u261e\u261e"
-      + "\u2640\u2640"+"\u2642\u2642"+"\u2660\u2661"+"\u2663\u2665"
-      + "\u2667\u266a"+"\u266c\u266d"+"\u266f\u266f"+"\ufffd\ufffd",
-    // Unicode 3.2 property value: {linebreak=breakafter}
-        "\t\t"+"\u007c\u007c"+"\u00ad\u00ad"+"\u058a\u058a"
-      + "\u0f0b\u0f0b"+"\u1361\u1361"+"\u1680\u1680"+"\u17d5\u17d5"
-      + "\u2000\u2006"+"\u2008\u200a"+"\u2010\u2010"+"\u2012\u2013"
-      + "\u2027\u2027"+"\u205f\u205f",
-    // Unicode 3.2 property value: {linebreak=breakbefore}
-        "\u00b4\u00b4"+"\u02c8\u02c8"+"\u02cc\u02cc"+"\u1806\u1806",
-    // Unicode 3.2 property value: {linebreak=breakboth}
-        "\u2014\u2014",
-    // Unicode 3.2 property value: {linebreak=breaksymbols}
-        "\u002f\u002f",
-    // Unicode 3.2 property value: {linebreak=carriagereturn}
-        "\r\r",
-    // Unicode 3.2 property value: {linebreak=closepunctuation}
-        "\u0029\u0029"+"\u005d\u005d"+"\u007d\u007d"+"\u0f3b\u0f3b"
-      + "\u0f3d\u0f3d"+"\u169c\u169c"+"\u2046\u2046"+"\u207e\u207e"
-      + "\u208e\u208e"+"\u232a\u232a"+"\u23b5\u23b5"+"\u2769\u2769"
-      + "\u276b\u276b"+"\u276d\u276d"+"\u276f\u276f"+"\u2771\u2771"
-      + "\u2773\u2773"+"\u2775\u2775"+"\u27e7\u27e7"+"\u27e9\u27e9"
-      + "\u27eb\u27eb"+"\u2984\u2984"+"\u2986\u2986"+"\u2988\u2988"
-      + "\u298a\u298a"+"\u298c\u298c"+"\u298e\u298e"+"\u2990\u2990"
-      + "\u2992\u2992"+"\u2994\u2994"+"\u2996\u2996"+"\u2998\u2998"
-      + "\u29d9\u29d9"+"\u29db\u29db"+"\u29fd\u29fd"+"\u3001\u3002"
-      + "\u3009\u3009"+"\u300b\u300b"+"\u300d\u300d"+"\u300f\u300f"
-      + "\u3011\u3011"+"\u3015\u3015"+"\u3017\u3017"+"\u3019\u3019"
-      + "\u301b\u301b"+"\u301e\u301f"+"\ufd3f\ufd3f"+"\ufe36\ufe36"
-      + "\ufe38\ufe38"+"\ufe3a\ufe3a"+"\ufe3c\ufe3c"+"\ufe3e\ufe3e"
-      + "\ufe40\ufe40"+"\ufe42\ufe42"+"\ufe44\ufe44"+"\ufe50\ufe50"
-      + "\ufe52\ufe52"+"\ufe5a\ufe5a"+"\ufe5c\ufe5c"+"\ufe5e\ufe5e"
-      + "\uff09\uff09"+"\uff0c\uff0c"+"\uff0e\uff0e"+"\uff3d\uff3d"
-      + "\uff5d\uff5d"+"\uff60\uff61"+"\uff63\uff64",
-    // Unicode 3.2 property value: {linebreak=combiningmark}
-        "\000\u0008"+"\u000b\u000b"+"\u000e\u001f"+"\u007f\u009f"
-      + "\u0300\u034f"+"\u0360\u036f"+"\u0483\u0486"+"\u0488\u0489"
-      + "\u0591\u05a1"+"\u05a3\u05b9"+"\u05bb\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c4"+"\u064b\u0655"+"\u0670\u0670"
-      + "\u06d6\u06e4"+"\u06e7\u06e8"+"\u06ea\u06ed"+"\u070f\u070f"
-      + "\u0711\u0711"+"\u0730\u074a"+"\u07a6\u07b0"+"\u0901\u0903"
-      + "\u093c\u093c"+"\u093e\u094d"+"\u0951\u0954"+"\u0962\u0963"
-      + "\u0981\u0983"+"\u09bc\u09bc"+"\u09be\u09c4"+"\u09c7\u09c8"
-      + "\u09cb\u09cd"+"\u09d7\u09d7"+"\u09e2\u09e3"+"\u0a02\u0a02"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a70\u0a71"+"\u0a81\u0a83"+"\u0abc\u0abc"+"\u0abe\u0ac5"
-      + "\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0b01\u0b03"+"\u0b3c\u0b3c"
-      + "\u0b3e\u0b43"+"\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"
-      + "\u0b82\u0b82"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcd"
-      + "\u0bd7\u0bd7"+"\u0c01\u0c03"+"\u0c3e\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c82\u0c83"+"\u0cbe\u0cc4"
-      + "\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"+"\u0d02\u0d03"
-      + "\u0d3e\u0d43"+"\u0d46\u0d48"+"\u0d4a\u0d4d"+"\u0d57\u0d57"
-      + "\u0d82\u0d83"+"\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"
-      + "\u0dd8\u0ddf"+"\u0df2\u0df3"+"\u0e31\u0e31"+"\u0e34\u0e3a"
-      + "\u0e47\u0e4e"+"\u0eb1\u0eb1"+"\u0eb4\u0eb9"+"\u0ebb\u0ebc"
-      + "\u0ec8\u0ecd"+"\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"
-      + "\u0f39\u0f39"+"\u0f3e\u0f3f"+"\u0f71\u0f84"+"\u0f86\u0f87"
-      + "\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u102c\u1032"
-      + "\u1036\u1039"+"\u1056\u1059"+"\u1160\u11a2"+"\u11a8\u11f9"
-      + "\u1712\u1714"+"\u1732\u1734"+"\u1752\u1753"+"\u1772\u1773"
-      + "\u17b4\u17d3"+"\u180b\u180e"+"\u18a9\u18a9"+"\u200c\u200f"
-      + "\u202a\u202e"+"\u206a\u206f"+"\u20d0\u20ea"+"\u302a\u302f"
-      + "\u3099\u309a"+"\ufb1e\ufb1e"+"\ufe00\ufe0f"+"\ufe20\ufe23"
-      + "\ufff9\ufffb"+"\ud834\udd65\ud834\udd69"+"\ud834\udd6d\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad"+"\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f",
-    // Unicode 3.2 property value: {linebreak=complexcontext}
-        "\u0e01\u0e30"+"\u0e32\u0e33"+"\u0e40\u0e46"+"\u0e81\u0e82"
-      + "\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"
-      + "\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"
-      + "\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb0"+"\u0eb2\u0eb3"
-      + "\u0ebd\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0edc\u0edd"
-      + "\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"+"\u1050\u1055"
-      + "\u1780\u17b3",
-    // Unicode 3.2 property value: {linebreak=contingentbreak}
-        "\ufffc\ufffc",
-    // Unicode 3.2 property value: {linebreak=exclamation}
-        "\u0021\u0021"+"\u003f\u003f"+"\u2762\u2763"+"\ufe56\ufe57"
-      + "\uff01\uff01"+"\uff1f\uff1f",
-    // Unicode 3.2 property value: {linebreak=glue}
-        "\u00a0\u00a0"+"\u0f0c\u0f0c"+"\u2007\u2007"+"\u2011\u2011"
-      + "\u202f\u202f"+"\u2060\u2060"+"\ufeff\ufeff",
-    // Unicode 3.2 property value: {linebreak=hyphen}
-        "\u002d\u002d",
-    // Unicode 3.2 property value: {linebreak=ideographic}
-        "\u1100\u1159"+"\u115f\u115f"+"\u2e80\u2e99"+"\u2e9b\u2ef3"
-      + "\u2f00\u2fd5"+"\u2ff0\u2ffb"+"\u3000\u3000"+"\u3003\u3004"
-      + "\u3006\u3007"+"\u3012\u3013"+"\u3020\u3029"+"\u3030\u303a"
-      + "\u303d\u303f"+"\u3042\u3042"+"\u3044\u3044"+"\u3046\u3046"
-      + "\u3048\u3048"+"\u304a\u3062"+"\u3064\u3082"+"\u3084\u3084"
-      + "\u3086\u3086"+"\u3088\u308d"+"\u308f\u3094"+"\u309f\u309f"
-      + "\u30a2\u30a2"+"\u30a4\u30a4"+"\u30a6\u30a6"+"\u30a8\u30a8"
-      + "\u30aa\u30c2"+"\u30c4\u30e2"+"\u30e4\u30e4"+"\u30e6\u30e6"
-      + "\u30e8\u30ed"+"\u30ef\u30f4"+"\u30f7\u30fa"+"\u30fc\u30fc"
-      + "\u30fe\u30ff"+"\u3105\u312c"+"\u3131\u318e"+"\u3190\u31b7"
-      + "\u3200\u321c"+"\u3220\u3243"+"\u3251\u327b"+"\u327f\u32cb"
-      + "\u32d0\u32fe"+"\u3300\u3376"+"\u337b\u33dd"+"\u33e0\u33fe"
-      + "\u3400\u4db5"+"\u4e00\u9fa5"+"\ua000\ua48c"+"\ua490\ua4c6"
-      + "\uac00\ud7a3"+"\uf900\ufa2d"+"\ufa30\ufa6a"+"\ufe30\ufe34"
-      + "\ufe45\ufe46"+"\ufe49\ufe4f"+"\ufe51\ufe51"+"\ufe58\ufe58"
-      + "\ufe5f\ufe66"+"\ufe68\ufe68"+"\ufe6b\ufe6b"+"\uff02\uff03"
-      + "\uff06\uff07"+"\uff0a\uff0b"+"\uff0d\uff0d"+"\uff0f\uff19"
-      + "\uff1c\uff1e"+"\uff20\uff3a"+"\uff3c\uff3c"+"\uff3e\uff5a"
-      + "\uff5c\uff5c"+"\uff5e\uff5e"+"\uffe2\uffe4"+"\ud840\udc00\ud869\uded6"
-      + "\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {linebreak=infixnumeric}
-        "\u002c\u002c"+"\u002e\u002e"+"\u003a\u003b"+"\u0589\u0589",
-    // Unicode 3.2 property value: {linebreak=inseperable}
-        "\u2024\u2026",
-    // Unicode 3.2 property value: {linebreak=linefeed}
-        "\n\n",
-    // Unicode 3.2 property value: {linebreak=mandatorybreak}
-        "\f\f"+"\u2028\u2029",
-    // Unicode 3.2 property value: {linebreak=nonstarter}
-        "\u0e5a\u0e5b"+"\u17d4\u17d4"+"\u17d6\u17da"+"\u203c\u203c"
-      + "\u2044\u2044"+"\u3005\u3005"+"\u301c\u301c"+"\u303b\u303c"
-      + "\u3041\u3041"+"\u3043\u3043"+"\u3045\u3045"+"\u3047\u3047"
-      + "\u3049\u3049"+"\u3063\u3063"+"\u3083\u3083"+"\u3085\u3085"
-      + "\u3087\u3087"+"\u308e\u308e"+"\u3095\u3096"+"\u309b\u309e"
-      + "\u30a0\u30a1"+"\u30a3\u30a3"+"\u30a5\u30a5"+"\u30a7\u30a7"
-      + "\u30a9\u30a9"+"\u30c3\u30c3"+"\u30e3\u30e3"+"\u30e5\u30e5"
-      + "\u30e7\u30e7"+"\u30ee\u30ee"+"\u30f5\u30f6"+"\u30fb\u30fb"
-      + "\u30fd\u30fd"+"\u31f0\u31ff"+"\ufe54\ufe55"+"\uff1a\uff1b"
-      + "\uff65\uff65"+"\uff67\uff70"+"\uff9e\uff9f",
-    // Unicode 3.2 property value: {linebreak=numeric}
-        "\u0030\u0039"+"\u0660\u0669"+"\u06f0\u06f9"+"\u0966\u096f"
-      + "\u09e6\u09ef"+"\u0a66\u0a6f"+"\u0ae6\u0aef"+"\u0b66\u0b6f"
-      + "\u0be7\u0bef"+"\u0c66\u0c6f"+"\u0ce6\u0cef"+"\u0d66\u0d6f"
-      + "\u0e50\u0e59"+"\u0ed0\u0ed9"+"\u0f20\u0f29"+"\u1040\u1049"
-      + "\u1369\u1371"+"\u17e0\u17e9"+"\u1810\u1819"+"\ud835\udfce\ud835\udfff",
-    // Unicode 3.2 property value: {linebreak=openpunctuation}
-        "\u0028\u0028"+"\u005b\u005b"+"\u007b\u007b"+"\u0f3a\u0f3a"
-      + "\u0f3c\u0f3c"+"\u169b\u169b"+"\u201a\u201a"+"\u201e\u201e"
-      + "\u2045\u2045"+"\u207d\u207d"+"\u208d\u208d"+"\u2329\u2329"
-      + "\u23b4\u23b4"+"\u2768\u2768"+"\u276a\u276a"+"\u276c\u276c"
-      + "\u276e\u276e"+"\u2770\u2770"+"\u2772\u2772"+"\u2774\u2774"
-      + "\u27e6\u27e6"+"\u27e8\u27e8"+"\u27ea\u27ea"+"\u2983\u2983"
-      + "\u2985\u2985"+"\u2987\u2987"+"\u2989\u2989"+"\u298b\u298b"
-      + "\u298d\u298d"+"\u298f\u298f"+"\u2991\u2991"+"\u2993\u2993"
-      + "\u2995\u2995"+"\u2997\u2997"+"\u29d8\u29d8"+"\u29da\u29da"
-      + "\u29fc\u29fc"+"\u3008\u3008"+"\u300a\u300a"+"\u300c\u300c"
-      + "\u300e\u300e"+"\u3010\u3010"+"\u3014\u3014"+"\u3016\u3016"
-      + "\u3018\u3018"+"\u301a\u301a"+"\u301d\u301d"+"\ufd3e\ufd3e"
-      + "\ufe35\ufe35"+"\ufe37\ufe37"+"\ufe39\ufe39"+"\ufe3b\ufe3b"
-      + "\ufe3d\ufe3d"+"\ufe3f\ufe3f"+"\ufe41\ufe41"+"\ufe43\ufe43"
-      + "\ufe59\ufe59"+"\ufe5b\ufe5b"+"\ufe5d\ufe5d"+"\uff08\uff08"
-      + "\uff3b\uff3b"+"\uff5b\uff5b"+"\uff5f\uff5f"+"\uff62\uff62",
-    // Unicode 3.2 property value: {linebreak=postfixnumeric}
-        "\u0025\u0025"+"\u00a2\u00a2"+"\u00b0\u00b0"+"\u2030\u2037"
-      + "\u20a7\u20a7"+"\u2103\u2103"+"\u2109\u2109"+"\u2126\u2126"
-      + "\ufdfc\ufdfc"+"\ufe6a\ufe6a"+"\uff05\uff05"+"\uffe0\uffe0",
-    // Unicode 3.2 property value: {linebreak=prefixnumeric}
-        "\u0024\u0024"+"\u002b\u002b"+"\\\\"+"\u00a3\u00a5"
-      + "\u00b1\u00b1"+"\u09f2\u09f3"+"\u0e3f\u0e3f"+"\u17db\u17db"
-      + "\u20a0\u20a6"+"\u20a8\u20b1"+"\u2116\u2116"+"\u2212\u2213"
-      + "\ufe69\ufe69"+"\uff04\uff04"+"\uffe1\uffe1"+"\uffe5\uffe6",
-    // Unicode 3.2 property value: {linebreak=quotation}
-        "\"\""+"\u0027\u0027"+"\u00ab\u00ab"+"\u00bb\u00bb"
-      + "\u2018\u2019"+"\u201b\u201d"+"\u201f\u201f"+"\u2039\u203a"
-      + "\u23b6\u23b6"+"\u275b\u275e",
-    // Unicode 3.2 property value: {linebreak=space}
-        "\u0020\u0020",
-    // Unicode 3.2 property value: {linebreak=unknown}
-        "\u0221\u0221"+"\u0234\u024f"+"\u02ae\u02af"+"\u02ef\u02ff"
-      + "\u0350\u035f"+"\u0370\u0373"+"\u0376\u0379"+"\u037b\u037d"
-      + "\u037f\u0383"+"\u038b\u038b"+"\u038d\u038d"+"\u03a2\u03a2"
-      + "\u03cf\u03cf"+"\u03f7\u03ff"+"\u0487\u0487"+"\u04cf\u04cf"
-      + "\u04f6\u04f7"+"\u04fa\u04ff"+"\u0510\u0530"+"\u0557\u0558"
-      + "\u0560\u0560"+"\u0588\u0588"+"\u058b\u0590"+"\u05a2\u05a2"
-      + "\u05ba\u05ba"+"\u05c5\u05cf"+"\u05eb\u05ef"+"\u05f5\u060b"
-      + "\u060d\u061a"+"\u061c\u061e"+"\u0620\u0620"+"\u063b\u063f"
-      + "\u0656\u065f"+"\u06ee\u06ef"+"\u06ff\u06ff"+"\u070e\u070e"
-      + "\u072d\u072f"+"\u074b\u077f"+"\u07b2\u0900"+"\u0904\u0904"
-      + "\u093a\u093b"+"\u094e\u094f"+"\u0955\u0957"+"\u0971\u0980"
-      + "\u0984\u0984"+"\u098d\u098e"+"\u0991\u0992"+"\u09a9\u09a9"
-      + "\u09b1\u09b1"+"\u09b3\u09b5"+"\u09ba\u09bb"+"\u09bd\u09bd"
-      + "\u09c5\u09c6"+"\u09c9\u09ca"+"\u09ce\u09d6"+"\u09d8\u09db"
-      + "\u09de\u09de"+"\u09e4\u09e5"+"\u09fb\u0a01"+"\u0a03\u0a04"
-      + "\u0a0b\u0a0e"+"\u0a11\u0a12"+"\u0a29\u0a29"+"\u0a31\u0a31"
-      + "\u0a34\u0a34"+"\u0a37\u0a37"+"\u0a3a\u0a3b"+"\u0a3d\u0a3d"
-      + "\u0a43\u0a46"+"\u0a49\u0a4a"+"\u0a4e\u0a58"+"\u0a5d\u0a5d"
-      + "\u0a5f\u0a65"+"\u0a75\u0a80"+"\u0a84\u0a84"+"\u0a8c\u0a8c"
-      + "\u0a8e\u0a8e"+"\u0a92\u0a92"+"\u0aa9\u0aa9"+"\u0ab1\u0ab1"
-      + "\u0ab4\u0ab4"+"\u0aba\u0abb"+"\u0ac6\u0ac6"+"\u0aca\u0aca"
-      + "\u0ace\u0acf"+"\u0ad1\u0adf"+"\u0ae1\u0ae5"+"\u0af0\u0b00"
-      + "\u0b04\u0b04"+"\u0b0d\u0b0e"+"\u0b11\u0b12"+"\u0b29\u0b29"
-      + "\u0b31\u0b31"+"\u0b34\u0b35"+"\u0b3a\u0b3b"+"\u0b44\u0b46"
-      + "\u0b49\u0b4a"+"\u0b4e\u0b55"+"\u0b58\u0b5b"+"\u0b5e\u0b5e"
-      + "\u0b62\u0b65"+"\u0b71\u0b81"+"\u0b84\u0b84"+"\u0b8b\u0b8d"
-      + "\u0b91\u0b91"+"\u0b96\u0b98"+"\u0b9b\u0b9b"+"\u0b9d\u0b9d"
-      + "\u0ba0\u0ba2"+"\u0ba5\u0ba7"+"\u0bab\u0bad"+"\u0bb6\u0bb6"
-      + "\u0bba\u0bbd"+"\u0bc3\u0bc5"+"\u0bc9\u0bc9"+"\u0bce\u0bd6"
-      + "\u0bd8\u0be6"+"\u0bf3\u0c00"+"\u0c04\u0c04"+"\u0c0d\u0c0d"
-      + "\u0c11\u0c11"+"\u0c29\u0c29"+"\u0c34\u0c34"+"\u0c3a\u0c3d"
-      + "\u0c45\u0c45"+"\u0c49\u0c49"+"\u0c4e\u0c54"+"\u0c57\u0c5f"
-      + "\u0c62\u0c65"+"\u0c70\u0c81"+"\u0c84\u0c84"+"\u0c8d\u0c8d"
-      + "\u0c91\u0c91"+"\u0ca9\u0ca9"+"\u0cb4\u0cb4"+"\u0cba\u0cbd"
-      + "\u0cc5\u0cc5"+"\u0cc9\u0cc9"+"\u0cce\u0cd4"+"\u0cd7\u0cdd"
-      + "\u0cdf\u0cdf"+"\u0ce2\u0ce5"+"\u0cf0\u0d01"+"\u0d04\u0d04"
-      + "\u0d0d\u0d0d"+"\u0d11\u0d11"+"\u0d29\u0d29"+"\u0d3a\u0d3d"
-      + "\u0d44\u0d45"+"\u0d49\u0d49"+"\u0d4e\u0d56"+"\u0d58\u0d5f"
-      + "\u0d62\u0d65"+"\u0d70\u0d81"+"\u0d84\u0d84"+"\u0d97\u0d99"
-      + "\u0db2\u0db2"+"\u0dbc\u0dbc"+"\u0dbe\u0dbf"+"\u0dc7\u0dc9"
-      + "\u0dcb\u0dce"+"\u0dd5\u0dd5"+"\u0dd7\u0dd7"+"\u0de0\u0df1"
-      + "\u0df5\u0e00"+"\u0e3b\u0e3e"+"\u0e5c\u0e80"+"\u0e83\u0e83"
-      + "\u0e85\u0e86"+"\u0e89\u0e89"+"\u0e8b\u0e8c"+"\u0e8e\u0e93"
-      + "\u0e98\u0e98"+"\u0ea0\u0ea0"+"\u0ea4\u0ea4"+"\u0ea6\u0ea6"
-      + "\u0ea8\u0ea9"+"\u0eac\u0eac"+"\u0eba\u0eba"+"\u0ebe\u0ebf"
-      + "\u0ec5\u0ec5"+"\u0ec7\u0ec7"+"\u0ece\u0ecf"+"\u0eda\u0edb"
-      + "\u0ede\u0eff"+"\u0f48\u0f48"+"\u0f6b\u0f70"+"\u0f8c\u0f8f"
-      + "\u0f98\u0f98"+"\u0fbd\u0fbd"+"\u0fcd\u0fce"+"\u0fd0\u0fff"
-      + "\u1022\u1022"+"\u1028\u1028"+"\u102b\u102b"+"\u1033\u1035"
-      + "\u103a\u103f"+"\u105a\u109f"+"\u10c6\u10cf"+"\u10f9\u10fa"
-      + "\u10fc\u10ff"+"\u115a\u115e"+"\u11a3\u11a7"+"\u11fa\u11ff"
-      + "\u1207\u1207"+"\u1247\u1247"+"\u1249\u1249"+"\u124e\u124f"
-      + "\u1257\u1257"+"\u1259\u1259"+"\u125e\u125f"+"\u1287\u1287"
-      + "\u1289\u1289"+"\u128e\u128f"+"\u12af\u12af"+"\u12b1\u12b1"
-      + "\u12b6\u12b7"+"\u12bf\u12bf"+"\u12c1\u12c1"+"\u12c6\u12c7"
-      + "\u12cf\u12cf"+"\u12d7\u12d7"+"\u12ef\u12ef"+"\u130f\u130f"
-      + "\u1311\u1311"+"\u1316\u1317"+"\u131f\u131f"+"\u1347\u1347"
-      + "\u135b\u1360"+"\u137d\u139f"+"\u13f5\u1400"+"\u1677\u167f"
-      + "\u169d\u169f"+"\u16f1\u16ff"+"\u170d\u170d"+"\u1715\u171f"
-      + "\u1737\u173f"+"\u1754\u175f"+"\u176d\u176d"+"\u1771\u1771"
-      + "\u1774\u177f"+"\u17dd\u17df"+"\u17ea\u17ff"+"\u180f\u180f"
-      + "\u181a\u181f"+"\u1878\u187f"+"\u18aa\u1dff"+"\u1e9c\u1e9f"
-      + "\u1efa\u1eff"+"\u1f16\u1f17"+"\u1f1e\u1f1f"+"\u1f46\u1f47"
-      + "\u1f4e\u1f4f"+"\u1f58\u1f58"+"\u1f5a\u1f5a"+"\u1f5c\u1f5c"
-      + "\u1f5e\u1f5e"+"\u1f7e\u1f7f"+"\u1fb5\u1fb5"+"\u1fc5\u1fc5"
-      + "\u1fd4\u1fd5"+"\u1fdc\u1fdc"+"\u1ff0\u1ff1"+"\u1ff5\u1ff5"
-      + "\u1fff\u1fff"+"\u2053\u2056"+"\u2058\u205e"+"\u2064\u2069"
-      + "\u2072\u2073"+"\u208f\u209f"+"\u20b2\u20cf"+"\u20eb\u20ff"
-      + "\u213b\u213c"+"\u214c\u2152"+"\u2184\u218f"+"\u23cf\u23ff"
-      + "\u2427\u243f"+"\u244b\u245f"+"\u24ff\u24ff"+"\u2614\u2615"
-      + "\u2618\u2618"+"\u267e\u267f"+"\u268a\u2700"+"\u2705\u2705"
-      + "\u270a\u270b"+"\u2728\u2728"+"\u274c\u274c"+"\u274e\u274e"
-      + "\u2753\u2755"+"\u2757\u2757"+"\u275f\u2760"+"\u2795\u2797"
-      + "\u27b0\u27b0"+"\u27bf\u27cf"+"\u27ec\u27ef"+"\u2b00\u2e7f"
-      + "\u2e9a\u2e9a"+"\u2ef4\u2eff"+"\u2fd6\u2fef"+"\u2ffc\u2fff"
-      + "\u3040\u3040"+"\u3097\u3098"+"\u3100\u3104"+"\u312d\u3130"
-      + "\u318f\u318f"+"\u31b8\u31ef"+"\u321d\u321f"+"\u3244\u3250"
-      + "\u327c\u327e"+"\u32cc\u32cf"+"\u32ff\u32ff"+"\u3377\u337a"
-      + "\u33de\u33df"+"\u33ff\u33ff"+"\u4db6\u4dff"+"\u9fa6\u9fff"
-      + "\ua48d\ua48f"+"\ua4c7\uabff"+"\ud7a4\ud7ff"+"\ue000\uf8ff"
-      + "\ufa2e\ufa2f"+"\ufa6b\ufaff"+"\ufb07\ufb12"+"\ufb18\ufb1c"
-      + "\ufb37\ufb37"+"\ufb3d\ufb3d"+"\ufb3f\ufb3f"+"\ufb42\ufb42"
-      + "\ufb45\ufb45"+"\ufbb2\ufbd2"+"\ufd40\ufd4f"+"\ufd90\ufd91"
-      + "\ufdc8\ufdef"+"\ufdfd\ufdff"+"\ufe10\ufe1f"+"\ufe24\ufe2f"
-      + "\ufe47\ufe48"+"\ufe53\ufe53"+"\ufe67\ufe67"+"\ufe6c\ufe6f"
-      + "\ufe75\ufe75"+"\ufefd\ufefe"+"\uff00\uff00"+"\uffbf\uffc1"
-      + "\uffc8\uffc9"+"\uffd0\uffd1"+"\uffd8\uffd9"+"\uffdd\uffdf"
-      + "\uffe7\uffe7"+"\uffef\ufff8"+"\ufffe\ud800\udeff"+"\ud800\udf1f\ud800\udf1f"
-      + "\ud800\udf24\ud800\udf2f"+"\ud800\udf4b\ud800\udfff"+"\ud801\udc26\ud801\udc27"+"\ud801\udc4e\ud833\udfff"
-      + "\ud834\udcf6\ud834\udcff"+"\ud834\udd27\ud834\udd29"+"\ud834\uddde\ud834\udfff"+"\ud835\udc55\ud835\udc55"
-      + "\ud835\udc9d\ud835\udc9d"+"\ud835\udca0\ud835\udca1"+"\ud835\udca3\ud835\udca4"+"\ud835\udca7\ud835\udca8"
-      + "\ud835\udcad\ud835\udcad"+"\ud835\udcba\ud835\udcba"+"\ud835\udcbc\ud835\udcbc"+"\ud835\udcc1\ud835\udcc1"
-      + "\ud835\udcc4\ud835\udcc4"+"\ud835\udd06\ud835\udd06"+"\ud835\udd0b\ud835\udd0c"+"\ud835\udd15\ud835\udd15"
-      + "\ud835\udd1d\ud835\udd1d"+"\ud835\udd3a\ud835\udd3a"+"\ud835\udd3f\ud835\udd3f"+"\ud835\udd45\ud835\udd45"
-      + "\ud835\udd47\ud835\udd49"+"\ud835\udd51\ud835\udd51"+"\ud835\udea4\ud835\udea7"+"\ud835\udfca\ud835\udfcd"
-      + "\ud836\udc00\ud83f\udfff"+"\ud869\uded7\ud87d\udfff"+"\ud87e\ude1e\udb40\udc00"+"\udb40\udc02\udb40\udc1f"
-      + "\udb40\udc80\udb7f\udfff"+"\udbbf\udffe\udbbf\udfff"+"\udb80\udc00\udbbf\udffd"+"\udbff\udffe\udbff\udfff"
-      + "\udbc0\udc00\udbff\udffd",
-    // Unicode 3.2 property value: {linebreak=zwspace}
-        "\u200b\u200b",
-    // Unicode 3.2 property value: {ll}
-        "\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"+"\u00ba\u00ba"
-      + "\u00df\u00f6"+"\u00f8\u00ff"+"\u0101\u0101"+"\u0103\u0103"
-      + "\u0105\u0105"+"\u0107\u0107"+"\u0109\u0109"+"\u010b\u010b"
-      + "\u010d\u010d"+"\u010f\u010f"+"\u0111\u0111"+"\u0113\u0113"
-      + "\u0115\u0115"+"\u0117\u0117"+"\u0119\u0119"+"\u011b\u011b"
-      + "\u011d\u011d"+"\u011f\u011f"+"\u0121\u0121"+"\u0123\u0123"
-      + "\u0125\u0125"+"\u0127\u0127"+"\u0129\u0129"+"\u012b\u012b"
-      + "\u012d\u012d"+"\u012f\u012f"+"\u0131\u0131"+"\u0133\u0133"
-      + "\u0135\u0135"+"\u0137\u0138"+"\u013a\u013a"+"\u013c\u013c"
-      + "\u013e\u013e"+"\u0140\u0140"+"\u0142\u0142"+"\u0144\u0144"
-      + "\u0146\u0146"+"\u0148\u0149"+"\u014b\u014b"+"\u014d\u014d"
-      + "\u014f\u014f"+"\u0151\u0151"+"\u0153\u0153"+"\u0155\u0155"
-      + "\u0157\u0157"+"\u0159\u0159"+"\u015b\u015b"+"\u015d\u015d"
-      + "\u015f\u015f"+"\u0161\u0161"+"\u0163\u0163"+"\u0165\u0165"
-      + "\u0167\u0167"+"\u0169\u0169"+"\u016b\u016b"+"\u016d\u016d"
-      + "\u016f\u016f"+"\u0171\u0171"+"\u0173\u0173"+"\u0175\u0175"
-      + "\u0177\u0177"+"\u017a\u017a"+"\u017c\u017c"+"\u017e\u0180"
-      + "\u0183\u0183"+"\u0185\u0185"+"\u0188\u0188"+"\u018c\u018d"
-      + "\u0192\u0192"+"\u0195\u0195"+"\u0199\u019b"+"\u019e\u019e"
-      + "\u01a1\u01a1"+"\u01a3\u01a3"+"\u01a5\u01a5"+"\u01a8\u01a8"
-      + "\u01aa\u01ab"+"\u01ad\u01ad"+"\u01b0\u01b0"+"\u01b4\u01b4"
-      + "\u01b6\u01b6"+"\u01b9\u01ba"+"\u01bd\u01bf"+"\u01c6\u01c6"
-      + "\u01c9\u01c9"+"\u01cc\u01cc"+"\u01ce\u01ce"+"\u01d0\u01d0"
-      + "\u01d2\u01d2"+"\u01d4\u01d4"+"\u01d6\u01d6"+"\u01d8\u01d8"
-      + "\u01da\u01da"+"\u01dc\u01dd"+"\u01df\u01df"+"\u01e1\u01e1"
-      + "\u01e3\u01e3"+"\u01e5\u01e5"+"\u01e7\u01e7"+"\u01e9\u01e9"
-      + "\u01eb\u01eb"+"\u01ed\u01ed"+"\u01ef\u01f0"+"\u01f3\u01f3"
-      + "\u01f5\u01f5"+"\u01f9\u01f9"+"\u01fb\u01fb"+"\u01fd\u01fd"
-      + "\u01ff\u01ff"+"\u0201\u0201"+"\u0203\u0203"+"\u0205\u0205"
-      + "\u0207\u0207"+"\u0209\u0209"+"\u020b\u020b"+"\u020d\u020d"
-      + "\u020f\u020f"+"\u0211\u0211"+"\u0213\u0213"+"\u0215\u0215"
-      + "\u0217\u0217"+"\u0219\u0219"+"\u021b\u021b"+"\u021d\u021d"
-      + "\u021f\u021f"+"\u0223\u0223"+"\u0225\u0225"+"\u0227\u0227"
-      + "\u0229\u0229"+"\u022b\u022b"+"\u022d\u022d"+"\u022f\u022f"
-      + "\u0231\u0231"+"\u0233\u0233"+"\u0250\u02ad"+"\u0390\u0390"
-      + "\u03ac\u03ce"+"\u03d0\u03d1"+"\u03d5\u03d7"+"\u03d9\u03d9"
-      + "\u03db\u03db"+"\u03dd\u03dd"+"\u03df\u03df"+"\u03e1\u03e1"
-      + "\u03e3\u03e3"+"\u03e5\u03e5"+"\u03e7\u03e7"+"\u03e9\u03e9"
-      + "\u03eb\u03eb"+"\u03ed\u03ed"+"\u03ef\u03f3"+"\u03f5\u03f5"
-      + "\u0430\u045f"+"\u0461\u0461"+"\u0463\u0463"+"\u0465\u0465"
-      + "\u0467\u0467"+"\u0469\u0469"+"\u046b\u046b"+"\u046d\u046d"
-      + "\u046f\u046f"+"\u0471\u0471"+"\u0473\u0473"+"\u0475\u0475"
-      + "\u0477\u0477"+"\u0479\u0479"+"\u047b\u047b"+"\u047d\u047d"
-      + "\u047f\u047f"+"\u0481\u0481"+"\u048b\u048b"+"\u048d\u048d"
-      + "\u048f\u048f"+"\u0491\u0491"+"\u0493\u0493"+"\u0495\u0495"
-      + "\u0497\u0497"+"\u0499\u0499"+"\u049b\u049b"+"\u049d\u049d"
-      + "\u049f\u049f"+"\u04a1\u04a1"+"\u04a3\u04a3"+"\u04a5\u04a5"
-      + "\u04a7\u04a7"+"\u04a9\u04a9"+"\u04ab\u04ab"+"\u04ad\u04ad"
-      + "\u04af\u04af"+"\u04b1\u04b1"+"\u04b3\u04b3"+"\u04b5\u04b5"
-      + "\u04b7\u04b7"+"\u04b9\u04b9"+"\u04bb\u04bb"+"\u04bd\u04bd"
-      + "\u04bf\u04bf"+"\u04c2\u04c2"+"\u04c4\u04c4"+"\u04c6\u04c6"
-      + "\u04c8\u04c8"+"\u04ca\u04ca"+"\u04cc\u04cc"+"\u04ce\u04ce"
-      + "\u04d1\u04d1"+"\u04d3\u04d3"+"\u04d5\u04d5"+"\u04d7\u04d7"
-      + "\u04d9\u04d9"+"\u04db\u04db"+"\u04dd\u04dd"+"\u04df\u04df"
-      + "\u04e1\u04e1"+"\u04e3\u04e3"+"\u04e5\u04e5"+"\u04e7\u04e7"
-      + "\u04e9\u04e9"+"\u04eb\u04eb"+"\u04ed\u04ed"+"\u04ef\u04ef"
-      + "\u04f1\u04f1"+"\u04f3\u04f3"+"\u04f5\u04f5"+"\u04f9\u04f9"
-      + "\u0501\u0501"+"\u0503\u0503"+"\u0505\u0505"+"\u0507\u0507"
-      + "\u0509\u0509"+"\u050b\u050b"+"\u050d\u050d"+"\u050f\u050f"
-      + "\u0561\u0587"+"\u1e01\u1e01"+"\u1e03\u1e03"+"\u1e05\u1e05"
-      + "\u1e07\u1e07"+"\u1e09\u1e09"+"\u1e0b\u1e0b"+"\u1e0d\u1e0d"
-      + "\u1e0f\u1e0f"+"\u1e11\u1e11"+"\u1e13\u1e13"+"\u1e15\u1e15"
-      + "\u1e17\u1e17"+"\u1e19\u1e19"+"\u1e1b\u1e1b"+"\u1e1d\u1e1d"
-      + "\u1e1f\u1e1f"+"\u1e21\u1e21"+"\u1e23\u1e23"+"\u1e25\u1e25"
-      + "\u1e27\u1e27"+"\u1e29\u1e29"+"\u1e2b\u1e2b"+"\u1e2d\u1e2d"
-      + "\u1e2f\u1e2f"+"\u1e31\u1e31"+"\u1e33\u1e33"+"\u1e35\u1e35"
-      + "\u1e37\u1e37"+"\u1e39\u1e39"+"\u1e3b\u1e3b"+"\u1e3d\u1e3d"
-      + "\u1e3f\u1e3f"+"\u1e41\u1e41"+"\u1e43\u1e43"+"\u1e45\u1e45"
-      + "\u1e47\u1e47"+"\u1e49\u1e49"+"\u1e4b\u1e4b"+"\u1e4d\u1e4d"
-      + "\u1e4f\u1e4f"+"\u1e51\u1e51"+"\u1e53\u1e53"+"\u1e55\u1e55"
-      + "\u1e57\u1e57"+"\u1e59\u1e59"+"\u1e5b\u1e5b"+"\u1e5d\u1e5d"
-      + "\u1e5f\u1e5f"+"\u1e61\u1e61"+"\u1e63\u1e63"+"\u1e65\u1e65"
-      + "\u1e67\u1e67"+"\u1e69\u1e69"+"\u1e6b\u1e6b"+"\u1e6d\u1e6d"
-      + "\u1e6f\u1e6f"+"\u1e71\u1e71"+"\u1e73\u1e73"+"\u1e75\u1e75"
-      + "\u1e77\u1e77"+"\u1e79\u1e79"+"\u1e7b\u1e7b"+"\u1e7d\u1e7d"
-      + "\u1e7f\u1e7f"+"\u1e81\u1e81"+"\u1e83\u1e83"+"\u1e85\u1e85"
-      + "\u1e87\u1e87"+"\u1e89\u1e89"+"\u1e8b\u1e8b"+"\u1e8d\u1e8d"
-      + "\u1e8f\u1e8f"+"\u1e91\u1e91"+"\u1e93\u1e93"+"\u1e95\u1e9b"
-      + "\u1ea1\u1ea1"+"\u1ea3\u1ea3"+"\u1ea5\u1ea5"+"\u1ea7\u1ea7"
-      + "\u1ea9\u1ea9"+"\u1eab\u1eab"+"\u1ead\u1ead"+"\u1eaf\u1eaf"
-      + "\u1eb1\u1eb1"+"\u1eb3\u1eb3"+"\u1eb5\u1eb5"+"\u1eb7\u1eb7"
-      + "\u1eb9\u1eb9"+"\u1ebb\u1ebb"+"\u1ebd\u1ebd"+"\u1ebf\u1ebf"
-      + "\u1ec1\u1ec1"+"\u1ec3\u1ec3"+"\u1ec5\u1ec5"+"\u1ec7\u1ec7"
-      + "\u1ec9\u1ec9"+"\u1ecb\u1ecb"+"\u1ecd\u1ecd"+"\u1ecf\u1ecf"
-      + "\u1ed1\u1ed1"+"\u1ed3\u1ed3"+"\u1ed5\u1ed5"+"\u1ed7\u1ed7"
-      + "\u1ed9\u1ed9"+"\u1edb\u1edb"+"\u1edd\u1edd"+"\u1edf\u1edf"
-      + "\u1ee1\u1ee1"+"\u1ee3\u1ee3"+"\u1ee5\u1ee5"+"\u1ee7\u1ee7"
-      + "\u1ee9\u1ee9"+"\u1eeb\u1eeb"+"\u1eed\u1eed"+"\u1eef\u1eef"
-      + "\u1ef1\u1ef1"+"\u1ef3\u1ef3"+"\u1ef5\u1ef5"+"\u1ef7\u1ef7"
-      + "\u1ef9\u1ef9"+"\u1f00\u1f07"+"\u1f10\u1f15"+"\u1f20\u1f27"
-      + "\u1f30\u1f37"+"\u1f40\u1f45"+"\u1f50\u1f57"+"\u1f60\u1f67"
-      + "\u1f70\u1f7d"+"\u1f80\u1f87"+"\u1f90\u1f97"+"\u1fa0\u1fa7"
-      + "\u1fb0\u1fb4"+"\u1fb6\u1fb7"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"
-      + "\u1fc6\u1fc7"+"\u1fd0\u1fd3"+"\u1fd6\u1fd7"+"\u1fe0\u1fe7"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ff7"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u210a\u210a"+"\u210e\u210f"+"\u2113\u2113"+"\u212f\u212f"
-      + "\u2134\u2134"+"\u2139\u2139"+"\u213d\u213d"+"\u2146\u2149"
-      + "\ufb00\ufb06"+"\ufb13\ufb17"+"\uff41\uff5a"+"\ud801\udc28\ud801\udc4d"
-      + "\ud835\udc1a\ud835\udc33"+"\ud835\udc4e\ud835\udc54"+"\ud835\udc56\ud835\udc67"+"\ud835\udc82\ud835\udc9b"
-      + "\ud835\udcb6\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udccf"+"\ud835\udcea\ud835\udd03"+"\ud835\udd1e\ud835\udd37"+"\ud835\udd52\ud835\udd6b"
-      + "\ud835\udd86\ud835\udd9f"+"\ud835\uddba\ud835\uddd3"+"\ud835\uddee\ud835\ude07"+"\ud835\ude22\ud835\ude3b"
-      + "\ud835\ude56\ud835\ude6f"+"\ud835\ude8a\ud835\udea3"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udee1"
-      + "\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf1b"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf55"
-      + "\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udf8f"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9",
-    // Unicode 3.2 property value: {lm}
-        "\u02b0\u02b8"+"\u02bb\u02c1"+"\u02d0\u02d1"+"\u02e0\u02e4"
-      + "\u02ee\u02ee"+"\u037a\u037a"+"\u0559\u0559"+"\u0640\u0640"
-      + "\u06e5\u06e6"+"\u0e46\u0e46"+"\u0ec6\u0ec6"+"\u17d7\u17d7"
-      + "\u1843\u1843"+"\u3005\u3005"+"\u3031\u3035"+"\u303b\u303b"
-      + "\u309d\u309e"+"\u30fc\u30fe"+"\uff70\uff70"+"\uff9e\uff9f",
-    // Unicode 3.2 property value: {lo}
-        "\u01bb\u01bb"+"\u01c0\u01c3"+"\u05d0\u05ea"+"\u05f0\u05f2"
-      + "\u0621\u063a"+"\u0641\u064a"+"\u066e\u066f"+"\u0671\u06d3"
-      + "\u06d5\u06d5"+"\u06fa\u06fc"+"\u0710\u0710"+"\u0712\u072c"
-      + "\u0780\u07a5"+"\u07b1\u07b1"+"\u0905\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0985\u098c"+"\u098f\u0990"
-      + "\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"
-      + "\u09dc\u09dd"+"\u09df\u09e1"+"\u09f0\u09f1"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a72\u0a74"+"\u0a85\u0a8b"+"\u0a8d\u0a8d"+"\u0a8f\u0a91"
-      + "\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"
-      + "\u0abd\u0abd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae0"+"\u0b05\u0b0c"
-      + "\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"
-      + "\u0b36\u0b39"+"\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c60\u0c61"+"\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"
-      + "\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cde\u0cde"+"\u0ce0\u0ce1"
-      + "\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"
-      + "\u0d60\u0d61"+"\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"
-      + "\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0e01\u0e30"+"\u0e32\u0e33"
-      + "\u0e40\u0e45"+"\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"
-      + "\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"
-      + "\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"
-      + "\u0ead\u0eb0"+"\u0eb2\u0eb3"+"\u0ebd\u0ebd"+"\u0ec0\u0ec4"
-      + "\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f40\u0f47"+"\u0f49\u0f6a"
-      + "\u0f88\u0f8b"+"\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"
-      + "\u1050\u1055"+"\u10d0\u10f8"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1206"+"\u1208\u1246"+"\u1248\u1248"
-      + "\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"
-      + "\u1260\u1286"+"\u1288\u1288"+"\u128a\u128d"+"\u1290\u12ae"
-      + "\u12b0\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12ce"+"\u12d0\u12d6"+"\u12d8\u12ee"
-      + "\u12f0\u130e"+"\u1310\u1310"+"\u1312\u1315"+"\u1318\u131e"
-      + "\u1320\u1346"+"\u1348\u135a"+"\u13a0\u13f4"+"\u1401\u166c"
-      + "\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"+"\u1700\u170c"
-      + "\u170e\u1711"+"\u1720\u1731"+"\u1740\u1751"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1780\u17b3"+"\u17dc\u17dc"+"\u1820\u1842"
-      + "\u1844\u1877"+"\u1880\u18a8"+"\u2135\u2138"+"\u3006\u3006"
-      + "\u303c\u303c"+"\u3041\u3096"+"\u309f\u309f"+"\u30a1\u30fa"
-      + "\u30ff\u30ff"+"\u3105\u312c"+"\u3131\u318e"+"\u31a0\u31b7"
-      + "\u31f0\u31ff"+"\u3400\u4db5"+"\u4e00\u9fa5"+"\ua000\ua48c"
-      + "\uac00\ud7a3"+"\uf900\ufa2d"+"\ufa30\ufa6a"+"\ufb1d\ufb1d"
-      + "\ufb1f\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe70\ufe74"
-      + "\ufe76\ufefc"+"\uff66\uff6f"+"\uff71\uff9d"+"\uffa0\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf49"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {logicalorderexception}
-        "\u0e40\u0e44"+"\u0ec0\u0ec4",
-    // Unicode 3.2 property value: {lowercase}
-        "\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"+"\u00ba\u00ba"
-      + "\u00df\u00f6"+"\u00f8\u00ff"+"\u0101\u0101"+"\u0103\u0103"
-      + "\u0105\u0105"+"\u0107\u0107"+"\u0109\u0109"+"\u010b\u010b"
-      + "\u010d\u010d"+"\u010f\u010f"+"\u0111\u0111"+"\u0113\u0113"
-      + "\u0115\u0115"+"\u0117\u0117"+"\u0119\u0119"+"\u011b\u011b"
-      + "\u011d\u011d"+"\u011f\u011f"+"\u0121\u0121"+"\u0123\u0123"
-      + "\u0125\u0125"+"\u0127\u0127"+"\u0129\u0129"+"\u012b\u012b"
-      + "\u012d\u012d"+"\u012f\u012f"+"\u0131\u0131"+"\u0133\u0133"
-      + "\u0135\u0135"+"\u0137\u0138"+"\u013a\u013a"+"\u013c\u013c"
-      + "\u013e\u013e"+"\u0140\u0140"+"\u0142\u0142"+"\u0144\u0144"
-      + "\u0146\u0146"+"\u0148\u0149"+"\u014b\u014b"+"\u014d\u014d"
-      + "\u014f\u014f"+"\u0151\u0151"+"\u0153\u0153"+"\u0155\u0155"
-      + "\u0157\u0157"+"\u0159\u0159"+"\u015b\u015b"+"\u015d\u015d"
-      + "\u015f\u015f"+"\u0161\u0161"+"\u0163\u0163"+"\u0165\u0165"
-      + "\u0167\u0167"+"\u0169\u0169"+"\u016b\u016b"+"\u016d\u016d"
-      + "\u016f\u016f"+"\u0171\u0171"+"\u0173\u0173"+"\u0175\u0175"
-      + "\u0177\u0177"+"\u017a\u017a"+"\u017c\u017c"+"\u017e\u0180"
-      + "\u0183\u0183"+"\u0185\u0185"+"\u0188\u0188"+"\u018c\u018d"
-      + "\u0192\u0192"+"\u0195\u0195"+"\u0199\u019b"+"\u019e\u019e"
-      + "\u01a1\u01a1"+"\u01a3\u01a3"+"\u01a5\u01a5"+"\u01a8\u01a8"
-      + "\u01aa\u01ab"+"\u01ad\u01ad"+"\u01b0\u01b0"+"\u01b4\u01b4"
-      + "\u01b6\u01b6"+"\u01b9\u01ba"+"\u01bd\u01bf"+"\u01c6\u01c6"
-      + "\u01c9\u01c9"+"\u01cc\u01cc"+"\u01ce\u01ce"+"\u01d0\u01d0"
-      + "\u01d2\u01d2"+"\u01d4\u01d4"+"\u01d6\u01d6"+"\u01d8\u01d8"
-      + "\u01da\u01da"+"\u01dc\u01dd"+"\u01df\u01df"+"\u01e1\u01e1"
-      + "\u01e3\u01e3"+"\u01e5\u01e5"+"\u01e7\u01e7"+"\u01e9\u01e9"
-      + "\u01eb\u01eb"+"\u01ed\u01ed"+"\u01ef\u01f0"+"\u01f3\u01f3"
-      + "\u01f5\u01f5"+"\u01f9\u01f9"+"\u01fb\u01fb"+"\u01fd\u01fd"
-      + "\u01ff\u01ff"+"\u0201\u0201"+"\u0203\u0203"+"\u0205\u0205"
-      + "\u0207\u0207"+"\u0209\u0209"+"\u020b\u020b"+"\u020d\u020d"
-      + "\u020f\u020f"+"\u0211\u0211"+"\u0213\u0213"+"\u0215\u0215"
-      + "\u0217\u0217"+"\u0219\u0219"+"\u021b\u021b"+"\u021d\u021d"
-      + "\u021f\u021f"+"\u0223\u0223"+"\u0225\u0225"+"\u0227\u0227"
-      + "\u0229\u0229"+"\u022b\u022b"+"\u022d\u022d"+"\u022f\u022f"
-      + "\u0231\u0231"+"\u0233\u0233"+"\u0250\u02ad"+"\u02b0\u02b8"
-      + "\u02c0\u02c1"+"\u02e0\u02e4"+"\u0345\u0345"+"\u037a\u037a"
-      + "\u0390\u0390"+"\u03ac\u03ce"+"\u03d0\u03d1"+"\u03d5\u03d7"
-      + "\u03d9\u03d9"+"\u03db\u03db"+"\u03dd\u03dd"+"\u03df\u03df"
-      + "\u03e1\u03e1"+"\u03e3\u03e3"+"\u03e5\u03e5"+"\u03e7\u03e7"
-      + "\u03e9\u03e9"+"\u03eb\u03eb"+"\u03ed\u03ed"+"\u03ef\u03f3"
-      + "\u03f5\u03f5"+"\u0430\u045f"+"\u0461\u0461"+"\u0463\u0463"
-      + "\u0465\u0465"+"\u0467\u0467"+"\u0469\u0469"+"\u046b\u046b"
-      + "\u046d\u046d"+"\u046f\u046f"+"\u0471\u0471"+"\u0473\u0473"
-      + "\u0475\u0475"+"\u0477\u0477"+"\u0479\u0479"+"\u047b\u047b"
-      + "\u047d\u047d"+"\u047f\u047f"+"\u0481\u0481"+"\u048b\u048b"
-      + "\u048d\u048d"+"\u048f\u048f"+"\u0491\u0491"+"\u0493\u0493"
-      + "\u0495\u0495"+"\u0497\u0497"+"\u0499\u0499"+"\u049b\u049b"
-      + "\u049d\u049d"+"\u049f\u049f"+"\u04a1\u04a1"+"\u04a3\u04a3"
-      + "\u04a5\u04a5"+"\u04a7\u04a7"+"\u04a9\u04a9"+"\u04ab\u04ab"
-      + "\u04ad\u04ad"+"\u04af\u04af"+"\u04b1\u04b1"+"\u04b3\u04b3"
-      + "\u04b5\u04b5"+"\u04b7\u04b7"+"\u04b9\u04b9"+"\u04bb\u04bb"
-      + "\u04bd\u04bd"+"\u04bf\u04bf"+"\u04c2\u04c2"+"\u04c4\u04c4"
-      + "\u04c6\u04c6"+"\u04c8\u04c8"+"\u04ca\u04ca"+"\u04cc\u04cc"
-      + "\u04ce\u04ce"+"\u04d1\u04d1"+"\u04d3\u04d3"+"\u04d5\u04d5"
-      + "\u04d7\u04d7"+"\u04d9\u04d9"+"\u04db\u04db"+"\u04dd\u04dd"
-      + "\u04df\u04df"+"\u04e1\u04e1"+"\u04e3\u04e3"+"\u04e5\u04e5"
-      + "\u04e7\u04e7"+"\u04e9\u04e9"+"\u04eb\u04eb"+"\u04ed\u04ed"
-      + "\u04ef\u04ef"+"\u04f1\u04f1"+"\u04f3\u04f3"+"\u04f5\u04f5"
-      + "\u04f9\u04f9"+"\u0501\u0501"+"\u0503\u0503"+"\u0505\u0505"
-      + "\u0507\u0507"+"\u0509\u0509"+"\u050b\u050b"+"\u050d\u050d"
-      + "\u050f\u050f"+"\u0561\u0587"+"\u1e01\u1e01"+"\u1e03\u1e03"
-      + "\u1e05\u1e05"+"\u1e07\u1e07"+"\u1e09\u1e09"+"\u1e0b\u1e0b"
-      + "\u1e0d\u1e0d"+"\u1e0f\u1e0f"+"\u1e11\u1e11"+"\u1e13\u1e13"
-      + "\u1e15\u1e15"+"\u1e17\u1e17"+"\u1e19\u1e19"+"\u1e1b\u1e1b"
-      + "\u1e1d\u1e1d"+"\u1e1f\u1e1f"+"\u1e21\u1e21"+"\u1e23\u1e23"
-      + "\u1e25\u1e25"+"\u1e27\u1e27"+"\u1e29\u1e29"+"\u1e2b\u1e2b"
-      + "\u1e2d\u1e2d"+"\u1e2f\u1e2f"+"\u1e31\u1e31"+"\u1e33\u1e33"
-      + "\u1e35\u1e35"+"\u1e37\u1e37"+"\u1e39\u1e39"+"\u1e3b\u1e3b"
-      + "\u1e3d\u1e3d"+"\u1e3f\u1e3f"+"\u1e41\u1e41"+"\u1e43\u1e43"
-      + "\u1e45\u1e45"+"\u1e47\u1e47"+"\u1e49\u1e49"+"\u1e4b\u1e4b"
-      + "\u1e4d\u1e4d"+"\u1e4f\u1e4f"+"\u1e51\u1e51"+"\u1e53\u1e53"
-      + "\u1e55\u1e55"+"\u1e57\u1e57"+"\u1e59\u1e59"+"\u1e5b\u1e5b"
-      + "\u1e5d\u1e5d"+"\u1e5f\u1e5f"+"\u1e61\u1e61"+"\u1e63\u1e63"
-      + "\u1e65\u1e65"+"\u1e67\u1e67"+"\u1e69\u1e69"+"\u1e6b\u1e6b"
-      + "\u1e6d\u1e6d"+"\u1e6f\u1e6f"+"\u1e71\u1e71"+"\u1e73\u1e73"
-      + "\u1e75\u1e75"+"\u1e77\u1e77"+"\u1e79\u1e79"+"\u1e7b\u1e7b"
-      + "\u1e7d\u1e7d"+"\u1e7f\u1e7f"+"\u1e81\u1e81"+"\u1e83\u1e83"
-      + "\u1e85\u1e85"+"\u1e87\u1e87"+"\u1e89\u1e89"+"\u1e8b\u1e8b"
-      + "\u1e8d\u1e8d"+"\u1e8f\u1e8f"+"\u1e91\u1e91"+"\u1e93\u1e93"
-      + "\u1e95\u1e9b"+"\u1ea1\u1ea1"+"\u1ea3\u1ea3"+"\u1ea5\u1ea5"
-      + "\u1ea7\u1ea7"+"\u1ea9\u1ea9"+"\u1eab\u1eab"+"\u1ead\u1ead"
-      + "\u1eaf\u1eaf"+"\u1eb1\u1eb1"+"\u1eb3\u1eb3"+"\u1eb5\u1eb5"
-      + "\u1eb7\u1eb7"+"\u1eb9\u1eb9"+"\u1ebb\u1ebb"+"\u1ebd\u1ebd"
-      + "\u1ebf\u1ebf"+"\u1ec1\u1ec1"+"\u1ec3\u1ec3"+"\u1ec5\u1ec5"
-      + "\u1ec7\u1ec7"+"\u1ec9\u1ec9"+"\u1ecb\u1ecb"+"\u1ecd\u1ecd"
-      + "\u1ecf\u1ecf"+"\u1ed1\u1ed1"+"\u1ed3\u1ed3"+"\u1ed5\u1ed5"
-      + "\u1ed7\u1ed7"+"\u1ed9\u1ed9"+"\u1edb\u1edb"+"\u1edd\u1edd"
-      + "\u1edf\u1edf"+"\u1ee1\u1ee1"+"\u1ee3\u1ee3"+"\u1ee5\u1ee5"
-      + "\u1ee7\u1ee7"+"\u1ee9\u1ee9"+"\u1eeb\u1eeb"+"\u1eed\u1eed"
-      + "\u1eef\u1eef"+"\u1ef1\u1ef1"+"\u1ef3\u1ef3"+"\u1ef5\u1ef5"
-      + "\u1ef7\u1ef7"+"\u1ef9\u1ef9"+"\u1f00\u1f07"+"\u1f10\u1f15"
-      + "\u1f20\u1f27"+"\u1f30\u1f37"+"\u1f40\u1f45"+"\u1f50\u1f57"
-      + "\u1f60\u1f67"+"\u1f70\u1f7d"+"\u1f80\u1f87"+"\u1f90\u1f97"
-      + "\u1fa0\u1fa7"+"\u1fb0\u1fb4"+"\u1fb6\u1fb7"+"\u1fbe\u1fbe"
-      + "\u1fc2\u1fc4"+"\u1fc6\u1fc7"+"\u1fd0\u1fd3"+"\u1fd6\u1fd7"
-      + "\u1fe0\u1fe7"+"\u1ff2\u1ff4"+"\u1ff6\u1ff7"+"\u2071\u2071"
-      + "\u207f\u207f"+"\u210a\u210a"+"\u210e\u210f"+"\u2113\u2113"
-      + "\u212f\u212f"+"\u2134\u2134"+"\u2139\u2139"+"\u213d\u213d"
-      + "\u2146\u2149"+"\u2170\u217f"+"\u24d0\u24e9"+"\ufb00\ufb06"
-      + "\ufb13\ufb17"+"\uff41\uff5a"+"\ud801\udc28\ud801\udc4d"+"\ud835\udc1a\ud835\udc33"
-      + "\ud835\udc4e\ud835\udc54"+"\ud835\udc56\ud835\udc67"+"\ud835\udc82\ud835\udc9b"+"\ud835\udcb6\ud835\udcb9"
-      + "\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udccf"
-      + "\ud835\udcea\ud835\udd03"+"\ud835\udd1e\ud835\udd37"+"\ud835\udd52\ud835\udd6b"+"\ud835\udd86\ud835\udd9f"
-      + "\ud835\uddba\ud835\uddd3"+"\ud835\uddee\ud835\ude07"+"\ud835\ude22\ud835\ude3b"+"\ud835\ude56\ud835\ude6f"
-      + "\ud835\ude8a\ud835\udea3"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udee1"+"\ud835\udefc\ud835\udf14"
-      + "\ud835\udf16\ud835\udf1b"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf55"+"\ud835\udf70\ud835\udf88"
-      + "\ud835\udf8a\ud835\udf8f"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9",
-    // Unicode 3.2 property value: {lt}
-        "\u01c5\u01c5"+"\u01c8\u01c8"+"\u01cb\u01cb"+"\u01f2\u01f2"
-      + "\u1f88\u1f8f"+"\u1f98\u1f9f"+"\u1fa8\u1faf"+"\u1fbc\u1fbc"
-      + "\u1fcc\u1fcc"+"\u1ffc\u1ffc",
-    // Unicode 3.2 property value: {lu}
-        "\u0041\u005a"+"\u00c0\u00d6"+"\u00d8\u00de"+"\u0100\u0100"
-      + "\u0102\u0102"+"\u0104\u0104"+"\u0106\u0106"+"\u0108\u0108"
-      + "\u010a\u010a"+"\u010c\u010c"+"\u010e\u010e"+"\u0110\u0110"
-      + "\u0112\u0112"+"\u0114\u0114"+"\u0116\u0116"+"\u0118\u0118"
-      + "\u011a\u011a"+"\u011c\u011c"+"\u011e\u011e"+"\u0120\u0120"
-      + "\u0122\u0122"+"\u0124\u0124"+"\u0126\u0126"+"\u0128\u0128"
-      + "\u012a\u012a"+"\u012c\u012c"+"\u012e\u012e"+"\u0130\u0130"
-      + "\u0132\u0132"+"\u0134\u0134"+"\u0136\u0136"+"\u0139\u0139"
-      + "\u013b\u013b"+"\u013d\u013d"+"\u013f\u013f"+"\u0141\u0141"
-      + "\u0143\u0143"+"\u0145\u0145"+"\u0147\u0147"+"\u014a\u014a"
-      + "\u014c\u014c"+"\u014e\u014e"+"\u0150\u0150"+"\u0152\u0152"
-      + "\u0154\u0154"+"\u0156\u0156"+"\u0158\u0158"+"\u015a\u015a"
-      + "\u015c\u015c"+"\u015e\u015e"+"\u0160\u0160"+"\u0162\u0162"
-      + "\u0164\u0164"+"\u0166\u0166"+"\u0168\u0168"+"\u016a\u016a"
-      + "\u016c\u016c"+"\u016e\u016e"+"\u0170\u0170"+"\u0172\u0172"
-      + "\u0174\u0174"+"\u0176\u0176"+"\u0178\u0179"+"\u017b\u017b"
-      + "\u017d\u017d"+"\u0181\u0182"+"\u0184\u0184"+"\u0186\u0187"
-      + "\u0189\u018b"+"\u018e\u0191"+"\u0193\u0194"+"\u0196\u0198"
-      + "\u019c\u019d"+"\u019f\u01a0"+"\u01a2\u01a2"+"\u01a4\u01a4"
-      + "\u01a6\u01a7"+"\u01a9\u01a9"+"\u01ac\u01ac"+"\u01ae\u01af"
-      + "\u01b1\u01b3"+"\u01b5\u01b5"+"\u01b7\u01b8"+"\u01bc\u01bc"
-      + "\u01c4\u01c4"+"\u01c7\u01c7"+"\u01ca\u01ca"+"\u01cd\u01cd"
-      + "\u01cf\u01cf"+"\u01d1\u01d1"+"\u01d3\u01d3"+"\u01d5\u01d5"
-      + "\u01d7\u01d7"+"\u01d9\u01d9"+"\u01db\u01db"+"\u01de\u01de"
-      + "\u01e0\u01e0"+"\u01e2\u01e2"+"\u01e4\u01e4"+"\u01e6\u01e6"
-      + "\u01e8\u01e8"+"\u01ea\u01ea"+"\u01ec\u01ec"+"\u01ee\u01ee"
-      + "\u01f1\u01f1"+"\u01f4\u01f4"+"\u01f6\u01f8"+"\u01fa\u01fa"
-      + "\u01fc\u01fc"+"\u01fe\u01fe"+"\u0200\u0200"+"\u0202\u0202"
-      + "\u0204\u0204"+"\u0206\u0206"+"\u0208\u0208"+"\u020a\u020a"
-      + "\u020c\u020c"+"\u020e\u020e"+"\u0210\u0210"+"\u0212\u0212"
-      + "\u0214\u0214"+"\u0216\u0216"+"\u0218\u0218"+"\u021a\u021a"
-      + "\u021c\u021c"+"\u021e\u021e"+"\u0220\u0220"+"\u0222\u0222"
-      + "\u0224\u0224"+"\u0226\u0226"+"\u0228\u0228"+"\u022a\u022a"
-      + "\u022c\u022c"+"\u022e\u022e"+"\u0230\u0230"+"\u0232\u0232"
-      + "\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"+"\u038e\u038f"
-      + "\u0391\u03a1"+"\u03a3\u03ab"+"\u03d2\u03d4"+"\u03d8\u03d8"
-      + "\u03da\u03da"+"\u03dc\u03dc"+"\u03de\u03de"+"\u03e0\u03e0"
-      + "\u03e2\u03e2"+"\u03e4\u03e4"+"\u03e6\u03e6"+"\u03e8\u03e8"
-      + "\u03ea\u03ea"+"\u03ec\u03ec"+"\u03ee\u03ee"+"\u03f4\u03f4"
-      + "\u0400\u042f"+"\u0460\u0460"+"\u0462\u0462"+"\u0464\u0464"
-      + "\u0466\u0466"+"\u0468\u0468"+"\u046a\u046a"+"\u046c\u046c"
-      + "\u046e\u046e"+"\u0470\u0470"+"\u0472\u0472"+"\u0474\u0474"
-      + "\u0476\u0476"+"\u0478\u0478"+"\u047a\u047a"+"\u047c\u047c"
-      + "\u047e\u047e"+"\u0480\u0480"+"\u048a\u048a"+"\u048c\u048c"
-      + "\u048e\u048e"+"\u0490\u0490"+"\u0492\u0492"+"\u0494\u0494"
-      + "\u0496\u0496"+"\u0498\u0498"+"\u049a\u049a"+"\u049c\u049c"
-      + "\u049e\u049e"+"\u04a0\u04a0"+"\u04a2\u04a2"+"\u04a4\u04a4"
-      + "\u04a6\u04a6"+"\u04a8\u04a8"+"\u04aa\u04aa"+"\u04ac\u04ac"
-      + "\u04ae\u04ae"+"\u04b0\u04b0"+"\u04b2\u04b2"+"\u04b4\u04b4"
-      + "\u04b6\u04b6"+"\u04b8\u04b8"+"\u04ba\u04ba"+"\u04bc\u04bc"
-      + "\u04be\u04be"+"\u04c0\u04c1"+"\u04c3\u04c3"+"\u04c5\u04c5"
-      + "\u04c7\u04c7"+"\u04c9\u04c9"+"\u04cb\u04cb"+"\u04cd\u04cd"
-      + "\u04d0\u04d0"+"\u04d2\u04d2"+"\u04d4\u04d4"+"\u04d6\u04d6"
-      + "\u04d8\u04d8"+"\u04da\u04da"+"\u04dc\u04dc"+"\u04de\u04de"
-      + "\u04e0\u04e0"+"\u04e2\u04e2"+"\u04e4\u04e4"+"\u04e6\u04e6"
-      + "\u04e8\u04e8"+"\u04ea\u04ea"+"\u04ec\u04ec"+"\u04ee\u04ee"
-      + "\u04f0\u04f0"+"\u04f2\u04f2"+"\u04f4\u04f4"+"\u04f8\u04f8"
-      + "\u0500\u0500"+"\u0502\u0502"+"\u0504\u0504"+"\u0506\u0506"
-      + "\u0508\u0508"+"\u050a\u050a"+"\u050c\u050c"+"\u050e\u050e"
-      + "\u0531\u0556"+"\u10a0\u10c5"+"\u1e00\u1e00"+"\u1e02\u1e02"
-      + "\u1e04\u1e04"+"\u1e06\u1e06"+"\u1e08\u1e08"+"\u1e0a\u1e0a"
-      + "\u1e0c\u1e0c"+"\u1e0e\u1e0e"+"\u1e10\u1e10"+"\u1e12\u1e12"
-      + "\u1e14\u1e14"+"\u1e16\u1e16"+"\u1e18\u1e18"+"\u1e1a\u1e1a"
-      + "\u1e1c\u1e1c"+"\u1e1e\u1e1e"+"\u1e20\u1e20"+"\u1e22\u1e22"
-      + "\u1e24\u1e24"+"\u1e26\u1e26"+"\u1e28\u1e28"+"\u1e2a\u1e2a"
-      + "\u1e2c\u1e2c"+"\u1e2e\u1e2e"+"\u1e30\u1e30"+"\u1e32\u1e32"
-      + "\u1e34\u1e34"+"\u1e36\u1e36"+"\u1e38\u1e38"+"\u1e3a\u1e3a"
-      + "\u1e3c\u1e3c"+"\u1e3e\u1e3e"+"\u1e40\u1e40"+"\u1e42\u1e42"
-      + "\u1e44\u1e44"+"\u1e46\u1e46"+"\u1e48\u1e48"+"\u1e4a\u1e4a"
-      + "\u1e4c\u1e4c"+"\u1e4e\u1e4e"+"\u1e50\u1e50"+"\u1e52\u1e52"
-      + "\u1e54\u1e54"+"\u1e56\u1e56"+"\u1e58\u1e58"+"\u1e5a\u1e5a"
-      + "\u1e5c\u1e5c"+"\u1e5e\u1e5e"+"\u1e60\u1e60"+"\u1e62\u1e62"
-      + "\u1e64\u1e64"+"\u1e66\u1e66"+"\u1e68\u1e68"+"\u1e6a\u1e6a"
-      + "\u1e6c\u1e6c"+"\u1e6e\u1e6e"+"\u1e70\u1e70"+"\u1e72\u1e72"
-      + "\u1e74\u1e74"+"\u1e76\u1e76"+"\u1e78\u1e78"+"\u1e7a\u1e7a"
-      + "\u1e7c\u1e7c"+"\u1e7e\u1e7e"+"\u1e80\u1e80"+"\u1e82\u1e82"
-      + "\u1e84\u1e84"+"\u1e86\u1e86"+"\u1e88\u1e88"+"\u1e8a\u1e8a"
-      + "\u1e8c\u1e8c"+"\u1e8e\u1e8e"+"\u1e90\u1e90"+"\u1e92\u1e92"
-      + "\u1e94\u1e94"+"\u1ea0\u1ea0"+"\u1ea2\u1ea2"+"\u1ea4\u1ea4"
-      + "\u1ea6\u1ea6"+"\u1ea8\u1ea8"+"\u1eaa\u1eaa"+"\u1eac\u1eac"
-      + "\u1eae\u1eae"+"\u1eb0\u1eb0"+"\u1eb2\u1eb2"+"\u1eb4\u1eb4"
-      + "\u1eb6\u1eb6"+"\u1eb8\u1eb8"+"\u1eba\u1eba"+"\u1ebc\u1ebc"
-      + "\u1ebe\u1ebe"+"\u1ec0\u1ec0"+"\u1ec2\u1ec2"+"\u1ec4\u1ec4"
-      + "\u1ec6\u1ec6"+"\u1ec8\u1ec8"+"\u1eca\u1eca"+"\u1ecc\u1ecc"
-      + "\u1ece\u1ece"+"\u1ed0\u1ed0"+"\u1ed2\u1ed2"+"\u1ed4\u1ed4"
-      + "\u1ed6\u1ed6"+"\u1ed8\u1ed8"+"\u1eda\u1eda"+"\u1edc\u1edc"
-      + "\u1ede\u1ede"+"\u1ee0\u1ee0"+"\u1ee2\u1ee2"+"\u1ee4\u1ee4"
-      + "\u1ee6\u1ee6"+"\u1ee8\u1ee8"+"\u1eea\u1eea"+"\u1eec\u1eec"
-      + "\u1eee\u1eee"+"\u1ef0\u1ef0"+"\u1ef2\u1ef2"+"\u1ef4\u1ef4"
-      + "\u1ef6\u1ef6"+"\u1ef8\u1ef8"+"\u1f08\u1f0f"+"\u1f18\u1f1d"
-      + "\u1f28\u1f2f"+"\u1f38\u1f3f"+"\u1f48\u1f4d"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f5f"+"\u1f68\u1f6f"
-      + "\u1fb8\u1fbb"+"\u1fc8\u1fcb"+"\u1fd8\u1fdb"+"\u1fe8\u1fec"
-      + "\u1ff8\u1ffb"+"\u2102\u2102"+"\u2107\u2107"+"\u210b\u210d"
-      + "\u2110\u2112"+"\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"
-      + "\u2126\u2126"+"\u2128\u2128"+"\u212a\u212d"+"\u2130\u2131"
-      + "\u2133\u2133"+"\u213e\u213f"+"\u2145\u2145"+"\uff21\uff3a"
-      + "\ud801\udc00\ud801\udc25"+"\ud835\udc00\ud835\udc19"+"\ud835\udc34\ud835\udc4d"+"\ud835\udc68\ud835\udc81"
-      + "\ud835\udc9c\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb5"+"\ud835\udcd0\ud835\udce9"+"\ud835\udd04\ud835\udd05"
-      + "\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd38\ud835\udd39"
-      + "\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"
-      + "\ud835\udd6c\ud835\udd85"+"\ud835\udda0\ud835\uddb9"+"\ud835\uddd4\ud835\udded"+"\ud835\ude08\ud835\ude21"
-      + "\ud835\ude3c\ud835\ude55"+"\ud835\ude70\ud835\ude89"+"\ud835\udea8\ud835\udec0"+"\ud835\udee2\ud835\udefa"
-      + "\ud835\udf1c\ud835\udf34"+"\ud835\udf56\ud835\udf6e"+"\ud835\udf90\ud835\udfa8",
-    // Unicode 3.2 property value: {malayalam}
-        "\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"
-      + "\u0d2a\u0d39"+"\u0d3e\u0d43"+"\u0d46\u0d48"+"\u0d4a\u0d4d"
-      + "\u0d57\u0d57"+"\u0d60\u0d61"+"\u0d66\u0d6f",
-    // Unicode 3.2 property value: {math}
-        "\u0028\u002b"+"\u002d\u002d"+"\u002f\u002f"+"\u003c\u003e"
-      + "\u005b\u005e"+"\u007b\u007e"+"\u00ac\u00ac"+"\u00b1\u00b1"
-      + "\u00d7\u00d7"+"\u00f7\u00f7"+"\u03f6\u03f6"+"\u2016\u2016"
-      + "\u2032\u2034"+"\u2044\u2044"+"\u2052\u2052"+"\u207a\u207e"
-      + "\u208a\u208e"+"\u20d0\u20dc"+"\u20e1\u20e1"+"\u2102\u2102"
-      + "\u210a\u2113"+"\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"
-      + "\u2128\u2128"+"\u212c\u212d"+"\u212f\u2131"+"\u2133\u2138"
-      + "\u2140\u2144"+"\u214b\u214b"+"\u2190\u2194"+"\u219a\u219b"
-      + "\u21a0\u21a0"+"\u21a3\u21a3"+"\u21a6\u21a6"+"\u21ae\u21ae"
-      + "\u21ce\u21cf"+"\u21d2\u21d2"+"\u21d4\u21d4"+"\u21f4\u22ff"
-      + "\u2308\u230b"+"\u2320\u2321"+"\u237c\u237c"+"\u239b\u23b3"
-      + "\u25b7\u25b7"+"\u25c1\u25c1"+"\u25f8\u25ff"+"\u266f\u266f"
-      + "\u27d0\u27e5"+"\u27f0\u27ff"+"\u2900\u2982"+"\u2999\u29d7"
-      + "\u29dc\u29fb"+"\u29fe\u2aff"+"\ufb29\ufb29"+"\ufe35\ufe38"
-      + "\ufe59\ufe5c"+"\ufe61\ufe66"+"\ufe68\ufe68"+"\uff08\uff0b"
-      + "\uff0d\uff0d"+"\uff0f\uff0f"+"\uff1c\uff1e"+"\uff3b\uff3e"
-      + "\uff5b\uff5e"+"\uffe2\uffe2"+"\uffe9\uffec"+"\ud835\udc00\ud835\udc54"
-      + "\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"
-      + "\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"
-      + "\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"
-      + "\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"+"\ud835\udea8\ud835\udfc9"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 3.2 property value: {mc}
-        "\u0903\u0903"+"\u093e\u0940"+"\u0949\u094c"+"\u0982\u0983"
-      + "\u09be\u09c0"+"\u09c7\u09c8"+"\u09cb\u09cc"+"\u09d7\u09d7"
-      + "\u0a3e\u0a40"+"\u0a83\u0a83"+"\u0abe\u0ac0"+"\u0ac9\u0ac9"
-      + "\u0acb\u0acc"+"\u0b02\u0b03"+"\u0b3e\u0b3e"+"\u0b40\u0b40"
-      + "\u0b47\u0b48"+"\u0b4b\u0b4c"+"\u0b57\u0b57"+"\u0bbe\u0bbf"
-      + "\u0bc1\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcc"+"\u0bd7\u0bd7"
-      + "\u0c01\u0c03"+"\u0c41\u0c44"+"\u0c82\u0c83"+"\u0cbe\u0cbe"
-      + "\u0cc0\u0cc4"+"\u0cc7\u0cc8"+"\u0cca\u0ccb"+"\u0cd5\u0cd6"
-      + "\u0d02\u0d03"+"\u0d3e\u0d40"+"\u0d46\u0d48"+"\u0d4a\u0d4c"
-      + "\u0d57\u0d57"+"\u0d82\u0d83"+"\u0dcf\u0dd1"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0f3e\u0f3f"+"\u0f7f\u0f7f"+"\u102c\u102c"
-      + "\u1031\u1031"+"\u1038\u1038"+"\u1056\u1057"+"\u17b4\u17b6"
-      + "\u17be\u17c5"+"\u17c7\u17c8"+"\ud834\udd65\ud834\udd66"+"\ud834\udd6d\ud834\udd72",
-    // Unicode 3.2 property value: {me}
-        "\u0488\u0489"+"\u06de\u06de"+"\u20dd\u20e0"+"\u20e2\u20e4",
-    // Unicode 3.2 property value: {mn}
-        "\u0300\u034f"+"\u0360\u036f"+"\u0483\u0486"+"\u0591\u05a1"
-      + "\u05a3\u05b9"+"\u05bb\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"
-      + "\u05c4\u05c4"+"\u064b\u0655"+"\u0670\u0670"+"\u06d6\u06dc"
-      + "\u06df\u06e4"+"\u06e7\u06e8"+"\u06ea\u06ed"+"\u0711\u0711"
-      + "\u0730\u074a"+"\u07a6\u07b0"+"\u0901\u0902"+"\u093c\u093c"
-      + "\u0941\u0948"+"\u094d\u094d"+"\u0951\u0954"+"\u0962\u0963"
-      + "\u0981\u0981"+"\u09bc\u09bc"+"\u09c1\u09c4"+"\u09cd\u09cd"
-      + "\u09e2\u09e3"+"\u0a02\u0a02"+"\u0a3c\u0a3c"+"\u0a41\u0a42"
-      + "\u0a47\u0a48"+"\u0a4b\u0a4d"+"\u0a70\u0a71"+"\u0a81\u0a82"
-      + "\u0abc\u0abc"+"\u0ac1\u0ac5"+"\u0ac7\u0ac8"+"\u0acd\u0acd"
-      + "\u0b01\u0b01"+"\u0b3c\u0b3c"+"\u0b3f\u0b3f"+"\u0b41\u0b43"
-      + "\u0b4d\u0b4d"+"\u0b56\u0b56"+"\u0b82\u0b82"+"\u0bc0\u0bc0"
-      + "\u0bcd\u0bcd"+"\u0c3e\u0c40"+"\u0c46\u0c48"+"\u0c4a\u0c4d"
-      + "\u0c55\u0c56"+"\u0cbf\u0cbf"+"\u0cc6\u0cc6"+"\u0ccc\u0ccd"
-      + "\u0d41\u0d43"+"\u0d4d\u0d4d"+"\u0dca\u0dca"+"\u0dd2\u0dd4"
-      + "\u0dd6\u0dd6"+"\u0e31\u0e31"+"\u0e34\u0e3a"+"\u0e47\u0e4e"
-      + "\u0eb1\u0eb1"+"\u0eb4\u0eb9"+"\u0ebb\u0ebc"+"\u0ec8\u0ecd"
-      + "\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f71\u0f7e"+"\u0f80\u0f84"+"\u0f86\u0f87"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u102d\u1030"+"\u1032\u1032"
-      + "\u1036\u1037"+"\u1039\u1039"+"\u1058\u1059"+"\u1712\u1714"
-      + "\u1732\u1734"+"\u1752\u1753"+"\u1772\u1773"+"\u17b7\u17bd"
-      + "\u17c6\u17c6"+"\u17c9\u17d3"+"\u180b\u180d"+"\u18a9\u18a9"
-      + "\u20d0\u20dc"+"\u20e1\u20e1"+"\u20e5\u20ea"+"\u302a\u302f"
-      + "\u3099\u309a"+"\ufb1e\ufb1e"+"\ufe00\ufe0f"+"\ufe20\ufe23"
-      + "\ud834\udd67\ud834\udd69"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"+"\ud834\uddaa\ud834\uddad",
-    // Unicode 3.2 property value: {mongolian}
-        "\u1810\u1819"+"\u1820\u1877"+"\u1880\u18a9",
-    // Unicode 3.2 property value: {myanmar}
-        "\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"+"\u102c\u1032"
-      + "\u1036\u1039"+"\u1040\u1049"+"\u1050\u1059",
-    // Unicode 3.2 property value: {nd}
-        "\u0030\u0039"+"\u0660\u0669"+"\u06f0\u06f9"+"\u0966\u096f"
-      + "\u09e6\u09ef"+"\u0a66\u0a6f"+"\u0ae6\u0aef"+"\u0b66\u0b6f"
-      + "\u0be7\u0bef"+"\u0c66\u0c6f"+"\u0ce6\u0cef"+"\u0d66\u0d6f"
-      + "\u0e50\u0e59"+"\u0ed0\u0ed9"+"\u0f20\u0f29"+"\u1040\u1049"
-      + "\u1369\u1371"+"\u17e0\u17e9"+"\u1810\u1819"+"\uff10\uff19"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 3.2 property value: {nl}
-        "\u16ee\u16f0"+"\u2160\u2183"+"\u3007\u3007"+"\u3021\u3029"
-      + "\u3038\u303a"+"\ud800\udf4a\ud800\udf4a",
-    // Unicode 3.2 property value: {no}
-        "\u00b2\u00b3"+"\u00b9\u00b9"+"\u00bc\u00be"+"\u09f4\u09f9"
-      + "\u0bf0\u0bf2"+"\u0f2a\u0f33"+"\u1372\u137c"+"\u2070\u2070"
-      + "\u2074\u2079"+"\u2080\u2089"+"\u2153\u215f"+"\u2460\u249b"
-      + "\u24ea\u24fe"+"\u2776\u2793"+"\u3192\u3195"+"\u3220\u3229"
-      + "\u3251\u325f"+"\u3280\u3289"+"\u32b1\u32bf"+"\ud800\udf20\ud800\udf23",
-    // Unicode 3.2 property value: {noncharactercodepoint}
-        "\ufdd0\ufdef"+"\ufffe\uffff"+"\ud83f\udffe\ud83f\udfff"+"\ud87f\udffe\ud87f\udfff"
-      + "\ud8bf\udffe\ud8bf\udfff"+"\ud8ff\udffe\ud8ff\udfff"+"\ud93f\udffe\ud93f\udfff"+"\ud97f\udffe\ud97f\udfff"
-      + "\ud9bf\udffe\ud9bf\udfff"+"\ud9ff\udffe\ud9ff\udfff"+"\uda3f\udffe\uda3f\udfff"+"\uda7f\udffe\uda7f\udfff"
-      + "\udabf\udffe\udabf\udfff"+"\udaff\udffe\udaff\udfff"+"\udb3f\udffe\udb3f\udfff"+"\udb7f\udffe\udb7f\udfff"
-      + "\udbbf\udffe\udbbf\udfff"+"\udbff\udffe\udbff\udfff",
-    // Unicode 3.2 property value: {ogham}
-        "\u1681\u169a",
-    // Unicode 3.2 property value: {olditalic}
-        "\ud800\udf00\ud800\udf1e",
-    // Unicode 3.2 property value: {oriya}
-        "\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"
-      + "\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b36\u0b39"+"\u0b3c\u0b43"
-      + "\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b5c\u0b5d"
-      + "\u0b5f\u0b61"+"\u0b66\u0b6f",
-    // Unicode 3.2 property value: {otheralphabetic}
-        "\u0345\u0345"+"\u05b0\u05b9"+"\u05bb\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c4"+"\u064b\u0655"+"\u0670\u0670"
-      + "\u06d6\u06dc"+"\u06e1\u06e4"+"\u06e7\u06e8"+"\u06ed\u06ed"
-      + "\u0711\u0711"+"\u0730\u073f"+"\u07a6\u07b0"+"\u0901\u0903"
-      + "\u093e\u094c"+"\u0962\u0963"+"\u0981\u0983"+"\u09be\u09c4"
-      + "\u09c7\u09c8"+"\u09cb\u09cc"+"\u09d7\u09d7"+"\u09e2\u09e3"
-      + "\u0a02\u0a02"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4c"
-      + "\u0a70\u0a71"+"\u0a81\u0a83"+"\u0abe\u0ac5"+"\u0ac7\u0ac9"
-      + "\u0acb\u0acc"+"\u0b01\u0b03"+"\u0b3e\u0b43"+"\u0b47\u0b48"
-      + "\u0b4b\u0b4c"+"\u0b56\u0b57"+"\u0b82\u0b82"+"\u0bbe\u0bc2"
-      + "\u0bc6\u0bc8"+"\u0bca\u0bcc"+"\u0bd7\u0bd7"+"\u0c01\u0c03"
-      + "\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4c"+"\u0c55\u0c56"
-      + "\u0c82\u0c83"+"\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccc"
-      + "\u0cd5\u0cd6"+"\u0d02\u0d03"+"\u0d3e\u0d43"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4c"+"\u0d57\u0d57"+"\u0d82\u0d83"+"\u0dcf\u0dd4"
-      + "\u0dd6\u0dd6"+"\u0dd8\u0ddf"+"\u0df2\u0df3"+"\u0e31\u0e31"
-      + "\u0e34\u0e3a"+"\u0e4d\u0e4d"+"\u0eb1\u0eb1"+"\u0eb4\u0eb9"
-      + "\u0ebb\u0ebc"+"\u0ecd\u0ecd"+"\u0f71\u0f81"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u102c\u1032"+"\u1036\u1036"+"\u1038\u1038"
-      + "\u1056\u1059"+"\u16ee\u16f0"+"\u1712\u1713"+"\u1732\u1733"
-      + "\u1752\u1753"+"\u1772\u1773"+"\u17b4\u17c8"+"\u18a9\u18a9"
-      + "\u2160\u2183"+"\ufb1e\ufb1e"+"\ud800\udf4a\ud800\udf4a",
-    // Unicode 3.2 property value: {otherdefaultignorablecodepoint}
-        "\u180b\u180d"+"\u2060\u206f"+"\ufe00\ufe0f"+"\ufff0\ufffb"
-      + "\udb40\udc00\udb43\udfff",
-    // Unicode 3.2 property value: {othergraphemeextend}
-        "\uff9e\uff9f",
-    // Unicode 3.2 property value: {otherlowercase}
-        "\u02b0\u02b8"+"\u02c0\u02c1"+"\u02e0\u02e4"+"\u0345\u0345"
-      + "\u037a\u037a"+"\u2170\u217f"+"\u24d0\u24e9",
-    // Unicode 3.2 property value: {othermath}
-        "\u0028\u002a"+"\u002d\u002d"+"\u002f\u002f"+"\u005b\u005e"
-      + "\u007b\u007b"+"\u007d\u007d"+"\u2016\u2016"+"\u2032\u2034"
-      + "\u207d\u207e"+"\u208d\u208e"+"\u20d0\u20dc"+"\u20e1\u20e1"
-      + "\u2102\u2102"+"\u210a\u2113"+"\u2115\u2115"+"\u2119\u211d"
-      + "\u2124\u2124"+"\u2128\u2128"+"\u212c\u212d"+"\u212f\u2131"
-      + "\u2133\u2138"+"\ufe35\ufe38"+"\ufe59\ufe5c"+"\ufe61\ufe61"
-      + "\ufe63\ufe63"+"\ufe68\ufe68"+"\uff08\uff0a"+"\uff0d\uff0d"
-      + "\uff0f\uff0f"+"\uff3b\uff3e"+"\uff5b\uff5b"+"\uff5d\uff5d"
-      + "\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"
-      + "\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"
-      + "\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"
-      + "\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"
-      + "\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"
-      + "\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9"+"\ud835\udfce\ud835\udfff",
-    // Unicode 3.2 property value: {otheruppercase}
-        "\u2160\u216f"+"\u24b6\u24cf",
-    // Unicode 3.2 property value: {pc}
-        "\u005f\u005f"+"\u203f\u2040"+"\u30fb\u30fb"+"\ufe33\ufe34"
-      + "\ufe4d\ufe4f"+"\uff3f\uff3f"+"\uff65\uff65",
-    // Unicode 3.2 property value: {pd}
-        "\u002d\u002d"+"\u00ad\u00ad"+"\u058a\u058a"+"\u1806\u1806"
-      + "\u2010\u2015"+"\u301c\u301c"+"\u3030\u3030"+"\u30a0\u30a0"
-      + "\ufe31\ufe32"+"\ufe58\ufe58"+"\ufe63\ufe63"+"\uff0d\uff0d",
-    // Unicode 3.2 property value: {pe}
-        "\u0029\u0029"+"\u005d\u005d"+"\u007d\u007d"+"\u0f3b\u0f3b"
-      + "\u0f3d\u0f3d"+"\u169c\u169c"+"\u2046\u2046"+"\u207e\u207e"
-      + "\u208e\u208e"+"\u232a\u232a"+"\u23b5\u23b5"+"\u2769\u2769"
-      + "\u276b\u276b"+"\u276d\u276d"+"\u276f\u276f"+"\u2771\u2771"
-      + "\u2773\u2773"+"\u2775\u2775"+"\u27e7\u27e7"+"\u27e9\u27e9"
-      + "\u27eb\u27eb"+"\u2984\u2984"+"\u2986\u2986"+"\u2988\u2988"
-      + "\u298a\u298a"+"\u298c\u298c"+"\u298e\u298e"+"\u2990\u2990"
-      + "\u2992\u2992"+"\u2994\u2994"+"\u2996\u2996"+"\u2998\u2998"
-      + "\u29d9\u29d9"+"\u29db\u29db"+"\u29fd\u29fd"+"\u3009\u3009"
-      + "\u300b\u300b"+"\u300d\u300d"+"\u300f\u300f"+"\u3011\u3011"
-      + "\u3015\u3015"+"\u3017\u3017"+"\u3019\u3019"+"\u301b\u301b"
-      + "\u301e\u301f"+"\ufd3f\ufd3f"+"\ufe36\ufe36"+"\ufe38\ufe38"
-      + "\ufe3a\ufe3a"+"\ufe3c\ufe3c"+"\ufe3e\ufe3e"+"\ufe40\ufe40"
-      + "\ufe42\ufe42"+"\ufe44\ufe44"+"\ufe5a\ufe5a"+"\ufe5c\ufe5c"
-      + "\ufe5e\ufe5e"+"\uff09\uff09"+"\uff3d\uff3d"+"\uff5d\uff5d"
-      + "\uff60\uff60"+"\uff63\uff63",
-    // Unicode 3.2 property value: {pf}
-        "\u00bb\u00bb"+"\u2019\u2019"+"\u201d\u201d"+"\u203a\u203a",
-    // Unicode 3.2 property value: {pi}
-        "\u00ab\u00ab"+"\u2018\u2018"+"\u201b\u201c"+"\u201f\u201f"
-      + "\u2039\u2039",
-    // Unicode 3.2 property value: {po}
-        "\u0021\u0023"+"\u0025\u0027"+"\u002a\u002a"+"\u002c\u002c"
-      + "\u002e\u002f"+"\u003a\u003b"+"\u003f\u0040"+"\\\\"
-      + "\u00a1\u00a1"+"\u00b7\u00b7"+"\u00bf\u00bf"+"\u037e\u037e"
-      + "\u0387\u0387"+"\u055a\u055f"+"\u0589\u0589"+"\u05be\u05be"
-      + "\u05c0\u05c0"+"\u05c3\u05c3"+"\u05f3\u05f4"+"\u060c\u060c"
-      + "\u061b\u061b"+"\u061f\u061f"+"\u066a\u066d"+"\u06d4\u06d4"
-      + "\u0700\u070d"+"\u0964\u0965"+"\u0970\u0970"+"\u0df4\u0df4"
-      + "\u0e4f\u0e4f"+"\u0e5a\u0e5b"+"\u0f04\u0f12"+"\u0f85\u0f85"
-      + "\u104a\u104f"+"\u10fb\u10fb"+"\u1361\u1368"+"\u166d\u166e"
-      + "\u16eb\u16ed"+"\u1735\u1736"+"\u17d4\u17d6"+"\u17d8\u17da"
-      + "\u1800\u1805"+"\u1807\u180a"+"\u2016\u2017"+"\u2020\u2027"
-      + "\u2030\u2038"+"\u203b\u203e"+"\u2041\u2043"+"\u2047\u2051"
-      + "\u2057\u2057"+"\u23b6\u23b6"+"\u3001\u3003"+"\u303d\u303d"
-      + "\ufe30\ufe30"+"\ufe45\ufe46"+"\ufe49\ufe4c"+"\ufe50\ufe52"
-      + "\ufe54\ufe57"+"\ufe5f\ufe61"+"\ufe68\ufe68"+"\ufe6a\ufe6b"
-      + "\uff01\uff03"+"\uff05\uff07"+"\uff0a\uff0a"+"\uff0c\uff0c"
-      + "\uff0e\uff0f"+"\uff1a\uff1b"+"\uff1f\uff20"+"\uff3c\uff3c"
-      + "\uff61\uff61"+"\uff64\uff64",
-    // Unicode 3.2 property value: {print}
-        "\u0020\u007e"+"\u00a0\u0220"+"\u0222\u0233"+"\u0250\u02ad"
-      + "\u02b0\u02ee"+"\u0300\u034f"+"\u0360\u036f"+"\u0374\u0375"
-      + "\u037a\u037a"+"\u037e\u037e"+"\u0384\u038a"+"\u038c\u038c"
-      + "\u038e\u03a1"+"\u03a3\u03ce"+"\u03d0\u03f6"+"\u0400\u0486"
-      + "\u0488\u04ce"+"\u04d0\u04f5"+"\u04f8\u04f9"+"\u0500\u050f"
-      + "\u0531\u0556"+"\u0559\u055f"+"\u0561\u0587"+"\u0589\u058a"
-      + "\u0591\u05a1"+"\u05a3\u05b9"+"\u05bb\u05c4"+"\u05d0\u05ea"
-      + "\u05f0\u05f4"+"\u060c\u060c"+"\u061b\u061b"+"\u061f\u061f"
-      + "\u0621\u063a"+"\u0640\u0655"+"\u0660\u06ed"+"\u06f0\u06fe"
-      + "\u0700\u070d"+"\u070f\u072c"+"\u0730\u074a"+"\u0780\u07b1"
-      + "\u0901\u0903"+"\u0905\u0939"+"\u093c\u094d"+"\u0950\u0954"
-      + "\u0958\u0970"+"\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"
-      + "\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"
-      + "\u09bc\u09bc"+"\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cd"
-      + "\u09d7\u09d7"+"\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09fa"
-      + "\u0a02\u0a02"+"\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"
-      + "\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a66\u0a74"+"\u0a81\u0a83"
-      + "\u0a85\u0a8b"+"\u0a8d\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"
-      + "\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae0"
-      + "\u0ae6\u0aef"+"\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b36\u0b39"
-      + "\u0b3c\u0b43"+"\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"
-      + "\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b66\u0b70"+"\u0b82\u0b83"
-      + "\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"+"\u0b99\u0b9a"
-      + "\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"+"\u0ba8\u0baa"
-      + "\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcd"+"\u0bd7\u0bd7"+"\u0be7\u0bf2"+"\u0c01\u0c03"
-      + "\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"
-      + "\u0c35\u0c39"+"\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4d"
-      + "\u0c55\u0c56"+"\u0c60\u0c61"+"\u0c66\u0c6f"+"\u0c82\u0c83"
-      + "\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"
-      + "\u0cb5\u0cb9"+"\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"
-      + "\u0cd5\u0cd6"+"\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0ce6\u0cef"
-      + "\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"
-      + "\u0d2a\u0d39"+"\u0d3e\u0d43"+"\u0d46\u0d48"+"\u0d4a\u0d4d"
-      + "\u0d57\u0d57"+"\u0d60\u0d61"+"\u0d66\u0d6f"+"\u0d82\u0d83"
-      + "\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"
-      + "\u0dc0\u0dc6"+"\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"
-      + "\u0dd8\u0ddf"+"\u0df2\u0df4"+"\u0e01\u0e3a"+"\u0e3f\u0e5b"
-      + "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"
-      + "\u0ed0\u0ed9"+"\u0edc\u0edd"+"\u0f00\u0f47"+"\u0f49\u0f6a"
-      + "\u0f71\u0f8b"+"\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fbe\u0fcc"
-      + "\u0fcf\u0fcf"+"\u1000\u1021"+"\u1023\u1027"+"\u1029\u102a"
-      + "\u102c\u1032"+"\u1036\u1039"+"\u1040\u1059"+"\u10a0\u10c5"
-      + "\u10d0\u10f8"+"\u10fb\u10fb"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1206"+"\u1208\u1246"+"\u1248\u1248"
-      + "\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"
-      + "\u1260\u1286"+"\u1288\u1288"+"\u128a\u128d"+"\u1290\u12ae"
-      + "\u12b0\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12ce"+"\u12d0\u12d6"+"\u12d8\u12ee"
-      + "\u12f0\u130e"+"\u1310\u1310"+"\u1312\u1315"+"\u1318\u131e"
-      + "\u1320\u1346"+"\u1348\u135a"+"\u1361\u137c"+"\u13a0\u13f4"
-      + "\u1401\u1676"+"\u1680\u169c"+"\u16a0\u16f0"+"\u1700\u170c"
-      + "\u170e\u1714"+"\u1720\u1736"+"\u1740\u1753"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1772\u1773"+"\u1780\u17dc"+"\u17e0\u17e9"
-      + "\u1800\u180e"+"\u1810\u1819"+"\u1820\u1877"+"\u1880\u18a9"
-      + "\u1e00\u1e9b"+"\u1ea0\u1ef9"+"\u1f00\u1f15"+"\u1f18\u1f1d"
-      + "\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"
-      + "\u1fb6\u1fc4"+"\u1fc6\u1fd3"+"\u1fd6\u1fdb"+"\u1fdd\u1fef"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffe"+"\u2000\u2027"+"\u202a\u2052"
-      + "\u2057\u2057"+"\u205f\u2063"+"\u206a\u2071"+"\u2074\u208e"
-      + "\u20a0\u20b1"+"\u20d0\u20ea"+"\u2100\u213a"+"\u213d\u214b"
-      + "\u2153\u2183"+"\u2190\u23ce"+"\u2400\u2426"+"\u2440\u244a"
-      + "\u2460\u24fe"+"\u2500\u2613"+"\u2616\u2617"+"\u2619\u267d"
-      + "\u2680\u2689"+"\u2701\u2704"+"\u2706\u2709"+"\u270c\u2727"
-      + "\u2729\u274b"+"\u274d\u274d"+"\u274f\u2752"+"\u2756\u2756"
-      + "\u2758\u275e"+"\u2761\u2794"+"\u2798\u27af"+"\u27b1\u27be"
-      + "\u27d0\u27eb"+"\u27f0\u2aff"+"\u2e80\u2e99"+"\u2e9b\u2ef3"
-      + "\u2f00\u2fd5"+"\u2ff0\u2ffb"+"\u3000\u303f"+"\u3041\u3096"
-      + "\u3099\u30ff"+"\u3105\u312c"+"\u3131\u318e"+"\u3190\u31b7"
-      + "\u31f0\u321c"+"\u3220\u3243"+"\u3251\u327b"+"\u327f\u32cb"
-      + "\u32d0\u32fe"+"\u3300\u3376"+"\u337b\u33dd"+"\u33e0\u33fe"
-      + "\u3400\u4db5"+"\u4e00\u9fa5"+"\ua000\ua48c"+"\ua490\ua4c6"
-      + "\uac00\ud7a3"+"\ud800\ufa2d"+"\ufa30\ufa6a"+"\ufb00\ufb06"
-      + "\ufb13\ufb17"+"\ufb1d\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3f"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfc"+"\ufe00\ufe0f"
-      + "\ufe20\ufe23"+"\ufe30\ufe46"+"\ufe49\ufe52"+"\ufe54\ufe66"
-      + "\ufe68\ufe6b"+"\ufe70\ufe74"+"\ufe76\ufefc"+"\ufeff\ufeff"
-      + "\uff01\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"
-      + "\uffda\uffdc"+"\uffe0\uffe6"+"\uffe8\uffee"+"\ufff9\ufffd",
-    // Unicode 3.2 property value: {ps}
-        "\u0028\u0028"+"\u005b\u005b"+"\u007b\u007b"+"\u0f3a\u0f3a"
-      + "\u0f3c\u0f3c"+"\u169b\u169b"+"\u201a\u201a"+"\u201e\u201e"
-      + "\u2045\u2045"+"\u207d\u207d"+"\u208d\u208d"+"\u2329\u2329"
-      + "\u23b4\u23b4"+"\u2768\u2768"+"\u276a\u276a"+"\u276c\u276c"
-      + "\u276e\u276e"+"\u2770\u2770"+"\u2772\u2772"+"\u2774\u2774"
-      + "\u27e6\u27e6"+"\u27e8\u27e8"+"\u27ea\u27ea"+"\u2983\u2983"
-      + "\u2985\u2985"+"\u2987\u2987"+"\u2989\u2989"+"\u298b\u298b"
-      + "\u298d\u298d"+"\u298f\u298f"+"\u2991\u2991"+"\u2993\u2993"
-      + "\u2995\u2995"+"\u2997\u2997"+"\u29d8\u29d8"+"\u29da\u29da"
-      + "\u29fc\u29fc"+"\u3008\u3008"+"\u300a\u300a"+"\u300c\u300c"
-      + "\u300e\u300e"+"\u3010\u3010"+"\u3014\u3014"+"\u3016\u3016"
-      + "\u3018\u3018"+"\u301a\u301a"+"\u301d\u301d"+"\ufd3e\ufd3e"
-      + "\ufe35\ufe35"+"\ufe37\ufe37"+"\ufe39\ufe39"+"\ufe3b\ufe3b"
-      + "\ufe3d\ufe3d"+"\ufe3f\ufe3f"+"\ufe41\ufe41"+"\ufe43\ufe43"
-      + "\ufe59\ufe59"+"\ufe5b\ufe5b"+"\ufe5d\ufe5d"+"\uff08\uff08"
-      + "\uff3b\uff3b"+"\uff5b\uff5b"+"\uff5f\uff5f"+"\uff62\uff62",
-    // Unicode 3.2 property value: {quotationmark}
-        "\"\""+"\u0027\u0027"+"\u00ab\u00ab"+"\u00bb\u00bb"
-      + "\u2018\u201f"+"\u2039\u203a"+"\u300c\u300f"+"\u301d\u301f"
-      + "\ufe41\ufe44"+"\uff02\uff02"+"\uff07\uff07"+"\uff62\uff63",
-    // Unicode 3.2 property value: {radical}
-        "\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5",
-    // Unicode 3.2 property value: {runic}
-        "\u16a0\u16ea"+"\u16ee\u16f0",
-    // Unicode 3.2 property value: {sc}
-        "\u0024\u0024"+"\u00a2\u00a5"+"\u09f2\u09f3"+"\u0e3f\u0e3f"
-      + "\u17db\u17db"+"\u20a0\u20b1"+"\ufdfc\ufdfc"+"\ufe69\ufe69"
-      + "\uff04\uff04"+"\uffe0\uffe1"+"\uffe5\uffe6",
-    // Unicode 3.2 property value: {sinhala}
-        "\u0d82\u0d83"+"\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"
-      + "\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0dca\u0dca"+"\u0dcf\u0dd4"
-      + "\u0dd6\u0dd6"+"\u0dd8\u0ddf"+"\u0df2\u0df3",
-    // Unicode 3.2 property value: {sk}
-        "\u005e\u005e"+"\u0060\u0060"+"\u00a8\u00a8"+"\u00af\u00af"
-      + "\u00b4\u00b4"+"\u00b8\u00b8"+"\u02b9\u02ba"+"\u02c2\u02cf"
-      + "\u02d2\u02df"+"\u02e5\u02ed"+"\u0374\u0375"+"\u0384\u0385"
-      + "\u1fbd\u1fbd"+"\u1fbf\u1fc1"+"\u1fcd\u1fcf"+"\u1fdd\u1fdf"
-      + "\u1fed\u1fef"+"\u1ffd\u1ffe"+"\u309b\u309c"+"\uff3e\uff3e"
-      + "\uff40\uff40"+"\uffe3\uffe3",
-    // Unicode 3.2 property value: {sm}
-        "\u002b\u002b"+"\u003c\u003e"+"\u007c\u007c"+"\u007e\u007e"
-      + "\u00ac\u00ac"+"\u00b1\u00b1"+"\u00d7\u00d7"+"\u00f7\u00f7"
-      + "\u03f6\u03f6"+"\u2044\u2044"+"\u2052\u2052"+"\u207a\u207c"
-      + "\u208a\u208c"+"\u2140\u2144"+"\u214b\u214b"+"\u2190\u2194"
-      + "\u219a\u219b"+"\u21a0\u21a0"+"\u21a3\u21a3"+"\u21a6\u21a6"
-      + "\u21ae\u21ae"+"\u21ce\u21cf"+"\u21d2\u21d2"+"\u21d4\u21d4"
-      + "\u21f4\u22ff"+"\u2308\u230b"+"\u2320\u2321"+"\u237c\u237c"
-      + "\u239b\u23b3"+"\u25b7\u25b7"+"\u25c1\u25c1"+"\u25f8\u25ff"
-      + "\u266f\u266f"+"\u27d0\u27e5"+"\u27f0\u27ff"+"\u2900\u2982"
-      + "\u2999\u29d7"+"\u29dc\u29fb"+"\u29fe\u2aff"+"\ufb29\ufb29"
-      + "\ufe62\ufe62"+"\ufe64\ufe66"+"\uff0b\uff0b"+"\uff1c\uff1e"
-      + "\uff5c\uff5c"+"\uff5e\uff5e"+"\uffe2\uffe2"+"\uffe9\uffec"
-      + "\ud835\udec1\ud835\udec1"+"\ud835\udedb\ud835\udedb"+"\ud835\udefb\ud835\udefb"+"\ud835\udf15\ud835\udf15"
-      + "\ud835\udf35\ud835\udf35"+"\ud835\udf4f\ud835\udf4f"+"\ud835\udf6f\ud835\udf6f"+"\ud835\udf89\ud835\udf89"
-      + "\ud835\udfa9\ud835\udfa9"+"\ud835\udfc3\ud835\udfc3",
-    // Unicode 3.2 property value: {so}
-        "\u00a6\u00a7"+"\u00a9\u00a9"+"\u00ae\u00ae"+"\u00b0\u00b0"
-      + "\u00b6\u00b6"+"\u0482\u0482"+"\u06e9\u06e9"+"\u06fd\u06fe"
-      + "\u09fa\u09fa"+"\u0b70\u0b70"+"\u0f01\u0f03"+"\u0f13\u0f17"
-      + "\u0f1a\u0f1f"+"\u0f34\u0f34"+"\u0f36\u0f36"+"\u0f38\u0f38"
-      + "\u0fbe\u0fc5"+"\u0fc7\u0fcc"+"\u0fcf\u0fcf"+"\u2100\u2101"
-      + "\u2103\u2106"+"\u2108\u2109"+"\u2114\u2114"+"\u2116\u2118"
-      + "\u211e\u2123"+"\u2125\u2125"+"\u2127\u2127"+"\u2129\u2129"
-      + "\u212e\u212e"+"\u2132\u2132"+"\u213a\u213a"+"\u214a\u214a"
-      + "\u2195\u2199"+"\u219c\u219f"+"\u21a1\u21a2"+"\u21a4\u21a5"
-      + "\u21a7\u21ad"+"\u21af\u21cd"+"\u21d0\u21d1"+"\u21d3\u21d3"
-      + "\u21d5\u21f3"+"\u2300\u2307"+"\u230c\u231f"+"\u2322\u2328"
-      + "\u232b\u237b"+"\u237d\u239a"+"\u23b7\u23ce"+"\u2400\u2426"
-      + "\u2440\u244a"+"\u249c\u24e9"+"\u2500\u25b6"+"\u25b8\u25c0"
-      + "\u25c2\u25f7"+"\u2600\u2613"+"\u2616\u2617"+"\u2619\u266e"
-      + "\u2670\u267d"+"\u2680\u2689"+"\u2701\u2704"+"\u2706\u2709"
-      + "\u270c\u2727"+"\u2729\u274b"+"\u274d\u274d"+"\u274f\u2752"
-      + "\u2756\u2756"+"\u2758\u275e"+"\u2761\u2767"+"\u2794\u2794"
-      + "\u2798\u27af"+"\u27b1\u27be"+"\u2800\u28ff"+"\u2e80\u2e99"
-      + "\u2e9b\u2ef3"+"\u2f00\u2fd5"+"\u2ff0\u2ffb"+"\u3004\u3004"
-      + "\u3012\u3013"+"\u3020\u3020"+"\u3036\u3037"+"\u303e\u303f"
-      + "\u3190\u3191"+"\u3196\u319f"+"\u3200\u321c"+"\u322a\u3243"
-      + "\u3260\u327b"+"\u327f\u327f"+"\u328a\u32b0"+"\u32c0\u32cb"
-      + "\u32d0\u32fe"+"\u3300\u3376"+"\u337b\u33dd"+"\u33e0\u33fe"
-      + "\ua490\ua4c6"+"\uffe4\uffe4"+"\uffe8\uffe8"+"\uffed\uffee"
-      + "\ufffc\ufffd"+"\ud834\udc00\ud834\udcf5"+"\ud834\udd00\ud834\udd26"+"\ud834\udd2a\ud834\udd64"
-      + "\ud834\udd6a\ud834\udd6c"+"\ud834\udd83\ud834\udd84"+"\ud834\udd8c\ud834\udda9"+"\ud834\uddae\ud834\udddd",
-    // Unicode 3.2 property value: {softdotted}
-        "\u0069\u006a"+"\u012f\u012f"+"\u0268\u0268"+"\u0456\u0456"
-      + "\u0458\u0458"+"\u1e2d\u1e2d"+"\u1ecb\u1ecb",
-    // Unicode 3.2 property value: {syriac}
-        "\u0710\u072c"+"\u0730\u074a",
-    // Unicode 3.2 property value: {tagalog}
-        "\u1700\u170c"+"\u170e\u1714",
-    // Unicode 3.2 property value: {tagbanwa}
-        "\u1760\u176c"+"\u176e\u1770"+"\u1772\u1773",
-    // Unicode 3.2 property value: {tamil}
-        "\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0bbe\u0bc2"
-      + "\u0bc6\u0bc8"+"\u0bca\u0bcd"+"\u0bd7\u0bd7"+"\u0be7\u0bf2",
-    // Unicode 3.2 property value: {telugu}
-        "\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"
-      + "\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3e\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c60\u0c61"+"\u0c66\u0c6f",
-    // Unicode 3.2 property value: {terminalpunctuation}
-        "\u0021\u0021"+"\u002c\u002c"+"\u002e\u002e"+"\u003a\u003b"
-      + "\u003f\u003f"+"\u037e\u037e"+"\u0387\u0387"+"\u0589\u0589"
-      + "\u060c\u060c"+"\u061b\u061b"+"\u061f\u061f"+"\u06d4\u06d4"
-      + "\u0700\u070a"+"\u070c\u070c"+"\u0964\u0965"+"\u0e5a\u0e5b"
-      + "\u104a\u104b"+"\u1361\u1368"+"\u166d\u166e"+"\u16eb\u16ed"
-      + "\u17d4\u17d6"+"\u17da\u17da"+"\u1802\u1805"+"\u1808\u1809"
-      + "\u203c\u203d"+"\u2048\u2049"+"\u3001\u3002"+"\ufe50\ufe52"
-      + "\ufe54\ufe57"+"\uff01\uff01"+"\uff0c\uff0c"+"\uff0e\uff0e"
-      + "\uff1a\uff1b"+"\uff1f\uff1f"+"\uff61\uff61"+"\uff64\uff64",
-    // Unicode 3.2 property value: {thaana}
-        "\u0780\u07b1",
-    // Unicode 3.2 property value: {thai}
-        "\u0e01\u0e3a"+"\u0e40\u0e4e"+"\u0e50\u0e59",
-    // Unicode 3.2 property value: {tibetan}
-        "\u0f00\u0f00"+"\u0f18\u0f19"+"\u0f20\u0f33"+"\u0f35\u0f35"
-      + "\u0f37\u0f37"+"\u0f39\u0f39"+"\u0f40\u0f47"+"\u0f49\u0f6a"
-      + "\u0f71\u0f84"+"\u0f86\u0f8b"+"\u0f90\u0f97"+"\u0f99\u0fbc"
-      + "\u0fc6\u0fc6",
-    // Unicode 3.2 property value: {unifiedideograph}
-        "\u3400\u4db5"+"\u4e00\u9fa5"+"\ufa0e\ufa0f"+"\ufa11\ufa11"
-      + "\ufa13\ufa14"+"\ufa1f\ufa1f"+"\ufa21\ufa21"+"\ufa23\ufa24"
-      + "\ufa27\ufa29"+"\ud840\udc00\ud869\uded6",
-    // Unicode 3.2 property value: {uppercase}
-        "\u0041\u005a"+"\u00c0\u00d6"+"\u00d8\u00de"+"\u0100\u0100"
-      + "\u0102\u0102"+"\u0104\u0104"+"\u0106\u0106"+"\u0108\u0108"
-      + "\u010a\u010a"+"\u010c\u010c"+"\u010e\u010e"+"\u0110\u0110"
-      + "\u0112\u0112"+"\u0114\u0114"+"\u0116\u0116"+"\u0118\u0118"
-      + "\u011a\u011a"+"\u011c\u011c"+"\u011e\u011e"+"\u0120\u0120"
-      + "\u0122\u0122"+"\u0124\u0124"+"\u0126\u0126"+"\u0128\u0128"
-      + "\u012a\u012a"+"\u012c\u012c"+"\u012e\u012e"+"\u0130\u0130"
-      + "\u0132\u0132"+"\u0134\u0134"+"\u0136\u0136"+"\u0139\u0139"
-      + "\u013b\u013b"+"\u013d\u013d"+"\u013f\u013f"+"\u0141\u0141"
-      + "\u0143\u0143"+"\u0145\u0145"+"\u0147\u0147"+"\u014a\u014a"
-      + "\u014c\u014c"+"\u014e\u014e"+"\u0150\u0150"+"\u0152\u0152"
-      + "\u0154\u0154"+"\u0156\u0156"+"\u0158\u0158"+"\u015a\u015a"
-      + "\u015c\u015c"+"\u015e\u015e"+"\u0160\u0160"+"\u0162\u0162"
-      + "\u0164\u0164"+"\u0166\u0166"+"\u0168\u0168"+"\u016a\u016a"
-      + "\u016c\u016c"+"\u016e\u016e"+"\u0170\u0170"+"\u0172\u0172"
-      + "\u0174\u0174"+"\u0176\u0176"+"\u0178\u0179"+"\u017b\u017b"
-      + "\u017d\u017d"+"\u0181\u0182"+"\u0184\u0184"+"\u0186\u0187"
-      + "\u0189\u018b"+"\u018e\u0191"+"\u0193\u0194"+"\u0196\u0198"
-      + "\u019c\u019d"+"\u019f\u01a0"+"\u01a2\u01a2"+"\u01a4\u01a4"
-      + "\u01a6\u01a7"+"\u01a9\u01a9"+"\u01ac\u01ac"+"\u01ae\u01af"
-      + "\u01b1\u01b3"+"\u01b5\u01b5"+"\u01b7\u01b8"+"\u01bc\u01bc"
-      + "\u01c4\u01c4"+"\u01c7\u01c7"+"\u01ca\u01ca"+"\u01cd\u01cd"
-      + "\u01cf\u01cf"+"\u01d1\u01d1"+"\u01d3\u01d3"+"\u01d5\u01d5"
-      + "\u01d7\u01d7"+"\u01d9\u01d9"+"\u01db\u01db"+"\u01de\u01de"
-      + "\u01e0\u01e0"+"\u01e2\u01e2"+"\u01e4\u01e4"+"\u01e6\u01e6"
-      + "\u01e8\u01e8"+"\u01ea\u01ea"+"\u01ec\u01ec"+"\u01ee\u01ee"
-      + "\u01f1\u01f1"+"\u01f4\u01f4"+"\u01f6\u01f8"+"\u01fa\u01fa"
-      + "\u01fc\u01fc"+"\u01fe\u01fe"+"\u0200\u0200"+"\u0202\u0202"
-      + "\u0204\u0204"+"\u0206\u0206"+"\u0208\u0208"+"\u020a\u020a"
-      + "\u020c\u020c"+"\u020e\u020e"+"\u0210\u0210"+"\u0212\u0212"
-      + "\u0214\u0214"+"\u0216\u0216"+"\u0218\u0218"+"\u021a\u021a"
-      + "\u021c\u021c"+"\u021e\u021e"+"\u0220\u0220"+"\u0222\u0222"
-      + "\u0224\u0224"+"\u0226\u0226"+"\u0228\u0228"+"\u022a\u022a"
-      + "\u022c\u022c"+"\u022e\u022e"+"\u0230\u0230"+"\u0232\u0232"
-      + "\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"+"\u038e\u038f"
-      + "\u0391\u03a1"+"\u03a3\u03ab"+"\u03d2\u03d4"+"\u03d8\u03d8"
-      + "\u03da\u03da"+"\u03dc\u03dc"+"\u03de\u03de"+"\u03e0\u03e0"
-      + "\u03e2\u03e2"+"\u03e4\u03e4"+"\u03e6\u03e6"+"\u03e8\u03e8"
-      + "\u03ea\u03ea"+"\u03ec\u03ec"+"\u03ee\u03ee"+"\u03f4\u03f4"
-      + "\u0400\u042f"+"\u0460\u0460"+"\u0462\u0462"+"\u0464\u0464"
-      + "\u0466\u0466"+"\u0468\u0468"+"\u046a\u046a"+"\u046c\u046c"
-      + "\u046e\u046e"+"\u0470\u0470"+"\u0472\u0472"+"\u0474\u0474"
-      + "\u0476\u0476"+"\u0478\u0478"+"\u047a\u047a"+"\u047c\u047c"
-      + "\u047e\u047e"+"\u0480\u0480"+"\u048a\u048a"+"\u048c\u048c"
-      + "\u048e\u048e"+"\u0490\u0490"+"\u0492\u0492"+"\u0494\u0494"
-      + "\u0496\u0496"+"\u0498\u0498"+"\u049a\u049a"+"\u049c\u049c"
-      + "\u049e\u049e"+"\u04a0\u04a0"+"\u04a2\u04a2"+"\u04a4\u04a4"
-      + "\u04a6\u04a6"+"\u04a8\u04a8"+"\u04aa\u04aa"+"\u04ac\u04ac"
-      + "\u04ae\u04ae"+"\u04b0\u04b0"+"\u04b2\u04b2"+"\u04b4\u04b4"
-      + "\u04b6\u04b6"+"\u04b8\u04b8"+"\u04ba\u04ba"+"\u04bc\u04bc"
-      + "\u04be\u04be"+"\u04c0\u04c1"+"\u04c3\u04c3"+"\u04c5\u04c5"
-      + "\u04c7\u04c7"+"\u04c9\u04c9"+"\u04cb\u04cb"+"\u04cd\u04cd"
-      + "\u04d0\u04d0"+"\u04d2\u04d2"+"\u04d4\u04d4"+"\u04d6\u04d6"
-      + "\u04d8\u04d8"+"\u04da\u04da"+"\u04dc\u04dc"+"\u04de\u04de"
-      + "\u04e0\u04e0"+"\u04e2\u04e2"+"\u04e4\u04e4"+"\u04e6\u04e6"
-      + "\u04e8\u04e8"+"\u04ea\u04ea"+"\u04ec\u04ec"+"\u04ee\u04ee"
-      + "\u04f0\u04f0"+"\u04f2\u04f2"+"\u04f4\u04f4"+"\u04f8\u04f8"
-      + "\u0500\u0500"+"\u0502\u0502"+"\u0504\u0504"+"\u0506\u0506"
-      + "\u0508\u0508"+"\u050a\u050a"+"\u050c\u050c"+"\u050e\u050e"
-      + "\u0531\u0556"+"\u10a0\u10c5"+"\u1e00\u1e00"+"\u1e02\u1e02"
-      + "\u1e04\u1e04"+"\u1e06\u1e06"+"\u1e08\u1e08"+"\u1e0a\u1e0a"
-      + "\u1e0c\u1e0c"+"\u1e0e\u1e0e"+"\u1e10\u1e10"+"\u1e12\u1e12"
-      + "\u1e14\u1e14"+"\u1e16\u1e16"+"\u1e18\u1e18"+"\u1e1a\u1e1a"
-      + "\u1e1c\u1e1c"+"\u1e1e\u1e1e"+"\u1e20\u1e20"+"\u1e22\u1e22"
-      + "\u1e24\u1e24"+"\u1e26\u1e26"+"\u1e28\u1e28"+"\u1e2a\u1e2a"
-      + "\u1e2c\u1e2c"+"\u1e2e\u1e2e"+"\u1e30\u1e30"+"\u1e32\u1e32"
-      + "\u1e34\u1e34"+"\u1e36\u1e36"+"\u1e38\u1e38"+"\u1e3a\u1e3a"
-      + "\u1e3c\u1e3c"+"\u1e3e\u1e3e"+"\u1e40\u1e40"+"\u1e42\u1e42"
-      + "\u1e44\u1e44"+"\u1e46\u1e46"+"\u1e48\u1e48"+"\u1e4a\u1e4a"
-      + "\u1e4c\u1e4c"+"\u1e4e\u1e4e"+"\u1e50\u1e50"+"\u1e52\u1e52"
-      + "\u1e54\u1e54"+"\u1e56\u1e56"+"\u1e58\u1e58"+"\u1e5a\u1e5a"
-      + "\u1e5c\u1e5c"+"\u1e5e\u1e5e"+"\u1e60\u1e60"+"\u1e62\u1e62"
-      + "\u1e64\u1e64"+"\u1e66\u1e66"+"\u1e68\u1e68"+"\u1e6a\u1e6a"
-      + "\u1e6c\u1e6c"+"\u1e6e\u1e6e"+"\u1e70\u1e70"+"\u1e72\u1e72"
-      + "\u1e74\u1e74"+"\u1e76\u1e76"+"\u1e78\u1e78"+"\u1e7a\u1e7a"
-      + "\u1e7c\u1e7c"+"\u1e7e\u1e7e"+"\u1e80\u1e80"+"\u1e82\u1e82"
-      + "\u1e84\u1e84"+"\u1e86\u1e86"+"\u1e88\u1e88"+"\u1e8a\u1e8a"
-      + "\u1e8c\u1e8c"+"\u1e8e\u1e8e"+"\u1e90\u1e90"+"\u1e92\u1e92"
-      + "\u1e94\u1e94"+"\u1ea0\u1ea0"+"\u1ea2\u1ea2"+"\u1ea4\u1ea4"
-      + "\u1ea6\u1ea6"+"\u1ea8\u1ea8"+"\u1eaa\u1eaa"+"\u1eac\u1eac"
-      + "\u1eae\u1eae"+"\u1eb0\u1eb0"+"\u1eb2\u1eb2"+"\u1eb4\u1eb4"
-      + "\u1eb6\u1eb6"+"\u1eb8\u1eb8"+"\u1eba\u1eba"+"\u1ebc\u1ebc"
-      + "\u1ebe\u1ebe"+"\u1ec0\u1ec0"+"\u1ec2\u1ec2"+"\u1ec4\u1ec4"
-      + "\u1ec6\u1ec6"+"\u1ec8\u1ec8"+"\u1eca\u1eca"+"\u1ecc\u1ecc"
-      + "\u1ece\u1ece"+"\u1ed0\u1ed0"+"\u1ed2\u1ed2"+"\u1ed4\u1ed4"
-      + "\u1ed6\u1ed6"+"\u1ed8\u1ed8"+"\u1eda\u1eda"+"\u1edc\u1edc"
-      + "\u1ede\u1ede"+"\u1ee0\u1ee0"+"\u1ee2\u1ee2"+"\u1ee4\u1ee4"
-      + "\u1ee6\u1ee6"+"\u1ee8\u1ee8"+"\u1eea\u1eea"+"\u1eec\u1eec"
-      + "\u1eee\u1eee"+"\u1ef0\u1ef0"+"\u1ef2\u1ef2"+"\u1ef4\u1ef4"
-      + "\u1ef6\u1ef6"+"\u1ef8\u1ef8"+"\u1f08\u1f0f"+"\u1f18\u1f1d"
-      + "\u1f28\u1f2f"+"\u1f38\u1f3f"+"\u1f48\u1f4d"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f5f"+"\u1f68\u1f6f"
-      + "\u1fb8\u1fbb"+"\u1fc8\u1fcb"+"\u1fd8\u1fdb"+"\u1fe8\u1fec"
-      + "\u1ff8\u1ffb"+"\u2102\u2102"+"\u2107\u2107"+"\u210b\u210d"
-      + "\u2110\u2112"+"\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"
-      + "\u2126\u2126"+"\u2128\u2128"+"\u212a\u212d"+"\u2130\u2131"
-      + "\u2133\u2133"+"\u213e\u213f"+"\u2145\u2145"+"\u2160\u216f"
-      + "\u24b6\u24cf"+"\uff21\uff3a"+"\ud801\udc00\ud801\udc25"+"\ud835\udc00\ud835\udc19"
-      + "\ud835\udc34\ud835\udc4d"+"\ud835\udc68\ud835\udc81"+"\ud835\udc9c\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"
-      + "\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb5"
-      + "\ud835\udcd0\ud835\udce9"+"\ud835\udd04\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"
-      + "\ud835\udd16\ud835\udd1c"+"\ud835\udd38\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"
-      + "\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd6c\ud835\udd85"+"\ud835\udda0\ud835\uddb9"
-      + "\ud835\uddd4\ud835\udded"+"\ud835\ude08\ud835\ude21"+"\ud835\ude3c\ud835\ude55"+"\ud835\ude70\ud835\ude89"
-      + "\ud835\udea8\ud835\udec0"+"\ud835\udee2\ud835\udefa"+"\ud835\udf1c\ud835\udf34"+"\ud835\udf56\ud835\udf6e"
-      + "\ud835\udf90\ud835\udfa8",
-    // Unicode 3.2 property value: {whitespace}
-        "\t\r"+"\u0020\u0020"+"\u0085\u0085"+"\u00a0\u00a0"
-      + "\u1680\u1680"+"\u2000\u200a"+"\u2028\u2029"+"\u202f\u202f"
-      + "\u3000\u3000",
-    // Unicode 3.2 property value: {xdigit}
-        "\u0030\u0039"+"\u0041\u0046"+"\u0061\u0066"+"\u0660\u0669"
-      + "\u06f0\u06f9"+"\u0966\u096f"+"\u09e6\u09ef"+"\u0a66\u0a6f"
-      + "\u0ae6\u0aef"+"\u0b66\u0b6f"+"\u0be7\u0bef"+"\u0c66\u0c6f"
-      + "\u0ce6\u0cef"+"\u0d66\u0d6f"+"\u0e50\u0e59"+"\u0ed0\u0ed9"
-      + "\u0f20\u0f29"+"\u1040\u1049"+"\u1369\u1371"+"\u17e0\u17e9"
-      + "\u1810\u1819"+"\uff10\uff19"+"\uff21\uff26"+"\uff41\uff46"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 3.2 property value: {xidcontinue}
-        "\u0030\u0039"+"\u0041\u005a"+"\u005f\u005f"+"\u0061\u007a"
-      + "\u00aa\u00aa"+"\u00b5\u00b5"+"\u00b7\u00b7"+"\u00ba\u00ba"
-      + "\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u0220"+"\u0222\u0233"
-      + "\u0250\u02ad"+"\u02b0\u02b8"+"\u02bb\u02c1"+"\u02d0\u02d1"
-      + "\u02e0\u02e4"+"\u02ee\u02ee"+"\u0300\u034f"+"\u0360\u036f"
-      + "\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"
-      + "\u03a3\u03ce"+"\u03d0\u03f5"+"\u0400\u0481"+"\u0483\u0486"
-      + "\u048a\u04ce"+"\u04d0\u04f5"+"\u04f8\u04f9"+"\u0500\u050f"
-      + "\u0531\u0556"+"\u0559\u0559"+"\u0561\u0587"+"\u0591\u05a1"
-      + "\u05a3\u05b9"+"\u05bb\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"
-      + "\u05c4\u05c4"+"\u05d0\u05ea"+"\u05f0\u05f2"+"\u0621\u063a"
-      + "\u0640\u0655"+"\u0660\u0669"+"\u066e\u06d3"+"\u06d5\u06dc"
-      + "\u06df\u06e8"+"\u06ea\u06ed"+"\u06f0\u06fc"+"\u0710\u072c"
-      + "\u0730\u074a"+"\u0780\u07b1"+"\u0901\u0903"+"\u0905\u0939"
-      + "\u093c\u094d"+"\u0950\u0954"+"\u0958\u0963"+"\u0966\u096f"
-      + "\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"
-      + "\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bc\u09bc"
-      + "\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cd"+"\u09d7\u09d7"
-      + "\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09f1"+"\u0a02\u0a02"
-      + "\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"
-      + "\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a3c\u0a3c"
-      + "\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"+"\u0a59\u0a5c"
-      + "\u0a5e\u0a5e"+"\u0a66\u0a74"+"\u0a81\u0a83"+"\u0a85\u0a8b"
-      + "\u0a8d\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"+"\u0aaa\u0ab0"
-      + "\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"+"\u0ac7\u0ac9"
-      + "\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae0"+"\u0ae6\u0aef"
-      + "\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"
-      + "\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b36\u0b39"+"\u0b3c\u0b43"
-      + "\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b5c\u0b5d"
-      + "\u0b5f\u0b61"+"\u0b66\u0b6f"+"\u0b82\u0b83"+"\u0b85\u0b8a"
-      + "\u0b8e\u0b90"+"\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"
-      + "\u0b9e\u0b9f"+"\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb5"
-      + "\u0bb7\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcd"
-      + "\u0bd7\u0bd7"+"\u0be7\u0bef"+"\u0c01\u0c03"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4d"+"\u0c55\u0c56"
-      + "\u0c60\u0c61"+"\u0c66\u0c6f"+"\u0c82\u0c83"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"
-      + "\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0ce6\u0cef"+"\u0d02\u0d03"
-      + "\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"
-      + "\u0d3e\u0d43"+"\u0d46\u0d48"+"\u0d4a\u0d4d"+"\u0d57\u0d57"
-      + "\u0d60\u0d61"+"\u0d66\u0d6f"+"\u0d82\u0d83"+"\u0d85\u0d96"
-      + "\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"
-      + "\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e01\u0e3a"+"\u0e40\u0e4e"+"\u0e50\u0e59"
-      + "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"
-      + "\u0ed0\u0ed9"+"\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f18\u0f19"
-      + "\u0f20\u0f29"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f3e\u0f47"+"\u0f49\u0f6a"+"\u0f71\u0f84"+"\u0f86\u0f8b"
-      + "\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u1000\u1021"
-      + "\u1023\u1027"+"\u1029\u102a"+"\u102c\u1032"+"\u1036\u1039"
-      + "\u1040\u1049"+"\u1050\u1059"+"\u10a0\u10c5"+"\u10d0\u10f8"
-      + "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1206"
-      + "\u1208\u1246"+"\u1248\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1286"+"\u1288\u1288"
-      + "\u128a\u128d"+"\u1290\u12ae"+"\u12b0\u12b0"+"\u12b2\u12b5"
-      + "\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12ce"
-      + "\u12d0\u12d6"+"\u12d8\u12ee"+"\u12f0\u130e"+"\u1310\u1310"
-      + "\u1312\u1315"+"\u1318\u131e"+"\u1320\u1346"+"\u1348\u135a"
-      + "\u1369\u1371"+"\u13a0\u13f4"+"\u1401\u166c"+"\u166f\u1676"
-      + "\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"+"\u1700\u170c"
-      + "\u170e\u1714"+"\u1720\u1734"+"\u1740\u1753"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1772\u1773"+"\u1780\u17d3"+"\u17d7\u17d7"
-      + "\u17dc\u17dc"+"\u17e0\u17e9"+"\u180b\u180d"+"\u1810\u1819"
-      + "\u1820\u1877"+"\u1880\u18a9"+"\u1e00\u1e9b"+"\u1ea0\u1ef9"
-      + "\u1f00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"
-      + "\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"
-      + "\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"
-      + "\u1fc2\u1fc4"+"\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"
-      + "\u1fe0\u1fec"+"\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u203f\u2040"
-      + "\u2071\u2071"+"\u207f\u207f"+"\u20d0\u20dc"+"\u20e1\u20e1"
-      + "\u20e5\u20ea"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u212d"+"\u212f\u2131"+"\u2133\u2139"
-      + "\u213d\u213f"+"\u2145\u2149"+"\u2160\u2183"+"\u3005\u3007"
-      + "\u3021\u302f"+"\u3031\u3035"+"\u3038\u303c"+"\u3041\u3096"
-      + "\u3099\u309a"+"\u309d\u309f"+"\u30a1\u30ff"+"\u3105\u312c"
-      + "\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"
-      + "\u4e00\u9fa5"+"\ua000\ua48c"+"\uac00\ud7a3"+"\uf900\ufa2d"
-      + "\ufa30\ufa6a"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb28"
-      + "\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufc5d"+"\ufc64\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdf9"+"\ufe00\ufe0f"
-      + "\ufe20\ufe23"+"\ufe33\ufe34"+"\ufe4d\ufe4f"+"\ufe71\ufe71"
-      + "\ufe73\ufe73"+"\ufe77\ufe77"+"\ufe79\ufe79"+"\ufe7b\ufe7b"
-      + "\ufe7d\ufe7d"+"\ufe7f\ufefc"+"\uff10\uff19"+"\uff21\uff3a"
-      + "\uff3f\uff3f"+"\uff41\uff5a"+"\uff65\uffbe"+"\uffc2\uffc7"
-      + "\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"+"\ud800\udf00\ud800\udf1e"
-      + "\ud800\udf30\ud800\udf4a"+"\ud801\udc00\ud801\udc25"+"\ud801\udc28\ud801\udc4d"+"\ud834\udd65\ud834\udd69"
-      + "\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"+"\ud834\uddaa\ud834\uddad"
-      + "\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"
-      + "\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"
-      + "\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"
-      + "\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"
-      + "\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"
-      + "\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9"+"\ud835\udfce\ud835\udfff"
-      + "\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {xidstart}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"
-      + "\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u0220"
-      + "\u0222\u0233"+"\u0250\u02ad"+"\u02b0\u02b8"+"\u02bb\u02c1"
-      + "\u02d0\u02d1"+"\u02e0\u02e4"+"\u02ee\u02ee"+"\u0386\u0386"
-      + "\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u03ce"
-      + "\u03d0\u03f5"+"\u0400\u0481"+"\u048a\u04ce"+"\u04d0\u04f5"
-      + "\u04f8\u04f9"+"\u0500\u050f"+"\u0531\u0556"+"\u0559\u0559"
-      + "\u0561\u0587"+"\u05d0\u05ea"+"\u05f0\u05f2"+"\u0621\u063a"
-      + "\u0640\u064a"+"\u066e\u066f"+"\u0671\u06d3"+"\u06d5\u06d5"
-      + "\u06e5\u06e6"+"\u06fa\u06fc"+"\u0710\u0710"+"\u0712\u072c"
-      + "\u0780\u07a5"+"\u07b1\u07b1"+"\u0905\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0985\u098c"+"\u098f\u0990"
-      + "\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"
-      + "\u09dc\u09dd"+"\u09df\u09e1"+"\u09f0\u09f1"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a72\u0a74"+"\u0a85\u0a8b"+"\u0a8d\u0a8d"+"\u0a8f\u0a91"
-      + "\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"
-      + "\u0abd\u0abd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae0"+"\u0b05\u0b0c"
-      + "\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"
-      + "\u0b36\u0b39"+"\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb5"+"\u0bb7\u0bb9"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c60\u0c61"+"\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"
-      + "\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cde\u0cde"+"\u0ce0\u0ce1"
-      + "\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"
-      + "\u0d60\u0d61"+"\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"
-      + "\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0e01\u0e30"+"\u0e32\u0e32"
-      + "\u0e40\u0e46"+"\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"
-      + "\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"
-      + "\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"
-      + "\u0ead\u0eb0"+"\u0eb2\u0eb2"+"\u0ebd\u0ebd"+"\u0ec0\u0ec4"
-      + "\u0ec6\u0ec6"+"\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f40\u0f47"
-      + "\u0f49\u0f6a"+"\u0f88\u0f8b"+"\u1000\u1021"+"\u1023\u1027"
-      + "\u1029\u102a"+"\u1050\u1055"+"\u10a0\u10c5"+"\u10d0\u10f8"
-      + "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1206"
-      + "\u1208\u1246"+"\u1248\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1286"+"\u1288\u1288"
-      + "\u128a\u128d"+"\u1290\u12ae"+"\u12b0\u12b0"+"\u12b2\u12b5"
-      + "\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12ce"
-      + "\u12d0\u12d6"+"\u12d8\u12ee"+"\u12f0\u130e"+"\u1310\u1310"
-      + "\u1312\u1315"+"\u1318\u131e"+"\u1320\u1346"+"\u1348\u135a"
-      + "\u13a0\u13f4"+"\u1401\u166c"+"\u166f\u1676"+"\u1681\u169a"
-      + "\u16a0\u16ea"+"\u16ee\u16f0"+"\u1700\u170c"+"\u170e\u1711"
-      + "\u1720\u1731"+"\u1740\u1751"+"\u1760\u176c"+"\u176e\u1770"
-      + "\u1780\u17b3"+"\u17d7\u17d7"+"\u17dc\u17dc"+"\u1820\u1877"
-      + "\u1880\u18a8"+"\u1e00\u1e9b"+"\u1ea0\u1ef9"+"\u1f00\u1f15"
-      + "\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"
-      + "\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"
-      + "\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"
-      + "\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"+"\u1fe0\u1fec"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"+"\u2115\u2115"
-      + "\u2119\u211d"+"\u2124\u2124"+"\u2126\u2126"+"\u2128\u2128"
-      + "\u212a\u212d"+"\u212f\u2131"+"\u2133\u2139"+"\u213d\u213f"
-      + "\u2145\u2149"+"\u2160\u2183"+"\u3005\u3007"+"\u3021\u3029"
-      + "\u3031\u3035"+"\u3038\u303c"+"\u3041\u3096"+"\u309d\u309f"
-      + "\u30a1\u30fa"+"\u30fc\u30ff"+"\u3105\u312c"+"\u3131\u318e"
-      + "\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"+"\u4e00\u9fa5"
-      + "\ua000\ua48c"+"\uac00\ud7a3"+"\uf900\ufa2d"+"\ufa30\ufa6a"
-      + "\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb1d"+"\ufb1f\ufb28"
-      + "\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufc5d"+"\ufc64\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdf9"+"\ufe71\ufe71"
-      + "\ufe73\ufe73"+"\ufe77\ufe77"+"\ufe79\ufe79"+"\ufe7b\ufe7b"
-      + "\ufe7d\ufe7d"+"\ufe7f\ufefc"+"\uff21\uff3a"+"\uff41\uff5a"
-      + "\uff66\uff9d"+"\uffa0\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"
-      + "\uffd2\uffd7"+"\uffda\uffdc"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"
-      + "\ud801\udc00\ud801\udc25"+"\ud801\udc28\ud801\udc4d"+"\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"
-      + "\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"
-      + "\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc0"+"\ud835\udcc2\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea3"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"
-      + "\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"
-      + "\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"
-      + "\ud835\udfc4\ud835\udfc9"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 3.2 property value: {yi}
-        "\ua000\ua48c"+"\ua490\ua4a1"+"\ua4a4\ua4b3"+"\ua4b5\ua4c0"
-      + "\ua4c2\ua4c4"+"\ua4c6\ua4c6",
-    // Unicode 3.2 property value: {zl}
-        "\u2028\u2028",
-    // Unicode 3.2 property value: {zp}
-        "\u2029\u2029",
-    // Unicode 3.2 property value: {zs}
-        "\u0020\u0020"+"\u00a0\u00a0"+"\u1680\u1680"+"\u2000\u200b"
-      + "\u202f\u202f"+"\u205f\u205f"+"\u3000\u3000"  };
-  public static final String[] propertyValueAliases = {
-        "ahex", "asciihexdigit",   "alpha", "alphabetic",
-        "arab", "arabic",   "armn", "armenian",
-        "beng", "bengali",   "bidic", "bidicontrol",
-        "bopo", "bopomofo",   "buhd", "buhid",
-        "cans", "canadianaboriginal",   "casedletter", "lc",
-        "cher", "cherokee",   "closepunctuation", "pe",
-        "connectorpunctuation", "pc",   "control", "cc",
-        "currencysymbol", "sc",   "cyrl", "cyrillic",
-        "dashpunctuation", "pd",   "decimalnumber", "nd",
-        "dep", "deprecated",   "deva", "devanagari",
-        "di", "defaultignorablecodepoint",   "dia", "diacritic",
-        "dsrt", "deseret",   "enclosingmark", "me",
-        "ethi", "ethiopic",   "ext", "extender",
-        "finalpunctuation", "pf",   "format", "cf",
-        "gc=c", "c",   "gc=casedletter", "lc",
-        "gc=cc", "cc",   "gc=cf", "cf",
-        "gc=closepunctuation", "pe",   "gc=cn", "cn",
-        "gc=co", "co",   "gc=connectorpunctuation", "pc",
-        "gc=control", "cc",   "gc=currencysymbol", "sc",
-        "gc=dashpunctuation", "pd",   "gc=decimalnumber", "nd",
-        "gc=enclosingmark", "me",   "gc=finalpunctuation", "pf",
-        "gc=format", "cf",   "gc=initialpunctuation", "pi",
-        "gc=l", "l",   "gc=lc", "lc",
-        "gc=letter", "l",   "gc=letternumber", "nl",
-        "gc=lineseparator", "zl",   "gc=ll", "ll",
-        "gc=lm", "lm",   "gc=lo", "lo",
-        "gc=lowercaseletter", "ll",   "gc=lt", "lt",
-        "gc=lu", "lu",   "gc=m", "m",
-        "gc=mark", "m",   "gc=mathsymbol", "sm",
-        "gc=mc", "mc",   "gc=me", "me",
-        "gc=mn", "mn",   "gc=modifierletter", "lm",
-        "gc=modifiersymbol", "sk",   "gc=n", "n",
-        "gc=nd", "nd",   "gc=nl", "nl",
-        "gc=no", "no",   "gc=nonspacingmark", "mn",
-        "gc=number", "n",   "gc=openpunctuation", "ps",
-        "gc=other", "c",   "gc=otherletter", "lo",
-        "gc=othernumber", "no",   "gc=otherpunctuation", "po",
-        "gc=othersymbol", "so",   "gc=p", "p",
-        "gc=paragraphseparator", "zp",   "gc=pc", "pc",
-        "gc=pd", "pd",   "gc=pe", "pe",
-        "gc=pf", "pf",   "gc=pi", "pi",
-        "gc=po", "po",   "gc=privateuse", "co",
-        "gc=ps", "ps",   "gc=punctuation", "p",
-        "gc=s", "s",   "gc=sc", "sc",
-        "gc=separator", "z",   "gc=sk", "sk",
-        "gc=sm", "sm",   "gc=so", "so",
-        "gc=spaceseparator", "zs",   "gc=spacingmark", "mc",
-        "gc=symbol", "s",   "gc=titlecaseletter", "lt",
-        "gc=unassigned", "cn",   "gc=uppercaseletter", "lu",
-        "gc=z", "z",   "gc=zl", "zl",
-        "gc=zp", "zp",   "gc=zs", "zs",
-        "generalcategory=c", "c",   "generalcategory=casedletter", "lc",
-        "generalcategory=cc", "cc",   "generalcategory=cf", "cf",
-        "generalcategory=closepunctuation", "pe",   "generalcategory=cn", "cn",
-        "generalcategory=co", "co",   "generalcategory=connectorpunctuation", "pc",
-        "generalcategory=control", "cc",   "generalcategory=currencysymbol", "sc",
-        "generalcategory=dashpunctuation", "pd",   "generalcategory=decimalnumber", "nd",
-        "generalcategory=enclosingmark", "me",   "generalcategory=finalpunctuation", "pf",
-        "generalcategory=format", "cf",   "generalcategory=initialpunctuation", "pi",
-        "generalcategory=l", "l",   "generalcategory=lc", "lc",
-        "generalcategory=letter", "l",   "generalcategory=letternumber", "nl",
-        "generalcategory=lineseparator", "zl",   "generalcategory=ll", "ll",
-        "generalcategory=lm", "lm",   "generalcategory=lo", "lo",
-        "generalcategory=lowercaseletter", "ll",   "generalcategory=lt", "lt",
-        "generalcategory=lu", "lu",   "generalcategory=m", "m",
-        "generalcategory=mark", "m",   "generalcategory=mathsymbol", "sm",
-        "generalcategory=mc", "mc",   "generalcategory=me", "me",
-        "generalcategory=mn", "mn",   "generalcategory=modifierletter", "lm",
-        "generalcategory=modifiersymbol", "sk",   "generalcategory=n", "n",
-        "generalcategory=nd", "nd",   "generalcategory=nl", "nl",
-        "generalcategory=no", "no",   "generalcategory=nonspacingmark", "mn",
-        "generalcategory=number", "n",   "generalcategory=openpunctuation", "ps",
-        "generalcategory=other", "c",   "generalcategory=otherletter", "lo",
-        "generalcategory=othernumber", "no",   "generalcategory=otherpunctuation", "po",
-        "generalcategory=othersymbol", "so",   "generalcategory=p", "p",
-        "generalcategory=paragraphseparator", "zp",   "generalcategory=pc", "pc",
-        "generalcategory=pd", "pd",   "generalcategory=pe", "pe",
-        "generalcategory=pf", "pf",   "generalcategory=pi", "pi",
-        "generalcategory=po", "po",   "generalcategory=privateuse", "co",
-        "generalcategory=ps", "ps",   "generalcategory=punctuation", "p",
-        "generalcategory=s", "s",   "generalcategory=sc", "sc",
-        "generalcategory=separator", "z",   "generalcategory=sk", "sk",
-        "generalcategory=sm", "sm",   "generalcategory=so", "so",
-        "generalcategory=spaceseparator", "zs",   "generalcategory=spacingmark", "mc",
-        "generalcategory=symbol", "s",   "generalcategory=titlecaseletter", "lt",
-        "generalcategory=unassigned", "cn",   "generalcategory=uppercaseletter", "lu",
-        "generalcategory=z", "z",   "generalcategory=zl", "zl",
-        "generalcategory=zp", "zp",   "generalcategory=zs", "zs",
-        "geor", "georgian",   "goth", "gothic",
-        "grbase", "graphemebase",   "grek", "greek",
-        "grext", "graphemeextend",   "grlink", "graphemelink",
-        "gujr", "gujarati",   "guru", "gurmukhi",
-        "hang", "hangul",   "hani", "han",
-        "hano", "hanunoo",   "hebr", "hebrew",
-        "hex", "hexdigit",   "hira", "hiragana",
-        "idc", "idcontinue",   "ideo", "ideographic",
-        "ids", "idstart",   "idsb", "idsbinaryoperator",
-        "idst", "idstrinaryoperator",   "initialpunctuation", "pi",
-        "ital", "olditalic",   "joinc", "joincontrol",
-        "kana", "katakana",   "khmr", "khmer",
-        "knda", "kannada",   "laoo", "lao",
-        "latn", "latin",   "lb=ai", "linebreak=ambiguous",
-        "lb=al", "linebreak=alphabetic",   "lb=alphabetic", "linebreak=alphabetic",
-        "lb=ambiguous", "linebreak=ambiguous",   "lb=b2", "linebreak=breakboth",
-        "lb=ba", "linebreak=breakafter",   "lb=bb", "linebreak=breakbefore",
-        "lb=bk", "linebreak=mandatorybreak",   "lb=breakafter", "linebreak=breakafter",
-        "lb=breakbefore", "linebreak=breakbefore",   "lb=breakboth", "linebreak=breakboth",
-        "lb=breaksymbols", "linebreak=breaksymbols",   "lb=carriagereturn", "linebreak=carriagereturn",
-        "lb=cb", "linebreak=contingentbreak",   "lb=cl", "linebreak=closepunctuation",
-        "lb=closepunctuation", "linebreak=closepunctuation",   "lb=cm", "linebreak=combiningmark",
-        "lb=combiningmark", "linebreak=combiningmark",   "lb=complexcontext", "linebreak=complexcontext",
-        "lb=contingentbreak", "linebreak=contingentbreak",   "lb=cr", "linebreak=carriagereturn",
-        "lb=ex", "linebreak=exclamation",   "lb=exclamation", "linebreak=exclamation",
-        "lb=gl", "linebreak=glue",   "lb=glue", "linebreak=glue",
-        "lb=hy", "linebreak=hyphen",   "lb=hyphen", "linebreak=hyphen",
-        "lb=id", "linebreak=ideographic",   "lb=ideographic", "linebreak=ideographic",
-        "lb=in", "linebreak=inseperable",   "lb=infixnumeric", "linebreak=infixnumeric",
-        "lb=inseperable", "linebreak=inseperable",   "lb=is", "linebreak=infixnumeric",
-        "lb=lf", "linebreak=linefeed",   "lb=linefeed", "linebreak=linefeed",
-        "lb=mandatorybreak", "linebreak=mandatorybreak",   "lb=nonstarter", "linebreak=nonstarter",
-        "lb=ns", "linebreak=nonstarter",   "lb=nu", "linebreak=numeric",
-        "lb=numeric", "linebreak=numeric",   "lb=op", "linebreak=openpunctuation",
-        "lb=openpunctuation", "linebreak=openpunctuation",   "lb=po", "linebreak=postfixnumeric",
-        "lb=postfixnumeric", "linebreak=postfixnumeric",   "lb=pr", "linebreak=prefixnumeric",
-        "lb=prefixnumeric", "linebreak=prefixnumeric",   "lb=qu", "linebreak=quotation",
-        "lb=quotation", "linebreak=quotation",   "lb=sa", "linebreak=complexcontext",
-        "lb=sp", "linebreak=space",   "lb=space", "linebreak=space",
-        "lb=sy", "linebreak=breaksymbols",   "lb=unknown", "linebreak=unknown",
-        "lb=xx", "linebreak=unknown",   "lb=zw", "linebreak=zwspace",
-        "lb=zwspace", "linebreak=zwspace",   "letter", "l",
-        "letternumber", "nl",   "linebreak=ai", "linebreak=ambiguous",
-        "linebreak=al", "linebreak=alphabetic",   "linebreak=b2", "linebreak=breakboth",
-        "linebreak=ba", "linebreak=breakafter",   "linebreak=bb", "linebreak=breakbefore",
-        "linebreak=bk", "linebreak=mandatorybreak",   "linebreak=cb", "linebreak=contingentbreak",
-        "linebreak=cl", "linebreak=closepunctuation",   "linebreak=cm", "linebreak=combiningmark",
-        "linebreak=cr", "linebreak=carriagereturn",   "linebreak=ex", "linebreak=exclamation",
-        "linebreak=gl", "linebreak=glue",   "linebreak=hy", "linebreak=hyphen",
-        "linebreak=id", "linebreak=ideographic",   "linebreak=in", "linebreak=inseperable",
-        "linebreak=is", "linebreak=infixnumeric",   "linebreak=lf", "linebreak=linefeed",
-        "linebreak=ns", "linebreak=nonstarter",   "linebreak=nu", "linebreak=numeric",
-        "linebreak=op", "linebreak=openpunctuation",   "linebreak=po", "linebreak=postfixnumeric",
-        "linebreak=pr", "linebreak=prefixnumeric",   "linebreak=qu", "linebreak=quotation",
-        "linebreak=sa", "linebreak=complexcontext",   "linebreak=sp", "linebreak=space",
-        "linebreak=sy", "linebreak=breaksymbols",   "linebreak=xx", "linebreak=unknown",
-        "linebreak=zw", "linebreak=zwspace",   "lineseparator", "zl",
-        "loe", "logicalorderexception",   "lower", "lowercase",
-        "lowercaseletter", "ll",   "mark", "m",
-        "mathsymbol", "sm",   "mlym", "malayalam",
-        "modifierletter", "lm",   "modifiersymbol", "sk",
-        "mong", "mongolian",   "mymr", "myanmar",
-        "nchar", "noncharactercodepoint",   "nonspacingmark", "mn",
-        "number", "n",   "oalpha", "otheralphabetic",
-        "odi", "otherdefaultignorablecodepoint",   "ogam", "ogham",
-        "ogrext", "othergraphemeextend",   "olower", "otherlowercase",
-        "omath", "othermath",   "openpunctuation", "ps",
-        "orya", "oriya",   "other", "c",
-        "otherletter", "lo",   "othernumber", "no",
-        "otherpunctuation", "po",   "othersymbol", "so",
-        "oupper", "otheruppercase",   "paragraphseparator", "zp",
-        "privateuse", "co",   "punctuation", "p",
-        "qaai", "inherited",   "qmark", "quotationmark",
-        "runr", "runic",   "sc=arab", "arabic",
-        "sc=arabic", "arabic",   "sc=armenian", "armenian",
-        "sc=armn", "armenian",   "sc=beng", "bengali",
-        "sc=bengali", "bengali",   "sc=bopo", "bopomofo",
-        "sc=bopomofo", "bopomofo",   "sc=buhd", "buhid",
-        "sc=buhid", "buhid",   "sc=canadianaboriginal", "canadianaboriginal",
-        "sc=cans", "canadianaboriginal",   "sc=cher", "cherokee",
-        "sc=cherokee", "cherokee",   "sc=common", "common",
-        "sc=cyrillic", "cyrillic",   "sc=cyrl", "cyrillic",
-        "sc=deseret", "deseret",   "sc=deva", "devanagari",
-        "sc=devanagari", "devanagari",   "sc=dsrt", "deseret",
-        "sc=ethi", "ethiopic",   "sc=ethiopic", "ethiopic",
-        "sc=geor", "georgian",   "sc=georgian", "georgian",
-        "sc=goth", "gothic",   "sc=gothic", "gothic",
-        "sc=greek", "greek",   "sc=grek", "greek",
-        "sc=gujarati", "gujarati",   "sc=gujr", "gujarati",
-        "sc=gurmukhi", "gurmukhi",   "sc=guru", "gurmukhi",
-        "sc=han", "han",   "sc=hang", "hangul",
-        "sc=hangul", "hangul",   "sc=hani", "han",
-        "sc=hano", "hanunoo",   "sc=hanunoo", "hanunoo",
-        "sc=hebr", "hebrew",   "sc=hebrew", "hebrew",
-        "sc=hira", "hiragana",   "sc=hiragana", "hiragana",
-        "sc=inherited", "inherited",   "sc=ital", "olditalic",
-        "sc=kana", "katakana",   "sc=kannada", "kannada",
-        "sc=katakana", "katakana",   "sc=khmer", "khmer",
-        "sc=khmr", "khmer",   "sc=knda", "kannada",
-        "sc=lao", "lao",   "sc=laoo", "lao",
-        "sc=latin", "latin",   "sc=latn", "latin",
-        "sc=malayalam", "malayalam",   "sc=mlym", "malayalam",
-        "sc=mong", "mongolian",   "sc=mongolian", "mongolian",
-        "sc=myanmar", "myanmar",   "sc=mymr", "myanmar",
-        "sc=ogam", "ogham",   "sc=ogham", "ogham",
-        "sc=olditalic", "olditalic",   "sc=oriya", "oriya",
-        "sc=orya", "oriya",   "sc=qaai", "inherited",
-        "sc=runic", "runic",   "sc=runr", "runic",
-        "sc=sinh", "sinhala",   "sc=sinhala", "sinhala",
-        "sc=syrc", "syriac",   "sc=syriac", "syriac",
-        "sc=tagalog", "tagalog",   "sc=tagb", "tagbanwa",
-        "sc=tagbanwa", "tagbanwa",   "sc=tamil", "tamil",
-        "sc=taml", "tamil",   "sc=telu", "telugu",
-        "sc=telugu", "telugu",   "sc=tglg", "tagalog",
-        "sc=thaa", "thaana",   "sc=thaana", "thaana",
-        "sc=thai", "thai",   "sc=tibetan", "tibetan",
-        "sc=tibt", "tibetan",   "sc=yi", "yi",
-        "sc=yiii", "yi",   "sc=zyyy", "common",
-        "script=arab", "arabic",   "script=arabic", "arabic",
-        "script=armenian", "armenian",   "script=armn", "armenian",
-        "script=beng", "bengali",   "script=bengali", "bengali",
-        "script=bopo", "bopomofo",   "script=bopomofo", "bopomofo",
-        "script=buhd", "buhid",   "script=buhid", "buhid",
-        "script=canadianaboriginal", "canadianaboriginal",   "script=cans", "canadianaboriginal",
-        "script=cher", "cherokee",   "script=cherokee", "cherokee",
-        "script=common", "common",   "script=cyrillic", "cyrillic",
-        "script=cyrl", "cyrillic",   "script=deseret", "deseret",
-        "script=deva", "devanagari",   "script=devanagari", "devanagari",
-        "script=dsrt", "deseret",   "script=ethi", "ethiopic",
-        "script=ethiopic", "ethiopic",   "script=geor", "georgian",
-        "script=georgian", "georgian",   "script=goth", "gothic",
-        "script=gothic", "gothic",   "script=greek", "greek",
-        "script=grek", "greek",   "script=gujarati", "gujarati",
-        "script=gujr", "gujarati",   "script=gurmukhi", "gurmukhi",
-        "script=guru", "gurmukhi",   "script=han", "han",
-        "script=hang", "hangul",   "script=hangul", "hangul",
-        "script=hani", "han",   "script=hano", "hanunoo",
-        "script=hanunoo", "hanunoo",   "script=hebr", "hebrew",
-        "script=hebrew", "hebrew",   "script=hira", "hiragana",
-        "script=hiragana", "hiragana",   "script=inherited", "inherited",
-        "script=ital", "olditalic",   "script=kana", "katakana",
-        "script=kannada", "kannada",   "script=katakana", "katakana",
-        "script=khmer", "khmer",   "script=khmr", "khmer",
-        "script=knda", "kannada",   "script=lao", "lao",
-        "script=laoo", "lao",   "script=latin", "latin",
-        "script=latn", "latin",   "script=malayalam", "malayalam",
-        "script=mlym", "malayalam",   "script=mong", "mongolian",
-        "script=mongolian", "mongolian",   "script=myanmar", "myanmar",
-        "script=mymr", "myanmar",   "script=ogam", "ogham",
-        "script=ogham", "ogham",   "script=olditalic", "olditalic",
-        "script=oriya", "oriya",   "script=orya", "oriya",
-        "script=qaai", "inherited",   "script=runic", "runic",
-        "script=runr", "runic",   "script=sinh", "sinhala",
-        "script=sinhala", "sinhala",   "script=syrc", "syriac",
-        "script=syriac", "syriac",   "script=tagalog", "tagalog",
-        "script=tagb", "tagbanwa",   "script=tagbanwa", "tagbanwa",
-        "script=tamil", "tamil",   "script=taml", "tamil",
-        "script=telu", "telugu",   "script=telugu", "telugu",
-        "script=tglg", "tagalog",   "script=thaa", "thaana",
-        "script=thaana", "thaana",   "script=thai", "thai",
-        "script=tibetan", "tibetan",   "script=tibt", "tibetan",
-        "script=yi", "yi",   "script=yiii", "yi",
-        "script=zyyy", "common",   "sd", "softdotted",
-        "separator", "z",   "sinh", "sinhala",
-        "spaceseparator", "zs",   "spacingmark", "mc",
-        "symbol", "s",   "syrc", "syriac",
-        "tagb", "tagbanwa",   "taml", "tamil",
-        "telu", "telugu",   "term", "terminalpunctuation",
-        "tglg", "tagalog",   "thaa", "thaana",
-        "tibt", "tibetan",   "titlecaseletter", "lt",
-        "uideo", "unifiedideograph",   "unassigned", "cn",
-        "upper", "uppercase",   "uppercaseletter", "lu",
-        "wspace", "whitespace",   "xidc", "xidcontinue",
-        "xids", "xidstart",   "yiii", "yi",
-        "zyyy", "common"
-  };
-  public static final int caselessMatchPartitionSize = 4;
-  public static final String caselessMatchPartitions =
-        "\u0041\u0061\000\000"+"\u0042\u0062\000\000"+"\u0043\u0063\000\000"
-      + "\u0044\u0064\000\000"+"\u0045\u0065\000\000"+"\u0046\u0066\000\000"
-      + "\u0047\u0067\000\000"+"\u0048\u0068\000\000"+"\u0049\u0069\u0130\u0131"
-      + "\u004a\u006a\000\000"+"\u004b\u006b\u212a\000"+"\u004c\u006c\000\000"
-      + "\u004d\u006d\000\000"+"\u004e\u006e\000\000"+"\u004f\u006f\000\000"
-      + "\u0050\u0070\000\000"+"\u0051\u0071\000\000"+"\u0052\u0072\000\000"
-      + "\u0053\u0073\u017f\000"+"\u0054\u0074\000\000"+"\u0055\u0075\000\000"
-      + "\u0056\u0076\000\000"+"\u0057\u0077\000\000"+"\u0058\u0078\000\000"
-      + "\u0059\u0079\000\000"+"\u005a\u007a\000\000"+"\u00b5\u039c\u03bc\000"
-      + "\u00c0\u00e0\000\000"+"\u00c1\u00e1\000\000"+"\u00c2\u00e2\000\000"
-      + "\u00c3\u00e3\000\000"+"\u00c4\u00e4\000\000"+"\u00c5\u00e5\u212b\000"
-      + "\u00c6\u00e6\000\000"+"\u00c7\u00e7\000\000"+"\u00c8\u00e8\000\000"
-      + "\u00c9\u00e9\000\000"+"\u00ca\u00ea\000\000"+"\u00cb\u00eb\000\000"
-      + "\u00cc\u00ec\000\000"+"\u00cd\u00ed\000\000"+"\u00ce\u00ee\000\000"
-      + "\u00cf\u00ef\000\000"+"\u00d0\u00f0\000\000"+"\u00d1\u00f1\000\000"
-      + "\u00d2\u00f2\000\000"+"\u00d3\u00f3\000\000"+"\u00d4\u00f4\000\000"
-      + "\u00d5\u00f5\000\000"+"\u00d6\u00f6\000\000"+"\u00d8\u00f8\000\000"
-      + "\u00d9\u00f9\000\000"+"\u00da\u00fa\000\000"+"\u00db\u00fb\000\000"
-      + "\u00dc\u00fc\000\000"+"\u00dd\u00fd\000\000"+"\u00de\u00fe\000\000"
-      + "\u00ff\u0178\000\000"+"\u0100\u0101\000\000"+"\u0102\u0103\000\000"
-      + "\u0104\u0105\000\000"+"\u0106\u0107\000\000"+"\u0108\u0109\000\000"
-      + "\u010a\u010b\000\000"+"\u010c\u010d\000\000"+"\u010e\u010f\000\000"
-      + "\u0110\u0111\000\000"+"\u0112\u0113\000\000"+"\u0114\u0115\000\000"
-      + "\u0116\u0117\000\000"+"\u0118\u0119\000\000"+"\u011a\u011b\000\000"
-      + "\u011c\u011d\000\000"+"\u011e\u011f\000\000"+"\u0120\u0121\000\000"
-      + "\u0122\u0123\000\000"+"\u0124\u0125\000\000"+"\u0126\u0127\000\000"
-      + "\u0128\u0129\000\000"+"\u012a\u012b\000\000"+"\u012c\u012d\000\000"
-      + "\u012e\u012f\000\000"+"\u0132\u0133\000\000"+"\u0134\u0135\000\000"
-      + "\u0136\u0137\000\000"+"\u0139\u013a\000\000"+"\u013b\u013c\000\000"
-      + "\u013d\u013e\000\000"+"\u013f\u0140\000\000"+"\u0141\u0142\000\000"
-      + "\u0143\u0144\000\000"+"\u0145\u0146\000\000"+"\u0147\u0148\000\000"
-      + "\u014a\u014b\000\000"+"\u014c\u014d\000\000"+"\u014e\u014f\000\000"
-      + "\u0150\u0151\000\000"+"\u0152\u0153\000\000"+"\u0154\u0155\000\000"
-      + "\u0156\u0157\000\000"+"\u0158\u0159\000\000"+"\u015a\u015b\000\000"
-      + "\u015c\u015d\000\000"+"\u015e\u015f\000\000"+"\u0160\u0161\000\000"
-      + "\u0162\u0163\000\000"+"\u0164\u0165\000\000"+"\u0166\u0167\000\000"
-      + "\u0168\u0169\000\000"+"\u016a\u016b\000\000"+"\u016c\u016d\000\000"
-      + "\u016e\u016f\000\000"+"\u0170\u0171\000\000"+"\u0172\u0173\000\000"
-      + "\u0174\u0175\000\000"+"\u0176\u0177\000\000"+"\u0179\u017a\000\000"
-      + "\u017b\u017c\000\000"+"\u017d\u017e\000\000"+"\u0181\u0253\000\000"
-      + "\u0182\u0183\000\000"+"\u0184\u0185\000\000"+"\u0186\u0254\000\000"
-      + "\u0187\u0188\000\000"+"\u0189\u0256\000\000"+"\u018a\u0257\000\000"
-      + "\u018b\u018c\000\000"+"\u018e\u01dd\000\000"+"\u018f\u0259\000\000"
-      + "\u0190\u025b\000\000"+"\u0191\u0192\000\000"+"\u0193\u0260\000\000"
-      + "\u0194\u0263\000\000"+"\u0195\u01f6\000\000"+"\u0196\u0269\000\000"
-      + "\u0197\u0268\000\000"+"\u0198\u0199\000\000"+"\u019c\u026f\000\000"
-      + "\u019d\u0272\000\000"+"\u019e\u0220\000\000"+"\u019f\u0275\000\000"
-      + "\u01a0\u01a1\000\000"+"\u01a2\u01a3\000\000"+"\u01a4\u01a5\000\000"
-      + "\u01a6\u0280\000\000"+"\u01a7\u01a8\000\000"+"\u01a9\u0283\000\000"
-      + "\u01ac\u01ad\000\000"+"\u01ae\u0288\000\000"+"\u01af\u01b0\000\000"
-      + "\u01b1\u028a\000\000"+"\u01b2\u028b\000\000"+"\u01b3\u01b4\000\000"
-      + "\u01b5\u01b6\000\000"+"\u01b7\u0292\000\000"+"\u01b8\u01b9\000\000"
-      + "\u01bc\u01bd\000\000"+"\u01bf\u01f7\000\000"+"\u01c4\u01c5\u01c6\000"
-      + "\u01c7\u01c8\u01c9\000"+"\u01ca\u01cb\u01cc\000"+"\u01cd\u01ce\000\000"
-      + "\u01cf\u01d0\000\000"+"\u01d1\u01d2\000\000"+"\u01d3\u01d4\000\000"
-      + "\u01d5\u01d6\000\000"+"\u01d7\u01d8\000\000"+"\u01d9\u01da\000\000"
-      + "\u01db\u01dc\000\000"+"\u01de\u01df\000\000"+"\u01e0\u01e1\000\000"
-      + "\u01e2\u01e3\000\000"+"\u01e4\u01e5\000\000"+"\u01e6\u01e7\000\000"
-      + "\u01e8\u01e9\000\000"+"\u01ea\u01eb\000\000"+"\u01ec\u01ed\000\000"
-      + "\u01ee\u01ef\000\000"+"\u01f1\u01f2\u01f3\000"+"\u01f4\u01f5\000\000"
-      + "\u01f8\u01f9\000\000"+"\u01fa\u01fb\000\000"+"\u01fc\u01fd\000\000"
-      + "\u01fe\u01ff\000\000"+"\u0200\u0201\000\000"+"\u0202\u0203\000\000"
-      + "\u0204\u0205\000\000"+"\u0206\u0207\000\000"+"\u0208\u0209\000\000"
-      + "\u020a\u020b\000\000"+"\u020c\u020d\000\000"+"\u020e\u020f\000\000"
-      + "\u0210\u0211\000\000"+"\u0212\u0213\000\000"+"\u0214\u0215\000\000"
-      + "\u0216\u0217\000\000"+"\u0218\u0219\000\000"+"\u021a\u021b\000\000"
-      + "\u021c\u021d\000\000"+"\u021e\u021f\000\000"+"\u0222\u0223\000\000"
-      + "\u0224\u0225\000\000"+"\u0226\u0227\000\000"+"\u0228\u0229\000\000"
-      + "\u022a\u022b\000\000"+"\u022c\u022d\000\000"+"\u022e\u022f\000\000"
-      + "\u0230\u0231\000\000"+"\u0232\u0233\000\000"+"\u0345\u0399\u03b9\u1fbe"
-      + "\u0386\u03ac\000\000"+"\u0388\u03ad\000\000"+"\u0389\u03ae\000\000"
-      + "\u038a\u03af\000\000"+"\u038c\u03cc\000\000"+"\u038e\u03cd\000\000"
-      + "\u038f\u03ce\000\000"+"\u0391\u03b1\000\000"+"\u0392\u03b2\u03d0\000"
-      + "\u0393\u03b3\000\000"+"\u0394\u03b4\000\000"+"\u0395\u03b5\u03f5\000"
-      + "\u0396\u03b6\000\000"+"\u0397\u03b7\000\000"+"\u0398\u03b8\u03d1\u03f4"
-      + "\u039a\u03ba\u03f0\000"+"\u039b\u03bb\000\000"+"\u039d\u03bd\000\000"
-      + "\u039e\u03be\000\000"+"\u039f\u03bf\000\000"+"\u03a0\u03c0\u03d6\000"
-      + "\u03a1\u03c1\u03f1\000"+"\u03a3\u03c2\u03c3\u03f2"+"\u03a4\u03c4\000\000"
-      + "\u03a5\u03c5\000\000"+"\u03a6\u03c6\u03d5\000"+"\u03a7\u03c7\000\000"
-      + "\u03a8\u03c8\000\000"+"\u03a9\u03c9\u2126\000"+"\u03aa\u03ca\000\000"
-      + "\u03ab\u03cb\000\000"+"\u03d8\u03d9\000\000"+"\u03da\u03db\000\000"
-      + "\u03dc\u03dd\000\000"+"\u03de\u03df\000\000"+"\u03e0\u03e1\000\000"
-      + "\u03e2\u03e3\000\000"+"\u03e4\u03e5\000\000"+"\u03e6\u03e7\000\000"
-      + "\u03e8\u03e9\000\000"+"\u03ea\u03eb\000\000"+"\u03ec\u03ed\000\000"
-      + "\u03ee\u03ef\000\000"+"\u0400\u0450\000\000"+"\u0401\u0451\000\000"
-      + "\u0402\u0452\000\000"+"\u0403\u0453\000\000"+"\u0404\u0454\000\000"
-      + "\u0405\u0455\000\000"+"\u0406\u0456\000\000"+"\u0407\u0457\000\000"
-      + "\u0408\u0458\000\000"+"\u0409\u0459\000\000"+"\u040a\u045a\000\000"
-      + "\u040b\u045b\000\000"+"\u040c\u045c\000\000"+"\u040d\u045d\000\000"
-      + "\u040e\u045e\000\000"+"\u040f\u045f\000\000"+"\u0410\u0430\000\000"
-      + "\u0411\u0431\000\000"+"\u0412\u0432\000\000"+"\u0413\u0433\000\000"
-      + "\u0414\u0434\000\000"+"\u0415\u0435\000\000"+"\u0416\u0436\000\000"
-      + "\u0417\u0437\000\000"+"\u0418\u0438\000\000"+"\u0419\u0439\000\000"
-      + "\u041a\u043a\000\000"+"\u041b\u043b\000\000"+"\u041c\u043c\000\000"
-      + "\u041d\u043d\000\000"+"\u041e\u043e\000\000"+"\u041f\u043f\000\000"
-      + "\u0420\u0440\000\000"+"\u0421\u0441\000\000"+"\u0422\u0442\000\000"
-      + "\u0423\u0443\000\000"+"\u0424\u0444\000\000"+"\u0425\u0445\000\000"
-      + "\u0426\u0446\000\000"+"\u0427\u0447\000\000"+"\u0428\u0448\000\000"
-      + "\u0429\u0449\000\000"+"\u042a\u044a\000\000"+"\u042b\u044b\000\000"
-      + "\u042c\u044c\000\000"+"\u042d\u044d\000\000"+"\u042e\u044e\000\000"
-      + "\u042f\u044f\000\000"+"\u0460\u0461\000\000"+"\u0462\u0463\000\000"
-      + "\u0464\u0465\000\000"+"\u0466\u0467\000\000"+"\u0468\u0469\000\000"
-      + "\u046a\u046b\000\000"+"\u046c\u046d\000\000"+"\u046e\u046f\000\000"
-      + "\u0470\u0471\000\000"+"\u0472\u0473\000\000"+"\u0474\u0475\000\000"
-      + "\u0476\u0477\000\000"+"\u0478\u0479\000\000"+"\u047a\u047b\000\000"
-      + "\u047c\u047d\000\000"+"\u047e\u047f\000\000"+"\u0480\u0481\000\000"
-      + "\u048a\u048b\000\000"+"\u048c\u048d\000\000"+"\u048e\u048f\000\000"
-      + "\u0490\u0491\000\000"+"\u0492\u0493\000\000"+"\u0494\u0495\000\000"
-      + "\u0496\u0497\000\000"+"\u0498\u0499\000\000"+"\u049a\u049b\000\000"
-      + "\u049c\u049d\000\000"+"\u049e\u049f\000\000"+"\u04a0\u04a1\000\000"
-      + "\u04a2\u04a3\000\000"+"\u04a4\u04a5\000\000"+"\u04a6\u04a7\000\000"
-      + "\u04a8\u04a9\000\000"+"\u04aa\u04ab\000\000"+"\u04ac\u04ad\000\000"
-      + "\u04ae\u04af\000\000"+"\u04b0\u04b1\000\000"+"\u04b2\u04b3\000\000"
-      + "\u04b4\u04b5\000\000"+"\u04b6\u04b7\000\000"+"\u04b8\u04b9\000\000"
-      + "\u04ba\u04bb\000\000"+"\u04bc\u04bd\000\000"+"\u04be\u04bf\000\000"
-      + "\u04c1\u04c2\000\000"+"\u04c3\u04c4\000\000"+"\u04c5\u04c6\000\000"
-      + "\u04c7\u04c8\000\000"+"\u04c9\u04ca\000\000"+"\u04cb\u04cc\000\000"
-      + "\u04cd\u04ce\000\000"+"\u04d0\u04d1\000\000"+"\u04d2\u04d3\000\000"
-      + "\u04d4\u04d5\000\000"+"\u04d6\u04d7\000\000"+"\u04d8\u04d9\000\000"
-      + "\u04da\u04db\000\000"+"\u04dc\u04dd\000\000"+"\u04de\u04df\000\000"
-      + "\u04e0\u04e1\000\000"+"\u04e2\u04e3\000\000"+"\u04e4\u04e5\000\000"
-      + "\u04e6\u04e7\000\000"+"\u04e8\u04e9\000\000"+"\u04ea\u04eb\000\000"
-      + "\u04ec\u04ed\000\000"+"\u04ee\u04ef\000\000"+"\u04f0\u04f1\000\000"
-      + "\u04f2\u04f3\000\000"+"\u04f4\u04f5\000\000"+"\u04f8\u04f9\000\000"
-      + "\u0500\u0501\000\000"+"\u0502\u0503\000\000"+"\u0504\u0505\000\000"
-      + "\u0506\u0507\000\000"+"\u0508\u0509\000\000"+"\u050a\u050b\000\000"
-      + "\u050c\u050d\000\000"+"\u050e\u050f\000\000"+"\u0531\u0561\000\000"
-      + "\u0532\u0562\000\000"+"\u0533\u0563\000\000"+"\u0534\u0564\000\000"
-      + "\u0535\u0565\000\000"+"\u0536\u0566\000\000"+"\u0537\u0567\000\000"
-      + "\u0538\u0568\000\000"+"\u0539\u0569\000\000"+"\u053a\u056a\000\000"
-      + "\u053b\u056b\000\000"+"\u053c\u056c\000\000"+"\u053d\u056d\000\000"
-      + "\u053e\u056e\000\000"+"\u053f\u056f\000\000"+"\u0540\u0570\000\000"
-      + "\u0541\u0571\000\000"+"\u0542\u0572\000\000"+"\u0543\u0573\000\000"
-      + "\u0544\u0574\000\000"+"\u0545\u0575\000\000"+"\u0546\u0576\000\000"
-      + "\u0547\u0577\000\000"+"\u0548\u0578\000\000"+"\u0549\u0579\000\000"
-      + "\u054a\u057a\000\000"+"\u054b\u057b\000\000"+"\u054c\u057c\000\000"
-      + "\u054d\u057d\000\000"+"\u054e\u057e\000\000"+"\u054f\u057f\000\000"
-      + "\u0550\u0580\000\000"+"\u0551\u0581\000\000"+"\u0552\u0582\000\000"
-      + "\u0553\u0583\000\000"+"\u0554\u0584\000\000"+"\u0555\u0585\000\000"
-      + "\u0556\u0586\000\000"+"\u1e00\u1e01\000\000"+"\u1e02\u1e03\000\000"
-      + "\u1e04\u1e05\000\000"+"\u1e06\u1e07\000\000"+"\u1e08\u1e09\000\000"
-      + "\u1e0a\u1e0b\000\000"+"\u1e0c\u1e0d\000\000"+"\u1e0e\u1e0f\000\000"
-      + "\u1e10\u1e11\000\000"+"\u1e12\u1e13\000\000"+"\u1e14\u1e15\000\000"
-      + "\u1e16\u1e17\000\000"+"\u1e18\u1e19\000\000"+"\u1e1a\u1e1b\000\000"
-      + "\u1e1c\u1e1d\000\000"+"\u1e1e\u1e1f\000\000"+"\u1e20\u1e21\000\000"
-      + "\u1e22\u1e23\000\000"+"\u1e24\u1e25\000\000"+"\u1e26\u1e27\000\000"
-      + "\u1e28\u1e29\000\000"+"\u1e2a\u1e2b\000\000"+"\u1e2c\u1e2d\000\000"
-      + "\u1e2e\u1e2f\000\000"+"\u1e30\u1e31\000\000"+"\u1e32\u1e33\000\000"
-      + "\u1e34\u1e35\000\000"+"\u1e36\u1e37\000\000"+"\u1e38\u1e39\000\000"
-      + "\u1e3a\u1e3b\000\000"+"\u1e3c\u1e3d\000\000"+"\u1e3e\u1e3f\000\000"
-      + "\u1e40\u1e41\000\000"+"\u1e42\u1e43\000\000"+"\u1e44\u1e45\000\000"
-      + "\u1e46\u1e47\000\000"+"\u1e48\u1e49\000\000"+"\u1e4a\u1e4b\000\000"
-      + "\u1e4c\u1e4d\000\000"+"\u1e4e\u1e4f\000\000"+"\u1e50\u1e51\000\000"
-      + "\u1e52\u1e53\000\000"+"\u1e54\u1e55\000\000"+"\u1e56\u1e57\000\000"
-      + "\u1e58\u1e59\000\000"+"\u1e5a\u1e5b\000\000"+"\u1e5c\u1e5d\000\000"
-      + "\u1e5e\u1e5f\000\000"+"\u1e60\u1e61\u1e9b\000"+"\u1e62\u1e63\000\000"
-      + "\u1e64\u1e65\000\000"+"\u1e66\u1e67\000\000"+"\u1e68\u1e69\000\000"
-      + "\u1e6a\u1e6b\000\000"+"\u1e6c\u1e6d\000\000"+"\u1e6e\u1e6f\000\000"
-      + "\u1e70\u1e71\000\000"+"\u1e72\u1e73\000\000"+"\u1e74\u1e75\000\000"
-      + "\u1e76\u1e77\000\000"+"\u1e78\u1e79\000\000"+"\u1e7a\u1e7b\000\000"
-      + "\u1e7c\u1e7d\000\000"+"\u1e7e\u1e7f\000\000"+"\u1e80\u1e81\000\000"
-      + "\u1e82\u1e83\000\000"+"\u1e84\u1e85\000\000"+"\u1e86\u1e87\000\000"
-      + "\u1e88\u1e89\000\000"+"\u1e8a\u1e8b\000\000"+"\u1e8c\u1e8d\000\000"
-      + "\u1e8e\u1e8f\000\000"+"\u1e90\u1e91\000\000"+"\u1e92\u1e93\000\000"
-      + "\u1e94\u1e95\000\000"+"\u1ea0\u1ea1\000\000"+"\u1ea2\u1ea3\000\000"
-      + "\u1ea4\u1ea5\000\000"+"\u1ea6\u1ea7\000\000"+"\u1ea8\u1ea9\000\000"
-      + "\u1eaa\u1eab\000\000"+"\u1eac\u1ead\000\000"+"\u1eae\u1eaf\000\000"
-      + "\u1eb0\u1eb1\000\000"+"\u1eb2\u1eb3\000\000"+"\u1eb4\u1eb5\000\000"
-      + "\u1eb6\u1eb7\000\000"+"\u1eb8\u1eb9\000\000"+"\u1eba\u1ebb\000\000"
-      + "\u1ebc\u1ebd\000\000"+"\u1ebe\u1ebf\000\000"+"\u1ec0\u1ec1\000\000"
-      + "\u1ec2\u1ec3\000\000"+"\u1ec4\u1ec5\000\000"+"\u1ec6\u1ec7\000\000"
-      + "\u1ec8\u1ec9\000\000"+"\u1eca\u1ecb\000\000"+"\u1ecc\u1ecd\000\000"
-      + "\u1ece\u1ecf\000\000"+"\u1ed0\u1ed1\000\000"+"\u1ed2\u1ed3\000\000"
-      + "\u1ed4\u1ed5\000\000"+"\u1ed6\u1ed7\000\000"+"\u1ed8\u1ed9\000\000"
-      + "\u1eda\u1edb\000\000"+"\u1edc\u1edd\000\000"+"\u1ede\u1edf\000\000"
-      + "\u1ee0\u1ee1\000\000"+"\u1ee2\u1ee3\000\000"+"\u1ee4\u1ee5\000\000"
-      + "\u1ee6\u1ee7\000\000"+"\u1ee8\u1ee9\000\000"+"\u1eea\u1eeb\000\000"
-      + "\u1eec\u1eed\000\000"+"\u1eee\u1eef\000\000"+"\u1ef0\u1ef1\000\000"
-      + "\u1ef2\u1ef3\000\000"+"\u1ef4\u1ef5\000\000"+"\u1ef6\u1ef7\000\000"
-      + "\u1ef8\u1ef9\000\000"+"\u1f00\u1f08\000\000"+"\u1f01\u1f09\000\000"
-      + "\u1f02\u1f0a\000\000"+"\u1f03\u1f0b\000\000"+"\u1f04\u1f0c\000\000"
-      + "\u1f05\u1f0d\000\000"+"\u1f06\u1f0e\000\000"+"\u1f07\u1f0f\000\000"
-      + "\u1f10\u1f18\000\000"+"\u1f11\u1f19\000\000"+"\u1f12\u1f1a\000\000"
-      + "\u1f13\u1f1b\000\000"+"\u1f14\u1f1c\000\000"+"\u1f15\u1f1d\000\000"
-      + "\u1f20\u1f28\000\000"+"\u1f21\u1f29\000\000"+"\u1f22\u1f2a\000\000"
-      + "\u1f23\u1f2b\000\000"+"\u1f24\u1f2c\000\000"+"\u1f25\u1f2d\000\000"
-      + "\u1f26\u1f2e\000\000"+"\u1f27\u1f2f\000\000"+"\u1f30\u1f38\000\000"
-      + "\u1f31\u1f39\000\000"+"\u1f32\u1f3a\000\000"+"\u1f33\u1f3b\000\000"
-      + "\u1f34\u1f3c\000\000"+"\u1f35\u1f3d\000\000"+"\u1f36\u1f3e\000\000"
-      + "\u1f37\u1f3f\000\000"+"\u1f40\u1f48\000\000"+"\u1f41\u1f49\000\000"
-      + "\u1f42\u1f4a\000\000"+"\u1f43\u1f4b\000\000"+"\u1f44\u1f4c\000\000"
-      + "\u1f45\u1f4d\000\000"+"\u1f51\u1f59\000\000"+"\u1f53\u1f5b\000\000"
-      + "\u1f55\u1f5d\000\000"+"\u1f57\u1f5f\000\000"+"\u1f60\u1f68\000\000"
-      + "\u1f61\u1f69\000\000"+"\u1f62\u1f6a\000\000"+"\u1f63\u1f6b\000\000"
-      + "\u1f64\u1f6c\000\000"+"\u1f65\u1f6d\000\000"+"\u1f66\u1f6e\000\000"
-      + "\u1f67\u1f6f\000\000"+"\u1f70\u1fba\000\000"+"\u1f71\u1fbb\000\000"
-      + "\u1f72\u1fc8\000\000"+"\u1f73\u1fc9\000\000"+"\u1f74\u1fca\000\000"
-      + "\u1f75\u1fcb\000\000"+"\u1f76\u1fda\000\000"+"\u1f77\u1fdb\000\000"
-      + "\u1f78\u1ff8\000\000"+"\u1f79\u1ff9\000\000"+"\u1f7a\u1fea\000\000"
-      + "\u1f7b\u1feb\000\000"+"\u1f7c\u1ffa\000\000"+"\u1f7d\u1ffb\000\000"
-      + "\u1f80\u1f88\000\000"+"\u1f81\u1f89\000\000"+"\u1f82\u1f8a\000\000"
-      + "\u1f83\u1f8b\000\000"+"\u1f84\u1f8c\000\000"+"\u1f85\u1f8d\000\000"
-      + "\u1f86\u1f8e\000\000"+"\u1f87\u1f8f\000\000"+"\u1f90\u1f98\000\000"
-      + "\u1f91\u1f99\000\000"+"\u1f92\u1f9a\000\000"+"\u1f93\u1f9b\000\000"
-      + "\u1f94\u1f9c\000\000"+"\u1f95\u1f9d\000\000"+"\u1f96\u1f9e\000\000"
-      + "\u1f97\u1f9f\000\000"+"\u1fa0\u1fa8\000\000"+"\u1fa1\u1fa9\000\000"
-      + "\u1fa2\u1faa\000\000"+"\u1fa3\u1fab\000\000"+"\u1fa4\u1fac\000\000"
-      + "\u1fa5\u1fad\000\000"+"\u1fa6\u1fae\000\000"+"\u1fa7\u1faf\000\000"
-      + "\u1fb0\u1fb8\000\000"+"\u1fb1\u1fb9\000\000"+"\u1fb3\u1fbc\000\000"
-      + "\u1fc3\u1fcc\000\000"+"\u1fd0\u1fd8\000\000"+"\u1fd1\u1fd9\000\000"
-      + "\u1fe0\u1fe8\000\000"+"\u1fe1\u1fe9\000\000"+"\u1fe5\u1fec\000\000"
-      + "\u1ff3\u1ffc\000\000"+"\u2160\u2170\000\000"+"\u2161\u2171\000\000"
-      + "\u2162\u2172\000\000"+"\u2163\u2173\000\000"+"\u2164\u2174\000\000"
-      + "\u2165\u2175\000\000"+"\u2166\u2176\000\000"+"\u2167\u2177\000\000"
-      + "\u2168\u2178\000\000"+"\u2169\u2179\000\000"+"\u216a\u217a\000\000"
-      + "\u216b\u217b\000\000"+"\u216c\u217c\000\000"+"\u216d\u217d\000\000"
-      + "\u216e\u217e\000\000"+"\u216f\u217f\000\000"+"\u24b6\u24d0\000\000"
-      + "\u24b7\u24d1\000\000"+"\u24b8\u24d2\000\000"+"\u24b9\u24d3\000\000"
-      + "\u24ba\u24d4\000\000"+"\u24bb\u24d5\000\000"+"\u24bc\u24d6\000\000"
-      + "\u24bd\u24d7\000\000"+"\u24be\u24d8\000\000"+"\u24bf\u24d9\000\000"
-      + "\u24c0\u24da\000\000"+"\u24c1\u24db\000\000"+"\u24c2\u24dc\000\000"
-      + "\u24c3\u24dd\000\000"+"\u24c4\u24de\000\000"+"\u24c5\u24df\000\000"
-      + "\u24c6\u24e0\000\000"+"\u24c7\u24e1\000\000"+"\u24c8\u24e2\000\000"
-      + "\u24c9\u24e3\000\000"+"\u24ca\u24e4\000\000"+"\u24cb\u24e5\000\000"
-      + "\u24cc\u24e6\000\000"+"\u24cd\u24e7\000\000"+"\u24ce\u24e8\000\000"
-      + "\u24cf\u24e9\000\000"+"\uff21\uff41\000\000"+"\uff22\uff42\000\000"
-      + "\uff23\uff43\000\000"+"\uff24\uff44\000\000"+"\uff25\uff45\000\000"
-      + "\uff26\uff46\000\000"+"\uff27\uff47\000\000"+"\uff28\uff48\000\000"
-      + "\uff29\uff49\000\000"+"\uff2a\uff4a\000\000"+"\uff2b\uff4b\000\000"
-      + "\uff2c\uff4c\000\000"+"\uff2d\uff4d\000\000"+"\uff2e\uff4e\000\000"
-      + "\uff2f\uff4f\000\000"+"\uff30\uff50\000\000"+"\uff31\uff51\000\000"
-      + "\uff32\uff52\000\000"+"\uff33\uff53\000\000"+"\uff34\uff54\000\000"
-      + "\uff35\uff55\000\000"+"\uff36\uff56\000\000"+"\uff37\uff57\000\000"
-      + "\uff38\uff58\000\000"+"\uff39\uff59\000\000"+"\uff3a\uff5a\000\000"
-      + "\ud801\udc00\ud801\udc28\000\000"+"\ud801\udc01\ud801\udc29\000\000"+"\ud801\udc02\ud801\udc2a\000\000"
-      + "\ud801\udc03\ud801\udc2b\000\000"+"\ud801\udc04\ud801\udc2c\000\000"+"\ud801\udc05\ud801\udc2d\000\000"
-      + "\ud801\udc06\ud801\udc2e\000\000"+"\ud801\udc07\ud801\udc2f\000\000"+"\ud801\udc08\ud801\udc30\000\000"
-      + "\ud801\udc09\ud801\udc31\000\000"+"\ud801\udc0a\ud801\udc32\000\000"+"\ud801\udc0b\ud801\udc33\000\000"
-      + "\ud801\udc0c\ud801\udc34\000\000"+"\ud801\udc0d\ud801\udc35\000\000"+"\ud801\udc0e\ud801\udc36\000\000"
-      + "\ud801\udc0f\ud801\udc37\000\000"+"\ud801\udc10\ud801\udc38\000\000"+"\ud801\udc11\ud801\udc39\000\000"
-      + "\ud801\udc12\ud801\udc3a\000\000"+"\ud801\udc13\ud801\udc3b\000\000"+"\ud801\udc14\ud801\udc3c\000\000"
-      + "\ud801\udc15\ud801\udc3d\000\000"+"\ud801\udc16\ud801\udc3e\000\000"+"\ud801\udc17\ud801\udc3f\000\000"
-      + "\ud801\udc18\ud801\udc40\000\000"+"\ud801\udc19\ud801\udc41\000\000"+"\ud801\udc1a\ud801\udc42\000\000"
-      + "\ud801\udc1b\ud801\udc43\000\000"+"\ud801\udc1c\ud801\udc44\000\000"+"\ud801\udc1d\ud801\udc45\000\000"
-      + "\ud801\udc1e\ud801\udc46\000\000"+"\ud801\udc1f\ud801\udc47\000\000"+"\ud801\udc20\ud801\udc48\000\000"
-      + "\ud801\udc21\ud801\udc49\000\000"+"\ud801\udc22\ud801\udc4a\000\000"+"\ud801\udc23\ud801\udc4b\000\000"
-      + "\ud801\udc24\ud801\udc4c\000\000"+"\ud801\udc25\ud801\udc4d\000\000";
-}
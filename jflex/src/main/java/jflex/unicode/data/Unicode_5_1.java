@@ -1,6015 +0,0 @@
-package jflex.unicode.data;
-
-public class Unicode_5_1 {
-  public static final int maximumCodePoint = 0x10ffff;
-  public static final String[] propertyValues
-    = { "alnum", "alphabetic", "arabic", "armenian", "asciihexdigit",
-        "assigned", "balinese", "bengali", "bidicontrol", "blank",
-        "block=aegeannumbers", "block=alphabeticpresentationforms", "block=ancientgreekmusicalnotation", "block=ancientgreeknumbers", "block=ancientsymbols",
-        "block=arabic", "block=arabicpresentationformsa", "block=arabicpresentationformsb", "block=arabicsupplement", "block=armenian",
-        "block=arrows", "block=balinese", "block=basiclatin", "block=bengali", "block=blockelements",
-        "block=bopomofo", "block=bopomofoextended", "block=boxdrawing", "block=braillepatterns", "block=buginese",
-        "block=buhid", "block=byzantinemusicalsymbols", "block=carian", "block=cham", "block=cherokee",
-        "block=cjkcompatibility", "block=cjkcompatibilityforms", "block=cjkcompatibilityideographs", "block=cjkcompatibilityideographssupplement", "block=cjkradicalssupplement",
-        "block=cjkstrokes", "block=cjksymbolsandpunctuation", "block=cjkunifiedideographs", "block=cjkunifiedideographsextensiona", "block=cjkunifiedideographsextensionb",
-        "block=combiningdiacriticalmarks", "block=combiningdiacriticalmarksforsymbols", "block=combiningdiacriticalmarkssupplement", "block=combininghalfmarks", "block=controlpictures",
-        "block=coptic", "block=countingrodnumerals", "block=cuneiform", "block=cuneiformnumbersandpunctuation", "block=currencysymbols",
-        "block=cypriotsyllabary", "block=cyrillic", "block=cyrillicextendeda", "block=cyrillicextendedb", "block=cyrillicsupplement",
-        "block=deseret", "block=devanagari", "block=dingbats", "block=dominotiles", "block=enclosedalphanumerics",
-        "block=enclosedcjklettersandmonths", "block=ethiopic", "block=ethiopicextended", "block=ethiopicsupplement", "block=generalpunctuation",
-        "block=geometricshapes", "block=georgian", "block=georgiansupplement", "block=glagolitic", "block=gothic",
-        "block=greekandcoptic", "block=greekextended", "block=gujarati", "block=gurmukhi", "block=halfwidthandfullwidthforms",
-        "block=hangulcompatibilityjamo", "block=hanguljamo", "block=hangulsyllables", "block=hanunoo", "block=hebrew",
-        "block=hiragana", "block=ideographicdescriptioncharacters", "block=ipaextensions", "block=kanbun", "block=kangxiradicals",
-        "block=kannada", "block=katakana", "block=katakanaphoneticextensions", "block=kayahli", "block=kharoshthi",
-        "block=khmer", "block=khmersymbols", "block=lao", "block=latin1supplement", "block=latinextendeda",
-        "block=latinextendedadditional", "block=latinextendedb", "block=latinextendedc", "block=latinextendedd", "block=lepcha",
-        "block=letterlikesymbols", "block=limbu", "block=linearbideograms", "block=linearbsyllabary", "block=lycian",
-        "block=lydian", "block=mahjongtiles", "block=malayalam", "block=mathematicalalphanumericsymbols", "block=mathematicaloperators",
-        "block=miscellaneousmathematicalsymbolsa", "block=miscellaneousmathematicalsymbolsb", "block=miscellaneoussymbols", "block=miscellaneoussymbolsandarrows", "block=miscellaneoustechnical",
-        "block=modifiertoneletters", "block=mongolian", "block=musicalsymbols", "block=myanmar", "block=newtailue",
-        "block=nko", "block=noblock", "block=numberforms", "block=ogham", "block=olchiki",
-        "block=olditalic", "block=oldpersian", "block=opticalcharacterrecognition", "block=oriya", "block=osmanya",
-        "block=phagspa", "block=phaistosdisc", "block=phoenician", "block=phoneticextensions", "block=phoneticextensionssupplement",
-        "block=privateusearea", "block=rejang", "block=runic", "block=saurashtra", "block=shavian",
-        "block=sinhala", "block=smallformvariants", "block=spacingmodifierletters", "block=specials", "block=sundanese",
-        "block=superscriptsandsubscripts", "block=supplementalarrowsa", "block=supplementalarrowsb", "block=supplementalmathematicaloperators", "block=supplementalpunctuation",
-        "block=supplementaryprivateuseareaa", "block=supplementaryprivateuseareab", "block=sylotinagri", "block=syriac", "block=tagalog",
-        "block=tagbanwa", "block=tags", "block=taile", "block=taixuanjingsymbols", "block=tamil",
-        "block=telugu", "block=thaana", "block=thai", "block=tibetan", "block=tifinagh",
-        "block=ugaritic", "block=unifiedcanadianaboriginalsyllabics", "block=vai", "block=variationselectors", "block=variationselectorssupplement",
-        "block=verticalforms", "block=yijinghexagramsymbols", "block=yiradicals", "block=yisyllables", "bopomofo",
-        "braille", "buginese", "buhid", "canadianaboriginal", "carian",
-        "cc", "cf", "cham", "cherokee", "cn",
-        "co", "common", "coptic", "cuneiform", "cypriot",
-        "cyrillic", "dash", "defaultignorablecodepoint", "deprecated", "deseret",
-        "devanagari", "diacritic", "ethiopic", "extender", "georgian",
-        "glagolitic", "gothic", "graph", "graphemebase", "graphemeclusterbreak=control",
-        "graphemeclusterbreak=cr", "graphemeclusterbreak=extend", "graphemeclusterbreak=l", "graphemeclusterbreak=lf", "graphemeclusterbreak=lv",
-        "graphemeclusterbreak=lvt", "graphemeclusterbreak=other", "graphemeclusterbreak=prepend", "graphemeclusterbreak=spacingmark", "graphemeclusterbreak=t",
-        "graphemeclusterbreak=v", "graphemeextend", "graphemelink", "greek", "gujarati",
-        "gurmukhi", "han", "hangul", "hanunoo", "hebrew",
-        "hexdigit", "hiragana", "hyphen", "idcontinue", "ideographic",
-        "idsbinaryoperator", "idstart", "idstrinaryoperator", "inherited", "joincontrol",
-        "kannada", "katakana", "kayahli", "kharoshthi", "khmer",
-        "lao", "latin", "lepcha", "limbu", "linearb",
-        "linebreak=alphabetic", "linebreak=ambiguous", "linebreak=breakafter", "linebreak=breakbefore", "linebreak=breakboth",
-        "linebreak=breaksymbols", "linebreak=carriagereturn", "linebreak=closepunctuation", "linebreak=combiningmark", "linebreak=complexcontext",
-        "linebreak=contingentbreak", "linebreak=exclamation", "linebreak=glue", "linebreak=h2", "linebreak=h3",
-        "linebreak=hyphen", "linebreak=ideographic", "linebreak=infixnumeric", "linebreak=inseparable", "linebreak=jl",
-        "linebreak=jt", "linebreak=jv", "linebreak=linefeed", "linebreak=mandatorybreak", "linebreak=nextline",
-        "linebreak=nonstarter", "linebreak=numeric", "linebreak=openpunctuation", "linebreak=postfixnumeric", "linebreak=prefixnumeric",
-        "linebreak=quotation", "linebreak=space", "linebreak=unknown", "linebreak=wordjoiner", "linebreak=zwspace",
-        "ll", "lm", "lo", "logicalorderexception", "lowercase",
-        "lt", "lu", "lycian", "lydian", "malayalam",
-        "math", "mc", "me", "mn", "mongolian",
-        "myanmar", "nd", "newtailue", "nko", "nl",
-        "no", "noncharactercodepoint", "ogham", "olchiki", "olditalic",
-        "oldpersian", "oriya", "osmanya", "otheralphabetic", "otherdefaultignorablecodepoint",
-        "othergraphemeextend", "otheridcontinue", "otheridstart", "otherlowercase", "othermath",
-        "otheruppercase", "patternsyntax", "patternwhitespace", "pc", "pd",
-        "pe", "pf", "phagspa", "phoenician", "pi",
-        "po", "print", "ps", "quotationmark", "radical",
-        "rejang", "runic", "saurashtra", "sc", "sentencebreak=aterm",
-        "sentencebreak=close", "sentencebreak=cr", "sentencebreak=extend", "sentencebreak=format", "sentencebreak=lf",
-        "sentencebreak=lower", "sentencebreak=numeric", "sentencebreak=oletter", "sentencebreak=other", "sentencebreak=scontinue",
-        "sentencebreak=sep", "sentencebreak=sp", "sentencebreak=sterm", "sentencebreak=upper", "shavian",
-        "sinhala", "sk", "sm", "so", "softdotted",
-        "sterm", "sundanese", "sylotinagri", "syriac", "tagalog",
-        "tagbanwa", "taile", "tamil", "telugu", "terminalpunctuation",
-        "thaana", "thai", "tibetan", "tifinagh", "ugaritic",
-        "unifiedideograph", "unknown", "uppercase", "vai", "variationselector",
-        "whitespace", "wordbreak=aletter", "wordbreak=cr", "wordbreak=extend", "wordbreak=extendnumlet",
-        "wordbreak=format", "wordbreak=katakana", "wordbreak=lf", "wordbreak=midletter", "wordbreak=midnum",
-        "wordbreak=midnumlet", "wordbreak=newline", "wordbreak=numeric", "wordbreak=other", "xdigit",
-        "xidcontinue", "xidstart", "yi", "zl", "zp",
-        "zs" };
-  public static final String[] intervals = {
-    // Unicode 5.1 property value: {alnum}
-        "\u0030\u0039"+"\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"
-      + "\u00b5\u00b5"+"\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"
-      + "\u00f8\u02c1"+"\u02c6\u02d1"+"\u02e0\u02e4"+"\u02ec\u02ec"
-      + "\u02ee\u02ee"+"\u0345\u0345"+"\u0370\u0374"+"\u0376\u0377"
-      + "\u037a\u037d"+"\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"
-      + "\u038e\u03a1"+"\u03a3\u03f5"+"\u03f7\u0481"+"\u048a\u0523"
-      + "\u0531\u0556"+"\u0559\u0559"+"\u0561\u0587"+"\u05b0\u05bd"
-      + "\u05bf\u05bf"+"\u05c1\u05c2"+"\u05c4\u05c5"+"\u05c7\u05c7"
-      + "\u05d0\u05ea"+"\u05f0\u05f2"+"\u0610\u061a"+"\u0621\u0657"
-      + "\u0659\u065e"+"\u0660\u0669"+"\u066e\u06d3"+"\u06d5\u06dc"
-      + "\u06e1\u06e8"+"\u06ed\u06fc"+"\u06ff\u06ff"+"\u0710\u073f"
-      + "\u074d\u07b1"+"\u07c0\u07ea"+"\u07f4\u07f5"+"\u07fa\u07fa"
-      + "\u0901\u0939"+"\u093d\u094c"+"\u0950\u0950"+"\u0958\u0963"
-      + "\u0966\u096f"+"\u0971\u0972"+"\u097b\u097f"+"\u0981\u0983"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bd\u09c4"+"\u09c7\u09c8"
-      + "\u09cb\u09cc"+"\u09ce\u09ce"+"\u09d7\u09d7"+"\u09dc\u09dd"
-      + "\u09df\u09e3"+"\u09e6\u09f1"+"\u0a01\u0a03"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a3e\u0a42"+"\u0a47\u0a48"
-      + "\u0a4b\u0a4c"+"\u0a51\u0a51"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a66\u0a75"+"\u0a81\u0a83"+"\u0a85\u0a8d"+"\u0a8f\u0a91"
-      + "\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"
-      + "\u0abd\u0ac5"+"\u0ac7\u0ac9"+"\u0acb\u0acc"+"\u0ad0\u0ad0"
-      + "\u0ae0\u0ae3"+"\u0ae6\u0aef"+"\u0b01\u0b03"+"\u0b05\u0b0c"
-      + "\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"
-      + "\u0b35\u0b39"+"\u0b3d\u0b44"+"\u0b47\u0b48"+"\u0b4b\u0b4c"
-      + "\u0b56\u0b57"+"\u0b5c\u0b5d"+"\u0b5f\u0b63"+"\u0b66\u0b6f"
-      + "\u0b71\u0b71"+"\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"
-      + "\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"
-      + "\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bbe\u0bc2"
-      + "\u0bc6\u0bc8"+"\u0bca\u0bcc"+"\u0bd0\u0bd0"+"\u0bd7\u0bd7"
-      + "\u0be6\u0bef"+"\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"
-      + "\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c44"
-      + "\u0c46\u0c48"+"\u0c4a\u0c4c"+"\u0c55\u0c56"+"\u0c58\u0c59"
-      + "\u0c60\u0c63"+"\u0c66\u0c6f"+"\u0c82\u0c83"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbd\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccc"+"\u0cd5\u0cd6"
-      + "\u0cde\u0cde"+"\u0ce0\u0ce3"+"\u0ce6\u0cef"+"\u0d02\u0d03"
-      + "\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"
-      + "\u0d3d\u0d44"+"\u0d46\u0d48"+"\u0d4a\u0d4c"+"\u0d57\u0d57"
-      + "\u0d60\u0d63"+"\u0d66\u0d6f"+"\u0d7a\u0d7f"+"\u0d82\u0d83"
-      + "\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"
-      + "\u0dc0\u0dc6"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e01\u0e3a"+"\u0e40\u0e46"+"\u0e4d\u0e4d"
-      + "\u0e50\u0e59"+"\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"
-      + "\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"
-      + "\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"
-      + "\u0ead\u0eb9"+"\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"
-      + "\u0ecd\u0ecd"+"\u0ed0\u0ed9"+"\u0edc\u0edd"+"\u0f00\u0f00"
-      + "\u0f20\u0f29"+"\u0f40\u0f47"+"\u0f49\u0f6c"+"\u0f71\u0f81"
-      + "\u0f88\u0f8b"+"\u0f90\u0f97"+"\u0f99\u0fbc"+"\u1000\u1036"
-      + "\u1038\u1038"+"\u103b\u1049"+"\u1050\u1062"+"\u1065\u1068"
-      + "\u106e\u1086"+"\u108e\u108e"+"\u1090\u1099"+"\u10a0\u10c5"
-      + "\u10d0\u10fa"+"\u10fc\u10fc"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"
-      + "\u1290\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"
-      + "\u1318\u135a"+"\u135f\u135f"+"\u1380\u138f"+"\u13a0\u13f4"
-      + "\u1401\u166c"+"\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"
-      + "\u16ee\u16f0"+"\u1700\u170c"+"\u170e\u1713"+"\u1720\u1733"
-      + "\u1740\u1753"+"\u1760\u176c"+"\u176e\u1770"+"\u1772\u1773"
-      + "\u1780\u17b3"+"\u17b6\u17c8"+"\u17d7\u17d7"+"\u17dc\u17dc"
-      + "\u17e0\u17e9"+"\u1810\u1819"+"\u1820\u1877"+"\u1880\u18aa"
-      + "\u1900\u191c"+"\u1920\u192b"+"\u1930\u1938"+"\u1946\u196d"
-      + "\u1970\u1974"+"\u1980\u19a9"+"\u19b0\u19c9"+"\u19d0\u19d9"
-      + "\u1a00\u1a1b"+"\u1b00\u1b33"+"\u1b35\u1b43"+"\u1b45\u1b4b"
-      + "\u1b50\u1b59"+"\u1b80\u1ba9"+"\u1bae\u1bb9"+"\u1c00\u1c35"
-      + "\u1c40\u1c49"+"\u1c4d\u1c7d"+"\u1d00\u1dbf"+"\u1e00\u1f15"
-      + "\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"
-      + "\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"
-      + "\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"
-      + "\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"+"\u1fe0\u1fec"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u2090\u2094"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u212d"+"\u212f\u2139"+"\u213c\u213f"
-      + "\u2145\u2149"+"\u214e\u214e"+"\u2160\u2188"+"\u24b6\u24e9"
-      + "\u2c00\u2c2e"+"\u2c30\u2c5e"+"\u2c60\u2c6f"+"\u2c71\u2c7d"
-      + "\u2c80\u2ce4"+"\u2d00\u2d25"+"\u2d30\u2d65"+"\u2d6f\u2d6f"
-      + "\u2d80\u2d96"+"\u2da0\u2da6"+"\u2da8\u2dae"+"\u2db0\u2db6"
-      + "\u2db8\u2dbe"+"\u2dc0\u2dc6"+"\u2dc8\u2dce"+"\u2dd0\u2dd6"
-      + "\u2dd8\u2dde"+"\u2de0\u2dff"+"\u2e2f\u2e2f"+"\u3005\u3007"
-      + "\u3021\u3029"+"\u3031\u3035"+"\u3038\u303c"+"\u3041\u3096"
-      + "\u309d\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"+"\u3105\u312d"
-      + "\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"
-      + "\u4e00\u9fc3"+"\ua000\ua48c"+"\ua500\ua60c"+"\ua610\ua62b"
-      + "\ua640\ua65f"+"\ua662\ua66e"+"\ua67f\ua697"+"\ua717\ua71f"
-      + "\ua722\ua788"+"\ua78b\ua78c"+"\ua7fb\ua801"+"\ua803\ua805"
-      + "\ua807\ua80a"+"\ua80c\ua827"+"\ua840\ua873"+"\ua880\ua8c3"
-      + "\ua8d0\ua8d9"+"\ua900\ua92a"+"\ua930\ua952"+"\uaa00\uaa36"
-      + "\uaa40\uaa4d"+"\uaa50\uaa59"+"\uac00\ud7a3"+"\uf900\ufa2d"
-      + "\ufa30\ufa6a"+"\ufa70\ufad9"+"\ufb00\ufb06"+"\ufb13\ufb17"
-      + "\ufb1d\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe70\ufe74"
-      + "\ufe76\ufefc"+"\uff10\uff19"+"\uff21\uff3a"+"\uff41\uff5a"
-      + "\uff66\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"
-      + "\uffda\uffdc"+"\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"
-      + "\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"
-      + "\ud800\udd40\ud800\udd74"+"\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"
-      + "\ud800\udf30\ud800\udf4a"+"\ud800\udf80\ud800\udf9d"+"\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"
-      + "\ud800\udfd1\ud800\udfd5"+"\ud801\udc00\ud801\udc9d"+"\ud801\udca0\ud801\udca9"+"\ud802\udc00\ud802\udc05"
-      + "\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"
-      + "\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd15"+"\ud802\udd20\ud802\udd39"+"\ud802\ude00\ud802\ude03"
-      + "\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude13"+"\ud802\ude15\ud802\ude17"+"\ud802\ude19\ud802\ude33"
-      + "\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"+"\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"
-      + "\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"
-      + "\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"
-      + "\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"
-      + "\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"
-      + "\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"
-      + "\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"
-      + "\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfcb"
-      + "\ud835\udfce\ud835\udfff"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {alphabetic}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"
-      + "\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u02c1"
-      + "\u02c6\u02d1"+"\u02e0\u02e4"+"\u02ec\u02ec"+"\u02ee\u02ee"
-      + "\u0345\u0345"+"\u0370\u0374"+"\u0376\u0377"+"\u037a\u037d"
-      + "\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"
-      + "\u03a3\u03f5"+"\u03f7\u0481"+"\u048a\u0523"+"\u0531\u0556"
-      + "\u0559\u0559"+"\u0561\u0587"+"\u05b0\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c5"+"\u05c7\u05c7"+"\u05d0\u05ea"
-      + "\u05f0\u05f2"+"\u0610\u061a"+"\u0621\u0657"+"\u0659\u065e"
-      + "\u066e\u06d3"+"\u06d5\u06dc"+"\u06e1\u06e8"+"\u06ed\u06ef"
-      + "\u06fa\u06fc"+"\u06ff\u06ff"+"\u0710\u073f"+"\u074d\u07b1"
-      + "\u07ca\u07ea"+"\u07f4\u07f5"+"\u07fa\u07fa"+"\u0901\u0939"
-      + "\u093d\u094c"+"\u0950\u0950"+"\u0958\u0963"+"\u0971\u0972"
-      + "\u097b\u097f"+"\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"
-      + "\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"
-      + "\u09bd\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cc"+"\u09ce\u09ce"
-      + "\u09d7\u09d7"+"\u09dc\u09dd"+"\u09df\u09e3"+"\u09f0\u09f1"
-      + "\u0a01\u0a03"+"\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"
-      + "\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"
-      + "\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4c"+"\u0a51\u0a51"
-      + "\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a70\u0a75"+"\u0a81\u0a83"
-      + "\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"+"\u0aaa\u0ab0"
-      + "\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0ac5"+"\u0ac7\u0ac9"
-      + "\u0acb\u0acc"+"\u0ad0\u0ad0"+"\u0ae0\u0ae3"+"\u0b01\u0b03"
-      + "\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"
-      + "\u0b32\u0b33"+"\u0b35\u0b39"+"\u0b3d\u0b44"+"\u0b47\u0b48"
-      + "\u0b4b\u0b4c"+"\u0b56\u0b57"+"\u0b5c\u0b5d"+"\u0b5f\u0b63"
-      + "\u0b71\u0b71"+"\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"
-      + "\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"
-      + "\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bbe\u0bc2"
-      + "\u0bc6\u0bc8"+"\u0bca\u0bcc"+"\u0bd0\u0bd0"+"\u0bd7\u0bd7"
-      + "\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"
-      + "\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4c"+"\u0c55\u0c56"+"\u0c58\u0c59"+"\u0c60\u0c63"
-      + "\u0c82\u0c83"+"\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"
-      + "\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cbd\u0cc4"+"\u0cc6\u0cc8"
-      + "\u0cca\u0ccc"+"\u0cd5\u0cd6"+"\u0cde\u0cde"+"\u0ce0\u0ce3"
-      + "\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"
-      + "\u0d2a\u0d39"+"\u0d3d\u0d44"+"\u0d46\u0d48"+"\u0d4a\u0d4c"
-      + "\u0d57\u0d57"+"\u0d60\u0d63"+"\u0d7a\u0d7f"+"\u0d82\u0d83"
-      + "\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"
-      + "\u0dc0\u0dc6"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e01\u0e3a"+"\u0e40\u0e46"+"\u0e4d\u0e4d"
-      + "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ecd\u0ecd"
-      + "\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f40\u0f47"+"\u0f49\u0f6c"
-      + "\u0f71\u0f81"+"\u0f88\u0f8b"+"\u0f90\u0f97"+"\u0f99\u0fbc"
-      + "\u1000\u1036"+"\u1038\u1038"+"\u103b\u103f"+"\u1050\u1062"
-      + "\u1065\u1068"+"\u106e\u1086"+"\u108e\u108e"+"\u10a0\u10c5"
-      + "\u10d0\u10fa"+"\u10fc\u10fc"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"
-      + "\u1290\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"
-      + "\u1318\u135a"+"\u135f\u135f"+"\u1380\u138f"+"\u13a0\u13f4"
-      + "\u1401\u166c"+"\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"
-      + "\u16ee\u16f0"+"\u1700\u170c"+"\u170e\u1713"+"\u1720\u1733"
-      + "\u1740\u1753"+"\u1760\u176c"+"\u176e\u1770"+"\u1772\u1773"
-      + "\u1780\u17b3"+"\u17b6\u17c8"+"\u17d7\u17d7"+"\u17dc\u17dc"
-      + "\u1820\u1877"+"\u1880\u18aa"+"\u1900\u191c"+"\u1920\u192b"
-      + "\u1930\u1938"+"\u1950\u196d"+"\u1970\u1974"+"\u1980\u19a9"
-      + "\u19b0\u19c9"+"\u1a00\u1a1b"+"\u1b00\u1b33"+"\u1b35\u1b43"
-      + "\u1b45\u1b4b"+"\u1b80\u1ba9"+"\u1bae\u1baf"+"\u1c00\u1c35"
-      + "\u1c4d\u1c4f"+"\u1c5a\u1c7d"+"\u1d00\u1dbf"+"\u1e00\u1f15"
-      + "\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"
-      + "\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"
-      + "\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"
-      + "\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"+"\u1fe0\u1fec"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u2090\u2094"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u212d"+"\u212f\u2139"+"\u213c\u213f"
-      + "\u2145\u2149"+"\u214e\u214e"+"\u2160\u2188"+"\u24b6\u24e9"
-      + "\u2c00\u2c2e"+"\u2c30\u2c5e"+"\u2c60\u2c6f"+"\u2c71\u2c7d"
-      + "\u2c80\u2ce4"+"\u2d00\u2d25"+"\u2d30\u2d65"+"\u2d6f\u2d6f"
-      + "\u2d80\u2d96"+"\u2da0\u2da6"+"\u2da8\u2dae"+"\u2db0\u2db6"
-      + "\u2db8\u2dbe"+"\u2dc0\u2dc6"+"\u2dc8\u2dce"+"\u2dd0\u2dd6"
-      + "\u2dd8\u2dde"+"\u2de0\u2dff"+"\u2e2f\u2e2f"+"\u3005\u3007"
-      + "\u3021\u3029"+"\u3031\u3035"+"\u3038\u303c"+"\u3041\u3096"
-      + "\u309d\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"+"\u3105\u312d"
-      + "\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"
-      + "\u4e00\u9fc3"+"\ua000\ua48c"+"\ua500\ua60c"+"\ua610\ua61f"
-      + "\ua62a\ua62b"+"\ua640\ua65f"+"\ua662\ua66e"+"\ua67f\ua697"
-      + "\ua717\ua71f"+"\ua722\ua788"+"\ua78b\ua78c"+"\ua7fb\ua801"
-      + "\ua803\ua805"+"\ua807\ua80a"+"\ua80c\ua827"+"\ua840\ua873"
-      + "\ua880\ua8c3"+"\ua90a\ua92a"+"\ua930\ua952"+"\uaa00\uaa36"
-      + "\uaa40\uaa4d"+"\uac00\ud7a3"+"\uf900\ufa2d"+"\ufa30\ufa6a"
-      + "\ufa70\ufad9"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb28"
-      + "\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"+"\ufd50\ufd8f"
-      + "\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe70\ufe74"+"\ufe76\ufefc"
-      + "\uff21\uff3a"+"\uff41\uff5a"+"\uff66\uffbe"+"\uffc2\uffc7"
-      + "\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"+"\ud800\udc00\ud800\udc0b"
-      + "\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"+"\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"
-      + "\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"+"\ud800\udd40\ud800\udd74"+"\ud800\ude80\ud800\ude9c"
-      + "\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"+"\ud800\udf80\ud800\udf9d"
-      + "\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"+"\ud800\udfd1\ud800\udfd5"+"\ud801\udc00\ud801\udc9d"
-      + "\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"
-      + "\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd15"+"\ud802\udd20\ud802\udd39"
-      + "\ud802\ude00\ud802\ude03"+"\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude13"+"\ud802\ude15\ud802\ude17"
-      + "\ud802\ude19\ud802\ude33"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"+"\ud835\udc00\ud835\udc54"
-      + "\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"
-      + "\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"
-      + "\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"
-      + "\ud835\udfc4\ud835\udfcb"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {arabic}
-        "\u0606\u060b"+"\u060d\u061a"+"\u061e\u061e"+"\u0621\u063f"
-      + "\u0641\u064a"+"\u0656\u065e"+"\u066a\u066f"+"\u0671\u06dc"
-      + "\u06de\u06ff"+"\u0750\u077f"+"\ufb50\ufbb1"+"\ufbd3\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfc"+"\ufe70\ufe74"
-      + "\ufe76\ufefc",
-    // Unicode 5.1 property value: {armenian}
-        "\u0531\u0556"+"\u0559\u055f"+"\u0561\u0587"+"\u058a\u058a"
-      + "\ufb13\ufb17",
-    // Unicode 5.1 property value: {asciihexdigit}
-        "\u0030\u0039"+"\u0041\u0046"+"\u0061\u0066",
-    // Unicode 5.1 property value: {assigned}
-        "\000\u0377"+"\u037a\u037e"+"\u0384\u038a"+"\u038c\u038c"
-      + "\u038e\u03a1"+"\u03a3\u0523"+"\u0531\u0556"+"\u0559\u055f"
-      + "\u0561\u0587"+"\u0589\u058a"+"\u0591\u05c7"+"\u05d0\u05ea"
-      + "\u05f0\u05f4"+"\u0600\u0603"+"\u0606\u061b"+"\u061e\u061f"
-      + "\u0621\u065e"+"\u0660\u070d"+"\u070f\u074a"+"\u074d\u07b1"
-      + "\u07c0\u07fa"+"\u0901\u0939"+"\u093c\u094d"+"\u0950\u0954"
-      + "\u0958\u0972"+"\u097b\u097f"+"\u0981\u0983"+"\u0985\u098c"
-      + "\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"
-      + "\u09b6\u09b9"+"\u09bc\u09c4"+"\u09c7\u09c8"+"\u09cb\u09ce"
-      + "\u09d7\u09d7"+"\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09fa"
-      + "\u0a01\u0a03"+"\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"
-      + "\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a51\u0a51"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a66\u0a75"
-      + "\u0a81\u0a83"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"
-      + "\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae3"
-      + "\u0ae6\u0aef"+"\u0af1\u0af1"+"\u0b01\u0b03"+"\u0b05\u0b0c"
-      + "\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"
-      + "\u0b35\u0b39"+"\u0b3c\u0b44"+"\u0b47\u0b48"+"\u0b4b\u0b4d"
-      + "\u0b56\u0b57"+"\u0b5c\u0b5d"+"\u0b5f\u0b63"+"\u0b66\u0b71"
-      + "\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcd"+"\u0bd0\u0bd0"+"\u0bd7\u0bd7"+"\u0be6\u0bfa"
-      + "\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"
-      + "\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c58\u0c59"+"\u0c60\u0c63"
-      + "\u0c66\u0c6f"+"\u0c78\u0c7f"+"\u0c82\u0c83"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbc\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"
-      + "\u0cde\u0cde"+"\u0ce0\u0ce3"+"\u0ce6\u0cef"+"\u0cf1\u0cf2"
-      + "\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"
-      + "\u0d2a\u0d39"+"\u0d3d\u0d44"+"\u0d46\u0d48"+"\u0d4a\u0d4d"
-      + "\u0d57\u0d57"+"\u0d60\u0d63"+"\u0d66\u0d75"+"\u0d79\u0d7f"
-      + "\u0d82\u0d83"+"\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"
-      + "\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0dca\u0dca"+"\u0dcf\u0dd4"
-      + "\u0dd6\u0dd6"+"\u0dd8\u0ddf"+"\u0df2\u0df4"+"\u0e01\u0e3a"
-      + "\u0e3f\u0e5b"+"\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"
-      + "\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"
-      + "\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"
-      + "\u0ead\u0eb9"+"\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"
-      + "\u0ec8\u0ecd"+"\u0ed0\u0ed9"+"\u0edc\u0edd"+"\u0f00\u0f47"
-      + "\u0f49\u0f6c"+"\u0f71\u0f8b"+"\u0f90\u0f97"+"\u0f99\u0fbc"
-      + "\u0fbe\u0fcc"+"\u0fce\u0fd4"+"\u1000\u1099"+"\u109e\u10c5"
-      + "\u10d0\u10fc"+"\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"
-      + "\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"
-      + "\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"+"\u1290\u12b0"
-      + "\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"
-      + "\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"+"\u1318\u135a"
-      + "\u135f\u137c"+"\u1380\u1399"+"\u13a0\u13f4"+"\u1401\u1676"
-      + "\u1680\u169c"+"\u16a0\u16f0"+"\u1700\u170c"+"\u170e\u1714"
-      + "\u1720\u1736"+"\u1740\u1753"+"\u1760\u176c"+"\u176e\u1770"
-      + "\u1772\u1773"+"\u1780\u17dd"+"\u17e0\u17e9"+"\u17f0\u17f9"
-      + "\u1800\u180e"+"\u1810\u1819"+"\u1820\u1877"+"\u1880\u18aa"
-      + "\u1900\u191c"+"\u1920\u192b"+"\u1930\u193b"+"\u1940\u1940"
-      + "\u1944\u196d"+"\u1970\u1974"+"\u1980\u19a9"+"\u19b0\u19c9"
-      + "\u19d0\u19d9"+"\u19de\u1a1b"+"\u1a1e\u1a1f"+"\u1b00\u1b4b"
-      + "\u1b50\u1b7c"+"\u1b80\u1baa"+"\u1bae\u1bb9"+"\u1c00\u1c37"
-      + "\u1c3b\u1c49"+"\u1c4d\u1c7f"+"\u1d00\u1de6"+"\u1dfe\u1f15"
-      + "\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"
-      + "\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"
-      + "\u1f80\u1fb4"+"\u1fb6\u1fc4"+"\u1fc6\u1fd3"+"\u1fd6\u1fdb"
-      + "\u1fdd\u1fef"+"\u1ff2\u1ff4"+"\u1ff6\u1ffe"+"\u2000\u2064"
-      + "\u206a\u2071"+"\u2074\u208e"+"\u2090\u2094"+"\u20a0\u20b5"
-      + "\u20d0\u20f0"+"\u2100\u214f"+"\u2153\u2188"+"\u2190\u23e7"
-      + "\u2400\u2426"+"\u2440\u244a"+"\u2460\u269d"+"\u26a0\u26bc"
-      + "\u26c0\u26c3"+"\u2701\u2704"+"\u2706\u2709"+"\u270c\u2727"
-      + "\u2729\u274b"+"\u274d\u274d"+"\u274f\u2752"+"\u2756\u2756"
-      + "\u2758\u275e"+"\u2761\u2794"+"\u2798\u27af"+"\u27b1\u27be"
-      + "\u27c0\u27ca"+"\u27cc\u27cc"+"\u27d0\u2b4c"+"\u2b50\u2b54"
-      + "\u2c00\u2c2e"+"\u2c30\u2c5e"+"\u2c60\u2c6f"+"\u2c71\u2c7d"
-      + "\u2c80\u2cea"+"\u2cf9\u2d25"+"\u2d30\u2d65"+"\u2d6f\u2d6f"
-      + "\u2d80\u2d96"+"\u2da0\u2da6"+"\u2da8\u2dae"+"\u2db0\u2db6"
-      + "\u2db8\u2dbe"+"\u2dc0\u2dc6"+"\u2dc8\u2dce"+"\u2dd0\u2dd6"
-      + "\u2dd8\u2dde"+"\u2de0\u2e30"+"\u2e80\u2e99"+"\u2e9b\u2ef3"
-      + "\u2f00\u2fd5"+"\u2ff0\u2ffb"+"\u3000\u303f"+"\u3041\u3096"
-      + "\u3099\u30ff"+"\u3105\u312d"+"\u3131\u318e"+"\u3190\u31b7"
-      + "\u31c0\u31e3"+"\u31f0\u321e"+"\u3220\u3243"+"\u3250\u32fe"
-      + "\u3300\u4db5"+"\u4dc0\u9fc3"+"\ua000\ua48c"+"\ua490\ua4c6"
-      + "\ua500\ua62b"+"\ua640\ua65f"+"\ua662\ua673"+"\ua67c\ua697"
-      + "\ua700\ua78c"+"\ua7fb\ua82b"+"\ua840\ua877"+"\ua880\ua8c4"
-      + "\ua8ce\ua8d9"+"\ua900\ua953"+"\ua95f\ua95f"+"\uaa00\uaa36"
-      + "\uaa40\uaa4d"+"\uaa50\uaa59"+"\uaa5c\uaa5f"+"\uac00\ud7a3"
-      + "\ue000\ufa2d"+"\ufa30\ufa6a"+"\ufa70\ufad9"+"\ufb00\ufb06"
-      + "\ufb13\ufb17"+"\ufb1d\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3f"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfd"+"\ufe00\ufe19"
-      + "\ufe20\ufe26"+"\ufe30\ufe52"+"\ufe54\ufe66"+"\ufe68\ufe6b"
-      + "\ufe70\ufe74"+"\ufe76\ufefc"+"\ufeff\ufeff"+"\uff01\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\uffe0\uffe6"+"\uffe8\uffee"+"\ufff9\ufffd"+"\ud800\udc00\ud800\udc0b"
-      + "\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"+"\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"
-      + "\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"+"\ud800\udd00\ud800\udd02"+"\ud800\udd07\ud800\udd33"
-      + "\ud800\udd37\ud800\udd8a"+"\ud800\udd90\ud800\udd9b"+"\ud800\uddd0\ud800\uddfd"+"\ud800\ude80\ud800\ude9c"
-      + "\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf20\ud800\udf23"+"\ud800\udf30\ud800\udf4a"
-      + "\ud800\udf80\ud800\udf9d"+"\ud800\udf9f\ud800\udfc3"+"\ud800\udfc8\ud800\udfd5"+"\ud801\udc00\ud801\udc9d"
-      + "\ud801\udca0\ud801\udca9"+"\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"
-      + "\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd19"
-      + "\ud802\udd1f\ud802\udd39"+"\ud802\udd3f\ud802\udd3f"+"\ud802\ude00\ud802\ude03"+"\ud802\ude05\ud802\ude06"
-      + "\ud802\ude0c\ud802\ude13"+"\ud802\ude15\ud802\ude17"+"\ud802\ude19\ud802\ude33"+"\ud802\ude38\ud802\ude3a"
-      + "\ud802\ude3f\ud802\ude47"+"\ud802\ude50\ud802\ude58"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"
-      + "\ud809\udc70\ud809\udc73"+"\ud834\udc00\ud834\udcf5"+"\ud834\udd00\ud834\udd26"+"\ud834\udd29\ud834\udddd"
-      + "\ud834\ude00\ud834\ude45"+"\ud834\udf00\ud834\udf56"+"\ud834\udf60\ud834\udf71"+"\ud835\udc00\ud835\udc54"
-      + "\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udfcb"+"\ud835\udfce\ud835\udfff"
-      + "\ud83c\udc00\ud83c\udc2b"+"\ud83c\udc30\ud83c\udc93"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d"
-      + "\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f"+"\udb40\udd00\udb40\uddef"+"\udb80\udc00\udbbf\udffd"
-      + "\udbc0\udc00\udbff\udffd",
-    // Unicode 5.1 property value: {balinese}
-        "\u1b00\u1b4b"+"\u1b50\u1b7c",
-    // Unicode 5.1 property value: {bengali}
-        "\u0981\u0983"+"\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"
-      + "\u09aa\u09b0"+"\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bc\u09c4"
-      + "\u09c7\u09c8"+"\u09cb\u09ce"+"\u09d7\u09d7"+"\u09dc\u09dd"
-      + "\u09df\u09e3"+"\u09e6\u09fa",
-    // Unicode 5.1 property value: {bidicontrol}
-        "\u200e\u200f"+"\u202a\u202e",
-    // Unicode 5.1 property value: {blank}
-        "\t\t"+"\u0020\u0020"+"\u00a0\u00a0"+"\u1680\u1680"
-      + "\u180e\u180e"+"\u2000\u200a"+"\u202f\u202f"+"\u205f\u205f"
-      + "\u3000\u3000",
-    // Unicode 5.1 property value: {block=aegeannumbers}
-        "\ud800\udd00\ud800\udd3f",
-    // Unicode 5.1 property value: {block=alphabeticpresentationforms}
-        "\ufb00\ufb4f",
-    // Unicode 5.1 property value: {block=ancientgreekmusicalnotation}
-        "\ud834\ude00\ud834\ude4f",
-    // Unicode 5.1 property value: {block=ancientgreeknumbers}
-        "\ud800\udd40\ud800\udd8f",
-    // Unicode 5.1 property value: {block=ancientsymbols}
-        "\ud800\udd90\ud800\uddcf",
-    // Unicode 5.1 property value: {block=arabic}
-        "\u0600\u06ff",
-    // Unicode 5.1 property value: {block=arabicpresentationformsa}
-        "\ufb50\ufdff",
-    // Unicode 5.1 property value: {block=arabicpresentationformsb}
-        "\ufe70\ufeff",
-    // Unicode 5.1 property value: {block=arabicsupplement}
-        "\u0750\u077f",
-    // Unicode 5.1 property value: {block=armenian}
-        "\u0530\u058f",
-    // Unicode 5.1 property value: {block=arrows}
-        "\u2190\u21ff",
-    // Unicode 5.1 property value: {block=balinese}
-        "\u1b00\u1b7f",
-    // Unicode 5.1 property value: {block=basiclatin}
-        "\000\u007f",
-    // Unicode 5.1 property value: {block=bengali}
-        "\u0980\u09ff",
-    // Unicode 5.1 property value: {block=blockelements}
-        "\u2580\u259f",
-    // Unicode 5.1 property value: {block=bopomofo}
-        "\u3100\u312f",
-    // Unicode 5.1 property value: {block=bopomofoextended}
-        "\u31a0\u31bf",
-    // Unicode 5.1 property value: {block=boxdrawing}
-        "\u2500\u257f",
-    // Unicode 5.1 property value: {block=braillepatterns}
-        "\u2800\u28ff",
-    // Unicode 5.1 property value: {block=buginese}
-        "\u1a00\u1a1f",
-    // Unicode 5.1 property value: {block=buhid}
-        "\u1740\u175f",
-    // Unicode 5.1 property value: {block=byzantinemusicalsymbols}
-        "\ud834\udc00\ud834\udcff",
-    // Unicode 5.1 property value: {block=carian}
-        "\ud800\udea0\ud800\udedf",
-    // Unicode 5.1 property value: {block=cham}
-        "\uaa00\uaa5f",
-    // Unicode 5.1 property value: {block=cherokee}
-        "\u13a0\u13ff",
-    // Unicode 5.1 property value: {block=cjkcompatibility}
-        "\u3300\u33ff",
-    // Unicode 5.1 property value: {block=cjkcompatibilityforms}
-        "\ufe30\ufe4f",
-    // Unicode 5.1 property value: {block=cjkcompatibilityideographs}
-        "\uf900\ufaff",
-    // Unicode 5.1 property value: {block=cjkcompatibilityideographssupplement}
-        "\ud87e\udc00\ud87e\ude1f",
-    // Unicode 5.1 property value: {block=cjkradicalssupplement}
-        "\u2e80\u2eff",
-    // Unicode 5.1 property value: {block=cjkstrokes}
-        "\u31c0\u31ef",
-    // Unicode 5.1 property value: {block=cjksymbolsandpunctuation}
-        "\u3000\u303f",
-    // Unicode 5.1 property value: {block=cjkunifiedideographs}
-        "\u4e00\u9fff",
-    // Unicode 5.1 property value: {block=cjkunifiedideographsextensiona}
-        "\u3400\u4dbf",
-    // Unicode 5.1 property value: {block=cjkunifiedideographsextensionb}
-        "\ud840\udc00\ud869\udedf",
-    // Unicode 5.1 property value: {block=combiningdiacriticalmarks}
-        "\u0300\u036f",
-    // Unicode 5.1 property value: {block=combiningdiacriticalmarksforsymbols}
-        "\u20d0\u20ff",
-    // Unicode 5.1 property value: {block=combiningdiacriticalmarkssupplement}
-        "\u1dc0\u1dff",
-    // Unicode 5.1 property value: {block=combininghalfmarks}
-        "\ufe20\ufe2f",
-    // Unicode 5.1 property value: {block=controlpictures}
-        "\u2400\u243f",
-    // Unicode 5.1 property value: {block=coptic}
-        "\u2c80\u2cff",
-    // Unicode 5.1 property value: {block=countingrodnumerals}
-        "\ud834\udf60\ud834\udf7f",
-    // Unicode 5.1 property value: {block=cuneiform}
-        "\ud808\udc00\ud808\udfff",
-    // Unicode 5.1 property value: {block=cuneiformnumbersandpunctuation}
-        "\ud809\udc00\ud809\udc7f",
-    // Unicode 5.1 property value: {block=currencysymbols}
-        "\u20a0\u20cf",
-    // Unicode 5.1 property value: {block=cypriotsyllabary}
-        "\ud802\udc00\ud802\udc3f",
-    // Unicode 5.1 property value: {block=cyrillic}
-        "\u0400\u04ff",
-    // Unicode 5.1 property value: {block=cyrillicextendeda}
-        "\u2de0\u2dff",
-    // Unicode 5.1 property value: {block=cyrillicextendedb}
-        "\ua640\ua69f",
-    // Unicode 5.1 property value: {block=cyrillicsupplement}
-        "\u0500\u052f",
-    // Unicode 5.1 property value: {block=deseret}
-        "\ud801\udc00\ud801\udc4f",
-    // Unicode 5.1 property value: {block=devanagari}
-        "\u0900\u097f",
-    // Unicode 5.1 property value: {block=dingbats}
-        "\u2700\u27bf",
-    // Unicode 5.1 property value: {block=dominotiles}
-        "\ud83c\udc30\ud83c\udc9f",
-    // Unicode 5.1 property value: {block=enclosedalphanumerics}
-        "\u2460\u24ff",
-    // Unicode 5.1 property value: {block=enclosedcjklettersandmonths}
-        "\u3200\u32ff",
-    // Unicode 5.1 property value: {block=ethiopic}
-        "\u1200\u137f",
-    // Unicode 5.1 property value: {block=ethiopicextended}
-        "\u2d80\u2ddf",
-    // Unicode 5.1 property value: {block=ethiopicsupplement}
-        "\u1380\u139f",
-    // Unicode 5.1 property value: {block=generalpunctuation}
-        "\u2000\u206f",
-    // Unicode 5.1 property value: {block=geometricshapes}
-        "\u25a0\u25ff",
-    // Unicode 5.1 property value: {block=georgian}
-        "\u10a0\u10ff",
-    // Unicode 5.1 property value: {block=georgiansupplement}
-        "\u2d00\u2d2f",
-    // Unicode 5.1 property value: {block=glagolitic}
-        "\u2c00\u2c5f",
-    // Unicode 5.1 property value: {block=gothic}
-        "\ud800\udf30\ud800\udf4f",
-    // Unicode 5.1 property value: {block=greekandcoptic}
-        "\u0370\u03ff",
-    // Unicode 5.1 property value: {block=greekextended}
-        "\u1f00\u1fff",
-    // Unicode 5.1 property value: {block=gujarati}
-        "\u0a80\u0aff",
-    // Unicode 5.1 property value: {block=gurmukhi}
-        "\u0a00\u0a7f",
-    // Unicode 5.1 property value: {block=halfwidthandfullwidthforms}
-        "\uff00\uffef",
-    // Unicode 5.1 property value: {block=hangulcompatibilityjamo}
-        "\u3130\u318f",
-    // Unicode 5.1 property value: {block=hanguljamo}
-        "\u1100\u11ff",
-    // Unicode 5.1 property value: {block=hangulsyllables}
-        "\uac00\ud7af",
-    // Unicode 5.1 property value: {block=hanunoo}
-        "\u1720\u173f",
-    // Unicode 5.1 property value: {block=hebrew}
-        "\u0590\u05ff",
-    // Unicode 5.1 property value: {block=hiragana}
-        "\u3040\u309f",
-    // Unicode 5.1 property value: {block=ideographicdescriptioncharacters}
-        "\u2ff0\u2fff",
-    // Unicode 5.1 property value: {block=ipaextensions}
-        "\u0250\u02af",
-    // Unicode 5.1 property value: {block=kanbun}
-        "\u3190\u319f",
-    // Unicode 5.1 property value: {block=kangxiradicals}
-        "\u2f00\u2fdf",
-    // Unicode 5.1 property value: {block=kannada}
-        "\u0c80\u0cff",
-    // Unicode 5.1 property value: {block=katakana}
-        "\u30a0\u30ff",
-    // Unicode 5.1 property value: {block=katakanaphoneticextensions}
-        "\u31f0\u31ff",
-    // Unicode 5.1 property value: {block=kayahli}
-        "\ua900\ua92f",
-    // Unicode 5.1 property value: {block=kharoshthi}
-        "\ud802\ude00\ud802\ude5f",
-    // Unicode 5.1 property value: {block=khmer}
-        "\u1780\u17ff",
-    // Unicode 5.1 property value: {block=khmersymbols}
-        "\u19e0\u19ff",
-    // Unicode 5.1 property value: {block=lao}
-        "\u0e80\u0eff",
-    // Unicode 5.1 property value: {block=latin1supplement}
-        "\u0080\u00ff",
-    // Unicode 5.1 property value: {block=latinextendeda}
-        "\u0100\u017f",
-    // Unicode 5.1 property value: {block=latinextendedadditional}
-        "\u1e00\u1eff",
-    // Unicode 5.1 property value: {block=latinextendedb}
-        "\u0180\u024f",
-    // Unicode 5.1 property value: {block=latinextendedc}
-        "\u2c60\u2c7f",
-    // Unicode 5.1 property value: {block=latinextendedd}
-        "\ua720\ua7ff",
-    // Unicode 5.1 property value: {block=lepcha}
-        "\u1c00\u1c4f",
-    // Unicode 5.1 property value: {block=letterlikesymbols}
-        "\u2100\u214f",
-    // Unicode 5.1 property value: {block=limbu}
-        "\u1900\u194f",
-    // Unicode 5.1 property value: {block=linearbideograms}
-        "\ud800\udc80\ud800\udcff",
-    // Unicode 5.1 property value: {block=linearbsyllabary}
-        "\ud800\udc00\ud800\udc7f",
-    // Unicode 5.1 property value: {block=lycian}
-        "\ud800\ude80\ud800\ude9f",
-    // Unicode 5.1 property value: {block=lydian}
-        "\ud802\udd20\ud802\udd3f",
-    // Unicode 5.1 property value: {block=mahjongtiles}
-        "\ud83c\udc00\ud83c\udc2f",
-    // Unicode 5.1 property value: {block=malayalam}
-        "\u0d00\u0d7f",
-    // Unicode 5.1 property value: {block=mathematicalalphanumericsymbols}
-        "\ud835\udc00\ud835\udfff",
-    // Unicode 5.1 property value: {block=mathematicaloperators}
-        "\u2200\u22ff",
-    // Unicode 5.1 property value: {block=miscellaneousmathematicalsymbolsa}
-        "\u27c0\u27ef",
-    // Unicode 5.1 property value: {block=miscellaneousmathematicalsymbolsb}
-        "\u2980\u29ff",
-    // Unicode 5.1 property value: {block=miscellaneoussymbols}
-        "\u2600\u26ff",
-    // Unicode 5.1 property value: {block=miscellaneoussymbolsandarrows}
-        "\u2b00\u2bff",
-    // Unicode 5.1 property value: {block=miscellaneoustechnical}
-        "\u2300\u23ff",
-    // Unicode 5.1 property value: {block=modifiertoneletters}
-        "\ua700\ua71f",
-    // Unicode 5.1 property value: {block=mongolian}
-        "\u1800\u18af",
-    // Unicode 5.1 property value: {block=musicalsymbols}
-        "\ud834\udd00\ud834\uddff",
-    // Unicode 5.1 property value: {block=myanmar}
-        "\u1000\u109f",
-    // Unicode 5.1 property value: {block=newtailue}
-        "\u1980\u19df",
-    // Unicode 5.1 property value: {block=nko}
-        "\u07c0\u07ff",
-    // Unicode 5.1 property value: {block=noblock}
-        "\u0800\u08ff"+"\u18b0\u18ff"+"\u1a20\u1aff"+"\u1bc0\u1bff"
-      + "\u1c80\u1cff"+"\u2fe0\u2fef"+"\ua4d0\ua4ff"+"\ua6a0\ua6ff"
-      + "\ua830\ua83f"+"\ua8e0\ua8ff"+"\ua960\ua9ff"+"\uaa60\uabff"
-      + "\ud7b0\ud7ff"+"\ud800\ude00\ud800\ude7f"+"\ud800\udee0\ud800\udeff"+"\ud800\udf50\ud800\udf7f"
-      + "\ud800\udfe0\ud800\udfff"+"\ud801\udcb0\ud801\udfff"+"\ud802\udc40\ud802\udcff"+"\ud802\udd40\ud802\uddff"
-      + "\ud802\ude60\ud807\udfff"+"\ud809\udc80\ud833\udfff"+"\ud834\ude50\ud834\udeff"+"\ud834\udf80\ud834\udfff"
-      + "\ud836\udc00\ud83b\udfff"+"\ud83c\udca0\ud83f\udfff"+"\ud869\udee0\ud87d\udfff"+"\ud87e\ude20\udb3f\udfff"
-      + "\udb40\udc80\udb40\udcff"+"\udb40\uddf0\udb7f\udfff",
-    // Unicode 5.1 property value: {block=numberforms}
-        "\u2150\u218f",
-    // Unicode 5.1 property value: {block=ogham}
-        "\u1680\u169f",
-    // Unicode 5.1 property value: {block=olchiki}
-        "\u1c50\u1c7f",
-    // Unicode 5.1 property value: {block=olditalic}
-        "\ud800\udf00\ud800\udf2f",
-    // Unicode 5.1 property value: {block=oldpersian}
-        "\ud800\udfa0\ud800\udfdf",
-    // Unicode 5.1 property value: {block=opticalcharacterrecognition}
-        "\u2440\u245f",
-    // Unicode 5.1 property value: {block=oriya}
-        "\u0b00\u0b7f",
-    // Unicode 5.1 property value: {block=osmanya}
-        "\ud801\udc80\ud801\udcaf",
-    // Unicode 5.1 property value: {block=phagspa}
-        "\ua840\ua87f",
-    // Unicode 5.1 property value: {block=phaistosdisc}
-        "\ud800\uddd0\ud800\uddff",
-    // Unicode 5.1 property value: {block=phoenician}
-        "\ud802\udd00\ud802\udd1f",
-    // Unicode 5.1 property value: {block=phoneticextensions}
-        "\u1d00\u1d7f",
-    // Unicode 5.1 property value: {block=phoneticextensionssupplement}
-        "\u1d80\u1dbf",
-    // Unicode 5.1 property value: {block=privateusearea}
-        "\ue000\uf8ff",
-    // Unicode 5.1 property value: {block=rejang}
-        "\ua930\ua95f",
-    // Unicode 5.1 property value: {block=runic}
-        "\u16a0\u16ff",
-    // Unicode 5.1 property value: {block=saurashtra}
-        "\ua880\ua8df",
-    // Unicode 5.1 property value: {block=shavian}
-        "\ud801\udc50\ud801\udc7f",
-    // Unicode 5.1 property value: {block=sinhala}
-        "\u0d80\u0dff",
-    // Unicode 5.1 property value: {block=smallformvariants}
-        "\ufe50\ufe6f",
-    // Unicode 5.1 property value: {block=spacingmodifierletters}
-        "\u02b0\u02ff",
-    // Unicode 5.1 property value: {block=specials}
-        "\ufff0\uffff",
-    // Unicode 5.1 property value: {block=sundanese}
-        "\u1b80\u1bbf",
-    // Unicode 5.1 property value: {block=superscriptsandsubscripts}
-        "\u2070\u209f",
-    // Unicode 5.1 property value: {block=supplementalarrowsa}
-        "\u27f0\u27ff",
-    // Unicode 5.1 property value: {block=supplementalarrowsb}
-        "\u2900\u297f",
-    // Unicode 5.1 property value: {block=supplementalmathematicaloperators}
-        "\u2a00\u2aff",
-    // Unicode 5.1 property value: {block=supplementalpunctuation}
-        "\u2e00\u2e7f",
-    // Unicode 5.1 property value: {block=supplementaryprivateuseareaa}
-        "\udb80\udc00\udbbf\udfff",
-    // Unicode 5.1 property value: {block=supplementaryprivateuseareab}
-        "\udbc0\udc00\udbff\udfff",
-    // Unicode 5.1 property value: {block=sylotinagri}
-        "\ua800\ua82f",
-    // Unicode 5.1 property value: {block=syriac}
-        "\u0700\u074f",
-    // Unicode 5.1 property value: {block=tagalog}
-        "\u1700\u171f",
-    // Unicode 5.1 property value: {block=tagbanwa}
-        "\u1760\u177f",
-    // Unicode 5.1 property value: {block=tags}
-        "\udb40\udc00\udb40\udc7f",
-    // Unicode 5.1 property value: {block=taile}
-        "\u1950\u197f",
-    // Unicode 5.1 property value: {block=taixuanjingsymbols}
-        "\ud834\udf00\ud834\udf5f",
-    // Unicode 5.1 property value: {block=tamil}
-        "\u0b80\u0bff",
-    // Unicode 5.1 property value: {block=telugu}
-        "\u0c00\u0c7f",
-    // Unicode 5.1 property value: {block=thaana}
-        "\u0780\u07bf",
-    // Unicode 5.1 property value: {block=thai}
-        "\u0e00\u0e7f",
-    // Unicode 5.1 property value: {block=tibetan}
-        "\u0f00\u0fff",
-    // Unicode 5.1 property value: {block=tifinagh}
-        "\u2d30\u2d7f",
-    // Unicode 5.1 property value: {block=ugaritic}
-        "\ud800\udf80\ud800\udf9f",
-    // Unicode 5.1 property value: {block=unifiedcanadianaboriginalsyllabics}
-        "\u1400\u167f",
-    // Unicode 5.1 property value: {block=vai}
-        "\ua500\ua63f",
-    // Unicode 5.1 property value: {block=variationselectors}
-        "\ufe00\ufe0f",
-    // Unicode 5.1 property value: {block=variationselectorssupplement}
-        "\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {block=verticalforms}
-        "\ufe10\ufe1f",
-    // Unicode 5.1 property value: {block=yijinghexagramsymbols}
-        "\u4dc0\u4dff",
-    // Unicode 5.1 property value: {block=yiradicals}
-        "\ua490\ua4cf",
-    // Unicode 5.1 property value: {block=yisyllables}
-        "\ua000\ua48f",
-    // Unicode 5.1 property value: {bopomofo}
-        "\u3105\u312d"+"\u31a0\u31b7",
-    // Unicode 5.1 property value: {braille}
-        "\u2800\u28ff",
-    // Unicode 5.1 property value: {buginese}
-        "\u1a00\u1a1b"+"\u1a1e\u1a1f",
-    // Unicode 5.1 property value: {buhid}
-        "\u1740\u1753",
-    // Unicode 5.1 property value: {canadianaboriginal}
-        "\u1401\u1676",
-    // Unicode 5.1 property value: {carian}
-        "\ud800\udea0\ud800\uded0",
-    // Unicode 5.1 property value: {cc}
-        "\000\u001f"+"\u007f\u009f",
-    // Unicode 5.1 property value: {cf}
-        "\u00ad\u00ad"+"\u0600\u0603"+"\u06dd\u06dd"+"\u070f\u070f"
-      + "\u17b4\u17b5"+"\u200b\u200f"+"\u202a\u202e"+"\u2060\u2064"
-      + "\u206a\u206f"+"\ufeff\ufeff"+"\ufff9\ufffb"+"\ud834\udd73\ud834\udd7a"
-      + "\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f",
-    // Unicode 5.1 property value: {cham}
-        "\uaa00\uaa36"+"\uaa40\uaa4d"+"\uaa50\uaa59"+"\uaa5c\uaa5f",
-    // Unicode 5.1 property value: {cherokee}
-        "\u13a0\u13f4",
-    // Unicode 5.1 property value: {cn}
-        "\u0378\u0379"+"\u037f\u0383"+"\u038b\u038b"+"\u038d\u038d"
-      + "\u03a2\u03a2"+"\u0524\u0530"+"\u0557\u0558"+"\u0560\u0560"
-      + "\u0588\u0588"+"\u058b\u0590"+"\u05c8\u05cf"+"\u05eb\u05ef"
-      + "\u05f5\u05ff"+"\u0604\u0605"+"\u061c\u061d"+"\u0620\u0620"
-      + "\u065f\u065f"+"\u070e\u070e"+"\u074b\u074c"+"\u07b2\u07bf"
-      + "\u07fb\u0900"+"\u093a\u093b"+"\u094e\u094f"+"\u0955\u0957"
-      + "\u0973\u097a"+"\u0980\u0980"+"\u0984\u0984"+"\u098d\u098e"
-      + "\u0991\u0992"+"\u09a9\u09a9"+"\u09b1\u09b1"+"\u09b3\u09b5"
-      + "\u09ba\u09bb"+"\u09c5\u09c6"+"\u09c9\u09ca"+"\u09cf\u09d6"
-      + "\u09d8\u09db"+"\u09de\u09de"+"\u09e4\u09e5"+"\u09fb\u0a00"
-      + "\u0a04\u0a04"+"\u0a0b\u0a0e"+"\u0a11\u0a12"+"\u0a29\u0a29"
-      + "\u0a31\u0a31"+"\u0a34\u0a34"+"\u0a37\u0a37"+"\u0a3a\u0a3b"
-      + "\u0a3d\u0a3d"+"\u0a43\u0a46"+"\u0a49\u0a4a"+"\u0a4e\u0a50"
-      + "\u0a52\u0a58"+"\u0a5d\u0a5d"+"\u0a5f\u0a65"+"\u0a76\u0a80"
-      + "\u0a84\u0a84"+"\u0a8e\u0a8e"+"\u0a92\u0a92"+"\u0aa9\u0aa9"
-      + "\u0ab1\u0ab1"+"\u0ab4\u0ab4"+"\u0aba\u0abb"+"\u0ac6\u0ac6"
-      + "\u0aca\u0aca"+"\u0ace\u0acf"+"\u0ad1\u0adf"+"\u0ae4\u0ae5"
-      + "\u0af0\u0af0"+"\u0af2\u0b00"+"\u0b04\u0b04"+"\u0b0d\u0b0e"
-      + "\u0b11\u0b12"+"\u0b29\u0b29"+"\u0b31\u0b31"+"\u0b34\u0b34"
-      + "\u0b3a\u0b3b"+"\u0b45\u0b46"+"\u0b49\u0b4a"+"\u0b4e\u0b55"
-      + "\u0b58\u0b5b"+"\u0b5e\u0b5e"+"\u0b64\u0b65"+"\u0b72\u0b81"
-      + "\u0b84\u0b84"+"\u0b8b\u0b8d"+"\u0b91\u0b91"+"\u0b96\u0b98"
-      + "\u0b9b\u0b9b"+"\u0b9d\u0b9d"+"\u0ba0\u0ba2"+"\u0ba5\u0ba7"
-      + "\u0bab\u0bad"+"\u0bba\u0bbd"+"\u0bc3\u0bc5"+"\u0bc9\u0bc9"
-      + "\u0bce\u0bcf"+"\u0bd1\u0bd6"+"\u0bd8\u0be5"+"\u0bfb\u0c00"
-      + "\u0c04\u0c04"+"\u0c0d\u0c0d"+"\u0c11\u0c11"+"\u0c29\u0c29"
-      + "\u0c34\u0c34"+"\u0c3a\u0c3c"+"\u0c45\u0c45"+"\u0c49\u0c49"
-      + "\u0c4e\u0c54"+"\u0c57\u0c57"+"\u0c5a\u0c5f"+"\u0c64\u0c65"
-      + "\u0c70\u0c77"+"\u0c80\u0c81"+"\u0c84\u0c84"+"\u0c8d\u0c8d"
-      + "\u0c91\u0c91"+"\u0ca9\u0ca9"+"\u0cb4\u0cb4"+"\u0cba\u0cbb"
-      + "\u0cc5\u0cc5"+"\u0cc9\u0cc9"+"\u0cce\u0cd4"+"\u0cd7\u0cdd"
-      + "\u0cdf\u0cdf"+"\u0ce4\u0ce5"+"\u0cf0\u0cf0"+"\u0cf3\u0d01"
-      + "\u0d04\u0d04"+"\u0d0d\u0d0d"+"\u0d11\u0d11"+"\u0d29\u0d29"
-      + "\u0d3a\u0d3c"+"\u0d45\u0d45"+"\u0d49\u0d49"+"\u0d4e\u0d56"
-      + "\u0d58\u0d5f"+"\u0d64\u0d65"+"\u0d76\u0d78"+"\u0d80\u0d81"
-      + "\u0d84\u0d84"+"\u0d97\u0d99"+"\u0db2\u0db2"+"\u0dbc\u0dbc"
-      + "\u0dbe\u0dbf"+"\u0dc7\u0dc9"+"\u0dcb\u0dce"+"\u0dd5\u0dd5"
-      + "\u0dd7\u0dd7"+"\u0de0\u0df1"+"\u0df5\u0e00"+"\u0e3b\u0e3e"
-      + "\u0e5c\u0e80"+"\u0e83\u0e83"+"\u0e85\u0e86"+"\u0e89\u0e89"
-      + "\u0e8b\u0e8c"+"\u0e8e\u0e93"+"\u0e98\u0e98"+"\u0ea0\u0ea0"
-      + "\u0ea4\u0ea4"+"\u0ea6\u0ea6"+"\u0ea8\u0ea9"+"\u0eac\u0eac"
-      + "\u0eba\u0eba"+"\u0ebe\u0ebf"+"\u0ec5\u0ec5"+"\u0ec7\u0ec7"
-      + "\u0ece\u0ecf"+"\u0eda\u0edb"+"\u0ede\u0eff"+"\u0f48\u0f48"
-      + "\u0f6d\u0f70"+"\u0f8c\u0f8f"+"\u0f98\u0f98"+"\u0fbd\u0fbd"
-      + "\u0fcd\u0fcd"+"\u0fd5\u0fff"+"\u109a\u109d"+"\u10c6\u10cf"
-      + "\u10fd\u10ff"+"\u115a\u115e"+"\u11a3\u11a7"+"\u11fa\u11ff"
-      + "\u1249\u1249"+"\u124e\u124f"+"\u1257\u1257"+"\u1259\u1259"
-      + "\u125e\u125f"+"\u1289\u1289"+"\u128e\u128f"+"\u12b1\u12b1"
-      + "\u12b6\u12b7"+"\u12bf\u12bf"+"\u12c1\u12c1"+"\u12c6\u12c7"
-      + "\u12d7\u12d7"+"\u1311\u1311"+"\u1316\u1317"+"\u135b\u135e"
-      + "\u137d\u137f"+"\u139a\u139f"+"\u13f5\u1400"+"\u1677\u167f"
-      + "\u169d\u169f"+"\u16f1\u16ff"+"\u170d\u170d"+"\u1715\u171f"
-      + "\u1737\u173f"+"\u1754\u175f"+"\u176d\u176d"+"\u1771\u1771"
-      + "\u1774\u177f"+"\u17de\u17df"+"\u17ea\u17ef"+"\u17fa\u17ff"
-      + "\u180f\u180f"+"\u181a\u181f"+"\u1878\u187f"+"\u18ab\u18ff"
-      + "\u191d\u191f"+"\u192c\u192f"+"\u193c\u193f"+"\u1941\u1943"
-      + "\u196e\u196f"+"\u1975\u197f"+"\u19aa\u19af"+"\u19ca\u19cf"
-      + "\u19da\u19dd"+"\u1a1c\u1a1d"+"\u1a20\u1aff"+"\u1b4c\u1b4f"
-      + "\u1b7d\u1b7f"+"\u1bab\u1bad"+"\u1bba\u1bff"+"\u1c38\u1c3a"
-      + "\u1c4a\u1c4c"+"\u1c80\u1cff"+"\u1de7\u1dfd"+"\u1f16\u1f17"
-      + "\u1f1e\u1f1f"+"\u1f46\u1f47"+"\u1f4e\u1f4f"+"\u1f58\u1f58"
-      + "\u1f5a\u1f5a"+"\u1f5c\u1f5c"+"\u1f5e\u1f5e"+"\u1f7e\u1f7f"
-      + "\u1fb5\u1fb5"+"\u1fc5\u1fc5"+"\u1fd4\u1fd5"+"\u1fdc\u1fdc"
-      + "\u1ff0\u1ff1"+"\u1ff5\u1ff5"+"\u1fff\u1fff"+"\u2065\u2069"
-      + "\u2072\u2073"+"\u208f\u208f"+"\u2095\u209f"+"\u20b6\u20cf"
-      + "\u20f1\u20ff"+"\u2150\u2152"+"\u2189\u218f"+"\u23e8\u23ff"
-      + "\u2427\u243f"+"\u244b\u245f"+"\u269e\u269f"+"\u26bd\u26bf"
-      + "\u26c4\u2700"+"\u2705\u2705"+"\u270a\u270b"+"\u2728\u2728"
-      + "\u274c\u274c"+"\u274e\u274e"+"\u2753\u2755"+"\u2757\u2757"
-      + "\u275f\u2760"+"\u2795\u2797"+"\u27b0\u27b0"+"\u27bf\u27bf"
-      + "\u27cb\u27cb"+"\u27cd\u27cf"+"\u2b4d\u2b4f"+"\u2b55\u2bff"
-      + "\u2c2f\u2c2f"+"\u2c5f\u2c5f"+"\u2c70\u2c70"+"\u2c7e\u2c7f"
-      + "\u2ceb\u2cf8"+"\u2d26\u2d2f"+"\u2d66\u2d6e"+"\u2d70\u2d7f"
-      + "\u2d97\u2d9f"+"\u2da7\u2da7"+"\u2daf\u2daf"+"\u2db7\u2db7"
-      + "\u2dbf\u2dbf"+"\u2dc7\u2dc7"+"\u2dcf\u2dcf"+"\u2dd7\u2dd7"
-      + "\u2ddf\u2ddf"+"\u2e31\u2e7f"+"\u2e9a\u2e9a"+"\u2ef4\u2eff"
-      + "\u2fd6\u2fef"+"\u2ffc\u2fff"+"\u3040\u3040"+"\u3097\u3098"
-      + "\u3100\u3104"+"\u312e\u3130"+"\u318f\u318f"+"\u31b8\u31bf"
-      + "\u31e4\u31ef"+"\u321f\u321f"+"\u3244\u324f"+"\u32ff\u32ff"
-      + "\u4db6\u4dbf"+"\u9fc4\u9fff"+"\ua48d\ua48f"+"\ua4c7\ua4ff"
-      + "\ua62c\ua63f"+"\ua660\ua661"+"\ua674\ua67b"+"\ua698\ua6ff"
-      + "\ua78d\ua7fa"+"\ua82c\ua83f"+"\ua878\ua87f"+"\ua8c5\ua8cd"
-      + "\ua8da\ua8ff"+"\ua954\ua95e"+"\ua960\ua9ff"+"\uaa37\uaa3f"
-      + "\uaa4e\uaa4f"+"\uaa5a\uaa5b"+"\uaa60\uabff"+"\ud7a4\ud7ff"
-      + "\ufa2e\ufa2f"+"\ufa6b\ufa6f"+"\ufada\ufaff"+"\ufb07\ufb12"
-      + "\ufb18\ufb1c"+"\ufb37\ufb37"+"\ufb3d\ufb3d"+"\ufb3f\ufb3f"
-      + "\ufb42\ufb42"+"\ufb45\ufb45"+"\ufbb2\ufbd2"+"\ufd40\ufd4f"
-      + "\ufd90\ufd91"+"\ufdc8\ufdef"+"\ufdfe\ufdff"+"\ufe1a\ufe1f"
-      + "\ufe27\ufe2f"+"\ufe53\ufe53"+"\ufe67\ufe67"+"\ufe6c\ufe6f"
-      + "\ufe75\ufe75"+"\ufefd\ufefe"+"\uff00\uff00"+"\uffbf\uffc1"
-      + "\uffc8\uffc9"+"\uffd0\uffd1"+"\uffd8\uffd9"+"\uffdd\uffdf"
-      + "\uffe7\uffe7"+"\uffef\ufff8"+"\ufffe\uffff"+"\ud800\udc0c\ud800\udc0c"
-      + "\ud800\udc27\ud800\udc27"+"\ud800\udc3b\ud800\udc3b"+"\ud800\udc3e\ud800\udc3e"+"\ud800\udc4e\ud800\udc4f"
-      + "\ud800\udc5e\ud800\udc7f"+"\ud800\udcfb\ud800\udcff"+"\ud800\udd03\ud800\udd06"+"\ud800\udd34\ud800\udd36"
-      + "\ud800\udd8b\ud800\udd8f"+"\ud800\udd9c\ud800\uddcf"+"\ud800\uddfe\ud800\ude7f"+"\ud800\ude9d\ud800\ude9f"
-      + "\ud800\uded1\ud800\udeff"+"\ud800\udf1f\ud800\udf1f"+"\ud800\udf24\ud800\udf2f"+"\ud800\udf4b\ud800\udf7f"
-      + "\ud800\udf9e\ud800\udf9e"+"\ud800\udfc4\ud800\udfc7"+"\ud800\udfd6\ud800\udfff"+"\ud801\udc9e\ud801\udc9f"
-      + "\ud801\udcaa\ud801\udfff"+"\ud802\udc06\ud802\udc07"+"\ud802\udc09\ud802\udc09"+"\ud802\udc36\ud802\udc36"
-      + "\ud802\udc39\ud802\udc3b"+"\ud802\udc3d\ud802\udc3e"+"\ud802\udc40\ud802\udcff"+"\ud802\udd1a\ud802\udd1e"
-      + "\ud802\udd3a\ud802\udd3e"+"\ud802\udd40\ud802\uddff"+"\ud802\ude04\ud802\ude04"+"\ud802\ude07\ud802\ude0b"
-      + "\ud802\ude14\ud802\ude14"+"\ud802\ude18\ud802\ude18"+"\ud802\ude34\ud802\ude37"+"\ud802\ude3b\ud802\ude3e"
-      + "\ud802\ude48\ud802\ude4f"+"\ud802\ude59\ud807\udfff"+"\ud808\udf6f\ud808\udfff"+"\ud809\udc63\ud809\udc6f"
-      + "\ud809\udc74\ud833\udfff"+"\ud834\udcf6\ud834\udcff"+"\ud834\udd27\ud834\udd28"+"\ud834\uddde\ud834\uddff"
-      + "\ud834\ude46\ud834\udeff"+"\ud834\udf57\ud834\udf5f"+"\ud834\udf72\ud834\udfff"+"\ud835\udc55\ud835\udc55"
-      + "\ud835\udc9d\ud835\udc9d"+"\ud835\udca0\ud835\udca1"+"\ud835\udca3\ud835\udca4"+"\ud835\udca7\ud835\udca8"
-      + "\ud835\udcad\ud835\udcad"+"\ud835\udcba\ud835\udcba"+"\ud835\udcbc\ud835\udcbc"+"\ud835\udcc4\ud835\udcc4"
-      + "\ud835\udd06\ud835\udd06"+"\ud835\udd0b\ud835\udd0c"+"\ud835\udd15\ud835\udd15"+"\ud835\udd1d\ud835\udd1d"
-      + "\ud835\udd3a\ud835\udd3a"+"\ud835\udd3f\ud835\udd3f"+"\ud835\udd45\ud835\udd45"+"\ud835\udd47\ud835\udd49"
-      + "\ud835\udd51\ud835\udd51"+"\ud835\udea6\ud835\udea7"+"\ud835\udfcc\ud835\udfcd"+"\ud836\udc00\ud83b\udfff"
-      + "\ud83c\udc2c\ud83c\udc2f"+"\ud83c\udc94\ud83f\udfff"+"\ud869\uded7\ud87d\udfff"+"\ud87e\ude1e\udb40\udc00"
-      + "\udb40\udc02\udb40\udc1f"+"\udb40\udc80\udb40\udcff"+"\udb40\uddf0\udb7f\udfff"+"\udbbf\udffe\udbbf\udfff"
-      + "\udbff\udffe\udbff\udfff",
-    // Unicode 5.1 property value: {co}
-        "\ue000\uf8ff"+"\udb80\udc00\udbbf\udffd"+"\udbc0\udc00\udbff\udffd",
-    // Unicode 5.1 property value: {common}
-        "\000\u0040"+"\u005b\u0060"+"\u007b\u00a9"+"\u00ab\u00b9"
-      + "\u00bb\u00bf"+"\u00d7\u00d7"+"\u00f7\u00f7"+"\u02b9\u02df"
-      + "\u02e5\u02ff"+"\u0374\u0374"+"\u037e\u037e"+"\u0385\u0385"
-      + "\u0387\u0387"+"\u0589\u0589"+"\u0600\u0603"+"\u060c\u060c"
-      + "\u061b\u061b"+"\u061f\u061f"+"\u0640\u0640"+"\u0660\u0669"
-      + "\u06dd\u06dd"+"\u0964\u0965"+"\u0970\u0970"+"\u0cf1\u0cf2"
-      + "\u0e3f\u0e3f"+"\u10fb\u10fb"+"\u16eb\u16ed"+"\u1735\u1736"
-      + "\u1802\u1803"+"\u1805\u1805"+"\u2000\u200b"+"\u200e\u2064"
-      + "\u206a\u2070"+"\u2074\u207e"+"\u2080\u208e"+"\u20a0\u20b5"
-      + "\u2100\u2125"+"\u2127\u2129"+"\u212c\u2131"+"\u2133\u214d"
-      + "\u214f\u214f"+"\u2153\u215f"+"\u2190\u23e7"+"\u2400\u2426"
-      + "\u2440\u244a"+"\u2460\u269d"+"\u26a0\u26bc"+"\u26c0\u26c3"
-      + "\u2701\u2704"+"\u2706\u2709"+"\u270c\u2727"+"\u2729\u274b"
-      + "\u274d\u274d"+"\u274f\u2752"+"\u2756\u2756"+"\u2758\u275e"
-      + "\u2761\u2794"+"\u2798\u27af"+"\u27b1\u27be"+"\u27c0\u27ca"
-      + "\u27cc\u27cc"+"\u27d0\u27ff"+"\u2900\u2b4c"+"\u2b50\u2b54"
-      + "\u2e00\u2e30"+"\u2ff0\u2ffb"+"\u3000\u3004"+"\u3006\u3006"
-      + "\u3008\u3020"+"\u3030\u3037"+"\u303c\u303f"+"\u309b\u309c"
-      + "\u30a0\u30a0"+"\u30fb\u30fc"+"\u3190\u319f"+"\u31c0\u31e3"
-      + "\u3220\u3243"+"\u3250\u325f"+"\u327f\u32cf"+"\u3358\u33ff"
-      + "\u4dc0\u4dff"+"\ua700\ua721"+"\ua788\ua78a"+"\ufd3e\ufd3f"
-      + "\ufdfd\ufdfd"+"\ufe10\ufe19"+"\ufe30\ufe52"+"\ufe54\ufe66"
-      + "\ufe68\ufe6b"+"\ufeff\ufeff"+"\uff01\uff20"+"\uff3b\uff40"
-      + "\uff5b\uff65"+"\uff70\uff70"+"\uff9e\uff9f"+"\uffe0\uffe6"
-      + "\uffe8\uffee"+"\ufff9\ufffd"+"\ud800\udd00\ud800\udd02"+"\ud800\udd07\ud800\udd33"
-      + "\ud800\udd37\ud800\udd3f"+"\ud800\udd90\ud800\udd9b"+"\ud800\uddd0\ud800\uddfc"+"\ud834\udc00\ud834\udcf5"
-      + "\ud834\udd00\ud834\udd26"+"\ud834\udd29\ud834\udd66"+"\ud834\udd6a\ud834\udd7a"+"\ud834\udd83\ud834\udd84"
-      + "\ud834\udd8c\ud834\udda9"+"\ud834\uddae\ud834\udddd"+"\ud834\udf00\ud834\udf56"+"\ud834\udf60\ud834\udf71"
-      + "\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"
-      + "\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"
-      + "\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udfcb"
-      + "\ud835\udfce\ud835\udfff"+"\ud83c\udc00\ud83c\udc2b"+"\ud83c\udc30\ud83c\udc93"+"\udb40\udc01\udb40\udc01"
-      + "\udb40\udc20\udb40\udc7f",
-    // Unicode 5.1 property value: {coptic}
-        "\u03e2\u03ef"+"\u2c80\u2cea"+"\u2cf9\u2cff",
-    // Unicode 5.1 property value: {cuneiform}
-        "\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"+"\ud809\udc70\ud809\udc73",
-    // Unicode 5.1 property value: {cypriot}
-        "\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"
-      + "\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f",
-    // Unicode 5.1 property value: {cyrillic}
-        "\u0400\u0523"+"\u1d2b\u1d2b"+"\u1d78\u1d78"+"\u2de0\u2dff"
-      + "\ua640\ua65f"+"\ua662\ua673"+"\ua67c\ua697",
-    // Unicode 5.1 property value: {dash}
-        "\u002d\u002d"+"\u058a\u058a"+"\u05be\u05be"+"\u1806\u1806"
-      + "\u2010\u2015"+"\u2053\u2053"+"\u207b\u207b"+"\u208b\u208b"
-      + "\u2212\u2212"+"\u2e17\u2e17"+"\u2e1a\u2e1a"+"\u301c\u301c"
-      + "\u3030\u3030"+"\u30a0\u30a0"+"\ufe31\ufe32"+"\ufe58\ufe58"
-      + "\ufe63\ufe63"+"\uff0d\uff0d",
-    // Unicode 5.1 property value: {defaultignorablecodepoint}
-        "\u00ad\u00ad"+"\u034f\u034f"+"\u115f\u1160"+"\u17b4\u17b5"
-      + "\u180b\u180d"+"\u200b\u200f"+"\u202a\u202e"+"\u2060\u206f"
-      + "\u3164\u3164"+"\ufe00\ufe0f"+"\ufeff\ufeff"+"\uffa0\uffa0"
-      + "\ufff0\ufff8"+"\ud834\udd73\ud834\udd7a"+"\udb40\udc00\udb43\udfff",
-    // Unicode 5.1 property value: {deprecated}
-        "\u0340\u0341"+"\u17a3\u17a3"+"\u17d3\u17d3"+"\u206a\u206f"
-      + "\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f",
-    // Unicode 5.1 property value: {deseret}
-        "\ud801\udc00\ud801\udc4f",
-    // Unicode 5.1 property value: {devanagari}
-        "\u0901\u0939"+"\u093c\u094d"+"\u0950\u0950"+"\u0953\u0954"
-      + "\u0958\u0963"+"\u0966\u096f"+"\u0971\u0972"+"\u097b\u097f",
-    // Unicode 5.1 property value: {diacritic}
-        "\u005e\u005e"+"\u0060\u0060"+"\u00a8\u00a8"+"\u00af\u00af"
-      + "\u00b4\u00b4"+"\u00b7\u00b8"+"\u02b0\u034e"+"\u0350\u0357"
-      + "\u035d\u0362"+"\u0374\u0375"+"\u037a\u037a"+"\u0384\u0385"
-      + "\u0483\u0487"+"\u0559\u0559"+"\u0591\u05a1"+"\u05a3\u05bd"
-      + "\u05bf\u05bf"+"\u05c1\u05c2"+"\u05c4\u05c4"+"\u064b\u0652"
-      + "\u0657\u0658"+"\u06df\u06e0"+"\u06e5\u06e6"+"\u06ea\u06ec"
-      + "\u0730\u074a"+"\u07a6\u07b0"+"\u07eb\u07f5"+"\u093c\u093c"
-      + "\u094d\u094d"+"\u0951\u0954"+"\u0971\u0971"+"\u09bc\u09bc"
-      + "\u09cd\u09cd"+"\u0a3c\u0a3c"+"\u0a4d\u0a4d"+"\u0abc\u0abc"
-      + "\u0acd\u0acd"+"\u0b3c\u0b3c"+"\u0b4d\u0b4d"+"\u0bcd\u0bcd"
-      + "\u0c4d\u0c4d"+"\u0cbc\u0cbc"+"\u0ccd\u0ccd"+"\u0d4d\u0d4d"
-      + "\u0dca\u0dca"+"\u0e47\u0e4c"+"\u0e4e\u0e4e"+"\u0ec8\u0ecc"
-      + "\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f3e\u0f3f"+"\u0f82\u0f84"+"\u0f86\u0f87"+"\u0fc6\u0fc6"
-      + "\u1037\u1037"+"\u1039\u103a"+"\u1087\u108d"+"\u108f\u108f"
-      + "\u17c9\u17d3"+"\u17dd\u17dd"+"\u1939\u193b"+"\u1b34\u1b34"
-      + "\u1b44\u1b44"+"\u1b6b\u1b73"+"\u1baa\u1baa"+"\u1c36\u1c37"
-      + "\u1c78\u1c7d"+"\u1d2c\u1d6a"+"\u1dc4\u1dcf"+"\u1dfe\u1dff"
-      + "\u1fbd\u1fbd"+"\u1fbf\u1fc1"+"\u1fcd\u1fcf"+"\u1fdd\u1fdf"
-      + "\u1fed\u1fef"+"\u1ffd\u1ffe"+"\u2e2f\u2e2f"+"\u302a\u302f"
-      + "\u3099\u309c"+"\u30fc\u30fc"+"\ua66f\ua66f"+"\ua67c\ua67d"
-      + "\ua67f\ua67f"+"\ua717\ua721"+"\ua788\ua788"+"\ua8c4\ua8c4"
-      + "\ua92b\ua92e"+"\ua953\ua953"+"\ufb1e\ufb1e"+"\ufe20\ufe26"
-      + "\uff3e\uff3e"+"\uff40\uff40"+"\uff70\uff70"+"\uff9e\uff9f"
-      + "\uffe3\uffe3"+"\ud834\udd67\ud834\udd69"+"\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"
-      + "\ud834\udd85\ud834\udd8b"+"\ud834\uddaa\ud834\uddad",
-    // Unicode 5.1 property value: {ethiopic}
-        "\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"
-      + "\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"+"\u1290\u12b0"
-      + "\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"
-      + "\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"+"\u1318\u135a"
-      + "\u135f\u137c"+"\u1380\u1399"+"\u2d80\u2d96"+"\u2da0\u2da6"
-      + "\u2da8\u2dae"+"\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"
-      + "\u2dc8\u2dce"+"\u2dd0\u2dd6"+"\u2dd8\u2dde",
-    // Unicode 5.1 property value: {extender}
-        "\u00b7\u00b7"+"\u02d0\u02d1"+"\u0640\u0640"+"\u07fa\u07fa"
-      + "\u0e46\u0e46"+"\u0ec6\u0ec6"+"\u1843\u1843"+"\u1c36\u1c36"
-      + "\u1c7b\u1c7b"+"\u3005\u3005"+"\u3031\u3035"+"\u309d\u309e"
-      + "\u30fc\u30fe"+"\ua015\ua015"+"\ua60c\ua60c"+"\uff70\uff70",
-    // Unicode 5.1 property value: {georgian}
-        "\u10a0\u10c5"+"\u10d0\u10fa"+"\u10fc\u10fc"+"\u2d00\u2d25",
-    // Unicode 5.1 property value: {glagolitic}
-        "\u2c00\u2c2e"+"\u2c30\u2c5e",
-    // Unicode 5.1 property value: {gothic}
-        "\ud800\udf30\ud800\udf4a",
-    // Unicode 5.1 property value: {graph}
-        "\u0021\u007e"+"\u00a1\u0377"+"\u037a\u037e"+"\u0384\u038a"
-      + "\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u0523"+"\u0531\u0556"
-      + "\u0559\u055f"+"\u0561\u0587"+"\u0589\u058a"+"\u0591\u05c7"
-      + "\u05d0\u05ea"+"\u05f0\u05f4"+"\u0600\u0603"+"\u0606\u061b"
-      + "\u061e\u061f"+"\u0621\u065e"+"\u0660\u070d"+"\u070f\u074a"
-      + "\u074d\u07b1"+"\u07c0\u07fa"+"\u0901\u0939"+"\u093c\u094d"
-      + "\u0950\u0954"+"\u0958\u0972"+"\u097b\u097f"+"\u0981\u0983"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bc\u09c4"+"\u09c7\u09c8"
-      + "\u09cb\u09ce"+"\u09d7\u09d7"+"\u09dc\u09dd"+"\u09df\u09e3"
-      + "\u09e6\u09fa"+"\u0a01\u0a03"+"\u0a05\u0a0a"+"\u0a0f\u0a10"
-      + "\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"
-      + "\u0a38\u0a39"+"\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"
-      + "\u0a4b\u0a4d"+"\u0a51\u0a51"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a66\u0a75"+"\u0a81\u0a83"+"\u0a85\u0a8d"+"\u0a8f\u0a91"
-      + "\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"
-      + "\u0abc\u0ac5"+"\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"
-      + "\u0ae0\u0ae3"+"\u0ae6\u0aef"+"\u0af1\u0af1"+"\u0b01\u0b03"
-      + "\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"
-      + "\u0b32\u0b33"+"\u0b35\u0b39"+"\u0b3c\u0b44"+"\u0b47\u0b48"
-      + "\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b5c\u0b5d"+"\u0b5f\u0b63"
-      + "\u0b66\u0b71"+"\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"
-      + "\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"
-      + "\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bbe\u0bc2"
-      + "\u0bc6\u0bc8"+"\u0bca\u0bcd"+"\u0bd0\u0bd0"+"\u0bd7\u0bd7"
-      + "\u0be6\u0bfa"+"\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"
-      + "\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c44"
-      + "\u0c46\u0c48"+"\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c58\u0c59"
-      + "\u0c60\u0c63"+"\u0c66\u0c6f"+"\u0c78\u0c7f"+"\u0c82\u0c83"
-      + "\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"
-      + "\u0cb5\u0cb9"+"\u0cbc\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"
-      + "\u0cd5\u0cd6"+"\u0cde\u0cde"+"\u0ce0\u0ce3"+"\u0ce6\u0cef"
-      + "\u0cf1\u0cf2"+"\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"
-      + "\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d44"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4d"+"\u0d57\u0d57"+"\u0d60\u0d63"+"\u0d66\u0d75"
-      + "\u0d79\u0d7f"+"\u0d82\u0d83"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0dca\u0dca"
-      + "\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"+"\u0df2\u0df4"
-      + "\u0e01\u0e3a"+"\u0e3f\u0e5b"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb9"+"\u0ebb\u0ebd"+"\u0ec0\u0ec4"
-      + "\u0ec6\u0ec6"+"\u0ec8\u0ecd"+"\u0ed0\u0ed9"+"\u0edc\u0edd"
-      + "\u0f00\u0f47"+"\u0f49\u0f6c"+"\u0f71\u0f8b"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fbe\u0fcc"+"\u0fce\u0fd4"+"\u1000\u1099"
-      + "\u109e\u10c5"+"\u10d0\u10fc"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"
-      + "\u1290\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"
-      + "\u1318\u135a"+"\u135f\u137c"+"\u1380\u1399"+"\u13a0\u13f4"
-      + "\u1401\u1676"+"\u1681\u169c"+"\u16a0\u16f0"+"\u1700\u170c"
-      + "\u170e\u1714"+"\u1720\u1736"+"\u1740\u1753"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1772\u1773"+"\u1780\u17dd"+"\u17e0\u17e9"
-      + "\u17f0\u17f9"+"\u1800\u180d"+"\u1810\u1819"+"\u1820\u1877"
-      + "\u1880\u18aa"+"\u1900\u191c"+"\u1920\u192b"+"\u1930\u193b"
-      + "\u1940\u1940"+"\u1944\u196d"+"\u1970\u1974"+"\u1980\u19a9"
-      + "\u19b0\u19c9"+"\u19d0\u19d9"+"\u19de\u1a1b"+"\u1a1e\u1a1f"
-      + "\u1b00\u1b4b"+"\u1b50\u1b7c"+"\u1b80\u1baa"+"\u1bae\u1bb9"
-      + "\u1c00\u1c37"+"\u1c3b\u1c49"+"\u1c4d\u1c7f"+"\u1d00\u1de6"
-      + "\u1dfe\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"
-      + "\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"
-      + "\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fc4"+"\u1fc6\u1fd3"
-      + "\u1fd6\u1fdb"+"\u1fdd\u1fef"+"\u1ff2\u1ff4"+"\u1ff6\u1ffe"
-      + "\u200b\u2027"+"\u202a\u202e"+"\u2030\u205e"+"\u2060\u2064"
-      + "\u206a\u2071"+"\u2074\u208e"+"\u2090\u2094"+"\u20a0\u20b5"
-      + "\u20d0\u20f0"+"\u2100\u214f"+"\u2153\u2188"+"\u2190\u23e7"
-      + "\u2400\u2426"+"\u2440\u244a"+"\u2460\u269d"+"\u26a0\u26bc"
-      + "\u26c0\u26c3"+"\u2701\u2704"+"\u2706\u2709"+"\u270c\u2727"
-      + "\u2729\u274b"+"\u274d\u274d"+"\u274f\u2752"+"\u2756\u2756"
-      + "\u2758\u275e"+"\u2761\u2794"+"\u2798\u27af"+"\u27b1\u27be"
-      + "\u27c0\u27ca"+"\u27cc\u27cc"+"\u27d0\u2b4c"+"\u2b50\u2b54"
-      + "\u2c00\u2c2e"+"\u2c30\u2c5e"+"\u2c60\u2c6f"+"\u2c71\u2c7d"
-      + "\u2c80\u2cea"+"\u2cf9\u2d25"+"\u2d30\u2d65"+"\u2d6f\u2d6f"
-      + "\u2d80\u2d96"+"\u2da0\u2da6"+"\u2da8\u2dae"+"\u2db0\u2db6"
-      + "\u2db8\u2dbe"+"\u2dc0\u2dc6"+"\u2dc8\u2dce"+"\u2dd0\u2dd6"
-      + "\u2dd8\u2dde"+"\u2de0\u2e30"+"\u2e80\u2e99"+"\u2e9b\u2ef3"
-      + "\u2f00\u2fd5"+"\u2ff0\u2ffb"+"\u3001\u303f"+"\u3041\u3096"
-      + "\u3099\u30ff"+"\u3105\u312d"+"\u3131\u318e"+"\u3190\u31b7"
-      + "\u31c0\u31e3"+"\u31f0\u321e"+"\u3220\u3243"+"\u3250\u32fe"
-      + "\u3300\u4db5"+"\u4dc0\u9fc3"+"\ua000\ua48c"+"\ua490\ua4c6"
-      + "\ua500\ua62b"+"\ua640\ua65f"+"\ua662\ua673"+"\ua67c\ua697"
-      + "\ua700\ua78c"+"\ua7fb\ua82b"+"\ua840\ua877"+"\ua880\ua8c4"
-      + "\ua8ce\ua8d9"+"\ua900\ua953"+"\ua95f\ua95f"+"\uaa00\uaa36"
-      + "\uaa40\uaa4d"+"\uaa50\uaa59"+"\uaa5c\uaa5f"+"\uac00\ud7a3"
-      + "\ud800\ufa2d"+"\ufa30\ufa6a"+"\ufa70\ufad9"+"\ufb00\ufb06"
-      + "\ufb13\ufb17"+"\ufb1d\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3f"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfd"+"\ufe00\ufe19"
-      + "\ufe20\ufe26"+"\ufe30\ufe52"+"\ufe54\ufe66"+"\ufe68\ufe6b"
-      + "\ufe70\ufe74"+"\ufe76\ufefc"+"\ufeff\ufeff"+"\uff01\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\uffe0\uffe6"+"\uffe8\uffee"+"\ufff9\ufffd",
-    // Unicode 5.1 property value: {graphemebase}
-        "\u0020\u007e"+"\u00a0\u00ac"+"\u00ae\u02ff"+"\u0370\u0377"
-      + "\u037a\u037e"+"\u0384\u038a"+"\u038c\u038c"+"\u038e\u03a1"
-      + "\u03a3\u0482"+"\u048a\u0523"+"\u0531\u0556"+"\u0559\u055f"
-      + "\u0561\u0587"+"\u0589\u058a"+"\u05be\u05be"+"\u05c0\u05c0"
-      + "\u05c3\u05c3"+"\u05c6\u05c6"+"\u05d0\u05ea"+"\u05f0\u05f4"
-      + "\u0606\u060f"+"\u061b\u061b"+"\u061e\u061f"+"\u0621\u064a"
-      + "\u0660\u066f"+"\u0671\u06d5"+"\u06e5\u06e6"+"\u06e9\u06e9"
-      + "\u06ee\u070d"+"\u0710\u0710"+"\u0712\u072f"+"\u074d\u07a5"
-      + "\u07b1\u07b1"+"\u07c0\u07ea"+"\u07f4\u07fa"+"\u0903\u0939"
-      + "\u093d\u0940"+"\u0949\u094c"+"\u0950\u0950"+"\u0958\u0961"
-      + "\u0964\u0972"+"\u097b\u097f"+"\u0982\u0983"+"\u0985\u098c"
-      + "\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"
-      + "\u09b6\u09b9"+"\u09bd\u09bd"+"\u09bf\u09c0"+"\u09c7\u09c8"
-      + "\u09cb\u09cc"+"\u09ce\u09ce"+"\u09dc\u09dd"+"\u09df\u09e1"
-      + "\u09e6\u09fa"+"\u0a03\u0a03"+"\u0a05\u0a0a"+"\u0a0f\u0a10"
-      + "\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"
-      + "\u0a38\u0a39"+"\u0a3e\u0a40"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a66\u0a6f"+"\u0a72\u0a74"+"\u0a83\u0a83"+"\u0a85\u0a8d"
-      + "\u0a8f\u0a91"+"\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"
-      + "\u0ab5\u0ab9"+"\u0abd\u0ac0"+"\u0ac9\u0ac9"+"\u0acb\u0acc"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae1"+"\u0ae6\u0aef"+"\u0af1\u0af1"
-      + "\u0b02\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"
-      + "\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"+"\u0b3d\u0b3d"
-      + "\u0b40\u0b40"+"\u0b47\u0b48"+"\u0b4b\u0b4c"+"\u0b5c\u0b5d"
-      + "\u0b5f\u0b61"+"\u0b66\u0b71"+"\u0b83\u0b83"+"\u0b85\u0b8a"
-      + "\u0b8e\u0b90"+"\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"
-      + "\u0b9e\u0b9f"+"\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb9"
-      + "\u0bbf\u0bbf"+"\u0bc1\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcc"
-      + "\u0bd0\u0bd0"+"\u0be6\u0bfa"+"\u0c01\u0c03"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3d\u0c3d"+"\u0c41\u0c44"+"\u0c58\u0c59"+"\u0c60\u0c61"
-      + "\u0c66\u0c6f"+"\u0c78\u0c7f"+"\u0c82\u0c83"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbd\u0cbe"+"\u0cc0\u0cc1"+"\u0cc3\u0cc4"+"\u0cc7\u0cc8"
-      + "\u0cca\u0ccb"+"\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0ce6\u0cef"
-      + "\u0cf1\u0cf2"+"\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"
-      + "\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d3d"+"\u0d3f\u0d40"
-      + "\u0d46\u0d48"+"\u0d4a\u0d4c"+"\u0d60\u0d61"+"\u0d66\u0d75"
-      + "\u0d79\u0d7f"+"\u0d82\u0d83"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0dd0\u0dd1"
-      + "\u0dd8\u0dde"+"\u0df2\u0df4"+"\u0e01\u0e30"+"\u0e32\u0e33"
-      + "\u0e3f\u0e46"+"\u0e4f\u0e5b"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb0"+"\u0eb2\u0eb3"+"\u0ebd\u0ebd"
-      + "\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ed0\u0ed9"+"\u0edc\u0edd"
-      + "\u0f00\u0f17"+"\u0f1a\u0f34"+"\u0f36\u0f36"+"\u0f38\u0f38"
-      + "\u0f3a\u0f47"+"\u0f49\u0f6c"+"\u0f7f\u0f7f"+"\u0f85\u0f85"
-      + "\u0f88\u0f8b"+"\u0fbe\u0fc5"+"\u0fc7\u0fcc"+"\u0fce\u0fd4"
-      + "\u1000\u102c"+"\u1031\u1031"+"\u1038\u1038"+"\u103b\u103c"
-      + "\u103f\u1057"+"\u105a\u105d"+"\u1061\u1070"+"\u1075\u1081"
-      + "\u1083\u1084"+"\u1087\u108c"+"\u108e\u1099"+"\u109e\u10c5"
-      + "\u10d0\u10fc"+"\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"
-      + "\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"
-      + "\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"+"\u1290\u12b0"
-      + "\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"
-      + "\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"+"\u1318\u135a"
-      + "\u1360\u137c"+"\u1380\u1399"+"\u13a0\u13f4"+"\u1401\u1676"
-      + "\u1680\u169c"+"\u16a0\u16f0"+"\u1700\u170c"+"\u170e\u1711"
-      + "\u1720\u1731"+"\u1735\u1736"+"\u1740\u1751"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1780\u17b3"+"\u17b6\u17b6"+"\u17be\u17c5"
-      + "\u17c7\u17c8"+"\u17d4\u17dc"+"\u17e0\u17e9"+"\u17f0\u17f9"
-      + "\u1800\u180a"+"\u180e\u180e"+"\u1810\u1819"+"\u1820\u1877"
-      + "\u1880\u18a8"+"\u18aa\u18aa"+"\u1900\u191c"+"\u1923\u1926"
-      + "\u1929\u192b"+"\u1930\u1931"+"\u1933\u1938"+"\u1940\u1940"
-      + "\u1944\u196d"+"\u1970\u1974"+"\u1980\u19a9"+"\u19b0\u19c9"
-      + "\u19d0\u19d9"+"\u19de\u1a16"+"\u1a19\u1a1b"+"\u1a1e\u1a1f"
-      + "\u1b04\u1b33"+"\u1b35\u1b35"+"\u1b3b\u1b3b"+"\u1b3d\u1b41"
-      + "\u1b43\u1b4b"+"\u1b50\u1b6a"+"\u1b74\u1b7c"+"\u1b82\u1ba1"
-      + "\u1ba6\u1ba7"+"\u1baa\u1baa"+"\u1bae\u1bb9"+"\u1c00\u1c2b"
-      + "\u1c34\u1c35"+"\u1c3b\u1c49"+"\u1c4d\u1c7f"+"\u1d00\u1dbf"
-      + "\u1e00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"
-      + "\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"
-      + "\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fc4"+"\u1fc6\u1fd3"
-      + "\u1fd6\u1fdb"+"\u1fdd\u1fef"+"\u1ff2\u1ff4"+"\u1ff6\u1ffe"
-      + "\u2000\u200a"+"\u2010\u2027"+"\u202f\u205f"+"\u2070\u2071"
-      + "\u2074\u208e"+"\u2090\u2094"+"\u20a0\u20b5"+"\u2100\u214f"
-      + "\u2153\u2188"+"\u2190\u23e7"+"\u2400\u2426"+"\u2440\u244a"
-      + "\u2460\u269d"+"\u26a0\u26bc"+"\u26c0\u26c3"+"\u2701\u2704"
-      + "\u2706\u2709"+"\u270c\u2727"+"\u2729\u274b"+"\u274d\u274d"
-      + "\u274f\u2752"+"\u2756\u2756"+"\u2758\u275e"+"\u2761\u2794"
-      + "\u2798\u27af"+"\u27b1\u27be"+"\u27c0\u27ca"+"\u27cc\u27cc"
-      + "\u27d0\u2b4c"+"\u2b50\u2b54"+"\u2c00\u2c2e"+"\u2c30\u2c5e"
-      + "\u2c60\u2c6f"+"\u2c71\u2c7d"+"\u2c80\u2cea"+"\u2cf9\u2d25"
-      + "\u2d30\u2d65"+"\u2d6f\u2d6f"+"\u2d80\u2d96"+"\u2da0\u2da6"
-      + "\u2da8\u2dae"+"\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"
-      + "\u2dc8\u2dce"+"\u2dd0\u2dd6"+"\u2dd8\u2dde"+"\u2e00\u2e30"
-      + "\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5"+"\u2ff0\u2ffb"
-      + "\u3000\u3029"+"\u3030\u303f"+"\u3041\u3096"+"\u309b\u30ff"
-      + "\u3105\u312d"+"\u3131\u318e"+"\u3190\u31b7"+"\u31c0\u31e3"
-      + "\u31f0\u321e"+"\u3220\u3243"+"\u3250\u32fe"+"\u3300\u4db5"
-      + "\u4dc0\u9fc3"+"\ua000\ua48c"+"\ua490\ua4c6"+"\ua500\ua62b"
-      + "\ua640\ua65f"+"\ua662\ua66e"+"\ua673\ua673"+"\ua67e\ua697"
-      + "\ua700\ua78c"+"\ua7fb\ua801"+"\ua803\ua805"+"\ua807\ua80a"
-      + "\ua80c\ua824"+"\ua827\ua82b"+"\ua840\ua877"+"\ua880\ua8c3"
-      + "\ua8ce\ua8d9"+"\ua900\ua925"+"\ua92e\ua946"+"\ua952\ua953"
-      + "\ua95f\ua95f"+"\uaa00\uaa28"+"\uaa2f\uaa30"+"\uaa33\uaa34"
-      + "\uaa40\uaa42"+"\uaa44\uaa4b"+"\uaa4d\uaa4d"+"\uaa50\uaa59"
-      + "\uaa5c\uaa5f"+"\uac00\ud7a3"+"\uf900\ufa2d"+"\ufa30\ufa6a"
-      + "\ufa70\ufad9"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb1d"
-      + "\ufb1f\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3f"+"\ufd50\ufd8f"
-      + "\ufd92\ufdc7"+"\ufdf0\ufdfd"+"\ufe10\ufe19"+"\ufe30\ufe52"
-      + "\ufe54\ufe66"+"\ufe68\ufe6b"+"\ufe70\ufe74"+"\ufe76\ufefc"
-      + "\uff01\uff9d"+"\uffa0\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"
-      + "\uffd2\uffd7"+"\uffda\uffdc"+"\uffe0\uffe6"+"\uffe8\uffee"
-      + "\ufffc\ufffd"+"\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"
-      + "\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"
-      + "\ud800\udd00\ud800\udd02"+"\ud800\udd07\ud800\udd33"+"\ud800\udd37\ud800\udd8a"+"\ud800\udd90\ud800\udd9b"
-      + "\ud800\uddd0\ud800\uddfc"+"\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"
-      + "\ud800\udf20\ud800\udf23"+"\ud800\udf30\ud800\udf4a"+"\ud800\udf80\ud800\udf9d"+"\ud800\udf9f\ud800\udfc3"
-      + "\ud800\udfc8\ud800\udfd5"+"\ud801\udc00\ud801\udc9d"+"\ud801\udca0\ud801\udca9"+"\ud802\udc00\ud802\udc05"
-      + "\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"
-      + "\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd19"+"\ud802\udd1f\ud802\udd39"+"\ud802\udd3f\ud802\udd3f"
-      + "\ud802\ude00\ud802\ude00"+"\ud802\ude10\ud802\ude13"+"\ud802\ude15\ud802\ude17"+"\ud802\ude19\ud802\ude33"
-      + "\ud802\ude40\ud802\ude47"+"\ud802\ude50\ud802\ude58"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"
-      + "\ud809\udc70\ud809\udc73"+"\ud834\udc00\ud834\udcf5"+"\ud834\udd00\ud834\udd26"+"\ud834\udd29\ud834\udd64"
-      + "\ud834\udd66\ud834\udd66"+"\ud834\udd6a\ud834\udd6d"+"\ud834\udd83\ud834\udd84"+"\ud834\udd8c\ud834\udda9"
-      + "\ud834\uddae\ud834\udddd"+"\ud834\ude00\ud834\ude41"+"\ud834\ude45\ud834\ude45"+"\ud834\udf00\ud834\udf56"
-      + "\ud834\udf60\ud834\udf71"+"\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"
-      + "\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"
-      + "\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"
-      + "\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"
-      + "\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"
-      + "\ud835\udea8\ud835\udfcb"+"\ud835\udfce\ud835\udfff"+"\ud83c\udc00\ud83c\udc2b"+"\ud83c\udc30\ud83c\udc93"
-      + "\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {graphemeclusterbreak=control}
-        "\000\t"+"\u000b\f"+"\u000e\u001f"+"\u007f\u009f"
-      + "\u00ad\u00ad"+"\u0600\u0603"+"\u06dd\u06dd"+"\u070f\u070f"
-      + "\u17b4\u17b5"+"\u200b\u200b"+"\u200e\u200f"+"\u2028\u202e"
-      + "\u2060\u2064"+"\u206a\u206f"+"\ufeff\ufeff"+"\ufff9\ufffb"
-      + "\ud834\udd73\ud834\udd7a"+"\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f",
-    // Unicode 5.1 property value: {graphemeclusterbreak=cr}
-        "\r\r",
-    // Unicode 5.1 property value: {graphemeclusterbreak=extend}
-        "\u0300\u036f"+"\u0483\u0489"+"\u0591\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c5"+"\u05c7\u05c7"+"\u0610\u061a"
-      + "\u064b\u065e"+"\u0670\u0670"+"\u06d6\u06dc"+"\u06de\u06e4"
-      + "\u06e7\u06e8"+"\u06ea\u06ed"+"\u0711\u0711"+"\u0730\u074a"
-      + "\u07a6\u07b0"+"\u07eb\u07f3"+"\u0901\u0902"+"\u093c\u093c"
-      + "\u0941\u0948"+"\u094d\u094d"+"\u0951\u0954"+"\u0962\u0963"
-      + "\u0981\u0981"+"\u09bc\u09bc"+"\u09be\u09be"+"\u09c1\u09c4"
-      + "\u09cd\u09cd"+"\u09d7\u09d7"+"\u09e2\u09e3"+"\u0a01\u0a02"
-      + "\u0a3c\u0a3c"+"\u0a41\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a51\u0a51"+"\u0a70\u0a71"+"\u0a75\u0a75"+"\u0a81\u0a82"
-      + "\u0abc\u0abc"+"\u0ac1\u0ac5"+"\u0ac7\u0ac8"+"\u0acd\u0acd"
-      + "\u0ae2\u0ae3"+"\u0b01\u0b01"+"\u0b3c\u0b3c"+"\u0b3e\u0b3f"
-      + "\u0b41\u0b44"+"\u0b4d\u0b4d"+"\u0b56\u0b57"+"\u0b62\u0b63"
-      + "\u0b82\u0b82"+"\u0bbe\u0bbe"+"\u0bc0\u0bc0"+"\u0bcd\u0bcd"
-      + "\u0bd7\u0bd7"+"\u0c3e\u0c40"+"\u0c46\u0c48"+"\u0c4a\u0c4d"
-      + "\u0c55\u0c56"+"\u0c62\u0c63"+"\u0cbc\u0cbc"+"\u0cbf\u0cbf"
-      + "\u0cc2\u0cc2"+"\u0cc6\u0cc6"+"\u0ccc\u0ccd"+"\u0cd5\u0cd6"
-      + "\u0ce2\u0ce3"+"\u0d3e\u0d3e"+"\u0d41\u0d44"+"\u0d4d\u0d4d"
-      + "\u0d57\u0d57"+"\u0d62\u0d63"+"\u0dca\u0dca"+"\u0dcf\u0dcf"
-      + "\u0dd2\u0dd4"+"\u0dd6\u0dd6"+"\u0ddf\u0ddf"+"\u0e30\u0e3a"
-      + "\u0e45\u0e45"+"\u0e47\u0e4e"+"\u0eb0\u0eb9"+"\u0ebb\u0ebc"
-      + "\u0ec8\u0ecd"+"\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"
-      + "\u0f39\u0f39"+"\u0f71\u0f7e"+"\u0f80\u0f84"+"\u0f86\u0f87"
-      + "\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u102d\u1030"
-      + "\u1032\u1037"+"\u1039\u103a"+"\u103d\u103e"+"\u1058\u1059"
-      + "\u105e\u1060"+"\u1071\u1074"+"\u1082\u1082"+"\u1085\u1086"
-      + "\u108d\u108d"+"\u135f\u135f"+"\u1712\u1714"+"\u1732\u1734"
-      + "\u1752\u1753"+"\u1772\u1773"+"\u17b7\u17bd"+"\u17c6\u17c6"
-      + "\u17c9\u17d3"+"\u17dd\u17dd"+"\u180b\u180d"+"\u18a9\u18a9"
-      + "\u1920\u1922"+"\u1927\u1928"+"\u1932\u1932"+"\u1939\u193b"
-      + "\u1a17\u1a18"+"\u1b00\u1b03"+"\u1b34\u1b34"+"\u1b36\u1b3a"
-      + "\u1b3c\u1b3c"+"\u1b42\u1b42"+"\u1b6b\u1b73"+"\u1b80\u1b81"
-      + "\u1ba2\u1ba5"+"\u1ba8\u1ba9"+"\u1c2c\u1c33"+"\u1c36\u1c37"
-      + "\u1dc0\u1de6"+"\u1dfe\u1dff"+"\u200c\u200d"+"\u20d0\u20f0"
-      + "\u2de0\u2dff"+"\u302a\u302f"+"\u3099\u309a"+"\ua66f\ua672"
-      + "\ua67c\ua67d"+"\ua802\ua802"+"\ua806\ua806"+"\ua80b\ua80b"
-      + "\ua825\ua826"+"\ua8c4\ua8c4"+"\ua926\ua92d"+"\ua947\ua951"
-      + "\uaa29\uaa2e"+"\uaa31\uaa32"+"\uaa35\uaa36"+"\uaa43\uaa43"
-      + "\uaa4c\uaa4c"+"\ufb1e\ufb1e"+"\ufe00\ufe0f"+"\ufe20\ufe26"
-      + "\uff9e\uff9f"+"\ud800\uddfd\ud800\uddfd"+"\ud802\ude01\ud802\ude03"+"\ud802\ude05\ud802\ude06"
-      + "\ud802\ude0c\ud802\ude0f"+"\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude3f"+"\ud834\udd65\ud834\udd65"
-      + "\ud834\udd67\ud834\udd69"+"\ud834\udd6e\ud834\udd72"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad"+"\ud834\ude42\ud834\ude44"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {graphemeclusterbreak=l}
-        "\u1100\u1159"+"\u115f\u115f",
-    // Unicode 5.1 property value: {graphemeclusterbreak=lf}
-        "\n\n",
-    // Unicode 5.1 property value: {graphemeclusterbreak=lv}
-        "\uac00\uac00"+"\uac1c\uac1c"+"\uac38\uac38"+"\uac54\uac54"
-      + "\uac70\uac70"+"\uac8c\uac8c"+"\uaca8\uaca8"+"\uacc4\uacc4"
-      + "\uace0\uace0"+"\uacfc\uacfc"+"\uad18\uad18"+"\uad34\uad34"
-      + "\uad50\uad50"+"\uad6c\uad6c"+"\uad88\uad88"+"\uada4\uada4"
-      + "\uadc0\uadc0"+"\uaddc\uaddc"+"\uadf8\uadf8"+"\uae14\uae14"
-      + "\uae30\uae30"+"\uae4c\uae4c"+"\uae68\uae68"+"\uae84\uae84"
-      + "\uaea0\uaea0"+"\uaebc\uaebc"+"\uaed8\uaed8"+"\uaef4\uaef4"
-      + "\uaf10\uaf10"+"\uaf2c\uaf2c"+"\uaf48\uaf48"+"\uaf64\uaf64"
-      + "\uaf80\uaf80"+"\uaf9c\uaf9c"+"\uafb8\uafb8"+"\uafd4\uafd4"
-      + "\uaff0\uaff0"+"\ub00c\ub00c"+"\ub028\ub028"+"\ub044\ub044"
-      + "\ub060\ub060"+"\ub07c\ub07c"+"\ub098\ub098"+"\ub0b4\ub0b4"
-      + "\ub0d0\ub0d0"+"\ub0ec\ub0ec"+"\ub108\ub108"+"\ub124\ub124"
-      + "\ub140\ub140"+"\ub15c\ub15c"+"\ub178\ub178"+"\ub194\ub194"
-      + "\ub1b0\ub1b0"+"\ub1cc\ub1cc"+"\ub1e8\ub1e8"+"\ub204\ub204"
-      + "\ub220\ub220"+"\ub23c\ub23c"+"\ub258\ub258"+"\ub274\ub274"
-      + "\ub290\ub290"+"\ub2ac\ub2ac"+"\ub2c8\ub2c8"+"\ub2e4\ub2e4"
-      + "\ub300\ub300"+"\ub31c\ub31c"+"\ub338\ub338"+"\ub354\ub354"
-      + "\ub370\ub370"+"\ub38c\ub38c"+"\ub3a8\ub3a8"+"\ub3c4\ub3c4"
-      + "\ub3e0\ub3e0"+"\ub3fc\ub3fc"+"\ub418\ub418"+"\ub434\ub434"
-      + "\ub450\ub450"+"\ub46c\ub46c"+"\ub488\ub488"+"\ub4a4\ub4a4"
-      + "\ub4c0\ub4c0"+"\ub4dc\ub4dc"+"\ub4f8\ub4f8"+"\ub514\ub514"
-      + "\ub530\ub530"+"\ub54c\ub54c"+"\ub568\ub568"+"\ub584\ub584"
-      + "\ub5a0\ub5a0"+"\ub5bc\ub5bc"+"\ub5d8\ub5d8"+"\ub5f4\ub5f4"
-      + "\ub610\ub610"+"\ub62c\ub62c"+"\ub648\ub648"+"\ub664\ub664"
-      + "\ub680\ub680"+"\ub69c\ub69c"+"\ub6b8\ub6b8"+"\ub6d4\ub6d4"
-      + "\ub6f0\ub6f0"+"\ub70c\ub70c"+"\ub728\ub728"+"\ub744\ub744"
-      + "\ub760\ub760"+"\ub77c\ub77c"+"\ub798\ub798"+"\ub7b4\ub7b4"
-      + "\ub7d0\ub7d0"+"\ub7ec\ub7ec"+"\ub808\ub808"+"\ub824\ub824"
-      + "\ub840\ub840"+"\ub85c\ub85c"+"\ub878\ub878"+"\ub894\ub894"
-      + "\ub8b0\ub8b0"+"\ub8cc\ub8cc"+"\ub8e8\ub8e8"+"\ub904\ub904"
-      + "\ub920\ub920"+"\ub93c\ub93c"+"\ub958\ub958"+"\ub974\ub974"
-      + "\ub990\ub990"+"\ub9ac\ub9ac"+"\ub9c8\ub9c8"+"\ub9e4\ub9e4"
-      + "\uba00\uba00"+"\uba1c\uba1c"+"\uba38\uba38"+"\uba54\uba54"
-      + "\uba70\uba70"+"\uba8c\uba8c"+"\ubaa8\ubaa8"+"\ubac4\ubac4"
-      + "\ubae0\ubae0"+"\ubafc\ubafc"+"\ubb18\ubb18"+"\ubb34\ubb34"
-      + "\ubb50\ubb50"+"\ubb6c\ubb6c"+"\ubb88\ubb88"+"\ubba4\ubba4"
-      + "\ubbc0\ubbc0"+"\ubbdc\ubbdc"+"\ubbf8\ubbf8"+"\ubc14\ubc14"
-      + "\ubc30\ubc30"+"\ubc4c\ubc4c"+"\ubc68\ubc68"+"\ubc84\ubc84"
-      + "\ubca0\ubca0"+"\ubcbc\ubcbc"+"\ubcd8\ubcd8"+"\ubcf4\ubcf4"
-      + "\ubd10\ubd10"+"\ubd2c\ubd2c"+"\ubd48\ubd48"+"\ubd64\ubd64"
-      + "\ubd80\ubd80"+"\ubd9c\ubd9c"+"\ubdb8\ubdb8"+"\ubdd4\ubdd4"
-      + "\ubdf0\ubdf0"+"\ube0c\ube0c"+"\ube28\ube28"+"\ube44\ube44"
-      + "\ube60\ube60"+"\ube7c\ube7c"+"\ube98\ube98"+"\ubeb4\ubeb4"
-      + "\ubed0\ubed0"+"\ubeec\ubeec"+"\ubf08\ubf08"+"\ubf24\ubf24"
-      + "\ubf40\ubf40"+"\ubf5c\ubf5c"+"\ubf78\ubf78"+"\ubf94\ubf94"
-      + "\ubfb0\ubfb0"+"\ubfcc\ubfcc"+"\ubfe8\ubfe8"+"\uc004\uc004"
-      + "\uc020\uc020"+"\uc03c\uc03c"+"\uc058\uc058"+"\uc074\uc074"
-      + "\uc090\uc090"+"\uc0ac\uc0ac"+"\uc0c8\uc0c8"+"\uc0e4\uc0e4"
-      + "\uc100\uc100"+"\uc11c\uc11c"+"\uc138\uc138"+"\uc154\uc154"
-      + "\uc170\uc170"+"\uc18c\uc18c"+"\uc1a8\uc1a8"+"\uc1c4\uc1c4"
-      + "\uc1e0\uc1e0"+"\uc1fc\uc1fc"+"\uc218\uc218"+"\uc234\uc234"
-      + "\uc250\uc250"+"\uc26c\uc26c"+"\uc288\uc288"+"\uc2a4\uc2a4"
-      + "\uc2c0\uc2c0"+"\uc2dc\uc2dc"+"\uc2f8\uc2f8"+"\uc314\uc314"
-      + "\uc330\uc330"+"\uc34c\uc34c"+"\uc368\uc368"+"\uc384\uc384"
-      + "\uc3a0\uc3a0"+"\uc3bc\uc3bc"+"\uc3d8\uc3d8"+"\uc3f4\uc3f4"
-      + "\uc410\uc410"+"\uc42c\uc42c"+"\uc448\uc448"+"\uc464\uc464"
-      + "\uc480\uc480"+"\uc49c\uc49c"+"\uc4b8\uc4b8"+"\uc4d4\uc4d4"
-      + "\uc4f0\uc4f0"+"\uc50c\uc50c"+"\uc528\uc528"+"\uc544\uc544"
-      + "\uc560\uc560"+"\uc57c\uc57c"+"\uc598\uc598"+"\uc5b4\uc5b4"
-      + "\uc5d0\uc5d0"+"\uc5ec\uc5ec"+"\uc608\uc608"+"\uc624\uc624"
-      + "\uc640\uc640"+"\uc65c\uc65c"+"\uc678\uc678"+"\uc694\uc694"
-      + "\uc6b0\uc6b0"+"\uc6cc\uc6cc"+"\uc6e8\uc6e8"+"\uc704\uc704"
-      + "\uc720\uc720"+"\uc73c\uc73c"+"\uc758\uc758"+"\uc774\uc774"
-      + "\uc790\uc790"+"\uc7ac\uc7ac"+"\uc7c8\uc7c8"+"\uc7e4\uc7e4"
-      + "\uc800\uc800"+"\uc81c\uc81c"+"\uc838\uc838"+"\uc854\uc854"
-      + "\uc870\uc870"+"\uc88c\uc88c"+"\uc8a8\uc8a8"+"\uc8c4\uc8c4"
-      + "\uc8e0\uc8e0"+"\uc8fc\uc8fc"+"\uc918\uc918"+"\uc934\uc934"
-      + "\uc950\uc950"+"\uc96c\uc96c"+"\uc988\uc988"+"\uc9a4\uc9a4"
-      + "\uc9c0\uc9c0"+"\uc9dc\uc9dc"+"\uc9f8\uc9f8"+"\uca14\uca14"
-      + "\uca30\uca30"+"\uca4c\uca4c"+"\uca68\uca68"+"\uca84\uca84"
-      + "\ucaa0\ucaa0"+"\ucabc\ucabc"+"\ucad8\ucad8"+"\ucaf4\ucaf4"
-      + "\ucb10\ucb10"+"\ucb2c\ucb2c"+"\ucb48\ucb48"+"\ucb64\ucb64"
-      + "\ucb80\ucb80"+"\ucb9c\ucb9c"+"\ucbb8\ucbb8"+"\ucbd4\ucbd4"
-      + "\ucbf0\ucbf0"+"\ucc0c\ucc0c"+"\ucc28\ucc28"+"\ucc44\ucc44"
-      + "\ucc60\ucc60"+"\ucc7c\ucc7c"+"\ucc98\ucc98"+"\uccb4\uccb4"
-      + "\uccd0\uccd0"+"\uccec\uccec"+"\ucd08\ucd08"+"\ucd24\ucd24"
-      + "\ucd40\ucd40"+"\ucd5c\ucd5c"+"\ucd78\ucd78"+"\ucd94\ucd94"
-      + "\ucdb0\ucdb0"+"\ucdcc\ucdcc"+"\ucde8\ucde8"+"\uce04\uce04"
-      + "\uce20\uce20"+"\uce3c\uce3c"+"\uce58\uce58"+"\uce74\uce74"
-      + "\uce90\uce90"+"\uceac\uceac"+"\ucec8\ucec8"+"\ucee4\ucee4"
-      + "\ucf00\ucf00"+"\ucf1c\ucf1c"+"\ucf38\ucf38"+"\ucf54\ucf54"
-      + "\ucf70\ucf70"+"\ucf8c\ucf8c"+"\ucfa8\ucfa8"+"\ucfc4\ucfc4"
-      + "\ucfe0\ucfe0"+"\ucffc\ucffc"+"\ud018\ud018"+"\ud034\ud034"
-      + "\ud050\ud050"+"\ud06c\ud06c"+"\ud088\ud088"+"\ud0a4\ud0a4"
-      + "\ud0c0\ud0c0"+"\ud0dc\ud0dc"+"\ud0f8\ud0f8"+"\ud114\ud114"
-      + "\ud130\ud130"+"\ud14c\ud14c"+"\ud168\ud168"+"\ud184\ud184"
-      + "\ud1a0\ud1a0"+"\ud1bc\ud1bc"+"\ud1d8\ud1d8"+"\ud1f4\ud1f4"
-      + "\ud210\ud210"+"\ud22c\ud22c"+"\ud248\ud248"+"\ud264\ud264"
-      + "\ud280\ud280"+"\ud29c\ud29c"+"\ud2b8\ud2b8"+"\ud2d4\ud2d4"
-      + "\ud2f0\ud2f0"+"\ud30c\ud30c"+"\ud328\ud328"+"\ud344\ud344"
-      + "\ud360\ud360"+"\ud37c\ud37c"+"\ud398\ud398"+"\ud3b4\ud3b4"
-      + "\ud3d0\ud3d0"+"\ud3ec\ud3ec"+"\ud408\ud408"+"\ud424\ud424"
-      + "\ud440\ud440"+"\ud45c\ud45c"+"\ud478\ud478"+"\ud494\ud494"
-      + "\ud4b0\ud4b0"+"\ud4cc\ud4cc"+"\ud4e8\ud4e8"+"\ud504\ud504"
-      + "\ud520\ud520"+"\ud53c\ud53c"+"\ud558\ud558"+"\ud574\ud574"
-      + "\ud590\ud590"+"\ud5ac\ud5ac"+"\ud5c8\ud5c8"+"\ud5e4\ud5e4"
-      + "\ud600\ud600"+"\ud61c\ud61c"+"\ud638\ud638"+"\ud654\ud654"
-      + "\ud670\ud670"+"\ud68c\ud68c"+"\ud6a8\ud6a8"+"\ud6c4\ud6c4"
-      + "\ud6e0\ud6e0"+"\ud6fc\ud6fc"+"\ud718\ud718"+"\ud734\ud734"
-      + "\ud750\ud750"+"\ud76c\ud76c"+"\ud788\ud788",
-    // Unicode 5.1 property value: {graphemeclusterbreak=lvt}
-        "\uac01\uac1b"+"\uac1d\uac37"+"\uac39\uac53"+"\uac55\uac6f"
-      + "\uac71\uac8b"+"\uac8d\uaca7"+"\uaca9\uacc3"+"\uacc5\uacdf"
-      + "\uace1\uacfb"+"\uacfd\uad17"+"\uad19\uad33"+"\uad35\uad4f"
-      + "\uad51\uad6b"+"\uad6d\uad87"+"\uad89\uada3"+"\uada5\uadbf"
-      + "\uadc1\uaddb"+"\uaddd\uadf7"+"\uadf9\uae13"+"\uae15\uae2f"
-      + "\uae31\uae4b"+"\uae4d\uae67"+"\uae69\uae83"+"\uae85\uae9f"
-      + "\uaea1\uaebb"+"\uaebd\uaed7"+"\uaed9\uaef3"+"\uaef5\uaf0f"
-      + "\uaf11\uaf2b"+"\uaf2d\uaf47"+"\uaf49\uaf63"+"\uaf65\uaf7f"
-      + "\uaf81\uaf9b"+"\uaf9d\uafb7"+"\uafb9\uafd3"+"\uafd5\uafef"
-      + "\uaff1\ub00b"+"\ub00d\ub027"+"\ub029\ub043"+"\ub045\ub05f"
-      + "\ub061\ub07b"+"\ub07d\ub097"+"\ub099\ub0b3"+"\ub0b5\ub0cf"
-      + "\ub0d1\ub0eb"+"\ub0ed\ub107"+"\ub109\ub123"+"\ub125\ub13f"
-      + "\ub141\ub15b"+"\ub15d\ub177"+"\ub179\ub193"+"\ub195\ub1af"
-      + "\ub1b1\ub1cb"+"\ub1cd\ub1e7"+"\ub1e9\ub203"+"\ub205\ub21f"
-      + "\ub221\ub23b"+"\ub23d\ub257"+"\ub259\ub273"+"\ub275\ub28f"
-      + "\ub291\ub2ab"+"\ub2ad\ub2c7"+"\ub2c9\ub2e3"+"\ub2e5\ub2ff"
-      + "\ub301\ub31b"+"\ub31d\ub337"+"\ub339\ub353"+"\ub355\ub36f"
-      + "\ub371\ub38b"+"\ub38d\ub3a7"+"\ub3a9\ub3c3"+"\ub3c5\ub3df"
-      + "\ub3e1\ub3fb"+"\ub3fd\ub417"+"\ub419\ub433"+"\ub435\ub44f"
-      + "\ub451\ub46b"+"\ub46d\ub487"+"\ub489\ub4a3"+"\ub4a5\ub4bf"
-      + "\ub4c1\ub4db"+"\ub4dd\ub4f7"+"\ub4f9\ub513"+"\ub515\ub52f"
-      + "\ub531\ub54b"+"\ub54d\ub567"+"\ub569\ub583"+"\ub585\ub59f"
-      + "\ub5a1\ub5bb"+"\ub5bd\ub5d7"+"\ub5d9\ub5f3"+"\ub5f5\ub60f"
-      + "\ub611\ub62b"+"\ub62d\ub647"+"\ub649\ub663"+"\ub665\ub67f"
-      + "\ub681\ub69b"+"\ub69d\ub6b7"+"\ub6b9\ub6d3"+"\ub6d5\ub6ef"
-      + "\ub6f1\ub70b"+"\ub70d\ub727"+"\ub729\ub743"+"\ub745\ub75f"
-      + "\ub761\ub77b"+"\ub77d\ub797"+"\ub799\ub7b3"+"\ub7b5\ub7cf"
-      + "\ub7d1\ub7eb"+"\ub7ed\ub807"+"\ub809\ub823"+"\ub825\ub83f"
-      + "\ub841\ub85b"+"\ub85d\ub877"+"\ub879\ub893"+"\ub895\ub8af"
-      + "\ub8b1\ub8cb"+"\ub8cd\ub8e7"+"\ub8e9\ub903"+"\ub905\ub91f"
-      + "\ub921\ub93b"+"\ub93d\ub957"+"\ub959\ub973"+"\ub975\ub98f"
-      + "\ub991\ub9ab"+"\ub9ad\ub9c7"+"\ub9c9\ub9e3"+"\ub9e5\ub9ff"
-      + "\uba01\uba1b"+"\uba1d\uba37"+"\uba39\uba53"+"\uba55\uba6f"
-      + "\uba71\uba8b"+"\uba8d\ubaa7"+"\ubaa9\ubac3"+"\ubac5\ubadf"
-      + "\ubae1\ubafb"+"\ubafd\ubb17"+"\ubb19\ubb33"+"\ubb35\ubb4f"
-      + "\ubb51\ubb6b"+"\ubb6d\ubb87"+"\ubb89\ubba3"+"\ubba5\ubbbf"
-      + "\ubbc1\ubbdb"+"\ubbdd\ubbf7"+"\ubbf9\ubc13"+"\ubc15\ubc2f"
-      + "\ubc31\ubc4b"+"\ubc4d\ubc67"+"\ubc69\ubc83"+"\ubc85\ubc9f"
-      + "\ubca1\ubcbb"+"\ubcbd\ubcd7"+"\ubcd9\ubcf3"+"\ubcf5\ubd0f"
-      + "\ubd11\ubd2b"+"\ubd2d\ubd47"+"\ubd49\ubd63"+"\ubd65\ubd7f"
-      + "\ubd81\ubd9b"+"\ubd9d\ubdb7"+"\ubdb9\ubdd3"+"\ubdd5\ubdef"
-      + "\ubdf1\ube0b"+"\ube0d\ube27"+"\ube29\ube43"+"\ube45\ube5f"
-      + "\ube61\ube7b"+"\ube7d\ube97"+"\ube99\ubeb3"+"\ubeb5\ubecf"
-      + "\ubed1\ubeeb"+"\ubeed\ubf07"+"\ubf09\ubf23"+"\ubf25\ubf3f"
-      + "\ubf41\ubf5b"+"\ubf5d\ubf77"+"\ubf79\ubf93"+"\ubf95\ubfaf"
-      + "\ubfb1\ubfcb"+"\ubfcd\ubfe7"+"\ubfe9\uc003"+"\uc005\uc01f"
-      + "\uc021\uc03b"+"\uc03d\uc057"+"\uc059\uc073"+"\uc075\uc08f"
-      + "\uc091\uc0ab"+"\uc0ad\uc0c7"+"\uc0c9\uc0e3"+"\uc0e5\uc0ff"
-      + "\uc101\uc11b"+"\uc11d\uc137"+"\uc139\uc153"+"\uc155\uc16f"
-      + "\uc171\uc18b"+"\uc18d\uc1a7"+"\uc1a9\uc1c3"+"\uc1c5\uc1df"
-      + "\uc1e1\uc1fb"+"\uc1fd\uc217"+"\uc219\uc233"+"\uc235\uc24f"
-      + "\uc251\uc26b"+"\uc26d\uc287"+"\uc289\uc2a3"+"\uc2a5\uc2bf"
-      + "\uc2c1\uc2db"+"\uc2dd\uc2f7"+"\uc2f9\uc313"+"\uc315\uc32f"
-      + "\uc331\uc34b"+"\uc34d\uc367"+"\uc369\uc383"+"\uc385\uc39f"
-      + "\uc3a1\uc3bb"+"\uc3bd\uc3d7"+"\uc3d9\uc3f3"+"\uc3f5\uc40f"
-      + "\uc411\uc42b"+"\uc42d\uc447"+"\uc449\uc463"+"\uc465\uc47f"
-      + "\uc481\uc49b"+"\uc49d\uc4b7"+"\uc4b9\uc4d3"+"\uc4d5\uc4ef"
-      + "\uc4f1\uc50b"+"\uc50d\uc527"+"\uc529\uc543"+"\uc545\uc55f"
-      + "\uc561\uc57b"+"\uc57d\uc597"+"\uc599\uc5b3"+"\uc5b5\uc5cf"
-      + "\uc5d1\uc5eb"+"\uc5ed\uc607"+"\uc609\uc623"+"\uc625\uc63f"
-      + "\uc641\uc65b"+"\uc65d\uc677"+"\uc679\uc693"+"\uc695\uc6af"
-      + "\uc6b1\uc6cb"+"\uc6cd\uc6e7"+"\uc6e9\uc703"+"\uc705\uc71f"
-      + "\uc721\uc73b"+"\uc73d\uc757"+"\uc759\uc773"+"\uc775\uc78f"
-      + "\uc791\uc7ab"+"\uc7ad\uc7c7"+"\uc7c9\uc7e3"+"\uc7e5\uc7ff"
-      + "\uc801\uc81b"+"\uc81d\uc837"+"\uc839\uc853"+"\uc855\uc86f"
-      + "\uc871\uc88b"+"\uc88d\uc8a7"+"\uc8a9\uc8c3"+"\uc8c5\uc8df"
-      + "\uc8e1\uc8fb"+"\uc8fd\uc917"+"\uc919\uc933"+"\uc935\uc94f"
-      + "\uc951\uc96b"+"\uc96d\uc987"+"\uc989\uc9a3"+"\uc9a5\uc9bf"
-      + "\uc9c1\uc9db"+"\uc9dd\uc9f7"+"\uc9f9\uca13"+"\uca15\uca2f"
-      + "\uca31\uca4b"+"\uca4d\uca67"+"\uca69\uca83"+"\uca85\uca9f"
-      + "\ucaa1\ucabb"+"\ucabd\ucad7"+"\ucad9\ucaf3"+"\ucaf5\ucb0f"
-      + "\ucb11\ucb2b"+"\ucb2d\ucb47"+"\ucb49\ucb63"+"\ucb65\ucb7f"
-      + "\ucb81\ucb9b"+"\ucb9d\ucbb7"+"\ucbb9\ucbd3"+"\ucbd5\ucbef"
-      + "\ucbf1\ucc0b"+"\ucc0d\ucc27"+"\ucc29\ucc43"+"\ucc45\ucc5f"
-      + "\ucc61\ucc7b"+"\ucc7d\ucc97"+"\ucc99\uccb3"+"\uccb5\ucccf"
-      + "\uccd1\ucceb"+"\ucced\ucd07"+"\ucd09\ucd23"+"\ucd25\ucd3f"
-      + "\ucd41\ucd5b"+"\ucd5d\ucd77"+"\ucd79\ucd93"+"\ucd95\ucdaf"
-      + "\ucdb1\ucdcb"+"\ucdcd\ucde7"+"\ucde9\uce03"+"\uce05\uce1f"
-      + "\uce21\uce3b"+"\uce3d\uce57"+"\uce59\uce73"+"\uce75\uce8f"
-      + "\uce91\uceab"+"\ucead\ucec7"+"\ucec9\ucee3"+"\ucee5\uceff"
-      + "\ucf01\ucf1b"+"\ucf1d\ucf37"+"\ucf39\ucf53"+"\ucf55\ucf6f"
-      + "\ucf71\ucf8b"+"\ucf8d\ucfa7"+"\ucfa9\ucfc3"+"\ucfc5\ucfdf"
-      + "\ucfe1\ucffb"+"\ucffd\ud017"+"\ud019\ud033"+"\ud035\ud04f"
-      + "\ud051\ud06b"+"\ud06d\ud087"+"\ud089\ud0a3"+"\ud0a5\ud0bf"
-      + "\ud0c1\ud0db"+"\ud0dd\ud0f7"+"\ud0f9\ud113"+"\ud115\ud12f"
-      + "\ud131\ud14b"+"\ud14d\ud167"+"\ud169\ud183"+"\ud185\ud19f"
-      + "\ud1a1\ud1bb"+"\ud1bd\ud1d7"+"\ud1d9\ud1f3"+"\ud1f5\ud20f"
-      + "\ud211\ud22b"+"\ud22d\ud247"+"\ud249\ud263"+"\ud265\ud27f"
-      + "\ud281\ud29b"+"\ud29d\ud2b7"+"\ud2b9\ud2d3"+"\ud2d5\ud2ef"
-      + "\ud2f1\ud30b"+"\ud30d\ud327"+"\ud329\ud343"+"\ud345\ud35f"
-      + "\ud361\ud37b"+"\ud37d\ud397"+"\ud399\ud3b3"+"\ud3b5\ud3cf"
-      + "\ud3d1\ud3eb"+"\ud3ed\ud407"+"\ud409\ud423"+"\ud425\ud43f"
-      + "\ud441\ud45b"+"\ud45d\ud477"+"\ud479\ud493"+"\ud495\ud4af"
-      + "\ud4b1\ud4cb"+"\ud4cd\ud4e7"+"\ud4e9\ud503"+"\ud505\ud51f"
-      + "\ud521\ud53b"+"\ud53d\ud557"+"\ud559\ud573"+"\ud575\ud58f"
-      + "\ud591\ud5ab"+"\ud5ad\ud5c7"+"\ud5c9\ud5e3"+"\ud5e5\ud5ff"
-      + "\ud601\ud61b"+"\ud61d\ud637"+"\ud639\ud653"+"\ud655\ud66f"
-      + "\ud671\ud68b"+"\ud68d\ud6a7"+"\ud6a9\ud6c3"+"\ud6c5\ud6df"
-      + "\ud6e1\ud6fb"+"\ud6fd\ud717"+"\ud719\ud733"+"\ud735\ud74f"
-      + "\ud751\ud76b"+"\ud76d\ud787"+"\ud789\ud7a3",
-    // Unicode 5.1 property value: {graphemeclusterbreak=other}
-        "\u0020\u007e"+"\u00a0\u00ac"+"\u00ae\u02ff"+"\u0370\u0482"
-      + "\u048a\u0590"+"\u05be\u05be"+"\u05c0\u05c0"+"\u05c3\u05c3"
-      + "\u05c6\u05c6"+"\u05c8\u05ff"+"\u0604\u060f"+"\u061b\u064a"
-      + "\u065f\u066f"+"\u0671\u06d5"+"\u06e5\u06e6"+"\u06e9\u06e9"
-      + "\u06ee\u070e"+"\u0710\u0710"+"\u0712\u072f"+"\u074b\u07a5"
-      + "\u07b1\u07ea"+"\u07f4\u0900"+"\u0904\u093b"+"\u093d\u093d"
-      + "\u094e\u0950"+"\u0955\u0961"+"\u0964\u0980"+"\u0984\u09bb"
-      + "\u09bd\u09bd"+"\u09c5\u09c6"+"\u09c9\u09ca"+"\u09ce\u09d6"
-      + "\u09d8\u09e1"+"\u09e4\u0a00"+"\u0a04\u0a3b"+"\u0a3d\u0a3d"
-      + "\u0a43\u0a46"+"\u0a49\u0a4a"+"\u0a4e\u0a50"+"\u0a52\u0a6f"
-      + "\u0a72\u0a74"+"\u0a76\u0a80"+"\u0a84\u0abb"+"\u0abd\u0abd"
-      + "\u0ac6\u0ac6"+"\u0aca\u0aca"+"\u0ace\u0ae1"+"\u0ae4\u0b00"
-      + "\u0b04\u0b3b"+"\u0b3d\u0b3d"+"\u0b45\u0b46"+"\u0b49\u0b4a"
-      + "\u0b4e\u0b55"+"\u0b58\u0b61"+"\u0b64\u0b81"+"\u0b83\u0bbd"
-      + "\u0bc3\u0bc5"+"\u0bc9\u0bc9"+"\u0bce\u0bd6"+"\u0bd8\u0c00"
-      + "\u0c04\u0c3d"+"\u0c45\u0c45"+"\u0c49\u0c49"+"\u0c4e\u0c54"
-      + "\u0c57\u0c61"+"\u0c64\u0c81"+"\u0c84\u0cbb"+"\u0cbd\u0cbd"
-      + "\u0cc5\u0cc5"+"\u0cc9\u0cc9"+"\u0cce\u0cd4"+"\u0cd7\u0ce1"
-      + "\u0ce4\u0d01"+"\u0d04\u0d3d"+"\u0d45\u0d45"+"\u0d49\u0d49"
-      + "\u0d4e\u0d56"+"\u0d58\u0d61"+"\u0d64\u0d81"+"\u0d84\u0dc9"
-      + "\u0dcb\u0dce"+"\u0dd5\u0dd5"+"\u0dd7\u0dd7"+"\u0de0\u0df1"
-      + "\u0df4\u0e2f"+"\u0e3b\u0e3f"+"\u0e46\u0e46"+"\u0e4f\u0eaf"
-      + "\u0eba\u0eba"+"\u0ebd\u0ebf"+"\u0ec5\u0ec7"+"\u0ece\u0f17"
-      + "\u0f1a\u0f34"+"\u0f36\u0f36"+"\u0f38\u0f38"+"\u0f3a\u0f3d"
-      + "\u0f40\u0f70"+"\u0f85\u0f85"+"\u0f88\u0f8f"+"\u0f98\u0f98"
-      + "\u0fbd\u0fc5"+"\u0fc7\u102a"+"\u103f\u1055"+"\u105a\u105d"
-      + "\u1061\u1061"+"\u1065\u1066"+"\u106e\u1070"+"\u1075\u1081"
-      + "\u108e\u108e"+"\u1090\u10ff"+"\u115a\u115e"+"\u11a3\u11a7"
-      + "\u11fa\u135e"+"\u1360\u1711"+"\u1715\u1731"+"\u1735\u1751"
-      + "\u1754\u1771"+"\u1774\u17b3"+"\u17d4\u17dc"+"\u17de\u180a"
-      + "\u180e\u18a8"+"\u18aa\u191f"+"\u192c\u192f"+"\u193c\u19af"
-      + "\u19c1\u19c7"+"\u19ca\u1a16"+"\u1a1c\u1aff"+"\u1b05\u1b33"
-      + "\u1b45\u1b6a"+"\u1b74\u1b7f"+"\u1b83\u1ba0"+"\u1bab\u1c23"
-      + "\u1c38\u1dbf"+"\u1de7\u1dfd"+"\u1e00\u200a"+"\u2010\u2027"
-      + "\u202f\u205f"+"\u2065\u2069"+"\u2070\u20cf"+"\u20f1\u2ddf"
-      + "\u2e00\u3029"+"\u3030\u3098"+"\u309b\ua66e"+"\ua673\ua67b"
-      + "\ua67e\ua801"+"\ua803\ua805"+"\ua807\ua80a"+"\ua80c\ua822"
-      + "\ua828\ua87f"+"\ua882\ua8b3"+"\ua8c5\ua925"+"\ua92e\ua946"
-      + "\ua954\uaa28"+"\uaa37\uaa42"+"\uaa44\uaa4b"+"\uaa4e\uabff"
-      + "\ud7a4\ufb1d"+"\ufb1f\ufdff"+"\ufe10\ufe1f"+"\ufe27\ufefe"
-      + "\uff00\uff9d"+"\uffa0\ufff8"+"\ufffc\ud800\uddfc"+"\ud800\uddfe\ud802\ude00"
-      + "\ud802\ude04\ud802\ude04"+"\ud802\ude07\ud802\ude0b"+"\ud802\ude10\ud802\ude37"+"\ud802\ude3b\ud802\ude3e"
-      + "\ud802\ude40\ud834\udd64"+"\ud834\udd6a\ud834\udd6c"+"\ud834\udd83\ud834\udd84"+"\ud834\udd8c\ud834\udda9"
-      + "\ud834\uddae\ud834\ude41"+"\ud834\ude45\udb40\udc00"+"\udb40\udc02\udb40\udc1f"+"\udb40\udc80\udb40\udcff"
-      + "\udb40\uddf0\udbff\udfff",
-    // Unicode 5.1 property value: {graphemeclusterbreak=prepend}
-        "\u0e40\u0e44"+"\u0ec0\u0ec4",
-    // Unicode 5.1 property value: {graphemeclusterbreak=spacingmark}
-        "\u0903\u0903"+"\u093e\u0940"+"\u0949\u094c"+"\u0982\u0983"
-      + "\u09bf\u09c0"+"\u09c7\u09c8"+"\u09cb\u09cc"+"\u0a03\u0a03"
-      + "\u0a3e\u0a40"+"\u0a83\u0a83"+"\u0abe\u0ac0"+"\u0ac9\u0ac9"
-      + "\u0acb\u0acc"+"\u0b02\u0b03"+"\u0b40\u0b40"+"\u0b47\u0b48"
-      + "\u0b4b\u0b4c"+"\u0bbf\u0bbf"+"\u0bc1\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcc"+"\u0c01\u0c03"+"\u0c41\u0c44"+"\u0c82\u0c83"
-      + "\u0cbe\u0cbe"+"\u0cc0\u0cc1"+"\u0cc3\u0cc4"+"\u0cc7\u0cc8"
-      + "\u0cca\u0ccb"+"\u0d02\u0d03"+"\u0d3f\u0d40"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4c"+"\u0d82\u0d83"+"\u0dd0\u0dd1"+"\u0dd8\u0dde"
-      + "\u0df2\u0df3"+"\u0f3e\u0f3f"+"\u0f7f\u0f7f"+"\u102b\u102c"
-      + "\u1031\u1031"+"\u1038\u1038"+"\u103b\u103c"+"\u1056\u1057"
-      + "\u1062\u1064"+"\u1067\u106d"+"\u1083\u1084"+"\u1087\u108c"
-      + "\u108f\u108f"+"\u17b6\u17b6"+"\u17be\u17c5"+"\u17c7\u17c8"
-      + "\u1923\u1926"+"\u1929\u192b"+"\u1930\u1931"+"\u1933\u1938"
-      + "\u19b0\u19c0"+"\u19c8\u19c9"+"\u1a19\u1a1b"+"\u1b04\u1b04"
-      + "\u1b35\u1b35"+"\u1b3b\u1b3b"+"\u1b3d\u1b41"+"\u1b43\u1b44"
-      + "\u1b82\u1b82"+"\u1ba1\u1ba1"+"\u1ba6\u1ba7"+"\u1baa\u1baa"
-      + "\u1c24\u1c2b"+"\u1c34\u1c35"+"\ua823\ua824"+"\ua827\ua827"
-      + "\ua880\ua881"+"\ua8b4\ua8c3"+"\ua952\ua953"+"\uaa2f\uaa30"
-      + "\uaa33\uaa34"+"\uaa4d\uaa4d"+"\ud834\udd66\ud834\udd66"+"\ud834\udd6d\ud834\udd6d",
-    // Unicode 5.1 property value: {graphemeclusterbreak=t}
-        "\u11a8\u11f9",
-    // Unicode 5.1 property value: {graphemeclusterbreak=v}
-        "\u1160\u11a2",
-    // Unicode 5.1 property value: {graphemeextend}
-        "\u0300\u036f"+"\u0483\u0489"+"\u0591\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c5"+"\u05c7\u05c7"+"\u0610\u061a"
-      + "\u064b\u065e"+"\u0670\u0670"+"\u06d6\u06dc"+"\u06de\u06e4"
-      + "\u06e7\u06e8"+"\u06ea\u06ed"+"\u0711\u0711"+"\u0730\u074a"
-      + "\u07a6\u07b0"+"\u07eb\u07f3"+"\u0901\u0902"+"\u093c\u093c"
-      + "\u0941\u0948"+"\u094d\u094d"+"\u0951\u0954"+"\u0962\u0963"
-      + "\u0981\u0981"+"\u09bc\u09bc"+"\u09be\u09be"+"\u09c1\u09c4"
-      + "\u09cd\u09cd"+"\u09d7\u09d7"+"\u09e2\u09e3"+"\u0a01\u0a02"
-      + "\u0a3c\u0a3c"+"\u0a41\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a51\u0a51"+"\u0a70\u0a71"+"\u0a75\u0a75"+"\u0a81\u0a82"
-      + "\u0abc\u0abc"+"\u0ac1\u0ac5"+"\u0ac7\u0ac8"+"\u0acd\u0acd"
-      + "\u0ae2\u0ae3"+"\u0b01\u0b01"+"\u0b3c\u0b3c"+"\u0b3e\u0b3f"
-      + "\u0b41\u0b44"+"\u0b4d\u0b4d"+"\u0b56\u0b57"+"\u0b62\u0b63"
-      + "\u0b82\u0b82"+"\u0bbe\u0bbe"+"\u0bc0\u0bc0"+"\u0bcd\u0bcd"
-      + "\u0bd7\u0bd7"+"\u0c3e\u0c40"+"\u0c46\u0c48"+"\u0c4a\u0c4d"
-      + "\u0c55\u0c56"+"\u0c62\u0c63"+"\u0cbc\u0cbc"+"\u0cbf\u0cbf"
-      + "\u0cc2\u0cc2"+"\u0cc6\u0cc6"+"\u0ccc\u0ccd"+"\u0cd5\u0cd6"
-      + "\u0ce2\u0ce3"+"\u0d3e\u0d3e"+"\u0d41\u0d44"+"\u0d4d\u0d4d"
-      + "\u0d57\u0d57"+"\u0d62\u0d63"+"\u0dca\u0dca"+"\u0dcf\u0dcf"
-      + "\u0dd2\u0dd4"+"\u0dd6\u0dd6"+"\u0ddf\u0ddf"+"\u0e31\u0e31"
-      + "\u0e34\u0e3a"+"\u0e47\u0e4e"+"\u0eb1\u0eb1"+"\u0eb4\u0eb9"
-      + "\u0ebb\u0ebc"+"\u0ec8\u0ecd"+"\u0f18\u0f19"+"\u0f35\u0f35"
-      + "\u0f37\u0f37"+"\u0f39\u0f39"+"\u0f71\u0f7e"+"\u0f80\u0f84"
-      + "\u0f86\u0f87"+"\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fc6\u0fc6"
-      + "\u102d\u1030"+"\u1032\u1037"+"\u1039\u103a"+"\u103d\u103e"
-      + "\u1058\u1059"+"\u105e\u1060"+"\u1071\u1074"+"\u1082\u1082"
-      + "\u1085\u1086"+"\u108d\u108d"+"\u135f\u135f"+"\u1712\u1714"
-      + "\u1732\u1734"+"\u1752\u1753"+"\u1772\u1773"+"\u17b7\u17bd"
-      + "\u17c6\u17c6"+"\u17c9\u17d3"+"\u17dd\u17dd"+"\u180b\u180d"
-      + "\u18a9\u18a9"+"\u1920\u1922"+"\u1927\u1928"+"\u1932\u1932"
-      + "\u1939\u193b"+"\u1a17\u1a18"+"\u1b00\u1b03"+"\u1b34\u1b34"
-      + "\u1b36\u1b3a"+"\u1b3c\u1b3c"+"\u1b42\u1b42"+"\u1b6b\u1b73"
-      + "\u1b80\u1b81"+"\u1ba2\u1ba5"+"\u1ba8\u1ba9"+"\u1c2c\u1c33"
-      + "\u1c36\u1c37"+"\u1dc0\u1de6"+"\u1dfe\u1dff"+"\u200c\u200d"
-      + "\u20d0\u20f0"+"\u2de0\u2dff"+"\u302a\u302f"+"\u3099\u309a"
-      + "\ua66f\ua672"+"\ua67c\ua67d"+"\ua802\ua802"+"\ua806\ua806"
-      + "\ua80b\ua80b"+"\ua825\ua826"+"\ua8c4\ua8c4"+"\ua926\ua92d"
-      + "\ua947\ua951"+"\uaa29\uaa2e"+"\uaa31\uaa32"+"\uaa35\uaa36"
-      + "\uaa43\uaa43"+"\uaa4c\uaa4c"+"\ufb1e\ufb1e"+"\ufe00\ufe0f"
-      + "\ufe20\ufe26"+"\uff9e\uff9f"+"\ud800\uddfd\ud800\uddfd"+"\ud802\ude01\ud802\ude03"
-      + "\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude0f"+"\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude3f"
-      + "\ud834\udd65\ud834\udd65"+"\ud834\udd67\ud834\udd69"+"\ud834\udd6e\ud834\udd72"+"\ud834\udd7b\ud834\udd82"
-      + "\ud834\udd85\ud834\udd8b"+"\ud834\uddaa\ud834\uddad"+"\ud834\ude42\ud834\ude44"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {graphemelink}
-        "\u094d\u094d"+"\u09cd\u09cd"+"\u0a4d\u0a4d"+"\u0acd\u0acd"
-      + "\u0b4d\u0b4d"+"\u0bcd\u0bcd"+"\u0c4d\u0c4d"+"\u0ccd\u0ccd"
-      + "\u0d4d\u0d4d"+"\u0dca\u0dca"+"\u0e3a\u0e3a"+"\u0f84\u0f84"
-      + "\u1039\u103a"+"\u1714\u1714"+"\u1734\u1734"+"\u17d2\u17d2"
-      + "\u1b44\u1b44"+"\u1baa\u1baa"+"\ua806\ua806"+"\ua8c4\ua8c4"
-      + "\ua953\ua953"+"\ud802\ude3f\ud802\ude3f",
-    // Unicode 5.1 property value: {greek}
-        "\u0370\u0373"+"\u0375\u0377"+"\u037a\u037d"+"\u0384\u0384"
-      + "\u0386\u0386"+"\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"
-      + "\u03a3\u03e1"+"\u03f0\u03ff"+"\u1d26\u1d2a"+"\u1d5d\u1d61"
-      + "\u1d66\u1d6a"+"\u1dbf\u1dbf"+"\u1f00\u1f15"+"\u1f18\u1f1d"
-      + "\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"
-      + "\u1fb6\u1fc4"+"\u1fc6\u1fd3"+"\u1fd6\u1fdb"+"\u1fdd\u1fef"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffe"+"\u2126\u2126"+"\ud800\udd40\ud800\udd8a"
-      + "\ud834\ude00\ud834\ude45",
-    // Unicode 5.1 property value: {gujarati}
-        "\u0a81\u0a83"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"
-      + "\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae3"
-      + "\u0ae6\u0aef"+"\u0af1\u0af1",
-    // Unicode 5.1 property value: {gurmukhi}
-        "\u0a01\u0a03"+"\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"
-      + "\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a51\u0a51"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a66\u0a75",
-    // Unicode 5.1 property value: {han}
-        "\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5"+"\u3005\u3005"
-      + "\u3007\u3007"+"\u3021\u3029"+"\u3038\u303b"+"\u3400\u4db5"
-      + "\u4e00\u9fc3"+"\uf900\ufa2d"+"\ufa30\ufa6a"+"\ufa70\ufad9"
-      + "\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {hangul}
-        "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u3131\u318e"
-      + "\u3200\u321e"+"\u3260\u327e"+"\uac00\ud7a3"+"\uffa0\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc",
-    // Unicode 5.1 property value: {hanunoo}
-        "\u1720\u1734",
-    // Unicode 5.1 property value: {hebrew}
-        "\u0591\u05c7"+"\u05d0\u05ea"+"\u05f0\u05f4"+"\ufb1d\ufb36"
-      + "\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"
-      + "\ufb46\ufb4f",
-    // Unicode 5.1 property value: {hexdigit}
-        "\u0030\u0039"+"\u0041\u0046"+"\u0061\u0066"+"\uff10\uff19"
-      + "\uff21\uff26"+"\uff41\uff46",
-    // Unicode 5.1 property value: {hiragana}
-        "\u3041\u3096"+"\u309d\u309f",
-    // Unicode 5.1 property value: {hyphen}
-        "\u002d\u002d"+"\u00ad\u00ad"+"\u058a\u058a"+"\u1806\u1806"
-      + "\u2010\u2011"+"\u2e17\u2e17"+"\u30fb\u30fb"+"\ufe63\ufe63"
-      + "\uff0d\uff0d"+"\uff65\uff65",
-    // Unicode 5.1 property value: {idcontinue}
-        "\u0030\u0039"+"\u0041\u005a"+"\u005f\u005f"+"\u0061\u007a"
-      + "\u00aa\u00aa"+"\u00b5\u00b5"+"\u00b7\u00b7"+"\u00ba\u00ba"
-      + "\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u02c1"+"\u02c6\u02d1"
-      + "\u02e0\u02e4"+"\u02ec\u02ec"+"\u02ee\u02ee"+"\u0300\u0374"
-      + "\u0376\u0377"+"\u037a\u037d"+"\u0386\u038a"+"\u038c\u038c"
-      + "\u038e\u03a1"+"\u03a3\u03f5"+"\u03f7\u0481"+"\u0483\u0487"
-      + "\u048a\u0523"+"\u0531\u0556"+"\u0559\u0559"+"\u0561\u0587"
-      + "\u0591\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"+"\u05c4\u05c5"
-      + "\u05c7\u05c7"+"\u05d0\u05ea"+"\u05f0\u05f2"+"\u0610\u061a"
-      + "\u0621\u065e"+"\u0660\u0669"+"\u066e\u06d3"+"\u06d5\u06dc"
-      + "\u06df\u06e8"+"\u06ea\u06fc"+"\u06ff\u06ff"+"\u0710\u074a"
-      + "\u074d\u07b1"+"\u07c0\u07f5"+"\u07fa\u07fa"+"\u0901\u0939"
-      + "\u093c\u094d"+"\u0950\u0954"+"\u0958\u0963"+"\u0966\u096f"
-      + "\u0971\u0972"+"\u097b\u097f"+"\u0981\u0983"+"\u0985\u098c"
-      + "\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"
-      + "\u09b6\u09b9"+"\u09bc\u09c4"+"\u09c7\u09c8"+"\u09cb\u09ce"
-      + "\u09d7\u09d7"+"\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09f1"
-      + "\u0a01\u0a03"+"\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"
-      + "\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a51\u0a51"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a66\u0a75"
-      + "\u0a81\u0a83"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"
-      + "\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae3"
-      + "\u0ae6\u0aef"+"\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"
-      + "\u0b3c\u0b44"+"\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"
-      + "\u0b5c\u0b5d"+"\u0b5f\u0b63"+"\u0b66\u0b6f"+"\u0b71\u0b71"
-      + "\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcd"+"\u0bd0\u0bd0"+"\u0bd7\u0bd7"+"\u0be6\u0bef"
-      + "\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"
-      + "\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c58\u0c59"+"\u0c60\u0c63"
-      + "\u0c66\u0c6f"+"\u0c82\u0c83"+"\u0c85\u0c8c"+"\u0c8e\u0c90"
-      + "\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cbc\u0cc4"
-      + "\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"+"\u0cde\u0cde"
-      + "\u0ce0\u0ce3"+"\u0ce6\u0cef"+"\u0d02\u0d03"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d44"
-      + "\u0d46\u0d48"+"\u0d4a\u0d4d"+"\u0d57\u0d57"+"\u0d60\u0d63"
-      + "\u0d66\u0d6f"+"\u0d7a\u0d7f"+"\u0d82\u0d83"+"\u0d85\u0d96"
-      + "\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"
-      + "\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e01\u0e3a"+"\u0e40\u0e4e"+"\u0e50\u0e59"
-      + "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"
-      + "\u0ed0\u0ed9"+"\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f18\u0f19"
-      + "\u0f20\u0f29"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f3e\u0f47"+"\u0f49\u0f6c"+"\u0f71\u0f84"+"\u0f86\u0f8b"
-      + "\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u1000\u1049"
-      + "\u1050\u1099"+"\u10a0\u10c5"+"\u10d0\u10fa"+"\u10fc\u10fc"
-      + "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1248"
-      + "\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"
-      + "\u1260\u1288"+"\u128a\u128d"+"\u1290\u12b0"+"\u12b2\u12b5"
-      + "\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12d6"
-      + "\u12d8\u1310"+"\u1312\u1315"+"\u1318\u135a"+"\u135f\u135f"
-      + "\u1369\u1371"+"\u1380\u138f"+"\u13a0\u13f4"+"\u1401\u166c"
-      + "\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"
-      + "\u1700\u170c"+"\u170e\u1714"+"\u1720\u1734"+"\u1740\u1753"
-      + "\u1760\u176c"+"\u176e\u1770"+"\u1772\u1773"+"\u1780\u17b3"
-      + "\u17b6\u17d3"+"\u17d7\u17d7"+"\u17dc\u17dd"+"\u17e0\u17e9"
-      + "\u180b\u180d"+"\u1810\u1819"+"\u1820\u1877"+"\u1880\u18aa"
-      + "\u1900\u191c"+"\u1920\u192b"+"\u1930\u193b"+"\u1946\u196d"
-      + "\u1970\u1974"+"\u1980\u19a9"+"\u19b0\u19c9"+"\u19d0\u19d9"
-      + "\u1a00\u1a1b"+"\u1b00\u1b4b"+"\u1b50\u1b59"+"\u1b6b\u1b73"
-      + "\u1b80\u1baa"+"\u1bae\u1bb9"+"\u1c00\u1c37"+"\u1c40\u1c49"
-      + "\u1c4d\u1c7d"+"\u1d00\u1de6"+"\u1dfe\u1f15"+"\u1f18\u1f1d"
-      + "\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"
-      + "\u1fb6\u1fbc"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"+"\u1fc6\u1fcc"
-      + "\u1fd0\u1fd3"+"\u1fd6\u1fdb"+"\u1fe0\u1fec"+"\u1ff2\u1ff4"
-      + "\u1ff6\u1ffc"+"\u203f\u2040"+"\u2054\u2054"+"\u2071\u2071"
-      + "\u207f\u207f"+"\u2090\u2094"+"\u20d0\u20dc"+"\u20e1\u20e1"
-      + "\u20e5\u20f0"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2118\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u2139"+"\u213c\u213f"+"\u2145\u2149"
-      + "\u214e\u214e"+"\u2160\u2188"+"\u2c00\u2c2e"+"\u2c30\u2c5e"
-      + "\u2c60\u2c6f"+"\u2c71\u2c7d"+"\u2c80\u2ce4"+"\u2d00\u2d25"
-      + "\u2d30\u2d65"+"\u2d6f\u2d6f"+"\u2d80\u2d96"+"\u2da0\u2da6"
-      + "\u2da8\u2dae"+"\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"
-      + "\u2dc8\u2dce"+"\u2dd0\u2dd6"+"\u2dd8\u2dde"+"\u2de0\u2dff"
-      + "\u3005\u3007"+"\u3021\u302f"+"\u3031\u3035"+"\u3038\u303c"
-      + "\u3041\u3096"+"\u3099\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"
-      + "\u3105\u312d"+"\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"
-      + "\u3400\u4db5"+"\u4e00\u9fc3"+"\ua000\ua48c"+"\ua500\ua60c"
-      + "\ua610\ua62b"+"\ua640\ua65f"+"\ua662\ua66f"+"\ua67c\ua67d"
-      + "\ua67f\ua697"+"\ua717\ua71f"+"\ua722\ua788"+"\ua78b\ua78c"
-      + "\ua7fb\ua827"+"\ua840\ua873"+"\ua880\ua8c4"+"\ua8d0\ua8d9"
-      + "\ua900\ua92d"+"\ua930\ua953"+"\uaa00\uaa36"+"\uaa40\uaa4d"
-      + "\uaa50\uaa59"+"\uac00\ud7a3"+"\uf900\ufa2d"+"\ufa30\ufa6a"
-      + "\ufa70\ufad9"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb28"
-      + "\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"+"\ufd50\ufd8f"
-      + "\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe00\ufe0f"+"\ufe20\ufe26"
-      + "\ufe33\ufe34"+"\ufe4d\ufe4f"+"\ufe70\ufe74"+"\ufe76\ufefc"
-      + "\uff10\uff19"+"\uff21\uff3a"+"\uff3f\uff3f"+"\uff41\uff5a"
-      + "\uff66\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"
-      + "\uffda\uffdc"+"\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"
-      + "\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"
-      + "\ud800\udd40\ud800\udd74"+"\ud800\uddfd\ud800\uddfd"+"\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"
-      + "\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"+"\ud800\udf80\ud800\udf9d"+"\ud800\udfa0\ud800\udfc3"
-      + "\ud800\udfc8\ud800\udfcf"+"\ud800\udfd1\ud800\udfd5"+"\ud801\udc00\ud801\udc9d"+"\ud801\udca0\ud801\udca9"
-      + "\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"
-      + "\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd15"+"\ud802\udd20\ud802\udd39"
-      + "\ud802\ude00\ud802\ude03"+"\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude13"+"\ud802\ude15\ud802\ude17"
-      + "\ud802\ude19\ud802\ude33"+"\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude3f"+"\ud808\udc00\ud808\udf6e"
-      + "\ud809\udc00\ud809\udc62"+"\ud834\udd65\ud834\udd69"+"\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"
-      + "\ud834\udd85\ud834\udd8b"+"\ud834\uddaa\ud834\uddad"+"\ud834\ude42\ud834\ude44"+"\ud835\udc00\ud835\udc54"
-      + "\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"
-      + "\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"
-      + "\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"
-      + "\ud835\udfc4\ud835\udfcb"+"\ud835\udfce\ud835\udfff"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d"
-      + "\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {ideographic}
-        "\u3006\u3007"+"\u3021\u3029"+"\u3038\u303a"+"\u3400\u4db5"
-      + "\u4e00\u9fc3"+"\uf900\ufa2d"+"\ufa30\ufa6a"+"\ufa70\ufad9"
-      + "\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {idsbinaryoperator}
-        "\u2ff0\u2ff1"+"\u2ff4\u2ffb",
-    // Unicode 5.1 property value: {idstart}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"
-      + "\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u02c1"
-      + "\u02c6\u02d1"+"\u02e0\u02e4"+"\u02ec\u02ec"+"\u02ee\u02ee"
-      + "\u0370\u0374"+"\u0376\u0377"+"\u037a\u037d"+"\u0386\u0386"
-      + "\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u03f5"
-      + "\u03f7\u0481"+"\u048a\u0523"+"\u0531\u0556"+"\u0559\u0559"
-      + "\u0561\u0587"+"\u05d0\u05ea"+"\u05f0\u05f2"+"\u0621\u064a"
-      + "\u066e\u066f"+"\u0671\u06d3"+"\u06d5\u06d5"+"\u06e5\u06e6"
-      + "\u06ee\u06ef"+"\u06fa\u06fc"+"\u06ff\u06ff"+"\u0710\u0710"
-      + "\u0712\u072f"+"\u074d\u07a5"+"\u07b1\u07b1"+"\u07ca\u07ea"
-      + "\u07f4\u07f5"+"\u07fa\u07fa"+"\u0904\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0971\u0972"+"\u097b\u097f"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bd\u09bd"+"\u09ce\u09ce"
-      + "\u09dc\u09dd"+"\u09df\u09e1"+"\u09f0\u09f1"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a72\u0a74"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0abd"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae1"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"
-      + "\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b71\u0b71"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bd0\u0bd0"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3d\u0c3d"+"\u0c58\u0c59"+"\u0c60\u0c61"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbd\u0cbd"+"\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d3d"
-      + "\u0d60\u0d61"+"\u0d7a\u0d7f"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0e01\u0e30"
-      + "\u0e32\u0e33"+"\u0e40\u0e46"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb0"+"\u0eb2\u0eb3"+"\u0ebd\u0ebd"
-      + "\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0edc\u0edd"+"\u0f00\u0f00"
-      + "\u0f40\u0f47"+"\u0f49\u0f6c"+"\u0f88\u0f8b"+"\u1000\u102a"
-      + "\u103f\u103f"+"\u1050\u1055"+"\u105a\u105d"+"\u1061\u1061"
-      + "\u1065\u1066"+"\u106e\u1070"+"\u1075\u1081"+"\u108e\u108e"
-      + "\u10a0\u10c5"+"\u10d0\u10fa"+"\u10fc\u10fc"+"\u1100\u1159"
-      + "\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1248"+"\u124a\u124d"
-      + "\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"+"\u1260\u1288"
-      + "\u128a\u128d"+"\u1290\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"
-      + "\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12d6"+"\u12d8\u1310"
-      + "\u1312\u1315"+"\u1318\u135a"+"\u1380\u138f"+"\u13a0\u13f4"
-      + "\u1401\u166c"+"\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"
-      + "\u16ee\u16f0"+"\u1700\u170c"+"\u170e\u1711"+"\u1720\u1731"
-      + "\u1740\u1751"+"\u1760\u176c"+"\u176e\u1770"+"\u1780\u17b3"
-      + "\u17d7\u17d7"+"\u17dc\u17dc"+"\u1820\u1877"+"\u1880\u18a8"
-      + "\u18aa\u18aa"+"\u1900\u191c"+"\u1950\u196d"+"\u1970\u1974"
-      + "\u1980\u19a9"+"\u19c1\u19c7"+"\u1a00\u1a16"+"\u1b05\u1b33"
-      + "\u1b45\u1b4b"+"\u1b83\u1ba0"+"\u1bae\u1baf"+"\u1c00\u1c23"
-      + "\u1c4d\u1c4f"+"\u1c5a\u1c7d"+"\u1d00\u1dbf"+"\u1e00\u1f15"
-      + "\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"
-      + "\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"
-      + "\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"
-      + "\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"+"\u1fe0\u1fec"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u2090\u2094"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2118\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u2139"+"\u213c\u213f"+"\u2145\u2149"
-      + "\u214e\u214e"+"\u2160\u2188"+"\u2c00\u2c2e"+"\u2c30\u2c5e"
-      + "\u2c60\u2c6f"+"\u2c71\u2c7d"+"\u2c80\u2ce4"+"\u2d00\u2d25"
-      + "\u2d30\u2d65"+"\u2d6f\u2d6f"+"\u2d80\u2d96"+"\u2da0\u2da6"
-      + "\u2da8\u2dae"+"\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"
-      + "\u2dc8\u2dce"+"\u2dd0\u2dd6"+"\u2dd8\u2dde"+"\u3005\u3007"
-      + "\u3021\u3029"+"\u3031\u3035"+"\u3038\u303c"+"\u3041\u3096"
-      + "\u309b\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"+"\u3105\u312d"
-      + "\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"
-      + "\u4e00\u9fc3"+"\ua000\ua48c"+"\ua500\ua60c"+"\ua610\ua61f"
-      + "\ua62a\ua62b"+"\ua640\ua65f"+"\ua662\ua66e"+"\ua67f\ua697"
-      + "\ua717\ua71f"+"\ua722\ua788"+"\ua78b\ua78c"+"\ua7fb\ua801"
-      + "\ua803\ua805"+"\ua807\ua80a"+"\ua80c\ua822"+"\ua840\ua873"
-      + "\ua882\ua8b3"+"\ua90a\ua925"+"\ua930\ua946"+"\uaa00\uaa28"
-      + "\uaa40\uaa42"+"\uaa44\uaa4b"+"\uac00\ud7a3"+"\uf900\ufa2d"
-      + "\ufa30\ufa6a"+"\ufa70\ufad9"+"\ufb00\ufb06"+"\ufb13\ufb17"
-      + "\ufb1d\ufb1d"+"\ufb1f\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"
-      + "\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"
-      + "\ufbd3\ufd3d"+"\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfb"
-      + "\ufe70\ufe74"+"\ufe76\ufefc"+"\uff21\uff3a"+"\uff41\uff5a"
-      + "\uff66\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"
-      + "\uffda\uffdc"+"\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"
-      + "\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"
-      + "\ud800\udd40\ud800\udd74"+"\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"
-      + "\ud800\udf30\ud800\udf4a"+"\ud800\udf80\ud800\udf9d"+"\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"
-      + "\ud800\udfd1\ud800\udfd5"+"\ud801\udc00\ud801\udc9d"+"\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"
-      + "\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f"
-      + "\ud802\udd00\ud802\udd15"+"\ud802\udd20\ud802\udd39"+"\ud802\ude00\ud802\ude00"+"\ud802\ude10\ud802\ude13"
-      + "\ud802\ude15\ud802\ude17"+"\ud802\ude19\ud802\ude33"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"
-      + "\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"
-      + "\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"
-      + "\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udec0"
-      + "\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"
-      + "\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"
-      + "\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfcb"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {idstrinaryoperator}
-        "\u2ff2\u2ff3",
-    // Unicode 5.1 property value: {inherited}
-        "\u0300\u036f"+"\u064b\u0655"+"\u0670\u0670"+"\u0951\u0952"
-      + "\u1dc0\u1de6"+"\u1dfe\u1dff"+"\u200c\u200d"+"\u20d0\u20f0"
-      + "\u302a\u302f"+"\u3099\u309a"+"\ufe00\ufe0f"+"\ufe20\ufe26"
-      + "\ud800\uddfd\ud800\uddfd"+"\ud834\udd67\ud834\udd69"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {joincontrol}
-        "\u200c\u200d",
-    // Unicode 5.1 property value: {kannada}
-        "\u0c82\u0c83"+"\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"
-      + "\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cbc\u0cc4"+"\u0cc6\u0cc8"
-      + "\u0cca\u0ccd"+"\u0cd5\u0cd6"+"\u0cde\u0cde"+"\u0ce0\u0ce3"
-      + "\u0ce6\u0cef",
-    // Unicode 5.1 property value: {katakana}
-        "\u30a1\u30fa"+"\u30fd\u30ff"+"\u31f0\u31ff"+"\u32d0\u32fe"
-      + "\u3300\u3357"+"\uff66\uff6f"+"\uff71\uff9d",
-    // Unicode 5.1 property value: {kayahli}
-        "\ua900\ua92f",
-    // Unicode 5.1 property value: {kharoshthi}
-        "\ud802\ude00\ud802\ude03"+"\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude13"+"\ud802\ude15\ud802\ude17"
-      + "\ud802\ude19\ud802\ude33"+"\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude47"+"\ud802\ude50\ud802\ude58",
-    // Unicode 5.1 property value: {khmer}
-        "\u1780\u17dd"+"\u17e0\u17e9"+"\u17f0\u17f9"+"\u19e0\u19ff",
-    // Unicode 5.1 property value: {lao}
-        "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"
-      + "\u0ed0\u0ed9"+"\u0edc\u0edd",
-    // Unicode 5.1 property value: {latin}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00ba\u00ba"
-      + "\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u02b8"+"\u02e0\u02e4"
-      + "\u1d00\u1d25"+"\u1d2c\u1d5c"+"\u1d62\u1d65"+"\u1d6b\u1d77"
-      + "\u1d79\u1dbe"+"\u1e00\u1eff"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u2090\u2094"+"\u212a\u212b"+"\u2132\u2132"+"\u214e\u214e"
-      + "\u2160\u2188"+"\u2c60\u2c6f"+"\u2c71\u2c7d"+"\ua722\ua787"
-      + "\ua78b\ua78c"+"\ua7fb\ua7ff"+"\ufb00\ufb06"+"\uff21\uff3a"
-      + "\uff41\uff5a",
-    // Unicode 5.1 property value: {lepcha}
-        "\u1c00\u1c37"+"\u1c3b\u1c49"+"\u1c4d\u1c4f",
-    // Unicode 5.1 property value: {limbu}
-        "\u1900\u191c"+"\u1920\u192b"+"\u1930\u193b"+"\u1940\u1940"
-      + "\u1944\u194f",
-    // Unicode 5.1 property value: {linearb}
-        "\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"+"\ud800\udc3c\ud800\udc3d"
-      + "\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa",
-    // Unicode 5.1 property value: {linebreak=alphabetic}
-        "\u0023\u0023"+"\u0026\u0026"+"\u002a\u002a"+"\u003c\u003e"
-      + "\u0040\u005a"+"\u005e\u007a"+"\u007e\u007e"+"\u00a6\u00a6"
-      + "\u00a9\u00a9"+"\u00ac\u00ac"+"\u00ae\u00af"+"\u00b5\u00b5"
-      + "\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u02c6"+"\u02ce\u02cf"
-      + "\u02d1\u02d7"+"\u02dc\u02dc"+"\u02de\u02de"+"\u02e0\u02ff"
-      + "\u0370\u0377"+"\u037a\u037d"+"\u0384\u038a"+"\u038c\u038c"
-      + "\u038e\u03a1"+"\u03a3\u0482"+"\u048a\u0523"+"\u0531\u0556"
-      + "\u0559\u055f"+"\u0561\u0587"+"\u05c0\u05c0"+"\u05c3\u05c3"
-      + "\u05d0\u05ea"+"\u05f0\u05f4"+"\u0600\u0603"+"\u0606\u0608"
-      + "\u060e\u060f"+"\u0621\u064a"+"\u066d\u066f"+"\u0671\u06d3"
-      + "\u06d5\u06d5"+"\u06dd\u06dd"+"\u06e5\u06e6"+"\u06e9\u06e9"
-      + "\u06ee\u06ef"+"\u06fa\u070d"+"\u070f\u0710"+"\u0712\u072f"
-      + "\u074d\u07a5"+"\u07b1\u07b1"+"\u07ca\u07ea"+"\u07f4\u07f7"
-      + "\u07fa\u07fa"+"\u0904\u0939"+"\u093d\u093d"+"\u0950\u0950"
-      + "\u0958\u0961"+"\u0970\u0972"+"\u097b\u097f"+"\u0985\u098c"
-      + "\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"
-      + "\u09b6\u09b9"+"\u09bd\u09bd"+"\u09ce\u09ce"+"\u09dc\u09dd"
-      + "\u09df\u09e1"+"\u09f0\u09f1"+"\u09f4\u09fa"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a72\u0a74"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0abd"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae1"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"
-      + "\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b70\u0b71"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bd0\u0bd0"+"\u0bf0\u0bf8"
-      + "\u0bfa\u0bfa"+"\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"
-      + "\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c3d"+"\u0c58\u0c59"
-      + "\u0c60\u0c61"+"\u0c78\u0c7f"+"\u0c85\u0c8c"+"\u0c8e\u0c90"
-      + "\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cbd\u0cbd"
-      + "\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0cf1\u0cf2"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d3d"
-      + "\u0d60\u0d61"+"\u0d70\u0d75"+"\u0d7a\u0d7f"+"\u0d85\u0d96"
-      + "\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"
-      + "\u0df4\u0df4"+"\u0e4f\u0e4f"+"\u0f00\u0f00"+"\u0f05\u0f05"
-      + "\u0f13\u0f13"+"\u0f15\u0f17"+"\u0f1a\u0f1f"+"\u0f2a\u0f33"
-      + "\u0f36\u0f36"+"\u0f38\u0f38"+"\u0f40\u0f47"+"\u0f49\u0f6c"
-      + "\u0f88\u0f8b"+"\u0fc0\u0fc5"+"\u0fc7\u0fcc"+"\u0fce\u0fcf"
-      + "\u0fd4\u0fd4"+"\u104c\u104f"+"\u10a0\u10c5"+"\u10d0\u10fc"
-      + "\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"
-      + "\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"+"\u1290\u12b0"
-      + "\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"
-      + "\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"+"\u1318\u135a"
-      + "\u1360\u1360"+"\u1362\u137c"+"\u1380\u1399"+"\u13a0\u13f4"
-      + "\u1401\u1676"+"\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"
-      + "\u1700\u170c"+"\u170e\u1711"+"\u1720\u1731"+"\u1740\u1751"
-      + "\u1760\u176c"+"\u176e\u1770"+"\u17d9\u17d9"+"\u17f0\u17f9"
-      + "\u1800\u1801"+"\u1807\u1807"+"\u180a\u180a"+"\u1820\u1877"
-      + "\u1880\u18a8"+"\u18aa\u18aa"+"\u1900\u191c"+"\u1940\u1940"
-      + "\u19e0\u1a16"+"\u1a1e\u1a1f"+"\u1b05\u1b33"+"\u1b45\u1b4b"
-      + "\u1b61\u1b6a"+"\u1b74\u1b7c"+"\u1b83\u1ba0"+"\u1bae\u1baf"
-      + "\u1c00\u1c23"+"\u1c4d\u1c4f"+"\u1c5a\u1c7d"+"\u1d00\u1dbf"
-      + "\u1e00\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"
-      + "\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"
-      + "\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fc4"+"\u1fc6\u1fd3"
-      + "\u1fd6\u1fdb"+"\u1fdd\u1fef"+"\u1ff2\u1ff4"+"\u1ff6\u1ffc"
-      + "\u1ffe\u1ffe"+"\u2017\u2017"+"\u2022\u2023"+"\u2038\u2038"
-      + "\u203e\u2043"+"\u204a\u2055"+"\u2057\u2057"+"\u205c\u205c"
-      + "\u2061\u2064"+"\u2070\u2071"+"\u2075\u207c"+"\u2080\u2080"
-      + "\u2085\u208c"+"\u2090\u2094"+"\u2100\u2102"+"\u2104\u2104"
-      + "\u2106\u2108"+"\u210a\u2112"+"\u2114\u2115"+"\u2117\u2120"
-      + "\u2123\u212a"+"\u212c\u214f"+"\u2153\u2153"+"\u2156\u215a"
-      + "\u215c\u215d"+"\u215f\u215f"+"\u216c\u216f"+"\u217a\u2188"
-      + "\u219a\u21d1"+"\u21d3\u21d3"+"\u21d5\u21ff"+"\u2201\u2201"
-      + "\u2204\u2206"+"\u2209\u220a"+"\u220c\u220e"+"\u2210\u2210"
-      + "\u2214\u2214"+"\u2216\u2219"+"\u221b\u221c"+"\u2221\u2222"
-      + "\u2224\u2224"+"\u2226\u2226"+"\u222d\u222d"+"\u222f\u2233"
-      + "\u2238\u223b"+"\u223e\u2247"+"\u2249\u224b"+"\u224d\u2251"
-      + "\u2253\u225f"+"\u2262\u2263"+"\u2268\u2269"+"\u226c\u226d"
-      + "\u2270\u2281"+"\u2284\u2285"+"\u2288\u2294"+"\u2296\u2298"
-      + "\u229a\u22a4"+"\u22a6\u22be"+"\u22c0\u2311"+"\u2313\u2328"
-      + "\u232b\u23e7"+"\u2400\u2426"+"\u2440\u244a"+"\u24ff\u24ff"
-      + "\u254c\u254f"+"\u2575\u257f"+"\u2590\u2591"+"\u2596\u259f"
-      + "\u25a2\u25a2"+"\u25aa\u25b1"+"\u25b4\u25b5"+"\u25b8\u25bb"
-      + "\u25be\u25bf"+"\u25c2\u25c5"+"\u25c9\u25ca"+"\u25cc\u25cd"
-      + "\u25d2\u25e1"+"\u25e6\u25ee"+"\u25f0\u2604"+"\u2607\u2608"
-      + "\u260a\u260d"+"\u2610\u2613"+"\u2618\u261b"+"\u261d\u261d"
-      + "\u261f\u263f"+"\u2641\u2641"+"\u2643\u265f"+"\u2662\u2662"
-      + "\u2666\u2666"+"\u266b\u266b"+"\u266e\u266e"+"\u2670\u269d"
-      + "\u26a0\u26bc"+"\u26c0\u26c3"+"\u2701\u2704"+"\u2706\u2709"
-      + "\u270c\u2727"+"\u2729\u274b"+"\u274d\u274d"+"\u274f\u2752"
-      + "\u2756\u2756"+"\u2758\u275a"+"\u2761\u2761"+"\u2764\u2767"
-      + "\u2794\u2794"+"\u2798\u27af"+"\u27b1\u27be"+"\u27c0\u27c4"
-      + "\u27c7\u27ca"+"\u27cc\u27cc"+"\u27d0\u27e5"+"\u27f0\u2982"
-      + "\u2999\u29d7"+"\u29dc\u29fb"+"\u29fe\u2b4c"+"\u2b50\u2b54"
-      + "\u2c00\u2c2e"+"\u2c30\u2c5e"+"\u2c60\u2c6f"+"\u2c71\u2c7d"
-      + "\u2c80\u2cea"+"\u2cfd\u2cfd"+"\u2d00\u2d25"+"\u2d30\u2d65"
-      + "\u2d6f\u2d6f"+"\u2d80\u2d96"+"\u2da0\u2da6"+"\u2da8\u2dae"
-      + "\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"+"\u2dc8\u2dce"
-      + "\u2dd0\u2dd6"+"\u2dd8\u2dde"+"\u2e16\u2e16"+"\u2e1a\u2e1b"
-      + "\u2e1e\u2e1f"+"\u2e2f\u2e2f"+"\u4dc0\u4dff"+"\ua500\ua60c"
-      + "\ua610\ua61f"+"\ua62a\ua62b"+"\ua640\ua65f"+"\ua662\ua66e"
-      + "\ua673\ua673"+"\ua67e\ua697"+"\ua700\ua78c"+"\ua7fb\ua801"
-      + "\ua803\ua805"+"\ua807\ua80a"+"\ua80c\ua822"+"\ua828\ua82b"
-      + "\ua840\ua873"+"\ua882\ua8b3"+"\ua90a\ua925"+"\ua930\ua946"
-      + "\ua95f\ua95f"+"\uaa00\uaa28"+"\uaa40\uaa42"+"\uaa44\uaa4b"
-      + "\uaa5c\uaa5c"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb1d"
-      + "\ufb1f\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"+"\ufd50\ufd8f"
-      + "\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufdfd\ufdfd"+"\ufe70\ufe74"
-      + "\ufe76\ufefc"+"\uff66\uff66"+"\uff71\uff9d"+"\uffa0\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\uffe8\uffee"+"\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"
-      + "\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"
-      + "\ud800\udd07\ud800\udd33"+"\ud800\udd37\ud800\udd8a"+"\ud800\udd90\ud800\udd9b"+"\ud800\uddd0\ud800\uddfc"
-      + "\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf20\ud800\udf23"
-      + "\ud800\udf30\ud800\udf4a"+"\ud800\udf80\ud800\udf9d"+"\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"
-      + "\ud800\udfd1\ud800\udfd5"+"\ud801\udc00\ud801\udc9d"+"\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"
-      + "\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f"
-      + "\ud802\udd00\ud802\udd19"+"\ud802\udd20\ud802\udd39"+"\ud802\udd3f\ud802\udd3f"+"\ud802\ude00\ud802\ude00"
-      + "\ud802\ude10\ud802\ude13"+"\ud802\ude15\ud802\ude17"+"\ud802\ude19\ud802\ude33"+"\ud802\ude40\ud802\ude47"
-      + "\ud802\ude58\ud802\ude58"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"+"\ud834\udc00\ud834\udcf5"
-      + "\ud834\udd00\ud834\udd26"+"\ud834\udd29\ud834\udd64"+"\ud834\udd6a\ud834\udd6c"+"\ud834\udd83\ud834\udd84"
-      + "\ud834\udd8c\ud834\udda9"+"\ud834\uddae\ud834\udddd"+"\ud834\ude00\ud834\ude41"+"\ud834\ude45\ud834\ude45"
-      + "\ud834\udf00\ud834\udf56"+"\ud834\udf60\ud834\udf71"+"\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"
-      + "\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"
-      + "\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"
-      + "\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"
-      + "\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"
-      + "\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udfcb"+"\ud83c\udc00\ud83c\udc2b"+"\ud83c\udc30\ud83c\udc93",
-    // Unicode 5.1 property value: {linebreak=ambiguous}
-        "\u00a7\u00a8"+"\u00aa\u00aa"+"\u00b2\u00b3"+"\u00b6\u00ba"
-      + "\u00bc\u00be"+"\u00d7\u00d7"+"\u00f7\u00f7"+"\u02c7\u02c7"
-      + "\u02c9\u02cb"+"\u02cd\u02cd"+"\u02d0\u02d0"+"\u02d8\u02db"
-      + "\u02dd\u02dd"+"\u2015\u2016"+"\u2020\u2021"+"\u203b\u203b"
-      + "\u2074\u2074"+"\u207f\u207f"+"\u2081\u2084"+"\u2105\u2105"
-      + "\u2113\u2113"+"\u2121\u2122"+"\u212b\u212b"+"\u2154\u2155"
-      + "\u215b\u215b"+"\u215e\u215e"+"\u2160\u216b"+"\u2170\u2179"
-      + "\u2190\u2199"+"\u21d2\u21d2"+"\u21d4\u21d4"+"\u2200\u2200"
-      + "\u2202\u2203"+"\u2207\u2208"+"\u220b\u220b"+"\u220f\u220f"
-      + "\u2211\u2211"+"\u2215\u2215"+"\u221a\u221a"+"\u221d\u2220"
-      + "\u2223\u2223"+"\u2225\u2225"+"\u2227\u222c"+"\u222e\u222e"
-      + "\u2234\u2237"+"\u223c\u223d"+"\u2248\u2248"+"\u224c\u224c"
-      + "\u2252\u2252"+"\u2260\u2261"+"\u2264\u2267"+"\u226a\u226b"
-      + "\u226e\u226f"+"\u2282\u2283"+"\u2286\u2287"+"\u2295\u2295"
-      + "\u2299\u2299"+"\u22a5\u22a5"+"\u22bf\u22bf"+"\u2312\u2312"
-      + "\u2460\u24fe"+"\u2500\u254b"+"\u2550\u2574"+"\u2580\u258f"
-      + "\u2592\u2595"+"\u25a0\u25a1"+"\u25a3\u25a9"+"\u25b2\u25b3"
-      + "\u25b6\u25b7"+"\u25bc\u25bd"+"\u25c0\u25c1"+"\u25c6\u25c8"
-      + "\u25cb\u25cb"+"\u25ce\u25d1"+"\u25e2\u25e5"+"\u25ef\u25ef"
-      + "\u2605\u2606"+"\u2609\u2609"+"\u260e\u260f"+"\u2614\u2617"
-      + "\u261c\u261c"+"\u261e\u261e"+"\u2640\u2640"+"\u2642\u2642"
-      + "\u2660\u2661"+"\u2663\u2665"+"\u2667\u266a"+"\u266c\u266d"
-      + "\u266f\u266f"+"\u2776\u2793"+"\ufffd\ufffd",
-    // Unicode 5.1 property value: {linebreak=breakafter}
-        "\t\t"+"\u007c\u007c"+"\u00ad\u00ad"+"\u058a\u058a"
-      + "\u05be\u05be"+"\u0964\u0965"+"\u0e5a\u0e5b"+"\u0f0b\u0f0b"
-      + "\u0f34\u0f34"+"\u0f7f\u0f7f"+"\u0f85\u0f85"+"\u0fbe\u0fbf"
-      + "\u0fd2\u0fd2"+"\u104a\u104b"+"\u1361\u1361"+"\u1680\u1680"
-      + "\u16eb\u16ed"+"\u1735\u1736"+"\u17d4\u17d5"+"\u17d8\u17d8"
-      + "\u17da\u17da"+"\u1804\u1805"+"\u1b5a\u1b60"+"\u1c3b\u1c3f"
-      + "\u1c7e\u1c7f"+"\u2000\u2006"+"\u2008\u200a"+"\u2010\u2010"
-      + "\u2012\u2013"+"\u2027\u2027"+"\u2056\u2056"+"\u2058\u205b"
-      + "\u205d\u205f"+"\u2cfa\u2cfc"+"\u2cff\u2cff"+"\u2e0e\u2e15"
-      + "\u2e17\u2e17"+"\u2e19\u2e19"+"\u2e2a\u2e2d"+"\u2e30\u2e30"
-      + "\ua60d\ua60d"+"\ua60f\ua60f"+"\ua8ce\ua8cf"+"\ua92e\ua92f"
-      + "\uaa5d\uaa5f"+"\ud800\udd00\ud800\udd02"+"\ud800\udf9f\ud800\udf9f"+"\ud800\udfd0\ud800\udfd0"
-      + "\ud802\udd1f\ud802\udd1f"+"\ud802\ude50\ud802\ude57"+"\ud809\udc70\ud809\udc73",
-    // Unicode 5.1 property value: {linebreak=breakbefore}
-        "\u00b4\u00b4"+"\u02c8\u02c8"+"\u02cc\u02cc"+"\u02df\u02df"
-      + "\u0f01\u0f04"+"\u0f06\u0f07"+"\u0f09\u0f0a"+"\u0fd0\u0fd1"
-      + "\u0fd3\u0fd3"+"\u1806\u1806"+"\u1ffd\u1ffd"+"\ua874\ua875",
-    // Unicode 5.1 property value: {linebreak=breakboth}
-        "\u2014\u2014",
-    // Unicode 5.1 property value: {linebreak=breaksymbols}
-        "\u002f\u002f",
-    // Unicode 5.1 property value: {linebreak=carriagereturn}
-        "\r\r",
-    // Unicode 5.1 property value: {linebreak=closepunctuation}
-        "\u0029\u0029"+"\u005d\u005d"+"\u007d\u007d"+"\u0f3b\u0f3b"
-      + "\u0f3d\u0f3d"+"\u169c\u169c"+"\u2046\u2046"+"\u207e\u207e"
-      + "\u208e\u208e"+"\u232a\u232a"+"\u2769\u2769"+"\u276b\u276b"
-      + "\u276d\u276d"+"\u276f\u276f"+"\u2771\u2771"+"\u2773\u2773"
-      + "\u2775\u2775"+"\u27c6\u27c6"+"\u27e7\u27e7"+"\u27e9\u27e9"
-      + "\u27eb\u27eb"+"\u27ed\u27ed"+"\u27ef\u27ef"+"\u2984\u2984"
-      + "\u2986\u2986"+"\u2988\u2988"+"\u298a\u298a"+"\u298c\u298c"
-      + "\u298e\u298e"+"\u2990\u2990"+"\u2992\u2992"+"\u2994\u2994"
-      + "\u2996\u2996"+"\u2998\u2998"+"\u29d9\u29d9"+"\u29db\u29db"
-      + "\u29fd\u29fd"+"\u2e23\u2e23"+"\u2e25\u2e25"+"\u2e27\u2e27"
-      + "\u2e29\u2e29"+"\u3001\u3002"+"\u3009\u3009"+"\u300b\u300b"
-      + "\u300d\u300d"+"\u300f\u300f"+"\u3011\u3011"+"\u3015\u3015"
-      + "\u3017\u3017"+"\u3019\u3019"+"\u301b\u301b"+"\u301e\u301f"
-      + "\ufd3f\ufd3f"+"\ufe11\ufe12"+"\ufe18\ufe18"+"\ufe36\ufe36"
-      + "\ufe38\ufe38"+"\ufe3a\ufe3a"+"\ufe3c\ufe3c"+"\ufe3e\ufe3e"
-      + "\ufe40\ufe40"+"\ufe42\ufe42"+"\ufe44\ufe44"+"\ufe48\ufe48"
-      + "\ufe50\ufe50"+"\ufe52\ufe52"+"\ufe5a\ufe5a"+"\ufe5c\ufe5c"
-      + "\ufe5e\ufe5e"+"\uff09\uff09"+"\uff0c\uff0c"+"\uff0e\uff0e"
-      + "\uff3d\uff3d"+"\uff5d\uff5d"+"\uff60\uff61"+"\uff63\uff64",
-    // Unicode 5.1 property value: {linebreak=combiningmark}
-        "\000\u0008"+"\u000e\u001f"+"\u007f\u0084"+"\u0086\u009f"
-      + "\u0300\u034e"+"\u0350\u035b"+"\u0363\u036f"+"\u0483\u0489"
-      + "\u0591\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"+"\u05c4\u05c5"
-      + "\u05c7\u05c7"+"\u0610\u061a"+"\u064b\u065e"+"\u0670\u0670"
-      + "\u06d6\u06dc"+"\u06de\u06e4"+"\u06e7\u06e8"+"\u06ea\u06ed"
-      + "\u0711\u0711"+"\u0730\u074a"+"\u07a6\u07b0"+"\u07eb\u07f3"
-      + "\u0901\u0903"+"\u093c\u093c"+"\u093e\u094d"+"\u0951\u0954"
-      + "\u0962\u0963"+"\u0981\u0983"+"\u09bc\u09bc"+"\u09be\u09c4"
-      + "\u09c7\u09c8"+"\u09cb\u09cd"+"\u09d7\u09d7"+"\u09e2\u09e3"
-      + "\u0a01\u0a03"+"\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"
-      + "\u0a4b\u0a4d"+"\u0a51\u0a51"+"\u0a70\u0a71"+"\u0a75\u0a75"
-      + "\u0a81\u0a83"+"\u0abc\u0abc"+"\u0abe\u0ac5"+"\u0ac7\u0ac9"
-      + "\u0acb\u0acd"+"\u0ae2\u0ae3"+"\u0b01\u0b03"+"\u0b3c\u0b3c"
-      + "\u0b3e\u0b44"+"\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"
-      + "\u0b62\u0b63"+"\u0b82\u0b82"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcd"+"\u0bd7\u0bd7"+"\u0c01\u0c03"+"\u0c3e\u0c44"
-      + "\u0c46\u0c48"+"\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c62\u0c63"
-      + "\u0c82\u0c83"+"\u0cbc\u0cbc"+"\u0cbe\u0cc4"+"\u0cc6\u0cc8"
-      + "\u0cca\u0ccd"+"\u0cd5\u0cd6"+"\u0ce2\u0ce3"+"\u0d02\u0d03"
-      + "\u0d3e\u0d44"+"\u0d46\u0d48"+"\u0d4a\u0d4d"+"\u0d57\u0d57"
-      + "\u0d62\u0d63"+"\u0d82\u0d83"+"\u0dca\u0dca"+"\u0dcf\u0dd4"
-      + "\u0dd6\u0dd6"+"\u0dd8\u0ddf"+"\u0df2\u0df3"+"\u0f18\u0f19"
-      + "\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"+"\u0f3e\u0f3f"
-      + "\u0f71\u0f7e"+"\u0f80\u0f84"+"\u0f86\u0f87"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u135f\u135f"+"\u1712\u1714"
-      + "\u1732\u1734"+"\u1752\u1753"+"\u1772\u1773"+"\u180b\u180d"
-      + "\u18a9\u18a9"+"\u1920\u192b"+"\u1930\u193b"+"\u1a17\u1a1b"
-      + "\u1b00\u1b04"+"\u1b34\u1b44"+"\u1b6b\u1b73"+"\u1b80\u1b82"
-      + "\u1ba1\u1baa"+"\u1c24\u1c37"+"\u1dc0\u1de6"+"\u1dfe\u1dff"
-      + "\u200c\u200f"+"\u202a\u202e"+"\u206a\u206f"+"\u20d0\u20f0"
-      + "\u2de0\u2dff"+"\u302a\u302f"+"\u3099\u309a"+"\ua66f\ua672"
-      + "\ua67c\ua67d"+"\ua802\ua802"+"\ua806\ua806"+"\ua80b\ua80b"
-      + "\ua823\ua827"+"\ua880\ua881"+"\ua8b4\ua8c4"+"\ua926\ua92d"
-      + "\ua947\ua953"+"\uaa29\uaa36"+"\uaa43\uaa43"+"\uaa4c\uaa4d"
-      + "\ufb1e\ufb1e"+"\ufe00\ufe0f"+"\ufe20\ufe26"+"\ufff9\ufffb"
-      + "\ud800\uddfd\ud800\uddfd"+"\ud802\ude01\ud802\ude03"+"\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude0f"
-      + "\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude3f"+"\ud834\udd65\ud834\udd69"+"\ud834\udd6d\ud834\udd82"
-      + "\ud834\udd85\ud834\udd8b"+"\ud834\uddaa\ud834\uddad"+"\ud834\ude42\ud834\ude44"+"\udb40\udc01\udb40\udc01"
-      + "\udb40\udc20\udb40\udc7f"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {linebreak=complexcontext}
-        "\u0e01\u0e3a"+"\u0e40\u0e4e"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb9"+"\u0ebb\u0ebd"+"\u0ec0\u0ec4"
-      + "\u0ec6\u0ec6"+"\u0ec8\u0ecd"+"\u0edc\u0edd"+"\u1000\u103f"
-      + "\u1050\u108f"+"\u109e\u109f"+"\u1780\u17d3"+"\u17d7\u17d7"
-      + "\u17dc\u17dd"+"\u1950\u196d"+"\u1970\u1974"+"\u1980\u19a9"
-      + "\u19b0\u19c9"+"\u19de\u19df",
-    // Unicode 5.1 property value: {linebreak=contingentbreak}
-        "\ufffc\ufffc",
-    // Unicode 5.1 property value: {linebreak=exclamation}
-        "\u0021\u0021"+"\u003f\u003f"+"\u05c6\u05c6"+"\u061b\u061b"
-      + "\u061e\u061f"+"\u06d4\u06d4"+"\u07f9\u07f9"+"\u0f0d\u0f11"
-      + "\u0f14\u0f14"+"\u1802\u1803"+"\u1808\u1809"+"\u1944\u1945"
-      + "\u2762\u2763"+"\u2cf9\u2cf9"+"\u2cfe\u2cfe"+"\u2e2e\u2e2e"
-      + "\ua60e\ua60e"+"\ua876\ua877"+"\ufe15\ufe16"+"\ufe56\ufe57"
-      + "\uff01\uff01"+"\uff1f\uff1f",
-    // Unicode 5.1 property value: {linebreak=glue}
-        "\u00a0\u00a0"+"\u034f\u034f"+"\u035c\u0362"+"\u0f08\u0f08"
-      + "\u0f0c\u0f0c"+"\u0f12\u0f12"+"\u180e\u180e"+"\u2007\u2007"
-      + "\u2011\u2011"+"\u202f\u202f",
-    // Unicode 5.1 property value: {linebreak=h2}
-        "\uac00\uac00"+"\uac1c\uac1c"+"\uac38\uac38"+"\uac54\uac54"
-      + "\uac70\uac70"+"\uac8c\uac8c"+"\uaca8\uaca8"+"\uacc4\uacc4"
-      + "\uace0\uace0"+"\uacfc\uacfc"+"\uad18\uad18"+"\uad34\uad34"
-      + "\uad50\uad50"+"\uad6c\uad6c"+"\uad88\uad88"+"\uada4\uada4"
-      + "\uadc0\uadc0"+"\uaddc\uaddc"+"\uadf8\uadf8"+"\uae14\uae14"
-      + "\uae30\uae30"+"\uae4c\uae4c"+"\uae68\uae68"+"\uae84\uae84"
-      + "\uaea0\uaea0"+"\uaebc\uaebc"+"\uaed8\uaed8"+"\uaef4\uaef4"
-      + "\uaf10\uaf10"+"\uaf2c\uaf2c"+"\uaf48\uaf48"+"\uaf64\uaf64"
-      + "\uaf80\uaf80"+"\uaf9c\uaf9c"+"\uafb8\uafb8"+"\uafd4\uafd4"
-      + "\uaff0\uaff0"+"\ub00c\ub00c"+"\ub028\ub028"+"\ub044\ub044"
-      + "\ub060\ub060"+"\ub07c\ub07c"+"\ub098\ub098"+"\ub0b4\ub0b4"
-      + "\ub0d0\ub0d0"+"\ub0ec\ub0ec"+"\ub108\ub108"+"\ub124\ub124"
-      + "\ub140\ub140"+"\ub15c\ub15c"+"\ub178\ub178"+"\ub194\ub194"
-      + "\ub1b0\ub1b0"+"\ub1cc\ub1cc"+"\ub1e8\ub1e8"+"\ub204\ub204"
-      + "\ub220\ub220"+"\ub23c\ub23c"+"\ub258\ub258"+"\ub274\ub274"
-      + "\ub290\ub290"+"\ub2ac\ub2ac"+"\ub2c8\ub2c8"+"\ub2e4\ub2e4"
-      + "\ub300\ub300"+"\ub31c\ub31c"+"\ub338\ub338"+"\ub354\ub354"
-      + "\ub370\ub370"+"\ub38c\ub38c"+"\ub3a8\ub3a8"+"\ub3c4\ub3c4"
-      + "\ub3e0\ub3e0"+"\ub3fc\ub3fc"+"\ub418\ub418"+"\ub434\ub434"
-      + "\ub450\ub450"+"\ub46c\ub46c"+"\ub488\ub488"+"\ub4a4\ub4a4"
-      + "\ub4c0\ub4c0"+"\ub4dc\ub4dc"+"\ub4f8\ub4f8"+"\ub514\ub514"
-      + "\ub530\ub530"+"\ub54c\ub54c"+"\ub568\ub568"+"\ub584\ub584"
-      + "\ub5a0\ub5a0"+"\ub5bc\ub5bc"+"\ub5d8\ub5d8"+"\ub5f4\ub5f4"
-      + "\ub610\ub610"+"\ub62c\ub62c"+"\ub648\ub648"+"\ub664\ub664"
-      + "\ub680\ub680"+"\ub69c\ub69c"+"\ub6b8\ub6b8"+"\ub6d4\ub6d4"
-      + "\ub6f0\ub6f0"+"\ub70c\ub70c"+"\ub728\ub728"+"\ub744\ub744"
-      + "\ub760\ub760"+"\ub77c\ub77c"+"\ub798\ub798"+"\ub7b4\ub7b4"
-      + "\ub7d0\ub7d0"+"\ub7ec\ub7ec"+"\ub808\ub808"+"\ub824\ub824"
-      + "\ub840\ub840"+"\ub85c\ub85c"+"\ub878\ub878"+"\ub894\ub894"
-      + "\ub8b0\ub8b0"+"\ub8cc\ub8cc"+"\ub8e8\ub8e8"+"\ub904\ub904"
-      + "\ub920\ub920"+"\ub93c\ub93c"+"\ub958\ub958"+"\ub974\ub974"
-      + "\ub990\ub990"+"\ub9ac\ub9ac"+"\ub9c8\ub9c8"+"\ub9e4\ub9e4"
-      + "\uba00\uba00"+"\uba1c\uba1c"+"\uba38\uba38"+"\uba54\uba54"
-      + "\uba70\uba70"+"\uba8c\uba8c"+"\ubaa8\ubaa8"+"\ubac4\ubac4"
-      + "\ubae0\ubae0"+"\ubafc\ubafc"+"\ubb18\ubb18"+"\ubb34\ubb34"
-      + "\ubb50\ubb50"+"\ubb6c\ubb6c"+"\ubb88\ubb88"+"\ubba4\ubba4"
-      + "\ubbc0\ubbc0"+"\ubbdc\ubbdc"+"\ubbf8\ubbf8"+"\ubc14\ubc14"
-      + "\ubc30\ubc30"+"\ubc4c\ubc4c"+"\ubc68\ubc68"+"\ubc84\ubc84"
-      + "\ubca0\ubca0"+"\ubcbc\ubcbc"+"\ubcd8\ubcd8"+"\ubcf4\ubcf4"
-      + "\ubd10\ubd10"+"\ubd2c\ubd2c"+"\ubd48\ubd48"+"\ubd64\ubd64"
-      + "\ubd80\ubd80"+"\ubd9c\ubd9c"+"\ubdb8\ubdb8"+"\ubdd4\ubdd4"
-      + "\ubdf0\ubdf0"+"\ube0c\ube0c"+"\ube28\ube28"+"\ube44\ube44"
-      + "\ube60\ube60"+"\ube7c\ube7c"+"\ube98\ube98"+"\ubeb4\ubeb4"
-      + "\ubed0\ubed0"+"\ubeec\ubeec"+"\ubf08\ubf08"+"\ubf24\ubf24"
-      + "\ubf40\ubf40"+"\ubf5c\ubf5c"+"\ubf78\ubf78"+"\ubf94\ubf94"
-      + "\ubfb0\ubfb0"+"\ubfcc\ubfcc"+"\ubfe8\ubfe8"+"\uc004\uc004"
-      + "\uc020\uc020"+"\uc03c\uc03c"+"\uc058\uc058"+"\uc074\uc074"
-      + "\uc090\uc090"+"\uc0ac\uc0ac"+"\uc0c8\uc0c8"+"\uc0e4\uc0e4"
-      + "\uc100\uc100"+"\uc11c\uc11c"+"\uc138\uc138"+"\uc154\uc154"
-      + "\uc170\uc170"+"\uc18c\uc18c"+"\uc1a8\uc1a8"+"\uc1c4\uc1c4"
-      + "\uc1e0\uc1e0"+"\uc1fc\uc1fc"+"\uc218\uc218"+"\uc234\uc234"
-      + "\uc250\uc250"+"\uc26c\uc26c"+"\uc288\uc288"+"\uc2a4\uc2a4"
-      + "\uc2c0\uc2c0"+"\uc2dc\uc2dc"+"\uc2f8\uc2f8"+"\uc314\uc314"
-      + "\uc330\uc330"+"\uc34c\uc34c"+"\uc368\uc368"+"\uc384\uc384"
-      + "\uc3a0\uc3a0"+"\uc3bc\uc3bc"+"\uc3d8\uc3d8"+"\uc3f4\uc3f4"
-      + "\uc410\uc410"+"\uc42c\uc42c"+"\uc448\uc448"+"\uc464\uc464"
-      + "\uc480\uc480"+"\uc49c\uc49c"+"\uc4b8\uc4b8"+"\uc4d4\uc4d4"
-      + "\uc4f0\uc4f0"+"\uc50c\uc50c"+"\uc528\uc528"+"\uc544\uc544"
-      + "\uc560\uc560"+"\uc57c\uc57c"+"\uc598\uc598"+"\uc5b4\uc5b4"
-      + "\uc5d0\uc5d0"+"\uc5ec\uc5ec"+"\uc608\uc608"+"\uc624\uc624"
-      + "\uc640\uc640"+"\uc65c\uc65c"+"\uc678\uc678"+"\uc694\uc694"
-      + "\uc6b0\uc6b0"+"\uc6cc\uc6cc"+"\uc6e8\uc6e8"+"\uc704\uc704"
-      + "\uc720\uc720"+"\uc73c\uc73c"+"\uc758\uc758"+"\uc774\uc774"
-      + "\uc790\uc790"+"\uc7ac\uc7ac"+"\uc7c8\uc7c8"+"\uc7e4\uc7e4"
-      + "\uc800\uc800"+"\uc81c\uc81c"+"\uc838\uc838"+"\uc854\uc854"
-      + "\uc870\uc870"+"\uc88c\uc88c"+"\uc8a8\uc8a8"+"\uc8c4\uc8c4"
-      + "\uc8e0\uc8e0"+"\uc8fc\uc8fc"+"\uc918\uc918"+"\uc934\uc934"
-      + "\uc950\uc950"+"\uc96c\uc96c"+"\uc988\uc988"+"\uc9a4\uc9a4"
-      + "\uc9c0\uc9c0"+"\uc9dc\uc9dc"+"\uc9f8\uc9f8"+"\uca14\uca14"
-      + "\uca30\uca30"+"\uca4c\uca4c"+"\uca68\uca68"+"\uca84\uca84"
-      + "\ucaa0\ucaa0"+"\ucabc\ucabc"+"\ucad8\ucad8"+"\ucaf4\ucaf4"
-      + "\ucb10\ucb10"+"\ucb2c\ucb2c"+"\ucb48\ucb48"+"\ucb64\ucb64"
-      + "\ucb80\ucb80"+"\ucb9c\ucb9c"+"\ucbb8\ucbb8"+"\ucbd4\ucbd4"
-      + "\ucbf0\ucbf0"+"\ucc0c\ucc0c"+"\ucc28\ucc28"+"\ucc44\ucc44"
-      + "\ucc60\ucc60"+"\ucc7c\ucc7c"+"\ucc98\ucc98"+"\uccb4\uccb4"
-      + "\uccd0\uccd0"+"\uccec\uccec"+"\ucd08\ucd08"+"\ucd24\ucd24"
-      + "\ucd40\ucd40"+"\ucd5c\ucd5c"+"\ucd78\ucd78"+"\ucd94\ucd94"
-      + "\ucdb0\ucdb0"+"\ucdcc\ucdcc"+"\ucde8\ucde8"+"\uce04\uce04"
-      + "\uce20\uce20"+"\uce3c\uce3c"+"\uce58\uce58"+"\uce74\uce74"
-      + "\uce90\uce90"+"\uceac\uceac"+"\ucec8\ucec8"+"\ucee4\ucee4"
-      + "\ucf00\ucf00"+"\ucf1c\ucf1c"+"\ucf38\ucf38"+"\ucf54\ucf54"
-      + "\ucf70\ucf70"+"\ucf8c\ucf8c"+"\ucfa8\ucfa8"+"\ucfc4\ucfc4"
-      + "\ucfe0\ucfe0"+"\ucffc\ucffc"+"\ud018\ud018"+"\ud034\ud034"
-      + "\ud050\ud050"+"\ud06c\ud06c"+"\ud088\ud088"+"\ud0a4\ud0a4"
-      + "\ud0c0\ud0c0"+"\ud0dc\ud0dc"+"\ud0f8\ud0f8"+"\ud114\ud114"
-      + "\ud130\ud130"+"\ud14c\ud14c"+"\ud168\ud168"+"\ud184\ud184"
-      + "\ud1a0\ud1a0"+"\ud1bc\ud1bc"+"\ud1d8\ud1d8"+"\ud1f4\ud1f4"
-      + "\ud210\ud210"+"\ud22c\ud22c"+"\ud248\ud248"+"\ud264\ud264"
-      + "\ud280\ud280"+"\ud29c\ud29c"+"\ud2b8\ud2b8"+"\ud2d4\ud2d4"
-      + "\ud2f0\ud2f0"+"\ud30c\ud30c"+"\ud328\ud328"+"\ud344\ud344"
-      + "\ud360\ud360"+"\ud37c\ud37c"+"\ud398\ud398"+"\ud3b4\ud3b4"
-      + "\ud3d0\ud3d0"+"\ud3ec\ud3ec"+"\ud408\ud408"+"\ud424\ud424"
-      + "\ud440\ud440"+"\ud45c\ud45c"+"\ud478\ud478"+"\ud494\ud494"
-      + "\ud4b0\ud4b0"+"\ud4cc\ud4cc"+"\ud4e8\ud4e8"+"\ud504\ud504"
-      + "\ud520\ud520"+"\ud53c\ud53c"+"\ud558\ud558"+"\ud574\ud574"
-      + "\ud590\ud590"+"\ud5ac\ud5ac"+"\ud5c8\ud5c8"+"\ud5e4\ud5e4"
-      + "\ud600\ud600"+"\ud61c\ud61c"+"\ud638\ud638"+"\ud654\ud654"
-      + "\ud670\ud670"+"\ud68c\ud68c"+"\ud6a8\ud6a8"+"\ud6c4\ud6c4"
-      + "\ud6e0\ud6e0"+"\ud6fc\ud6fc"+"\ud718\ud718"+"\ud734\ud734"
-      + "\ud750\ud750"+"\ud76c\ud76c"+"\ud788\ud788",
-    // Unicode 5.1 property value: {linebreak=h3}
-        "\uac01\uac1b"+"\uac1d\uac37"+"\uac39\uac53"+"\uac55\uac6f"
-      + "\uac71\uac8b"+"\uac8d\uaca7"+"\uaca9\uacc3"+"\uacc5\uacdf"
-      + "\uace1\uacfb"+"\uacfd\uad17"+"\uad19\uad33"+"\uad35\uad4f"
-      + "\uad51\uad6b"+"\uad6d\uad87"+"\uad89\uada3"+"\uada5\uadbf"
-      + "\uadc1\uaddb"+"\uaddd\uadf7"+"\uadf9\uae13"+"\uae15\uae2f"
-      + "\uae31\uae4b"+"\uae4d\uae67"+"\uae69\uae83"+"\uae85\uae9f"
-      + "\uaea1\uaebb"+"\uaebd\uaed7"+"\uaed9\uaef3"+"\uaef5\uaf0f"
-      + "\uaf11\uaf2b"+"\uaf2d\uaf47"+"\uaf49\uaf63"+"\uaf65\uaf7f"
-      + "\uaf81\uaf9b"+"\uaf9d\uafb7"+"\uafb9\uafd3"+"\uafd5\uafef"
-      + "\uaff1\ub00b"+"\ub00d\ub027"+"\ub029\ub043"+"\ub045\ub05f"
-      + "\ub061\ub07b"+"\ub07d\ub097"+"\ub099\ub0b3"+"\ub0b5\ub0cf"
-      + "\ub0d1\ub0eb"+"\ub0ed\ub107"+"\ub109\ub123"+"\ub125\ub13f"
-      + "\ub141\ub15b"+"\ub15d\ub177"+"\ub179\ub193"+"\ub195\ub1af"
-      + "\ub1b1\ub1cb"+"\ub1cd\ub1e7"+"\ub1e9\ub203"+"\ub205\ub21f"
-      + "\ub221\ub23b"+"\ub23d\ub257"+"\ub259\ub273"+"\ub275\ub28f"
-      + "\ub291\ub2ab"+"\ub2ad\ub2c7"+"\ub2c9\ub2e3"+"\ub2e5\ub2ff"
-      + "\ub301\ub31b"+"\ub31d\ub337"+"\ub339\ub353"+"\ub355\ub36f"
-      + "\ub371\ub38b"+"\ub38d\ub3a7"+"\ub3a9\ub3c3"+"\ub3c5\ub3df"
-      + "\ub3e1\ub3fb"+"\ub3fd\ub417"+"\ub419\ub433"+"\ub435\ub44f"
-      + "\ub451\ub46b"+"\ub46d\ub487"+"\ub489\ub4a3"+"\ub4a5\ub4bf"
-      + "\ub4c1\ub4db"+"\ub4dd\ub4f7"+"\ub4f9\ub513"+"\ub515\ub52f"
-      + "\ub531\ub54b"+"\ub54d\ub567"+"\ub569\ub583"+"\ub585\ub59f"
-      + "\ub5a1\ub5bb"+"\ub5bd\ub5d7"+"\ub5d9\ub5f3"+"\ub5f5\ub60f"
-      + "\ub611\ub62b"+"\ub62d\ub647"+"\ub649\ub663"+"\ub665\ub67f"
-      + "\ub681\ub69b"+"\ub69d\ub6b7"+"\ub6b9\ub6d3"+"\ub6d5\ub6ef"
-      + "\ub6f1\ub70b"+"\ub70d\ub727"+"\ub729\ub743"+"\ub745\ub75f"
-      + "\ub761\ub77b"+"\ub77d\ub797"+"\ub799\ub7b3"+"\ub7b5\ub7cf"
-      + "\ub7d1\ub7eb"+"\ub7ed\ub807"+"\ub809\ub823"+"\ub825\ub83f"
-      + "\ub841\ub85b"+"\ub85d\ub877"+"\ub879\ub893"+"\ub895\ub8af"
-      + "\ub8b1\ub8cb"+"\ub8cd\ub8e7"+"\ub8e9\ub903"+"\ub905\ub91f"
-      + "\ub921\ub93b"+"\ub93d\ub957"+"\ub959\ub973"+"\ub975\ub98f"
-      + "\ub991\ub9ab"+"\ub9ad\ub9c7"+"\ub9c9\ub9e3"+"\ub9e5\ub9ff"
-      + "\uba01\uba1b"+"\uba1d\uba37"+"\uba39\uba53"+"\uba55\uba6f"
-      + "\uba71\uba8b"+"\uba8d\ubaa7"+"\ubaa9\ubac3"+"\ubac5\ubadf"
-      + "\ubae1\ubafb"+"\ubafd\ubb17"+"\ubb19\ubb33"+"\ubb35\ubb4f"
-      + "\ubb51\ubb6b"+"\ubb6d\ubb87"+"\ubb89\ubba3"+"\ubba5\ubbbf"
-      + "\ubbc1\ubbdb"+"\ubbdd\ubbf7"+"\ubbf9\ubc13"+"\ubc15\ubc2f"
-      + "\ubc31\ubc4b"+"\ubc4d\ubc67"+"\ubc69\ubc83"+"\ubc85\ubc9f"
-      + "\ubca1\ubcbb"+"\ubcbd\ubcd7"+"\ubcd9\ubcf3"+"\ubcf5\ubd0f"
-      + "\ubd11\ubd2b"+"\ubd2d\ubd47"+"\ubd49\ubd63"+"\ubd65\ubd7f"
-      + "\ubd81\ubd9b"+"\ubd9d\ubdb7"+"\ubdb9\ubdd3"+"\ubdd5\ubdef"
-      + "\ubdf1\ube0b"+"\ube0d\ube27"+"\ube29\ube43"+"\ube45\ube5f"
-      + "\ube61\ube7b"+"\ube7d\ube97"+"\ube99\ubeb3"+"\ubeb5\ubecf"
-      + "\ubed1\ubeeb"+"\ubeed\ubf07"+"\ubf09\ubf23"+"\ubf25\ubf3f"
-      + "\ubf41\ubf5b"+"\ubf5d\ubf77"+"\ubf79\ubf93"+"\ubf95\ubfaf"
-      + "\ubfb1\ubfcb"+"\ubfcd\ubfe7"+"\ubfe9\uc003"+"\uc005\uc01f"
-      + "\uc021\uc03b"+"\uc03d\uc057"+"\uc059\uc073"+"\uc075\uc08f"
-      + "\uc091\uc0ab"+"\uc0ad\uc0c7"+"\uc0c9\uc0e3"+"\uc0e5\uc0ff"
-      + "\uc101\uc11b"+"\uc11d\uc137"+"\uc139\uc153"+"\uc155\uc16f"
-      + "\uc171\uc18b"+"\uc18d\uc1a7"+"\uc1a9\uc1c3"+"\uc1c5\uc1df"
-      + "\uc1e1\uc1fb"+"\uc1fd\uc217"+"\uc219\uc233"+"\uc235\uc24f"
-      + "\uc251\uc26b"+"\uc26d\uc287"+"\uc289\uc2a3"+"\uc2a5\uc2bf"
-      + "\uc2c1\uc2db"+"\uc2dd\uc2f7"+"\uc2f9\uc313"+"\uc315\uc32f"
-      + "\uc331\uc34b"+"\uc34d\uc367"+"\uc369\uc383"+"\uc385\uc39f"
-      + "\uc3a1\uc3bb"+"\uc3bd\uc3d7"+"\uc3d9\uc3f3"+"\uc3f5\uc40f"
-      + "\uc411\uc42b"+"\uc42d\uc447"+"\uc449\uc463"+"\uc465\uc47f"
-      + "\uc481\uc49b"+"\uc49d\uc4b7"+"\uc4b9\uc4d3"+"\uc4d5\uc4ef"
-      + "\uc4f1\uc50b"+"\uc50d\uc527"+"\uc529\uc543"+"\uc545\uc55f"
-      + "\uc561\uc57b"+"\uc57d\uc597"+"\uc599\uc5b3"+"\uc5b5\uc5cf"
-      + "\uc5d1\uc5eb"+"\uc5ed\uc607"+"\uc609\uc623"+"\uc625\uc63f"
-      + "\uc641\uc65b"+"\uc65d\uc677"+"\uc679\uc693"+"\uc695\uc6af"
-      + "\uc6b1\uc6cb"+"\uc6cd\uc6e7"+"\uc6e9\uc703"+"\uc705\uc71f"
-      + "\uc721\uc73b"+"\uc73d\uc757"+"\uc759\uc773"+"\uc775\uc78f"
-      + "\uc791\uc7ab"+"\uc7ad\uc7c7"+"\uc7c9\uc7e3"+"\uc7e5\uc7ff"
-      + "\uc801\uc81b"+"\uc81d\uc837"+"\uc839\uc853"+"\uc855\uc86f"
-      + "\uc871\uc88b"+"\uc88d\uc8a7"+"\uc8a9\uc8c3"+"\uc8c5\uc8df"
-      + "\uc8e1\uc8fb"+"\uc8fd\uc917"+"\uc919\uc933"+"\uc935\uc94f"
-      + "\uc951\uc96b"+"\uc96d\uc987"+"\uc989\uc9a3"+"\uc9a5\uc9bf"
-      + "\uc9c1\uc9db"+"\uc9dd\uc9f7"+"\uc9f9\uca13"+"\uca15\uca2f"
-      + "\uca31\uca4b"+"\uca4d\uca67"+"\uca69\uca83"+"\uca85\uca9f"
-      + "\ucaa1\ucabb"+"\ucabd\ucad7"+"\ucad9\ucaf3"+"\ucaf5\ucb0f"
-      + "\ucb11\ucb2b"+"\ucb2d\ucb47"+"\ucb49\ucb63"+"\ucb65\ucb7f"
-      + "\ucb81\ucb9b"+"\ucb9d\ucbb7"+"\ucbb9\ucbd3"+"\ucbd5\ucbef"
-      + "\ucbf1\ucc0b"+"\ucc0d\ucc27"+"\ucc29\ucc43"+"\ucc45\ucc5f"
-      + "\ucc61\ucc7b"+"\ucc7d\ucc97"+"\ucc99\uccb3"+"\uccb5\ucccf"
-      + "\uccd1\ucceb"+"\ucced\ucd07"+"\ucd09\ucd23"+"\ucd25\ucd3f"
-      + "\ucd41\ucd5b"+"\ucd5d\ucd77"+"\ucd79\ucd93"+"\ucd95\ucdaf"
-      + "\ucdb1\ucdcb"+"\ucdcd\ucde7"+"\ucde9\uce03"+"\uce05\uce1f"
-      + "\uce21\uce3b"+"\uce3d\uce57"+"\uce59\uce73"+"\uce75\uce8f"
-      + "\uce91\uceab"+"\ucead\ucec7"+"\ucec9\ucee3"+"\ucee5\uceff"
-      + "\ucf01\ucf1b"+"\ucf1d\ucf37"+"\ucf39\ucf53"+"\ucf55\ucf6f"
-      + "\ucf71\ucf8b"+"\ucf8d\ucfa7"+"\ucfa9\ucfc3"+"\ucfc5\ucfdf"
-      + "\ucfe1\ucffb"+"\ucffd\ud017"+"\ud019\ud033"+"\ud035\ud04f"
-      + "\ud051\ud06b"+"\ud06d\ud087"+"\ud089\ud0a3"+"\ud0a5\ud0bf"
-      + "\ud0c1\ud0db"+"\ud0dd\ud0f7"+"\ud0f9\ud113"+"\ud115\ud12f"
-      + "\ud131\ud14b"+"\ud14d\ud167"+"\ud169\ud183"+"\ud185\ud19f"
-      + "\ud1a1\ud1bb"+"\ud1bd\ud1d7"+"\ud1d9\ud1f3"+"\ud1f5\ud20f"
-      + "\ud211\ud22b"+"\ud22d\ud247"+"\ud249\ud263"+"\ud265\ud27f"
-      + "\ud281\ud29b"+"\ud29d\ud2b7"+"\ud2b9\ud2d3"+"\ud2d5\ud2ef"
-      + "\ud2f1\ud30b"+"\ud30d\ud327"+"\ud329\ud343"+"\ud345\ud35f"
-      + "\ud361\ud37b"+"\ud37d\ud397"+"\ud399\ud3b3"+"\ud3b5\ud3cf"
-      + "\ud3d1\ud3eb"+"\ud3ed\ud407"+"\ud409\ud423"+"\ud425\ud43f"
-      + "\ud441\ud45b"+"\ud45d\ud477"+"\ud479\ud493"+"\ud495\ud4af"
-      + "\ud4b1\ud4cb"+"\ud4cd\ud4e7"+"\ud4e9\ud503"+"\ud505\ud51f"
-      + "\ud521\ud53b"+"\ud53d\ud557"+"\ud559\ud573"+"\ud575\ud58f"
-      + "\ud591\ud5ab"+"\ud5ad\ud5c7"+"\ud5c9\ud5e3"+"\ud5e5\ud5ff"
-      + "\ud601\ud61b"+"\ud61d\ud637"+"\ud639\ud653"+"\ud655\ud66f"
-      + "\ud671\ud68b"+"\ud68d\ud6a7"+"\ud6a9\ud6c3"+"\ud6c5\ud6df"
-      + "\ud6e1\ud6fb"+"\ud6fd\ud717"+"\ud719\ud733"+"\ud735\ud74f"
-      + "\ud751\ud76b"+"\ud76d\ud787"+"\ud789\ud7a3",
-    // Unicode 5.1 property value: {linebreak=hyphen}
-        "\u002d\u002d",
-    // Unicode 5.1 property value: {linebreak=ideographic}
-        "\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5"+"\u2ff0\u2ffb"
-      + "\u3000\u3000"+"\u3003\u3004"+"\u3006\u3007"+"\u3012\u3013"
-      + "\u3020\u3029"+"\u3030\u303a"+"\u303d\u303f"+"\u3042\u3042"
-      + "\u3044\u3044"+"\u3046\u3046"+"\u3048\u3048"+"\u304a\u3062"
-      + "\u3064\u3082"+"\u3084\u3084"+"\u3086\u3086"+"\u3088\u308d"
-      + "\u308f\u3094"+"\u309f\u309f"+"\u30a2\u30a2"+"\u30a4\u30a4"
-      + "\u30a6\u30a6"+"\u30a8\u30a8"+"\u30aa\u30c2"+"\u30c4\u30e2"
-      + "\u30e4\u30e4"+"\u30e6\u30e6"+"\u30e8\u30ed"+"\u30ef\u30f4"
-      + "\u30f7\u30fa"+"\u30ff\u30ff"+"\u3105\u312d"+"\u3131\u318e"
-      + "\u3190\u31b7"+"\u31c0\u31e3"+"\u3200\u321e"+"\u3220\u3243"
-      + "\u3250\u32fe"+"\u3300\u4db5"+"\u4e00\u9fc3"+"\ua000\ua014"
-      + "\ua016\ua48c"+"\ua490\ua4c6"+"\uf900\ufa2d"+"\ufa30\ufa6a"
-      + "\ufa70\ufad9"+"\ufe30\ufe34"+"\ufe45\ufe46"+"\ufe49\ufe4f"
-      + "\ufe51\ufe51"+"\ufe58\ufe58"+"\ufe5f\ufe66"+"\ufe68\ufe68"
-      + "\ufe6b\ufe6b"+"\uff02\uff03"+"\uff06\uff07"+"\uff0a\uff0b"
-      + "\uff0d\uff0d"+"\uff0f\uff19"+"\uff1c\uff1e"+"\uff20\uff3a"
-      + "\uff3c\uff3c"+"\uff3e\uff5a"+"\uff5c\uff5c"+"\uff5e\uff5e"
-      + "\uffe2\uffe4"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {linebreak=infixnumeric}
-        "\u002c\u002c"+"\u002e\u002e"+"\u003a\u003b"+"\u037e\u037e"
-      + "\u0589\u0589"+"\u060c\u060d"+"\u07f8\u07f8"+"\u2044\u2044"
-      + "\ufe10\ufe10"+"\ufe13\ufe14",
-    // Unicode 5.1 property value: {linebreak=inseparable}
-        "\u2024\u2026"+"\ufe19\ufe19",
-    // Unicode 5.1 property value: {linebreak=jl}
-        "\u1100\u1159"+"\u115f\u115f",
-    // Unicode 5.1 property value: {linebreak=jt}
-        "\u11a8\u11f9",
-    // Unicode 5.1 property value: {linebreak=jv}
-        "\u1160\u11a2",
-    // Unicode 5.1 property value: {linebreak=linefeed}
-        "\n\n",
-    // Unicode 5.1 property value: {linebreak=mandatorybreak}
-        "\u000b\f"+"\u2028\u2029",
-    // Unicode 5.1 property value: {linebreak=nextline}
-        "\u0085\u0085",
-    // Unicode 5.1 property value: {linebreak=nonstarter}
-        "\u17d6\u17d6"+"\u203c\u203d"+"\u2047\u2049"+"\u3005\u3005"
-      + "\u301c\u301c"+"\u303b\u303c"+"\u3041\u3041"+"\u3043\u3043"
-      + "\u3045\u3045"+"\u3047\u3047"+"\u3049\u3049"+"\u3063\u3063"
-      + "\u3083\u3083"+"\u3085\u3085"+"\u3087\u3087"+"\u308e\u308e"
-      + "\u3095\u3096"+"\u309b\u309e"+"\u30a0\u30a1"+"\u30a3\u30a3"
-      + "\u30a5\u30a5"+"\u30a7\u30a7"+"\u30a9\u30a9"+"\u30c3\u30c3"
-      + "\u30e3\u30e3"+"\u30e5\u30e5"+"\u30e7\u30e7"+"\u30ee\u30ee"
-      + "\u30f5\u30f6"+"\u30fb\u30fe"+"\u31f0\u31ff"+"\ua015\ua015"
-      + "\ufe54\ufe55"+"\uff1a\uff1b"+"\uff65\uff65"+"\uff67\uff70"
-      + "\uff9e\uff9f",
-    // Unicode 5.1 property value: {linebreak=numeric}
-        "\u0030\u0039"+"\u0660\u0669"+"\u066b\u066c"+"\u06f0\u06f9"
-      + "\u07c0\u07c9"+"\u0966\u096f"+"\u09e6\u09ef"+"\u0a66\u0a6f"
-      + "\u0ae6\u0aef"+"\u0b66\u0b6f"+"\u0be6\u0bef"+"\u0c66\u0c6f"
-      + "\u0ce6\u0cef"+"\u0d66\u0d6f"+"\u0e50\u0e59"+"\u0ed0\u0ed9"
-      + "\u0f20\u0f29"+"\u1040\u1049"+"\u1090\u1099"+"\u17e0\u17e9"
-      + "\u1810\u1819"+"\u1946\u194f"+"\u19d0\u19d9"+"\u1b50\u1b59"
-      + "\u1bb0\u1bb9"+"\u1c40\u1c49"+"\u1c50\u1c59"+"\ua620\ua629"
-      + "\ua8d0\ua8d9"+"\ua900\ua909"+"\uaa50\uaa59"+"\ud801\udca0\ud801\udca9"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 5.1 property value: {linebreak=openpunctuation}
-        "\u0028\u0028"+"\u005b\u005b"+"\u007b\u007b"+"\u00a1\u00a1"
-      + "\u00bf\u00bf"+"\u0f3a\u0f3a"+"\u0f3c\u0f3c"+"\u169b\u169b"
-      + "\u201a\u201a"+"\u201e\u201e"+"\u2045\u2045"+"\u207d\u207d"
-      + "\u208d\u208d"+"\u2329\u2329"+"\u2768\u2768"+"\u276a\u276a"
-      + "\u276c\u276c"+"\u276e\u276e"+"\u2770\u2770"+"\u2772\u2772"
-      + "\u2774\u2774"+"\u27c5\u27c5"+"\u27e6\u27e6"+"\u27e8\u27e8"
-      + "\u27ea\u27ea"+"\u27ec\u27ec"+"\u27ee\u27ee"+"\u2983\u2983"
-      + "\u2985\u2985"+"\u2987\u2987"+"\u2989\u2989"+"\u298b\u298b"
-      + "\u298d\u298d"+"\u298f\u298f"+"\u2991\u2991"+"\u2993\u2993"
-      + "\u2995\u2995"+"\u2997\u2997"+"\u29d8\u29d8"+"\u29da\u29da"
-      + "\u29fc\u29fc"+"\u2e18\u2e18"+"\u2e22\u2e22"+"\u2e24\u2e24"
-      + "\u2e26\u2e26"+"\u2e28\u2e28"+"\u3008\u3008"+"\u300a\u300a"
-      + "\u300c\u300c"+"\u300e\u300e"+"\u3010\u3010"+"\u3014\u3014"
-      + "\u3016\u3016"+"\u3018\u3018"+"\u301a\u301a"+"\u301d\u301d"
-      + "\ufd3e\ufd3e"+"\ufe17\ufe17"+"\ufe35\ufe35"+"\ufe37\ufe37"
-      + "\ufe39\ufe39"+"\ufe3b\ufe3b"+"\ufe3d\ufe3d"+"\ufe3f\ufe3f"
-      + "\ufe41\ufe41"+"\ufe43\ufe43"+"\ufe47\ufe47"+"\ufe59\ufe59"
-      + "\ufe5b\ufe5b"+"\ufe5d\ufe5d"+"\uff08\uff08"+"\uff3b\uff3b"
-      + "\uff5b\uff5b"+"\uff5f\uff5f"+"\uff62\uff62",
-    // Unicode 5.1 property value: {linebreak=postfixnumeric}
-        "\u0025\u0025"+"\u00a2\u00a2"+"\u00b0\u00b0"+"\u0609\u060b"
-      + "\u066a\u066a"+"\u0d79\u0d79"+"\u2030\u2037"+"\u20a7\u20a7"
-      + "\u2103\u2103"+"\u2109\u2109"+"\ufdfc\ufdfc"+"\ufe6a\ufe6a"
-      + "\uff05\uff05"+"\uffe0\uffe0",
-    // Unicode 5.1 property value: {linebreak=prefixnumeric}
-        "\u0024\u0024"+"\u002b\u002b"+"\\\\"+"\u00a3\u00a5"
-      + "\u00b1\u00b1"+"\u09f2\u09f3"+"\u0af1\u0af1"+"\u0bf9\u0bf9"
-      + "\u0e3f\u0e3f"+"\u17db\u17db"+"\u20a0\u20a6"+"\u20a8\u20b5"
-      + "\u2116\u2116"+"\u2212\u2213"+"\ufe69\ufe69"+"\uff04\uff04"
-      + "\uffe1\uffe1"+"\uffe5\uffe6",
-    // Unicode 5.1 property value: {linebreak=quotation}
-        "\"\""+"\u0027\u0027"+"\u00ab\u00ab"+"\u00bb\u00bb"
-      + "\u2018\u2019"+"\u201b\u201d"+"\u201f\u201f"+"\u2039\u203a"
-      + "\u275b\u275e"+"\u2e00\u2e0d"+"\u2e1c\u2e1d"+"\u2e20\u2e21",
-    // Unicode 5.1 property value: {linebreak=space}
-        "\u0020\u0020",
-    // Unicode 5.1 property value: {linebreak=unknown}
-        "\u0378\u0379"+"\u037f\u0383"+"\u038b\u038b"+"\u038d\u038d"
-      + "\u03a2\u03a2"+"\u0524\u0530"+"\u0557\u0558"+"\u0560\u0560"
-      + "\u0588\u0588"+"\u058b\u0590"+"\u05c8\u05cf"+"\u05eb\u05ef"
-      + "\u05f5\u05ff"+"\u0604\u0605"+"\u061c\u061d"+"\u0620\u0620"
-      + "\u065f\u065f"+"\u070e\u070e"+"\u074b\u074c"+"\u07b2\u07bf"
-      + "\u07fb\u0900"+"\u093a\u093b"+"\u094e\u094f"+"\u0955\u0957"
-      + "\u0973\u097a"+"\u0980\u0980"+"\u0984\u0984"+"\u098d\u098e"
-      + "\u0991\u0992"+"\u09a9\u09a9"+"\u09b1\u09b1"+"\u09b3\u09b5"
-      + "\u09ba\u09bb"+"\u09c5\u09c6"+"\u09c9\u09ca"+"\u09cf\u09d6"
-      + "\u09d8\u09db"+"\u09de\u09de"+"\u09e4\u09e5"+"\u09fb\u0a00"
-      + "\u0a04\u0a04"+"\u0a0b\u0a0e"+"\u0a11\u0a12"+"\u0a29\u0a29"
-      + "\u0a31\u0a31"+"\u0a34\u0a34"+"\u0a37\u0a37"+"\u0a3a\u0a3b"
-      + "\u0a3d\u0a3d"+"\u0a43\u0a46"+"\u0a49\u0a4a"+"\u0a4e\u0a50"
-      + "\u0a52\u0a58"+"\u0a5d\u0a5d"+"\u0a5f\u0a65"+"\u0a76\u0a80"
-      + "\u0a84\u0a84"+"\u0a8e\u0a8e"+"\u0a92\u0a92"+"\u0aa9\u0aa9"
-      + "\u0ab1\u0ab1"+"\u0ab4\u0ab4"+"\u0aba\u0abb"+"\u0ac6\u0ac6"
-      + "\u0aca\u0aca"+"\u0ace\u0acf"+"\u0ad1\u0adf"+"\u0ae4\u0ae5"
-      + "\u0af0\u0af0"+"\u0af2\u0b00"+"\u0b04\u0b04"+"\u0b0d\u0b0e"
-      + "\u0b11\u0b12"+"\u0b29\u0b29"+"\u0b31\u0b31"+"\u0b34\u0b34"
-      + "\u0b3a\u0b3b"+"\u0b45\u0b46"+"\u0b49\u0b4a"+"\u0b4e\u0b55"
-      + "\u0b58\u0b5b"+"\u0b5e\u0b5e"+"\u0b64\u0b65"+"\u0b72\u0b81"
-      + "\u0b84\u0b84"+"\u0b8b\u0b8d"+"\u0b91\u0b91"+"\u0b96\u0b98"
-      + "\u0b9b\u0b9b"+"\u0b9d\u0b9d"+"\u0ba0\u0ba2"+"\u0ba5\u0ba7"
-      + "\u0bab\u0bad"+"\u0bba\u0bbd"+"\u0bc3\u0bc5"+"\u0bc9\u0bc9"
-      + "\u0bce\u0bcf"+"\u0bd1\u0bd6"+"\u0bd8\u0be5"+"\u0bfb\u0c00"
-      + "\u0c04\u0c04"+"\u0c0d\u0c0d"+"\u0c11\u0c11"+"\u0c29\u0c29"
-      + "\u0c34\u0c34"+"\u0c3a\u0c3c"+"\u0c45\u0c45"+"\u0c49\u0c49"
-      + "\u0c4e\u0c54"+"\u0c57\u0c57"+"\u0c5a\u0c5f"+"\u0c64\u0c65"
-      + "\u0c70\u0c77"+"\u0c80\u0c81"+"\u0c84\u0c84"+"\u0c8d\u0c8d"
-      + "\u0c91\u0c91"+"\u0ca9\u0ca9"+"\u0cb4\u0cb4"+"\u0cba\u0cbb"
-      + "\u0cc5\u0cc5"+"\u0cc9\u0cc9"+"\u0cce\u0cd4"+"\u0cd7\u0cdd"
-      + "\u0cdf\u0cdf"+"\u0ce4\u0ce5"+"\u0cf0\u0cf0"+"\u0cf3\u0d01"
-      + "\u0d04\u0d04"+"\u0d0d\u0d0d"+"\u0d11\u0d11"+"\u0d29\u0d29"
-      + "\u0d3a\u0d3c"+"\u0d45\u0d45"+"\u0d49\u0d49"+"\u0d4e\u0d56"
-      + "\u0d58\u0d5f"+"\u0d64\u0d65"+"\u0d76\u0d78"+"\u0d80\u0d81"
-      + "\u0d84\u0d84"+"\u0d97\u0d99"+"\u0db2\u0db2"+"\u0dbc\u0dbc"
-      + "\u0dbe\u0dbf"+"\u0dc7\u0dc9"+"\u0dcb\u0dce"+"\u0dd5\u0dd5"
-      + "\u0dd7\u0dd7"+"\u0de0\u0df1"+"\u0df5\u0e00"+"\u0e3b\u0e3e"
-      + "\u0e5c\u0e80"+"\u0e83\u0e83"+"\u0e85\u0e86"+"\u0e89\u0e89"
-      + "\u0e8b\u0e8c"+"\u0e8e\u0e93"+"\u0e98\u0e98"+"\u0ea0\u0ea0"
-      + "\u0ea4\u0ea4"+"\u0ea6\u0ea6"+"\u0ea8\u0ea9"+"\u0eac\u0eac"
-      + "\u0eba\u0eba"+"\u0ebe\u0ebf"+"\u0ec5\u0ec5"+"\u0ec7\u0ec7"
-      + "\u0ece\u0ecf"+"\u0eda\u0edb"+"\u0ede\u0eff"+"\u0f48\u0f48"
-      + "\u0f6d\u0f70"+"\u0f8c\u0f8f"+"\u0f98\u0f98"+"\u0fbd\u0fbd"
-      + "\u0fcd\u0fcd"+"\u0fd5\u0fff"+"\u109a\u109d"+"\u10c6\u10cf"
-      + "\u10fd\u10ff"+"\u115a\u115e"+"\u11a3\u11a7"+"\u11fa\u11ff"
-      + "\u1249\u1249"+"\u124e\u124f"+"\u1257\u1257"+"\u1259\u1259"
-      + "\u125e\u125f"+"\u1289\u1289"+"\u128e\u128f"+"\u12b1\u12b1"
-      + "\u12b6\u12b7"+"\u12bf\u12bf"+"\u12c1\u12c1"+"\u12c6\u12c7"
-      + "\u12d7\u12d7"+"\u1311\u1311"+"\u1316\u1317"+"\u135b\u135e"
-      + "\u137d\u137f"+"\u139a\u139f"+"\u13f5\u1400"+"\u1677\u167f"
-      + "\u169d\u169f"+"\u16f1\u16ff"+"\u170d\u170d"+"\u1715\u171f"
-      + "\u1737\u173f"+"\u1754\u175f"+"\u176d\u176d"+"\u1771\u1771"
-      + "\u1774\u177f"+"\u17de\u17df"+"\u17ea\u17ef"+"\u17fa\u17ff"
-      + "\u180f\u180f"+"\u181a\u181f"+"\u1878\u187f"+"\u18ab\u18ff"
-      + "\u191d\u191f"+"\u192c\u192f"+"\u193c\u193f"+"\u1941\u1943"
-      + "\u196e\u196f"+"\u1975\u197f"+"\u19aa\u19af"+"\u19ca\u19cf"
-      + "\u19da\u19dd"+"\u1a1c\u1a1d"+"\u1a20\u1aff"+"\u1b4c\u1b4f"
-      + "\u1b7d\u1b7f"+"\u1bab\u1bad"+"\u1bba\u1bff"+"\u1c38\u1c3a"
-      + "\u1c4a\u1c4c"+"\u1c80\u1cff"+"\u1de7\u1dfd"+"\u1f16\u1f17"
-      + "\u1f1e\u1f1f"+"\u1f46\u1f47"+"\u1f4e\u1f4f"+"\u1f58\u1f58"
-      + "\u1f5a\u1f5a"+"\u1f5c\u1f5c"+"\u1f5e\u1f5e"+"\u1f7e\u1f7f"
-      + "\u1fb5\u1fb5"+"\u1fc5\u1fc5"+"\u1fd4\u1fd5"+"\u1fdc\u1fdc"
-      + "\u1ff0\u1ff1"+"\u1ff5\u1ff5"+"\u1fff\u1fff"+"\u2065\u2069"
-      + "\u2072\u2073"+"\u208f\u208f"+"\u2095\u209f"+"\u20b6\u20cf"
-      + "\u20f1\u20ff"+"\u2150\u2152"+"\u2189\u218f"+"\u23e8\u23ff"
-      + "\u2427\u243f"+"\u244b\u245f"+"\u269e\u269f"+"\u26bd\u26bf"
-      + "\u26c4\u2700"+"\u2705\u2705"+"\u270a\u270b"+"\u2728\u2728"
-      + "\u274c\u274c"+"\u274e\u274e"+"\u2753\u2755"+"\u2757\u2757"
-      + "\u275f\u2760"+"\u2795\u2797"+"\u27b0\u27b0"+"\u27bf\u27bf"
-      + "\u27cb\u27cb"+"\u27cd\u27cf"+"\u2b4d\u2b4f"+"\u2b55\u2bff"
-      + "\u2c2f\u2c2f"+"\u2c5f\u2c5f"+"\u2c70\u2c70"+"\u2c7e\u2c7f"
-      + "\u2ceb\u2cf8"+"\u2d26\u2d2f"+"\u2d66\u2d6e"+"\u2d70\u2d7f"
-      + "\u2d97\u2d9f"+"\u2da7\u2da7"+"\u2daf\u2daf"+"\u2db7\u2db7"
-      + "\u2dbf\u2dbf"+"\u2dc7\u2dc7"+"\u2dcf\u2dcf"+"\u2dd7\u2dd7"
-      + "\u2ddf\u2ddf"+"\u2e31\u2e7f"+"\u2e9a\u2e9a"+"\u2ef4\u2eff"
-      + "\u2fd6\u2fef"+"\u2ffc\u2fff"+"\u3040\u3040"+"\u3097\u3098"
-      + "\u3100\u3104"+"\u312e\u3130"+"\u318f\u318f"+"\u31b8\u31bf"
-      + "\u31e4\u31ef"+"\u321f\u321f"+"\u3244\u324f"+"\u32ff\u32ff"
-      + "\u4db6\u4dbf"+"\u9fc4\u9fff"+"\ua48d\ua48f"+"\ua4c7\ua4ff"
-      + "\ua62c\ua63f"+"\ua660\ua661"+"\ua674\ua67b"+"\ua698\ua6ff"
-      + "\ua78d\ua7fa"+"\ua82c\ua83f"+"\ua878\ua87f"+"\ua8c5\ua8cd"
-      + "\ua8da\ua8ff"+"\ua954\ua95e"+"\ua960\ua9ff"+"\uaa37\uaa3f"
-      + "\uaa4e\uaa4f"+"\uaa5a\uaa5b"+"\uaa60\uabff"+"\ud7a4\ud7ff"
-      + "\ue000\uf8ff"+"\ufa2e\ufa2f"+"\ufa6b\ufa6f"+"\ufada\ufaff"
-      + "\ufb07\ufb12"+"\ufb18\ufb1c"+"\ufb37\ufb37"+"\ufb3d\ufb3d"
-      + "\ufb3f\ufb3f"+"\ufb42\ufb42"+"\ufb45\ufb45"+"\ufbb2\ufbd2"
-      + "\ufd40\ufd4f"+"\ufd90\ufd91"+"\ufdc8\ufdef"+"\ufdfe\ufdff"
-      + "\ufe1a\ufe1f"+"\ufe27\ufe2f"+"\ufe53\ufe53"+"\ufe67\ufe67"
-      + "\ufe6c\ufe6f"+"\ufe75\ufe75"+"\ufefd\ufefe"+"\uff00\uff00"
-      + "\uffbf\uffc1"+"\uffc8\uffc9"+"\uffd0\uffd1"+"\uffd8\uffd9"
-      + "\uffdd\uffdf"+"\uffe7\uffe7"+"\uffef\ufff8"+"\ufffe\uffff"
-      + "\ud800\udc0c\ud800\udc0c"+"\ud800\udc27\ud800\udc27"+"\ud800\udc3b\ud800\udc3b"+"\ud800\udc3e\ud800\udc3e"
-      + "\ud800\udc4e\ud800\udc4f"+"\ud800\udc5e\ud800\udc7f"+"\ud800\udcfb\ud800\udcff"+"\ud800\udd03\ud800\udd06"
-      + "\ud800\udd34\ud800\udd36"+"\ud800\udd8b\ud800\udd8f"+"\ud800\udd9c\ud800\uddcf"+"\ud800\uddfe\ud800\ude7f"
-      + "\ud800\ude9d\ud800\ude9f"+"\ud800\uded1\ud800\udeff"+"\ud800\udf1f\ud800\udf1f"+"\ud800\udf24\ud800\udf2f"
-      + "\ud800\udf4b\ud800\udf7f"+"\ud800\udf9e\ud800\udf9e"+"\ud800\udfc4\ud800\udfc7"+"\ud800\udfd6\ud800\udfff"
-      + "\ud801\udc9e\ud801\udc9f"+"\ud801\udcaa\ud801\udfff"+"\ud802\udc06\ud802\udc07"+"\ud802\udc09\ud802\udc09"
-      + "\ud802\udc36\ud802\udc36"+"\ud802\udc39\ud802\udc3b"+"\ud802\udc3d\ud802\udc3e"+"\ud802\udc40\ud802\udcff"
-      + "\ud802\udd1a\ud802\udd1e"+"\ud802\udd3a\ud802\udd3e"+"\ud802\udd40\ud802\uddff"+"\ud802\ude04\ud802\ude04"
-      + "\ud802\ude07\ud802\ude0b"+"\ud802\ude14\ud802\ude14"+"\ud802\ude18\ud802\ude18"+"\ud802\ude34\ud802\ude37"
-      + "\ud802\ude3b\ud802\ude3e"+"\ud802\ude48\ud802\ude4f"+"\ud802\ude59\ud807\udfff"+"\ud808\udf6f\ud808\udfff"
-      + "\ud809\udc63\ud809\udc6f"+"\ud809\udc74\ud833\udfff"+"\ud834\udcf6\ud834\udcff"+"\ud834\udd27\ud834\udd28"
-      + "\ud834\uddde\ud834\uddff"+"\ud834\ude46\ud834\udeff"+"\ud834\udf57\ud834\udf5f"+"\ud834\udf72\ud834\udfff"
-      + "\ud835\udc55\ud835\udc55"+"\ud835\udc9d\ud835\udc9d"+"\ud835\udca0\ud835\udca1"+"\ud835\udca3\ud835\udca4"
-      + "\ud835\udca7\ud835\udca8"+"\ud835\udcad\ud835\udcad"+"\ud835\udcba\ud835\udcba"+"\ud835\udcbc\ud835\udcbc"
-      + "\ud835\udcc4\ud835\udcc4"+"\ud835\udd06\ud835\udd06"+"\ud835\udd0b\ud835\udd0c"+"\ud835\udd15\ud835\udd15"
-      + "\ud835\udd1d\ud835\udd1d"+"\ud835\udd3a\ud835\udd3a"+"\ud835\udd3f\ud835\udd3f"+"\ud835\udd45\ud835\udd45"
-      + "\ud835\udd47\ud835\udd49"+"\ud835\udd51\ud835\udd51"+"\ud835\udea6\ud835\udea7"+"\ud835\udfcc\ud835\udfcd"
-      + "\ud836\udc00\ud83b\udfff"+"\ud83c\udc2c\ud83c\udc2f"+"\ud83c\udc94\ud83f\udfff"+"\ud869\uded7\ud87d\udfff"
-      + "\ud87e\ude1e\udb40\udc00"+"\udb40\udc02\udb40\udc1f"+"\udb40\udc80\udb40\udcff"+"\udb40\uddf0\udb7f\udfff"
-      + "\udbbf\udffe\udbbf\udfff"+"\udb80\udc00\udbbf\udffd"+"\udbff\udffe\udbff\udfff"+"\udbc0\udc00\udbff\udffd",
-    // Unicode 5.1 property value: {linebreak=wordjoiner}
-        "\u2060\u2060"+"\ufeff\ufeff",
-    // Unicode 5.1 property value: {linebreak=zwspace}
-        "\u200b\u200b",
-    // Unicode 5.1 property value: {ll}
-        "\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"+"\u00ba\u00ba"
-      + "\u00df\u00f6"+"\u00f8\u00ff"+"\u0101\u0101"+"\u0103\u0103"
-      + "\u0105\u0105"+"\u0107\u0107"+"\u0109\u0109"+"\u010b\u010b"
-      + "\u010d\u010d"+"\u010f\u010f"+"\u0111\u0111"+"\u0113\u0113"
-      + "\u0115\u0115"+"\u0117\u0117"+"\u0119\u0119"+"\u011b\u011b"
-      + "\u011d\u011d"+"\u011f\u011f"+"\u0121\u0121"+"\u0123\u0123"
-      + "\u0125\u0125"+"\u0127\u0127"+"\u0129\u0129"+"\u012b\u012b"
-      + "\u012d\u012d"+"\u012f\u012f"+"\u0131\u0131"+"\u0133\u0133"
-      + "\u0135\u0135"+"\u0137\u0138"+"\u013a\u013a"+"\u013c\u013c"
-      + "\u013e\u013e"+"\u0140\u0140"+"\u0142\u0142"+"\u0144\u0144"
-      + "\u0146\u0146"+"\u0148\u0149"+"\u014b\u014b"+"\u014d\u014d"
-      + "\u014f\u014f"+"\u0151\u0151"+"\u0153\u0153"+"\u0155\u0155"
-      + "\u0157\u0157"+"\u0159\u0159"+"\u015b\u015b"+"\u015d\u015d"
-      + "\u015f\u015f"+"\u0161\u0161"+"\u0163\u0163"+"\u0165\u0165"
-      + "\u0167\u0167"+"\u0169\u0169"+"\u016b\u016b"+"\u016d\u016d"
-      + "\u016f\u016f"+"\u0171\u0171"+"\u0173\u0173"+"\u0175\u0175"
-      + "\u0177\u0177"+"\u017a\u017a"+"\u017c\u017c"+"\u017e\u0180"
-      + "\u0183\u0183"+"\u0185\u0185"+"\u0188\u0188"+"\u018c\u018d"
-      + "\u0192\u0192"+"\u0195\u0195"+"\u0199\u019b"+"\u019e\u019e"
-      + "\u01a1\u01a1"+"\u01a3\u01a3"+"\u01a5\u01a5"+"\u01a8\u01a8"
-      + "\u01aa\u01ab"+"\u01ad\u01ad"+"\u01b0\u01b0"+"\u01b4\u01b4"
-      + "\u01b6\u01b6"+"\u01b9\u01ba"+"\u01bd\u01bf"+"\u01c6\u01c6"
-      + "\u01c9\u01c9"+"\u01cc\u01cc"+"\u01ce\u01ce"+"\u01d0\u01d0"
-      + "\u01d2\u01d2"+"\u01d4\u01d4"+"\u01d6\u01d6"+"\u01d8\u01d8"
-      + "\u01da\u01da"+"\u01dc\u01dd"+"\u01df\u01df"+"\u01e1\u01e1"
-      + "\u01e3\u01e3"+"\u01e5\u01e5"+"\u01e7\u01e7"+"\u01e9\u01e9"
-      + "\u01eb\u01eb"+"\u01ed\u01ed"+"\u01ef\u01f0"+"\u01f3\u01f3"
-      + "\u01f5\u01f5"+"\u01f9\u01f9"+"\u01fb\u01fb"+"\u01fd\u01fd"
-      + "\u01ff\u01ff"+"\u0201\u0201"+"\u0203\u0203"+"\u0205\u0205"
-      + "\u0207\u0207"+"\u0209\u0209"+"\u020b\u020b"+"\u020d\u020d"
-      + "\u020f\u020f"+"\u0211\u0211"+"\u0213\u0213"+"\u0215\u0215"
-      + "\u0217\u0217"+"\u0219\u0219"+"\u021b\u021b"+"\u021d\u021d"
-      + "\u021f\u021f"+"\u0221\u0221"+"\u0223\u0223"+"\u0225\u0225"
-      + "\u0227\u0227"+"\u0229\u0229"+"\u022b\u022b"+"\u022d\u022d"
-      + "\u022f\u022f"+"\u0231\u0231"+"\u0233\u0239"+"\u023c\u023c"
-      + "\u023f\u0240"+"\u0242\u0242"+"\u0247\u0247"+"\u0249\u0249"
-      + "\u024b\u024b"+"\u024d\u024d"+"\u024f\u0293"+"\u0295\u02af"
-      + "\u0371\u0371"+"\u0373\u0373"+"\u0377\u0377"+"\u037b\u037d"
-      + "\u0390\u0390"+"\u03ac\u03ce"+"\u03d0\u03d1"+"\u03d5\u03d7"
-      + "\u03d9\u03d9"+"\u03db\u03db"+"\u03dd\u03dd"+"\u03df\u03df"
-      + "\u03e1\u03e1"+"\u03e3\u03e3"+"\u03e5\u03e5"+"\u03e7\u03e7"
-      + "\u03e9\u03e9"+"\u03eb\u03eb"+"\u03ed\u03ed"+"\u03ef\u03f3"
-      + "\u03f5\u03f5"+"\u03f8\u03f8"+"\u03fb\u03fc"+"\u0430\u045f"
-      + "\u0461\u0461"+"\u0463\u0463"+"\u0465\u0465"+"\u0467\u0467"
-      + "\u0469\u0469"+"\u046b\u046b"+"\u046d\u046d"+"\u046f\u046f"
-      + "\u0471\u0471"+"\u0473\u0473"+"\u0475\u0475"+"\u0477\u0477"
-      + "\u0479\u0479"+"\u047b\u047b"+"\u047d\u047d"+"\u047f\u047f"
-      + "\u0481\u0481"+"\u048b\u048b"+"\u048d\u048d"+"\u048f\u048f"
-      + "\u0491\u0491"+"\u0493\u0493"+"\u0495\u0495"+"\u0497\u0497"
-      + "\u0499\u0499"+"\u049b\u049b"+"\u049d\u049d"+"\u049f\u049f"
-      + "\u04a1\u04a1"+"\u04a3\u04a3"+"\u04a5\u04a5"+"\u04a7\u04a7"
-      + "\u04a9\u04a9"+"\u04ab\u04ab"+"\u04ad\u04ad"+"\u04af\u04af"
-      + "\u04b1\u04b1"+"\u04b3\u04b3"+"\u04b5\u04b5"+"\u04b7\u04b7"
-      + "\u04b9\u04b9"+"\u04bb\u04bb"+"\u04bd\u04bd"+"\u04bf\u04bf"
-      + "\u04c2\u04c2"+"\u04c4\u04c4"+"\u04c6\u04c6"+"\u04c8\u04c8"
-      + "\u04ca\u04ca"+"\u04cc\u04cc"+"\u04ce\u04cf"+"\u04d1\u04d1"
-      + "\u04d3\u04d3"+"\u04d5\u04d5"+"\u04d7\u04d7"+"\u04d9\u04d9"
-      + "\u04db\u04db"+"\u04dd\u04dd"+"\u04df\u04df"+"\u04e1\u04e1"
-      + "\u04e3\u04e3"+"\u04e5\u04e5"+"\u04e7\u04e7"+"\u04e9\u04e9"
-      + "\u04eb\u04eb"+"\u04ed\u04ed"+"\u04ef\u04ef"+"\u04f1\u04f1"
-      + "\u04f3\u04f3"+"\u04f5\u04f5"+"\u04f7\u04f7"+"\u04f9\u04f9"
-      + "\u04fb\u04fb"+"\u04fd\u04fd"+"\u04ff\u04ff"+"\u0501\u0501"
-      + "\u0503\u0503"+"\u0505\u0505"+"\u0507\u0507"+"\u0509\u0509"
-      + "\u050b\u050b"+"\u050d\u050d"+"\u050f\u050f"+"\u0511\u0511"
-      + "\u0513\u0513"+"\u0515\u0515"+"\u0517\u0517"+"\u0519\u0519"
-      + "\u051b\u051b"+"\u051d\u051d"+"\u051f\u051f"+"\u0521\u0521"
-      + "\u0523\u0523"+"\u0561\u0587"+"\u1d00\u1d2b"+"\u1d62\u1d77"
-      + "\u1d79\u1d9a"+"\u1e01\u1e01"+"\u1e03\u1e03"+"\u1e05\u1e05"
-      + "\u1e07\u1e07"+"\u1e09\u1e09"+"\u1e0b\u1e0b"+"\u1e0d\u1e0d"
-      + "\u1e0f\u1e0f"+"\u1e11\u1e11"+"\u1e13\u1e13"+"\u1e15\u1e15"
-      + "\u1e17\u1e17"+"\u1e19\u1e19"+"\u1e1b\u1e1b"+"\u1e1d\u1e1d"
-      + "\u1e1f\u1e1f"+"\u1e21\u1e21"+"\u1e23\u1e23"+"\u1e25\u1e25"
-      + "\u1e27\u1e27"+"\u1e29\u1e29"+"\u1e2b\u1e2b"+"\u1e2d\u1e2d"
-      + "\u1e2f\u1e2f"+"\u1e31\u1e31"+"\u1e33\u1e33"+"\u1e35\u1e35"
-      + "\u1e37\u1e37"+"\u1e39\u1e39"+"\u1e3b\u1e3b"+"\u1e3d\u1e3d"
-      + "\u1e3f\u1e3f"+"\u1e41\u1e41"+"\u1e43\u1e43"+"\u1e45\u1e45"
-      + "\u1e47\u1e47"+"\u1e49\u1e49"+"\u1e4b\u1e4b"+"\u1e4d\u1e4d"
-      + "\u1e4f\u1e4f"+"\u1e51\u1e51"+"\u1e53\u1e53"+"\u1e55\u1e55"
-      + "\u1e57\u1e57"+"\u1e59\u1e59"+"\u1e5b\u1e5b"+"\u1e5d\u1e5d"
-      + "\u1e5f\u1e5f"+"\u1e61\u1e61"+"\u1e63\u1e63"+"\u1e65\u1e65"
-      + "\u1e67\u1e67"+"\u1e69\u1e69"+"\u1e6b\u1e6b"+"\u1e6d\u1e6d"
-      + "\u1e6f\u1e6f"+"\u1e71\u1e71"+"\u1e73\u1e73"+"\u1e75\u1e75"
-      + "\u1e77\u1e77"+"\u1e79\u1e79"+"\u1e7b\u1e7b"+"\u1e7d\u1e7d"
-      + "\u1e7f\u1e7f"+"\u1e81\u1e81"+"\u1e83\u1e83"+"\u1e85\u1e85"
-      + "\u1e87\u1e87"+"\u1e89\u1e89"+"\u1e8b\u1e8b"+"\u1e8d\u1e8d"
-      + "\u1e8f\u1e8f"+"\u1e91\u1e91"+"\u1e93\u1e93"+"\u1e95\u1e9d"
-      + "\u1e9f\u1e9f"+"\u1ea1\u1ea1"+"\u1ea3\u1ea3"+"\u1ea5\u1ea5"
-      + "\u1ea7\u1ea7"+"\u1ea9\u1ea9"+"\u1eab\u1eab"+"\u1ead\u1ead"
-      + "\u1eaf\u1eaf"+"\u1eb1\u1eb1"+"\u1eb3\u1eb3"+"\u1eb5\u1eb5"
-      + "\u1eb7\u1eb7"+"\u1eb9\u1eb9"+"\u1ebb\u1ebb"+"\u1ebd\u1ebd"
-      + "\u1ebf\u1ebf"+"\u1ec1\u1ec1"+"\u1ec3\u1ec3"+"\u1ec5\u1ec5"
-      + "\u1ec7\u1ec7"+"\u1ec9\u1ec9"+"\u1ecb\u1ecb"+"\u1ecd\u1ecd"
-      + "\u1ecf\u1ecf"+"\u1ed1\u1ed1"+"\u1ed3\u1ed3"+"\u1ed5\u1ed5"
-      + "\u1ed7\u1ed7"+"\u1ed9\u1ed9"+"\u1edb\u1edb"+"\u1edd\u1edd"
-      + "\u1edf\u1edf"+"\u1ee1\u1ee1"+"\u1ee3\u1ee3"+"\u1ee5\u1ee5"
-      + "\u1ee7\u1ee7"+"\u1ee9\u1ee9"+"\u1eeb\u1eeb"+"\u1eed\u1eed"
-      + "\u1eef\u1eef"+"\u1ef1\u1ef1"+"\u1ef3\u1ef3"+"\u1ef5\u1ef5"
-      + "\u1ef7\u1ef7"+"\u1ef9\u1ef9"+"\u1efb\u1efb"+"\u1efd\u1efd"
-      + "\u1eff\u1f07"+"\u1f10\u1f15"+"\u1f20\u1f27"+"\u1f30\u1f37"
-      + "\u1f40\u1f45"+"\u1f50\u1f57"+"\u1f60\u1f67"+"\u1f70\u1f7d"
-      + "\u1f80\u1f87"+"\u1f90\u1f97"+"\u1fa0\u1fa7"+"\u1fb0\u1fb4"
-      + "\u1fb6\u1fb7"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"+"\u1fc6\u1fc7"
-      + "\u1fd0\u1fd3"+"\u1fd6\u1fd7"+"\u1fe0\u1fe7"+"\u1ff2\u1ff4"
-      + "\u1ff6\u1ff7"+"\u2071\u2071"+"\u207f\u207f"+"\u210a\u210a"
-      + "\u210e\u210f"+"\u2113\u2113"+"\u212f\u212f"+"\u2134\u2134"
-      + "\u2139\u2139"+"\u213c\u213d"+"\u2146\u2149"+"\u214e\u214e"
-      + "\u2184\u2184"+"\u2c30\u2c5e"+"\u2c61\u2c61"+"\u2c65\u2c66"
-      + "\u2c68\u2c68"+"\u2c6a\u2c6a"+"\u2c6c\u2c6c"+"\u2c71\u2c71"
-      + "\u2c73\u2c74"+"\u2c76\u2c7c"+"\u2c81\u2c81"+"\u2c83\u2c83"
-      + "\u2c85\u2c85"+"\u2c87\u2c87"+"\u2c89\u2c89"+"\u2c8b\u2c8b"
-      + "\u2c8d\u2c8d"+"\u2c8f\u2c8f"+"\u2c91\u2c91"+"\u2c93\u2c93"
-      + "\u2c95\u2c95"+"\u2c97\u2c97"+"\u2c99\u2c99"+"\u2c9b\u2c9b"
-      + "\u2c9d\u2c9d"+"\u2c9f\u2c9f"+"\u2ca1\u2ca1"+"\u2ca3\u2ca3"
-      + "\u2ca5\u2ca5"+"\u2ca7\u2ca7"+"\u2ca9\u2ca9"+"\u2cab\u2cab"
-      + "\u2cad\u2cad"+"\u2caf\u2caf"+"\u2cb1\u2cb1"+"\u2cb3\u2cb3"
-      + "\u2cb5\u2cb5"+"\u2cb7\u2cb7"+"\u2cb9\u2cb9"+"\u2cbb\u2cbb"
-      + "\u2cbd\u2cbd"+"\u2cbf\u2cbf"+"\u2cc1\u2cc1"+"\u2cc3\u2cc3"
-      + "\u2cc5\u2cc5"+"\u2cc7\u2cc7"+"\u2cc9\u2cc9"+"\u2ccb\u2ccb"
-      + "\u2ccd\u2ccd"+"\u2ccf\u2ccf"+"\u2cd1\u2cd1"+"\u2cd3\u2cd3"
-      + "\u2cd5\u2cd5"+"\u2cd7\u2cd7"+"\u2cd9\u2cd9"+"\u2cdb\u2cdb"
-      + "\u2cdd\u2cdd"+"\u2cdf\u2cdf"+"\u2ce1\u2ce1"+"\u2ce3\u2ce4"
-      + "\u2d00\u2d25"+"\ua641\ua641"+"\ua643\ua643"+"\ua645\ua645"
-      + "\ua647\ua647"+"\ua649\ua649"+"\ua64b\ua64b"+"\ua64d\ua64d"
-      + "\ua64f\ua64f"+"\ua651\ua651"+"\ua653\ua653"+"\ua655\ua655"
-      + "\ua657\ua657"+"\ua659\ua659"+"\ua65b\ua65b"+"\ua65d\ua65d"
-      + "\ua65f\ua65f"+"\ua663\ua663"+"\ua665\ua665"+"\ua667\ua667"
-      + "\ua669\ua669"+"\ua66b\ua66b"+"\ua66d\ua66d"+"\ua681\ua681"
-      + "\ua683\ua683"+"\ua685\ua685"+"\ua687\ua687"+"\ua689\ua689"
-      + "\ua68b\ua68b"+"\ua68d\ua68d"+"\ua68f\ua68f"+"\ua691\ua691"
-      + "\ua693\ua693"+"\ua695\ua695"+"\ua697\ua697"+"\ua723\ua723"
-      + "\ua725\ua725"+"\ua727\ua727"+"\ua729\ua729"+"\ua72b\ua72b"
-      + "\ua72d\ua72d"+"\ua72f\ua731"+"\ua733\ua733"+"\ua735\ua735"
-      + "\ua737\ua737"+"\ua739\ua739"+"\ua73b\ua73b"+"\ua73d\ua73d"
-      + "\ua73f\ua73f"+"\ua741\ua741"+"\ua743\ua743"+"\ua745\ua745"
-      + "\ua747\ua747"+"\ua749\ua749"+"\ua74b\ua74b"+"\ua74d\ua74d"
-      + "\ua74f\ua74f"+"\ua751\ua751"+"\ua753\ua753"+"\ua755\ua755"
-      + "\ua757\ua757"+"\ua759\ua759"+"\ua75b\ua75b"+"\ua75d\ua75d"
-      + "\ua75f\ua75f"+"\ua761\ua761"+"\ua763\ua763"+"\ua765\ua765"
-      + "\ua767\ua767"+"\ua769\ua769"+"\ua76b\ua76b"+"\ua76d\ua76d"
-      + "\ua76f\ua76f"+"\ua771\ua778"+"\ua77a\ua77a"+"\ua77c\ua77c"
-      + "\ua77f\ua77f"+"\ua781\ua781"+"\ua783\ua783"+"\ua785\ua785"
-      + "\ua787\ua787"+"\ua78c\ua78c"+"\ufb00\ufb06"+"\ufb13\ufb17"
-      + "\uff41\uff5a"+"\ud801\udc28\ud801\udc4f"+"\ud835\udc1a\ud835\udc33"+"\ud835\udc4e\ud835\udc54"
-      + "\ud835\udc56\ud835\udc67"+"\ud835\udc82\ud835\udc9b"+"\ud835\udcb6\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udccf"+"\ud835\udcea\ud835\udd03"+"\ud835\udd1e\ud835\udd37"
-      + "\ud835\udd52\ud835\udd6b"+"\ud835\udd86\ud835\udd9f"+"\ud835\uddba\ud835\uddd3"+"\ud835\uddee\ud835\ude07"
-      + "\ud835\ude22\ud835\ude3b"+"\ud835\ude56\ud835\ude6f"+"\ud835\ude8a\ud835\udea5"+"\ud835\udec2\ud835\udeda"
-      + "\ud835\udedc\ud835\udee1"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf1b"+"\ud835\udf36\ud835\udf4e"
-      + "\ud835\udf50\ud835\udf55"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udf8f"+"\ud835\udfaa\ud835\udfc2"
-      + "\ud835\udfc4\ud835\udfc9"+"\ud835\udfcb\ud835\udfcb",
-    // Unicode 5.1 property value: {lm}
-        "\u02b0\u02c1"+"\u02c6\u02d1"+"\u02e0\u02e4"+"\u02ec\u02ec"
-      + "\u02ee\u02ee"+"\u0374\u0374"+"\u037a\u037a"+"\u0559\u0559"
-      + "\u0640\u0640"+"\u06e5\u06e6"+"\u07f4\u07f5"+"\u07fa\u07fa"
-      + "\u0971\u0971"+"\u0e46\u0e46"+"\u0ec6\u0ec6"+"\u10fc\u10fc"
-      + "\u17d7\u17d7"+"\u1843\u1843"+"\u1c78\u1c7d"+"\u1d2c\u1d61"
-      + "\u1d78\u1d78"+"\u1d9b\u1dbf"+"\u2090\u2094"+"\u2c7d\u2c7d"
-      + "\u2d6f\u2d6f"+"\u2e2f\u2e2f"+"\u3005\u3005"+"\u3031\u3035"
-      + "\u303b\u303b"+"\u309d\u309e"+"\u30fc\u30fe"+"\ua015\ua015"
-      + "\ua60c\ua60c"+"\ua67f\ua67f"+"\ua717\ua71f"+"\ua770\ua770"
-      + "\ua788\ua788"+"\uff70\uff70"+"\uff9e\uff9f",
-    // Unicode 5.1 property value: {lo}
-        "\u01bb\u01bb"+"\u01c0\u01c3"+"\u0294\u0294"+"\u05d0\u05ea"
-      + "\u05f0\u05f2"+"\u0621\u063f"+"\u0641\u064a"+"\u066e\u066f"
-      + "\u0671\u06d3"+"\u06d5\u06d5"+"\u06ee\u06ef"+"\u06fa\u06fc"
-      + "\u06ff\u06ff"+"\u0710\u0710"+"\u0712\u072f"+"\u074d\u07a5"
-      + "\u07b1\u07b1"+"\u07ca\u07ea"+"\u0904\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0972\u0972"+"\u097b\u097f"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bd\u09bd"+"\u09ce\u09ce"
-      + "\u09dc\u09dd"+"\u09df\u09e1"+"\u09f0\u09f1"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a72\u0a74"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0abd"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae1"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"
-      + "\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b71\u0b71"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bd0\u0bd0"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3d\u0c3d"+"\u0c58\u0c59"+"\u0c60\u0c61"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbd\u0cbd"+"\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d3d"
-      + "\u0d60\u0d61"+"\u0d7a\u0d7f"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0e01\u0e30"
-      + "\u0e32\u0e33"+"\u0e40\u0e45"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb0"+"\u0eb2\u0eb3"+"\u0ebd\u0ebd"
-      + "\u0ec0\u0ec4"+"\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f40\u0f47"
-      + "\u0f49\u0f6c"+"\u0f88\u0f8b"+"\u1000\u102a"+"\u103f\u103f"
-      + "\u1050\u1055"+"\u105a\u105d"+"\u1061\u1061"+"\u1065\u1066"
-      + "\u106e\u1070"+"\u1075\u1081"+"\u108e\u108e"+"\u10d0\u10fa"
-      + "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1248"
-      + "\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"
-      + "\u1260\u1288"+"\u128a\u128d"+"\u1290\u12b0"+"\u12b2\u12b5"
-      + "\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12d6"
-      + "\u12d8\u1310"+"\u1312\u1315"+"\u1318\u135a"+"\u1380\u138f"
-      + "\u13a0\u13f4"+"\u1401\u166c"+"\u166f\u1676"+"\u1681\u169a"
-      + "\u16a0\u16ea"+"\u1700\u170c"+"\u170e\u1711"+"\u1720\u1731"
-      + "\u1740\u1751"+"\u1760\u176c"+"\u176e\u1770"+"\u1780\u17b3"
-      + "\u17dc\u17dc"+"\u1820\u1842"+"\u1844\u1877"+"\u1880\u18a8"
-      + "\u18aa\u18aa"+"\u1900\u191c"+"\u1950\u196d"+"\u1970\u1974"
-      + "\u1980\u19a9"+"\u19c1\u19c7"+"\u1a00\u1a16"+"\u1b05\u1b33"
-      + "\u1b45\u1b4b"+"\u1b83\u1ba0"+"\u1bae\u1baf"+"\u1c00\u1c23"
-      + "\u1c4d\u1c4f"+"\u1c5a\u1c77"+"\u2135\u2138"+"\u2d30\u2d65"
-      + "\u2d80\u2d96"+"\u2da0\u2da6"+"\u2da8\u2dae"+"\u2db0\u2db6"
-      + "\u2db8\u2dbe"+"\u2dc0\u2dc6"+"\u2dc8\u2dce"+"\u2dd0\u2dd6"
-      + "\u2dd8\u2dde"+"\u3006\u3006"+"\u303c\u303c"+"\u3041\u3096"
-      + "\u309f\u309f"+"\u30a1\u30fa"+"\u30ff\u30ff"+"\u3105\u312d"
-      + "\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"
-      + "\u4e00\u9fc3"+"\ua000\ua014"+"\ua016\ua48c"+"\ua500\ua60b"
-      + "\ua610\ua61f"+"\ua62a\ua62b"+"\ua66e\ua66e"+"\ua7fb\ua801"
-      + "\ua803\ua805"+"\ua807\ua80a"+"\ua80c\ua822"+"\ua840\ua873"
-      + "\ua882\ua8b3"+"\ua90a\ua925"+"\ua930\ua946"+"\uaa00\uaa28"
-      + "\uaa40\uaa42"+"\uaa44\uaa4b"+"\uac00\ud7a3"+"\uf900\ufa2d"
-      + "\ufa30\ufa6a"+"\ufa70\ufad9"+"\ufb1d\ufb1d"+"\ufb1f\ufb28"
-      + "\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"
-      + "\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"+"\ufd50\ufd8f"
-      + "\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe70\ufe74"+"\ufe76\ufefc"
-      + "\uff66\uff6f"+"\uff71\uff9d"+"\uffa0\uffbe"+"\uffc2\uffc7"
-      + "\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"+"\ud800\udc00\ud800\udc0b"
-      + "\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"+"\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"
-      + "\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"+"\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"
-      + "\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf40"+"\ud800\udf42\ud800\udf49"+"\ud800\udf80\ud800\udf9d"
-      + "\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"+"\ud801\udc50\ud801\udc9d"+"\ud802\udc00\ud802\udc05"
-      + "\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"
-      + "\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd15"+"\ud802\udd20\ud802\udd39"+"\ud802\ude00\ud802\ude00"
-      + "\ud802\ude10\ud802\ude13"+"\ud802\ude15\ud802\ude17"+"\ud802\ude19\ud802\ude33"+"\ud808\udc00\ud808\udf6e"
-      + "\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {logicalorderexception}
-        "\u0e40\u0e44"+"\u0ec0\u0ec4",
-    // Unicode 5.1 property value: {lowercase}
-        "\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"+"\u00ba\u00ba"
-      + "\u00df\u00f6"+"\u00f8\u00ff"+"\u0101\u0101"+"\u0103\u0103"
-      + "\u0105\u0105"+"\u0107\u0107"+"\u0109\u0109"+"\u010b\u010b"
-      + "\u010d\u010d"+"\u010f\u010f"+"\u0111\u0111"+"\u0113\u0113"
-      + "\u0115\u0115"+"\u0117\u0117"+"\u0119\u0119"+"\u011b\u011b"
-      + "\u011d\u011d"+"\u011f\u011f"+"\u0121\u0121"+"\u0123\u0123"
-      + "\u0125\u0125"+"\u0127\u0127"+"\u0129\u0129"+"\u012b\u012b"
-      + "\u012d\u012d"+"\u012f\u012f"+"\u0131\u0131"+"\u0133\u0133"
-      + "\u0135\u0135"+"\u0137\u0138"+"\u013a\u013a"+"\u013c\u013c"
-      + "\u013e\u013e"+"\u0140\u0140"+"\u0142\u0142"+"\u0144\u0144"
-      + "\u0146\u0146"+"\u0148\u0149"+"\u014b\u014b"+"\u014d\u014d"
-      + "\u014f\u014f"+"\u0151\u0151"+"\u0153\u0153"+"\u0155\u0155"
-      + "\u0157\u0157"+"\u0159\u0159"+"\u015b\u015b"+"\u015d\u015d"
-      + "\u015f\u015f"+"\u0161\u0161"+"\u0163\u0163"+"\u0165\u0165"
-      + "\u0167\u0167"+"\u0169\u0169"+"\u016b\u016b"+"\u016d\u016d"
-      + "\u016f\u016f"+"\u0171\u0171"+"\u0173\u0173"+"\u0175\u0175"
-      + "\u0177\u0177"+"\u017a\u017a"+"\u017c\u017c"+"\u017e\u0180"
-      + "\u0183\u0183"+"\u0185\u0185"+"\u0188\u0188"+"\u018c\u018d"
-      + "\u0192\u0192"+"\u0195\u0195"+"\u0199\u019b"+"\u019e\u019e"
-      + "\u01a1\u01a1"+"\u01a3\u01a3"+"\u01a5\u01a5"+"\u01a8\u01a8"
-      + "\u01aa\u01ab"+"\u01ad\u01ad"+"\u01b0\u01b0"+"\u01b4\u01b4"
-      + "\u01b6\u01b6"+"\u01b9\u01ba"+"\u01bd\u01bf"+"\u01c6\u01c6"
-      + "\u01c9\u01c9"+"\u01cc\u01cc"+"\u01ce\u01ce"+"\u01d0\u01d0"
-      + "\u01d2\u01d2"+"\u01d4\u01d4"+"\u01d6\u01d6"+"\u01d8\u01d8"
-      + "\u01da\u01da"+"\u01dc\u01dd"+"\u01df\u01df"+"\u01e1\u01e1"
-      + "\u01e3\u01e3"+"\u01e5\u01e5"+"\u01e7\u01e7"+"\u01e9\u01e9"
-      + "\u01eb\u01eb"+"\u01ed\u01ed"+"\u01ef\u01f0"+"\u01f3\u01f3"
-      + "\u01f5\u01f5"+"\u01f9\u01f9"+"\u01fb\u01fb"+"\u01fd\u01fd"
-      + "\u01ff\u01ff"+"\u0201\u0201"+"\u0203\u0203"+"\u0205\u0205"
-      + "\u0207\u0207"+"\u0209\u0209"+"\u020b\u020b"+"\u020d\u020d"
-      + "\u020f\u020f"+"\u0211\u0211"+"\u0213\u0213"+"\u0215\u0215"
-      + "\u0217\u0217"+"\u0219\u0219"+"\u021b\u021b"+"\u021d\u021d"
-      + "\u021f\u021f"+"\u0221\u0221"+"\u0223\u0223"+"\u0225\u0225"
-      + "\u0227\u0227"+"\u0229\u0229"+"\u022b\u022b"+"\u022d\u022d"
-      + "\u022f\u022f"+"\u0231\u0231"+"\u0233\u0239"+"\u023c\u023c"
-      + "\u023f\u0240"+"\u0242\u0242"+"\u0247\u0247"+"\u0249\u0249"
-      + "\u024b\u024b"+"\u024d\u024d"+"\u024f\u0293"+"\u0295\u02b8"
-      + "\u02c0\u02c1"+"\u02e0\u02e4"+"\u0345\u0345"+"\u0371\u0371"
-      + "\u0373\u0373"+"\u0377\u0377"+"\u037a\u037d"+"\u0390\u0390"
-      + "\u03ac\u03ce"+"\u03d0\u03d1"+"\u03d5\u03d7"+"\u03d9\u03d9"
-      + "\u03db\u03db"+"\u03dd\u03dd"+"\u03df\u03df"+"\u03e1\u03e1"
-      + "\u03e3\u03e3"+"\u03e5\u03e5"+"\u03e7\u03e7"+"\u03e9\u03e9"
-      + "\u03eb\u03eb"+"\u03ed\u03ed"+"\u03ef\u03f3"+"\u03f5\u03f5"
-      + "\u03f8\u03f8"+"\u03fb\u03fc"+"\u0430\u045f"+"\u0461\u0461"
-      + "\u0463\u0463"+"\u0465\u0465"+"\u0467\u0467"+"\u0469\u0469"
-      + "\u046b\u046b"+"\u046d\u046d"+"\u046f\u046f"+"\u0471\u0471"
-      + "\u0473\u0473"+"\u0475\u0475"+"\u0477\u0477"+"\u0479\u0479"
-      + "\u047b\u047b"+"\u047d\u047d"+"\u047f\u047f"+"\u0481\u0481"
-      + "\u048b\u048b"+"\u048d\u048d"+"\u048f\u048f"+"\u0491\u0491"
-      + "\u0493\u0493"+"\u0495\u0495"+"\u0497\u0497"+"\u0499\u0499"
-      + "\u049b\u049b"+"\u049d\u049d"+"\u049f\u049f"+"\u04a1\u04a1"
-      + "\u04a3\u04a3"+"\u04a5\u04a5"+"\u04a7\u04a7"+"\u04a9\u04a9"
-      + "\u04ab\u04ab"+"\u04ad\u04ad"+"\u04af\u04af"+"\u04b1\u04b1"
-      + "\u04b3\u04b3"+"\u04b5\u04b5"+"\u04b7\u04b7"+"\u04b9\u04b9"
-      + "\u04bb\u04bb"+"\u04bd\u04bd"+"\u04bf\u04bf"+"\u04c2\u04c2"
-      + "\u04c4\u04c4"+"\u04c6\u04c6"+"\u04c8\u04c8"+"\u04ca\u04ca"
-      + "\u04cc\u04cc"+"\u04ce\u04cf"+"\u04d1\u04d1"+"\u04d3\u04d3"
-      + "\u04d5\u04d5"+"\u04d7\u04d7"+"\u04d9\u04d9"+"\u04db\u04db"
-      + "\u04dd\u04dd"+"\u04df\u04df"+"\u04e1\u04e1"+"\u04e3\u04e3"
-      + "\u04e5\u04e5"+"\u04e7\u04e7"+"\u04e9\u04e9"+"\u04eb\u04eb"
-      + "\u04ed\u04ed"+"\u04ef\u04ef"+"\u04f1\u04f1"+"\u04f3\u04f3"
-      + "\u04f5\u04f5"+"\u04f7\u04f7"+"\u04f9\u04f9"+"\u04fb\u04fb"
-      + "\u04fd\u04fd"+"\u04ff\u04ff"+"\u0501\u0501"+"\u0503\u0503"
-      + "\u0505\u0505"+"\u0507\u0507"+"\u0509\u0509"+"\u050b\u050b"
-      + "\u050d\u050d"+"\u050f\u050f"+"\u0511\u0511"+"\u0513\u0513"
-      + "\u0515\u0515"+"\u0517\u0517"+"\u0519\u0519"+"\u051b\u051b"
-      + "\u051d\u051d"+"\u051f\u051f"+"\u0521\u0521"+"\u0523\u0523"
-      + "\u0561\u0587"+"\u1d00\u1dbf"+"\u1e01\u1e01"+"\u1e03\u1e03"
-      + "\u1e05\u1e05"+"\u1e07\u1e07"+"\u1e09\u1e09"+"\u1e0b\u1e0b"
-      + "\u1e0d\u1e0d"+"\u1e0f\u1e0f"+"\u1e11\u1e11"+"\u1e13\u1e13"
-      + "\u1e15\u1e15"+"\u1e17\u1e17"+"\u1e19\u1e19"+"\u1e1b\u1e1b"
-      + "\u1e1d\u1e1d"+"\u1e1f\u1e1f"+"\u1e21\u1e21"+"\u1e23\u1e23"
-      + "\u1e25\u1e25"+"\u1e27\u1e27"+"\u1e29\u1e29"+"\u1e2b\u1e2b"
-      + "\u1e2d\u1e2d"+"\u1e2f\u1e2f"+"\u1e31\u1e31"+"\u1e33\u1e33"
-      + "\u1e35\u1e35"+"\u1e37\u1e37"+"\u1e39\u1e39"+"\u1e3b\u1e3b"
-      + "\u1e3d\u1e3d"+"\u1e3f\u1e3f"+"\u1e41\u1e41"+"\u1e43\u1e43"
-      + "\u1e45\u1e45"+"\u1e47\u1e47"+"\u1e49\u1e49"+"\u1e4b\u1e4b"
-      + "\u1e4d\u1e4d"+"\u1e4f\u1e4f"+"\u1e51\u1e51"+"\u1e53\u1e53"
-      + "\u1e55\u1e55"+"\u1e57\u1e57"+"\u1e59\u1e59"+"\u1e5b\u1e5b"
-      + "\u1e5d\u1e5d"+"\u1e5f\u1e5f"+"\u1e61\u1e61"+"\u1e63\u1e63"
-      + "\u1e65\u1e65"+"\u1e67\u1e67"+"\u1e69\u1e69"+"\u1e6b\u1e6b"
-      + "\u1e6d\u1e6d"+"\u1e6f\u1e6f"+"\u1e71\u1e71"+"\u1e73\u1e73"
-      + "\u1e75\u1e75"+"\u1e77\u1e77"+"\u1e79\u1e79"+"\u1e7b\u1e7b"
-      + "\u1e7d\u1e7d"+"\u1e7f\u1e7f"+"\u1e81\u1e81"+"\u1e83\u1e83"
-      + "\u1e85\u1e85"+"\u1e87\u1e87"+"\u1e89\u1e89"+"\u1e8b\u1e8b"
-      + "\u1e8d\u1e8d"+"\u1e8f\u1e8f"+"\u1e91\u1e91"+"\u1e93\u1e93"
-      + "\u1e95\u1e9d"+"\u1e9f\u1e9f"+"\u1ea1\u1ea1"+"\u1ea3\u1ea3"
-      + "\u1ea5\u1ea5"+"\u1ea7\u1ea7"+"\u1ea9\u1ea9"+"\u1eab\u1eab"
-      + "\u1ead\u1ead"+"\u1eaf\u1eaf"+"\u1eb1\u1eb1"+"\u1eb3\u1eb3"
-      + "\u1eb5\u1eb5"+"\u1eb7\u1eb7"+"\u1eb9\u1eb9"+"\u1ebb\u1ebb"
-      + "\u1ebd\u1ebd"+"\u1ebf\u1ebf"+"\u1ec1\u1ec1"+"\u1ec3\u1ec3"
-      + "\u1ec5\u1ec5"+"\u1ec7\u1ec7"+"\u1ec9\u1ec9"+"\u1ecb\u1ecb"
-      + "\u1ecd\u1ecd"+"\u1ecf\u1ecf"+"\u1ed1\u1ed1"+"\u1ed3\u1ed3"
-      + "\u1ed5\u1ed5"+"\u1ed7\u1ed7"+"\u1ed9\u1ed9"+"\u1edb\u1edb"
-      + "\u1edd\u1edd"+"\u1edf\u1edf"+"\u1ee1\u1ee1"+"\u1ee3\u1ee3"
-      + "\u1ee5\u1ee5"+"\u1ee7\u1ee7"+"\u1ee9\u1ee9"+"\u1eeb\u1eeb"
-      + "\u1eed\u1eed"+"\u1eef\u1eef"+"\u1ef1\u1ef1"+"\u1ef3\u1ef3"
-      + "\u1ef5\u1ef5"+"\u1ef7\u1ef7"+"\u1ef9\u1ef9"+"\u1efb\u1efb"
-      + "\u1efd\u1efd"+"\u1eff\u1f07"+"\u1f10\u1f15"+"\u1f20\u1f27"
-      + "\u1f30\u1f37"+"\u1f40\u1f45"+"\u1f50\u1f57"+"\u1f60\u1f67"
-      + "\u1f70\u1f7d"+"\u1f80\u1f87"+"\u1f90\u1f97"+"\u1fa0\u1fa7"
-      + "\u1fb0\u1fb4"+"\u1fb6\u1fb7"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"
-      + "\u1fc6\u1fc7"+"\u1fd0\u1fd3"+"\u1fd6\u1fd7"+"\u1fe0\u1fe7"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ff7"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u2090\u2094"+"\u210a\u210a"+"\u210e\u210f"+"\u2113\u2113"
-      + "\u212f\u212f"+"\u2134\u2134"+"\u2139\u2139"+"\u213c\u213d"
-      + "\u2146\u2149"+"\u214e\u214e"+"\u2170\u217f"+"\u2184\u2184"
-      + "\u24d0\u24e9"+"\u2c30\u2c5e"+"\u2c61\u2c61"+"\u2c65\u2c66"
-      + "\u2c68\u2c68"+"\u2c6a\u2c6a"+"\u2c6c\u2c6c"+"\u2c71\u2c71"
-      + "\u2c73\u2c74"+"\u2c76\u2c7d"+"\u2c81\u2c81"+"\u2c83\u2c83"
-      + "\u2c85\u2c85"+"\u2c87\u2c87"+"\u2c89\u2c89"+"\u2c8b\u2c8b"
-      + "\u2c8d\u2c8d"+"\u2c8f\u2c8f"+"\u2c91\u2c91"+"\u2c93\u2c93"
-      + "\u2c95\u2c95"+"\u2c97\u2c97"+"\u2c99\u2c99"+"\u2c9b\u2c9b"
-      + "\u2c9d\u2c9d"+"\u2c9f\u2c9f"+"\u2ca1\u2ca1"+"\u2ca3\u2ca3"
-      + "\u2ca5\u2ca5"+"\u2ca7\u2ca7"+"\u2ca9\u2ca9"+"\u2cab\u2cab"
-      + "\u2cad\u2cad"+"\u2caf\u2caf"+"\u2cb1\u2cb1"+"\u2cb3\u2cb3"
-      + "\u2cb5\u2cb5"+"\u2cb7\u2cb7"+"\u2cb9\u2cb9"+"\u2cbb\u2cbb"
-      + "\u2cbd\u2cbd"+"\u2cbf\u2cbf"+"\u2cc1\u2cc1"+"\u2cc3\u2cc3"
-      + "\u2cc5\u2cc5"+"\u2cc7\u2cc7"+"\u2cc9\u2cc9"+"\u2ccb\u2ccb"
-      + "\u2ccd\u2ccd"+"\u2ccf\u2ccf"+"\u2cd1\u2cd1"+"\u2cd3\u2cd3"
-      + "\u2cd5\u2cd5"+"\u2cd7\u2cd7"+"\u2cd9\u2cd9"+"\u2cdb\u2cdb"
-      + "\u2cdd\u2cdd"+"\u2cdf\u2cdf"+"\u2ce1\u2ce1"+"\u2ce3\u2ce4"
-      + "\u2d00\u2d25"+"\ua641\ua641"+"\ua643\ua643"+"\ua645\ua645"
-      + "\ua647\ua647"+"\ua649\ua649"+"\ua64b\ua64b"+"\ua64d\ua64d"
-      + "\ua64f\ua64f"+"\ua651\ua651"+"\ua653\ua653"+"\ua655\ua655"
-      + "\ua657\ua657"+"\ua659\ua659"+"\ua65b\ua65b"+"\ua65d\ua65d"
-      + "\ua65f\ua65f"+"\ua663\ua663"+"\ua665\ua665"+"\ua667\ua667"
-      + "\ua669\ua669"+"\ua66b\ua66b"+"\ua66d\ua66d"+"\ua681\ua681"
-      + "\ua683\ua683"+"\ua685\ua685"+"\ua687\ua687"+"\ua689\ua689"
-      + "\ua68b\ua68b"+"\ua68d\ua68d"+"\ua68f\ua68f"+"\ua691\ua691"
-      + "\ua693\ua693"+"\ua695\ua695"+"\ua697\ua697"+"\ua723\ua723"
-      + "\ua725\ua725"+"\ua727\ua727"+"\ua729\ua729"+"\ua72b\ua72b"
-      + "\ua72d\ua72d"+"\ua72f\ua731"+"\ua733\ua733"+"\ua735\ua735"
-      + "\ua737\ua737"+"\ua739\ua739"+"\ua73b\ua73b"+"\ua73d\ua73d"
-      + "\ua73f\ua73f"+"\ua741\ua741"+"\ua743\ua743"+"\ua745\ua745"
-      + "\ua747\ua747"+"\ua749\ua749"+"\ua74b\ua74b"+"\ua74d\ua74d"
-      + "\ua74f\ua74f"+"\ua751\ua751"+"\ua753\ua753"+"\ua755\ua755"
-      + "\ua757\ua757"+"\ua759\ua759"+"\ua75b\ua75b"+"\ua75d\ua75d"
-      + "\ua75f\ua75f"+"\ua761\ua761"+"\ua763\ua763"+"\ua765\ua765"
-      + "\ua767\ua767"+"\ua769\ua769"+"\ua76b\ua76b"+"\ua76d\ua76d"
-      + "\ua76f\ua778"+"\ua77a\ua77a"+"\ua77c\ua77c"+"\ua77f\ua77f"
-      + "\ua781\ua781"+"\ua783\ua783"+"\ua785\ua785"+"\ua787\ua787"
-      + "\ua78c\ua78c"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\uff41\uff5a"
-      + "\ud801\udc28\ud801\udc4f"+"\ud835\udc1a\ud835\udc33"+"\ud835\udc4e\ud835\udc54"+"\ud835\udc56\ud835\udc67"
-      + "\ud835\udc82\ud835\udc9b"+"\ud835\udcb6\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udccf"+"\ud835\udcea\ud835\udd03"+"\ud835\udd1e\ud835\udd37"+"\ud835\udd52\ud835\udd6b"
-      + "\ud835\udd86\ud835\udd9f"+"\ud835\uddba\ud835\uddd3"+"\ud835\uddee\ud835\ude07"+"\ud835\ude22\ud835\ude3b"
-      + "\ud835\ude56\ud835\ude6f"+"\ud835\ude8a\ud835\udea5"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udee1"
-      + "\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf1b"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf55"
-      + "\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udf8f"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9"
-      + "\ud835\udfcb\ud835\udfcb",
-    // Unicode 5.1 property value: {lt}
-        "\u01c5\u01c5"+"\u01c8\u01c8"+"\u01cb\u01cb"+"\u01f2\u01f2"
-      + "\u1f88\u1f8f"+"\u1f98\u1f9f"+"\u1fa8\u1faf"+"\u1fbc\u1fbc"
-      + "\u1fcc\u1fcc"+"\u1ffc\u1ffc",
-    // Unicode 5.1 property value: {lu}
-        "\u0041\u005a"+"\u00c0\u00d6"+"\u00d8\u00de"+"\u0100\u0100"
-      + "\u0102\u0102"+"\u0104\u0104"+"\u0106\u0106"+"\u0108\u0108"
-      + "\u010a\u010a"+"\u010c\u010c"+"\u010e\u010e"+"\u0110\u0110"
-      + "\u0112\u0112"+"\u0114\u0114"+"\u0116\u0116"+"\u0118\u0118"
-      + "\u011a\u011a"+"\u011c\u011c"+"\u011e\u011e"+"\u0120\u0120"
-      + "\u0122\u0122"+"\u0124\u0124"+"\u0126\u0126"+"\u0128\u0128"
-      + "\u012a\u012a"+"\u012c\u012c"+"\u012e\u012e"+"\u0130\u0130"
-      + "\u0132\u0132"+"\u0134\u0134"+"\u0136\u0136"+"\u0139\u0139"
-      + "\u013b\u013b"+"\u013d\u013d"+"\u013f\u013f"+"\u0141\u0141"
-      + "\u0143\u0143"+"\u0145\u0145"+"\u0147\u0147"+"\u014a\u014a"
-      + "\u014c\u014c"+"\u014e\u014e"+"\u0150\u0150"+"\u0152\u0152"
-      + "\u0154\u0154"+"\u0156\u0156"+"\u0158\u0158"+"\u015a\u015a"
-      + "\u015c\u015c"+"\u015e\u015e"+"\u0160\u0160"+"\u0162\u0162"
-      + "\u0164\u0164"+"\u0166\u0166"+"\u0168\u0168"+"\u016a\u016a"
-      + "\u016c\u016c"+"\u016e\u016e"+"\u0170\u0170"+"\u0172\u0172"
-      + "\u0174\u0174"+"\u0176\u0176"+"\u0178\u0179"+"\u017b\u017b"
-      + "\u017d\u017d"+"\u0181\u0182"+"\u0184\u0184"+"\u0186\u0187"
-      + "\u0189\u018b"+"\u018e\u0191"+"\u0193\u0194"+"\u0196\u0198"
-      + "\u019c\u019d"+"\u019f\u01a0"+"\u01a2\u01a2"+"\u01a4\u01a4"
-      + "\u01a6\u01a7"+"\u01a9\u01a9"+"\u01ac\u01ac"+"\u01ae\u01af"
-      + "\u01b1\u01b3"+"\u01b5\u01b5"+"\u01b7\u01b8"+"\u01bc\u01bc"
-      + "\u01c4\u01c4"+"\u01c7\u01c7"+"\u01ca\u01ca"+"\u01cd\u01cd"
-      + "\u01cf\u01cf"+"\u01d1\u01d1"+"\u01d3\u01d3"+"\u01d5\u01d5"
-      + "\u01d7\u01d7"+"\u01d9\u01d9"+"\u01db\u01db"+"\u01de\u01de"
-      + "\u01e0\u01e0"+"\u01e2\u01e2"+"\u01e4\u01e4"+"\u01e6\u01e6"
-      + "\u01e8\u01e8"+"\u01ea\u01ea"+"\u01ec\u01ec"+"\u01ee\u01ee"
-      + "\u01f1\u01f1"+"\u01f4\u01f4"+"\u01f6\u01f8"+"\u01fa\u01fa"
-      + "\u01fc\u01fc"+"\u01fe\u01fe"+"\u0200\u0200"+"\u0202\u0202"
-      + "\u0204\u0204"+"\u0206\u0206"+"\u0208\u0208"+"\u020a\u020a"
-      + "\u020c\u020c"+"\u020e\u020e"+"\u0210\u0210"+"\u0212\u0212"
-      + "\u0214\u0214"+"\u0216\u0216"+"\u0218\u0218"+"\u021a\u021a"
-      + "\u021c\u021c"+"\u021e\u021e"+"\u0220\u0220"+"\u0222\u0222"
-      + "\u0224\u0224"+"\u0226\u0226"+"\u0228\u0228"+"\u022a\u022a"
-      + "\u022c\u022c"+"\u022e\u022e"+"\u0230\u0230"+"\u0232\u0232"
-      + "\u023a\u023b"+"\u023d\u023e"+"\u0241\u0241"+"\u0243\u0246"
-      + "\u0248\u0248"+"\u024a\u024a"+"\u024c\u024c"+"\u024e\u024e"
-      + "\u0370\u0370"+"\u0372\u0372"+"\u0376\u0376"+"\u0386\u0386"
-      + "\u0388\u038a"+"\u038c\u038c"+"\u038e\u038f"+"\u0391\u03a1"
-      + "\u03a3\u03ab"+"\u03cf\u03cf"+"\u03d2\u03d4"+"\u03d8\u03d8"
-      + "\u03da\u03da"+"\u03dc\u03dc"+"\u03de\u03de"+"\u03e0\u03e0"
-      + "\u03e2\u03e2"+"\u03e4\u03e4"+"\u03e6\u03e6"+"\u03e8\u03e8"
-      + "\u03ea\u03ea"+"\u03ec\u03ec"+"\u03ee\u03ee"+"\u03f4\u03f4"
-      + "\u03f7\u03f7"+"\u03f9\u03fa"+"\u03fd\u042f"+"\u0460\u0460"
-      + "\u0462\u0462"+"\u0464\u0464"+"\u0466\u0466"+"\u0468\u0468"
-      + "\u046a\u046a"+"\u046c\u046c"+"\u046e\u046e"+"\u0470\u0470"
-      + "\u0472\u0472"+"\u0474\u0474"+"\u0476\u0476"+"\u0478\u0478"
-      + "\u047a\u047a"+"\u047c\u047c"+"\u047e\u047e"+"\u0480\u0480"
-      + "\u048a\u048a"+"\u048c\u048c"+"\u048e\u048e"+"\u0490\u0490"
-      + "\u0492\u0492"+"\u0494\u0494"+"\u0496\u0496"+"\u0498\u0498"
-      + "\u049a\u049a"+"\u049c\u049c"+"\u049e\u049e"+"\u04a0\u04a0"
-      + "\u04a2\u04a2"+"\u04a4\u04a4"+"\u04a6\u04a6"+"\u04a8\u04a8"
-      + "\u04aa\u04aa"+"\u04ac\u04ac"+"\u04ae\u04ae"+"\u04b0\u04b0"
-      + "\u04b2\u04b2"+"\u04b4\u04b4"+"\u04b6\u04b6"+"\u04b8\u04b8"
-      + "\u04ba\u04ba"+"\u04bc\u04bc"+"\u04be\u04be"+"\u04c0\u04c1"
-      + "\u04c3\u04c3"+"\u04c5\u04c5"+"\u04c7\u04c7"+"\u04c9\u04c9"
-      + "\u04cb\u04cb"+"\u04cd\u04cd"+"\u04d0\u04d0"+"\u04d2\u04d2"
-      + "\u04d4\u04d4"+"\u04d6\u04d6"+"\u04d8\u04d8"+"\u04da\u04da"
-      + "\u04dc\u04dc"+"\u04de\u04de"+"\u04e0\u04e0"+"\u04e2\u04e2"
-      + "\u04e4\u04e4"+"\u04e6\u04e6"+"\u04e8\u04e8"+"\u04ea\u04ea"
-      + "\u04ec\u04ec"+"\u04ee\u04ee"+"\u04f0\u04f0"+"\u04f2\u04f2"
-      + "\u04f4\u04f4"+"\u04f6\u04f6"+"\u04f8\u04f8"+"\u04fa\u04fa"
-      + "\u04fc\u04fc"+"\u04fe\u04fe"+"\u0500\u0500"+"\u0502\u0502"
-      + "\u0504\u0504"+"\u0506\u0506"+"\u0508\u0508"+"\u050a\u050a"
-      + "\u050c\u050c"+"\u050e\u050e"+"\u0510\u0510"+"\u0512\u0512"
-      + "\u0514\u0514"+"\u0516\u0516"+"\u0518\u0518"+"\u051a\u051a"
-      + "\u051c\u051c"+"\u051e\u051e"+"\u0520\u0520"+"\u0522\u0522"
-      + "\u0531\u0556"+"\u10a0\u10c5"+"\u1e00\u1e00"+"\u1e02\u1e02"
-      + "\u1e04\u1e04"+"\u1e06\u1e06"+"\u1e08\u1e08"+"\u1e0a\u1e0a"
-      + "\u1e0c\u1e0c"+"\u1e0e\u1e0e"+"\u1e10\u1e10"+"\u1e12\u1e12"
-      + "\u1e14\u1e14"+"\u1e16\u1e16"+"\u1e18\u1e18"+"\u1e1a\u1e1a"
-      + "\u1e1c\u1e1c"+"\u1e1e\u1e1e"+"\u1e20\u1e20"+"\u1e22\u1e22"
-      + "\u1e24\u1e24"+"\u1e26\u1e26"+"\u1e28\u1e28"+"\u1e2a\u1e2a"
-      + "\u1e2c\u1e2c"+"\u1e2e\u1e2e"+"\u1e30\u1e30"+"\u1e32\u1e32"
-      + "\u1e34\u1e34"+"\u1e36\u1e36"+"\u1e38\u1e38"+"\u1e3a\u1e3a"
-      + "\u1e3c\u1e3c"+"\u1e3e\u1e3e"+"\u1e40\u1e40"+"\u1e42\u1e42"
-      + "\u1e44\u1e44"+"\u1e46\u1e46"+"\u1e48\u1e48"+"\u1e4a\u1e4a"
-      + "\u1e4c\u1e4c"+"\u1e4e\u1e4e"+"\u1e50\u1e50"+"\u1e52\u1e52"
-      + "\u1e54\u1e54"+"\u1e56\u1e56"+"\u1e58\u1e58"+"\u1e5a\u1e5a"
-      + "\u1e5c\u1e5c"+"\u1e5e\u1e5e"+"\u1e60\u1e60"+"\u1e62\u1e62"
-      + "\u1e64\u1e64"+"\u1e66\u1e66"+"\u1e68\u1e68"+"\u1e6a\u1e6a"
-      + "\u1e6c\u1e6c"+"\u1e6e\u1e6e"+"\u1e70\u1e70"+"\u1e72\u1e72"
-      + "\u1e74\u1e74"+"\u1e76\u1e76"+"\u1e78\u1e78"+"\u1e7a\u1e7a"
-      + "\u1e7c\u1e7c"+"\u1e7e\u1e7e"+"\u1e80\u1e80"+"\u1e82\u1e82"
-      + "\u1e84\u1e84"+"\u1e86\u1e86"+"\u1e88\u1e88"+"\u1e8a\u1e8a"
-      + "\u1e8c\u1e8c"+"\u1e8e\u1e8e"+"\u1e90\u1e90"+"\u1e92\u1e92"
-      + "\u1e94\u1e94"+"\u1e9e\u1e9e"+"\u1ea0\u1ea0"+"\u1ea2\u1ea2"
-      + "\u1ea4\u1ea4"+"\u1ea6\u1ea6"+"\u1ea8\u1ea8"+"\u1eaa\u1eaa"
-      + "\u1eac\u1eac"+"\u1eae\u1eae"+"\u1eb0\u1eb0"+"\u1eb2\u1eb2"
-      + "\u1eb4\u1eb4"+"\u1eb6\u1eb6"+"\u1eb8\u1eb8"+"\u1eba\u1eba"
-      + "\u1ebc\u1ebc"+"\u1ebe\u1ebe"+"\u1ec0\u1ec0"+"\u1ec2\u1ec2"
-      + "\u1ec4\u1ec4"+"\u1ec6\u1ec6"+"\u1ec8\u1ec8"+"\u1eca\u1eca"
-      + "\u1ecc\u1ecc"+"\u1ece\u1ece"+"\u1ed0\u1ed0"+"\u1ed2\u1ed2"
-      + "\u1ed4\u1ed4"+"\u1ed6\u1ed6"+"\u1ed8\u1ed8"+"\u1eda\u1eda"
-      + "\u1edc\u1edc"+"\u1ede\u1ede"+"\u1ee0\u1ee0"+"\u1ee2\u1ee2"
-      + "\u1ee4\u1ee4"+"\u1ee6\u1ee6"+"\u1ee8\u1ee8"+"\u1eea\u1eea"
-      + "\u1eec\u1eec"+"\u1eee\u1eee"+"\u1ef0\u1ef0"+"\u1ef2\u1ef2"
-      + "\u1ef4\u1ef4"+"\u1ef6\u1ef6"+"\u1ef8\u1ef8"+"\u1efa\u1efa"
-      + "\u1efc\u1efc"+"\u1efe\u1efe"+"\u1f08\u1f0f"+"\u1f18\u1f1d"
-      + "\u1f28\u1f2f"+"\u1f38\u1f3f"+"\u1f48\u1f4d"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f5f"+"\u1f68\u1f6f"
-      + "\u1fb8\u1fbb"+"\u1fc8\u1fcb"+"\u1fd8\u1fdb"+"\u1fe8\u1fec"
-      + "\u1ff8\u1ffb"+"\u2102\u2102"+"\u2107\u2107"+"\u210b\u210d"
-      + "\u2110\u2112"+"\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"
-      + "\u2126\u2126"+"\u2128\u2128"+"\u212a\u212d"+"\u2130\u2133"
-      + "\u213e\u213f"+"\u2145\u2145"+"\u2183\u2183"+"\u2c00\u2c2e"
-      + "\u2c60\u2c60"+"\u2c62\u2c64"+"\u2c67\u2c67"+"\u2c69\u2c69"
-      + "\u2c6b\u2c6b"+"\u2c6d\u2c6f"+"\u2c72\u2c72"+"\u2c75\u2c75"
-      + "\u2c80\u2c80"+"\u2c82\u2c82"+"\u2c84\u2c84"+"\u2c86\u2c86"
-      + "\u2c88\u2c88"+"\u2c8a\u2c8a"+"\u2c8c\u2c8c"+"\u2c8e\u2c8e"
-      + "\u2c90\u2c90"+"\u2c92\u2c92"+"\u2c94\u2c94"+"\u2c96\u2c96"
-      + "\u2c98\u2c98"+"\u2c9a\u2c9a"+"\u2c9c\u2c9c"+"\u2c9e\u2c9e"
-      + "\u2ca0\u2ca0"+"\u2ca2\u2ca2"+"\u2ca4\u2ca4"+"\u2ca6\u2ca6"
-      + "\u2ca8\u2ca8"+"\u2caa\u2caa"+"\u2cac\u2cac"+"\u2cae\u2cae"
-      + "\u2cb0\u2cb0"+"\u2cb2\u2cb2"+"\u2cb4\u2cb4"+"\u2cb6\u2cb6"
-      + "\u2cb8\u2cb8"+"\u2cba\u2cba"+"\u2cbc\u2cbc"+"\u2cbe\u2cbe"
-      + "\u2cc0\u2cc0"+"\u2cc2\u2cc2"+"\u2cc4\u2cc4"+"\u2cc6\u2cc6"
-      + "\u2cc8\u2cc8"+"\u2cca\u2cca"+"\u2ccc\u2ccc"+"\u2cce\u2cce"
-      + "\u2cd0\u2cd0"+"\u2cd2\u2cd2"+"\u2cd4\u2cd4"+"\u2cd6\u2cd6"
-      + "\u2cd8\u2cd8"+"\u2cda\u2cda"+"\u2cdc\u2cdc"+"\u2cde\u2cde"
-      + "\u2ce0\u2ce0"+"\u2ce2\u2ce2"+"\ua640\ua640"+"\ua642\ua642"
-      + "\ua644\ua644"+"\ua646\ua646"+"\ua648\ua648"+"\ua64a\ua64a"
-      + "\ua64c\ua64c"+"\ua64e\ua64e"+"\ua650\ua650"+"\ua652\ua652"
-      + "\ua654\ua654"+"\ua656\ua656"+"\ua658\ua658"+"\ua65a\ua65a"
-      + "\ua65c\ua65c"+"\ua65e\ua65e"+"\ua662\ua662"+"\ua664\ua664"
-      + "\ua666\ua666"+"\ua668\ua668"+"\ua66a\ua66a"+"\ua66c\ua66c"
-      + "\ua680\ua680"+"\ua682\ua682"+"\ua684\ua684"+"\ua686\ua686"
-      + "\ua688\ua688"+"\ua68a\ua68a"+"\ua68c\ua68c"+"\ua68e\ua68e"
-      + "\ua690\ua690"+"\ua692\ua692"+"\ua694\ua694"+"\ua696\ua696"
-      + "\ua722\ua722"+"\ua724\ua724"+"\ua726\ua726"+"\ua728\ua728"
-      + "\ua72a\ua72a"+"\ua72c\ua72c"+"\ua72e\ua72e"+"\ua732\ua732"
-      + "\ua734\ua734"+"\ua736\ua736"+"\ua738\ua738"+"\ua73a\ua73a"
-      + "\ua73c\ua73c"+"\ua73e\ua73e"+"\ua740\ua740"+"\ua742\ua742"
-      + "\ua744\ua744"+"\ua746\ua746"+"\ua748\ua748"+"\ua74a\ua74a"
-      + "\ua74c\ua74c"+"\ua74e\ua74e"+"\ua750\ua750"+"\ua752\ua752"
-      + "\ua754\ua754"+"\ua756\ua756"+"\ua758\ua758"+"\ua75a\ua75a"
-      + "\ua75c\ua75c"+"\ua75e\ua75e"+"\ua760\ua760"+"\ua762\ua762"
-      + "\ua764\ua764"+"\ua766\ua766"+"\ua768\ua768"+"\ua76a\ua76a"
-      + "\ua76c\ua76c"+"\ua76e\ua76e"+"\ua779\ua779"+"\ua77b\ua77b"
-      + "\ua77d\ua77e"+"\ua780\ua780"+"\ua782\ua782"+"\ua784\ua784"
-      + "\ua786\ua786"+"\ua78b\ua78b"+"\uff21\uff3a"+"\ud801\udc00\ud801\udc27"
-      + "\ud835\udc00\ud835\udc19"+"\ud835\udc34\ud835\udc4d"+"\ud835\udc68\ud835\udc81"+"\ud835\udc9c\ud835\udc9c"
-      + "\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"
-      + "\ud835\udcae\ud835\udcb5"+"\ud835\udcd0\ud835\udce9"+"\ud835\udd04\ud835\udd05"+"\ud835\udd07\ud835\udd0a"
-      + "\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd38\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"
-      + "\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd6c\ud835\udd85"
-      + "\ud835\udda0\ud835\uddb9"+"\ud835\uddd4\ud835\udded"+"\ud835\ude08\ud835\ude21"+"\ud835\ude3c\ud835\ude55"
-      + "\ud835\ude70\ud835\ude89"+"\ud835\udea8\ud835\udec0"+"\ud835\udee2\ud835\udefa"+"\ud835\udf1c\ud835\udf34"
-      + "\ud835\udf56\ud835\udf6e"+"\ud835\udf90\ud835\udfa8"+"\ud835\udfca\ud835\udfca",
-    // Unicode 5.1 property value: {lycian}
-        "\ud800\ude80\ud800\ude9c",
-    // Unicode 5.1 property value: {lydian}
-        "\ud802\udd20\ud802\udd39"+"\ud802\udd3f\ud802\udd3f",
-    // Unicode 5.1 property value: {malayalam}
-        "\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"+"\u0d12\u0d28"
-      + "\u0d2a\u0d39"+"\u0d3d\u0d44"+"\u0d46\u0d48"+"\u0d4a\u0d4d"
-      + "\u0d57\u0d57"+"\u0d60\u0d63"+"\u0d66\u0d75"+"\u0d79\u0d7f",
-    // Unicode 5.1 property value: {math}
-        "\u002b\u002b"+"\u003c\u003e"+"\u005e\u005e"+"\u007c\u007c"
-      + "\u007e\u007e"+"\u00ac\u00ac"+"\u00b1\u00b1"+"\u00d7\u00d7"
-      + "\u00f7\u00f7"+"\u03d0\u03d2"+"\u03d5\u03d5"+"\u03f0\u03f1"
-      + "\u03f4\u03f6"+"\u0606\u0608"+"\u2016\u2016"+"\u2032\u2034"
-      + "\u2040\u2040"+"\u2044\u2044"+"\u2052\u2052"+"\u2061\u2064"
-      + "\u207a\u207e"+"\u208a\u208e"+"\u20d0\u20dc"+"\u20e1\u20e1"
-      + "\u20e5\u20e6"+"\u20eb\u20ef"+"\u2102\u2102"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"+"\u2128\u2129"
-      + "\u212c\u212d"+"\u212f\u2131"+"\u2133\u2138"+"\u213c\u2149"
-      + "\u214b\u214b"+"\u2190\u21a7"+"\u21a9\u21ae"+"\u21b0\u21b1"
-      + "\u21b6\u21b7"+"\u21bc\u21db"+"\u21dd\u21dd"+"\u21e4\u21e5"
-      + "\u21f4\u22ff"+"\u2308\u230b"+"\u2320\u2321"+"\u237c\u237c"
-      + "\u239b\u23b5"+"\u23b7\u23b7"+"\u23d0\u23d0"+"\u23dc\u23e2"
-      + "\u25a0\u25a1"+"\u25ae\u25b7"+"\u25bc\u25c1"+"\u25c6\u25c7"
-      + "\u25ca\u25cb"+"\u25cf\u25d3"+"\u25e2\u25e2"+"\u25e4\u25e4"
-      + "\u25e7\u25ec"+"\u25f8\u25ff"+"\u2605\u2606"+"\u2640\u2640"
-      + "\u2642\u2642"+"\u2660\u2663"+"\u266d\u266f"+"\u27c0\u27ca"
-      + "\u27cc\u27cc"+"\u27d0\u27ff"+"\u2900\u2aff"+"\u2b30\u2b44"
-      + "\u2b47\u2b4c"+"\ufb29\ufb29"+"\ufe61\ufe66"+"\ufe68\ufe68"
-      + "\uff0b\uff0b"+"\uff1c\uff1e"+"\uff3c\uff3c"+"\uff3e\uff3e"
-      + "\uff5c\uff5c"+"\uff5e\uff5e"+"\uffe2\uffe2"+"\uffe9\uffec"
-      + "\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"
-      + "\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"
-      + "\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udfcb"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 5.1 property value: {mc}
-        "\u0903\u0903"+"\u093e\u0940"+"\u0949\u094c"+"\u0982\u0983"
-      + "\u09be\u09c0"+"\u09c7\u09c8"+"\u09cb\u09cc"+"\u09d7\u09d7"
-      + "\u0a03\u0a03"+"\u0a3e\u0a40"+"\u0a83\u0a83"+"\u0abe\u0ac0"
-      + "\u0ac9\u0ac9"+"\u0acb\u0acc"+"\u0b02\u0b03"+"\u0b3e\u0b3e"
-      + "\u0b40\u0b40"+"\u0b47\u0b48"+"\u0b4b\u0b4c"+"\u0b57\u0b57"
-      + "\u0bbe\u0bbf"+"\u0bc1\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcc"
-      + "\u0bd7\u0bd7"+"\u0c01\u0c03"+"\u0c41\u0c44"+"\u0c82\u0c83"
-      + "\u0cbe\u0cbe"+"\u0cc0\u0cc4"+"\u0cc7\u0cc8"+"\u0cca\u0ccb"
-      + "\u0cd5\u0cd6"+"\u0d02\u0d03"+"\u0d3e\u0d40"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4c"+"\u0d57\u0d57"+"\u0d82\u0d83"+"\u0dcf\u0dd1"
-      + "\u0dd8\u0ddf"+"\u0df2\u0df3"+"\u0f3e\u0f3f"+"\u0f7f\u0f7f"
-      + "\u102b\u102c"+"\u1031\u1031"+"\u1038\u1038"+"\u103b\u103c"
-      + "\u1056\u1057"+"\u1062\u1064"+"\u1067\u106d"+"\u1083\u1084"
-      + "\u1087\u108c"+"\u108f\u108f"+"\u17b6\u17b6"+"\u17be\u17c5"
-      + "\u17c7\u17c8"+"\u1923\u1926"+"\u1929\u192b"+"\u1930\u1931"
-      + "\u1933\u1938"+"\u19b0\u19c0"+"\u19c8\u19c9"+"\u1a19\u1a1b"
-      + "\u1b04\u1b04"+"\u1b35\u1b35"+"\u1b3b\u1b3b"+"\u1b3d\u1b41"
-      + "\u1b43\u1b44"+"\u1b82\u1b82"+"\u1ba1\u1ba1"+"\u1ba6\u1ba7"
-      + "\u1baa\u1baa"+"\u1c24\u1c2b"+"\u1c34\u1c35"+"\ua823\ua824"
-      + "\ua827\ua827"+"\ua880\ua881"+"\ua8b4\ua8c3"+"\ua952\ua953"
-      + "\uaa2f\uaa30"+"\uaa33\uaa34"+"\uaa4d\uaa4d"+"\ud834\udd65\ud834\udd66"
-      + "\ud834\udd6d\ud834\udd72",
-    // Unicode 5.1 property value: {me}
-        "\u0488\u0489"+"\u06de\u06de"+"\u20dd\u20e0"+"\u20e2\u20e4"
-      + "\ua670\ua672",
-    // Unicode 5.1 property value: {mn}
-        "\u0300\u036f"+"\u0483\u0487"+"\u0591\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c5"+"\u05c7\u05c7"+"\u0610\u061a"
-      + "\u064b\u065e"+"\u0670\u0670"+"\u06d6\u06dc"+"\u06df\u06e4"
-      + "\u06e7\u06e8"+"\u06ea\u06ed"+"\u0711\u0711"+"\u0730\u074a"
-      + "\u07a6\u07b0"+"\u07eb\u07f3"+"\u0901\u0902"+"\u093c\u093c"
-      + "\u0941\u0948"+"\u094d\u094d"+"\u0951\u0954"+"\u0962\u0963"
-      + "\u0981\u0981"+"\u09bc\u09bc"+"\u09c1\u09c4"+"\u09cd\u09cd"
-      + "\u09e2\u09e3"+"\u0a01\u0a02"+"\u0a3c\u0a3c"+"\u0a41\u0a42"
-      + "\u0a47\u0a48"+"\u0a4b\u0a4d"+"\u0a51\u0a51"+"\u0a70\u0a71"
-      + "\u0a75\u0a75"+"\u0a81\u0a82"+"\u0abc\u0abc"+"\u0ac1\u0ac5"
-      + "\u0ac7\u0ac8"+"\u0acd\u0acd"+"\u0ae2\u0ae3"+"\u0b01\u0b01"
-      + "\u0b3c\u0b3c"+"\u0b3f\u0b3f"+"\u0b41\u0b44"+"\u0b4d\u0b4d"
-      + "\u0b56\u0b56"+"\u0b62\u0b63"+"\u0b82\u0b82"+"\u0bc0\u0bc0"
-      + "\u0bcd\u0bcd"+"\u0c3e\u0c40"+"\u0c46\u0c48"+"\u0c4a\u0c4d"
-      + "\u0c55\u0c56"+"\u0c62\u0c63"+"\u0cbc\u0cbc"+"\u0cbf\u0cbf"
-      + "\u0cc6\u0cc6"+"\u0ccc\u0ccd"+"\u0ce2\u0ce3"+"\u0d41\u0d44"
-      + "\u0d4d\u0d4d"+"\u0d62\u0d63"+"\u0dca\u0dca"+"\u0dd2\u0dd4"
-      + "\u0dd6\u0dd6"+"\u0e31\u0e31"+"\u0e34\u0e3a"+"\u0e47\u0e4e"
-      + "\u0eb1\u0eb1"+"\u0eb4\u0eb9"+"\u0ebb\u0ebc"+"\u0ec8\u0ecd"
-      + "\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f71\u0f7e"+"\u0f80\u0f84"+"\u0f86\u0f87"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u102d\u1030"+"\u1032\u1037"
-      + "\u1039\u103a"+"\u103d\u103e"+"\u1058\u1059"+"\u105e\u1060"
-      + "\u1071\u1074"+"\u1082\u1082"+"\u1085\u1086"+"\u108d\u108d"
-      + "\u135f\u135f"+"\u1712\u1714"+"\u1732\u1734"+"\u1752\u1753"
-      + "\u1772\u1773"+"\u17b7\u17bd"+"\u17c6\u17c6"+"\u17c9\u17d3"
-      + "\u17dd\u17dd"+"\u180b\u180d"+"\u18a9\u18a9"+"\u1920\u1922"
-      + "\u1927\u1928"+"\u1932\u1932"+"\u1939\u193b"+"\u1a17\u1a18"
-      + "\u1b00\u1b03"+"\u1b34\u1b34"+"\u1b36\u1b3a"+"\u1b3c\u1b3c"
-      + "\u1b42\u1b42"+"\u1b6b\u1b73"+"\u1b80\u1b81"+"\u1ba2\u1ba5"
-      + "\u1ba8\u1ba9"+"\u1c2c\u1c33"+"\u1c36\u1c37"+"\u1dc0\u1de6"
-      + "\u1dfe\u1dff"+"\u20d0\u20dc"+"\u20e1\u20e1"+"\u20e5\u20f0"
-      + "\u2de0\u2dff"+"\u302a\u302f"+"\u3099\u309a"+"\ua66f\ua66f"
-      + "\ua67c\ua67d"+"\ua802\ua802"+"\ua806\ua806"+"\ua80b\ua80b"
-      + "\ua825\ua826"+"\ua8c4\ua8c4"+"\ua926\ua92d"+"\ua947\ua951"
-      + "\uaa29\uaa2e"+"\uaa31\uaa32"+"\uaa35\uaa36"+"\uaa43\uaa43"
-      + "\uaa4c\uaa4c"+"\ufb1e\ufb1e"+"\ufe00\ufe0f"+"\ufe20\ufe26"
-      + "\ud800\uddfd\ud800\uddfd"+"\ud802\ude01\ud802\ude03"+"\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude0f"
-      + "\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude3f"+"\ud834\udd67\ud834\udd69"+"\ud834\udd7b\ud834\udd82"
-      + "\ud834\udd85\ud834\udd8b"+"\ud834\uddaa\ud834\uddad"+"\ud834\ude42\ud834\ude44"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {mongolian}
-        "\u1800\u1801"+"\u1804\u1804"+"\u1806\u180e"+"\u1810\u1819"
-      + "\u1820\u1877"+"\u1880\u18aa",
-    // Unicode 5.1 property value: {myanmar}
-        "\u1000\u1099"+"\u109e\u109f",
-    // Unicode 5.1 property value: {nd}
-        "\u0030\u0039"+"\u0660\u0669"+"\u06f0\u06f9"+"\u07c0\u07c9"
-      + "\u0966\u096f"+"\u09e6\u09ef"+"\u0a66\u0a6f"+"\u0ae6\u0aef"
-      + "\u0b66\u0b6f"+"\u0be6\u0bef"+"\u0c66\u0c6f"+"\u0ce6\u0cef"
-      + "\u0d66\u0d6f"+"\u0e50\u0e59"+"\u0ed0\u0ed9"+"\u0f20\u0f29"
-      + "\u1040\u1049"+"\u1090\u1099"+"\u17e0\u17e9"+"\u1810\u1819"
-      + "\u1946\u194f"+"\u19d0\u19d9"+"\u1b50\u1b59"+"\u1bb0\u1bb9"
-      + "\u1c40\u1c49"+"\u1c50\u1c59"+"\ua620\ua629"+"\ua8d0\ua8d9"
-      + "\ua900\ua909"+"\uaa50\uaa59"+"\uff10\uff19"+"\ud801\udca0\ud801\udca9"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 5.1 property value: {newtailue}
-        "\u1980\u19a9"+"\u19b0\u19c9"+"\u19d0\u19d9"+"\u19de\u19df",
-    // Unicode 5.1 property value: {nko}
-        "\u07c0\u07fa",
-    // Unicode 5.1 property value: {nl}
-        "\u16ee\u16f0"+"\u2160\u2182"+"\u2185\u2188"+"\u3007\u3007"
-      + "\u3021\u3029"+"\u3038\u303a"+"\ud800\udd40\ud800\udd74"+"\ud800\udf41\ud800\udf41"
-      + "\ud800\udf4a\ud800\udf4a"+"\ud800\udfd1\ud800\udfd5"+"\ud809\udc00\ud809\udc62",
-    // Unicode 5.1 property value: {no}
-        "\u00b2\u00b3"+"\u00b9\u00b9"+"\u00bc\u00be"+"\u09f4\u09f9"
-      + "\u0bf0\u0bf2"+"\u0c78\u0c7e"+"\u0d70\u0d75"+"\u0f2a\u0f33"
-      + "\u1369\u137c"+"\u17f0\u17f9"+"\u2070\u2070"+"\u2074\u2079"
-      + "\u2080\u2089"+"\u2153\u215f"+"\u2460\u249b"+"\u24ea\u24ff"
-      + "\u2776\u2793"+"\u2cfd\u2cfd"+"\u3192\u3195"+"\u3220\u3229"
-      + "\u3251\u325f"+"\u3280\u3289"+"\u32b1\u32bf"+"\ud800\udd07\ud800\udd33"
-      + "\ud800\udd75\ud800\udd78"+"\ud800\udd8a\ud800\udd8a"+"\ud800\udf20\ud800\udf23"+"\ud802\udd16\ud802\udd19"
-      + "\ud802\ude40\ud802\ude47"+"\ud834\udf60\ud834\udf71",
-    // Unicode 5.1 property value: {noncharactercodepoint}
-        "\ufdd0\ufdef"+"\ufffe\uffff"+"\ud83f\udffe\ud83f\udfff"+"\ud87f\udffe\ud87f\udfff"
-      + "\ud8bf\udffe\ud8bf\udfff"+"\ud8ff\udffe\ud8ff\udfff"+"\ud93f\udffe\ud93f\udfff"+"\ud97f\udffe\ud97f\udfff"
-      + "\ud9bf\udffe\ud9bf\udfff"+"\ud9ff\udffe\ud9ff\udfff"+"\uda3f\udffe\uda3f\udfff"+"\uda7f\udffe\uda7f\udfff"
-      + "\udabf\udffe\udabf\udfff"+"\udaff\udffe\udaff\udfff"+"\udb3f\udffe\udb3f\udfff"+"\udb7f\udffe\udb7f\udfff"
-      + "\udbbf\udffe\udbbf\udfff"+"\udbff\udffe\udbff\udfff",
-    // Unicode 5.1 property value: {ogham}
-        "\u1680\u169c",
-    // Unicode 5.1 property value: {olchiki}
-        "\u1c50\u1c7f",
-    // Unicode 5.1 property value: {olditalic}
-        "\ud800\udf00\ud800\udf1e"+"\ud800\udf20\ud800\udf23",
-    // Unicode 5.1 property value: {oldpersian}
-        "\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfd5",
-    // Unicode 5.1 property value: {oriya}
-        "\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"
-      + "\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"+"\u0b3c\u0b44"
-      + "\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b5c\u0b5d"
-      + "\u0b5f\u0b63"+"\u0b66\u0b71",
-    // Unicode 5.1 property value: {osmanya}
-        "\ud801\udc80\ud801\udc9d"+"\ud801\udca0\ud801\udca9",
-    // Unicode 5.1 property value: {otheralphabetic}
-        "\u0345\u0345"+"\u05b0\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"
-      + "\u05c4\u05c5"+"\u05c7\u05c7"+"\u0610\u061a"+"\u064b\u0657"
-      + "\u0659\u065e"+"\u0670\u0670"+"\u06d6\u06dc"+"\u06e1\u06e4"
-      + "\u06e7\u06e8"+"\u06ed\u06ed"+"\u0711\u0711"+"\u0730\u073f"
-      + "\u07a6\u07b0"+"\u0901\u0903"+"\u093e\u094c"+"\u0962\u0963"
-      + "\u0981\u0983"+"\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cc"
-      + "\u09d7\u09d7"+"\u09e2\u09e3"+"\u0a01\u0a03"+"\u0a3e\u0a42"
-      + "\u0a47\u0a48"+"\u0a4b\u0a4c"+"\u0a51\u0a51"+"\u0a70\u0a71"
-      + "\u0a75\u0a75"+"\u0a81\u0a83"+"\u0abe\u0ac5"+"\u0ac7\u0ac9"
-      + "\u0acb\u0acc"+"\u0ae2\u0ae3"+"\u0b01\u0b03"+"\u0b3e\u0b44"
-      + "\u0b47\u0b48"+"\u0b4b\u0b4c"+"\u0b56\u0b57"+"\u0b62\u0b63"
-      + "\u0b82\u0b82"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcc"
-      + "\u0bd7\u0bd7"+"\u0c01\u0c03"+"\u0c3e\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4c"+"\u0c55\u0c56"+"\u0c62\u0c63"+"\u0c82\u0c83"
-      + "\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccc"+"\u0cd5\u0cd6"
-      + "\u0ce2\u0ce3"+"\u0d02\u0d03"+"\u0d3e\u0d44"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4c"+"\u0d57\u0d57"+"\u0d62\u0d63"+"\u0d82\u0d83"
-      + "\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"+"\u0df2\u0df3"
-      + "\u0e31\u0e31"+"\u0e34\u0e3a"+"\u0e4d\u0e4d"+"\u0eb1\u0eb1"
-      + "\u0eb4\u0eb9"+"\u0ebb\u0ebc"+"\u0ecd\u0ecd"+"\u0f71\u0f81"
-      + "\u0f90\u0f97"+"\u0f99\u0fbc"+"\u102b\u1036"+"\u1038\u1038"
-      + "\u103b\u103e"+"\u1056\u1059"+"\u105e\u1060"+"\u1062\u1062"
-      + "\u1067\u1068"+"\u1071\u1074"+"\u1082\u1086"+"\u135f\u135f"
-      + "\u1712\u1713"+"\u1732\u1733"+"\u1752\u1753"+"\u1772\u1773"
-      + "\u17b6\u17c8"+"\u18a9\u18a9"+"\u1920\u192b"+"\u1930\u1938"
-      + "\u19b0\u19c0"+"\u19c8\u19c9"+"\u1a17\u1a1b"+"\u1b00\u1b04"
-      + "\u1b35\u1b43"+"\u1b80\u1b82"+"\u1ba1\u1ba9"+"\u1c24\u1c35"
-      + "\u24b6\u24e9"+"\u2de0\u2dff"+"\ua823\ua827"+"\ua880\ua881"
-      + "\ua8b4\ua8c3"+"\ua926\ua92a"+"\ua947\ua952"+"\uaa29\uaa36"
-      + "\uaa43\uaa43"+"\uaa4c\uaa4d"+"\ufb1e\ufb1e"+"\ud802\ude01\ud802\ude03"
-      + "\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude0f",
-    // Unicode 5.1 property value: {otherdefaultignorablecodepoint}
-        "\u034f\u034f"+"\u115f\u1160"+"\u2065\u2069"+"\u3164\u3164"
-      + "\uffa0\uffa0"+"\ufff0\ufff8"+"\udb40\udc00\udb40\udc00"+"\udb40\udc02\udb40\udc1f"
-      + "\udb40\udc80\udb40\udcff"+"\udb40\uddf0\udb43\udfff",
-    // Unicode 5.1 property value: {othergraphemeextend}
-        "\u09be\u09be"+"\u09d7\u09d7"+"\u0b3e\u0b3e"+"\u0b57\u0b57"
-      + "\u0bbe\u0bbe"+"\u0bd7\u0bd7"+"\u0cc2\u0cc2"+"\u0cd5\u0cd6"
-      + "\u0d3e\u0d3e"+"\u0d57\u0d57"+"\u0dcf\u0dcf"+"\u0ddf\u0ddf"
-      + "\u200c\u200d"+"\uff9e\uff9f"+"\ud834\udd65\ud834\udd65"+"\ud834\udd6e\ud834\udd72",
-    // Unicode 5.1 property value: {otheridcontinue}
-        "\u00b7\u00b7"+"\u0387\u0387"+"\u1369\u1371",
-    // Unicode 5.1 property value: {otheridstart}
-        "\u2118\u2118"+"\u212e\u212e"+"\u309b\u309c",
-    // Unicode 5.1 property value: {otherlowercase}
-        "\u02b0\u02b8"+"\u02c0\u02c1"+"\u02e0\u02e4"+"\u0345\u0345"
-      + "\u037a\u037a"+"\u1d2c\u1d61"+"\u1d78\u1d78"+"\u1d9b\u1dbf"
-      + "\u2090\u2094"+"\u2170\u217f"+"\u24d0\u24e9"+"\u2c7d\u2c7d"
-      + "\ua770\ua770",
-    // Unicode 5.1 property value: {othermath}
-        "\u005e\u005e"+"\u03d0\u03d2"+"\u03d5\u03d5"+"\u03f0\u03f1"
-      + "\u03f4\u03f5"+"\u2016\u2016"+"\u2032\u2034"+"\u2040\u2040"
-      + "\u2061\u2064"+"\u207d\u207e"+"\u208d\u208e"+"\u20d0\u20dc"
-      + "\u20e1\u20e1"+"\u20e5\u20e6"+"\u20eb\u20ef"+"\u2102\u2102"
-      + "\u210a\u2113"+"\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"
-      + "\u2128\u2129"+"\u212c\u212d"+"\u212f\u2131"+"\u2133\u2138"
-      + "\u213c\u213f"+"\u2145\u2149"+"\u2195\u2199"+"\u219c\u219f"
-      + "\u21a1\u21a2"+"\u21a4\u21a5"+"\u21a7\u21a7"+"\u21a9\u21ad"
-      + "\u21b0\u21b1"+"\u21b6\u21b7"+"\u21bc\u21cd"+"\u21d0\u21d1"
-      + "\u21d3\u21d3"+"\u21d5\u21db"+"\u21dd\u21dd"+"\u21e4\u21e5"
-      + "\u23b4\u23b5"+"\u23b7\u23b7"+"\u23d0\u23d0"+"\u23e2\u23e2"
-      + "\u25a0\u25a1"+"\u25ae\u25b6"+"\u25bc\u25c0"+"\u25c6\u25c7"
-      + "\u25ca\u25cb"+"\u25cf\u25d3"+"\u25e2\u25e2"+"\u25e4\u25e4"
-      + "\u25e7\u25ec"+"\u2605\u2606"+"\u2640\u2640"+"\u2642\u2642"
-      + "\u2660\u2663"+"\u266d\u266e"+"\u27c5\u27c6"+"\u27e6\u27ef"
-      + "\u2983\u2998"+"\u29d8\u29db"+"\u29fc\u29fd"+"\ufe61\ufe61"
-      + "\ufe63\ufe63"+"\ufe68\ufe68"+"\uff3c\uff3c"+"\uff3e\uff3e"
-      + "\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"
-      + "\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"
-      + "\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"
-      + "\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udec0"
-      + "\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"
-      + "\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"
-      + "\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfcb"+"\ud835\udfce\ud835\udfff",
-    // Unicode 5.1 property value: {otheruppercase}
-        "\u2160\u216f"+"\u24b6\u24cf",
-    // Unicode 5.1 property value: {patternsyntax}
-        "\u0021\u002f"+"\u003a\u0040"+"\u005b\u005e"+"\u0060\u0060"
-      + "\u007b\u007e"+"\u00a1\u00a7"+"\u00a9\u00a9"+"\u00ab\u00ac"
-      + "\u00ae\u00ae"+"\u00b0\u00b1"+"\u00b6\u00b6"+"\u00bb\u00bb"
-      + "\u00bf\u00bf"+"\u00d7\u00d7"+"\u00f7\u00f7"+"\u2010\u2027"
-      + "\u2030\u203e"+"\u2041\u2053"+"\u2055\u205e"+"\u2190\u245f"
-      + "\u2500\u2775"+"\u2794\u2bff"+"\u2e00\u2e7f"+"\u3001\u3003"
-      + "\u3008\u3020"+"\u3030\u3030"+"\ufd3e\ufd3f"+"\ufe45\ufe46",
-    // Unicode 5.1 property value: {patternwhitespace}
-        "\t\r"+"\u0020\u0020"+"\u0085\u0085"+"\u200e\u200f"
-      + "\u2028\u2029",
-    // Unicode 5.1 property value: {pc}
-        "\u005f\u005f"+"\u203f\u2040"+"\u2054\u2054"+"\ufe33\ufe34"
-      + "\ufe4d\ufe4f"+"\uff3f\uff3f",
-    // Unicode 5.1 property value: {pd}
-        "\u002d\u002d"+"\u058a\u058a"+"\u05be\u05be"+"\u1806\u1806"
-      + "\u2010\u2015"+"\u2e17\u2e17"+"\u2e1a\u2e1a"+"\u301c\u301c"
-      + "\u3030\u3030"+"\u30a0\u30a0"+"\ufe31\ufe32"+"\ufe58\ufe58"
-      + "\ufe63\ufe63"+"\uff0d\uff0d",
-    // Unicode 5.1 property value: {pe}
-        "\u0029\u0029"+"\u005d\u005d"+"\u007d\u007d"+"\u0f3b\u0f3b"
-      + "\u0f3d\u0f3d"+"\u169c\u169c"+"\u2046\u2046"+"\u207e\u207e"
-      + "\u208e\u208e"+"\u232a\u232a"+"\u2769\u2769"+"\u276b\u276b"
-      + "\u276d\u276d"+"\u276f\u276f"+"\u2771\u2771"+"\u2773\u2773"
-      + "\u2775\u2775"+"\u27c6\u27c6"+"\u27e7\u27e7"+"\u27e9\u27e9"
-      + "\u27eb\u27eb"+"\u27ed\u27ed"+"\u27ef\u27ef"+"\u2984\u2984"
-      + "\u2986\u2986"+"\u2988\u2988"+"\u298a\u298a"+"\u298c\u298c"
-      + "\u298e\u298e"+"\u2990\u2990"+"\u2992\u2992"+"\u2994\u2994"
-      + "\u2996\u2996"+"\u2998\u2998"+"\u29d9\u29d9"+"\u29db\u29db"
-      + "\u29fd\u29fd"+"\u2e23\u2e23"+"\u2e25\u2e25"+"\u2e27\u2e27"
-      + "\u2e29\u2e29"+"\u3009\u3009"+"\u300b\u300b"+"\u300d\u300d"
-      + "\u300f\u300f"+"\u3011\u3011"+"\u3015\u3015"+"\u3017\u3017"
-      + "\u3019\u3019"+"\u301b\u301b"+"\u301e\u301f"+"\ufd3f\ufd3f"
-      + "\ufe18\ufe18"+"\ufe36\ufe36"+"\ufe38\ufe38"+"\ufe3a\ufe3a"
-      + "\ufe3c\ufe3c"+"\ufe3e\ufe3e"+"\ufe40\ufe40"+"\ufe42\ufe42"
-      + "\ufe44\ufe44"+"\ufe48\ufe48"+"\ufe5a\ufe5a"+"\ufe5c\ufe5c"
-      + "\ufe5e\ufe5e"+"\uff09\uff09"+"\uff3d\uff3d"+"\uff5d\uff5d"
-      + "\uff60\uff60"+"\uff63\uff63",
-    // Unicode 5.1 property value: {pf}
-        "\u00bb\u00bb"+"\u2019\u2019"+"\u201d\u201d"+"\u203a\u203a"
-      + "\u2e03\u2e03"+"\u2e05\u2e05"+"\u2e0a\u2e0a"+"\u2e0d\u2e0d"
-      + "\u2e1d\u2e1d"+"\u2e21\u2e21",
-    // Unicode 5.1 property value: {phagspa}
-        "\ua840\ua877",
-    // Unicode 5.1 property value: {phoenician}
-        "\ud802\udd00\ud802\udd19"+"\ud802\udd1f\ud802\udd1f",
-    // Unicode 5.1 property value: {pi}
-        "\u00ab\u00ab"+"\u2018\u2018"+"\u201b\u201c"+"\u201f\u201f"
-      + "\u2039\u2039"+"\u2e02\u2e02"+"\u2e04\u2e04"+"\u2e09\u2e09"
-      + "\u2e0c\u2e0c"+"\u2e1c\u2e1c"+"\u2e20\u2e20",
-    // Unicode 5.1 property value: {po}
-        "\u0021\u0023"+"\u0025\u0027"+"\u002a\u002a"+"\u002c\u002c"
-      + "\u002e\u002f"+"\u003a\u003b"+"\u003f\u0040"+"\\\\"
-      + "\u00a1\u00a1"+"\u00b7\u00b7"+"\u00bf\u00bf"+"\u037e\u037e"
-      + "\u0387\u0387"+"\u055a\u055f"+"\u0589\u0589"+"\u05c0\u05c0"
-      + "\u05c3\u05c3"+"\u05c6\u05c6"+"\u05f3\u05f4"+"\u0609\u060a"
-      + "\u060c\u060d"+"\u061b\u061b"+"\u061e\u061f"+"\u066a\u066d"
-      + "\u06d4\u06d4"+"\u0700\u070d"+"\u07f7\u07f9"+"\u0964\u0965"
-      + "\u0970\u0970"+"\u0df4\u0df4"+"\u0e4f\u0e4f"+"\u0e5a\u0e5b"
-      + "\u0f04\u0f12"+"\u0f85\u0f85"+"\u0fd0\u0fd4"+"\u104a\u104f"
-      + "\u10fb\u10fb"+"\u1361\u1368"+"\u166d\u166e"+"\u16eb\u16ed"
-      + "\u1735\u1736"+"\u17d4\u17d6"+"\u17d8\u17da"+"\u1800\u1805"
-      + "\u1807\u180a"+"\u1944\u1945"+"\u19de\u19df"+"\u1a1e\u1a1f"
-      + "\u1b5a\u1b60"+"\u1c3b\u1c3f"+"\u1c7e\u1c7f"+"\u2016\u2017"
-      + "\u2020\u2027"+"\u2030\u2038"+"\u203b\u203e"+"\u2041\u2043"
-      + "\u2047\u2051"+"\u2053\u2053"+"\u2055\u205e"+"\u2cf9\u2cfc"
-      + "\u2cfe\u2cff"+"\u2e00\u2e01"+"\u2e06\u2e08"+"\u2e0b\u2e0b"
-      + "\u2e0e\u2e16"+"\u2e18\u2e19"+"\u2e1b\u2e1b"+"\u2e1e\u2e1f"
-      + "\u2e2a\u2e2e"+"\u2e30\u2e30"+"\u3001\u3003"+"\u303d\u303d"
-      + "\u30fb\u30fb"+"\ua60d\ua60f"+"\ua673\ua673"+"\ua67e\ua67e"
-      + "\ua874\ua877"+"\ua8ce\ua8cf"+"\ua92e\ua92f"+"\ua95f\ua95f"
-      + "\uaa5c\uaa5f"+"\ufe10\ufe16"+"\ufe19\ufe19"+"\ufe30\ufe30"
-      + "\ufe45\ufe46"+"\ufe49\ufe4c"+"\ufe50\ufe52"+"\ufe54\ufe57"
-      + "\ufe5f\ufe61"+"\ufe68\ufe68"+"\ufe6a\ufe6b"+"\uff01\uff03"
-      + "\uff05\uff07"+"\uff0a\uff0a"+"\uff0c\uff0c"+"\uff0e\uff0f"
-      + "\uff1a\uff1b"+"\uff1f\uff20"+"\uff3c\uff3c"+"\uff61\uff61"
-      + "\uff64\uff65"+"\ud800\udd00\ud800\udd01"+"\ud800\udf9f\ud800\udf9f"+"\ud800\udfd0\ud800\udfd0"
-      + "\ud802\udd1f\ud802\udd1f"+"\ud802\udd3f\ud802\udd3f"+"\ud802\ude50\ud802\ude58"+"\ud809\udc70\ud809\udc73",
-    // Unicode 5.1 property value: {print}
-        "\u0020\u007e"+"\u00a0\u0377"+"\u037a\u037e"+"\u0384\u038a"
-      + "\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u0523"+"\u0531\u0556"
-      + "\u0559\u055f"+"\u0561\u0587"+"\u0589\u058a"+"\u0591\u05c7"
-      + "\u05d0\u05ea"+"\u05f0\u05f4"+"\u0600\u0603"+"\u0606\u061b"
-      + "\u061e\u061f"+"\u0621\u065e"+"\u0660\u070d"+"\u070f\u074a"
-      + "\u074d\u07b1"+"\u07c0\u07fa"+"\u0901\u0939"+"\u093c\u094d"
-      + "\u0950\u0954"+"\u0958\u0972"+"\u097b\u097f"+"\u0981\u0983"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bc\u09c4"+"\u09c7\u09c8"
-      + "\u09cb\u09ce"+"\u09d7\u09d7"+"\u09dc\u09dd"+"\u09df\u09e3"
-      + "\u09e6\u09fa"+"\u0a01\u0a03"+"\u0a05\u0a0a"+"\u0a0f\u0a10"
-      + "\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"
-      + "\u0a38\u0a39"+"\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"
-      + "\u0a4b\u0a4d"+"\u0a51\u0a51"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a66\u0a75"+"\u0a81\u0a83"+"\u0a85\u0a8d"+"\u0a8f\u0a91"
-      + "\u0a93\u0aa8"+"\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"
-      + "\u0abc\u0ac5"+"\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"
-      + "\u0ae0\u0ae3"+"\u0ae6\u0aef"+"\u0af1\u0af1"+"\u0b01\u0b03"
-      + "\u0b05\u0b0c"+"\u0b0f\u0b10"+"\u0b13\u0b28"+"\u0b2a\u0b30"
-      + "\u0b32\u0b33"+"\u0b35\u0b39"+"\u0b3c\u0b44"+"\u0b47\u0b48"
-      + "\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b5c\u0b5d"+"\u0b5f\u0b63"
-      + "\u0b66\u0b71"+"\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"
-      + "\u0b92\u0b95"+"\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"
-      + "\u0ba3\u0ba4"+"\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bbe\u0bc2"
-      + "\u0bc6\u0bc8"+"\u0bca\u0bcd"+"\u0bd0\u0bd0"+"\u0bd7\u0bd7"
-      + "\u0be6\u0bfa"+"\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"
-      + "\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c44"
-      + "\u0c46\u0c48"+"\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c58\u0c59"
-      + "\u0c60\u0c63"+"\u0c66\u0c6f"+"\u0c78\u0c7f"+"\u0c82\u0c83"
-      + "\u0c85\u0c8c"+"\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"
-      + "\u0cb5\u0cb9"+"\u0cbc\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"
-      + "\u0cd5\u0cd6"+"\u0cde\u0cde"+"\u0ce0\u0ce3"+"\u0ce6\u0cef"
-      + "\u0cf1\u0cf2"+"\u0d02\u0d03"+"\u0d05\u0d0c"+"\u0d0e\u0d10"
-      + "\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d44"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4d"+"\u0d57\u0d57"+"\u0d60\u0d63"+"\u0d66\u0d75"
-      + "\u0d79\u0d7f"+"\u0d82\u0d83"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0dca\u0dca"
-      + "\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"+"\u0df2\u0df4"
-      + "\u0e01\u0e3a"+"\u0e3f\u0e5b"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb9"+"\u0ebb\u0ebd"+"\u0ec0\u0ec4"
-      + "\u0ec6\u0ec6"+"\u0ec8\u0ecd"+"\u0ed0\u0ed9"+"\u0edc\u0edd"
-      + "\u0f00\u0f47"+"\u0f49\u0f6c"+"\u0f71\u0f8b"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fbe\u0fcc"+"\u0fce\u0fd4"+"\u1000\u1099"
-      + "\u109e\u10c5"+"\u10d0\u10fc"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"
-      + "\u1290\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"
-      + "\u1318\u135a"+"\u135f\u137c"+"\u1380\u1399"+"\u13a0\u13f4"
-      + "\u1401\u1676"+"\u1680\u169c"+"\u16a0\u16f0"+"\u1700\u170c"
-      + "\u170e\u1714"+"\u1720\u1736"+"\u1740\u1753"+"\u1760\u176c"
-      + "\u176e\u1770"+"\u1772\u1773"+"\u1780\u17dd"+"\u17e0\u17e9"
-      + "\u17f0\u17f9"+"\u1800\u180e"+"\u1810\u1819"+"\u1820\u1877"
-      + "\u1880\u18aa"+"\u1900\u191c"+"\u1920\u192b"+"\u1930\u193b"
-      + "\u1940\u1940"+"\u1944\u196d"+"\u1970\u1974"+"\u1980\u19a9"
-      + "\u19b0\u19c9"+"\u19d0\u19d9"+"\u19de\u1a1b"+"\u1a1e\u1a1f"
-      + "\u1b00\u1b4b"+"\u1b50\u1b7c"+"\u1b80\u1baa"+"\u1bae\u1bb9"
-      + "\u1c00\u1c37"+"\u1c3b\u1c49"+"\u1c4d\u1c7f"+"\u1d00\u1de6"
-      + "\u1dfe\u1f15"+"\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"
-      + "\u1f50\u1f57"+"\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"
-      + "\u1f5f\u1f7d"+"\u1f80\u1fb4"+"\u1fb6\u1fc4"+"\u1fc6\u1fd3"
-      + "\u1fd6\u1fdb"+"\u1fdd\u1fef"+"\u1ff2\u1ff4"+"\u1ff6\u1ffe"
-      + "\u2000\u2027"+"\u202a\u2064"+"\u206a\u2071"+"\u2074\u208e"
-      + "\u2090\u2094"+"\u20a0\u20b5"+"\u20d0\u20f0"+"\u2100\u214f"
-      + "\u2153\u2188"+"\u2190\u23e7"+"\u2400\u2426"+"\u2440\u244a"
-      + "\u2460\u269d"+"\u26a0\u26bc"+"\u26c0\u26c3"+"\u2701\u2704"
-      + "\u2706\u2709"+"\u270c\u2727"+"\u2729\u274b"+"\u274d\u274d"
-      + "\u274f\u2752"+"\u2756\u2756"+"\u2758\u275e"+"\u2761\u2794"
-      + "\u2798\u27af"+"\u27b1\u27be"+"\u27c0\u27ca"+"\u27cc\u27cc"
-      + "\u27d0\u2b4c"+"\u2b50\u2b54"+"\u2c00\u2c2e"+"\u2c30\u2c5e"
-      + "\u2c60\u2c6f"+"\u2c71\u2c7d"+"\u2c80\u2cea"+"\u2cf9\u2d25"
-      + "\u2d30\u2d65"+"\u2d6f\u2d6f"+"\u2d80\u2d96"+"\u2da0\u2da6"
-      + "\u2da8\u2dae"+"\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"
-      + "\u2dc8\u2dce"+"\u2dd0\u2dd6"+"\u2dd8\u2dde"+"\u2de0\u2e30"
-      + "\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5"+"\u2ff0\u2ffb"
-      + "\u3000\u303f"+"\u3041\u3096"+"\u3099\u30ff"+"\u3105\u312d"
-      + "\u3131\u318e"+"\u3190\u31b7"+"\u31c0\u31e3"+"\u31f0\u321e"
-      + "\u3220\u3243"+"\u3250\u32fe"+"\u3300\u4db5"+"\u4dc0\u9fc3"
-      + "\ua000\ua48c"+"\ua490\ua4c6"+"\ua500\ua62b"+"\ua640\ua65f"
-      + "\ua662\ua673"+"\ua67c\ua697"+"\ua700\ua78c"+"\ua7fb\ua82b"
-      + "\ua840\ua877"+"\ua880\ua8c4"+"\ua8ce\ua8d9"+"\ua900\ua953"
-      + "\ua95f\ua95f"+"\uaa00\uaa36"+"\uaa40\uaa4d"+"\uaa50\uaa59"
-      + "\uaa5c\uaa5f"+"\uac00\ud7a3"+"\ud800\ufa2d"+"\ufa30\ufa6a"
-      + "\ufa70\ufad9"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb36"
-      + "\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"
-      + "\ufb46\ufbb1"+"\ufbd3\ufd3f"+"\ufd50\ufd8f"+"\ufd92\ufdc7"
-      + "\ufdf0\ufdfd"+"\ufe00\ufe19"+"\ufe20\ufe26"+"\ufe30\ufe52"
-      + "\ufe54\ufe66"+"\ufe68\ufe6b"+"\ufe70\ufe74"+"\ufe76\ufefc"
-      + "\ufeff\ufeff"+"\uff01\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"
-      + "\uffd2\uffd7"+"\uffda\uffdc"+"\uffe0\uffe6"+"\uffe8\uffee"
-      + "\ufff9\ufffd",
-    // Unicode 5.1 property value: {ps}
-        "\u0028\u0028"+"\u005b\u005b"+"\u007b\u007b"+"\u0f3a\u0f3a"
-      + "\u0f3c\u0f3c"+"\u169b\u169b"+"\u201a\u201a"+"\u201e\u201e"
-      + "\u2045\u2045"+"\u207d\u207d"+"\u208d\u208d"+"\u2329\u2329"
-      + "\u2768\u2768"+"\u276a\u276a"+"\u276c\u276c"+"\u276e\u276e"
-      + "\u2770\u2770"+"\u2772\u2772"+"\u2774\u2774"+"\u27c5\u27c5"
-      + "\u27e6\u27e6"+"\u27e8\u27e8"+"\u27ea\u27ea"+"\u27ec\u27ec"
-      + "\u27ee\u27ee"+"\u2983\u2983"+"\u2985\u2985"+"\u2987\u2987"
-      + "\u2989\u2989"+"\u298b\u298b"+"\u298d\u298d"+"\u298f\u298f"
-      + "\u2991\u2991"+"\u2993\u2993"+"\u2995\u2995"+"\u2997\u2997"
-      + "\u29d8\u29d8"+"\u29da\u29da"+"\u29fc\u29fc"+"\u2e22\u2e22"
-      + "\u2e24\u2e24"+"\u2e26\u2e26"+"\u2e28\u2e28"+"\u3008\u3008"
-      + "\u300a\u300a"+"\u300c\u300c"+"\u300e\u300e"+"\u3010\u3010"
-      + "\u3014\u3014"+"\u3016\u3016"+"\u3018\u3018"+"\u301a\u301a"
-      + "\u301d\u301d"+"\ufd3e\ufd3e"+"\ufe17\ufe17"+"\ufe35\ufe35"
-      + "\ufe37\ufe37"+"\ufe39\ufe39"+"\ufe3b\ufe3b"+"\ufe3d\ufe3d"
-      + "\ufe3f\ufe3f"+"\ufe41\ufe41"+"\ufe43\ufe43"+"\ufe47\ufe47"
-      + "\ufe59\ufe59"+"\ufe5b\ufe5b"+"\ufe5d\ufe5d"+"\uff08\uff08"
-      + "\uff3b\uff3b"+"\uff5b\uff5b"+"\uff5f\uff5f"+"\uff62\uff62",
-    // Unicode 5.1 property value: {quotationmark}
-        "\"\""+"\u0027\u0027"+"\u00ab\u00ab"+"\u00bb\u00bb"
-      + "\u2018\u201f"+"\u2039\u203a"+"\u300c\u300f"+"\u301d\u301f"
-      + "\ufe41\ufe44"+"\uff02\uff02"+"\uff07\uff07"+"\uff62\uff63",
-    // Unicode 5.1 property value: {radical}
-        "\u2e80\u2e99"+"\u2e9b\u2ef3"+"\u2f00\u2fd5",
-    // Unicode 5.1 property value: {rejang}
-        "\ua930\ua953"+"\ua95f\ua95f",
-    // Unicode 5.1 property value: {runic}
-        "\u16a0\u16ea"+"\u16ee\u16f0",
-    // Unicode 5.1 property value: {saurashtra}
-        "\ua880\ua8c4"+"\ua8ce\ua8d9",
-    // Unicode 5.1 property value: {sc}
-        "\u0024\u0024"+"\u00a2\u00a5"+"\u060b\u060b"+"\u09f2\u09f3"
-      + "\u0af1\u0af1"+"\u0bf9\u0bf9"+"\u0e3f\u0e3f"+"\u17db\u17db"
-      + "\u20a0\u20b5"+"\ufdfc\ufdfc"+"\ufe69\ufe69"+"\uff04\uff04"
-      + "\uffe0\uffe1"+"\uffe5\uffe6",
-    // Unicode 5.1 property value: {sentencebreak=aterm}
-        "\u002e\u002e"+"\u2024\u2024"+"\ufe52\ufe52"+"\uff0e\uff0e",
-    // Unicode 5.1 property value: {sentencebreak=close}
-        "\"\""+"\u0027\u0029"+"\u005b\u005b"+"\u005d\u005d"
-      + "\u007b\u007b"+"\u007d\u007d"+"\u00ab\u00ab"+"\u00bb\u00bb"
-      + "\u0f3a\u0f3d"+"\u169b\u169c"+"\u2018\u201f"+"\u2039\u203a"
-      + "\u2045\u2046"+"\u207d\u207e"+"\u208d\u208e"+"\u2329\u232a"
-      + "\u275b\u275e"+"\u2768\u2775"+"\u27c5\u27c6"+"\u27e6\u27ef"
-      + "\u2983\u2998"+"\u29d8\u29db"+"\u29fc\u29fd"+"\u2e00\u2e0d"
-      + "\u2e1c\u2e1d"+"\u2e20\u2e29"+"\u3008\u3011"+"\u3014\u301b"
-      + "\u301d\u301f"+"\ufd3e\ufd3f"+"\ufe17\ufe18"+"\ufe35\ufe44"
-      + "\ufe47\ufe48"+"\ufe59\ufe5e"+"\uff08\uff09"+"\uff3b\uff3b"
-      + "\uff3d\uff3d"+"\uff5b\uff5b"+"\uff5d\uff5d"+"\uff5f\uff60"
-      + "\uff62\uff63",
-    // Unicode 5.1 property value: {sentencebreak=cr}
-        "\r\r",
-    // Unicode 5.1 property value: {sentencebreak=extend}
-        "\u0300\u036f"+"\u0483\u0489"+"\u0591\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c5"+"\u05c7\u05c7"+"\u0610\u061a"
-      + "\u064b\u065e"+"\u0670\u0670"+"\u06d6\u06dc"+"\u06de\u06e4"
-      + "\u06e7\u06e8"+"\u06ea\u06ed"+"\u0711\u0711"+"\u0730\u074a"
-      + "\u07a6\u07b0"+"\u07eb\u07f3"+"\u0901\u0903"+"\u093c\u093c"
-      + "\u093e\u094d"+"\u0951\u0954"+"\u0962\u0963"+"\u0981\u0983"
-      + "\u09bc\u09bc"+"\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cd"
-      + "\u09d7\u09d7"+"\u09e2\u09e3"+"\u0a01\u0a03"+"\u0a3c\u0a3c"
-      + "\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"+"\u0a51\u0a51"
-      + "\u0a70\u0a71"+"\u0a75\u0a75"+"\u0a81\u0a83"+"\u0abc\u0abc"
-      + "\u0abe\u0ac5"+"\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ae2\u0ae3"
-      + "\u0b01\u0b03"+"\u0b3c\u0b3c"+"\u0b3e\u0b44"+"\u0b47\u0b48"
-      + "\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b62\u0b63"+"\u0b82\u0b82"
-      + "\u0bbe\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcd"+"\u0bd7\u0bd7"
-      + "\u0c01\u0c03"+"\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4d"
-      + "\u0c55\u0c56"+"\u0c62\u0c63"+"\u0c82\u0c83"+"\u0cbc\u0cbc"
-      + "\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"
-      + "\u0ce2\u0ce3"+"\u0d02\u0d03"+"\u0d3e\u0d44"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4d"+"\u0d57\u0d57"+"\u0d62\u0d63"+"\u0d82\u0d83"
-      + "\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e31\u0e31"+"\u0e34\u0e3a"+"\u0e47\u0e4e"
-      + "\u0eb1\u0eb1"+"\u0eb4\u0eb9"+"\u0ebb\u0ebc"+"\u0ec8\u0ecd"
-      + "\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f3e\u0f3f"+"\u0f71\u0f84"+"\u0f86\u0f87"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u102b\u103e"+"\u1056\u1059"
-      + "\u105e\u1060"+"\u1062\u1064"+"\u1067\u106d"+"\u1071\u1074"
-      + "\u1082\u108d"+"\u108f\u108f"+"\u135f\u135f"+"\u1712\u1714"
-      + "\u1732\u1734"+"\u1752\u1753"+"\u1772\u1773"+"\u17b6\u17d3"
-      + "\u17dd\u17dd"+"\u180b\u180d"+"\u18a9\u18a9"+"\u1920\u192b"
-      + "\u1930\u193b"+"\u19b0\u19c0"+"\u19c8\u19c9"+"\u1a17\u1a1b"
-      + "\u1b00\u1b04"+"\u1b34\u1b44"+"\u1b6b\u1b73"+"\u1b80\u1b82"
-      + "\u1ba1\u1baa"+"\u1c24\u1c37"+"\u1dc0\u1de6"+"\u1dfe\u1dff"
-      + "\u200c\u200d"+"\u20d0\u20f0"+"\u2de0\u2dff"+"\u302a\u302f"
-      + "\u3099\u309a"+"\ua66f\ua672"+"\ua67c\ua67d"+"\ua802\ua802"
-      + "\ua806\ua806"+"\ua80b\ua80b"+"\ua823\ua827"+"\ua880\ua881"
-      + "\ua8b4\ua8c4"+"\ua926\ua92d"+"\ua947\ua953"+"\uaa29\uaa36"
-      + "\uaa43\uaa43"+"\uaa4c\uaa4d"+"\ufb1e\ufb1e"+"\ufe00\ufe0f"
-      + "\ufe20\ufe26"+"\uff9e\uff9f"+"\ud800\uddfd\ud800\uddfd"+"\ud802\ude01\ud802\ude03"
-      + "\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude0f"+"\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude3f"
-      + "\ud834\udd65\ud834\udd69"+"\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad"+"\ud834\ude42\ud834\ude44"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {sentencebreak=format}
-        "\u00ad\u00ad"+"\u0600\u0603"+"\u06dd\u06dd"+"\u070f\u070f"
-      + "\u17b4\u17b5"+"\u200b\u200b"+"\u200e\u200f"+"\u202a\u202e"
-      + "\u2060\u2064"+"\u206a\u206f"+"\ufeff\ufeff"+"\ufff9\ufffb"
-      + "\ud834\udd73\ud834\udd7a"+"\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f",
-    // Unicode 5.1 property value: {sentencebreak=lf}
-        "\n\n",
-    // Unicode 5.1 property value: {sentencebreak=lower}
-        "\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"+"\u00ba\u00ba"
-      + "\u00df\u00f6"+"\u00f8\u00ff"+"\u0101\u0101"+"\u0103\u0103"
-      + "\u0105\u0105"+"\u0107\u0107"+"\u0109\u0109"+"\u010b\u010b"
-      + "\u010d\u010d"+"\u010f\u010f"+"\u0111\u0111"+"\u0113\u0113"
-      + "\u0115\u0115"+"\u0117\u0117"+"\u0119\u0119"+"\u011b\u011b"
-      + "\u011d\u011d"+"\u011f\u011f"+"\u0121\u0121"+"\u0123\u0123"
-      + "\u0125\u0125"+"\u0127\u0127"+"\u0129\u0129"+"\u012b\u012b"
-      + "\u012d\u012d"+"\u012f\u012f"+"\u0131\u0131"+"\u0133\u0133"
-      + "\u0135\u0135"+"\u0137\u0138"+"\u013a\u013a"+"\u013c\u013c"
-      + "\u013e\u013e"+"\u0140\u0140"+"\u0142\u0142"+"\u0144\u0144"
-      + "\u0146\u0146"+"\u0148\u0149"+"\u014b\u014b"+"\u014d\u014d"
-      + "\u014f\u014f"+"\u0151\u0151"+"\u0153\u0153"+"\u0155\u0155"
-      + "\u0157\u0157"+"\u0159\u0159"+"\u015b\u015b"+"\u015d\u015d"
-      + "\u015f\u015f"+"\u0161\u0161"+"\u0163\u0163"+"\u0165\u0165"
-      + "\u0167\u0167"+"\u0169\u0169"+"\u016b\u016b"+"\u016d\u016d"
-      + "\u016f\u016f"+"\u0171\u0171"+"\u0173\u0173"+"\u0175\u0175"
-      + "\u0177\u0177"+"\u017a\u017a"+"\u017c\u017c"+"\u017e\u0180"
-      + "\u0183\u0183"+"\u0185\u0185"+"\u0188\u0188"+"\u018c\u018d"
-      + "\u0192\u0192"+"\u0195\u0195"+"\u0199\u019b"+"\u019e\u019e"
-      + "\u01a1\u01a1"+"\u01a3\u01a3"+"\u01a5\u01a5"+"\u01a8\u01a8"
-      + "\u01aa\u01ab"+"\u01ad\u01ad"+"\u01b0\u01b0"+"\u01b4\u01b4"
-      + "\u01b6\u01b6"+"\u01b9\u01ba"+"\u01bd\u01bf"+"\u01c6\u01c6"
-      + "\u01c9\u01c9"+"\u01cc\u01cc"+"\u01ce\u01ce"+"\u01d0\u01d0"
-      + "\u01d2\u01d2"+"\u01d4\u01d4"+"\u01d6\u01d6"+"\u01d8\u01d8"
-      + "\u01da\u01da"+"\u01dc\u01dd"+"\u01df\u01df"+"\u01e1\u01e1"
-      + "\u01e3\u01e3"+"\u01e5\u01e5"+"\u01e7\u01e7"+"\u01e9\u01e9"
-      + "\u01eb\u01eb"+"\u01ed\u01ed"+"\u01ef\u01f0"+"\u01f3\u01f3"
-      + "\u01f5\u01f5"+"\u01f9\u01f9"+"\u01fb\u01fb"+"\u01fd\u01fd"
-      + "\u01ff\u01ff"+"\u0201\u0201"+"\u0203\u0203"+"\u0205\u0205"
-      + "\u0207\u0207"+"\u0209\u0209"+"\u020b\u020b"+"\u020d\u020d"
-      + "\u020f\u020f"+"\u0211\u0211"+"\u0213\u0213"+"\u0215\u0215"
-      + "\u0217\u0217"+"\u0219\u0219"+"\u021b\u021b"+"\u021d\u021d"
-      + "\u021f\u021f"+"\u0221\u0221"+"\u0223\u0223"+"\u0225\u0225"
-      + "\u0227\u0227"+"\u0229\u0229"+"\u022b\u022b"+"\u022d\u022d"
-      + "\u022f\u022f"+"\u0231\u0231"+"\u0233\u0239"+"\u023c\u023c"
-      + "\u023f\u0240"+"\u0242\u0242"+"\u0247\u0247"+"\u0249\u0249"
-      + "\u024b\u024b"+"\u024d\u024d"+"\u024f\u0293"+"\u0295\u02b8"
-      + "\u02c0\u02c1"+"\u02e0\u02e4"+"\u0371\u0371"+"\u0373\u0373"
-      + "\u0377\u0377"+"\u037a\u037d"+"\u0390\u0390"+"\u03ac\u03ce"
-      + "\u03d0\u03d1"+"\u03d5\u03d7"+"\u03d9\u03d9"+"\u03db\u03db"
-      + "\u03dd\u03dd"+"\u03df\u03df"+"\u03e1\u03e1"+"\u03e3\u03e3"
-      + "\u03e5\u03e5"+"\u03e7\u03e7"+"\u03e9\u03e9"+"\u03eb\u03eb"
-      + "\u03ed\u03ed"+"\u03ef\u03f3"+"\u03f5\u03f5"+"\u03f8\u03f8"
-      + "\u03fb\u03fc"+"\u0430\u045f"+"\u0461\u0461"+"\u0463\u0463"
-      + "\u0465\u0465"+"\u0467\u0467"+"\u0469\u0469"+"\u046b\u046b"
-      + "\u046d\u046d"+"\u046f\u046f"+"\u0471\u0471"+"\u0473\u0473"
-      + "\u0475\u0475"+"\u0477\u0477"+"\u0479\u0479"+"\u047b\u047b"
-      + "\u047d\u047d"+"\u047f\u047f"+"\u0481\u0481"+"\u048b\u048b"
-      + "\u048d\u048d"+"\u048f\u048f"+"\u0491\u0491"+"\u0493\u0493"
-      + "\u0495\u0495"+"\u0497\u0497"+"\u0499\u0499"+"\u049b\u049b"
-      + "\u049d\u049d"+"\u049f\u049f"+"\u04a1\u04a1"+"\u04a3\u04a3"
-      + "\u04a5\u04a5"+"\u04a7\u04a7"+"\u04a9\u04a9"+"\u04ab\u04ab"
-      + "\u04ad\u04ad"+"\u04af\u04af"+"\u04b1\u04b1"+"\u04b3\u04b3"
-      + "\u04b5\u04b5"+"\u04b7\u04b7"+"\u04b9\u04b9"+"\u04bb\u04bb"
-      + "\u04bd\u04bd"+"\u04bf\u04bf"+"\u04c2\u04c2"+"\u04c4\u04c4"
-      + "\u04c6\u04c6"+"\u04c8\u04c8"+"\u04ca\u04ca"+"\u04cc\u04cc"
-      + "\u04ce\u04cf"+"\u04d1\u04d1"+"\u04d3\u04d3"+"\u04d5\u04d5"
-      + "\u04d7\u04d7"+"\u04d9\u04d9"+"\u04db\u04db"+"\u04dd\u04dd"
-      + "\u04df\u04df"+"\u04e1\u04e1"+"\u04e3\u04e3"+"\u04e5\u04e5"
-      + "\u04e7\u04e7"+"\u04e9\u04e9"+"\u04eb\u04eb"+"\u04ed\u04ed"
-      + "\u04ef\u04ef"+"\u04f1\u04f1"+"\u04f3\u04f3"+"\u04f5\u04f5"
-      + "\u04f7\u04f7"+"\u04f9\u04f9"+"\u04fb\u04fb"+"\u04fd\u04fd"
-      + "\u04ff\u04ff"+"\u0501\u0501"+"\u0503\u0503"+"\u0505\u0505"
-      + "\u0507\u0507"+"\u0509\u0509"+"\u050b\u050b"+"\u050d\u050d"
-      + "\u050f\u050f"+"\u0511\u0511"+"\u0513\u0513"+"\u0515\u0515"
-      + "\u0517\u0517"+"\u0519\u0519"+"\u051b\u051b"+"\u051d\u051d"
-      + "\u051f\u051f"+"\u0521\u0521"+"\u0523\u0523"+"\u0561\u0587"
-      + "\u1d00\u1dbf"+"\u1e01\u1e01"+"\u1e03\u1e03"+"\u1e05\u1e05"
-      + "\u1e07\u1e07"+"\u1e09\u1e09"+"\u1e0b\u1e0b"+"\u1e0d\u1e0d"
-      + "\u1e0f\u1e0f"+"\u1e11\u1e11"+"\u1e13\u1e13"+"\u1e15\u1e15"
-      + "\u1e17\u1e17"+"\u1e19\u1e19"+"\u1e1b\u1e1b"+"\u1e1d\u1e1d"
-      + "\u1e1f\u1e1f"+"\u1e21\u1e21"+"\u1e23\u1e23"+"\u1e25\u1e25"
-      + "\u1e27\u1e27"+"\u1e29\u1e29"+"\u1e2b\u1e2b"+"\u1e2d\u1e2d"
-      + "\u1e2f\u1e2f"+"\u1e31\u1e31"+"\u1e33\u1e33"+"\u1e35\u1e35"
-      + "\u1e37\u1e37"+"\u1e39\u1e39"+"\u1e3b\u1e3b"+"\u1e3d\u1e3d"
-      + "\u1e3f\u1e3f"+"\u1e41\u1e41"+"\u1e43\u1e43"+"\u1e45\u1e45"
-      + "\u1e47\u1e47"+"\u1e49\u1e49"+"\u1e4b\u1e4b"+"\u1e4d\u1e4d"
-      + "\u1e4f\u1e4f"+"\u1e51\u1e51"+"\u1e53\u1e53"+"\u1e55\u1e55"
-      + "\u1e57\u1e57"+"\u1e59\u1e59"+"\u1e5b\u1e5b"+"\u1e5d\u1e5d"
-      + "\u1e5f\u1e5f"+"\u1e61\u1e61"+"\u1e63\u1e63"+"\u1e65\u1e65"
-      + "\u1e67\u1e67"+"\u1e69\u1e69"+"\u1e6b\u1e6b"+"\u1e6d\u1e6d"
-      + "\u1e6f\u1e6f"+"\u1e71\u1e71"+"\u1e73\u1e73"+"\u1e75\u1e75"
-      + "\u1e77\u1e77"+"\u1e79\u1e79"+"\u1e7b\u1e7b"+"\u1e7d\u1e7d"
-      + "\u1e7f\u1e7f"+"\u1e81\u1e81"+"\u1e83\u1e83"+"\u1e85\u1e85"
-      + "\u1e87\u1e87"+"\u1e89\u1e89"+"\u1e8b\u1e8b"+"\u1e8d\u1e8d"
-      + "\u1e8f\u1e8f"+"\u1e91\u1e91"+"\u1e93\u1e93"+"\u1e95\u1e9d"
-      + "\u1e9f\u1e9f"+"\u1ea1\u1ea1"+"\u1ea3\u1ea3"+"\u1ea5\u1ea5"
-      + "\u1ea7\u1ea7"+"\u1ea9\u1ea9"+"\u1eab\u1eab"+"\u1ead\u1ead"
-      + "\u1eaf\u1eaf"+"\u1eb1\u1eb1"+"\u1eb3\u1eb3"+"\u1eb5\u1eb5"
-      + "\u1eb7\u1eb7"+"\u1eb9\u1eb9"+"\u1ebb\u1ebb"+"\u1ebd\u1ebd"
-      + "\u1ebf\u1ebf"+"\u1ec1\u1ec1"+"\u1ec3\u1ec3"+"\u1ec5\u1ec5"
-      + "\u1ec7\u1ec7"+"\u1ec9\u1ec9"+"\u1ecb\u1ecb"+"\u1ecd\u1ecd"
-      + "\u1ecf\u1ecf"+"\u1ed1\u1ed1"+"\u1ed3\u1ed3"+"\u1ed5\u1ed5"
-      + "\u1ed7\u1ed7"+"\u1ed9\u1ed9"+"\u1edb\u1edb"+"\u1edd\u1edd"
-      + "\u1edf\u1edf"+"\u1ee1\u1ee1"+"\u1ee3\u1ee3"+"\u1ee5\u1ee5"
-      + "\u1ee7\u1ee7"+"\u1ee9\u1ee9"+"\u1eeb\u1eeb"+"\u1eed\u1eed"
-      + "\u1eef\u1eef"+"\u1ef1\u1ef1"+"\u1ef3\u1ef3"+"\u1ef5\u1ef5"
-      + "\u1ef7\u1ef7"+"\u1ef9\u1ef9"+"\u1efb\u1efb"+"\u1efd\u1efd"
-      + "\u1eff\u1f07"+"\u1f10\u1f15"+"\u1f20\u1f27"+"\u1f30\u1f37"
-      + "\u1f40\u1f45"+"\u1f50\u1f57"+"\u1f60\u1f67"+"\u1f70\u1f7d"
-      + "\u1f80\u1f87"+"\u1f90\u1f97"+"\u1fa0\u1fa7"+"\u1fb0\u1fb4"
-      + "\u1fb6\u1fb7"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"+"\u1fc6\u1fc7"
-      + "\u1fd0\u1fd3"+"\u1fd6\u1fd7"+"\u1fe0\u1fe7"+"\u1ff2\u1ff4"
-      + "\u1ff6\u1ff7"+"\u2071\u2071"+"\u207f\u207f"+"\u2090\u2094"
-      + "\u210a\u210a"+"\u210e\u210f"+"\u2113\u2113"+"\u212f\u212f"
-      + "\u2134\u2134"+"\u2139\u2139"+"\u213c\u213d"+"\u2146\u2149"
-      + "\u214e\u214e"+"\u2170\u217f"+"\u2184\u2184"+"\u24d0\u24e9"
-      + "\u2c30\u2c5e"+"\u2c61\u2c61"+"\u2c65\u2c66"+"\u2c68\u2c68"
-      + "\u2c6a\u2c6a"+"\u2c6c\u2c6c"+"\u2c71\u2c71"+"\u2c73\u2c74"
-      + "\u2c76\u2c7d"+"\u2c81\u2c81"+"\u2c83\u2c83"+"\u2c85\u2c85"
-      + "\u2c87\u2c87"+"\u2c89\u2c89"+"\u2c8b\u2c8b"+"\u2c8d\u2c8d"
-      + "\u2c8f\u2c8f"+"\u2c91\u2c91"+"\u2c93\u2c93"+"\u2c95\u2c95"
-      + "\u2c97\u2c97"+"\u2c99\u2c99"+"\u2c9b\u2c9b"+"\u2c9d\u2c9d"
-      + "\u2c9f\u2c9f"+"\u2ca1\u2ca1"+"\u2ca3\u2ca3"+"\u2ca5\u2ca5"
-      + "\u2ca7\u2ca7"+"\u2ca9\u2ca9"+"\u2cab\u2cab"+"\u2cad\u2cad"
-      + "\u2caf\u2caf"+"\u2cb1\u2cb1"+"\u2cb3\u2cb3"+"\u2cb5\u2cb5"
-      + "\u2cb7\u2cb7"+"\u2cb9\u2cb9"+"\u2cbb\u2cbb"+"\u2cbd\u2cbd"
-      + "\u2cbf\u2cbf"+"\u2cc1\u2cc1"+"\u2cc3\u2cc3"+"\u2cc5\u2cc5"
-      + "\u2cc7\u2cc7"+"\u2cc9\u2cc9"+"\u2ccb\u2ccb"+"\u2ccd\u2ccd"
-      + "\u2ccf\u2ccf"+"\u2cd1\u2cd1"+"\u2cd3\u2cd3"+"\u2cd5\u2cd5"
-      + "\u2cd7\u2cd7"+"\u2cd9\u2cd9"+"\u2cdb\u2cdb"+"\u2cdd\u2cdd"
-      + "\u2cdf\u2cdf"+"\u2ce1\u2ce1"+"\u2ce3\u2ce4"+"\u2d00\u2d25"
-      + "\ua641\ua641"+"\ua643\ua643"+"\ua645\ua645"+"\ua647\ua647"
-      + "\ua649\ua649"+"\ua64b\ua64b"+"\ua64d\ua64d"+"\ua64f\ua64f"
-      + "\ua651\ua651"+"\ua653\ua653"+"\ua655\ua655"+"\ua657\ua657"
-      + "\ua659\ua659"+"\ua65b\ua65b"+"\ua65d\ua65d"+"\ua65f\ua65f"
-      + "\ua663\ua663"+"\ua665\ua665"+"\ua667\ua667"+"\ua669\ua669"
-      + "\ua66b\ua66b"+"\ua66d\ua66d"+"\ua681\ua681"+"\ua683\ua683"
-      + "\ua685\ua685"+"\ua687\ua687"+"\ua689\ua689"+"\ua68b\ua68b"
-      + "\ua68d\ua68d"+"\ua68f\ua68f"+"\ua691\ua691"+"\ua693\ua693"
-      + "\ua695\ua695"+"\ua697\ua697"+"\ua723\ua723"+"\ua725\ua725"
-      + "\ua727\ua727"+"\ua729\ua729"+"\ua72b\ua72b"+"\ua72d\ua72d"
-      + "\ua72f\ua731"+"\ua733\ua733"+"\ua735\ua735"+"\ua737\ua737"
-      + "\ua739\ua739"+"\ua73b\ua73b"+"\ua73d\ua73d"+"\ua73f\ua73f"
-      + "\ua741\ua741"+"\ua743\ua743"+"\ua745\ua745"+"\ua747\ua747"
-      + "\ua749\ua749"+"\ua74b\ua74b"+"\ua74d\ua74d"+"\ua74f\ua74f"
-      + "\ua751\ua751"+"\ua753\ua753"+"\ua755\ua755"+"\ua757\ua757"
-      + "\ua759\ua759"+"\ua75b\ua75b"+"\ua75d\ua75d"+"\ua75f\ua75f"
-      + "\ua761\ua761"+"\ua763\ua763"+"\ua765\ua765"+"\ua767\ua767"
-      + "\ua769\ua769"+"\ua76b\ua76b"+"\ua76d\ua76d"+"\ua76f\ua778"
-      + "\ua77a\ua77a"+"\ua77c\ua77c"+"\ua77f\ua77f"+"\ua781\ua781"
-      + "\ua783\ua783"+"\ua785\ua785"+"\ua787\ua787"+"\ua78c\ua78c"
-      + "\ufb00\ufb06"+"\ufb13\ufb17"+"\uff41\uff5a"+"\ud801\udc28\ud801\udc4f"
-      + "\ud835\udc1a\ud835\udc33"+"\ud835\udc4e\ud835\udc54"+"\ud835\udc56\ud835\udc67"+"\ud835\udc82\ud835\udc9b"
-      + "\ud835\udcb6\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udccf"
-      + "\ud835\udcea\ud835\udd03"+"\ud835\udd1e\ud835\udd37"+"\ud835\udd52\ud835\udd6b"+"\ud835\udd86\ud835\udd9f"
-      + "\ud835\uddba\ud835\uddd3"+"\ud835\uddee\ud835\ude07"+"\ud835\ude22\ud835\ude3b"+"\ud835\ude56\ud835\ude6f"
-      + "\ud835\ude8a\ud835\udea5"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udee1"+"\ud835\udefc\ud835\udf14"
-      + "\ud835\udf16\ud835\udf1b"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf55"+"\ud835\udf70\ud835\udf88"
-      + "\ud835\udf8a\ud835\udf8f"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfc9"+"\ud835\udfcb\ud835\udfcb",
-    // Unicode 5.1 property value: {sentencebreak=numeric}
-        "\u0030\u0039"+"\u0660\u0669"+"\u066b\u066c"+"\u06f0\u06f9"
-      + "\u07c0\u07c9"+"\u0966\u096f"+"\u09e6\u09ef"+"\u0a66\u0a6f"
-      + "\u0ae6\u0aef"+"\u0b66\u0b6f"+"\u0be6\u0bef"+"\u0c66\u0c6f"
-      + "\u0ce6\u0cef"+"\u0d66\u0d6f"+"\u0e50\u0e59"+"\u0ed0\u0ed9"
-      + "\u0f20\u0f29"+"\u1040\u1049"+"\u1090\u1099"+"\u17e0\u17e9"
-      + "\u1810\u1819"+"\u1946\u194f"+"\u19d0\u19d9"+"\u1b50\u1b59"
-      + "\u1bb0\u1bb9"+"\u1c40\u1c49"+"\u1c50\u1c59"+"\ua620\ua629"
-      + "\ua8d0\ua8d9"+"\ua900\ua909"+"\uaa50\uaa59"+"\ud801\udca0\ud801\udca9"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 5.1 property value: {sentencebreak=oletter}
-        "\u01bb\u01bb"+"\u01c0\u01c3"+"\u0294\u0294"+"\u02b9\u02bf"
-      + "\u02c6\u02d1"+"\u02ec\u02ec"+"\u02ee\u02ee"+"\u0374\u0374"
-      + "\u0559\u0559"+"\u05d0\u05ea"+"\u05f0\u05f3"+"\u0621\u064a"
-      + "\u066e\u066f"+"\u0671\u06d3"+"\u06d5\u06d5"+"\u06e5\u06e6"
-      + "\u06ee\u06ef"+"\u06fa\u06fc"+"\u06ff\u06ff"+"\u0710\u0710"
-      + "\u0712\u072f"+"\u074d\u07a5"+"\u07b1\u07b1"+"\u07ca\u07ea"
-      + "\u07f4\u07f5"+"\u07fa\u07fa"+"\u0904\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0971\u0972"+"\u097b\u097f"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bd\u09bd"+"\u09ce\u09ce"
-      + "\u09dc\u09dd"+"\u09df\u09e1"+"\u09f0\u09f1"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a72\u0a74"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0abd"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae1"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"
-      + "\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b71\u0b71"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bd0\u0bd0"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3d\u0c3d"+"\u0c58\u0c59"+"\u0c60\u0c61"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbd\u0cbd"+"\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d3d"
-      + "\u0d60\u0d61"+"\u0d7a\u0d7f"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0e01\u0e30"
-      + "\u0e32\u0e33"+"\u0e40\u0e46"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb0"+"\u0eb2\u0eb3"+"\u0ebd\u0ebd"
-      + "\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0edc\u0edd"+"\u0f00\u0f00"
-      + "\u0f40\u0f47"+"\u0f49\u0f6c"+"\u0f88\u0f8b"+"\u1000\u102a"
-      + "\u103f\u103f"+"\u1050\u1055"+"\u105a\u105d"+"\u1061\u1061"
-      + "\u1065\u1066"+"\u106e\u1070"+"\u1075\u1081"+"\u108e\u108e"
-      + "\u10d0\u10fa"+"\u10fc\u10fc"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"
-      + "\u1290\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"
-      + "\u1318\u135a"+"\u1380\u138f"+"\u13a0\u13f4"+"\u1401\u166c"
-      + "\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"
-      + "\u1700\u170c"+"\u170e\u1711"+"\u1720\u1731"+"\u1740\u1751"
-      + "\u1760\u176c"+"\u176e\u1770"+"\u1780\u17b3"+"\u17d7\u17d7"
-      + "\u17dc\u17dc"+"\u1820\u1877"+"\u1880\u18a8"+"\u18aa\u18aa"
-      + "\u1900\u191c"+"\u1950\u196d"+"\u1970\u1974"+"\u1980\u19a9"
-      + "\u19c1\u19c7"+"\u1a00\u1a16"+"\u1b05\u1b33"+"\u1b45\u1b4b"
-      + "\u1b83\u1ba0"+"\u1bae\u1baf"+"\u1c00\u1c23"+"\u1c4d\u1c4f"
-      + "\u1c5a\u1c7d"+"\u2135\u2138"+"\u2180\u2182"+"\u2185\u2188"
-      + "\u2d30\u2d65"+"\u2d6f\u2d6f"+"\u2d80\u2d96"+"\u2da0\u2da6"
-      + "\u2da8\u2dae"+"\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"
-      + "\u2dc8\u2dce"+"\u2dd0\u2dd6"+"\u2dd8\u2dde"+"\u2e2f\u2e2f"
-      + "\u3005\u3007"+"\u3021\u3029"+"\u3031\u3035"+"\u3038\u303c"
-      + "\u3041\u3096"+"\u309d\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"
-      + "\u3105\u312d"+"\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"
-      + "\u3400\u4db5"+"\u4e00\u9fc3"+"\ua000\ua48c"+"\ua500\ua60c"
-      + "\ua610\ua61f"+"\ua62a\ua62b"+"\ua66e\ua66e"+"\ua67f\ua67f"
-      + "\ua717\ua71f"+"\ua788\ua788"+"\ua7fb\ua801"+"\ua803\ua805"
-      + "\ua807\ua80a"+"\ua80c\ua822"+"\ua840\ua873"+"\ua882\ua8b3"
-      + "\ua90a\ua925"+"\ua930\ua946"+"\uaa00\uaa28"+"\uaa40\uaa42"
-      + "\uaa44\uaa4b"+"\uac00\ud7a3"+"\uf900\ufa2d"+"\ufa30\ufa6a"
-      + "\ufa70\ufad9"+"\ufb1d\ufb1d"+"\ufb1f\ufb28"+"\ufb2a\ufb36"
-      + "\ufb38\ufb3c"+"\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"
-      + "\ufb46\ufbb1"+"\ufbd3\ufd3d"+"\ufd50\ufd8f"+"\ufd92\ufdc7"
-      + "\ufdf0\ufdfb"+"\ufe70\ufe74"+"\ufe76\ufefc"+"\uff66\uff9d"
-      + "\uffa0\uffbe"+"\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"
-      + "\uffda\uffdc"+"\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"
-      + "\ud800\udc3c\ud800\udc3d"+"\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"
-      + "\ud800\udd40\ud800\udd74"+"\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"
-      + "\ud800\udf30\ud800\udf4a"+"\ud800\udf80\ud800\udf9d"+"\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"
-      + "\ud800\udfd1\ud800\udfd5"+"\ud801\udc50\ud801\udc9d"+"\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"
-      + "\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f"
-      + "\ud802\udd00\ud802\udd15"+"\ud802\udd20\ud802\udd39"+"\ud802\ude00\ud802\ude00"+"\ud802\ude10\ud802\ude13"
-      + "\ud802\ude15\ud802\ude17"+"\ud802\ude19\ud802\ude33"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"
-      + "\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {sentencebreak=other}
-        "\000\u0008"+"\u000e\u001f"+"\u0023\u0026"+"\u002a\u002b"
-      + "\u002f\u002f"+"\u003b\u003e"+"\u0040\u0040"+"\\\\"
-      + "\u005e\u0060"+"\u007c\u007c"+"\u007e\u0084"+"\u0086\u009f"
-      + "\u00a1\u00a9"+"\u00ac\u00ac"+"\u00ae\u00b4"+"\u00b6\u00b9"
-      + "\u00bc\u00bf"+"\u00d7\u00d7"+"\u00f7\u00f7"+"\u02c2\u02c5"
-      + "\u02d2\u02df"+"\u02e5\u02eb"+"\u02ed\u02ed"+"\u02ef\u02ff"
-      + "\u0375\u0375"+"\u0378\u0379"+"\u037e\u0385"+"\u0387\u0387"
-      + "\u038b\u038b"+"\u038d\u038d"+"\u03a2\u03a2"+"\u03f6\u03f6"
-      + "\u0482\u0482"+"\u0524\u0530"+"\u0557\u0558"+"\u055a\u055b"
-      + "\u055f\u0560"+"\u0588\u0588"+"\u058a\u0590"+"\u05be\u05be"
-      + "\u05c0\u05c0"+"\u05c3\u05c3"+"\u05c6\u05c6"+"\u05c8\u05cf"
-      + "\u05eb\u05ef"+"\u05f4\u05ff"+"\u0604\u060b"+"\u060e\u060f"
-      + "\u061b\u061e"+"\u0620\u0620"+"\u065f\u065f"+"\u066a\u066a"
-      + "\u066d\u066d"+"\u06e9\u06e9"+"\u06fd\u06fe"+"\u0703\u070e"
-      + "\u074b\u074c"+"\u07b2\u07bf"+"\u07f6\u07f7"+"\u07fb\u0900"
-      + "\u093a\u093b"+"\u094e\u094f"+"\u0955\u0957"+"\u0970\u0970"
-      + "\u0973\u097a"+"\u0980\u0980"+"\u0984\u0984"+"\u098d\u098e"
-      + "\u0991\u0992"+"\u09a9\u09a9"+"\u09b1\u09b1"+"\u09b3\u09b5"
-      + "\u09ba\u09bb"+"\u09c5\u09c6"+"\u09c9\u09ca"+"\u09cf\u09d6"
-      + "\u09d8\u09db"+"\u09de\u09de"+"\u09e4\u09e5"+"\u09f2\u0a00"
-      + "\u0a04\u0a04"+"\u0a0b\u0a0e"+"\u0a11\u0a12"+"\u0a29\u0a29"
-      + "\u0a31\u0a31"+"\u0a34\u0a34"+"\u0a37\u0a37"+"\u0a3a\u0a3b"
-      + "\u0a3d\u0a3d"+"\u0a43\u0a46"+"\u0a49\u0a4a"+"\u0a4e\u0a50"
-      + "\u0a52\u0a58"+"\u0a5d\u0a5d"+"\u0a5f\u0a65"+"\u0a76\u0a80"
-      + "\u0a84\u0a84"+"\u0a8e\u0a8e"+"\u0a92\u0a92"+"\u0aa9\u0aa9"
-      + "\u0ab1\u0ab1"+"\u0ab4\u0ab4"+"\u0aba\u0abb"+"\u0ac6\u0ac6"
-      + "\u0aca\u0aca"+"\u0ace\u0acf"+"\u0ad1\u0adf"+"\u0ae4\u0ae5"
-      + "\u0af0\u0b00"+"\u0b04\u0b04"+"\u0b0d\u0b0e"+"\u0b11\u0b12"
-      + "\u0b29\u0b29"+"\u0b31\u0b31"+"\u0b34\u0b34"+"\u0b3a\u0b3b"
-      + "\u0b45\u0b46"+"\u0b49\u0b4a"+"\u0b4e\u0b55"+"\u0b58\u0b5b"
-      + "\u0b5e\u0b5e"+"\u0b64\u0b65"+"\u0b70\u0b70"+"\u0b72\u0b81"
-      + "\u0b84\u0b84"+"\u0b8b\u0b8d"+"\u0b91\u0b91"+"\u0b96\u0b98"
-      + "\u0b9b\u0b9b"+"\u0b9d\u0b9d"+"\u0ba0\u0ba2"+"\u0ba5\u0ba7"
-      + "\u0bab\u0bad"+"\u0bba\u0bbd"+"\u0bc3\u0bc5"+"\u0bc9\u0bc9"
-      + "\u0bce\u0bcf"+"\u0bd1\u0bd6"+"\u0bd8\u0be5"+"\u0bf0\u0c00"
-      + "\u0c04\u0c04"+"\u0c0d\u0c0d"+"\u0c11\u0c11"+"\u0c29\u0c29"
-      + "\u0c34\u0c34"+"\u0c3a\u0c3c"+"\u0c45\u0c45"+"\u0c49\u0c49"
-      + "\u0c4e\u0c54"+"\u0c57\u0c57"+"\u0c5a\u0c5f"+"\u0c64\u0c65"
-      + "\u0c70\u0c81"+"\u0c84\u0c84"+"\u0c8d\u0c8d"+"\u0c91\u0c91"
-      + "\u0ca9\u0ca9"+"\u0cb4\u0cb4"+"\u0cba\u0cbb"+"\u0cc5\u0cc5"
-      + "\u0cc9\u0cc9"+"\u0cce\u0cd4"+"\u0cd7\u0cdd"+"\u0cdf\u0cdf"
-      + "\u0ce4\u0ce5"+"\u0cf0\u0d01"+"\u0d04\u0d04"+"\u0d0d\u0d0d"
-      + "\u0d11\u0d11"+"\u0d29\u0d29"+"\u0d3a\u0d3c"+"\u0d45\u0d45"
-      + "\u0d49\u0d49"+"\u0d4e\u0d56"+"\u0d58\u0d5f"+"\u0d64\u0d65"
-      + "\u0d70\u0d79"+"\u0d80\u0d81"+"\u0d84\u0d84"+"\u0d97\u0d99"
-      + "\u0db2\u0db2"+"\u0dbc\u0dbc"+"\u0dbe\u0dbf"+"\u0dc7\u0dc9"
-      + "\u0dcb\u0dce"+"\u0dd5\u0dd5"+"\u0dd7\u0dd7"+"\u0de0\u0df1"
-      + "\u0df4\u0e00"+"\u0e3b\u0e3f"+"\u0e4f\u0e4f"+"\u0e5a\u0e80"
-      + "\u0e83\u0e83"+"\u0e85\u0e86"+"\u0e89\u0e89"+"\u0e8b\u0e8c"
-      + "\u0e8e\u0e93"+"\u0e98\u0e98"+"\u0ea0\u0ea0"+"\u0ea4\u0ea4"
-      + "\u0ea6\u0ea6"+"\u0ea8\u0ea9"+"\u0eac\u0eac"+"\u0eba\u0eba"
-      + "\u0ebe\u0ebf"+"\u0ec5\u0ec5"+"\u0ec7\u0ec7"+"\u0ece\u0ecf"
-      + "\u0eda\u0edb"+"\u0ede\u0eff"+"\u0f01\u0f17"+"\u0f1a\u0f1f"
-      + "\u0f2a\u0f34"+"\u0f36\u0f36"+"\u0f38\u0f38"+"\u0f48\u0f48"
-      + "\u0f6d\u0f70"+"\u0f85\u0f85"+"\u0f8c\u0f8f"+"\u0f98\u0f98"
-      + "\u0fbd\u0fc5"+"\u0fc7\u0fff"+"\u104c\u104f"+"\u109a\u109f"
-      + "\u10c6\u10cf"+"\u10fb\u10fb"+"\u10fd\u10ff"+"\u115a\u115e"
-      + "\u11a3\u11a7"+"\u11fa\u11ff"+"\u1249\u1249"+"\u124e\u124f"
-      + "\u1257\u1257"+"\u1259\u1259"+"\u125e\u125f"+"\u1289\u1289"
-      + "\u128e\u128f"+"\u12b1\u12b1"+"\u12b6\u12b7"+"\u12bf\u12bf"
-      + "\u12c1\u12c1"+"\u12c6\u12c7"+"\u12d7\u12d7"+"\u1311\u1311"
-      + "\u1316\u1317"+"\u135b\u135e"+"\u1360\u1361"+"\u1363\u1366"
-      + "\u1369\u137f"+"\u1390\u139f"+"\u13f5\u1400"+"\u166d\u166d"
-      + "\u1677\u167f"+"\u169d\u169f"+"\u16eb\u16ed"+"\u16f1\u16ff"
-      + "\u170d\u170d"+"\u1715\u171f"+"\u1735\u173f"+"\u1754\u175f"
-      + "\u176d\u176d"+"\u1771\u1771"+"\u1774\u177f"+"\u17d4\u17d6"
-      + "\u17d8\u17db"+"\u17de\u17df"+"\u17ea\u1801"+"\u1804\u1807"
-      + "\u180a\u180a"+"\u180f\u180f"+"\u181a\u181f"+"\u1878\u187f"
-      + "\u18ab\u18ff"+"\u191d\u191f"+"\u192c\u192f"+"\u193c\u1943"
-      + "\u196e\u196f"+"\u1975\u197f"+"\u19aa\u19af"+"\u19ca\u19cf"
-      + "\u19da\u19ff"+"\u1a1c\u1aff"+"\u1b4c\u1b4f"+"\u1b5c\u1b5d"
-      + "\u1b60\u1b6a"+"\u1b74\u1b7f"+"\u1bab\u1bad"+"\u1bba\u1bff"
-      + "\u1c38\u1c3a"+"\u1c3d\u1c3f"+"\u1c4a\u1c4c"+"\u1c80\u1cff"
-      + "\u1de7\u1dfd"+"\u1f16\u1f17"+"\u1f1e\u1f1f"+"\u1f46\u1f47"
-      + "\u1f4e\u1f4f"+"\u1f58\u1f58"+"\u1f5a\u1f5a"+"\u1f5c\u1f5c"
-      + "\u1f5e\u1f5e"+"\u1f7e\u1f7f"+"\u1fb5\u1fb5"+"\u1fbd\u1fbd"
-      + "\u1fbf\u1fc1"+"\u1fc5\u1fc5"+"\u1fcd\u1fcf"+"\u1fd4\u1fd5"
-      + "\u1fdc\u1fdf"+"\u1fed\u1ff1"+"\u1ff5\u1ff5"+"\u1ffd\u1fff"
-      + "\u2010\u2012"+"\u2015\u2017"+"\u2020\u2023"+"\u2025\u2027"
-      + "\u2030\u2038"+"\u203b\u203b"+"\u203e\u2044"+"\u204a\u205e"
-      + "\u2065\u2069"+"\u2070\u2070"+"\u2072\u207c"+"\u2080\u208c"
-      + "\u208f\u208f"+"\u2095\u20cf"+"\u20f1\u2101"+"\u2103\u2106"
-      + "\u2108\u2109"+"\u2114\u2114"+"\u2116\u2118"+"\u211e\u2123"
-      + "\u2125\u2125"+"\u2127\u2127"+"\u2129\u2129"+"\u212e\u212e"
-      + "\u213a\u213b"+"\u2140\u2144"+"\u214a\u214d"+"\u214f\u215f"
-      + "\u2189\u2328"+"\u232b\u24b5"+"\u24ea\u275a"+"\u275f\u2767"
-      + "\u2776\u27c4"+"\u27c7\u27e5"+"\u27f0\u2982"+"\u2999\u29d7"
-      + "\u29dc\u29fb"+"\u29fe\u2bff"+"\u2c2f\u2c2f"+"\u2c5f\u2c5f"
-      + "\u2c70\u2c70"+"\u2c7e\u2c7f"+"\u2ce5\u2cff"+"\u2d26\u2d2f"
-      + "\u2d66\u2d6e"+"\u2d70\u2d7f"+"\u2d97\u2d9f"+"\u2da7\u2da7"
-      + "\u2daf\u2daf"+"\u2db7\u2db7"+"\u2dbf\u2dbf"+"\u2dc7\u2dc7"
-      + "\u2dcf\u2dcf"+"\u2dd7\u2dd7"+"\u2ddf\u2ddf"+"\u2e0e\u2e1b"
-      + "\u2e1e\u2e1f"+"\u2e2a\u2e2d"+"\u2e30\u2fff"+"\u3003\u3004"
-      + "\u3012\u3013"+"\u301c\u301c"+"\u3020\u3020"+"\u3030\u3030"
-      + "\u3036\u3037"+"\u303d\u3040"+"\u3097\u3098"+"\u309b\u309c"
-      + "\u30a0\u30a0"+"\u30fb\u30fb"+"\u3100\u3104"+"\u312e\u3130"
-      + "\u318f\u319f"+"\u31b8\u31ef"+"\u3200\u33ff"+"\u4db6\u4dff"
-      + "\u9fc4\u9fff"+"\ua48d\ua4ff"+"\ua60d\ua60d"+"\ua62c\ua63f"
-      + "\ua660\ua661"+"\ua673\ua67b"+"\ua67e\ua67e"+"\ua698\ua716"
-      + "\ua720\ua721"+"\ua789\ua78a"+"\ua78d\ua7fa"+"\ua828\ua83f"
-      + "\ua874\ua875"+"\ua878\ua87f"+"\ua8c5\ua8cd"+"\ua8da\ua8ff"
-      + "\ua92e\ua92e"+"\ua954\ua9ff"+"\uaa37\uaa3f"+"\uaa4e\uaa4f"
-      + "\uaa5a\uaa5c"+"\uaa60\uabff"+"\ud7a4\uf8ff"+"\ufa2e\ufa2f"
-      + "\ufa6b\ufa6f"+"\ufada\ufaff"+"\ufb07\ufb12"+"\ufb18\ufb1c"
-      + "\ufb29\ufb29"+"\ufb37\ufb37"+"\ufb3d\ufb3d"+"\ufb3f\ufb3f"
-      + "\ufb42\ufb42"+"\ufb45\ufb45"+"\ufbb2\ufbd2"+"\ufd40\ufd4f"
-      + "\ufd90\ufd91"+"\ufdc8\ufdef"+"\ufdfc\ufdff"+"\ufe12\ufe12"
-      + "\ufe14\ufe16"+"\ufe19\ufe1f"+"\ufe27\ufe30"+"\ufe33\ufe34"
-      + "\ufe45\ufe46"+"\ufe49\ufe4f"+"\ufe53\ufe54"+"\ufe5f\ufe62"
-      + "\ufe64\ufe6f"+"\ufe75\ufe75"+"\ufefd\ufefe"+"\uff00\uff00"
-      + "\uff02\uff07"+"\uff0a\uff0b"+"\uff0f\uff19"+"\uff1b\uff1e"
-      + "\uff20\uff20"+"\uff3c\uff3c"+"\uff3e\uff40"+"\uff5c\uff5c"
-      + "\uff5e\uff5e"+"\uff65\uff65"+"\uffbf\uffc1"+"\uffc8\uffc9"
-      + "\uffd0\uffd1"+"\uffd8\uffd9"+"\uffdd\ufff8"+"\ufffc\uffff"
-      + "\ud800\udc0c\ud800\udc0c"+"\ud800\udc27\ud800\udc27"+"\ud800\udc3b\ud800\udc3b"+"\ud800\udc3e\ud800\udc3e"
-      + "\ud800\udc4e\ud800\udc4f"+"\ud800\udc5e\ud800\udc7f"+"\ud800\udcfb\ud800\udd3f"+"\ud800\udd75\ud800\uddfc"
-      + "\ud800\uddfe\ud800\ude7f"+"\ud800\ude9d\ud800\ude9f"+"\ud800\uded1\ud800\udeff"+"\ud800\udf1f\ud800\udf2f"
-      + "\ud800\udf4b\ud800\udf7f"+"\ud800\udf9e\ud800\udf9f"+"\ud800\udfc4\ud800\udfc7"+"\ud800\udfd0\ud800\udfd0"
-      + "\ud800\udfd6\ud800\udfff"+"\ud801\udc9e\ud801\udc9f"+"\ud801\udcaa\ud801\udfff"+"\ud802\udc06\ud802\udc07"
-      + "\ud802\udc09\ud802\udc09"+"\ud802\udc36\ud802\udc36"+"\ud802\udc39\ud802\udc3b"+"\ud802\udc3d\ud802\udc3e"
-      + "\ud802\udc40\ud802\udcff"+"\ud802\udd16\ud802\udd1f"+"\ud802\udd3a\ud802\uddff"+"\ud802\ude04\ud802\ude04"
-      + "\ud802\ude07\ud802\ude0b"+"\ud802\ude14\ud802\ude14"+"\ud802\ude18\ud802\ude18"+"\ud802\ude34\ud802\ude37"
-      + "\ud802\ude3b\ud802\ude3e"+"\ud802\ude40\ud807\udfff"+"\ud808\udf6f\ud808\udfff"+"\ud809\udc63\ud834\udd64"
-      + "\ud834\udd6a\ud834\udd6c"+"\ud834\udd83\ud834\udd84"+"\ud834\udd8c\ud834\udda9"+"\ud834\uddae\ud834\ude41"
-      + "\ud834\ude45\ud834\udfff"+"\ud835\udc55\ud835\udc55"+"\ud835\udc9d\ud835\udc9d"+"\ud835\udca0\ud835\udca1"
-      + "\ud835\udca3\ud835\udca4"+"\ud835\udca7\ud835\udca8"+"\ud835\udcad\ud835\udcad"+"\ud835\udcba\ud835\udcba"
-      + "\ud835\udcbc\ud835\udcbc"+"\ud835\udcc4\ud835\udcc4"+"\ud835\udd06\ud835\udd06"+"\ud835\udd0b\ud835\udd0c"
-      + "\ud835\udd15\ud835\udd15"+"\ud835\udd1d\ud835\udd1d"+"\ud835\udd3a\ud835\udd3a"+"\ud835\udd3f\ud835\udd3f"
-      + "\ud835\udd45\ud835\udd45"+"\ud835\udd47\ud835\udd49"+"\ud835\udd51\ud835\udd51"+"\ud835\udea6\ud835\udea7"
-      + "\ud835\udec1\ud835\udec1"+"\ud835\udedb\ud835\udedb"+"\ud835\udefb\ud835\udefb"+"\ud835\udf15\ud835\udf15"
-      + "\ud835\udf35\ud835\udf35"+"\ud835\udf4f\ud835\udf4f"+"\ud835\udf6f\ud835\udf6f"+"\ud835\udf89\ud835\udf89"
-      + "\ud835\udfa9\ud835\udfa9"+"\ud835\udfc3\ud835\udfc3"+"\ud835\udfcc\ud835\udfcd"+"\ud836\udc00\ud83f\udfff"
-      + "\ud869\uded7\ud87d\udfff"+"\ud87e\ude1e\udb40\udc00"+"\udb40\udc02\udb40\udc1f"+"\udb40\udc80\udb40\udcff"
-      + "\udb40\uddf0\udbff\udfff",
-    // Unicode 5.1 property value: {sentencebreak=scontinue}
-        "\u002c\u002d"+"\u003a\u003a"+"\u055d\u055d"+"\u060c\u060d"
-      + "\u07f8\u07f8"+"\u1802\u1802"+"\u1808\u1808"+"\u2013\u2014"
-      + "\u3001\u3001"+"\ufe10\ufe11"+"\ufe13\ufe13"+"\ufe31\ufe32"
-      + "\ufe50\ufe51"+"\ufe55\ufe55"+"\ufe58\ufe58"+"\ufe63\ufe63"
-      + "\uff0c\uff0d"+"\uff1a\uff1a"+"\uff64\uff64",
-    // Unicode 5.1 property value: {sentencebreak=sep}
-        "\u0085\u0085"+"\u2028\u2029",
-    // Unicode 5.1 property value: {sentencebreak=sp}
-        "\t\t"+"\u000b\f"+"\u0020\u0020"+"\u00a0\u00a0"
-      + "\u1680\u1680"+"\u180e\u180e"+"\u2000\u200a"+"\u202f\u202f"
-      + "\u205f\u205f"+"\u3000\u3000",
-    // Unicode 5.1 property value: {sentencebreak=sterm}
-        "\u0021\u0021"+"\u003f\u003f"+"\u055c\u055c"+"\u055e\u055e"
-      + "\u0589\u0589"+"\u061f\u061f"+"\u06d4\u06d4"+"\u0700\u0702"
-      + "\u07f9\u07f9"+"\u0964\u0965"+"\u104a\u104b"+"\u1362\u1362"
-      + "\u1367\u1368"+"\u166e\u166e"+"\u1803\u1803"+"\u1809\u1809"
-      + "\u1944\u1945"+"\u1b5a\u1b5b"+"\u1b5e\u1b5f"+"\u1c3b\u1c3c"
-      + "\u1c7e\u1c7f"+"\u203c\u203d"+"\u2047\u2049"+"\u2e2e\u2e2e"
-      + "\u3002\u3002"+"\ua60e\ua60f"+"\ua876\ua877"+"\ua8ce\ua8cf"
-      + "\ua92f\ua92f"+"\uaa5d\uaa5f"+"\ufe56\ufe57"+"\uff01\uff01"
-      + "\uff1f\uff1f"+"\uff61\uff61",
-    // Unicode 5.1 property value: {sentencebreak=upper}
-        "\u0041\u005a"+"\u00c0\u00d6"+"\u00d8\u00de"+"\u0100\u0100"
-      + "\u0102\u0102"+"\u0104\u0104"+"\u0106\u0106"+"\u0108\u0108"
-      + "\u010a\u010a"+"\u010c\u010c"+"\u010e\u010e"+"\u0110\u0110"
-      + "\u0112\u0112"+"\u0114\u0114"+"\u0116\u0116"+"\u0118\u0118"
-      + "\u011a\u011a"+"\u011c\u011c"+"\u011e\u011e"+"\u0120\u0120"
-      + "\u0122\u0122"+"\u0124\u0124"+"\u0126\u0126"+"\u0128\u0128"
-      + "\u012a\u012a"+"\u012c\u012c"+"\u012e\u012e"+"\u0130\u0130"
-      + "\u0132\u0132"+"\u0134\u0134"+"\u0136\u0136"+"\u0139\u0139"
-      + "\u013b\u013b"+"\u013d\u013d"+"\u013f\u013f"+"\u0141\u0141"
-      + "\u0143\u0143"+"\u0145\u0145"+"\u0147\u0147"+"\u014a\u014a"
-      + "\u014c\u014c"+"\u014e\u014e"+"\u0150\u0150"+"\u0152\u0152"
-      + "\u0154\u0154"+"\u0156\u0156"+"\u0158\u0158"+"\u015a\u015a"
-      + "\u015c\u015c"+"\u015e\u015e"+"\u0160\u0160"+"\u0162\u0162"
-      + "\u0164\u0164"+"\u0166\u0166"+"\u0168\u0168"+"\u016a\u016a"
-      + "\u016c\u016c"+"\u016e\u016e"+"\u0170\u0170"+"\u0172\u0172"
-      + "\u0174\u0174"+"\u0176\u0176"+"\u0178\u0179"+"\u017b\u017b"
-      + "\u017d\u017d"+"\u0181\u0182"+"\u0184\u0184"+"\u0186\u0187"
-      + "\u0189\u018b"+"\u018e\u0191"+"\u0193\u0194"+"\u0196\u0198"
-      + "\u019c\u019d"+"\u019f\u01a0"+"\u01a2\u01a2"+"\u01a4\u01a4"
-      + "\u01a6\u01a7"+"\u01a9\u01a9"+"\u01ac\u01ac"+"\u01ae\u01af"
-      + "\u01b1\u01b3"+"\u01b5\u01b5"+"\u01b7\u01b8"+"\u01bc\u01bc"
-      + "\u01c4\u01c5"+"\u01c7\u01c8"+"\u01ca\u01cb"+"\u01cd\u01cd"
-      + "\u01cf\u01cf"+"\u01d1\u01d1"+"\u01d3\u01d3"+"\u01d5\u01d5"
-      + "\u01d7\u01d7"+"\u01d9\u01d9"+"\u01db\u01db"+"\u01de\u01de"
-      + "\u01e0\u01e0"+"\u01e2\u01e2"+"\u01e4\u01e4"+"\u01e6\u01e6"
-      + "\u01e8\u01e8"+"\u01ea\u01ea"+"\u01ec\u01ec"+"\u01ee\u01ee"
-      + "\u01f1\u01f2"+"\u01f4\u01f4"+"\u01f6\u01f8"+"\u01fa\u01fa"
-      + "\u01fc\u01fc"+"\u01fe\u01fe"+"\u0200\u0200"+"\u0202\u0202"
-      + "\u0204\u0204"+"\u0206\u0206"+"\u0208\u0208"+"\u020a\u020a"
-      + "\u020c\u020c"+"\u020e\u020e"+"\u0210\u0210"+"\u0212\u0212"
-      + "\u0214\u0214"+"\u0216\u0216"+"\u0218\u0218"+"\u021a\u021a"
-      + "\u021c\u021c"+"\u021e\u021e"+"\u0220\u0220"+"\u0222\u0222"
-      + "\u0224\u0224"+"\u0226\u0226"+"\u0228\u0228"+"\u022a\u022a"
-      + "\u022c\u022c"+"\u022e\u022e"+"\u0230\u0230"+"\u0232\u0232"
-      + "\u023a\u023b"+"\u023d\u023e"+"\u0241\u0241"+"\u0243\u0246"
-      + "\u0248\u0248"+"\u024a\u024a"+"\u024c\u024c"+"\u024e\u024e"
-      + "\u0370\u0370"+"\u0372\u0372"+"\u0376\u0376"+"\u0386\u0386"
-      + "\u0388\u038a"+"\u038c\u038c"+"\u038e\u038f"+"\u0391\u03a1"
-      + "\u03a3\u03ab"+"\u03cf\u03cf"+"\u03d2\u03d4"+"\u03d8\u03d8"
-      + "\u03da\u03da"+"\u03dc\u03dc"+"\u03de\u03de"+"\u03e0\u03e0"
-      + "\u03e2\u03e2"+"\u03e4\u03e4"+"\u03e6\u03e6"+"\u03e8\u03e8"
-      + "\u03ea\u03ea"+"\u03ec\u03ec"+"\u03ee\u03ee"+"\u03f4\u03f4"
-      + "\u03f7\u03f7"+"\u03f9\u03fa"+"\u03fd\u042f"+"\u0460\u0460"
-      + "\u0462\u0462"+"\u0464\u0464"+"\u0466\u0466"+"\u0468\u0468"
-      + "\u046a\u046a"+"\u046c\u046c"+"\u046e\u046e"+"\u0470\u0470"
-      + "\u0472\u0472"+"\u0474\u0474"+"\u0476\u0476"+"\u0478\u0478"
-      + "\u047a\u047a"+"\u047c\u047c"+"\u047e\u047e"+"\u0480\u0480"
-      + "\u048a\u048a"+"\u048c\u048c"+"\u048e\u048e"+"\u0490\u0490"
-      + "\u0492\u0492"+"\u0494\u0494"+"\u0496\u0496"+"\u0498\u0498"
-      + "\u049a\u049a"+"\u049c\u049c"+"\u049e\u049e"+"\u04a0\u04a0"
-      + "\u04a2\u04a2"+"\u04a4\u04a4"+"\u04a6\u04a6"+"\u04a8\u04a8"
-      + "\u04aa\u04aa"+"\u04ac\u04ac"+"\u04ae\u04ae"+"\u04b0\u04b0"
-      + "\u04b2\u04b2"+"\u04b4\u04b4"+"\u04b6\u04b6"+"\u04b8\u04b8"
-      + "\u04ba\u04ba"+"\u04bc\u04bc"+"\u04be\u04be"+"\u04c0\u04c1"
-      + "\u04c3\u04c3"+"\u04c5\u04c5"+"\u04c7\u04c7"+"\u04c9\u04c9"
-      + "\u04cb\u04cb"+"\u04cd\u04cd"+"\u04d0\u04d0"+"\u04d2\u04d2"
-      + "\u04d4\u04d4"+"\u04d6\u04d6"+"\u04d8\u04d8"+"\u04da\u04da"
-      + "\u04dc\u04dc"+"\u04de\u04de"+"\u04e0\u04e0"+"\u04e2\u04e2"
-      + "\u04e4\u04e4"+"\u04e6\u04e6"+"\u04e8\u04e8"+"\u04ea\u04ea"
-      + "\u04ec\u04ec"+"\u04ee\u04ee"+"\u04f0\u04f0"+"\u04f2\u04f2"
-      + "\u04f4\u04f4"+"\u04f6\u04f6"+"\u04f8\u04f8"+"\u04fa\u04fa"
-      + "\u04fc\u04fc"+"\u04fe\u04fe"+"\u0500\u0500"+"\u0502\u0502"
-      + "\u0504\u0504"+"\u0506\u0506"+"\u0508\u0508"+"\u050a\u050a"
-      + "\u050c\u050c"+"\u050e\u050e"+"\u0510\u0510"+"\u0512\u0512"
-      + "\u0514\u0514"+"\u0516\u0516"+"\u0518\u0518"+"\u051a\u051a"
-      + "\u051c\u051c"+"\u051e\u051e"+"\u0520\u0520"+"\u0522\u0522"
-      + "\u0531\u0556"+"\u10a0\u10c5"+"\u1e00\u1e00"+"\u1e02\u1e02"
-      + "\u1e04\u1e04"+"\u1e06\u1e06"+"\u1e08\u1e08"+"\u1e0a\u1e0a"
-      + "\u1e0c\u1e0c"+"\u1e0e\u1e0e"+"\u1e10\u1e10"+"\u1e12\u1e12"
-      + "\u1e14\u1e14"+"\u1e16\u1e16"+"\u1e18\u1e18"+"\u1e1a\u1e1a"
-      + "\u1e1c\u1e1c"+"\u1e1e\u1e1e"+"\u1e20\u1e20"+"\u1e22\u1e22"
-      + "\u1e24\u1e24"+"\u1e26\u1e26"+"\u1e28\u1e28"+"\u1e2a\u1e2a"
-      + "\u1e2c\u1e2c"+"\u1e2e\u1e2e"+"\u1e30\u1e30"+"\u1e32\u1e32"
-      + "\u1e34\u1e34"+"\u1e36\u1e36"+"\u1e38\u1e38"+"\u1e3a\u1e3a"
-      + "\u1e3c\u1e3c"+"\u1e3e\u1e3e"+"\u1e40\u1e40"+"\u1e42\u1e42"
-      + "\u1e44\u1e44"+"\u1e46\u1e46"+"\u1e48\u1e48"+"\u1e4a\u1e4a"
-      + "\u1e4c\u1e4c"+"\u1e4e\u1e4e"+"\u1e50\u1e50"+"\u1e52\u1e52"
-      + "\u1e54\u1e54"+"\u1e56\u1e56"+"\u1e58\u1e58"+"\u1e5a\u1e5a"
-      + "\u1e5c\u1e5c"+"\u1e5e\u1e5e"+"\u1e60\u1e60"+"\u1e62\u1e62"
-      + "\u1e64\u1e64"+"\u1e66\u1e66"+"\u1e68\u1e68"+"\u1e6a\u1e6a"
-      + "\u1e6c\u1e6c"+"\u1e6e\u1e6e"+"\u1e70\u1e70"+"\u1e72\u1e72"
-      + "\u1e74\u1e74"+"\u1e76\u1e76"+"\u1e78\u1e78"+"\u1e7a\u1e7a"
-      + "\u1e7c\u1e7c"+"\u1e7e\u1e7e"+"\u1e80\u1e80"+"\u1e82\u1e82"
-      + "\u1e84\u1e84"+"\u1e86\u1e86"+"\u1e88\u1e88"+"\u1e8a\u1e8a"
-      + "\u1e8c\u1e8c"+"\u1e8e\u1e8e"+"\u1e90\u1e90"+"\u1e92\u1e92"
-      + "\u1e94\u1e94"+"\u1e9e\u1e9e"+"\u1ea0\u1ea0"+"\u1ea2\u1ea2"
-      + "\u1ea4\u1ea4"+"\u1ea6\u1ea6"+"\u1ea8\u1ea8"+"\u1eaa\u1eaa"
-      + "\u1eac\u1eac"+"\u1eae\u1eae"+"\u1eb0\u1eb0"+"\u1eb2\u1eb2"
-      + "\u1eb4\u1eb4"+"\u1eb6\u1eb6"+"\u1eb8\u1eb8"+"\u1eba\u1eba"
-      + "\u1ebc\u1ebc"+"\u1ebe\u1ebe"+"\u1ec0\u1ec0"+"\u1ec2\u1ec2"
-      + "\u1ec4\u1ec4"+"\u1ec6\u1ec6"+"\u1ec8\u1ec8"+"\u1eca\u1eca"
-      + "\u1ecc\u1ecc"+"\u1ece\u1ece"+"\u1ed0\u1ed0"+"\u1ed2\u1ed2"
-      + "\u1ed4\u1ed4"+"\u1ed6\u1ed6"+"\u1ed8\u1ed8"+"\u1eda\u1eda"
-      + "\u1edc\u1edc"+"\u1ede\u1ede"+"\u1ee0\u1ee0"+"\u1ee2\u1ee2"
-      + "\u1ee4\u1ee4"+"\u1ee6\u1ee6"+"\u1ee8\u1ee8"+"\u1eea\u1eea"
-      + "\u1eec\u1eec"+"\u1eee\u1eee"+"\u1ef0\u1ef0"+"\u1ef2\u1ef2"
-      + "\u1ef4\u1ef4"+"\u1ef6\u1ef6"+"\u1ef8\u1ef8"+"\u1efa\u1efa"
-      + "\u1efc\u1efc"+"\u1efe\u1efe"+"\u1f08\u1f0f"+"\u1f18\u1f1d"
-      + "\u1f28\u1f2f"+"\u1f38\u1f3f"+"\u1f48\u1f4d"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f5f"+"\u1f68\u1f6f"
-      + "\u1f88\u1f8f"+"\u1f98\u1f9f"+"\u1fa8\u1faf"+"\u1fb8\u1fbc"
-      + "\u1fc8\u1fcc"+"\u1fd8\u1fdb"+"\u1fe8\u1fec"+"\u1ff8\u1ffc"
-      + "\u2102\u2102"+"\u2107\u2107"+"\u210b\u210d"+"\u2110\u2112"
-      + "\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u212d"+"\u2130\u2133"+"\u213e\u213f"
-      + "\u2145\u2145"+"\u2160\u216f"+"\u2183\u2183"+"\u24b6\u24cf"
-      + "\u2c00\u2c2e"+"\u2c60\u2c60"+"\u2c62\u2c64"+"\u2c67\u2c67"
-      + "\u2c69\u2c69"+"\u2c6b\u2c6b"+"\u2c6d\u2c6f"+"\u2c72\u2c72"
-      + "\u2c75\u2c75"+"\u2c80\u2c80"+"\u2c82\u2c82"+"\u2c84\u2c84"
-      + "\u2c86\u2c86"+"\u2c88\u2c88"+"\u2c8a\u2c8a"+"\u2c8c\u2c8c"
-      + "\u2c8e\u2c8e"+"\u2c90\u2c90"+"\u2c92\u2c92"+"\u2c94\u2c94"
-      + "\u2c96\u2c96"+"\u2c98\u2c98"+"\u2c9a\u2c9a"+"\u2c9c\u2c9c"
-      + "\u2c9e\u2c9e"+"\u2ca0\u2ca0"+"\u2ca2\u2ca2"+"\u2ca4\u2ca4"
-      + "\u2ca6\u2ca6"+"\u2ca8\u2ca8"+"\u2caa\u2caa"+"\u2cac\u2cac"
-      + "\u2cae\u2cae"+"\u2cb0\u2cb0"+"\u2cb2\u2cb2"+"\u2cb4\u2cb4"
-      + "\u2cb6\u2cb6"+"\u2cb8\u2cb8"+"\u2cba\u2cba"+"\u2cbc\u2cbc"
-      + "\u2cbe\u2cbe"+"\u2cc0\u2cc0"+"\u2cc2\u2cc2"+"\u2cc4\u2cc4"
-      + "\u2cc6\u2cc6"+"\u2cc8\u2cc8"+"\u2cca\u2cca"+"\u2ccc\u2ccc"
-      + "\u2cce\u2cce"+"\u2cd0\u2cd0"+"\u2cd2\u2cd2"+"\u2cd4\u2cd4"
-      + "\u2cd6\u2cd6"+"\u2cd8\u2cd8"+"\u2cda\u2cda"+"\u2cdc\u2cdc"
-      + "\u2cde\u2cde"+"\u2ce0\u2ce0"+"\u2ce2\u2ce2"+"\ua640\ua640"
-      + "\ua642\ua642"+"\ua644\ua644"+"\ua646\ua646"+"\ua648\ua648"
-      + "\ua64a\ua64a"+"\ua64c\ua64c"+"\ua64e\ua64e"+"\ua650\ua650"
-      + "\ua652\ua652"+"\ua654\ua654"+"\ua656\ua656"+"\ua658\ua658"
-      + "\ua65a\ua65a"+"\ua65c\ua65c"+"\ua65e\ua65e"+"\ua662\ua662"
-      + "\ua664\ua664"+"\ua666\ua666"+"\ua668\ua668"+"\ua66a\ua66a"
-      + "\ua66c\ua66c"+"\ua680\ua680"+"\ua682\ua682"+"\ua684\ua684"
-      + "\ua686\ua686"+"\ua688\ua688"+"\ua68a\ua68a"+"\ua68c\ua68c"
-      + "\ua68e\ua68e"+"\ua690\ua690"+"\ua692\ua692"+"\ua694\ua694"
-      + "\ua696\ua696"+"\ua722\ua722"+"\ua724\ua724"+"\ua726\ua726"
-      + "\ua728\ua728"+"\ua72a\ua72a"+"\ua72c\ua72c"+"\ua72e\ua72e"
-      + "\ua732\ua732"+"\ua734\ua734"+"\ua736\ua736"+"\ua738\ua738"
-      + "\ua73a\ua73a"+"\ua73c\ua73c"+"\ua73e\ua73e"+"\ua740\ua740"
-      + "\ua742\ua742"+"\ua744\ua744"+"\ua746\ua746"+"\ua748\ua748"
-      + "\ua74a\ua74a"+"\ua74c\ua74c"+"\ua74e\ua74e"+"\ua750\ua750"
-      + "\ua752\ua752"+"\ua754\ua754"+"\ua756\ua756"+"\ua758\ua758"
-      + "\ua75a\ua75a"+"\ua75c\ua75c"+"\ua75e\ua75e"+"\ua760\ua760"
-      + "\ua762\ua762"+"\ua764\ua764"+"\ua766\ua766"+"\ua768\ua768"
-      + "\ua76a\ua76a"+"\ua76c\ua76c"+"\ua76e\ua76e"+"\ua779\ua779"
-      + "\ua77b\ua77b"+"\ua77d\ua77e"+"\ua780\ua780"+"\ua782\ua782"
-      + "\ua784\ua784"+"\ua786\ua786"+"\ua78b\ua78b"+"\uff21\uff3a"
-      + "\ud801\udc00\ud801\udc27"+"\ud835\udc00\ud835\udc19"+"\ud835\udc34\ud835\udc4d"+"\ud835\udc68\ud835\udc81"
-      + "\ud835\udc9c\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb5"+"\ud835\udcd0\ud835\udce9"+"\ud835\udd04\ud835\udd05"
-      + "\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd38\ud835\udd39"
-      + "\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"
-      + "\ud835\udd6c\ud835\udd85"+"\ud835\udda0\ud835\uddb9"+"\ud835\uddd4\ud835\udded"+"\ud835\ude08\ud835\ude21"
-      + "\ud835\ude3c\ud835\ude55"+"\ud835\ude70\ud835\ude89"+"\ud835\udea8\ud835\udec0"+"\ud835\udee2\ud835\udefa"
-      + "\ud835\udf1c\ud835\udf34"+"\ud835\udf56\ud835\udf6e"+"\ud835\udf90\ud835\udfa8"+"\ud835\udfca\ud835\udfca",
-    // Unicode 5.1 property value: {shavian}
-        "\ud801\udc50\ud801\udc7f",
-    // Unicode 5.1 property value: {sinhala}
-        "\u0d82\u0d83"+"\u0d85\u0d96"+"\u0d9a\u0db1"+"\u0db3\u0dbb"
-      + "\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0dca\u0dca"+"\u0dcf\u0dd4"
-      + "\u0dd6\u0dd6"+"\u0dd8\u0ddf"+"\u0df2\u0df4",
-    // Unicode 5.1 property value: {sk}
-        "\u005e\u005e"+"\u0060\u0060"+"\u00a8\u00a8"+"\u00af\u00af"
-      + "\u00b4\u00b4"+"\u00b8\u00b8"+"\u02c2\u02c5"+"\u02d2\u02df"
-      + "\u02e5\u02eb"+"\u02ed\u02ed"+"\u02ef\u02ff"+"\u0375\u0375"
-      + "\u0384\u0385"+"\u1fbd\u1fbd"+"\u1fbf\u1fc1"+"\u1fcd\u1fcf"
-      + "\u1fdd\u1fdf"+"\u1fed\u1fef"+"\u1ffd\u1ffe"+"\u309b\u309c"
-      + "\ua700\ua716"+"\ua720\ua721"+"\ua789\ua78a"+"\uff3e\uff3e"
-      + "\uff40\uff40"+"\uffe3\uffe3",
-    // Unicode 5.1 property value: {sm}
-        "\u002b\u002b"+"\u003c\u003e"+"\u007c\u007c"+"\u007e\u007e"
-      + "\u00ac\u00ac"+"\u00b1\u00b1"+"\u00d7\u00d7"+"\u00f7\u00f7"
-      + "\u03f6\u03f6"+"\u0606\u0608"+"\u2044\u2044"+"\u2052\u2052"
-      + "\u207a\u207c"+"\u208a\u208c"+"\u2140\u2144"+"\u214b\u214b"
-      + "\u2190\u2194"+"\u219a\u219b"+"\u21a0\u21a0"+"\u21a3\u21a3"
-      + "\u21a6\u21a6"+"\u21ae\u21ae"+"\u21ce\u21cf"+"\u21d2\u21d2"
-      + "\u21d4\u21d4"+"\u21f4\u22ff"+"\u2308\u230b"+"\u2320\u2321"
-      + "\u237c\u237c"+"\u239b\u23b3"+"\u23dc\u23e1"+"\u25b7\u25b7"
-      + "\u25c1\u25c1"+"\u25f8\u25ff"+"\u266f\u266f"+"\u27c0\u27c4"
-      + "\u27c7\u27ca"+"\u27cc\u27cc"+"\u27d0\u27e5"+"\u27f0\u27ff"
-      + "\u2900\u2982"+"\u2999\u29d7"+"\u29dc\u29fb"+"\u29fe\u2aff"
-      + "\u2b30\u2b44"+"\u2b47\u2b4c"+"\ufb29\ufb29"+"\ufe62\ufe62"
-      + "\ufe64\ufe66"+"\uff0b\uff0b"+"\uff1c\uff1e"+"\uff5c\uff5c"
-      + "\uff5e\uff5e"+"\uffe2\uffe2"+"\uffe9\uffec"+"\ud835\udec1\ud835\udec1"
-      + "\ud835\udedb\ud835\udedb"+"\ud835\udefb\ud835\udefb"+"\ud835\udf15\ud835\udf15"+"\ud835\udf35\ud835\udf35"
-      + "\ud835\udf4f\ud835\udf4f"+"\ud835\udf6f\ud835\udf6f"+"\ud835\udf89\ud835\udf89"+"\ud835\udfa9\ud835\udfa9"
-      + "\ud835\udfc3\ud835\udfc3",
-    // Unicode 5.1 property value: {so}
-        "\u00a6\u00a7"+"\u00a9\u00a9"+"\u00ae\u00ae"+"\u00b0\u00b0"
-      + "\u00b6\u00b6"+"\u0482\u0482"+"\u060e\u060f"+"\u06e9\u06e9"
-      + "\u06fd\u06fe"+"\u07f6\u07f6"+"\u09fa\u09fa"+"\u0b70\u0b70"
-      + "\u0bf3\u0bf8"+"\u0bfa\u0bfa"+"\u0c7f\u0c7f"+"\u0cf1\u0cf2"
-      + "\u0d79\u0d79"+"\u0f01\u0f03"+"\u0f13\u0f17"+"\u0f1a\u0f1f"
-      + "\u0f34\u0f34"+"\u0f36\u0f36"+"\u0f38\u0f38"+"\u0fbe\u0fc5"
-      + "\u0fc7\u0fcc"+"\u0fce\u0fcf"+"\u109e\u109f"+"\u1360\u1360"
-      + "\u1390\u1399"+"\u1940\u1940"+"\u19e0\u19ff"+"\u1b61\u1b6a"
-      + "\u1b74\u1b7c"+"\u2100\u2101"+"\u2103\u2106"+"\u2108\u2109"
-      + "\u2114\u2114"+"\u2116\u2118"+"\u211e\u2123"+"\u2125\u2125"
-      + "\u2127\u2127"+"\u2129\u2129"+"\u212e\u212e"+"\u213a\u213b"
-      + "\u214a\u214a"+"\u214c\u214d"+"\u214f\u214f"+"\u2195\u2199"
-      + "\u219c\u219f"+"\u21a1\u21a2"+"\u21a4\u21a5"+"\u21a7\u21ad"
-      + "\u21af\u21cd"+"\u21d0\u21d1"+"\u21d3\u21d3"+"\u21d5\u21f3"
-      + "\u2300\u2307"+"\u230c\u231f"+"\u2322\u2328"+"\u232b\u237b"
-      + "\u237d\u239a"+"\u23b4\u23db"+"\u23e2\u23e7"+"\u2400\u2426"
-      + "\u2440\u244a"+"\u249c\u24e9"+"\u2500\u25b6"+"\u25b8\u25c0"
-      + "\u25c2\u25f7"+"\u2600\u266e"+"\u2670\u269d"+"\u26a0\u26bc"
-      + "\u26c0\u26c3"+"\u2701\u2704"+"\u2706\u2709"+"\u270c\u2727"
-      + "\u2729\u274b"+"\u274d\u274d"+"\u274f\u2752"+"\u2756\u2756"
-      + "\u2758\u275e"+"\u2761\u2767"+"\u2794\u2794"+"\u2798\u27af"
-      + "\u27b1\u27be"+"\u2800\u28ff"+"\u2b00\u2b2f"+"\u2b45\u2b46"
-      + "\u2b50\u2b54"+"\u2ce5\u2cea"+"\u2e80\u2e99"+"\u2e9b\u2ef3"
-      + "\u2f00\u2fd5"+"\u2ff0\u2ffb"+"\u3004\u3004"+"\u3012\u3013"
-      + "\u3020\u3020"+"\u3036\u3037"+"\u303e\u303f"+"\u3190\u3191"
-      + "\u3196\u319f"+"\u31c0\u31e3"+"\u3200\u321e"+"\u322a\u3243"
-      + "\u3250\u3250"+"\u3260\u327f"+"\u328a\u32b0"+"\u32c0\u32fe"
-      + "\u3300\u33ff"+"\u4dc0\u4dff"+"\ua490\ua4c6"+"\ua828\ua82b"
-      + "\ufdfd\ufdfd"+"\uffe4\uffe4"+"\uffe8\uffe8"+"\uffed\uffee"
-      + "\ufffc\ufffd"+"\ud800\udd02\ud800\udd02"+"\ud800\udd37\ud800\udd3f"+"\ud800\udd79\ud800\udd89"
-      + "\ud800\udd90\ud800\udd9b"+"\ud800\uddd0\ud800\uddfc"+"\ud834\udc00\ud834\udcf5"+"\ud834\udd00\ud834\udd26"
-      + "\ud834\udd29\ud834\udd64"+"\ud834\udd6a\ud834\udd6c"+"\ud834\udd83\ud834\udd84"+"\ud834\udd8c\ud834\udda9"
-      + "\ud834\uddae\ud834\udddd"+"\ud834\ude00\ud834\ude41"+"\ud834\ude45\ud834\ude45"+"\ud834\udf00\ud834\udf56"
-      + "\ud83c\udc00\ud83c\udc2b"+"\ud83c\udc30\ud83c\udc93",
-    // Unicode 5.1 property value: {softdotted}
-        "\u0069\u006a"+"\u012f\u012f"+"\u0249\u0249"+"\u0268\u0268"
-      + "\u029d\u029d"+"\u02b2\u02b2"+"\u03f3\u03f3"+"\u0456\u0456"
-      + "\u0458\u0458"+"\u1d62\u1d62"+"\u1d96\u1d96"+"\u1da4\u1da4"
-      + "\u1da8\u1da8"+"\u1e2d\u1e2d"+"\u1ecb\u1ecb"+"\u2071\u2071"
-      + "\u2148\u2149"+"\u2c7c\u2c7c"+"\ud835\udc22\ud835\udc23"+"\ud835\udc56\ud835\udc57"
-      + "\ud835\udc8a\ud835\udc8b"+"\ud835\udcbe\ud835\udcbf"+"\ud835\udcf2\ud835\udcf3"+"\ud835\udd26\ud835\udd27"
-      + "\ud835\udd5a\ud835\udd5b"+"\ud835\udd8e\ud835\udd8f"+"\ud835\uddc2\ud835\uddc3"+"\ud835\uddf6\ud835\uddf7"
-      + "\ud835\ude2a\ud835\ude2b"+"\ud835\ude5e\ud835\ude5f"+"\ud835\ude92\ud835\ude93",
-    // Unicode 5.1 property value: {sterm}
-        "\u0021\u0021"+"\u002e\u002e"+"\u003f\u003f"+"\u055c\u055c"
-      + "\u055e\u055e"+"\u0589\u0589"+"\u061f\u061f"+"\u06d4\u06d4"
-      + "\u0700\u0702"+"\u07f9\u07f9"+"\u0964\u0965"+"\u104a\u104b"
-      + "\u1362\u1362"+"\u1367\u1368"+"\u166e\u166e"+"\u1803\u1803"
-      + "\u1809\u1809"+"\u1944\u1945"+"\u1b5a\u1b5b"+"\u1b5e\u1b5f"
-      + "\u1c3b\u1c3c"+"\u1c7e\u1c7f"+"\u203c\u203d"+"\u2047\u2049"
-      + "\u2e2e\u2e2e"+"\u3002\u3002"+"\ua60e\ua60f"+"\ua876\ua877"
-      + "\ua8ce\ua8cf"+"\ua92f\ua92f"+"\uaa5d\uaa5f"+"\ufe52\ufe52"
-      + "\ufe56\ufe57"+"\uff01\uff01"+"\uff0e\uff0e"+"\uff1f\uff1f"
-      + "\uff61\uff61",
-    // Unicode 5.1 property value: {sundanese}
-        "\u1b80\u1baa"+"\u1bae\u1bb9",
-    // Unicode 5.1 property value: {sylotinagri}
-        "\ua800\ua82b",
-    // Unicode 5.1 property value: {syriac}
-        "\u0700\u070d"+"\u070f\u074a"+"\u074d\u074f",
-    // Unicode 5.1 property value: {tagalog}
-        "\u1700\u170c"+"\u170e\u1714",
-    // Unicode 5.1 property value: {tagbanwa}
-        "\u1760\u176c"+"\u176e\u1770"+"\u1772\u1773",
-    // Unicode 5.1 property value: {taile}
-        "\u1950\u196d"+"\u1970\u1974",
-    // Unicode 5.1 property value: {tamil}
-        "\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcd"+"\u0bd0\u0bd0"+"\u0bd7\u0bd7"+"\u0be6\u0bfa",
-    // Unicode 5.1 property value: {telugu}
-        "\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"
-      + "\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c58\u0c59"+"\u0c60\u0c63"
-      + "\u0c66\u0c6f"+"\u0c78\u0c7f",
-    // Unicode 5.1 property value: {terminalpunctuation}
-        "\u0021\u0021"+"\u002c\u002c"+"\u002e\u002e"+"\u003a\u003b"
-      + "\u003f\u003f"+"\u037e\u037e"+"\u0387\u0387"+"\u0589\u0589"
-      + "\u05c3\u05c3"+"\u060c\u060c"+"\u061b\u061b"+"\u061f\u061f"
-      + "\u06d4\u06d4"+"\u0700\u070a"+"\u070c\u070c"+"\u07f8\u07f9"
-      + "\u0964\u0965"+"\u0e5a\u0e5b"+"\u0f08\u0f08"+"\u0f0d\u0f12"
-      + "\u104a\u104b"+"\u1361\u1368"+"\u166d\u166e"+"\u16eb\u16ed"
-      + "\u17d4\u17d6"+"\u17da\u17da"+"\u1802\u1805"+"\u1808\u1809"
-      + "\u1944\u1945"+"\u1b5a\u1b5b"+"\u1b5d\u1b5f"+"\u1c3b\u1c3f"
-      + "\u1c7e\u1c7f"+"\u203c\u203d"+"\u2047\u2049"+"\u2e2e\u2e2e"
-      + "\u3001\u3002"+"\ua60d\ua60f"+"\ua876\ua877"+"\ua8ce\ua8cf"
-      + "\ua92f\ua92f"+"\uaa5d\uaa5f"+"\ufe50\ufe52"+"\ufe54\ufe57"
-      + "\uff01\uff01"+"\uff0c\uff0c"+"\uff0e\uff0e"+"\uff1a\uff1b"
-      + "\uff1f\uff1f"+"\uff61\uff61"+"\uff64\uff64"+"\ud800\udf9f\ud800\udf9f"
-      + "\ud800\udfd0\ud800\udfd0"+"\ud802\udd1f\ud802\udd1f"+"\ud809\udc70\ud809\udc73",
-    // Unicode 5.1 property value: {thaana}
-        "\u0780\u07b1",
-    // Unicode 5.1 property value: {thai}
-        "\u0e01\u0e3a"+"\u0e40\u0e5b",
-    // Unicode 5.1 property value: {tibetan}
-        "\u0f00\u0f47"+"\u0f49\u0f6c"+"\u0f71\u0f8b"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fbe\u0fcc"+"\u0fce\u0fd4",
-    // Unicode 5.1 property value: {tifinagh}
-        "\u2d30\u2d65"+"\u2d6f\u2d6f",
-    // Unicode 5.1 property value: {ugaritic}
-        "\ud800\udf80\ud800\udf9d"+"\ud800\udf9f\ud800\udf9f",
-    // Unicode 5.1 property value: {unifiedideograph}
-        "\u3400\u4db5"+"\u4e00\u9fc3"+"\ufa0e\ufa0f"+"\ufa11\ufa11"
-      + "\ufa13\ufa14"+"\ufa1f\ufa1f"+"\ufa21\ufa21"+"\ufa23\ufa24"
-      + "\ufa27\ufa29"+"\ud840\udc00\ud869\uded6",
-    // Unicode 5.1 property value: {unknown}
-        "\u0378\u0379"+"\u037f\u0383"+"\u038b\u038b"+"\u038d\u038d"
-      + "\u03a2\u03a2"+"\u0524\u0530"+"\u0557\u0558"+"\u0560\u0560"
-      + "\u0588\u0588"+"\u058b\u0590"+"\u05c8\u05cf"+"\u05eb\u05ef"
-      + "\u05f5\u05ff"+"\u0604\u0605"+"\u061c\u061d"+"\u0620\u0620"
-      + "\u065f\u065f"+"\u070e\u070e"+"\u074b\u074c"+"\u07b2\u07bf"
-      + "\u07fb\u0900"+"\u093a\u093b"+"\u094e\u094f"+"\u0955\u0957"
-      + "\u0973\u097a"+"\u0980\u0980"+"\u0984\u0984"+"\u098d\u098e"
-      + "\u0991\u0992"+"\u09a9\u09a9"+"\u09b1\u09b1"+"\u09b3\u09b5"
-      + "\u09ba\u09bb"+"\u09c5\u09c6"+"\u09c9\u09ca"+"\u09cf\u09d6"
-      + "\u09d8\u09db"+"\u09de\u09de"+"\u09e4\u09e5"+"\u09fb\u0a00"
-      + "\u0a04\u0a04"+"\u0a0b\u0a0e"+"\u0a11\u0a12"+"\u0a29\u0a29"
-      + "\u0a31\u0a31"+"\u0a34\u0a34"+"\u0a37\u0a37"+"\u0a3a\u0a3b"
-      + "\u0a3d\u0a3d"+"\u0a43\u0a46"+"\u0a49\u0a4a"+"\u0a4e\u0a50"
-      + "\u0a52\u0a58"+"\u0a5d\u0a5d"+"\u0a5f\u0a65"+"\u0a76\u0a80"
-      + "\u0a84\u0a84"+"\u0a8e\u0a8e"+"\u0a92\u0a92"+"\u0aa9\u0aa9"
-      + "\u0ab1\u0ab1"+"\u0ab4\u0ab4"+"\u0aba\u0abb"+"\u0ac6\u0ac6"
-      + "\u0aca\u0aca"+"\u0ace\u0acf"+"\u0ad1\u0adf"+"\u0ae4\u0ae5"
-      + "\u0af0\u0af0"+"\u0af2\u0b00"+"\u0b04\u0b04"+"\u0b0d\u0b0e"
-      + "\u0b11\u0b12"+"\u0b29\u0b29"+"\u0b31\u0b31"+"\u0b34\u0b34"
-      + "\u0b3a\u0b3b"+"\u0b45\u0b46"+"\u0b49\u0b4a"+"\u0b4e\u0b55"
-      + "\u0b58\u0b5b"+"\u0b5e\u0b5e"+"\u0b64\u0b65"+"\u0b72\u0b81"
-      + "\u0b84\u0b84"+"\u0b8b\u0b8d"+"\u0b91\u0b91"+"\u0b96\u0b98"
-      + "\u0b9b\u0b9b"+"\u0b9d\u0b9d"+"\u0ba0\u0ba2"+"\u0ba5\u0ba7"
-      + "\u0bab\u0bad"+"\u0bba\u0bbd"+"\u0bc3\u0bc5"+"\u0bc9\u0bc9"
-      + "\u0bce\u0bcf"+"\u0bd1\u0bd6"+"\u0bd8\u0be5"+"\u0bfb\u0c00"
-      + "\u0c04\u0c04"+"\u0c0d\u0c0d"+"\u0c11\u0c11"+"\u0c29\u0c29"
-      + "\u0c34\u0c34"+"\u0c3a\u0c3c"+"\u0c45\u0c45"+"\u0c49\u0c49"
-      + "\u0c4e\u0c54"+"\u0c57\u0c57"+"\u0c5a\u0c5f"+"\u0c64\u0c65"
-      + "\u0c70\u0c77"+"\u0c80\u0c81"+"\u0c84\u0c84"+"\u0c8d\u0c8d"
-      + "\u0c91\u0c91"+"\u0ca9\u0ca9"+"\u0cb4\u0cb4"+"\u0cba\u0cbb"
-      + "\u0cc5\u0cc5"+"\u0cc9\u0cc9"+"\u0cce\u0cd4"+"\u0cd7\u0cdd"
-      + "\u0cdf\u0cdf"+"\u0ce4\u0ce5"+"\u0cf0\u0cf0"+"\u0cf3\u0d01"
-      + "\u0d04\u0d04"+"\u0d0d\u0d0d"+"\u0d11\u0d11"+"\u0d29\u0d29"
-      + "\u0d3a\u0d3c"+"\u0d45\u0d45"+"\u0d49\u0d49"+"\u0d4e\u0d56"
-      + "\u0d58\u0d5f"+"\u0d64\u0d65"+"\u0d76\u0d78"+"\u0d80\u0d81"
-      + "\u0d84\u0d84"+"\u0d97\u0d99"+"\u0db2\u0db2"+"\u0dbc\u0dbc"
-      + "\u0dbe\u0dbf"+"\u0dc7\u0dc9"+"\u0dcb\u0dce"+"\u0dd5\u0dd5"
-      + "\u0dd7\u0dd7"+"\u0de0\u0df1"+"\u0df5\u0e00"+"\u0e3b\u0e3e"
-      + "\u0e5c\u0e80"+"\u0e83\u0e83"+"\u0e85\u0e86"+"\u0e89\u0e89"
-      + "\u0e8b\u0e8c"+"\u0e8e\u0e93"+"\u0e98\u0e98"+"\u0ea0\u0ea0"
-      + "\u0ea4\u0ea4"+"\u0ea6\u0ea6"+"\u0ea8\u0ea9"+"\u0eac\u0eac"
-      + "\u0eba\u0eba"+"\u0ebe\u0ebf"+"\u0ec5\u0ec5"+"\u0ec7\u0ec7"
-      + "\u0ece\u0ecf"+"\u0eda\u0edb"+"\u0ede\u0eff"+"\u0f48\u0f48"
-      + "\u0f6d\u0f70"+"\u0f8c\u0f8f"+"\u0f98\u0f98"+"\u0fbd\u0fbd"
-      + "\u0fcd\u0fcd"+"\u0fd5\u0fff"+"\u109a\u109d"+"\u10c6\u10cf"
-      + "\u10fd\u10ff"+"\u115a\u115e"+"\u11a3\u11a7"+"\u11fa\u11ff"
-      + "\u1249\u1249"+"\u124e\u124f"+"\u1257\u1257"+"\u1259\u1259"
-      + "\u125e\u125f"+"\u1289\u1289"+"\u128e\u128f"+"\u12b1\u12b1"
-      + "\u12b6\u12b7"+"\u12bf\u12bf"+"\u12c1\u12c1"+"\u12c6\u12c7"
-      + "\u12d7\u12d7"+"\u1311\u1311"+"\u1316\u1317"+"\u135b\u135e"
-      + "\u137d\u137f"+"\u139a\u139f"+"\u13f5\u1400"+"\u1677\u167f"
-      + "\u169d\u169f"+"\u16f1\u16ff"+"\u170d\u170d"+"\u1715\u171f"
-      + "\u1737\u173f"+"\u1754\u175f"+"\u176d\u176d"+"\u1771\u1771"
-      + "\u1774\u177f"+"\u17de\u17df"+"\u17ea\u17ef"+"\u17fa\u17ff"
-      + "\u180f\u180f"+"\u181a\u181f"+"\u1878\u187f"+"\u18ab\u18ff"
-      + "\u191d\u191f"+"\u192c\u192f"+"\u193c\u193f"+"\u1941\u1943"
-      + "\u196e\u196f"+"\u1975\u197f"+"\u19aa\u19af"+"\u19ca\u19cf"
-      + "\u19da\u19dd"+"\u1a1c\u1a1d"+"\u1a20\u1aff"+"\u1b4c\u1b4f"
-      + "\u1b7d\u1b7f"+"\u1bab\u1bad"+"\u1bba\u1bff"+"\u1c38\u1c3a"
-      + "\u1c4a\u1c4c"+"\u1c80\u1cff"+"\u1de7\u1dfd"+"\u1f16\u1f17"
-      + "\u1f1e\u1f1f"+"\u1f46\u1f47"+"\u1f4e\u1f4f"+"\u1f58\u1f58"
-      + "\u1f5a\u1f5a"+"\u1f5c\u1f5c"+"\u1f5e\u1f5e"+"\u1f7e\u1f7f"
-      + "\u1fb5\u1fb5"+"\u1fc5\u1fc5"+"\u1fd4\u1fd5"+"\u1fdc\u1fdc"
-      + "\u1ff0\u1ff1"+"\u1ff5\u1ff5"+"\u1fff\u1fff"+"\u2065\u2069"
-      + "\u2072\u2073"+"\u208f\u208f"+"\u2095\u209f"+"\u20b6\u20cf"
-      + "\u20f1\u20ff"+"\u2150\u2152"+"\u2189\u218f"+"\u23e8\u23ff"
-      + "\u2427\u243f"+"\u244b\u245f"+"\u269e\u269f"+"\u26bd\u26bf"
-      + "\u26c4\u2700"+"\u2705\u2705"+"\u270a\u270b"+"\u2728\u2728"
-      + "\u274c\u274c"+"\u274e\u274e"+"\u2753\u2755"+"\u2757\u2757"
-      + "\u275f\u2760"+"\u2795\u2797"+"\u27b0\u27b0"+"\u27bf\u27bf"
-      + "\u27cb\u27cb"+"\u27cd\u27cf"+"\u2b4d\u2b4f"+"\u2b55\u2bff"
-      + "\u2c2f\u2c2f"+"\u2c5f\u2c5f"+"\u2c70\u2c70"+"\u2c7e\u2c7f"
-      + "\u2ceb\u2cf8"+"\u2d26\u2d2f"+"\u2d66\u2d6e"+"\u2d70\u2d7f"
-      + "\u2d97\u2d9f"+"\u2da7\u2da7"+"\u2daf\u2daf"+"\u2db7\u2db7"
-      + "\u2dbf\u2dbf"+"\u2dc7\u2dc7"+"\u2dcf\u2dcf"+"\u2dd7\u2dd7"
-      + "\u2ddf\u2ddf"+"\u2e31\u2e7f"+"\u2e9a\u2e9a"+"\u2ef4\u2eff"
-      + "\u2fd6\u2fef"+"\u2ffc\u2fff"+"\u3040\u3040"+"\u3097\u3098"
-      + "\u3100\u3104"+"\u312e\u3130"+"\u318f\u318f"+"\u31b8\u31bf"
-      + "\u31e4\u31ef"+"\u321f\u321f"+"\u3244\u324f"+"\u32ff\u32ff"
-      + "\u4db6\u4dbf"+"\u9fc4\u9fff"+"\ua48d\ua48f"+"\ua4c7\ua4ff"
-      + "\ua62c\ua63f"+"\ua660\ua661"+"\ua674\ua67b"+"\ua698\ua6ff"
-      + "\ua78d\ua7fa"+"\ua82c\ua83f"+"\ua878\ua87f"+"\ua8c5\ua8cd"
-      + "\ua8da\ua8ff"+"\ua954\ua95e"+"\ua960\ua9ff"+"\uaa37\uaa3f"
-      + "\uaa4e\uaa4f"+"\uaa5a\uaa5b"+"\uaa60\uabff"+"\ud7a4\uf8ff"
-      + "\ufa2e\ufa2f"+"\ufa6b\ufa6f"+"\ufada\ufaff"+"\ufb07\ufb12"
-      + "\ufb18\ufb1c"+"\ufb37\ufb37"+"\ufb3d\ufb3d"+"\ufb3f\ufb3f"
-      + "\ufb42\ufb42"+"\ufb45\ufb45"+"\ufbb2\ufbd2"+"\ufd40\ufd4f"
-      + "\ufd90\ufd91"+"\ufdc8\ufdef"+"\ufdfe\ufdff"+"\ufe1a\ufe1f"
-      + "\ufe27\ufe2f"+"\ufe53\ufe53"+"\ufe67\ufe67"+"\ufe6c\ufe6f"
-      + "\ufe75\ufe75"+"\ufefd\ufefe"+"\uff00\uff00"+"\uffbf\uffc1"
-      + "\uffc8\uffc9"+"\uffd0\uffd1"+"\uffd8\uffd9"+"\uffdd\uffdf"
-      + "\uffe7\uffe7"+"\uffef\ufff8"+"\ufffe\uffff"+"\ud800\udc0c\ud800\udc0c"
-      + "\ud800\udc27\ud800\udc27"+"\ud800\udc3b\ud800\udc3b"+"\ud800\udc3e\ud800\udc3e"+"\ud800\udc4e\ud800\udc4f"
-      + "\ud800\udc5e\ud800\udc7f"+"\ud800\udcfb\ud800\udcff"+"\ud800\udd03\ud800\udd06"+"\ud800\udd34\ud800\udd36"
-      + "\ud800\udd8b\ud800\udd8f"+"\ud800\udd9c\ud800\uddcf"+"\ud800\uddfe\ud800\ude7f"+"\ud800\ude9d\ud800\ude9f"
-      + "\ud800\uded1\ud800\udeff"+"\ud800\udf1f\ud800\udf1f"+"\ud800\udf24\ud800\udf2f"+"\ud800\udf4b\ud800\udf7f"
-      + "\ud800\udf9e\ud800\udf9e"+"\ud800\udfc4\ud800\udfc7"+"\ud800\udfd6\ud800\udfff"+"\ud801\udc9e\ud801\udc9f"
-      + "\ud801\udcaa\ud801\udfff"+"\ud802\udc06\ud802\udc07"+"\ud802\udc09\ud802\udc09"+"\ud802\udc36\ud802\udc36"
-      + "\ud802\udc39\ud802\udc3b"+"\ud802\udc3d\ud802\udc3e"+"\ud802\udc40\ud802\udcff"+"\ud802\udd1a\ud802\udd1e"
-      + "\ud802\udd3a\ud802\udd3e"+"\ud802\udd40\ud802\uddff"+"\ud802\ude04\ud802\ude04"+"\ud802\ude07\ud802\ude0b"
-      + "\ud802\ude14\ud802\ude14"+"\ud802\ude18\ud802\ude18"+"\ud802\ude34\ud802\ude37"+"\ud802\ude3b\ud802\ude3e"
-      + "\ud802\ude48\ud802\ude4f"+"\ud802\ude59\ud807\udfff"+"\ud808\udf6f\ud808\udfff"+"\ud809\udc63\ud809\udc6f"
-      + "\ud809\udc74\ud833\udfff"+"\ud834\udcf6\ud834\udcff"+"\ud834\udd27\ud834\udd28"+"\ud834\uddde\ud834\uddff"
-      + "\ud834\ude46\ud834\udeff"+"\ud834\udf57\ud834\udf5f"+"\ud834\udf72\ud834\udfff"+"\ud835\udc55\ud835\udc55"
-      + "\ud835\udc9d\ud835\udc9d"+"\ud835\udca0\ud835\udca1"+"\ud835\udca3\ud835\udca4"+"\ud835\udca7\ud835\udca8"
-      + "\ud835\udcad\ud835\udcad"+"\ud835\udcba\ud835\udcba"+"\ud835\udcbc\ud835\udcbc"+"\ud835\udcc4\ud835\udcc4"
-      + "\ud835\udd06\ud835\udd06"+"\ud835\udd0b\ud835\udd0c"+"\ud835\udd15\ud835\udd15"+"\ud835\udd1d\ud835\udd1d"
-      + "\ud835\udd3a\ud835\udd3a"+"\ud835\udd3f\ud835\udd3f"+"\ud835\udd45\ud835\udd45"+"\ud835\udd47\ud835\udd49"
-      + "\ud835\udd51\ud835\udd51"+"\ud835\udea6\ud835\udea7"+"\ud835\udfcc\ud835\udfcd"+"\ud836\udc00\ud83b\udfff"
-      + "\ud83c\udc2c\ud83c\udc2f"+"\ud83c\udc94\ud83f\udfff"+"\ud869\uded7\ud87d\udfff"+"\ud87e\ude1e\udb40\udc00"
-      + "\udb40\udc02\udb40\udc1f"+"\udb40\udc80\udb40\udcff"+"\udb40\uddf0\udbff\udfff",
-    // Unicode 5.1 property value: {uppercase}
-        "\u0041\u005a"+"\u00c0\u00d6"+"\u00d8\u00de"+"\u0100\u0100"
-      + "\u0102\u0102"+"\u0104\u0104"+"\u0106\u0106"+"\u0108\u0108"
-      + "\u010a\u010a"+"\u010c\u010c"+"\u010e\u010e"+"\u0110\u0110"
-      + "\u0112\u0112"+"\u0114\u0114"+"\u0116\u0116"+"\u0118\u0118"
-      + "\u011a\u011a"+"\u011c\u011c"+"\u011e\u011e"+"\u0120\u0120"
-      + "\u0122\u0122"+"\u0124\u0124"+"\u0126\u0126"+"\u0128\u0128"
-      + "\u012a\u012a"+"\u012c\u012c"+"\u012e\u012e"+"\u0130\u0130"
-      + "\u0132\u0132"+"\u0134\u0134"+"\u0136\u0136"+"\u0139\u0139"
-      + "\u013b\u013b"+"\u013d\u013d"+"\u013f\u013f"+"\u0141\u0141"
-      + "\u0143\u0143"+"\u0145\u0145"+"\u0147\u0147"+"\u014a\u014a"
-      + "\u014c\u014c"+"\u014e\u014e"+"\u0150\u0150"+"\u0152\u0152"
-      + "\u0154\u0154"+"\u0156\u0156"+"\u0158\u0158"+"\u015a\u015a"
-      + "\u015c\u015c"+"\u015e\u015e"+"\u0160\u0160"+"\u0162\u0162"
-      + "\u0164\u0164"+"\u0166\u0166"+"\u0168\u0168"+"\u016a\u016a"
-      + "\u016c\u016c"+"\u016e\u016e"+"\u0170\u0170"+"\u0172\u0172"
-      + "\u0174\u0174"+"\u0176\u0176"+"\u0178\u0179"+"\u017b\u017b"
-      + "\u017d\u017d"+"\u0181\u0182"+"\u0184\u0184"+"\u0186\u0187"
-      + "\u0189\u018b"+"\u018e\u0191"+"\u0193\u0194"+"\u0196\u0198"
-      + "\u019c\u019d"+"\u019f\u01a0"+"\u01a2\u01a2"+"\u01a4\u01a4"
-      + "\u01a6\u01a7"+"\u01a9\u01a9"+"\u01ac\u01ac"+"\u01ae\u01af"
-      + "\u01b1\u01b3"+"\u01b5\u01b5"+"\u01b7\u01b8"+"\u01bc\u01bc"
-      + "\u01c4\u01c4"+"\u01c7\u01c7"+"\u01ca\u01ca"+"\u01cd\u01cd"
-      + "\u01cf\u01cf"+"\u01d1\u01d1"+"\u01d3\u01d3"+"\u01d5\u01d5"
-      + "\u01d7\u01d7"+"\u01d9\u01d9"+"\u01db\u01db"+"\u01de\u01de"
-      + "\u01e0\u01e0"+"\u01e2\u01e2"+"\u01e4\u01e4"+"\u01e6\u01e6"
-      + "\u01e8\u01e8"+"\u01ea\u01ea"+"\u01ec\u01ec"+"\u01ee\u01ee"
-      + "\u01f1\u01f1"+"\u01f4\u01f4"+"\u01f6\u01f8"+"\u01fa\u01fa"
-      + "\u01fc\u01fc"+"\u01fe\u01fe"+"\u0200\u0200"+"\u0202\u0202"
-      + "\u0204\u0204"+"\u0206\u0206"+"\u0208\u0208"+"\u020a\u020a"
-      + "\u020c\u020c"+"\u020e\u020e"+"\u0210\u0210"+"\u0212\u0212"
-      + "\u0214\u0214"+"\u0216\u0216"+"\u0218\u0218"+"\u021a\u021a"
-      + "\u021c\u021c"+"\u021e\u021e"+"\u0220\u0220"+"\u0222\u0222"
-      + "\u0224\u0224"+"\u0226\u0226"+"\u0228\u0228"+"\u022a\u022a"
-      + "\u022c\u022c"+"\u022e\u022e"+"\u0230\u0230"+"\u0232\u0232"
-      + "\u023a\u023b"+"\u023d\u023e"+"\u0241\u0241"+"\u0243\u0246"
-      + "\u0248\u0248"+"\u024a\u024a"+"\u024c\u024c"+"\u024e\u024e"
-      + "\u0370\u0370"+"\u0372\u0372"+"\u0376\u0376"+"\u0386\u0386"
-      + "\u0388\u038a"+"\u038c\u038c"+"\u038e\u038f"+"\u0391\u03a1"
-      + "\u03a3\u03ab"+"\u03cf\u03cf"+"\u03d2\u03d4"+"\u03d8\u03d8"
-      + "\u03da\u03da"+"\u03dc\u03dc"+"\u03de\u03de"+"\u03e0\u03e0"
-      + "\u03e2\u03e2"+"\u03e4\u03e4"+"\u03e6\u03e6"+"\u03e8\u03e8"
-      + "\u03ea\u03ea"+"\u03ec\u03ec"+"\u03ee\u03ee"+"\u03f4\u03f4"
-      + "\u03f7\u03f7"+"\u03f9\u03fa"+"\u03fd\u042f"+"\u0460\u0460"
-      + "\u0462\u0462"+"\u0464\u0464"+"\u0466\u0466"+"\u0468\u0468"
-      + "\u046a\u046a"+"\u046c\u046c"+"\u046e\u046e"+"\u0470\u0470"
-      + "\u0472\u0472"+"\u0474\u0474"+"\u0476\u0476"+"\u0478\u0478"
-      + "\u047a\u047a"+"\u047c\u047c"+"\u047e\u047e"+"\u0480\u0480"
-      + "\u048a\u048a"+"\u048c\u048c"+"\u048e\u048e"+"\u0490\u0490"
-      + "\u0492\u0492"+"\u0494\u0494"+"\u0496\u0496"+"\u0498\u0498"
-      + "\u049a\u049a"+"\u049c\u049c"+"\u049e\u049e"+"\u04a0\u04a0"
-      + "\u04a2\u04a2"+"\u04a4\u04a4"+"\u04a6\u04a6"+"\u04a8\u04a8"
-      + "\u04aa\u04aa"+"\u04ac\u04ac"+"\u04ae\u04ae"+"\u04b0\u04b0"
-      + "\u04b2\u04b2"+"\u04b4\u04b4"+"\u04b6\u04b6"+"\u04b8\u04b8"
-      + "\u04ba\u04ba"+"\u04bc\u04bc"+"\u04be\u04be"+"\u04c0\u04c1"
-      + "\u04c3\u04c3"+"\u04c5\u04c5"+"\u04c7\u04c7"+"\u04c9\u04c9"
-      + "\u04cb\u04cb"+"\u04cd\u04cd"+"\u04d0\u04d0"+"\u04d2\u04d2"
-      + "\u04d4\u04d4"+"\u04d6\u04d6"+"\u04d8\u04d8"+"\u04da\u04da"
-      + "\u04dc\u04dc"+"\u04de\u04de"+"\u04e0\u04e0"+"\u04e2\u04e2"
-      + "\u04e4\u04e4"+"\u04e6\u04e6"+"\u04e8\u04e8"+"\u04ea\u04ea"
-      + "\u04ec\u04ec"+"\u04ee\u04ee"+"\u04f0\u04f0"+"\u04f2\u04f2"
-      + "\u04f4\u04f4"+"\u04f6\u04f6"+"\u04f8\u04f8"+"\u04fa\u04fa"
-      + "\u04fc\u04fc"+"\u04fe\u04fe"+"\u0500\u0500"+"\u0502\u0502"
-      + "\u0504\u0504"+"\u0506\u0506"+"\u0508\u0508"+"\u050a\u050a"
-      + "\u050c\u050c"+"\u050e\u050e"+"\u0510\u0510"+"\u0512\u0512"
-      + "\u0514\u0514"+"\u0516\u0516"+"\u0518\u0518"+"\u051a\u051a"
-      + "\u051c\u051c"+"\u051e\u051e"+"\u0520\u0520"+"\u0522\u0522"
-      + "\u0531\u0556"+"\u10a0\u10c5"+"\u1e00\u1e00"+"\u1e02\u1e02"
-      + "\u1e04\u1e04"+"\u1e06\u1e06"+"\u1e08\u1e08"+"\u1e0a\u1e0a"
-      + "\u1e0c\u1e0c"+"\u1e0e\u1e0e"+"\u1e10\u1e10"+"\u1e12\u1e12"
-      + "\u1e14\u1e14"+"\u1e16\u1e16"+"\u1e18\u1e18"+"\u1e1a\u1e1a"
-      + "\u1e1c\u1e1c"+"\u1e1e\u1e1e"+"\u1e20\u1e20"+"\u1e22\u1e22"
-      + "\u1e24\u1e24"+"\u1e26\u1e26"+"\u1e28\u1e28"+"\u1e2a\u1e2a"
-      + "\u1e2c\u1e2c"+"\u1e2e\u1e2e"+"\u1e30\u1e30"+"\u1e32\u1e32"
-      + "\u1e34\u1e34"+"\u1e36\u1e36"+"\u1e38\u1e38"+"\u1e3a\u1e3a"
-      + "\u1e3c\u1e3c"+"\u1e3e\u1e3e"+"\u1e40\u1e40"+"\u1e42\u1e42"
-      + "\u1e44\u1e44"+"\u1e46\u1e46"+"\u1e48\u1e48"+"\u1e4a\u1e4a"
-      + "\u1e4c\u1e4c"+"\u1e4e\u1e4e"+"\u1e50\u1e50"+"\u1e52\u1e52"
-      + "\u1e54\u1e54"+"\u1e56\u1e56"+"\u1e58\u1e58"+"\u1e5a\u1e5a"
-      + "\u1e5c\u1e5c"+"\u1e5e\u1e5e"+"\u1e60\u1e60"+"\u1e62\u1e62"
-      + "\u1e64\u1e64"+"\u1e66\u1e66"+"\u1e68\u1e68"+"\u1e6a\u1e6a"
-      + "\u1e6c\u1e6c"+"\u1e6e\u1e6e"+"\u1e70\u1e70"+"\u1e72\u1e72"
-      + "\u1e74\u1e74"+"\u1e76\u1e76"+"\u1e78\u1e78"+"\u1e7a\u1e7a"
-      + "\u1e7c\u1e7c"+"\u1e7e\u1e7e"+"\u1e80\u1e80"+"\u1e82\u1e82"
-      + "\u1e84\u1e84"+"\u1e86\u1e86"+"\u1e88\u1e88"+"\u1e8a\u1e8a"
-      + "\u1e8c\u1e8c"+"\u1e8e\u1e8e"+"\u1e90\u1e90"+"\u1e92\u1e92"
-      + "\u1e94\u1e94"+"\u1e9e\u1e9e"+"\u1ea0\u1ea0"+"\u1ea2\u1ea2"
-      + "\u1ea4\u1ea4"+"\u1ea6\u1ea6"+"\u1ea8\u1ea8"+"\u1eaa\u1eaa"
-      + "\u1eac\u1eac"+"\u1eae\u1eae"+"\u1eb0\u1eb0"+"\u1eb2\u1eb2"
-      + "\u1eb4\u1eb4"+"\u1eb6\u1eb6"+"\u1eb8\u1eb8"+"\u1eba\u1eba"
-      + "\u1ebc\u1ebc"+"\u1ebe\u1ebe"+"\u1ec0\u1ec0"+"\u1ec2\u1ec2"
-      + "\u1ec4\u1ec4"+"\u1ec6\u1ec6"+"\u1ec8\u1ec8"+"\u1eca\u1eca"
-      + "\u1ecc\u1ecc"+"\u1ece\u1ece"+"\u1ed0\u1ed0"+"\u1ed2\u1ed2"
-      + "\u1ed4\u1ed4"+"\u1ed6\u1ed6"+"\u1ed8\u1ed8"+"\u1eda\u1eda"
-      + "\u1edc\u1edc"+"\u1ede\u1ede"+"\u1ee0\u1ee0"+"\u1ee2\u1ee2"
-      + "\u1ee4\u1ee4"+"\u1ee6\u1ee6"+"\u1ee8\u1ee8"+"\u1eea\u1eea"
-      + "\u1eec\u1eec"+"\u1eee\u1eee"+"\u1ef0\u1ef0"+"\u1ef2\u1ef2"
-      + "\u1ef4\u1ef4"+"\u1ef6\u1ef6"+"\u1ef8\u1ef8"+"\u1efa\u1efa"
-      + "\u1efc\u1efc"+"\u1efe\u1efe"+"\u1f08\u1f0f"+"\u1f18\u1f1d"
-      + "\u1f28\u1f2f"+"\u1f38\u1f3f"+"\u1f48\u1f4d"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f5f"+"\u1f68\u1f6f"
-      + "\u1fb8\u1fbb"+"\u1fc8\u1fcb"+"\u1fd8\u1fdb"+"\u1fe8\u1fec"
-      + "\u1ff8\u1ffb"+"\u2102\u2102"+"\u2107\u2107"+"\u210b\u210d"
-      + "\u2110\u2112"+"\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"
-      + "\u2126\u2126"+"\u2128\u2128"+"\u212a\u212d"+"\u2130\u2133"
-      + "\u213e\u213f"+"\u2145\u2145"+"\u2160\u216f"+"\u2183\u2183"
-      + "\u24b6\u24cf"+"\u2c00\u2c2e"+"\u2c60\u2c60"+"\u2c62\u2c64"
-      + "\u2c67\u2c67"+"\u2c69\u2c69"+"\u2c6b\u2c6b"+"\u2c6d\u2c6f"
-      + "\u2c72\u2c72"+"\u2c75\u2c75"+"\u2c80\u2c80"+"\u2c82\u2c82"
-      + "\u2c84\u2c84"+"\u2c86\u2c86"+"\u2c88\u2c88"+"\u2c8a\u2c8a"
-      + "\u2c8c\u2c8c"+"\u2c8e\u2c8e"+"\u2c90\u2c90"+"\u2c92\u2c92"
-      + "\u2c94\u2c94"+"\u2c96\u2c96"+"\u2c98\u2c98"+"\u2c9a\u2c9a"
-      + "\u2c9c\u2c9c"+"\u2c9e\u2c9e"+"\u2ca0\u2ca0"+"\u2ca2\u2ca2"
-      + "\u2ca4\u2ca4"+"\u2ca6\u2ca6"+"\u2ca8\u2ca8"+"\u2caa\u2caa"
-      + "\u2cac\u2cac"+"\u2cae\u2cae"+"\u2cb0\u2cb0"+"\u2cb2\u2cb2"
-      + "\u2cb4\u2cb4"+"\u2cb6\u2cb6"+"\u2cb8\u2cb8"+"\u2cba\u2cba"
-      + "\u2cbc\u2cbc"+"\u2cbe\u2cbe"+"\u2cc0\u2cc0"+"\u2cc2\u2cc2"
-      + "\u2cc4\u2cc4"+"\u2cc6\u2cc6"+"\u2cc8\u2cc8"+"\u2cca\u2cca"
-      + "\u2ccc\u2ccc"+"\u2cce\u2cce"+"\u2cd0\u2cd0"+"\u2cd2\u2cd2"
-      + "\u2cd4\u2cd4"+"\u2cd6\u2cd6"+"\u2cd8\u2cd8"+"\u2cda\u2cda"
-      + "\u2cdc\u2cdc"+"\u2cde\u2cde"+"\u2ce0\u2ce0"+"\u2ce2\u2ce2"
-      + "\ua640\ua640"+"\ua642\ua642"+"\ua644\ua644"+"\ua646\ua646"
-      + "\ua648\ua648"+"\ua64a\ua64a"+"\ua64c\ua64c"+"\ua64e\ua64e"
-      + "\ua650\ua650"+"\ua652\ua652"+"\ua654\ua654"+"\ua656\ua656"
-      + "\ua658\ua658"+"\ua65a\ua65a"+"\ua65c\ua65c"+"\ua65e\ua65e"
-      + "\ua662\ua662"+"\ua664\ua664"+"\ua666\ua666"+"\ua668\ua668"
-      + "\ua66a\ua66a"+"\ua66c\ua66c"+"\ua680\ua680"+"\ua682\ua682"
-      + "\ua684\ua684"+"\ua686\ua686"+"\ua688\ua688"+"\ua68a\ua68a"
-      + "\ua68c\ua68c"+"\ua68e\ua68e"+"\ua690\ua690"+"\ua692\ua692"
-      + "\ua694\ua694"+"\ua696\ua696"+"\ua722\ua722"+"\ua724\ua724"
-      + "\ua726\ua726"+"\ua728\ua728"+"\ua72a\ua72a"+"\ua72c\ua72c"
-      + "\ua72e\ua72e"+"\ua732\ua732"+"\ua734\ua734"+"\ua736\ua736"
-      + "\ua738\ua738"+"\ua73a\ua73a"+"\ua73c\ua73c"+"\ua73e\ua73e"
-      + "\ua740\ua740"+"\ua742\ua742"+"\ua744\ua744"+"\ua746\ua746"
-      + "\ua748\ua748"+"\ua74a\ua74a"+"\ua74c\ua74c"+"\ua74e\ua74e"
-      + "\ua750\ua750"+"\ua752\ua752"+"\ua754\ua754"+"\ua756\ua756"
-      + "\ua758\ua758"+"\ua75a\ua75a"+"\ua75c\ua75c"+"\ua75e\ua75e"
-      + "\ua760\ua760"+"\ua762\ua762"+"\ua764\ua764"+"\ua766\ua766"
-      + "\ua768\ua768"+"\ua76a\ua76a"+"\ua76c\ua76c"+"\ua76e\ua76e"
-      + "\ua779\ua779"+"\ua77b\ua77b"+"\ua77d\ua77e"+"\ua780\ua780"
-      + "\ua782\ua782"+"\ua784\ua784"+"\ua786\ua786"+"\ua78b\ua78b"
-      + "\uff21\uff3a"+"\ud801\udc00\ud801\udc27"+"\ud835\udc00\ud835\udc19"+"\ud835\udc34\ud835\udc4d"
-      + "\ud835\udc68\ud835\udc81"+"\ud835\udc9c\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"
-      + "\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb5"+"\ud835\udcd0\ud835\udce9"
-      + "\ud835\udd04\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd38\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd6c\ud835\udd85"+"\ud835\udda0\ud835\uddb9"+"\ud835\uddd4\ud835\udded"
-      + "\ud835\ude08\ud835\ude21"+"\ud835\ude3c\ud835\ude55"+"\ud835\ude70\ud835\ude89"+"\ud835\udea8\ud835\udec0"
-      + "\ud835\udee2\ud835\udefa"+"\ud835\udf1c\ud835\udf34"+"\ud835\udf56\ud835\udf6e"+"\ud835\udf90\ud835\udfa8"
-      + "\ud835\udfca\ud835\udfca",
-    // Unicode 5.1 property value: {vai}
-        "\ua500\ua62b",
-    // Unicode 5.1 property value: {variationselector}
-        "\u180b\u180d"+"\ufe00\ufe0f"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {whitespace}
-        "\t\r"+"\u0020\u0020"+"\u0085\u0085"+"\u00a0\u00a0"
-      + "\u1680\u1680"+"\u180e\u180e"+"\u2000\u200a"+"\u2028\u2029"
-      + "\u202f\u202f"+"\u205f\u205f"+"\u3000\u3000",
-    // Unicode 5.1 property value: {wordbreak=aletter}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"
-      + "\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u02c1"
-      + "\u02c6\u02d1"+"\u02e0\u02e4"+"\u02ec\u02ec"+"\u02ee\u02ee"
-      + "\u0370\u0374"+"\u0376\u0377"+"\u037a\u037d"+"\u0386\u0386"
-      + "\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u03f5"
-      + "\u03f7\u0481"+"\u048a\u0523"+"\u0531\u0556"+"\u0559\u0559"
-      + "\u0561\u0587"+"\u05d0\u05ea"+"\u05f0\u05f3"+"\u0621\u064a"
-      + "\u066e\u066f"+"\u0671\u06d3"+"\u06d5\u06d5"+"\u06e5\u06e6"
-      + "\u06ee\u06ef"+"\u06fa\u06fc"+"\u06ff\u06ff"+"\u0710\u0710"
-      + "\u0712\u072f"+"\u074d\u07a5"+"\u07b1\u07b1"+"\u07ca\u07ea"
-      + "\u07f4\u07f5"+"\u07fa\u07fa"+"\u0904\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0971\u0972"+"\u097b\u097f"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bd\u09bd"+"\u09ce\u09ce"
-      + "\u09dc\u09dd"+"\u09df\u09e1"+"\u09f0\u09f1"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a72\u0a74"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0abd"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae1"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"
-      + "\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b71\u0b71"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bd0\u0bd0"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3d\u0c3d"+"\u0c58\u0c59"+"\u0c60\u0c61"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbd\u0cbd"+"\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d3d"
-      + "\u0d60\u0d61"+"\u0d7a\u0d7f"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0f00\u0f00"
-      + "\u0f40\u0f47"+"\u0f49\u0f6c"+"\u0f88\u0f8b"+"\u10a0\u10c5"
-      + "\u10d0\u10fa"+"\u10fc\u10fc"+"\u1100\u1159"+"\u115f\u11a2"
-      + "\u11a8\u11f9"+"\u1200\u1248"+"\u124a\u124d"+"\u1250\u1256"
-      + "\u1258\u1258"+"\u125a\u125d"+"\u1260\u1288"+"\u128a\u128d"
-      + "\u1290\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"+"\u12c0\u12c0"
-      + "\u12c2\u12c5"+"\u12c8\u12d6"+"\u12d8\u1310"+"\u1312\u1315"
-      + "\u1318\u135a"+"\u1380\u138f"+"\u13a0\u13f4"+"\u1401\u166c"
-      + "\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"
-      + "\u1700\u170c"+"\u170e\u1711"+"\u1720\u1731"+"\u1740\u1751"
-      + "\u1760\u176c"+"\u176e\u1770"+"\u1820\u1877"+"\u1880\u18a8"
-      + "\u18aa\u18aa"+"\u1900\u191c"+"\u1a00\u1a16"+"\u1b05\u1b33"
-      + "\u1b45\u1b4b"+"\u1b83\u1ba0"+"\u1bae\u1baf"+"\u1c00\u1c23"
-      + "\u1c4d\u1c4f"+"\u1c5a\u1c7d"+"\u1d00\u1dbf"+"\u1e00\u1f15"
-      + "\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"
-      + "\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"
-      + "\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"
-      + "\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"+"\u1fe0\u1fec"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u2090\u2094"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2119\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u212d"+"\u212f\u2139"+"\u213c\u213f"
-      + "\u2145\u2149"+"\u214e\u214e"+"\u2160\u2188"+"\u24b6\u24e9"
-      + "\u2c00\u2c2e"+"\u2c30\u2c5e"+"\u2c60\u2c6f"+"\u2c71\u2c7d"
-      + "\u2c80\u2ce4"+"\u2d00\u2d25"+"\u2d30\u2d65"+"\u2d6f\u2d6f"
-      + "\u2d80\u2d96"+"\u2da0\u2da6"+"\u2da8\u2dae"+"\u2db0\u2db6"
-      + "\u2db8\u2dbe"+"\u2dc0\u2dc6"+"\u2dc8\u2dce"+"\u2dd0\u2dd6"
-      + "\u2dd8\u2dde"+"\u2e2f\u2e2f"+"\u3005\u3005"+"\u303b\u303c"
-      + "\u3105\u312d"+"\u3131\u318e"+"\u31a0\u31b7"+"\ua000\ua48c"
-      + "\ua500\ua60c"+"\ua610\ua61f"+"\ua62a\ua62b"+"\ua640\ua65f"
-      + "\ua662\ua66e"+"\ua67f\ua697"+"\ua717\ua71f"+"\ua722\ua788"
-      + "\ua78b\ua78c"+"\ua7fb\ua801"+"\ua803\ua805"+"\ua807\ua80a"
-      + "\ua80c\ua822"+"\ua840\ua873"+"\ua882\ua8b3"+"\ua90a\ua925"
-      + "\ua930\ua946"+"\uaa00\uaa28"+"\uaa40\uaa42"+"\uaa44\uaa4b"
-      + "\uac00\ud7a3"+"\ufb00\ufb06"+"\ufb13\ufb17"+"\ufb1d\ufb1d"
-      + "\ufb1f\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufd3d"
-      + "\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdfb"+"\ufe70\ufe74"
-      + "\ufe76\ufefc"+"\uff21\uff3a"+"\uff41\uff5a"+"\uffa0\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"+"\ud800\udc3c\ud800\udc3d"
-      + "\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"+"\ud800\udd40\ud800\udd74"
-      + "\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"
-      + "\ud800\udf80\ud800\udf9d"+"\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"+"\ud800\udfd1\ud800\udfd5"
-      + "\ud801\udc00\ud801\udc9d"+"\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"
-      + "\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd15"
-      + "\ud802\udd20\ud802\udd39"+"\ud802\ude00\ud802\ude00"+"\ud802\ude10\ud802\ude13"+"\ud802\ude15\ud802\ude17"
-      + "\ud802\ude19\ud802\ude33"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"+"\ud835\udc00\ud835\udc54"
-      + "\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"
-      + "\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"
-      + "\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"
-      + "\ud835\udfc4\ud835\udfcb",
-    // Unicode 5.1 property value: {wordbreak=cr}
-        "\r\r",
-    // Unicode 5.1 property value: {wordbreak=extend}
-        "\u0300\u036f"+"\u0483\u0489"+"\u0591\u05bd"+"\u05bf\u05bf"
-      + "\u05c1\u05c2"+"\u05c4\u05c5"+"\u05c7\u05c7"+"\u0610\u061a"
-      + "\u064b\u065e"+"\u0670\u0670"+"\u06d6\u06dc"+"\u06de\u06e4"
-      + "\u06e7\u06e8"+"\u06ea\u06ed"+"\u0711\u0711"+"\u0730\u074a"
-      + "\u07a6\u07b0"+"\u07eb\u07f3"+"\u0901\u0903"+"\u093c\u093c"
-      + "\u093e\u094d"+"\u0951\u0954"+"\u0962\u0963"+"\u0981\u0983"
-      + "\u09bc\u09bc"+"\u09be\u09c4"+"\u09c7\u09c8"+"\u09cb\u09cd"
-      + "\u09d7\u09d7"+"\u09e2\u09e3"+"\u0a01\u0a03"+"\u0a3c\u0a3c"
-      + "\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"+"\u0a51\u0a51"
-      + "\u0a70\u0a71"+"\u0a75\u0a75"+"\u0a81\u0a83"+"\u0abc\u0abc"
-      + "\u0abe\u0ac5"+"\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ae2\u0ae3"
-      + "\u0b01\u0b03"+"\u0b3c\u0b3c"+"\u0b3e\u0b44"+"\u0b47\u0b48"
-      + "\u0b4b\u0b4d"+"\u0b56\u0b57"+"\u0b62\u0b63"+"\u0b82\u0b82"
-      + "\u0bbe\u0bc2"+"\u0bc6\u0bc8"+"\u0bca\u0bcd"+"\u0bd7\u0bd7"
-      + "\u0c01\u0c03"+"\u0c3e\u0c44"+"\u0c46\u0c48"+"\u0c4a\u0c4d"
-      + "\u0c55\u0c56"+"\u0c62\u0c63"+"\u0c82\u0c83"+"\u0cbc\u0cbc"
-      + "\u0cbe\u0cc4"+"\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"
-      + "\u0ce2\u0ce3"+"\u0d02\u0d03"+"\u0d3e\u0d44"+"\u0d46\u0d48"
-      + "\u0d4a\u0d4d"+"\u0d57\u0d57"+"\u0d62\u0d63"+"\u0d82\u0d83"
-      + "\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e31\u0e31"+"\u0e34\u0e3a"+"\u0e47\u0e4e"
-      + "\u0eb1\u0eb1"+"\u0eb4\u0eb9"+"\u0ebb\u0ebc"+"\u0ec8\u0ecd"
-      + "\u0f18\u0f19"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f3e\u0f3f"+"\u0f71\u0f84"+"\u0f86\u0f87"+"\u0f90\u0f97"
-      + "\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u102b\u103e"+"\u1056\u1059"
-      + "\u105e\u1060"+"\u1062\u1064"+"\u1067\u106d"+"\u1071\u1074"
-      + "\u1082\u108d"+"\u108f\u108f"+"\u135f\u135f"+"\u1712\u1714"
-      + "\u1732\u1734"+"\u1752\u1753"+"\u1772\u1773"+"\u17b6\u17d3"
-      + "\u17dd\u17dd"+"\u180b\u180d"+"\u18a9\u18a9"+"\u1920\u192b"
-      + "\u1930\u193b"+"\u19b0\u19c0"+"\u19c8\u19c9"+"\u1a17\u1a1b"
-      + "\u1b00\u1b04"+"\u1b34\u1b44"+"\u1b6b\u1b73"+"\u1b80\u1b82"
-      + "\u1ba1\u1baa"+"\u1c24\u1c37"+"\u1dc0\u1de6"+"\u1dfe\u1dff"
-      + "\u200c\u200d"+"\u20d0\u20f0"+"\u2de0\u2dff"+"\u302a\u302f"
-      + "\u3099\u309a"+"\ua66f\ua672"+"\ua67c\ua67d"+"\ua802\ua802"
-      + "\ua806\ua806"+"\ua80b\ua80b"+"\ua823\ua827"+"\ua880\ua881"
-      + "\ua8b4\ua8c4"+"\ua926\ua92d"+"\ua947\ua953"+"\uaa29\uaa36"
-      + "\uaa43\uaa43"+"\uaa4c\uaa4d"+"\ufb1e\ufb1e"+"\ufe00\ufe0f"
-      + "\ufe20\ufe26"+"\uff9e\uff9f"+"\ud800\uddfd\ud800\uddfd"+"\ud802\ude01\ud802\ude03"
-      + "\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude0f"+"\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude3f"
-      + "\ud834\udd65\ud834\udd69"+"\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad"+"\ud834\ude42\ud834\ude44"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {wordbreak=extendnumlet}
-        "\u005f\u005f"+"\u203f\u2040"+"\u2054\u2054"+"\ufe33\ufe34"
-      + "\ufe4d\ufe4f"+"\uff3f\uff3f",
-    // Unicode 5.1 property value: {wordbreak=format}
-        "\u00ad\u00ad"+"\u0600\u0603"+"\u06dd\u06dd"+"\u070f\u070f"
-      + "\u17b4\u17b5"+"\u200b\u200b"+"\u200e\u200f"+"\u202a\u202e"
-      + "\u2060\u2064"+"\u206a\u206f"+"\ufeff\ufeff"+"\ufff9\ufffb"
-      + "\ud834\udd73\ud834\udd7a"+"\udb40\udc01\udb40\udc01"+"\udb40\udc20\udb40\udc7f",
-    // Unicode 5.1 property value: {wordbreak=katakana}
-        "\u3031\u3035"+"\u309b\u309c"+"\u30a0\u30fa"+"\u30fc\u30ff"
-      + "\u31f0\u31ff"+"\u32d0\u32fe"+"\u3300\u3357"+"\uff66\uff9d",
-    // Unicode 5.1 property value: {wordbreak=lf}
-        "\n\n",
-    // Unicode 5.1 property value: {wordbreak=midletter}
-        "\u003a\u003a"+"\u00b7\u00b7"+"\u0387\u0387"+"\u05f4\u05f4"
-      + "\u2027\u2027"+"\ufe13\ufe13"+"\ufe55\ufe55"+"\uff1a\uff1a",
-    // Unicode 5.1 property value: {wordbreak=midnum}
-        "\u002c\u002c"+"\u003b\u003b"+"\u037e\u037e"+"\u0589\u0589"
-      + "\u060c\u060d"+"\u066c\u066c"+"\u07f8\u07f8"+"\u2044\u2044"
-      + "\ufe10\ufe10"+"\ufe14\ufe14"+"\ufe50\ufe50"+"\ufe54\ufe54"
-      + "\uff0c\uff0c"+"\uff1b\uff1b",
-    // Unicode 5.1 property value: {wordbreak=midnumlet}
-        "\u0027\u0027"+"\u002e\u002e"+"\u2018\u2019"+"\u2024\u2024"
-      + "\ufe52\ufe52"+"\uff07\uff07"+"\uff0e\uff0e",
-    // Unicode 5.1 property value: {wordbreak=newline}
-        "\u000b\f"+"\u0085\u0085"+"\u2028\u2029",
-    // Unicode 5.1 property value: {wordbreak=numeric}
-        "\u0030\u0039"+"\u0660\u0669"+"\u066b\u066b"+"\u06f0\u06f9"
-      + "\u07c0\u07c9"+"\u0966\u096f"+"\u09e6\u09ef"+"\u0a66\u0a6f"
-      + "\u0ae6\u0aef"+"\u0b66\u0b6f"+"\u0be6\u0bef"+"\u0c66\u0c6f"
-      + "\u0ce6\u0cef"+"\u0d66\u0d6f"+"\u0e50\u0e59"+"\u0ed0\u0ed9"
-      + "\u0f20\u0f29"+"\u1040\u1049"+"\u1090\u1099"+"\u17e0\u17e9"
-      + "\u1810\u1819"+"\u1946\u194f"+"\u19d0\u19d9"+"\u1b50\u1b59"
-      + "\u1bb0\u1bb9"+"\u1c40\u1c49"+"\u1c50\u1c59"+"\ua620\ua629"
-      + "\ua8d0\ua8d9"+"\ua900\ua909"+"\uaa50\uaa59"+"\ud801\udca0\ud801\udca9"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 5.1 property value: {wordbreak=other}
-        "\000\t"+"\u000e\u0026"+"\u0028\u002b"+"\u002d\u002d"
-      + "\u002f\u002f"+"\u003c\u0040"+"\u005b\u005e"+"\u0060\u0060"
-      + "\u007b\u0084"+"\u0086\u00a9"+"\u00ab\u00ac"+"\u00ae\u00b4"
-      + "\u00b6\u00b6"+"\u00b8\u00b9"+"\u00bb\u00bf"+"\u00d7\u00d7"
-      + "\u00f7\u00f7"+"\u02c2\u02c5"+"\u02d2\u02df"+"\u02e5\u02eb"
-      + "\u02ed\u02ed"+"\u02ef\u02ff"+"\u0375\u0375"+"\u0378\u0379"
-      + "\u037f\u0385"+"\u038b\u038b"+"\u038d\u038d"+"\u03a2\u03a2"
-      + "\u03f6\u03f6"+"\u0482\u0482"+"\u0524\u0530"+"\u0557\u0558"
-      + "\u055a\u0560"+"\u0588\u0588"+"\u058a\u0590"+"\u05be\u05be"
-      + "\u05c0\u05c0"+"\u05c3\u05c3"+"\u05c6\u05c6"+"\u05c8\u05cf"
-      + "\u05eb\u05ef"+"\u05f5\u05ff"+"\u0604\u060b"+"\u060e\u060f"
-      + "\u061b\u0620"+"\u065f\u065f"+"\u066a\u066a"+"\u066d\u066d"
-      + "\u06d4\u06d4"+"\u06e9\u06e9"+"\u06fd\u06fe"+"\u0700\u070e"
-      + "\u074b\u074c"+"\u07b2\u07bf"+"\u07f6\u07f7"+"\u07f9\u07f9"
-      + "\u07fb\u0900"+"\u093a\u093b"+"\u094e\u094f"+"\u0955\u0957"
-      + "\u0964\u0965"+"\u0970\u0970"+"\u0973\u097a"+"\u0980\u0980"
-      + "\u0984\u0984"+"\u098d\u098e"+"\u0991\u0992"+"\u09a9\u09a9"
-      + "\u09b1\u09b1"+"\u09b3\u09b5"+"\u09ba\u09bb"+"\u09c5\u09c6"
-      + "\u09c9\u09ca"+"\u09cf\u09d6"+"\u09d8\u09db"+"\u09de\u09de"
-      + "\u09e4\u09e5"+"\u09f2\u0a00"+"\u0a04\u0a04"+"\u0a0b\u0a0e"
-      + "\u0a11\u0a12"+"\u0a29\u0a29"+"\u0a31\u0a31"+"\u0a34\u0a34"
-      + "\u0a37\u0a37"+"\u0a3a\u0a3b"+"\u0a3d\u0a3d"+"\u0a43\u0a46"
-      + "\u0a49\u0a4a"+"\u0a4e\u0a50"+"\u0a52\u0a58"+"\u0a5d\u0a5d"
-      + "\u0a5f\u0a65"+"\u0a76\u0a80"+"\u0a84\u0a84"+"\u0a8e\u0a8e"
-      + "\u0a92\u0a92"+"\u0aa9\u0aa9"+"\u0ab1\u0ab1"+"\u0ab4\u0ab4"
-      + "\u0aba\u0abb"+"\u0ac6\u0ac6"+"\u0aca\u0aca"+"\u0ace\u0acf"
-      + "\u0ad1\u0adf"+"\u0ae4\u0ae5"+"\u0af0\u0b00"+"\u0b04\u0b04"
-      + "\u0b0d\u0b0e"+"\u0b11\u0b12"+"\u0b29\u0b29"+"\u0b31\u0b31"
-      + "\u0b34\u0b34"+"\u0b3a\u0b3b"+"\u0b45\u0b46"+"\u0b49\u0b4a"
-      + "\u0b4e\u0b55"+"\u0b58\u0b5b"+"\u0b5e\u0b5e"+"\u0b64\u0b65"
-      + "\u0b70\u0b70"+"\u0b72\u0b81"+"\u0b84\u0b84"+"\u0b8b\u0b8d"
-      + "\u0b91\u0b91"+"\u0b96\u0b98"+"\u0b9b\u0b9b"+"\u0b9d\u0b9d"
-      + "\u0ba0\u0ba2"+"\u0ba5\u0ba7"+"\u0bab\u0bad"+"\u0bba\u0bbd"
-      + "\u0bc3\u0bc5"+"\u0bc9\u0bc9"+"\u0bce\u0bcf"+"\u0bd1\u0bd6"
-      + "\u0bd8\u0be5"+"\u0bf0\u0c00"+"\u0c04\u0c04"+"\u0c0d\u0c0d"
-      + "\u0c11\u0c11"+"\u0c29\u0c29"+"\u0c34\u0c34"+"\u0c3a\u0c3c"
-      + "\u0c45\u0c45"+"\u0c49\u0c49"+"\u0c4e\u0c54"+"\u0c57\u0c57"
-      + "\u0c5a\u0c5f"+"\u0c64\u0c65"+"\u0c70\u0c81"+"\u0c84\u0c84"
-      + "\u0c8d\u0c8d"+"\u0c91\u0c91"+"\u0ca9\u0ca9"+"\u0cb4\u0cb4"
-      + "\u0cba\u0cbb"+"\u0cc5\u0cc5"+"\u0cc9\u0cc9"+"\u0cce\u0cd4"
-      + "\u0cd7\u0cdd"+"\u0cdf\u0cdf"+"\u0ce4\u0ce5"+"\u0cf0\u0d01"
-      + "\u0d04\u0d04"+"\u0d0d\u0d0d"+"\u0d11\u0d11"+"\u0d29\u0d29"
-      + "\u0d3a\u0d3c"+"\u0d45\u0d45"+"\u0d49\u0d49"+"\u0d4e\u0d56"
-      + "\u0d58\u0d5f"+"\u0d64\u0d65"+"\u0d70\u0d79"+"\u0d80\u0d81"
-      + "\u0d84\u0d84"+"\u0d97\u0d99"+"\u0db2\u0db2"+"\u0dbc\u0dbc"
-      + "\u0dbe\u0dbf"+"\u0dc7\u0dc9"+"\u0dcb\u0dce"+"\u0dd5\u0dd5"
-      + "\u0dd7\u0dd7"+"\u0de0\u0df1"+"\u0df4\u0e30"+"\u0e32\u0e33"
-      + "\u0e3b\u0e46"+"\u0e4f\u0e4f"+"\u0e5a\u0eb0"+"\u0eb2\u0eb3"
-      + "\u0eba\u0eba"+"\u0ebd\u0ec7"+"\u0ece\u0ecf"+"\u0eda\u0eff"
-      + "\u0f01\u0f17"+"\u0f1a\u0f1f"+"\u0f2a\u0f34"+"\u0f36\u0f36"
-      + "\u0f38\u0f38"+"\u0f3a\u0f3d"+"\u0f48\u0f48"+"\u0f6d\u0f70"
-      + "\u0f85\u0f85"+"\u0f8c\u0f8f"+"\u0f98\u0f98"+"\u0fbd\u0fc5"
-      + "\u0fc7\u102a"+"\u103f\u103f"+"\u104a\u1055"+"\u105a\u105d"
-      + "\u1061\u1061"+"\u1065\u1066"+"\u106e\u1070"+"\u1075\u1081"
-      + "\u108e\u108e"+"\u109a\u109f"+"\u10c6\u10cf"+"\u10fb\u10fb"
-      + "\u10fd\u10ff"+"\u115a\u115e"+"\u11a3\u11a7"+"\u11fa\u11ff"
-      + "\u1249\u1249"+"\u124e\u124f"+"\u1257\u1257"+"\u1259\u1259"
-      + "\u125e\u125f"+"\u1289\u1289"+"\u128e\u128f"+"\u12b1\u12b1"
-      + "\u12b6\u12b7"+"\u12bf\u12bf"+"\u12c1\u12c1"+"\u12c6\u12c7"
-      + "\u12d7\u12d7"+"\u1311\u1311"+"\u1316\u1317"+"\u135b\u135e"
-      + "\u1360\u137f"+"\u1390\u139f"+"\u13f5\u1400"+"\u166d\u166e"
-      + "\u1677\u1680"+"\u169b\u169f"+"\u16eb\u16ed"+"\u16f1\u16ff"
-      + "\u170d\u170d"+"\u1715\u171f"+"\u1735\u173f"+"\u1754\u175f"
-      + "\u176d\u176d"+"\u1771\u1771"+"\u1774\u17b3"+"\u17d4\u17dc"
-      + "\u17de\u17df"+"\u17ea\u180a"+"\u180e\u180f"+"\u181a\u181f"
-      + "\u1878\u187f"+"\u18ab\u18ff"+"\u191d\u191f"+"\u192c\u192f"
-      + "\u193c\u1945"+"\u1950\u19af"+"\u19c1\u19c7"+"\u19ca\u19cf"
-      + "\u19da\u19ff"+"\u1a1c\u1aff"+"\u1b4c\u1b4f"+"\u1b5a\u1b6a"
-      + "\u1b74\u1b7f"+"\u1bab\u1bad"+"\u1bba\u1bff"+"\u1c38\u1c3f"
-      + "\u1c4a\u1c4c"+"\u1c7e\u1cff"+"\u1de7\u1dfd"+"\u1f16\u1f17"
-      + "\u1f1e\u1f1f"+"\u1f46\u1f47"+"\u1f4e\u1f4f"+"\u1f58\u1f58"
-      + "\u1f5a\u1f5a"+"\u1f5c\u1f5c"+"\u1f5e\u1f5e"+"\u1f7e\u1f7f"
-      + "\u1fb5\u1fb5"+"\u1fbd\u1fbd"+"\u1fbf\u1fc1"+"\u1fc5\u1fc5"
-      + "\u1fcd\u1fcf"+"\u1fd4\u1fd5"+"\u1fdc\u1fdf"+"\u1fed\u1ff1"
-      + "\u1ff5\u1ff5"+"\u1ffd\u200a"+"\u2010\u2017"+"\u201a\u2023"
-      + "\u2025\u2026"+"\u202f\u203e"+"\u2041\u2043"+"\u2045\u2053"
-      + "\u2055\u205f"+"\u2065\u2069"+"\u2070\u2070"+"\u2072\u207e"
-      + "\u2080\u208f"+"\u2095\u20cf"+"\u20f1\u2101"+"\u2103\u2106"
-      + "\u2108\u2109"+"\u2114\u2114"+"\u2116\u2118"+"\u211e\u2123"
-      + "\u2125\u2125"+"\u2127\u2127"+"\u2129\u2129"+"\u212e\u212e"
-      + "\u213a\u213b"+"\u2140\u2144"+"\u214a\u214d"+"\u214f\u215f"
-      + "\u2189\u24b5"+"\u24ea\u2bff"+"\u2c2f\u2c2f"+"\u2c5f\u2c5f"
-      + "\u2c70\u2c70"+"\u2c7e\u2c7f"+"\u2ce5\u2cff"+"\u2d26\u2d2f"
-      + "\u2d66\u2d6e"+"\u2d70\u2d7f"+"\u2d97\u2d9f"+"\u2da7\u2da7"
-      + "\u2daf\u2daf"+"\u2db7\u2db7"+"\u2dbf\u2dbf"+"\u2dc7\u2dc7"
-      + "\u2dcf\u2dcf"+"\u2dd7\u2dd7"+"\u2ddf\u2ddf"+"\u2e00\u2e2e"
-      + "\u2e30\u3004"+"\u3006\u3029"+"\u3030\u3030"+"\u3036\u303a"
-      + "\u303d\u3098"+"\u309d\u309f"+"\u30fb\u30fb"+"\u3100\u3104"
-      + "\u312e\u3130"+"\u318f\u319f"+"\u31b8\u31ef"+"\u3200\u32cf"
-      + "\u32ff\u32ff"+"\u3358\u9fff"+"\ua48d\ua4ff"+"\ua60d\ua60f"
-      + "\ua62c\ua63f"+"\ua660\ua661"+"\ua673\ua67b"+"\ua67e\ua67e"
-      + "\ua698\ua716"+"\ua720\ua721"+"\ua789\ua78a"+"\ua78d\ua7fa"
-      + "\ua828\ua83f"+"\ua874\ua87f"+"\ua8c5\ua8cf"+"\ua8da\ua8ff"
-      + "\ua92e\ua92f"+"\ua954\ua9ff"+"\uaa37\uaa3f"+"\uaa4e\uaa4f"
-      + "\uaa5a\uabff"+"\ud7a4\ufaff"+"\ufb07\ufb12"+"\ufb18\ufb1c"
-      + "\ufb29\ufb29"+"\ufb37\ufb37"+"\ufb3d\ufb3d"+"\ufb3f\ufb3f"
-      + "\ufb42\ufb42"+"\ufb45\ufb45"+"\ufbb2\ufbd2"+"\ufd3e\ufd4f"
-      + "\ufd90\ufd91"+"\ufdc8\ufdef"+"\ufdfc\ufdff"+"\ufe11\ufe12"
-      + "\ufe15\ufe1f"+"\ufe27\ufe32"+"\ufe35\ufe4c"+"\ufe51\ufe51"
-      + "\ufe53\ufe53"+"\ufe56\ufe6f"+"\ufe75\ufe75"+"\ufefd\ufefe"
-      + "\uff00\uff06"+"\uff08\uff0b"+"\uff0d\uff0d"+"\uff0f\uff19"
-      + "\uff1c\uff20"+"\uff3b\uff3e"+"\uff40\uff40"+"\uff5b\uff65"
-      + "\uffbf\uffc1"+"\uffc8\uffc9"+"\uffd0\uffd1"+"\uffd8\uffd9"
-      + "\uffdd\ufff8"+"\ufffc\uffff"+"\ud800\udc0c\ud800\udc0c"+"\ud800\udc27\ud800\udc27"
-      + "\ud800\udc3b\ud800\udc3b"+"\ud800\udc3e\ud800\udc3e"+"\ud800\udc4e\ud800\udc4f"+"\ud800\udc5e\ud800\udc7f"
-      + "\ud800\udcfb\ud800\udd3f"+"\ud800\udd75\ud800\uddfc"+"\ud800\uddfe\ud800\ude7f"+"\ud800\ude9d\ud800\ude9f"
-      + "\ud800\uded1\ud800\udeff"+"\ud800\udf1f\ud800\udf2f"+"\ud800\udf4b\ud800\udf7f"+"\ud800\udf9e\ud800\udf9f"
-      + "\ud800\udfc4\ud800\udfc7"+"\ud800\udfd0\ud800\udfd0"+"\ud800\udfd6\ud800\udfff"+"\ud801\udc9e\ud801\udc9f"
-      + "\ud801\udcaa\ud801\udfff"+"\ud802\udc06\ud802\udc07"+"\ud802\udc09\ud802\udc09"+"\ud802\udc36\ud802\udc36"
-      + "\ud802\udc39\ud802\udc3b"+"\ud802\udc3d\ud802\udc3e"+"\ud802\udc40\ud802\udcff"+"\ud802\udd16\ud802\udd1f"
-      + "\ud802\udd3a\ud802\uddff"+"\ud802\ude04\ud802\ude04"+"\ud802\ude07\ud802\ude0b"+"\ud802\ude14\ud802\ude14"
-      + "\ud802\ude18\ud802\ude18"+"\ud802\ude34\ud802\ude37"+"\ud802\ude3b\ud802\ude3e"+"\ud802\ude40\ud807\udfff"
-      + "\ud808\udf6f\ud808\udfff"+"\ud809\udc63\ud834\udd64"+"\ud834\udd6a\ud834\udd6c"+"\ud834\udd83\ud834\udd84"
-      + "\ud834\udd8c\ud834\udda9"+"\ud834\uddae\ud834\ude41"+"\ud834\ude45\ud834\udfff"+"\ud835\udc55\ud835\udc55"
-      + "\ud835\udc9d\ud835\udc9d"+"\ud835\udca0\ud835\udca1"+"\ud835\udca3\ud835\udca4"+"\ud835\udca7\ud835\udca8"
-      + "\ud835\udcad\ud835\udcad"+"\ud835\udcba\ud835\udcba"+"\ud835\udcbc\ud835\udcbc"+"\ud835\udcc4\ud835\udcc4"
-      + "\ud835\udd06\ud835\udd06"+"\ud835\udd0b\ud835\udd0c"+"\ud835\udd15\ud835\udd15"+"\ud835\udd1d\ud835\udd1d"
-      + "\ud835\udd3a\ud835\udd3a"+"\ud835\udd3f\ud835\udd3f"+"\ud835\udd45\ud835\udd45"+"\ud835\udd47\ud835\udd49"
-      + "\ud835\udd51\ud835\udd51"+"\ud835\udea6\ud835\udea7"+"\ud835\udec1\ud835\udec1"+"\ud835\udedb\ud835\udedb"
-      + "\ud835\udefb\ud835\udefb"+"\ud835\udf15\ud835\udf15"+"\ud835\udf35\ud835\udf35"+"\ud835\udf4f\ud835\udf4f"
-      + "\ud835\udf6f\ud835\udf6f"+"\ud835\udf89\ud835\udf89"+"\ud835\udfa9\ud835\udfa9"+"\ud835\udfc3\ud835\udfc3"
-      + "\ud835\udfcc\ud835\udfcd"+"\ud836\udc00\udb40\udc00"+"\udb40\udc02\udb40\udc1f"+"\udb40\udc80\udb40\udcff"
-      + "\udb40\uddf0\udbff\udfff",
-    // Unicode 5.1 property value: {xdigit}
-        "\u0030\u0039"+"\u0041\u0046"+"\u0061\u0066"+"\u0660\u0669"
-      + "\u06f0\u06f9"+"\u07c0\u07c9"+"\u0966\u096f"+"\u09e6\u09ef"
-      + "\u0a66\u0a6f"+"\u0ae6\u0aef"+"\u0b66\u0b6f"+"\u0be6\u0bef"
-      + "\u0c66\u0c6f"+"\u0ce6\u0cef"+"\u0d66\u0d6f"+"\u0e50\u0e59"
-      + "\u0ed0\u0ed9"+"\u0f20\u0f29"+"\u1040\u1049"+"\u1090\u1099"
-      + "\u17e0\u17e9"+"\u1810\u1819"+"\u1946\u194f"+"\u19d0\u19d9"
-      + "\u1b50\u1b59"+"\u1bb0\u1bb9"+"\u1c40\u1c49"+"\u1c50\u1c59"
-      + "\ua620\ua629"+"\ua8d0\ua8d9"+"\ua900\ua909"+"\uaa50\uaa59"
-      + "\uff10\uff19"+"\uff21\uff26"+"\uff41\uff46"+"\ud801\udca0\ud801\udca9"
-      + "\ud835\udfce\ud835\udfff",
-    // Unicode 5.1 property value: {xidcontinue}
-        "\u0030\u0039"+"\u0041\u005a"+"\u005f\u005f"+"\u0061\u007a"
-      + "\u00aa\u00aa"+"\u00b5\u00b5"+"\u00b7\u00b7"+"\u00ba\u00ba"
-      + "\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u02c1"+"\u02c6\u02d1"
-      + "\u02e0\u02e4"+"\u02ec\u02ec"+"\u02ee\u02ee"+"\u0300\u0374"
-      + "\u0376\u0377"+"\u037b\u037d"+"\u0386\u038a"+"\u038c\u038c"
-      + "\u038e\u03a1"+"\u03a3\u03f5"+"\u03f7\u0481"+"\u0483\u0487"
-      + "\u048a\u0523"+"\u0531\u0556"+"\u0559\u0559"+"\u0561\u0587"
-      + "\u0591\u05bd"+"\u05bf\u05bf"+"\u05c1\u05c2"+"\u05c4\u05c5"
-      + "\u05c7\u05c7"+"\u05d0\u05ea"+"\u05f0\u05f2"+"\u0610\u061a"
-      + "\u0621\u065e"+"\u0660\u0669"+"\u066e\u06d3"+"\u06d5\u06dc"
-      + "\u06df\u06e8"+"\u06ea\u06fc"+"\u06ff\u06ff"+"\u0710\u074a"
-      + "\u074d\u07b1"+"\u07c0\u07f5"+"\u07fa\u07fa"+"\u0901\u0939"
-      + "\u093c\u094d"+"\u0950\u0954"+"\u0958\u0963"+"\u0966\u096f"
-      + "\u0971\u0972"+"\u097b\u097f"+"\u0981\u0983"+"\u0985\u098c"
-      + "\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"+"\u09b2\u09b2"
-      + "\u09b6\u09b9"+"\u09bc\u09c4"+"\u09c7\u09c8"+"\u09cb\u09ce"
-      + "\u09d7\u09d7"+"\u09dc\u09dd"+"\u09df\u09e3"+"\u09e6\u09f1"
-      + "\u0a01\u0a03"+"\u0a05\u0a0a"+"\u0a0f\u0a10"+"\u0a13\u0a28"
-      + "\u0a2a\u0a30"+"\u0a32\u0a33"+"\u0a35\u0a36"+"\u0a38\u0a39"
-      + "\u0a3c\u0a3c"+"\u0a3e\u0a42"+"\u0a47\u0a48"+"\u0a4b\u0a4d"
-      + "\u0a51\u0a51"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"+"\u0a66\u0a75"
-      + "\u0a81\u0a83"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abc\u0ac5"
-      + "\u0ac7\u0ac9"+"\u0acb\u0acd"+"\u0ad0\u0ad0"+"\u0ae0\u0ae3"
-      + "\u0ae6\u0aef"+"\u0b01\u0b03"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"
-      + "\u0b3c\u0b44"+"\u0b47\u0b48"+"\u0b4b\u0b4d"+"\u0b56\u0b57"
-      + "\u0b5c\u0b5d"+"\u0b5f\u0b63"+"\u0b66\u0b6f"+"\u0b71\u0b71"
-      + "\u0b82\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bbe\u0bc2"+"\u0bc6\u0bc8"
-      + "\u0bca\u0bcd"+"\u0bd0\u0bd0"+"\u0bd7\u0bd7"+"\u0be6\u0bef"
-      + "\u0c01\u0c03"+"\u0c05\u0c0c"+"\u0c0e\u0c10"+"\u0c12\u0c28"
-      + "\u0c2a\u0c33"+"\u0c35\u0c39"+"\u0c3d\u0c44"+"\u0c46\u0c48"
-      + "\u0c4a\u0c4d"+"\u0c55\u0c56"+"\u0c58\u0c59"+"\u0c60\u0c63"
-      + "\u0c66\u0c6f"+"\u0c82\u0c83"+"\u0c85\u0c8c"+"\u0c8e\u0c90"
-      + "\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"+"\u0cbc\u0cc4"
-      + "\u0cc6\u0cc8"+"\u0cca\u0ccd"+"\u0cd5\u0cd6"+"\u0cde\u0cde"
-      + "\u0ce0\u0ce3"+"\u0ce6\u0cef"+"\u0d02\u0d03"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d44"
-      + "\u0d46\u0d48"+"\u0d4a\u0d4d"+"\u0d57\u0d57"+"\u0d60\u0d63"
-      + "\u0d66\u0d6f"+"\u0d7a\u0d7f"+"\u0d82\u0d83"+"\u0d85\u0d96"
-      + "\u0d9a\u0db1"+"\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"
-      + "\u0dca\u0dca"+"\u0dcf\u0dd4"+"\u0dd6\u0dd6"+"\u0dd8\u0ddf"
-      + "\u0df2\u0df3"+"\u0e01\u0e3a"+"\u0e40\u0e4e"+"\u0e50\u0e59"
-      + "\u0e81\u0e82"+"\u0e84\u0e84"+"\u0e87\u0e88"+"\u0e8a\u0e8a"
-      + "\u0e8d\u0e8d"+"\u0e94\u0e97"+"\u0e99\u0e9f"+"\u0ea1\u0ea3"
-      + "\u0ea5\u0ea5"+"\u0ea7\u0ea7"+"\u0eaa\u0eab"+"\u0ead\u0eb9"
-      + "\u0ebb\u0ebd"+"\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0ec8\u0ecd"
-      + "\u0ed0\u0ed9"+"\u0edc\u0edd"+"\u0f00\u0f00"+"\u0f18\u0f19"
-      + "\u0f20\u0f29"+"\u0f35\u0f35"+"\u0f37\u0f37"+"\u0f39\u0f39"
-      + "\u0f3e\u0f47"+"\u0f49\u0f6c"+"\u0f71\u0f84"+"\u0f86\u0f8b"
-      + "\u0f90\u0f97"+"\u0f99\u0fbc"+"\u0fc6\u0fc6"+"\u1000\u1049"
-      + "\u1050\u1099"+"\u10a0\u10c5"+"\u10d0\u10fa"+"\u10fc\u10fc"
-      + "\u1100\u1159"+"\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1248"
-      + "\u124a\u124d"+"\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"
-      + "\u1260\u1288"+"\u128a\u128d"+"\u1290\u12b0"+"\u12b2\u12b5"
-      + "\u12b8\u12be"+"\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12d6"
-      + "\u12d8\u1310"+"\u1312\u1315"+"\u1318\u135a"+"\u135f\u135f"
-      + "\u1369\u1371"+"\u1380\u138f"+"\u13a0\u13f4"+"\u1401\u166c"
-      + "\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"+"\u16ee\u16f0"
-      + "\u1700\u170c"+"\u170e\u1714"+"\u1720\u1734"+"\u1740\u1753"
-      + "\u1760\u176c"+"\u176e\u1770"+"\u1772\u1773"+"\u1780\u17b3"
-      + "\u17b6\u17d3"+"\u17d7\u17d7"+"\u17dc\u17dd"+"\u17e0\u17e9"
-      + "\u180b\u180d"+"\u1810\u1819"+"\u1820\u1877"+"\u1880\u18aa"
-      + "\u1900\u191c"+"\u1920\u192b"+"\u1930\u193b"+"\u1946\u196d"
-      + "\u1970\u1974"+"\u1980\u19a9"+"\u19b0\u19c9"+"\u19d0\u19d9"
-      + "\u1a00\u1a1b"+"\u1b00\u1b4b"+"\u1b50\u1b59"+"\u1b6b\u1b73"
-      + "\u1b80\u1baa"+"\u1bae\u1bb9"+"\u1c00\u1c37"+"\u1c40\u1c49"
-      + "\u1c4d\u1c7d"+"\u1d00\u1de6"+"\u1dfe\u1f15"+"\u1f18\u1f1d"
-      + "\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"+"\u1f59\u1f59"
-      + "\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"+"\u1f80\u1fb4"
-      + "\u1fb6\u1fbc"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"+"\u1fc6\u1fcc"
-      + "\u1fd0\u1fd3"+"\u1fd6\u1fdb"+"\u1fe0\u1fec"+"\u1ff2\u1ff4"
-      + "\u1ff6\u1ffc"+"\u203f\u2040"+"\u2054\u2054"+"\u2071\u2071"
-      + "\u207f\u207f"+"\u2090\u2094"+"\u20d0\u20dc"+"\u20e1\u20e1"
-      + "\u20e5\u20f0"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2118\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u2139"+"\u213c\u213f"+"\u2145\u2149"
-      + "\u214e\u214e"+"\u2160\u2188"+"\u2c00\u2c2e"+"\u2c30\u2c5e"
-      + "\u2c60\u2c6f"+"\u2c71\u2c7d"+"\u2c80\u2ce4"+"\u2d00\u2d25"
-      + "\u2d30\u2d65"+"\u2d6f\u2d6f"+"\u2d80\u2d96"+"\u2da0\u2da6"
-      + "\u2da8\u2dae"+"\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"
-      + "\u2dc8\u2dce"+"\u2dd0\u2dd6"+"\u2dd8\u2dde"+"\u2de0\u2dff"
-      + "\u3005\u3007"+"\u3021\u302f"+"\u3031\u3035"+"\u3038\u303c"
-      + "\u3041\u3096"+"\u3099\u309a"+"\u309d\u309f"+"\u30a1\u30fa"
-      + "\u30fc\u30ff"+"\u3105\u312d"+"\u3131\u318e"+"\u31a0\u31b7"
-      + "\u31f0\u31ff"+"\u3400\u4db5"+"\u4e00\u9fc3"+"\ua000\ua48c"
-      + "\ua500\ua60c"+"\ua610\ua62b"+"\ua640\ua65f"+"\ua662\ua66f"
-      + "\ua67c\ua67d"+"\ua67f\ua697"+"\ua717\ua71f"+"\ua722\ua788"
-      + "\ua78b\ua78c"+"\ua7fb\ua827"+"\ua840\ua873"+"\ua880\ua8c4"
-      + "\ua8d0\ua8d9"+"\ua900\ua92d"+"\ua930\ua953"+"\uaa00\uaa36"
-      + "\uaa40\uaa4d"+"\uaa50\uaa59"+"\uac00\ud7a3"+"\uf900\ufa2d"
-      + "\ufa30\ufa6a"+"\ufa70\ufad9"+"\ufb00\ufb06"+"\ufb13\ufb17"
-      + "\ufb1d\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"+"\ufb3e\ufb3e"
-      + "\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"+"\ufbd3\ufc5d"
-      + "\ufc64\ufd3d"+"\ufd50\ufd8f"+"\ufd92\ufdc7"+"\ufdf0\ufdf9"
-      + "\ufe00\ufe0f"+"\ufe20\ufe26"+"\ufe33\ufe34"+"\ufe4d\ufe4f"
-      + "\ufe71\ufe71"+"\ufe73\ufe73"+"\ufe77\ufe77"+"\ufe79\ufe79"
-      + "\ufe7b\ufe7b"+"\ufe7d\ufe7d"+"\ufe7f\ufefc"+"\uff10\uff19"
-      + "\uff21\uff3a"+"\uff3f\uff3f"+"\uff41\uff5a"+"\uff66\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"+"\ud800\udc3c\ud800\udc3d"
-      + "\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"+"\ud800\udd40\ud800\udd74"
-      + "\ud800\uddfd\ud800\uddfd"+"\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"
-      + "\ud800\udf30\ud800\udf4a"+"\ud800\udf80\ud800\udf9d"+"\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"
-      + "\ud800\udfd1\ud800\udfd5"+"\ud801\udc00\ud801\udc9d"+"\ud801\udca0\ud801\udca9"+"\ud802\udc00\ud802\udc05"
-      + "\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"+"\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"
-      + "\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd15"+"\ud802\udd20\ud802\udd39"+"\ud802\ude00\ud802\ude03"
-      + "\ud802\ude05\ud802\ude06"+"\ud802\ude0c\ud802\ude13"+"\ud802\ude15\ud802\ude17"+"\ud802\ude19\ud802\ude33"
-      + "\ud802\ude38\ud802\ude3a"+"\ud802\ude3f\ud802\ude3f"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"
-      + "\ud834\udd65\ud834\udd69"+"\ud834\udd6d\ud834\udd72"+"\ud834\udd7b\ud834\udd82"+"\ud834\udd85\ud834\udd8b"
-      + "\ud834\uddaa\ud834\uddad"+"\ud834\ude42\ud834\ude44"+"\ud835\udc00\ud835\udc54"+"\ud835\udc56\ud835\udc9c"
-      + "\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"+"\ud835\udca9\ud835\udcac"
-      + "\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"+"\ud835\udcc5\ud835\udd05"
-      + "\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"+"\ud835\udd1e\ud835\udd39"
-      + "\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"+"\ud835\udd4a\ud835\udd50"
-      + "\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"+"\ud835\udedc\ud835\udefa"
-      + "\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"+"\ud835\udf50\ud835\udf6e"
-      + "\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"+"\ud835\udfc4\ud835\udfcb"
-      + "\ud835\udfce\ud835\udfff"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d"+"\udb40\udd00\udb40\uddef",
-    // Unicode 5.1 property value: {xidstart}
-        "\u0041\u005a"+"\u0061\u007a"+"\u00aa\u00aa"+"\u00b5\u00b5"
-      + "\u00ba\u00ba"+"\u00c0\u00d6"+"\u00d8\u00f6"+"\u00f8\u02c1"
-      + "\u02c6\u02d1"+"\u02e0\u02e4"+"\u02ec\u02ec"+"\u02ee\u02ee"
-      + "\u0370\u0374"+"\u0376\u0377"+"\u037b\u037d"+"\u0386\u0386"
-      + "\u0388\u038a"+"\u038c\u038c"+"\u038e\u03a1"+"\u03a3\u03f5"
-      + "\u03f7\u0481"+"\u048a\u0523"+"\u0531\u0556"+"\u0559\u0559"
-      + "\u0561\u0587"+"\u05d0\u05ea"+"\u05f0\u05f2"+"\u0621\u064a"
-      + "\u066e\u066f"+"\u0671\u06d3"+"\u06d5\u06d5"+"\u06e5\u06e6"
-      + "\u06ee\u06ef"+"\u06fa\u06fc"+"\u06ff\u06ff"+"\u0710\u0710"
-      + "\u0712\u072f"+"\u074d\u07a5"+"\u07b1\u07b1"+"\u07ca\u07ea"
-      + "\u07f4\u07f5"+"\u07fa\u07fa"+"\u0904\u0939"+"\u093d\u093d"
-      + "\u0950\u0950"+"\u0958\u0961"+"\u0971\u0972"+"\u097b\u097f"
-      + "\u0985\u098c"+"\u098f\u0990"+"\u0993\u09a8"+"\u09aa\u09b0"
-      + "\u09b2\u09b2"+"\u09b6\u09b9"+"\u09bd\u09bd"+"\u09ce\u09ce"
-      + "\u09dc\u09dd"+"\u09df\u09e1"+"\u09f0\u09f1"+"\u0a05\u0a0a"
-      + "\u0a0f\u0a10"+"\u0a13\u0a28"+"\u0a2a\u0a30"+"\u0a32\u0a33"
-      + "\u0a35\u0a36"+"\u0a38\u0a39"+"\u0a59\u0a5c"+"\u0a5e\u0a5e"
-      + "\u0a72\u0a74"+"\u0a85\u0a8d"+"\u0a8f\u0a91"+"\u0a93\u0aa8"
-      + "\u0aaa\u0ab0"+"\u0ab2\u0ab3"+"\u0ab5\u0ab9"+"\u0abd\u0abd"
-      + "\u0ad0\u0ad0"+"\u0ae0\u0ae1"+"\u0b05\u0b0c"+"\u0b0f\u0b10"
-      + "\u0b13\u0b28"+"\u0b2a\u0b30"+"\u0b32\u0b33"+"\u0b35\u0b39"
-      + "\u0b3d\u0b3d"+"\u0b5c\u0b5d"+"\u0b5f\u0b61"+"\u0b71\u0b71"
-      + "\u0b83\u0b83"+"\u0b85\u0b8a"+"\u0b8e\u0b90"+"\u0b92\u0b95"
-      + "\u0b99\u0b9a"+"\u0b9c\u0b9c"+"\u0b9e\u0b9f"+"\u0ba3\u0ba4"
-      + "\u0ba8\u0baa"+"\u0bae\u0bb9"+"\u0bd0\u0bd0"+"\u0c05\u0c0c"
-      + "\u0c0e\u0c10"+"\u0c12\u0c28"+"\u0c2a\u0c33"+"\u0c35\u0c39"
-      + "\u0c3d\u0c3d"+"\u0c58\u0c59"+"\u0c60\u0c61"+"\u0c85\u0c8c"
-      + "\u0c8e\u0c90"+"\u0c92\u0ca8"+"\u0caa\u0cb3"+"\u0cb5\u0cb9"
-      + "\u0cbd\u0cbd"+"\u0cde\u0cde"+"\u0ce0\u0ce1"+"\u0d05\u0d0c"
-      + "\u0d0e\u0d10"+"\u0d12\u0d28"+"\u0d2a\u0d39"+"\u0d3d\u0d3d"
-      + "\u0d60\u0d61"+"\u0d7a\u0d7f"+"\u0d85\u0d96"+"\u0d9a\u0db1"
-      + "\u0db3\u0dbb"+"\u0dbd\u0dbd"+"\u0dc0\u0dc6"+"\u0e01\u0e30"
-      + "\u0e32\u0e32"+"\u0e40\u0e46"+"\u0e81\u0e82"+"\u0e84\u0e84"
-      + "\u0e87\u0e88"+"\u0e8a\u0e8a"+"\u0e8d\u0e8d"+"\u0e94\u0e97"
-      + "\u0e99\u0e9f"+"\u0ea1\u0ea3"+"\u0ea5\u0ea5"+"\u0ea7\u0ea7"
-      + "\u0eaa\u0eab"+"\u0ead\u0eb0"+"\u0eb2\u0eb2"+"\u0ebd\u0ebd"
-      + "\u0ec0\u0ec4"+"\u0ec6\u0ec6"+"\u0edc\u0edd"+"\u0f00\u0f00"
-      + "\u0f40\u0f47"+"\u0f49\u0f6c"+"\u0f88\u0f8b"+"\u1000\u102a"
-      + "\u103f\u103f"+"\u1050\u1055"+"\u105a\u105d"+"\u1061\u1061"
-      + "\u1065\u1066"+"\u106e\u1070"+"\u1075\u1081"+"\u108e\u108e"
-      + "\u10a0\u10c5"+"\u10d0\u10fa"+"\u10fc\u10fc"+"\u1100\u1159"
-      + "\u115f\u11a2"+"\u11a8\u11f9"+"\u1200\u1248"+"\u124a\u124d"
-      + "\u1250\u1256"+"\u1258\u1258"+"\u125a\u125d"+"\u1260\u1288"
-      + "\u128a\u128d"+"\u1290\u12b0"+"\u12b2\u12b5"+"\u12b8\u12be"
-      + "\u12c0\u12c0"+"\u12c2\u12c5"+"\u12c8\u12d6"+"\u12d8\u1310"
-      + "\u1312\u1315"+"\u1318\u135a"+"\u1380\u138f"+"\u13a0\u13f4"
-      + "\u1401\u166c"+"\u166f\u1676"+"\u1681\u169a"+"\u16a0\u16ea"
-      + "\u16ee\u16f0"+"\u1700\u170c"+"\u170e\u1711"+"\u1720\u1731"
-      + "\u1740\u1751"+"\u1760\u176c"+"\u176e\u1770"+"\u1780\u17b3"
-      + "\u17d7\u17d7"+"\u17dc\u17dc"+"\u1820\u1877"+"\u1880\u18a8"
-      + "\u18aa\u18aa"+"\u1900\u191c"+"\u1950\u196d"+"\u1970\u1974"
-      + "\u1980\u19a9"+"\u19c1\u19c7"+"\u1a00\u1a16"+"\u1b05\u1b33"
-      + "\u1b45\u1b4b"+"\u1b83\u1ba0"+"\u1bae\u1baf"+"\u1c00\u1c23"
-      + "\u1c4d\u1c4f"+"\u1c5a\u1c7d"+"\u1d00\u1dbf"+"\u1e00\u1f15"
-      + "\u1f18\u1f1d"+"\u1f20\u1f45"+"\u1f48\u1f4d"+"\u1f50\u1f57"
-      + "\u1f59\u1f59"+"\u1f5b\u1f5b"+"\u1f5d\u1f5d"+"\u1f5f\u1f7d"
-      + "\u1f80\u1fb4"+"\u1fb6\u1fbc"+"\u1fbe\u1fbe"+"\u1fc2\u1fc4"
-      + "\u1fc6\u1fcc"+"\u1fd0\u1fd3"+"\u1fd6\u1fdb"+"\u1fe0\u1fec"
-      + "\u1ff2\u1ff4"+"\u1ff6\u1ffc"+"\u2071\u2071"+"\u207f\u207f"
-      + "\u2090\u2094"+"\u2102\u2102"+"\u2107\u2107"+"\u210a\u2113"
-      + "\u2115\u2115"+"\u2118\u211d"+"\u2124\u2124"+"\u2126\u2126"
-      + "\u2128\u2128"+"\u212a\u2139"+"\u213c\u213f"+"\u2145\u2149"
-      + "\u214e\u214e"+"\u2160\u2188"+"\u2c00\u2c2e"+"\u2c30\u2c5e"
-      + "\u2c60\u2c6f"+"\u2c71\u2c7d"+"\u2c80\u2ce4"+"\u2d00\u2d25"
-      + "\u2d30\u2d65"+"\u2d6f\u2d6f"+"\u2d80\u2d96"+"\u2da0\u2da6"
-      + "\u2da8\u2dae"+"\u2db0\u2db6"+"\u2db8\u2dbe"+"\u2dc0\u2dc6"
-      + "\u2dc8\u2dce"+"\u2dd0\u2dd6"+"\u2dd8\u2dde"+"\u3005\u3007"
-      + "\u3021\u3029"+"\u3031\u3035"+"\u3038\u303c"+"\u3041\u3096"
-      + "\u309d\u309f"+"\u30a1\u30fa"+"\u30fc\u30ff"+"\u3105\u312d"
-      + "\u3131\u318e"+"\u31a0\u31b7"+"\u31f0\u31ff"+"\u3400\u4db5"
-      + "\u4e00\u9fc3"+"\ua000\ua48c"+"\ua500\ua60c"+"\ua610\ua61f"
-      + "\ua62a\ua62b"+"\ua640\ua65f"+"\ua662\ua66e"+"\ua67f\ua697"
-      + "\ua717\ua71f"+"\ua722\ua788"+"\ua78b\ua78c"+"\ua7fb\ua801"
-      + "\ua803\ua805"+"\ua807\ua80a"+"\ua80c\ua822"+"\ua840\ua873"
-      + "\ua882\ua8b3"+"\ua90a\ua925"+"\ua930\ua946"+"\uaa00\uaa28"
-      + "\uaa40\uaa42"+"\uaa44\uaa4b"+"\uac00\ud7a3"+"\uf900\ufa2d"
-      + "\ufa30\ufa6a"+"\ufa70\ufad9"+"\ufb00\ufb06"+"\ufb13\ufb17"
-      + "\ufb1d\ufb1d"+"\ufb1f\ufb28"+"\ufb2a\ufb36"+"\ufb38\ufb3c"
-      + "\ufb3e\ufb3e"+"\ufb40\ufb41"+"\ufb43\ufb44"+"\ufb46\ufbb1"
-      + "\ufbd3\ufc5d"+"\ufc64\ufd3d"+"\ufd50\ufd8f"+"\ufd92\ufdc7"
-      + "\ufdf0\ufdf9"+"\ufe71\ufe71"+"\ufe73\ufe73"+"\ufe77\ufe77"
-      + "\ufe79\ufe79"+"\ufe7b\ufe7b"+"\ufe7d\ufe7d"+"\ufe7f\ufefc"
-      + "\uff21\uff3a"+"\uff41\uff5a"+"\uff66\uff9d"+"\uffa0\uffbe"
-      + "\uffc2\uffc7"+"\uffca\uffcf"+"\uffd2\uffd7"+"\uffda\uffdc"
-      + "\ud800\udc00\ud800\udc0b"+"\ud800\udc0d\ud800\udc26"+"\ud800\udc28\ud800\udc3a"+"\ud800\udc3c\ud800\udc3d"
-      + "\ud800\udc3f\ud800\udc4d"+"\ud800\udc50\ud800\udc5d"+"\ud800\udc80\ud800\udcfa"+"\ud800\udd40\ud800\udd74"
-      + "\ud800\ude80\ud800\ude9c"+"\ud800\udea0\ud800\uded0"+"\ud800\udf00\ud800\udf1e"+"\ud800\udf30\ud800\udf4a"
-      + "\ud800\udf80\ud800\udf9d"+"\ud800\udfa0\ud800\udfc3"+"\ud800\udfc8\ud800\udfcf"+"\ud800\udfd1\ud800\udfd5"
-      + "\ud801\udc00\ud801\udc9d"+"\ud802\udc00\ud802\udc05"+"\ud802\udc08\ud802\udc08"+"\ud802\udc0a\ud802\udc35"
-      + "\ud802\udc37\ud802\udc38"+"\ud802\udc3c\ud802\udc3c"+"\ud802\udc3f\ud802\udc3f"+"\ud802\udd00\ud802\udd15"
-      + "\ud802\udd20\ud802\udd39"+"\ud802\ude00\ud802\ude00"+"\ud802\ude10\ud802\ude13"+"\ud802\ude15\ud802\ude17"
-      + "\ud802\ude19\ud802\ude33"+"\ud808\udc00\ud808\udf6e"+"\ud809\udc00\ud809\udc62"+"\ud835\udc00\ud835\udc54"
-      + "\ud835\udc56\ud835\udc9c"+"\ud835\udc9e\ud835\udc9f"+"\ud835\udca2\ud835\udca2"+"\ud835\udca5\ud835\udca6"
-      + "\ud835\udca9\ud835\udcac"+"\ud835\udcae\ud835\udcb9"+"\ud835\udcbb\ud835\udcbb"+"\ud835\udcbd\ud835\udcc3"
-      + "\ud835\udcc5\ud835\udd05"+"\ud835\udd07\ud835\udd0a"+"\ud835\udd0d\ud835\udd14"+"\ud835\udd16\ud835\udd1c"
-      + "\ud835\udd1e\ud835\udd39"+"\ud835\udd3b\ud835\udd3e"+"\ud835\udd40\ud835\udd44"+"\ud835\udd46\ud835\udd46"
-      + "\ud835\udd4a\ud835\udd50"+"\ud835\udd52\ud835\udea5"+"\ud835\udea8\ud835\udec0"+"\ud835\udec2\ud835\udeda"
-      + "\ud835\udedc\ud835\udefa"+"\ud835\udefc\ud835\udf14"+"\ud835\udf16\ud835\udf34"+"\ud835\udf36\ud835\udf4e"
-      + "\ud835\udf50\ud835\udf6e"+"\ud835\udf70\ud835\udf88"+"\ud835\udf8a\ud835\udfa8"+"\ud835\udfaa\ud835\udfc2"
-      + "\ud835\udfc4\ud835\udfcb"+"\ud840\udc00\ud869\uded6"+"\ud87e\udc00\ud87e\ude1d",
-    // Unicode 5.1 property value: {yi}
-        "\ua000\ua48c"+"\ua490\ua4c6",
-    // Unicode 5.1 property value: {zl}
-        "\u2028\u2028",
-    // Unicode 5.1 property value: {zp}
-        "\u2029\u2029",
-    // Unicode 5.1 property value: {zs}
-        "\u0020\u0020"+"\u00a0\u00a0"+"\u1680\u1680"+"\u180e\u180e"
-      + "\u2000\u200a"+"\u202f\u202f"+"\u205f\u205f"+"\u3000\u3000"  };
-  public static final String[] propertyValueAliases = {
-        "ahex", "asciihexdigit",   "alpha", "alphabetic",
-        "arab", "arabic",   "armn", "armenian",
-        "bali", "balinese",   "beng", "bengali",
-        "bidic", "bidicontrol",   "blk=aegeannumbers", "block=aegeannumbers",
-        "blk=alphabeticpresentationforms", "block=alphabeticpresentationforms",   "blk=ancientgreekmusicalnotation", "block=ancientgreekmusicalnotation",
-        "blk=ancientgreeknumbers", "block=ancientgreeknumbers",   "blk=ancientsymbols", "block=ancientsymbols",
-        "blk=arabic", "block=arabic",   "blk=arabicpresentationformsa", "block=arabicpresentationformsa",
-        "blk=arabicpresentationformsb", "block=arabicpresentationformsb",   "blk=arabicsupplement", "block=arabicsupplement",
-        "blk=armenian", "block=armenian",   "blk=arrows", "block=arrows",
-        "blk=ascii", "block=basiclatin",   "blk=balinese", "block=balinese",
-        "blk=basiclatin", "block=basiclatin",   "blk=bengali", "block=bengali",
-        "blk=blockelements", "block=blockelements",   "blk=bopomofo", "block=bopomofo",
-        "blk=bopomofoextended", "block=bopomofoextended",   "blk=boxdrawing", "block=boxdrawing",
-        "blk=braillepatterns", "block=braillepatterns",   "blk=buginese", "block=buginese",
-        "blk=buhid", "block=buhid",   "blk=byzantinemusicalsymbols", "block=byzantinemusicalsymbols",
-        "blk=canadiansyllabics", "block=unifiedcanadianaboriginalsyllabics",   "blk=carian", "block=carian",
-        "blk=cham", "block=cham",   "blk=cherokee", "block=cherokee",
-        "blk=cjkcompatibility", "block=cjkcompatibility",   "blk=cjkcompatibilityforms", "block=cjkcompatibilityforms",
-        "blk=cjkcompatibilityideographs", "block=cjkcompatibilityideographs",   "blk=cjkcompatibilityideographssupplement", "block=cjkcompatibilityideographssupplement",
-        "blk=cjkradicalssupplement", "block=cjkradicalssupplement",   "blk=cjkstrokes", "block=cjkstrokes",
-        "blk=cjksymbolsandpunctuation", "block=cjksymbolsandpunctuation",   "blk=cjkunifiedideographs", "block=cjkunifiedideographs",
-        "blk=cjkunifiedideographsextensiona", "block=cjkunifiedideographsextensiona",   "blk=cjkunifiedideographsextensionb", "block=cjkunifiedideographsextensionb",
-        "blk=combiningdiacriticalmarks", "block=combiningdiacriticalmarks",   "blk=combiningdiacriticalmarksforsymbols", "block=combiningdiacriticalmarksforsymbols",
-        "blk=combiningdiacriticalmarkssupplement", "block=combiningdiacriticalmarkssupplement",   "blk=combininghalfmarks", "block=combininghalfmarks",
-        "blk=combiningmarksforsymbols", "block=combiningdiacriticalmarksforsymbols",   "blk=controlpictures", "block=controlpictures",
-        "blk=coptic", "block=coptic",   "blk=countingrodnumerals", "block=countingrodnumerals",
-        "blk=cuneiform", "block=cuneiform",   "blk=cuneiformnumbersandpunctuation", "block=cuneiformnumbersandpunctuation",
-        "blk=currencysymbols", "block=currencysymbols",   "blk=cypriotsyllabary", "block=cypriotsyllabary",
-        "blk=cyrillic", "block=cyrillic",   "blk=cyrillicextendeda", "block=cyrillicextendeda",
-        "blk=cyrillicextendedb", "block=cyrillicextendedb",   "blk=cyrillicsupplement", "block=cyrillicsupplement",
-        "blk=cyrillicsupplementary", "block=cyrillicsupplement",   "blk=deseret", "block=deseret",
-        "blk=devanagari", "block=devanagari",   "blk=dingbats", "block=dingbats",
-        "blk=dominotiles", "block=dominotiles",   "blk=enclosedalphanumerics", "block=enclosedalphanumerics",
-        "blk=enclosedcjklettersandmonths", "block=enclosedcjklettersandmonths",   "blk=ethiopic", "block=ethiopic",
-        "blk=ethiopicextended", "block=ethiopicextended",   "blk=ethiopicsupplement", "block=ethiopicsupplement",
-        "blk=generalpunctuation", "block=generalpunctuation",   "blk=geometricshapes", "block=geometricshapes",
-        "blk=georgian", "block=georgian",   "blk=georgiansupplement", "block=georgiansupplement",
-        "blk=glagolitic", "block=glagolitic",   "blk=gothic", "block=gothic",
-        "blk=greek", "block=greekandcoptic",   "blk=greekandcoptic", "block=greekandcoptic",
-        "blk=greekextended", "block=greekextended",   "blk=gujarati", "block=gujarati",
-        "blk=gurmukhi", "block=gurmukhi",   "blk=halfwidthandfullwidthforms", "block=halfwidthandfullwidthforms",
-        "blk=hangulcompatibilityjamo", "block=hangulcompatibilityjamo",   "blk=hanguljamo", "block=hanguljamo",
-        "blk=hangulsyllables", "block=hangulsyllables",   "blk=hanunoo", "block=hanunoo",
-        "blk=hebrew", "block=hebrew",   "blk=hiragana", "block=hiragana",
-        "blk=ideographicdescriptioncharacters", "block=ideographicdescriptioncharacters",   "blk=ipaextensions", "block=ipaextensions",
-        "blk=kanbun", "block=kanbun",   "blk=kangxiradicals", "block=kangxiradicals",
-        "blk=kannada", "block=kannada",   "blk=katakana", "block=katakana",
-        "blk=katakanaphoneticextensions", "block=katakanaphoneticextensions",   "blk=kayahli", "block=kayahli",
-        "blk=kharoshthi", "block=kharoshthi",   "blk=khmer", "block=khmer",
-        "blk=khmersymbols", "block=khmersymbols",   "blk=lao", "block=lao",
-        "blk=latin1", "block=latin1supplement",   "blk=latin1supplement", "block=latin1supplement",
-        "blk=latinextendeda", "block=latinextendeda",   "blk=latinextendedadditional", "block=latinextendedadditional",
-        "blk=latinextendedb", "block=latinextendedb",   "blk=latinextendedc", "block=latinextendedc",
-        "blk=latinextendedd", "block=latinextendedd",   "blk=lepcha", "block=lepcha",
-        "blk=letterlikesymbols", "block=letterlikesymbols",   "blk=limbu", "block=limbu",
-        "blk=linearbideograms", "block=linearbideograms",   "blk=linearbsyllabary", "block=linearbsyllabary",
-        "blk=lycian", "block=lycian",   "blk=lydian", "block=lydian",
-        "blk=mahjongtiles", "block=mahjongtiles",   "blk=malayalam", "block=malayalam",
-        "blk=mathematicalalphanumericsymbols", "block=mathematicalalphanumericsymbols",   "blk=mathematicaloperators", "block=mathematicaloperators",
-        "blk=miscellaneousmathematicalsymbolsa", "block=miscellaneousmathematicalsymbolsa",   "blk=miscellaneousmathematicalsymbolsb", "block=miscellaneousmathematicalsymbolsb",
-        "blk=miscellaneoussymbols", "block=miscellaneoussymbols",   "blk=miscellaneoussymbolsandarrows", "block=miscellaneoussymbolsandarrows",
-        "blk=miscellaneoustechnical", "block=miscellaneoustechnical",   "blk=modifiertoneletters", "block=modifiertoneletters",
-        "blk=mongolian", "block=mongolian",   "blk=musicalsymbols", "block=musicalsymbols",
-        "blk=myanmar", "block=myanmar",   "blk=newtailue", "block=newtailue",
-        "blk=nko", "block=nko",   "blk=noblock", "block=noblock",
-        "blk=numberforms", "block=numberforms",   "blk=ogham", "block=ogham",
-        "blk=olchiki", "block=olchiki",   "blk=olditalic", "block=olditalic",
-        "blk=oldpersian", "block=oldpersian",   "blk=opticalcharacterrecognition", "block=opticalcharacterrecognition",
-        "blk=oriya", "block=oriya",   "blk=osmanya", "block=osmanya",
-        "blk=phagspa", "block=phagspa",   "blk=phaistosdisc", "block=phaistosdisc",
-        "blk=phoenician", "block=phoenician",   "blk=phoneticextensions", "block=phoneticextensions",
-        "blk=phoneticextensionssupplement", "block=phoneticextensionssupplement",   "blk=privateuse", "block=privateusearea",
-        "blk=privateusearea", "block=privateusearea",   "blk=rejang", "block=rejang",
-        "blk=runic", "block=runic",   "blk=saurashtra", "block=saurashtra",
-        "blk=shavian", "block=shavian",   "blk=sinhala", "block=sinhala",
-        "blk=smallformvariants", "block=smallformvariants",   "blk=spacingmodifierletters", "block=spacingmodifierletters",
-        "blk=specials", "block=specials",   "blk=sundanese", "block=sundanese",
-        "blk=superscriptsandsubscripts", "block=superscriptsandsubscripts",   "blk=supplementalarrowsa", "block=supplementalarrowsa",
-        "blk=supplementalarrowsb", "block=supplementalarrowsb",   "blk=supplementalmathematicaloperators", "block=supplementalmathematicaloperators",
-        "blk=supplementalpunctuation", "block=supplementalpunctuation",   "blk=supplementaryprivateuseareaa", "block=supplementaryprivateuseareaa",
-        "blk=supplementaryprivateuseareab", "block=supplementaryprivateuseareab",   "blk=sylotinagri", "block=sylotinagri",
-        "blk=syriac", "block=syriac",   "blk=tagalog", "block=tagalog",
-        "blk=tagbanwa", "block=tagbanwa",   "blk=tags", "block=tags",
-        "blk=taile", "block=taile",   "blk=taixuanjingsymbols", "block=taixuanjingsymbols",
-        "blk=tamil", "block=tamil",   "blk=telugu", "block=telugu",
-        "blk=thaana", "block=thaana",   "blk=thai", "block=thai",
-        "blk=tibetan", "block=tibetan",   "blk=tifinagh", "block=tifinagh",
-        "blk=ugaritic", "block=ugaritic",   "blk=unifiedcanadianaboriginalsyllabics", "block=unifiedcanadianaboriginalsyllabics",
-        "blk=vai", "block=vai",   "blk=variationselectors", "block=variationselectors",
-        "blk=variationselectorssupplement", "block=variationselectorssupplement",   "blk=verticalforms", "block=verticalforms",
-        "blk=yijinghexagramsymbols", "block=yijinghexagramsymbols",   "blk=yiradicals", "block=yiradicals",
-        "blk=yisyllables", "block=yisyllables",   "block=ascii", "block=basiclatin",
-        "block=canadiansyllabics", "block=unifiedcanadianaboriginalsyllabics",   "block=combiningmarksforsymbols", "block=combiningdiacriticalmarksforsymbols",
-        "block=cyrillicsupplementary", "block=cyrillicsupplement",   "block=greek", "block=greekandcoptic",
-        "block=latin1", "block=latin1supplement",   "block=privateuse", "block=privateusearea",
-        "bopo", "bopomofo",   "brai", "braille",
-        "bugi", "buginese",   "buhd", "buhid",
-        "cans", "canadianaboriginal",   "cari", "carian",
-        "casedletter", "lc",   "cher", "cherokee",
-        "closepunctuation", "pe",   "cntrl", "cc",
-        "connectorpunctuation", "pc",   "control", "cc",
-        "copt", "coptic",   "cprt", "cypriot",
-        "currencysymbol", "sc",   "cyrl", "cyrillic",
-        "dashpunctuation", "pd",   "decimalnumber", "nd",
-        "dep", "deprecated",   "deva", "devanagari",
-        "di", "defaultignorablecodepoint",   "dia", "diacritic",
-        "digit", "nd",   "dsrt", "deseret",
-        "enclosingmark", "me",   "ethi", "ethiopic",
-        "ext", "extender",   "finalpunctuation", "pf",
-        "format", "cf",   "gc=c", "c",
-        "gc=casedletter", "lc",   "gc=cc", "cc",
-        "gc=cf", "cf",   "gc=closepunctuation", "pe",
-        "gc=cn", "cn",   "gc=cntrl", "cc",
-        "gc=co", "co",   "gc=connectorpunctuation", "pc",
-        "gc=control", "cc",   "gc=currencysymbol", "sc",
-        "gc=dashpunctuation", "pd",   "gc=decimalnumber", "nd",
-        "gc=digit", "nd",   "gc=enclosingmark", "me",
-        "gc=finalpunctuation", "pf",   "gc=format", "cf",
-        "gc=initialpunctuation", "pi",   "gc=l", "l",
-        "gc=lc", "lc",   "gc=letter", "l",
-        "gc=letternumber", "nl",   "gc=lineseparator", "zl",
-        "gc=ll", "ll",   "gc=lm", "lm",
-        "gc=lo", "lo",   "gc=lowercaseletter", "ll",
-        "gc=lt", "lt",   "gc=lu", "lu",
-        "gc=m", "m",   "gc=mark", "m",
-        "gc=mathsymbol", "sm",   "gc=mc", "mc",
-        "gc=me", "me",   "gc=mn", "mn",
-        "gc=modifierletter", "lm",   "gc=modifiersymbol", "sk",
-        "gc=n", "n",   "gc=nd", "nd",
-        "gc=nl", "nl",   "gc=no", "no",
-        "gc=nonspacingmark", "mn",   "gc=number", "n",
-        "gc=openpunctuation", "ps",   "gc=other", "c",
-        "gc=otherletter", "lo",   "gc=othernumber", "no",
-        "gc=otherpunctuation", "po",   "gc=othersymbol", "so",
-        "gc=p", "p",   "gc=paragraphseparator", "zp",
-        "gc=pc", "pc",   "gc=pd", "pd",
-        "gc=pe", "pe",   "gc=pf", "pf",
-        "gc=pi", "pi",   "gc=po", "po",
-        "gc=privateuse", "co",   "gc=ps", "ps",
-        "gc=punct", "p",   "gc=punctuation", "p",
-        "gc=s", "s",   "gc=sc", "sc",
-        "gc=separator", "z",   "gc=sk", "sk",
-        "gc=sm", "sm",   "gc=so", "so",
-        "gc=spaceseparator", "zs",   "gc=spacingmark", "mc",
-        "gc=symbol", "s",   "gc=titlecaseletter", "lt",
-        "gc=unassigned", "cn",   "gc=uppercaseletter", "lu",
-        "gc=z", "z",   "gc=zl", "zl",
-        "gc=zp", "zp",   "gc=zs", "zs",
-        "gcb=cn", "graphemeclusterbreak=control",   "gcb=control", "graphemeclusterbreak=control",
-        "gcb=cr", "graphemeclusterbreak=cr",   "gcb=ex", "graphemeclusterbreak=extend",
-        "gcb=extend", "graphemeclusterbreak=extend",   "gcb=l", "graphemeclusterbreak=l",
-        "gcb=lf", "graphemeclusterbreak=lf",   "gcb=lv", "graphemeclusterbreak=lv",
-        "gcb=lvt", "graphemeclusterbreak=lvt",   "gcb=other", "graphemeclusterbreak=other",
-        "gcb=pp", "graphemeclusterbreak=prepend",   "gcb=prepend", "graphemeclusterbreak=prepend",
-        "gcb=sm", "graphemeclusterbreak=spacingmark",   "gcb=spacingmark", "graphemeclusterbreak=spacingmark",
-        "gcb=t", "graphemeclusterbreak=t",   "gcb=v", "graphemeclusterbreak=v",
-        "gcb=xx", "graphemeclusterbreak=other",   "generalcategory=c", "c",
-        "generalcategory=casedletter", "lc",   "generalcategory=cc", "cc",
-        "generalcategory=cf", "cf",   "generalcategory=closepunctuation", "pe",
-        "generalcategory=cn", "cn",   "generalcategory=cntrl", "cc",
-        "generalcategory=co", "co",   "generalcategory=connectorpunctuation", "pc",
-        "generalcategory=control", "cc",   "generalcategory=currencysymbol", "sc",
-        "generalcategory=dashpunctuation", "pd",   "generalcategory=decimalnumber", "nd",
-        "generalcategory=digit", "nd",   "generalcategory=enclosingmark", "me",
-        "generalcategory=finalpunctuation", "pf",   "generalcategory=format", "cf",
-        "generalcategory=initialpunctuation", "pi",   "generalcategory=l", "l",
-        "generalcategory=lc", "lc",   "generalcategory=letter", "l",
-        "generalcategory=letternumber", "nl",   "generalcategory=lineseparator", "zl",
-        "generalcategory=ll", "ll",   "generalcategory=lm", "lm",
-        "generalcategory=lo", "lo",   "generalcategory=lowercaseletter", "ll",
-        "generalcategory=lt", "lt",   "generalcategory=lu", "lu",
-        "generalcategory=m", "m",   "generalcategory=mark", "m",
-        "generalcategory=mathsymbol", "sm",   "generalcategory=mc", "mc",
-        "generalcategory=me", "me",   "generalcategory=mn", "mn",
-        "generalcategory=modifierletter", "lm",   "generalcategory=modifiersymbol", "sk",
-        "generalcategory=n", "n",   "generalcategory=nd", "nd",
-        "generalcategory=nl", "nl",   "generalcategory=no", "no",
-        "generalcategory=nonspacingmark", "mn",   "generalcategory=number", "n",
-        "generalcategory=openpunctuation", "ps",   "generalcategory=other", "c",
-        "generalcategory=otherletter", "lo",   "generalcategory=othernumber", "no",
-        "generalcategory=otherpunctuation", "po",   "generalcategory=othersymbol", "so",
-        "generalcategory=p", "p",   "generalcategory=paragraphseparator", "zp",
-        "generalcategory=pc", "pc",   "generalcategory=pd", "pd",
-        "generalcategory=pe", "pe",   "generalcategory=pf", "pf",
-        "generalcategory=pi", "pi",   "generalcategory=po", "po",
-        "generalcategory=privateuse", "co",   "generalcategory=ps", "ps",
-        "generalcategory=punct", "p",   "generalcategory=punctuation", "p",
-        "generalcategory=s", "s",   "generalcategory=sc", "sc",
-        "generalcategory=separator", "z",   "generalcategory=sk", "sk",
-        "generalcategory=sm", "sm",   "generalcategory=so", "so",
-        "generalcategory=spaceseparator", "zs",   "generalcategory=spacingmark", "mc",
-        "generalcategory=symbol", "s",   "generalcategory=titlecaseletter", "lt",
-        "generalcategory=unassigned", "cn",   "generalcategory=uppercaseletter", "lu",
-        "generalcategory=z", "z",   "generalcategory=zl", "zl",
-        "generalcategory=zp", "zp",   "generalcategory=zs", "zs",
-        "geor", "georgian",   "glag", "glagolitic",
-        "goth", "gothic",   "graphemeclusterbreak=cn", "graphemeclusterbreak=control",
-        "graphemeclusterbreak=ex", "graphemeclusterbreak=extend",   "graphemeclusterbreak=pp", "graphemeclusterbreak=prepend",
-        "graphemeclusterbreak=sm", "graphemeclusterbreak=spacingmark",   "graphemeclusterbreak=xx", "graphemeclusterbreak=other",
-        "grbase", "graphemebase",   "grek", "greek",
-        "grext", "graphemeextend",   "grlink", "graphemelink",
-        "gujr", "gujarati",   "guru", "gurmukhi",
-        "hang", "hangul",   "hani", "han",
-        "hano", "hanunoo",   "hebr", "hebrew",
-        "hex", "hexdigit",   "hira", "hiragana",
-        "idc", "idcontinue",   "ideo", "ideographic",
-        "ids", "idstart",   "idsb", "idsbinaryoperator",
-        "idst", "idstrinaryoperator",   "initialpunctuation", "pi",
-        "ital", "olditalic",   "joinc", "joincontrol",
-        "kali", "kayahli",   "kana", "katakana",
-        "khar", "kharoshthi",   "khmr", "khmer",
-        "knda", "kannada",   "laoo", "lao",
-        "latn", "latin",   "lb=ai", "linebreak=ambiguous",
-        "lb=al", "linebreak=alphabetic",   "lb=alphabetic", "linebreak=alphabetic",
-        "lb=ambiguous", "linebreak=ambiguous",   "lb=b2", "linebreak=breakboth",
-        "lb=ba", "linebreak=breakafter",   "lb=bb", "linebreak=breakbefore",
-        "lb=bk", "linebreak=mandatorybreak",   "lb=breakafter", "linebreak=breakafter",
-        "lb=breakbefore", "linebreak=breakbefore",   "lb=breakboth", "linebreak=breakboth",
-        "lb=breaksymbols", "linebreak=breaksymbols",   "lb=carriagereturn", "linebreak=carriagereturn",
-        "lb=cb", "linebreak=contingentbreak",   "lb=cl", "linebreak=closepunctuation",
-        "lb=closepunctuation", "linebreak=closepunctuation",   "lb=cm", "linebreak=combiningmark",
-        "lb=combiningmark", "linebreak=combiningmark",   "lb=complexcontext", "linebreak=complexcontext",
-        "lb=contingentbreak", "linebreak=contingentbreak",   "lb=cr", "linebreak=carriagereturn",
-        "lb=ex", "linebreak=exclamation",   "lb=exclamation", "linebreak=exclamation",
-        "lb=gl", "linebreak=glue",   "lb=glue", "linebreak=glue",
-        "lb=h2", "linebreak=h2",   "lb=h3", "linebreak=h3",
-        "lb=hy", "linebreak=hyphen",   "lb=hyphen", "linebreak=hyphen",
-        "lb=id", "linebreak=ideographic",   "lb=ideographic", "linebreak=ideographic",
-        "lb=in", "linebreak=inseparable",   "lb=infixnumeric", "linebreak=infixnumeric",
-        "lb=inseparable", "linebreak=inseparable",   "lb=inseperable", "linebreak=inseparable",
-        "lb=is", "linebreak=infixnumeric",   "lb=jl", "linebreak=jl",
-        "lb=jt", "linebreak=jt",   "lb=jv", "linebreak=jv",
-        "lb=lf", "linebreak=linefeed",   "lb=linefeed", "linebreak=linefeed",
-        "lb=mandatorybreak", "linebreak=mandatorybreak",   "lb=nextline", "linebreak=nextline",
-        "lb=nl", "linebreak=nextline",   "lb=nonstarter", "linebreak=nonstarter",
-        "lb=ns", "linebreak=nonstarter",   "lb=nu", "linebreak=numeric",
-        "lb=numeric", "linebreak=numeric",   "lb=op", "linebreak=openpunctuation",
-        "lb=openpunctuation", "linebreak=openpunctuation",   "lb=po", "linebreak=postfixnumeric",
-        "lb=postfixnumeric", "linebreak=postfixnumeric",   "lb=pr", "linebreak=prefixnumeric",
-        "lb=prefixnumeric", "linebreak=prefixnumeric",   "lb=qu", "linebreak=quotation",
-        "lb=quotation", "linebreak=quotation",   "lb=sa", "linebreak=complexcontext",
-        "lb=sp", "linebreak=space",   "lb=space", "linebreak=space",
-        "lb=sy", "linebreak=breaksymbols",   "lb=unknown", "linebreak=unknown",
-        "lb=wj", "linebreak=wordjoiner",   "lb=wordjoiner", "linebreak=wordjoiner",
-        "lb=xx", "linebreak=unknown",   "lb=zw", "linebreak=zwspace",
-        "lb=zwspace", "linebreak=zwspace",   "lepc", "lepcha",
-        "letter", "l",   "letternumber", "nl",
-        "limb", "limbu",   "linb", "linearb",
-        "linebreak=ai", "linebreak=ambiguous",   "linebreak=al", "linebreak=alphabetic",
-        "linebreak=b2", "linebreak=breakboth",   "linebreak=ba", "linebreak=breakafter",
-        "linebreak=bb", "linebreak=breakbefore",   "linebreak=bk", "linebreak=mandatorybreak",
-        "linebreak=cb", "linebreak=contingentbreak",   "linebreak=cl", "linebreak=closepunctuation",
-        "linebreak=cm", "linebreak=combiningmark",   "linebreak=cr", "linebreak=carriagereturn",
-        "linebreak=ex", "linebreak=exclamation",   "linebreak=gl", "linebreak=glue",
-        "linebreak=hy", "linebreak=hyphen",   "linebreak=id", "linebreak=ideographic",
-        "linebreak=in", "linebreak=inseparable",   "linebreak=inseperable", "linebreak=inseparable",
-        "linebreak=is", "linebreak=infixnumeric",   "linebreak=lf", "linebreak=linefeed",
-        "linebreak=nl", "linebreak=nextline",   "linebreak=ns", "linebreak=nonstarter",
-        "linebreak=nu", "linebreak=numeric",   "linebreak=op", "linebreak=openpunctuation",
-        "linebreak=po", "linebreak=postfixnumeric",   "linebreak=pr", "linebreak=prefixnumeric",
-        "linebreak=qu", "linebreak=quotation",   "linebreak=sa", "linebreak=complexcontext",
-        "linebreak=sp", "linebreak=space",   "linebreak=sy", "linebreak=breaksymbols",
-        "linebreak=wj", "linebreak=wordjoiner",   "linebreak=xx", "linebreak=unknown",
-        "linebreak=zw", "linebreak=zwspace",   "lineseparator", "zl",
-        "loe", "logicalorderexception",   "lower", "lowercase",
-        "lowercaseletter", "ll",   "lyci", "lycian",
-        "lydi", "lydian",   "mark", "m",
-        "mathsymbol", "sm",   "mlym", "malayalam",
-        "modifierletter", "lm",   "modifiersymbol", "sk",
-        "mong", "mongolian",   "mymr", "myanmar",
-        "nchar", "noncharactercodepoint",   "nkoo", "nko",
-        "nonspacingmark", "mn",   "number", "n",
-        "oalpha", "otheralphabetic",   "odi", "otherdefaultignorablecodepoint",
-        "ogam", "ogham",   "ogrext", "othergraphemeextend",
-        "oidc", "otheridcontinue",   "oids", "otheridstart",
-        "olck", "olchiki",   "olower", "otherlowercase",
-        "omath", "othermath",   "openpunctuation", "ps",
-        "orya", "oriya",   "osma", "osmanya",
-        "other", "c",   "otherletter", "lo",
-        "othernumber", "no",   "otherpunctuation", "po",
-        "othersymbol", "so",   "oupper", "otheruppercase",
-        "paragraphseparator", "zp",   "patsyn", "patternsyntax",
-        "patws", "patternwhitespace",   "phag", "phagspa",
-        "phnx", "phoenician",   "privateuse", "co",
-        "punct", "p",   "punctuation", "p",
-        "qaac", "coptic",   "qaai", "inherited",
-        "qmark", "quotationmark",   "rjng", "rejang",
-        "runr", "runic",   "saur", "saurashtra",
-        "sb=at", "sentencebreak=aterm",   "sb=aterm", "sentencebreak=aterm",
-        "sb=cl", "sentencebreak=close",   "sb=close", "sentencebreak=close",
-        "sb=cr", "sentencebreak=cr",   "sb=ex", "sentencebreak=extend",
-        "sb=extend", "sentencebreak=extend",   "sb=fo", "sentencebreak=format",
-        "sb=format", "sentencebreak=format",   "sb=le", "sentencebreak=oletter",
-        "sb=lf", "sentencebreak=lf",   "sb=lo", "sentencebreak=lower",
-        "sb=lower", "sentencebreak=lower",   "sb=nu", "sentencebreak=numeric",
-        "sb=numeric", "sentencebreak=numeric",   "sb=oletter", "sentencebreak=oletter",
-        "sb=other", "sentencebreak=other",   "sb=sc", "sentencebreak=scontinue",
-        "sb=scontinue", "sentencebreak=scontinue",   "sb=se", "sentencebreak=sep",
-        "sb=sep", "sentencebreak=sep",   "sb=sp", "sentencebreak=sp",
-        "sb=st", "sentencebreak=sterm",   "sb=sterm", "sentencebreak=sterm",
-        "sb=up", "sentencebreak=upper",   "sb=upper", "sentencebreak=upper",
-        "sb=xx", "sentencebreak=other",   "sc=arab", "arabic",
-        "sc=arabic", "arabic",   "sc=armenian", "armenian",
-        "sc=armn", "armenian",   "sc=bali", "balinese",
-        "sc=balinese", "balinese",   "sc=beng", "bengali",
-        "sc=bengali", "bengali",   "sc=bopo", "bopomofo",
-        "sc=bopomofo", "bopomofo",   "sc=brai", "braille",
-        "sc=braille", "braille",   "sc=bugi", "buginese",
-        "sc=buginese", "buginese",   "sc=buhd", "buhid",
-        "sc=buhid", "buhid",   "sc=canadianaboriginal", "canadianaboriginal",
-        "sc=cans", "canadianaboriginal",   "sc=cari", "carian",
-        "sc=carian", "carian",   "sc=cham", "cham",
-        "sc=cher", "cherokee",   "sc=cherokee", "cherokee",
-        "sc=common", "common",   "sc=copt", "coptic",
-        "sc=coptic", "coptic",   "sc=cprt", "cypriot",
-        "sc=cuneiform", "cuneiform",   "sc=cypriot", "cypriot",
-        "sc=cyrillic", "cyrillic",   "sc=cyrl", "cyrillic",
-        "sc=deseret", "deseret",   "sc=deva", "devanagari",
-        "sc=devanagari", "devanagari",   "sc=dsrt", "deseret",
-        "sc=ethi", "ethiopic",   "sc=ethiopic", "ethiopic",
-        "sc=geor", "georgian",   "sc=georgian", "georgian",
-        "sc=glag", "glagolitic",   "sc=glagolitic", "glagolitic",
-        "sc=goth", "gothic",   "sc=gothic", "gothic",
-        "sc=greek", "greek",   "sc=grek", "greek",
-        "sc=gujarati", "gujarati",   "sc=gujr", "gujarati",
-        "sc=gurmukhi", "gurmukhi",   "sc=guru", "gurmukhi",
-        "sc=han", "han",   "sc=hang", "hangul",
-        "sc=hangul", "hangul",   "sc=hani", "han",
-        "sc=hano", "hanunoo",   "sc=hanunoo", "hanunoo",
-        "sc=hebr", "hebrew",   "sc=hebrew", "hebrew",
-        "sc=hira", "hiragana",   "sc=hiragana", "hiragana",
-        "sc=inherited", "inherited",   "sc=ital", "olditalic",
-        "sc=kali", "kayahli",   "sc=kana", "katakana",
-        "sc=kannada", "kannada",   "sc=katakana", "katakana",
-        "sc=kayahli", "kayahli",   "sc=khar", "kharoshthi",
-        "sc=kharoshthi", "kharoshthi",   "sc=khmer", "khmer",
-        "sc=khmr", "khmer",   "sc=knda", "kannada",
-        "sc=lao", "lao",   "sc=laoo", "lao",
-        "sc=latin", "latin",   "sc=latn", "latin",
-        "sc=lepc", "lepcha",   "sc=lepcha", "lepcha",
-        "sc=limb", "limbu",   "sc=limbu", "limbu",
-        "sc=linb", "linearb",   "sc=linearb", "linearb",
-        "sc=lyci", "lycian",   "sc=lycian", "lycian",
-        "sc=lydi", "lydian",   "sc=lydian", "lydian",
-        "sc=malayalam", "malayalam",   "sc=mlym", "malayalam",
-        "sc=mong", "mongolian",   "sc=mongolian", "mongolian",
-        "sc=myanmar", "myanmar",   "sc=mymr", "myanmar",
-        "sc=newtailue", "newtailue",   "sc=nko", "nko",
-        "sc=nkoo", "nko",   "sc=ogam", "ogham",
-        "sc=ogham", "ogham",   "sc=olchiki", "olchiki",
-        "sc=olck", "olchiki",   "sc=olditalic", "olditalic",
-        "sc=oldpersian", "oldpersian",   "sc=oriya", "oriya",
-        "sc=orya", "oriya",   "sc=osma", "osmanya",
-        "sc=osmanya", "osmanya",   "sc=phag", "phagspa",
-        "sc=phagspa", "phagspa",   "sc=phnx", "phoenician",
-        "sc=phoenician", "phoenician",   "sc=qaac", "coptic",
-        "sc=qaai", "inherited",   "sc=rejang", "rejang",
-        "sc=rjng", "rejang",   "sc=runic", "runic",
-        "sc=runr", "runic",   "sc=saur", "saurashtra",
-        "sc=saurashtra", "saurashtra",   "sc=shavian", "shavian",
-        "sc=shaw", "shavian",   "sc=sinh", "sinhala",
-        "sc=sinhala", "sinhala",   "sc=sund", "sundanese",
-        "sc=sundanese", "sundanese",   "sc=sylo", "sylotinagri",
-        "sc=sylotinagri", "sylotinagri",   "sc=syrc", "syriac",
-        "sc=syriac", "syriac",   "sc=tagalog", "tagalog",
-        "sc=tagb", "tagbanwa",   "sc=tagbanwa", "tagbanwa",
-        "sc=taile", "taile",   "sc=tale", "taile",
-        "sc=talu", "newtailue",   "sc=tamil", "tamil",
-        "sc=taml", "tamil",   "sc=telu", "telugu",
-        "sc=telugu", "telugu",   "sc=tfng", "tifinagh",
-        "sc=tglg", "tagalog",   "sc=thaa", "thaana",
-        "sc=thaana", "thaana",   "sc=thai", "thai",
-        "sc=tibetan", "tibetan",   "sc=tibt", "tibetan",
-        "sc=tifinagh", "tifinagh",   "sc=ugar", "ugaritic",
-        "sc=ugaritic", "ugaritic",   "sc=unknown", "unknown",
-        "sc=vai", "vai",   "sc=vaii", "vai",
-        "sc=xpeo", "oldpersian",   "sc=xsux", "cuneiform",
-        "sc=yi", "yi",   "sc=yiii", "yi",
-        "sc=zyyy", "common",   "sc=zzzz", "unknown",
-        "script=arab", "arabic",   "script=arabic", "arabic",
-        "script=armenian", "armenian",   "script=armn", "armenian",
-        "script=bali", "balinese",   "script=balinese", "balinese",
-        "script=beng", "bengali",   "script=bengali", "bengali",
-        "script=bopo", "bopomofo",   "script=bopomofo", "bopomofo",
-        "script=brai", "braille",   "script=braille", "braille",
-        "script=bugi", "buginese",   "script=buginese", "buginese",
-        "script=buhd", "buhid",   "script=buhid", "buhid",
-        "script=canadianaboriginal", "canadianaboriginal",   "script=cans", "canadianaboriginal",
-        "script=cari", "carian",   "script=carian", "carian",
-        "script=cham", "cham",   "script=cher", "cherokee",
-        "script=cherokee", "cherokee",   "script=common", "common",
-        "script=copt", "coptic",   "script=coptic", "coptic",
-        "script=cprt", "cypriot",   "script=cuneiform", "cuneiform",
-        "script=cypriot", "cypriot",   "script=cyrillic", "cyrillic",
-        "script=cyrl", "cyrillic",   "script=deseret", "deseret",
-        "script=deva", "devanagari",   "script=devanagari", "devanagari",
-        "script=dsrt", "deseret",   "script=ethi", "ethiopic",
-        "script=ethiopic", "ethiopic",   "script=geor", "georgian",
-        "script=georgian", "georgian",   "script=glag", "glagolitic",
-        "script=glagolitic", "glagolitic",   "script=goth", "gothic",
-        "script=gothic", "gothic",   "script=greek", "greek",
-        "script=grek", "greek",   "script=gujarati", "gujarati",
-        "script=gujr", "gujarati",   "script=gurmukhi", "gurmukhi",
-        "script=guru", "gurmukhi",   "script=han", "han",
-        "script=hang", "hangul",   "script=hangul", "hangul",
-        "script=hani", "han",   "script=hano", "hanunoo",
-        "script=hanunoo", "hanunoo",   "script=hebr", "hebrew",
-        "script=hebrew", "hebrew",   "script=hira", "hiragana",
-        "script=hiragana", "hiragana",   "script=inherited", "inherited",
-        "script=ital", "olditalic",   "script=kali", "kayahli",
-        "script=kana", "katakana",   "script=kannada", "kannada",
-        "script=katakana", "katakana",   "script=kayahli", "kayahli",
-        "script=khar", "kharoshthi",   "script=kharoshthi", "kharoshthi",
-        "script=khmer", "khmer",   "script=khmr", "khmer",
-        "script=knda", "kannada",   "script=lao", "lao",
-        "script=laoo", "lao",   "script=latin", "latin",
-        "script=latn", "latin",   "script=lepc", "lepcha",
-        "script=lepcha", "lepcha",   "script=limb", "limbu",
-        "script=limbu", "limbu",   "script=linb", "linearb",
-        "script=linearb", "linearb",   "script=lyci", "lycian",
-        "script=lycian", "lycian",   "script=lydi", "lydian",
-        "script=lydian", "lydian",   "script=malayalam", "malayalam",
-        "script=mlym", "malayalam",   "script=mong", "mongolian",
-        "script=mongolian", "mongolian",   "script=myanmar", "myanmar",
-        "script=mymr", "myanmar",   "script=newtailue", "newtailue",
-        "script=nko", "nko",   "script=nkoo", "nko",
-        "script=ogam", "ogham",   "script=ogham", "ogham",
-        "script=olchiki", "olchiki",   "script=olck", "olchiki",
-        "script=olditalic", "olditalic",   "script=oldpersian", "oldpersian",
-        "script=oriya", "oriya",   "script=orya", "oriya",
-        "script=osma", "osmanya",   "script=osmanya", "osmanya",
-        "script=phag", "phagspa",   "script=phagspa", "phagspa",
-        "script=phnx", "phoenician",   "script=phoenician", "phoenician",
-        "script=qaac", "coptic",   "script=qaai", "inherited",
-        "script=rejang", "rejang",   "script=rjng", "rejang",
-        "script=runic", "runic",   "script=runr", "runic",
-        "script=saur", "saurashtra",   "script=saurashtra", "saurashtra",
-        "script=shavian", "shavian",   "script=shaw", "shavian",
-        "script=sinh", "sinhala",   "script=sinhala", "sinhala",
-        "script=sund", "sundanese",   "script=sundanese", "sundanese",
-        "script=sylo", "sylotinagri",   "script=sylotinagri", "sylotinagri",
-        "script=syrc", "syriac",   "script=syriac", "syriac",
-        "script=tagalog", "tagalog",   "script=tagb", "tagbanwa",
-        "script=tagbanwa", "tagbanwa",   "script=taile", "taile",
-        "script=tale", "taile",   "script=talu", "newtailue",
-        "script=tamil", "tamil",   "script=taml", "tamil",
-        "script=telu", "telugu",   "script=telugu", "telugu",
-        "script=tfng", "tifinagh",   "script=tglg", "tagalog",
-        "script=thaa", "thaana",   "script=thaana", "thaana",
-        "script=thai", "thai",   "script=tibetan", "tibetan",
-        "script=tibt", "tibetan",   "script=tifinagh", "tifinagh",
-        "script=ugar", "ugaritic",   "script=ugaritic", "ugaritic",
-        "script=unknown", "unknown",   "script=vai", "vai",
-        "script=vaii", "vai",   "script=xpeo", "oldpersian",
-        "script=xsux", "cuneiform",   "script=yi", "yi",
-        "script=yiii", "yi",   "script=zyyy", "common",
-        "script=zzzz", "unknown",   "sd", "softdotted",
-        "sentencebreak=at", "sentencebreak=aterm",   "sentencebreak=cl", "sentencebreak=close",
-        "sentencebreak=ex", "sentencebreak=extend",   "sentencebreak=fo", "sentencebreak=format",
-        "sentencebreak=le", "sentencebreak=oletter",   "sentencebreak=lo", "sentencebreak=lower",
-        "sentencebreak=nu", "sentencebreak=numeric",   "sentencebreak=sc", "sentencebreak=scontinue",
-        "sentencebreak=se", "sentencebreak=sep",   "sentencebreak=st", "sentencebreak=sterm",
-        "sentencebreak=up", "sentencebreak=upper",   "sentencebreak=xx", "sentencebreak=other",
-        "separator", "z",   "shaw", "shavian",
-        "sinh", "sinhala",   "space", "whitespace",
-        "spaceseparator", "zs",   "spacingmark", "mc",
-        "sund", "sundanese",   "sylo", "sylotinagri",
-        "symbol", "s",   "syrc", "syriac",
-        "tagb", "tagbanwa",   "tale", "taile",
-        "talu", "newtailue",   "taml", "tamil",
-        "telu", "telugu",   "term", "terminalpunctuation",
-        "tfng", "tifinagh",   "tglg", "tagalog",
-        "thaa", "thaana",   "tibt", "tibetan",
-        "titlecaseletter", "lt",   "ugar", "ugaritic",
-        "uideo", "unifiedideograph",   "unassigned", "cn",
-        "upper", "uppercase",   "uppercaseletter", "lu",
-        "vaii", "vai",   "vs", "variationselector",
-        "wb=aletter", "wordbreak=aletter",   "wb=cr", "wordbreak=cr",
-        "wb=ex", "wordbreak=extendnumlet",   "wb=extend", "wordbreak=extend",
-        "wb=extendnumlet", "wordbreak=extendnumlet",   "wb=fo", "wordbreak=format",
-        "wb=format", "wordbreak=format",   "wb=ka", "wordbreak=katakana",
-        "wb=katakana", "wordbreak=katakana",   "wb=le", "wordbreak=aletter",
-        "wb=lf", "wordbreak=lf",   "wb=mb", "wordbreak=midnumlet",
-        "wb=midletter", "wordbreak=midletter",   "wb=midnum", "wordbreak=midnum",
-        "wb=midnumlet", "wordbreak=midnumlet",   "wb=ml", "wordbreak=midletter",
-        "wb=mn", "wordbreak=midnum",   "wb=newline", "wordbreak=newline",
-        "wb=nl", "wordbreak=newline",   "wb=nu", "wordbreak=numeric",
-        "wb=numeric", "wordbreak=numeric",   "wb=other", "wordbreak=other",
-        "wb=xx", "wordbreak=other",   "wordbreak=ex", "wordbreak=extendnumlet",
-        "wordbreak=fo", "wordbreak=format",   "wordbreak=ka", "wordbreak=katakana",
-        "wordbreak=le", "wordbreak=aletter",   "wordbreak=mb", "wordbreak=midnumlet",
-        "wordbreak=ml", "wordbreak=midletter",   "wordbreak=mn", "wordbreak=midnum",
-        "wordbreak=nl", "wordbreak=newline",   "wordbreak=nu", "wordbreak=numeric",
-        "wordbreak=xx", "wordbreak=other",   "wspace", "whitespace",
-        "xidc", "xidcontinue",   "xids", "xidstart",
-        "xpeo", "oldpersian",   "xsux", "cuneiform",
-        "yiii", "yi",   "zyyy", "common",
-        "zzzz", "unknown"
-  };
-  public static final int caselessMatchPartitionSize = 4;
-  public static final String caselessMatchPartitions =
-        "\u0041\u0061\000\000"+"\u0042\u0062\000\000"+"\u0043\u0063\000\000"
-      + "\u0044\u0064\000\000"+"\u0045\u0065\000\000"+"\u0046\u0066\000\000"
-      + "\u0047\u0067\000\000"+"\u0048\u0068\000\000"+"\u0049\u0069\u0130\u0131"
-      + "\u004a\u006a\000\000"+"\u004b\u006b\u212a\000"+"\u004c\u006c\000\000"
-      + "\u004d\u006d\000\000"+"\u004e\u006e\000\000"+"\u004f\u006f\000\000"
-      + "\u0050\u0070\000\000"+"\u0051\u0071\000\000"+"\u0052\u0072\000\000"
-      + "\u0053\u0073\u017f\000"+"\u0054\u0074\000\000"+"\u0055\u0075\000\000"
-      + "\u0056\u0076\000\000"+"\u0057\u0077\000\000"+"\u0058\u0078\000\000"
-      + "\u0059\u0079\000\000"+"\u005a\u007a\000\000"+"\u00b5\u039c\u03bc\000"
-      + "\u00c0\u00e0\000\000"+"\u00c1\u00e1\000\000"+"\u00c2\u00e2\000\000"
-      + "\u00c3\u00e3\000\000"+"\u00c4\u00e4\000\000"+"\u00c5\u00e5\u212b\000"
-      + "\u00c6\u00e6\000\000"+"\u00c7\u00e7\000\000"+"\u00c8\u00e8\000\000"
-      + "\u00c9\u00e9\000\000"+"\u00ca\u00ea\000\000"+"\u00cb\u00eb\000\000"
-      + "\u00cc\u00ec\000\000"+"\u00cd\u00ed\000\000"+"\u00ce\u00ee\000\000"
-      + "\u00cf\u00ef\000\000"+"\u00d0\u00f0\000\000"+"\u00d1\u00f1\000\000"
-      + "\u00d2\u00f2\000\000"+"\u00d3\u00f3\000\000"+"\u00d4\u00f4\000\000"
-      + "\u00d5\u00f5\000\000"+"\u00d6\u00f6\000\000"+"\u00d8\u00f8\000\000"
-      + "\u00d9\u00f9\000\000"+"\u00da\u00fa\000\000"+"\u00db\u00fb\000\000"
-      + "\u00dc\u00fc\000\000"+"\u00dd\u00fd\000\000"+"\u00de\u00fe\000\000"
-      + "\u00df\u1e9e\000\000"+"\u00ff\u0178\000\000"+"\u0100\u0101\000\000"
-      + "\u0102\u0103\000\000"+"\u0104\u0105\000\000"+"\u0106\u0107\000\000"
-      + "\u0108\u0109\000\000"+"\u010a\u010b\000\000"+"\u010c\u010d\000\000"
-      + "\u010e\u010f\000\000"+"\u0110\u0111\000\000"+"\u0112\u0113\000\000"
-      + "\u0114\u0115\000\000"+"\u0116\u0117\000\000"+"\u0118\u0119\000\000"
-      + "\u011a\u011b\000\000"+"\u011c\u011d\000\000"+"\u011e\u011f\000\000"
-      + "\u0120\u0121\000\000"+"\u0122\u0123\000\000"+"\u0124\u0125\000\000"
-      + "\u0126\u0127\000\000"+"\u0128\u0129\000\000"+"\u012a\u012b\000\000"
-      + "\u012c\u012d\000\000"+"\u012e\u012f\000\000"+"\u0132\u0133\000\000"
-      + "\u0134\u0135\000\000"+"\u0136\u0137\000\000"+"\u0139\u013a\000\000"
-      + "\u013b\u013c\000\000"+"\u013d\u013e\000\000"+"\u013f\u0140\000\000"
-      + "\u0141\u0142\000\000"+"\u0143\u0144\000\000"+"\u0145\u0146\000\000"
-      + "\u0147\u0148\000\000"+"\u014a\u014b\000\000"+"\u014c\u014d\000\000"
-      + "\u014e\u014f\000\000"+"\u0150\u0151\000\000"+"\u0152\u0153\000\000"
-      + "\u0154\u0155\000\000"+"\u0156\u0157\000\000"+"\u0158\u0159\000\000"
-      + "\u015a\u015b\000\000"+"\u015c\u015d\000\000"+"\u015e\u015f\000\000"
-      + "\u0160\u0161\000\000"+"\u0162\u0163\000\000"+"\u0164\u0165\000\000"
-      + "\u0166\u0167\000\000"+"\u0168\u0169\000\000"+"\u016a\u016b\000\000"
-      + "\u016c\u016d\000\000"+"\u016e\u016f\000\000"+"\u0170\u0171\000\000"
-      + "\u0172\u0173\000\000"+"\u0174\u0175\000\000"+"\u0176\u0177\000\000"
-      + "\u0179\u017a\000\000"+"\u017b\u017c\000\000"+"\u017d\u017e\000\000"
-      + "\u0180\u0243\000\000"+"\u0181\u0253\000\000"+"\u0182\u0183\000\000"
-      + "\u0184\u0185\000\000"+"\u0186\u0254\000\000"+"\u0187\u0188\000\000"
-      + "\u0189\u0256\000\000"+"\u018a\u0257\000\000"+"\u018b\u018c\000\000"
-      + "\u018e\u01dd\000\000"+"\u018f\u0259\000\000"+"\u0190\u025b\000\000"
-      + "\u0191\u0192\000\000"+"\u0193\u0260\000\000"+"\u0194\u0263\000\000"
-      + "\u0195\u01f6\000\000"+"\u0196\u0269\000\000"+"\u0197\u0268\000\000"
-      + "\u0198\u0199\000\000"+"\u019a\u023d\000\000"+"\u019c\u026f\000\000"
-      + "\u019d\u0272\000\000"+"\u019e\u0220\000\000"+"\u019f\u0275\000\000"
-      + "\u01a0\u01a1\000\000"+"\u01a2\u01a3\000\000"+"\u01a4\u01a5\000\000"
-      + "\u01a6\u0280\000\000"+"\u01a7\u01a8\000\000"+"\u01a9\u0283\000\000"
-      + "\u01ac\u01ad\000\000"+"\u01ae\u0288\000\000"+"\u01af\u01b0\000\000"
-      + "\u01b1\u028a\000\000"+"\u01b2\u028b\000\000"+"\u01b3\u01b4\000\000"
-      + "\u01b5\u01b6\000\000"+"\u01b7\u0292\000\000"+"\u01b8\u01b9\000\000"
-      + "\u01bc\u01bd\000\000"+"\u01bf\u01f7\000\000"+"\u01c4\u01c5\u01c6\000"
-      + "\u01c7\u01c8\u01c9\000"+"\u01ca\u01cb\u01cc\000"+"\u01cd\u01ce\000\000"
-      + "\u01cf\u01d0\000\000"+"\u01d1\u01d2\000\000"+"\u01d3\u01d4\000\000"
-      + "\u01d5\u01d6\000\000"+"\u01d7\u01d8\000\000"+"\u01d9\u01da\000\000"
-      + "\u01db\u01dc\000\000"+"\u01de\u01df\000\000"+"\u01e0\u01e1\000\000"
-      + "\u01e2\u01e3\000\000"+"\u01e4\u01e5\000\000"+"\u01e6\u01e7\000\000"
-      + "\u01e8\u01e9\000\000"+"\u01ea\u01eb\000\000"+"\u01ec\u01ed\000\000"
-      + "\u01ee\u01ef\000\000"+"\u01f1\u01f2\u01f3\000"+"\u01f4\u01f5\000\000"
-      + "\u01f8\u01f9\000\000"+"\u01fa\u01fb\000\000"+"\u01fc\u01fd\000\000"
-      + "\u01fe\u01ff\000\000"+"\u0200\u0201\000\000"+"\u0202\u0203\000\000"
-      + "\u0204\u0205\000\000"+"\u0206\u0207\000\000"+"\u0208\u0209\000\000"
-      + "\u020a\u020b\000\000"+"\u020c\u020d\000\000"+"\u020e\u020f\000\000"
-      + "\u0210\u0211\000\000"+"\u0212\u0213\000\000"+"\u0214\u0215\000\000"
-      + "\u0216\u0217\000\000"+"\u0218\u0219\000\000"+"\u021a\u021b\000\000"
-      + "\u021c\u021d\000\000"+"\u021e\u021f\000\000"+"\u0222\u0223\000\000"
-      + "\u0224\u0225\000\000"+"\u0226\u0227\000\000"+"\u0228\u0229\000\000"
-      + "\u022a\u022b\000\000"+"\u022c\u022d\000\000"+"\u022e\u022f\000\000"
-      + "\u0230\u0231\000\000"+"\u0232\u0233\000\000"+"\u023a\u2c65\000\000"
-      + "\u023b\u023c\000\000"+"\u023e\u2c66\000\000"+"\u0241\u0242\000\000"
-      + "\u0244\u0289\000\000"+"\u0245\u028c\000\000"+"\u0246\u0247\000\000"
-      + "\u0248\u0249\000\000"+"\u024a\u024b\000\000"+"\u024c\u024d\000\000"
-      + "\u024e\u024f\000\000"+"\u0250\u2c6f\000\000"+"\u0251\u2c6d\000\000"
-      + "\u026b\u2c62\000\000"+"\u0271\u2c6e\000\000"+"\u027d\u2c64\000\000"
-      + "\u0345\u0399\u03b9\u1fbe"+"\u0370\u0371\000\000"+"\u0372\u0373\000\000"
-      + "\u0376\u0377\000\000"+"\u037b\u03fd\000\000"+"\u037c\u03fe\000\000"
-      + "\u037d\u03ff\000\000"+"\u0386\u03ac\000\000"+"\u0388\u03ad\000\000"
-      + "\u0389\u03ae\000\000"+"\u038a\u03af\000\000"+"\u038c\u03cc\000\000"
-      + "\u038e\u03cd\000\000"+"\u038f\u03ce\000\000"+"\u0391\u03b1\000\000"
-      + "\u0392\u03b2\u03d0\000"+"\u0393\u03b3\000\000"+"\u0394\u03b4\000\000"
-      + "\u0395\u03b5\u03f5\000"+"\u0396\u03b6\000\000"+"\u0397\u03b7\000\000"
-      + "\u0398\u03b8\u03d1\u03f4"+"\u039a\u03ba\u03f0\000"+"\u039b\u03bb\000\000"
-      + "\u039d\u03bd\000\000"+"\u039e\u03be\000\000"+"\u039f\u03bf\000\000"
-      + "\u03a0\u03c0\u03d6\000"+"\u03a1\u03c1\u03f1\000"+"\u03a3\u03c2\u03c3\000"
-      + "\u03a4\u03c4\000\000"+"\u03a5\u03c5\000\000"+"\u03a6\u03c6\u03d5\000"
-      + "\u03a7\u03c7\000\000"+"\u03a8\u03c8\000\000"+"\u03a9\u03c9\u2126\000"
-      + "\u03aa\u03ca\000\000"+"\u03ab\u03cb\000\000"+"\u03cf\u03d7\000\000"
-      + "\u03d8\u03d9\000\000"+"\u03da\u03db\000\000"+"\u03dc\u03dd\000\000"
-      + "\u03de\u03df\000\000"+"\u03e0\u03e1\000\000"+"\u03e2\u03e3\000\000"
-      + "\u03e4\u03e5\000\000"+"\u03e6\u03e7\000\000"+"\u03e8\u03e9\000\000"
-      + "\u03ea\u03eb\000\000"+"\u03ec\u03ed\000\000"+"\u03ee\u03ef\000\000"
-      + "\u03f2\u03f9\000\000"+"\u03f7\u03f8\000\000"+"\u03fa\u03fb\000\000"
-      + "\u0400\u0450\000\000"+"\u0401\u0451\000\000"+"\u0402\u0452\000\000"
-      + "\u0403\u0453\000\000"+"\u0404\u0454\000\000"+"\u0405\u0455\000\000"
-      + "\u0406\u0456\000\000"+"\u0407\u0457\000\000"+"\u0408\u0458\000\000"
-      + "\u0409\u0459\000\000"+"\u040a\u045a\000\000"+"\u040b\u045b\000\000"
-      + "\u040c\u045c\000\000"+"\u040d\u045d\000\000"+"\u040e\u045e\000\000"
-      + "\u040f\u045f\000\000"+"\u0410\u0430\000\000"+"\u0411\u0431\000\000"
-      + "\u0412\u0432\000\000"+"\u0413\u0433\000\000"+"\u0414\u0434\000\000"
-      + "\u0415\u0435\000\000"+"\u0416\u0436\000\000"+"\u0417\u0437\000\000"
-      + "\u0418\u0438\000\000"+"\u0419\u0439\000\000"+"\u041a\u043a\000\000"
-      + "\u041b\u043b\000\000"+"\u041c\u043c\000\000"+"\u041d\u043d\000\000"
-      + "\u041e\u043e\000\000"+"\u041f\u043f\000\000"+"\u0420\u0440\000\000"
-      + "\u0421\u0441\000\000"+"\u0422\u0442\000\000"+"\u0423\u0443\000\000"
-      + "\u0424\u0444\000\000"+"\u0425\u0445\000\000"+"\u0426\u0446\000\000"
-      + "\u0427\u0447\000\000"+"\u0428\u0448\000\000"+"\u0429\u0449\000\000"
-      + "\u042a\u044a\000\000"+"\u042b\u044b\000\000"+"\u042c\u044c\000\000"
-      + "\u042d\u044d\000\000"+"\u042e\u044e\000\000"+"\u042f\u044f\000\000"
-      + "\u0460\u0461\000\000"+"\u0462\u0463\000\000"+"\u0464\u0465\000\000"
-      + "\u0466\u0467\000\000"+"\u0468\u0469\000\000"+"\u046a\u046b\000\000"
-      + "\u046c\u046d\000\000"+"\u046e\u046f\000\000"+"\u0470\u0471\000\000"
-      + "\u0472\u0473\000\000"+"\u0474\u0475\000\000"+"\u0476\u0477\000\000"
-      + "\u0478\u0479\000\000"+"\u047a\u047b\000\000"+"\u047c\u047d\000\000"
-      + "\u047e\u047f\000\000"+"\u0480\u0481\000\000"+"\u048a\u048b\000\000"
-      + "\u048c\u048d\000\000"+"\u048e\u048f\000\000"+"\u0490\u0491\000\000"
-      + "\u0492\u0493\000\000"+"\u0494\u0495\000\000"+"\u0496\u0497\000\000"
-      + "\u0498\u0499\000\000"+"\u049a\u049b\000\000"+"\u049c\u049d\000\000"
-      + "\u049e\u049f\000\000"+"\u04a0\u04a1\000\000"+"\u04a2\u04a3\000\000"
-      + "\u04a4\u04a5\000\000"+"\u04a6\u04a7\000\000"+"\u04a8\u04a9\000\000"
-      + "\u04aa\u04ab\000\000"+"\u04ac\u04ad\000\000"+"\u04ae\u04af\000\000"
-      + "\u04b0\u04b1\000\000"+"\u04b2\u04b3\000\000"+"\u04b4\u04b5\000\000"
-      + "\u04b6\u04b7\000\000"+"\u04b8\u04b9\000\000"+"\u04ba\u04bb\000\000"
-      + "\u04bc\u04bd\000\000"+"\u04be\u04bf\000\000"+"\u04c0\u04cf\000\000"
-      + "\u04c1\u04c2\000\000"+"\u04c3\u04c4\000\000"+"\u04c5\u04c6\000\000"
-      + "\u04c7\u04c8\000\000"+"\u04c9\u04ca\000\000"+"\u04cb\u04cc\000\000"
-      + "\u04cd\u04ce\000\000"+"\u04d0\u04d1\000\000"+"\u04d2\u04d3\000\000"
-      + "\u04d4\u04d5\000\000"+"\u04d6\u04d7\000\000"+"\u04d8\u04d9\000\000"
-      + "\u04da\u04db\000\000"+"\u04dc\u04dd\000\000"+"\u04de\u04df\000\000"
-      + "\u04e0\u04e1\000\000"+"\u04e2\u04e3\000\000"+"\u04e4\u04e5\000\000"
-      + "\u04e6\u04e7\000\000"+"\u04e8\u04e9\000\000"+"\u04ea\u04eb\000\000"
-      + "\u04ec\u04ed\000\000"+"\u04ee\u04ef\000\000"+"\u04f0\u04f1\000\000"
-      + "\u04f2\u04f3\000\000"+"\u04f4\u04f5\000\000"+"\u04f6\u04f7\000\000"
-      + "\u04f8\u04f9\000\000"+"\u04fa\u04fb\000\000"+"\u04fc\u04fd\000\000"
-      + "\u04fe\u04ff\000\000"+"\u0500\u0501\000\000"+"\u0502\u0503\000\000"
-      + "\u0504\u0505\000\000"+"\u0506\u0507\000\000"+"\u0508\u0509\000\000"
-      + "\u050a\u050b\000\000"+"\u050c\u050d\000\000"+"\u050e\u050f\000\000"
-      + "\u0510\u0511\000\000"+"\u0512\u0513\000\000"+"\u0514\u0515\000\000"
-      + "\u0516\u0517\000\000"+"\u0518\u0519\000\000"+"\u051a\u051b\000\000"
-      + "\u051c\u051d\000\000"+"\u051e\u051f\000\000"+"\u0520\u0521\000\000"
-      + "\u0522\u0523\000\000"+"\u0531\u0561\000\000"+"\u0532\u0562\000\000"
-      + "\u0533\u0563\000\000"+"\u0534\u0564\000\000"+"\u0535\u0565\000\000"
-      + "\u0536\u0566\000\000"+"\u0537\u0567\000\000"+"\u0538\u0568\000\000"
-      + "\u0539\u0569\000\000"+"\u053a\u056a\000\000"+"\u053b\u056b\000\000"
-      + "\u053c\u056c\000\000"+"\u053d\u056d\000\000"+"\u053e\u056e\000\000"
-      + "\u053f\u056f\000\000"+"\u0540\u0570\000\000"+"\u0541\u0571\000\000"
-      + "\u0542\u0572\000\000"+"\u0543\u0573\000\000"+"\u0544\u0574\000\000"
-      + "\u0545\u0575\000\000"+"\u0546\u0576\000\000"+"\u0547\u0577\000\000"
-      + "\u0548\u0578\000\000"+"\u0549\u0579\000\000"+"\u054a\u057a\000\000"
-      + "\u054b\u057b\000\000"+"\u054c\u057c\000\000"+"\u054d\u057d\000\000"
-      + "\u054e\u057e\000\000"+"\u054f\u057f\000\000"+"\u0550\u0580\000\000"
-      + "\u0551\u0581\000\000"+"\u0552\u0582\000\000"+"\u0553\u0583\000\000"
-      + "\u0554\u0584\000\000"+"\u0555\u0585\000\000"+"\u0556\u0586\000\000"
-      + "\u10a0\u2d00\000\000"+"\u10a1\u2d01\000\000"+"\u10a2\u2d02\000\000"
-      + "\u10a3\u2d03\000\000"+"\u10a4\u2d04\000\000"+"\u10a5\u2d05\000\000"
-      + "\u10a6\u2d06\000\000"+"\u10a7\u2d07\000\000"+"\u10a8\u2d08\000\000"
-      + "\u10a9\u2d09\000\000"+"\u10aa\u2d0a\000\000"+"\u10ab\u2d0b\000\000"
-      + "\u10ac\u2d0c\000\000"+"\u10ad\u2d0d\000\000"+"\u10ae\u2d0e\000\000"
-      + "\u10af\u2d0f\000\000"+"\u10b0\u2d10\000\000"+"\u10b1\u2d11\000\000"
-      + "\u10b2\u2d12\000\000"+"\u10b3\u2d13\000\000"+"\u10b4\u2d14\000\000"
-      + "\u10b5\u2d15\000\000"+"\u10b6\u2d16\000\000"+"\u10b7\u2d17\000\000"
-      + "\u10b8\u2d18\000\000"+"\u10b9\u2d19\000\000"+"\u10ba\u2d1a\000\000"
-      + "\u10bb\u2d1b\000\000"+"\u10bc\u2d1c\000\000"+"\u10bd\u2d1d\000\000"
-      + "\u10be\u2d1e\000\000"+"\u10bf\u2d1f\000\000"+"\u10c0\u2d20\000\000"
-      + "\u10c1\u2d21\000\000"+"\u10c2\u2d22\000\000"+"\u10c3\u2d23\000\000"
-      + "\u10c4\u2d24\000\000"+"\u10c5\u2d25\000\000"+"\u1d79\ua77d\000\000"
-      + "\u1d7d\u2c63\000\000"+"\u1e00\u1e01\000\000"+"\u1e02\u1e03\000\000"
-      + "\u1e04\u1e05\000\000"+"\u1e06\u1e07\000\000"+"\u1e08\u1e09\000\000"
-      + "\u1e0a\u1e0b\000\000"+"\u1e0c\u1e0d\000\000"+"\u1e0e\u1e0f\000\000"
-      + "\u1e10\u1e11\000\000"+"\u1e12\u1e13\000\000"+"\u1e14\u1e15\000\000"
-      + "\u1e16\u1e17\000\000"+"\u1e18\u1e19\000\000"+"\u1e1a\u1e1b\000\000"
-      + "\u1e1c\u1e1d\000\000"+"\u1e1e\u1e1f\000\000"+"\u1e20\u1e21\000\000"
-      + "\u1e22\u1e23\000\000"+"\u1e24\u1e25\000\000"+"\u1e26\u1e27\000\000"
-      + "\u1e28\u1e29\000\000"+"\u1e2a\u1e2b\000\000"+"\u1e2c\u1e2d\000\000"
-      + "\u1e2e\u1e2f\000\000"+"\u1e30\u1e31\000\000"+"\u1e32\u1e33\000\000"
-      + "\u1e34\u1e35\000\000"+"\u1e36\u1e37\000\000"+"\u1e38\u1e39\000\000"
-      + "\u1e3a\u1e3b\000\000"+"\u1e3c\u1e3d\000\000"+"\u1e3e\u1e3f\000\000"
-      + "\u1e40\u1e41\000\000"+"\u1e42\u1e43\000\000"+"\u1e44\u1e45\000\000"
-      + "\u1e46\u1e47\000\000"+"\u1e48\u1e49\000\000"+"\u1e4a\u1e4b\000\000"
-      + "\u1e4c\u1e4d\000\000"+"\u1e4e\u1e4f\000\000"+"\u1e50\u1e51\000\000"
-      + "\u1e52\u1e53\000\000"+"\u1e54\u1e55\000\000"+"\u1e56\u1e57\000\000"
-      + "\u1e58\u1e59\000\000"+"\u1e5a\u1e5b\000\000"+"\u1e5c\u1e5d\000\000"
-      + "\u1e5e\u1e5f\000\000"+"\u1e60\u1e61\u1e9b\000"+"\u1e62\u1e63\000\000"
-      + "\u1e64\u1e65\000\000"+"\u1e66\u1e67\000\000"+"\u1e68\u1e69\000\000"
-      + "\u1e6a\u1e6b\000\000"+"\u1e6c\u1e6d\000\000"+"\u1e6e\u1e6f\000\000"
-      + "\u1e70\u1e71\000\000"+"\u1e72\u1e73\000\000"+"\u1e74\u1e75\000\000"
-      + "\u1e76\u1e77\000\000"+"\u1e78\u1e79\000\000"+"\u1e7a\u1e7b\000\000"
-      + "\u1e7c\u1e7d\000\000"+"\u1e7e\u1e7f\000\000"+"\u1e80\u1e81\000\000"
-      + "\u1e82\u1e83\000\000"+"\u1e84\u1e85\000\000"+"\u1e86\u1e87\000\000"
-      + "\u1e88\u1e89\000\000"+"\u1e8a\u1e8b\000\000"+"\u1e8c\u1e8d\000\000"
-      + "\u1e8e\u1e8f\000\000"+"\u1e90\u1e91\000\000"+"\u1e92\u1e93\000\000"
-      + "\u1e94\u1e95\000\000"+"\u1ea0\u1ea1\000\000"+"\u1ea2\u1ea3\000\000"
-      + "\u1ea4\u1ea5\000\000"+"\u1ea6\u1ea7\000\000"+"\u1ea8\u1ea9\000\000"
-      + "\u1eaa\u1eab\000\000"+"\u1eac\u1ead\000\000"+"\u1eae\u1eaf\000\000"
-      + "\u1eb0\u1eb1\000\000"+"\u1eb2\u1eb3\000\000"+"\u1eb4\u1eb5\000\000"
-      + "\u1eb6\u1eb7\000\000"+"\u1eb8\u1eb9\000\000"+"\u1eba\u1ebb\000\000"
-      + "\u1ebc\u1ebd\000\000"+"\u1ebe\u1ebf\000\000"+"\u1ec0\u1ec1\000\000"
-      + "\u1ec2\u1ec3\000\000"+"\u1ec4\u1ec5\000\000"+"\u1ec6\u1ec7\000\000"
-      + "\u1ec8\u1ec9\000\000"+"\u1eca\u1ecb\000\000"+"\u1ecc\u1ecd\000\000"
-      + "\u1ece\u1ecf\000\000"+"\u1ed0\u1ed1\000\000"+"\u1ed2\u1ed3\000\000"
-      + "\u1ed4\u1ed5\000\000"+"\u1ed6\u1ed7\000\000"+"\u1ed8\u1ed9\000\000"
-      + "\u1eda\u1edb\000\000"+"\u1edc\u1edd\000\000"+"\u1ede\u1edf\000\000"
-      + "\u1ee0\u1ee1\000\000"+"\u1ee2\u1ee3\000\000"+"\u1ee4\u1ee5\000\000"
-      + "\u1ee6\u1ee7\000\000"+"\u1ee8\u1ee9\000\000"+"\u1eea\u1eeb\000\000"
-      + "\u1eec\u1eed\000\000"+"\u1eee\u1eef\000\000"+"\u1ef0\u1ef1\000\000"
-      + "\u1ef2\u1ef3\000\000"+"\u1ef4\u1ef5\000\000"+"\u1ef6\u1ef7\000\000"
-      + "\u1ef8\u1ef9\000\000"+"\u1efa\u1efb\000\000"+"\u1efc\u1efd\000\000"
-      + "\u1efe\u1eff\000\000"+"\u1f00\u1f08\000\000"+"\u1f01\u1f09\000\000"
-      + "\u1f02\u1f0a\000\000"+"\u1f03\u1f0b\000\000"+"\u1f04\u1f0c\000\000"
-      + "\u1f05\u1f0d\000\000"+"\u1f06\u1f0e\000\000"+"\u1f07\u1f0f\000\000"
-      + "\u1f10\u1f18\000\000"+"\u1f11\u1f19\000\000"+"\u1f12\u1f1a\000\000"
-      + "\u1f13\u1f1b\000\000"+"\u1f14\u1f1c\000\000"+"\u1f15\u1f1d\000\000"
-      + "\u1f20\u1f28\000\000"+"\u1f21\u1f29\000\000"+"\u1f22\u1f2a\000\000"
-      + "\u1f23\u1f2b\000\000"+"\u1f24\u1f2c\000\000"+"\u1f25\u1f2d\000\000"
-      + "\u1f26\u1f2e\000\000"+"\u1f27\u1f2f\000\000"+"\u1f30\u1f38\000\000"
-      + "\u1f31\u1f39\000\000"+"\u1f32\u1f3a\000\000"+"\u1f33\u1f3b\000\000"
-      + "\u1f34\u1f3c\000\000"+"\u1f35\u1f3d\000\000"+"\u1f36\u1f3e\000\000"
-      + "\u1f37\u1f3f\000\000"+"\u1f40\u1f48\000\000"+"\u1f41\u1f49\000\000"
-      + "\u1f42\u1f4a\000\000"+"\u1f43\u1f4b\000\000"+"\u1f44\u1f4c\000\000"
-      + "\u1f45\u1f4d\000\000"+"\u1f51\u1f59\000\000"+"\u1f53\u1f5b\000\000"
-      + "\u1f55\u1f5d\000\000"+"\u1f57\u1f5f\000\000"+"\u1f60\u1f68\000\000"
-      + "\u1f61\u1f69\000\000"+"\u1f62\u1f6a\000\000"+"\u1f63\u1f6b\000\000"
-      + "\u1f64\u1f6c\000\000"+"\u1f65\u1f6d\000\000"+"\u1f66\u1f6e\000\000"
-      + "\u1f67\u1f6f\000\000"+"\u1f70\u1fba\000\000"+"\u1f71\u1fbb\000\000"
-      + "\u1f72\u1fc8\000\000"+"\u1f73\u1fc9\000\000"+"\u1f74\u1fca\000\000"
-      + "\u1f75\u1fcb\000\000"+"\u1f76\u1fda\000\000"+"\u1f77\u1fdb\000\000"
-      + "\u1f78\u1ff8\000\000"+"\u1f79\u1ff9\000\000"+"\u1f7a\u1fea\000\000"
-      + "\u1f7b\u1feb\000\000"+"\u1f7c\u1ffa\000\000"+"\u1f7d\u1ffb\000\000"
-      + "\u1f80\u1f88\000\000"+"\u1f81\u1f89\000\000"+"\u1f82\u1f8a\000\000"
-      + "\u1f83\u1f8b\000\000"+"\u1f84\u1f8c\000\000"+"\u1f85\u1f8d\000\000"
-      + "\u1f86\u1f8e\000\000"+"\u1f87\u1f8f\000\000"+"\u1f90\u1f98\000\000"
-      + "\u1f91\u1f99\000\000"+"\u1f92\u1f9a\000\000"+"\u1f93\u1f9b\000\000"
-      + "\u1f94\u1f9c\000\000"+"\u1f95\u1f9d\000\000"+"\u1f96\u1f9e\000\000"
-      + "\u1f97\u1f9f\000\000"+"\u1fa0\u1fa8\000\000"+"\u1fa1\u1fa9\000\000"
-      + "\u1fa2\u1faa\000\000"+"\u1fa3\u1fab\000\000"+"\u1fa4\u1fac\000\000"
-      + "\u1fa5\u1fad\000\000"+"\u1fa6\u1fae\000\000"+"\u1fa7\u1faf\000\000"
-      + "\u1fb0\u1fb8\000\000"+"\u1fb1\u1fb9\000\000"+"\u1fb3\u1fbc\000\000"
-      + "\u1fc3\u1fcc\000\000"+"\u1fd0\u1fd8\000\000"+"\u1fd1\u1fd9\000\000"
-      + "\u1fe0\u1fe8\000\000"+"\u1fe1\u1fe9\000\000"+"\u1fe5\u1fec\000\000"
-      + "\u1ff3\u1ffc\000\000"+"\u2132\u214e\000\000"+"\u2160\u2170\000\000"
-      + "\u2161\u2171\000\000"+"\u2162\u2172\000\000"+"\u2163\u2173\000\000"
-      + "\u2164\u2174\000\000"+"\u2165\u2175\000\000"+"\u2166\u2176\000\000"
-      + "\u2167\u2177\000\000"+"\u2168\u2178\000\000"+"\u2169\u2179\000\000"
-      + "\u216a\u217a\000\000"+"\u216b\u217b\000\000"+"\u216c\u217c\000\000"
-      + "\u216d\u217d\000\000"+"\u216e\u217e\000\000"+"\u216f\u217f\000\000"
-      + "\u2183\u2184\000\000"+"\u24b6\u24d0\000\000"+"\u24b7\u24d1\000\000"
-      + "\u24b8\u24d2\000\000"+"\u24b9\u24d3\000\000"+"\u24ba\u24d4\000\000"
-      + "\u24bb\u24d5\000\000"+"\u24bc\u24d6\000\000"+"\u24bd\u24d7\000\000"
-      + "\u24be\u24d8\000\000"+"\u24bf\u24d9\000\000"+"\u24c0\u24da\000\000"
-      + "\u24c1\u24db\000\000"+"\u24c2\u24dc\000\000"+"\u24c3\u24dd\000\000"
-      + "\u24c4\u24de\000\000"+"\u24c5\u24df\000\000"+"\u24c6\u24e0\000\000"
-      + "\u24c7\u24e1\000\000"+"\u24c8\u24e2\000\000"+"\u24c9\u24e3\000\000"
-      + "\u24ca\u24e4\000\000"+"\u24cb\u24e5\000\000"+"\u24cc\u24e6\000\000"
-      + "\u24cd\u24e7\000\000"+"\u24ce\u24e8\000\000"+"\u24cf\u24e9\000\000"
-      + "\u2c00\u2c30\000\000"+"\u2c01\u2c31\000\000"+"\u2c02\u2c32\000\000"
-      + "\u2c03\u2c33\000\000"+"\u2c04\u2c34\000\000"+"\u2c05\u2c35\000\000"
-      + "\u2c06\u2c36\000\000"+"\u2c07\u2c37\000\000"+"\u2c08\u2c38\000\000"
-      + "\u2c09\u2c39\000\000"+"\u2c0a\u2c3a\000\000"+"\u2c0b\u2c3b\000\000"
-      + "\u2c0c\u2c3c\000\000"+"\u2c0d\u2c3d\000\000"+"\u2c0e\u2c3e\000\000"
-      + "\u2c0f\u2c3f\000\000"+"\u2c10\u2c40\000\000"+"\u2c11\u2c41\000\000"
-      + "\u2c12\u2c42\000\000"+"\u2c13\u2c43\000\000"+"\u2c14\u2c44\000\000"
-      + "\u2c15\u2c45\000\000"+"\u2c16\u2c46\000\000"+"\u2c17\u2c47\000\000"
-      + "\u2c18\u2c48\000\000"+"\u2c19\u2c49\000\000"+"\u2c1a\u2c4a\000\000"
-      + "\u2c1b\u2c4b\000\000"+"\u2c1c\u2c4c\000\000"+"\u2c1d\u2c4d\000\000"
-      + "\u2c1e\u2c4e\000\000"+"\u2c1f\u2c4f\000\000"+"\u2c20\u2c50\000\000"
-      + "\u2c21\u2c51\000\000"+"\u2c22\u2c52\000\000"+"\u2c23\u2c53\000\000"
-      + "\u2c24\u2c54\000\000"+"\u2c25\u2c55\000\000"+"\u2c26\u2c56\000\000"
-      + "\u2c27\u2c57\000\000"+"\u2c28\u2c58\000\000"+"\u2c29\u2c59\000\000"
-      + "\u2c2a\u2c5a\000\000"+"\u2c2b\u2c5b\000\000"+"\u2c2c\u2c5c\000\000"
-      + "\u2c2d\u2c5d\000\000"+"\u2c2e\u2c5e\000\000"+"\u2c60\u2c61\000\000"
-      + "\u2c67\u2c68\000\000"+"\u2c69\u2c6a\000\000"+"\u2c6b\u2c6c\000\000"
-      + "\u2c72\u2c73\000\000"+"\u2c75\u2c76\000\000"+"\u2c80\u2c81\000\000"
-      + "\u2c82\u2c83\000\000"+"\u2c84\u2c85\000\000"+"\u2c86\u2c87\000\000"
-      + "\u2c88\u2c89\000\000"+"\u2c8a\u2c8b\000\000"+"\u2c8c\u2c8d\000\000"
-      + "\u2c8e\u2c8f\000\000"+"\u2c90\u2c91\000\000"+"\u2c92\u2c93\000\000"
-      + "\u2c94\u2c95\000\000"+"\u2c96\u2c97\000\000"+"\u2c98\u2c99\000\000"
-      + "\u2c9a\u2c9b\000\000"+"\u2c9c\u2c9d\000\000"+"\u2c9e\u2c9f\000\000"
-      + "\u2ca0\u2ca1\000\000"+"\u2ca2\u2ca3\000\000"+"\u2ca4\u2ca5\000\000"
-      + "\u2ca6\u2ca7\000\000"+"\u2ca8\u2ca9\000\000"+"\u2caa\u2cab\000\000"
-      + "\u2cac\u2cad\000\000"+"\u2cae\u2caf\000\000"+"\u2cb0\u2cb1\000\000"
-      + "\u2cb2\u2cb3\000\000"+"\u2cb4\u2cb5\000\000"+"\u2cb6\u2cb7\000\000"
-      + "\u2cb8\u2cb9\000\000"+"\u2cba\u2cbb\000\000"+"\u2cbc\u2cbd\000\000"
-      + "\u2cbe\u2cbf\000\000"+"\u2cc0\u2cc1\000\000"+"\u2cc2\u2cc3\000\000"
-      + "\u2cc4\u2cc5\000\000"+"\u2cc6\u2cc7\000\000"+"\u2cc8\u2cc9\000\000"
-      + "\u2cca\u2ccb\000\000"+"\u2ccc\u2ccd\000\000"+"\u2cce\u2ccf\000\000"
-      + "\u2cd0\u2cd1\000\000"+"\u2cd2\u2cd3\000\000"+"\u2cd4\u2cd5\000\000"
-      + "\u2cd6\u2cd7\000\000"+"\u2cd8\u2cd9\000\000"+"\u2cda\u2cdb\000\000"
-      + "\u2cdc\u2cdd\000\000"+"\u2cde\u2cdf\000\000"+"\u2ce0\u2ce1\000\000"
-      + "\u2ce2\u2ce3\000\000"+"\ua640\ua641\000\000"+"\ua642\ua643\000\000"
-      + "\ua644\ua645\000\000"+"\ua646\ua647\000\000"+"\ua648\ua649\000\000"
-      + "\ua64a\ua64b\000\000"+"\ua64c\ua64d\000\000"+"\ua64e\ua64f\000\000"
-      + "\ua650\ua651\000\000"+"\ua652\ua653\000\000"+"\ua654\ua655\000\000"
-      + "\ua656\ua657\000\000"+"\ua658\ua659\000\000"+"\ua65a\ua65b\000\000"
-      + "\ua65c\ua65d\000\000"+"\ua65e\ua65f\000\000"+"\ua662\ua663\000\000"
-      + "\ua664\ua665\000\000"+"\ua666\ua667\000\000"+"\ua668\ua669\000\000"
-      + "\ua66a\ua66b\000\000"+"\ua66c\ua66d\000\000"+"\ua680\ua681\000\000"
-      + "\ua682\ua683\000\000"+"\ua684\ua685\000\000"+"\ua686\ua687\000\000"
-      + "\ua688\ua689\000\000"+"\ua68a\ua68b\000\000"+"\ua68c\ua68d\000\000"
-      + "\ua68e\ua68f\000\000"+"\ua690\ua691\000\000"+"\ua692\ua693\000\000"
-      + "\ua694\ua695\000\000"+"\ua696\ua697\000\000"+"\ua722\ua723\000\000"
-      + "\ua724\ua725\000\000"+"\ua726\ua727\000\000"+"\ua728\ua729\000\000"
-      + "\ua72a\ua72b\000\000"+"\ua72c\ua72d\000\000"+"\ua72e\ua72f\000\000"
-      + "\ua732\ua733\000\000"+"\ua734\ua735\000\000"+"\ua736\ua737\000\000"
-      + "\ua738\ua739\000\000"+"\ua73a\ua73b\000\000"+"\ua73c\ua73d\000\000"
-      + "\ua73e\ua73f\000\000"+"\ua740\ua741\000\000"+"\ua742\ua743\000\000"
-      + "\ua744\ua745\000\000"+"\ua746\ua747\000\000"+"\ua748\ua749\000\000"
-      + "\ua74a\ua74b\000\000"+"\ua74c\ua74d\000\000"+"\ua74e\ua74f\000\000"
-      + "\ua750\ua751\000\000"+"\ua752\ua753\000\000"+"\ua754\ua755\000\000"
-      + "\ua756\ua757\000\000"+"\ua758\ua759\000\000"+"\ua75a\ua75b\000\000"
-      + "\ua75c\ua75d\000\000"+"\ua75e\ua75f\000\000"+"\ua760\ua761\000\000"
-      + "\ua762\ua763\000\000"+"\ua764\ua765\000\000"+"\ua766\ua767\000\000"
-      + "\ua768\ua769\000\000"+"\ua76a\ua76b\000\000"+"\ua76c\ua76d\000\000"
-      + "\ua76e\ua76f\000\000"+"\ua779\ua77a\000\000"+"\ua77b\ua77c\000\000"
-      + "\ua77e\ua77f\000\000"+"\ua780\ua781\000\000"+"\ua782\ua783\000\000"
-      + "\ua784\ua785\000\000"+"\ua786\ua787\000\000"+"\ua78b\ua78c\000\000"
-      + "\uff21\uff41\000\000"+"\uff22\uff42\000\000"+"\uff23\uff43\000\000"
-      + "\uff24\uff44\000\000"+"\uff25\uff45\000\000"+"\uff26\uff46\000\000"
-      + "\uff27\uff47\000\000"+"\uff28\uff48\000\000"+"\uff29\uff49\000\000"
-      + "\uff2a\uff4a\000\000"+"\uff2b\uff4b\000\000"+"\uff2c\uff4c\000\000"
-      + "\uff2d\uff4d\000\000"+"\uff2e\uff4e\000\000"+"\uff2f\uff4f\000\000"
-      + "\uff30\uff50\000\000"+"\uff31\uff51\000\000"+"\uff32\uff52\000\000"
-      + "\uff33\uff53\000\000"+"\uff34\uff54\000\000"+"\uff35\uff55\000\000"
-      + "\uff36\uff56\000\000"+"\uff37\uff57\000\000"+"\uff38\uff58\000\000"
-      + "\uff39\uff59\000\000"+"\uff3a\uff5a\000\000"+"\ud801\udc00\ud801\udc28\000\000"
-      + "\ud801\udc01\ud801\udc29\000\000"+"\ud801\udc02\ud801\udc2a\000\000"+"\ud801\udc03\ud801\udc2b\000\000"
-      + "\ud801\udc04\ud801\udc2c\000\000"+"\ud801\udc05\ud801\udc2d\000\000"+"\ud801\udc06\ud801\udc2e\000\000"
-      + "\ud801\udc07\ud801\udc2f\000\000"+"\ud801\udc08\ud801\udc30\000\000"+"\ud801\udc09\ud801\udc31\000\000"
-      + "\ud801\udc0a\ud801\udc32\000\000"+"\ud801\udc0b\ud801\udc33\000\000"+"\ud801\udc0c\ud801\udc34\000\000"
-      + "\ud801\udc0d\ud801\udc35\000\000"+"\ud801\udc0e\ud801\udc36\000\000"+"\ud801\udc0f\ud801\udc37\000\000"
-      + "\ud801\udc10\ud801\udc38\000\000"+"\ud801\udc11\ud801\udc39\000\000"+"\ud801\udc12\ud801\udc3a\000\000"
-      + "\ud801\udc13\ud801\udc3b\000\000"+"\ud801\udc14\ud801\udc3c\000\000"+"\ud801\udc15\ud801\udc3d\000\000"
-      + "\ud801\udc16\ud801\udc3e\000\000"+"\ud801\udc17\ud801\udc3f\000\000"+"\ud801\udc18\ud801\udc40\000\000"
-      + "\ud801\udc19\ud801\udc41\000\000"+"\ud801\udc1a\ud801\udc42\000\000"+"\ud801\udc1b\ud801\udc43\000\000"
-      + "\ud801\udc1c\ud801\udc44\000\000"+"\ud801\udc1d\ud801\udc45\000\000"+"\ud801\udc1e\ud801\udc46\000\000"
-      + "\ud801\udc1f\ud801\udc47\000\000"+"\ud801\udc20\ud801\udc48\000\000"+"\ud801\udc21\ud801\udc49\000\000"
-      + "\ud801\udc22\ud801\udc4a\000\000"+"\ud801\udc23\ud801\udc4b\000\000"+"\ud801\udc24\ud801\udc4c\000\000"
-      + "\ud801\udc25\ud801\udc4d\000\000"+"\ud801\udc26\ud801\udc4e\000\000"+"\ud801\udc27\ud801\udc4f\000\000";
-}
@@ -115,6 +115,33 @@ public class AntTaskTests extends TestCase {
     assertEquals(Options.TABLE, Options.gen_method);
     task.setPack(true);
     assertEquals(Options.PACK, Options.gen_method);
+    task.setComb(true);
+    assertEquals(Options.COMB, Options.gen_method);
+  }
+
+  public void testProfile() {
+    assertTrue(!Options.instrument);
+    task.setInstrument(true);
+    assertTrue(Options.instrument);
+    assertNull(Options.profile);
+    task.setUseprofile(new File("scanner.profile"));
+    assertEquals(new File("scanner.profile"), Options.profile);
+  }
+
+  public void testCache() {
+    assertNull(Options.cache);
+    task.setCache(new File("dfa-cache"));
+    assertEquals(new File("dfa-cache"), Options.cache);
+  }
+
+  public void testBudgets() {
+    assertEquals(0, Options.maxStates);
+    task.setMaxstates(10000);
+    task.setMaxmemory(64);
+    task.setMaxtime(30);
+    assertEquals(10000, Options.maxStates);
+    assertEquals(64, Options.maxMemory);
+    assertEquals(30, Options.maxTime);
   }
 
   public void testSkel() {
@@ -157,4 +184,10 @@ public class AntTaskTests extends TestCase {
     task.setJLex(true);
     assertTrue(Options.jlex);
   }
+
+  public void testIncremental() {
+    assertTrue(!task.isIncremental());
+    task.setIncremental(true);
+    assertTrue(task.isIncremental());
+  }
 }
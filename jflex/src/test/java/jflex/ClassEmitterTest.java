@@ -0,0 +1,147 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+/**
+ * ClassEmitterTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class ClassEmitterTest extends TestCase {
+
+  /**
+   * Companion class of the test scanners.
+   */
+  public static class Actions {
+    public static int action(Object scanner, int line) {
+      return line == 10 ? ClassEmitter.CONTINUE : 100+line;
+    }
+  }
+
+  /**
+   * Constructor for ClassEmitterTest.
+   */
+  public ClassEmitterTest() {
+    super("Class file emitter test");
+  }
+
+  private static GeneratorOptions options(String companion) {
+    GeneratorOptions options = TestFiles.options();
+    options.classfile = true;
+    options.companion = companion;
+    return options;
+  }
+
+  private static GeneratedScanner generate(String rules, String companion) {
+    String spec = "package test.scanner;\nimport java.util.*;\n%%\n%class Lexer\n%public\n%int\n"+
+                  "%xstate STRING\n%%\n"+rules;
+    return JFlex.generate(new StringReader(spec), options(companion));
+  }
+
+  /**
+   * @return token and text of all tokens, separated by spaces
+   */
+  private static String tokens(GeneratedScanner scanner, String input) throws Exception {
+    Class<?> c = scanner.defineClass(getClassLoader());
+    assertEquals("test.scanner.Lexer", c.getName());
+
+    Object lexer = c.getConstructor(CharSequence.class).newInstance(input);
+    Method yylex = c.getMethod("yylex");
+    Method yytext = c.getMethod("yytext");
+
+    StringBuilder result = new StringBuilder();
+    int token;
+    while ((token = (Integer) yylex.invoke(lexer)) != -1) {
+      if (result.length() > 0) result.append(' ');
+      result.append(token+":"+yytext.invoke(lexer));
+    }
+    return result.toString();
+  }
+
+  private static ClassLoader getClassLoader() {
+    return ClassEmitterTest.class.getClassLoader();
+  }
+
+  public void testScanner() throws Exception {
+    GeneratedScanner scanner = generate(
+      "^[a-z]+       { return 9; }\n"+          // line 9
+      "\"if\"        { return 1; }\n"+
+      "[a-z]+        { return 2; }\n"+
+      "[0-9]+ / x    { return 3; }\n"+
+      "[a-z]+ / [0-9]+y { return 4; }\n"+
+      "[ \\n]+       { /* skip */ }\n"+
+      "\\\"          { yybegin(STRING); return 5; }\n"+
+      "<STRING> [^\\\"]+ { return -6; }\n"+
+      "<STRING> \\\" { yybegin(YYINITIAL); }\n"+
+      "[^]           { return 7; }\n", null);
+
+    assertTrue(scanner.getMessages(), scanner.isSuccess());
+    assertNull(scanner.getSource());
+    assertTrue(scanner.getDiagnostics().isEmpty());
+
+    assertEquals("9:ab 1:if 2:iffy 3:12 2:x 4:ab 7:1 7:2 2:y 5:\" -6:str in 9:cd",
+                 tokens(scanner, "ab if iffy 12x ab12y \"str in\"\ncd"));
+  }
+
+  public void testCompanion() throws Exception {
+    GeneratedScanner scanner = generate(
+      "[a-z]+ { return word(yytext()); }\n"+      // line 9
+      "[ ]+   { skip(); }\n"+
+      "[^]    { return 1; }\n", Actions.class.getName());
+
+    assertTrue(scanner.getMessages(), scanner.isSuccess());
+    assertEquals("109:ab 1:. 109:cd", tokens(scanner, "ab . cd"));
+  }
+
+  public void testErrors() {
+    GeneratedScanner scanner = generate("[a-z]+ { return word(yytext()); }\n", null);
+    assertFalse(scanner.isSuccess());
+    assertEquals(9, scanner.getDiagnostics().get(0).getLine());
+
+    // needs forward and backward pass
+    scanner = generate("a+ / a*b { return 1; }\n[^] { return 2; }\n", null);
+    assertFalse(scanner.isSuccess());
+  }
+
+  public void testIgnored() {
+    String spec = "%%\n%class Lexer\n%int\n%linear\n%profile\n%%\n[a-z]+ { return 1; }\n";
+    GeneratedScanner scanner = JFlex.generate(new StringReader(spec), options(null));
+    assertTrue(scanner.getMessages(), scanner.isSuccess());
+    assertTrue(scanner.getMessages(), 
+               scanner.getMessages().indexOf("ignoring: %linear, %profile") >= 0);
+  }
+
+  public void testFile() throws IOException {
+    File dir = TestFiles.createDir();
+    try {
+      File spec = TestFiles.write(new File(dir, "Words.flex"),
+                                  "%%\n%class Words\n%%\n[a-z]+ { return 1; }\n[^] { }\n");
+
+      GeneratorOptions options = options(null);
+      options.no_backup = true;
+      GeneratorContext context = TestFiles.context(options);
+      Main.generate(spec, context);
+
+      File classFile = new File(dir, "Words.class");
+      assertTrue(classFile.isFile());
+      assertFalse(new File(dir, "Words.java").exists());
+      assertEquals(context.getOutputFiles().get(0), classFile);
+    }
+    finally {
+      TestFiles.delete(dir);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * CombTableTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class CombTableTest extends TestCase {
+
+  /**
+   * Constructor for CombTableTest.
+   */
+  public CombTableTest() {
+    super("CombTable test");
+  }
+
+  private void assertSame(int [][] table, CombTable comb) {
+    for (int r = 0; r < table.length; r++)
+      for (int c = 0; c < table[r].length; c++)
+        assertEquals("row "+r+", column "+c, table[r][c], comb.get(r, c, -1));
+  }
+
+  public void testEmptyRows() {
+    int [][] table = { {-1, -1, -1}, {-1, 2, -1}, {-1, -1, -1} };
+    CombTable comb = new CombTable(table, -1);
+
+    assertSame(table, comb);
+    assertEquals(1, comb.size);
+  }
+
+  public void testDefaultRow() {
+    int [][] table = { {1, 2, 3, 4, 5, 6}, {1, 2, 3, 4, 5, -1} };
+    CombTable comb = new CombTable(table, -1);
+
+    assertSame(table, comb);
+    // second row only stores its difference to the first
+    assertEquals(7, comb.size);
+    assertEquals(comb.base[0], comb.def[1]);
+  }
+
+  public void testRandom() {
+    Random random = new Random(42);
+
+    for (int n = 0; n < 20; n++) {
+      int [][] table = new int [1+random.nextInt(40)][1+random.nextInt(30)];
+      for (int r = 0; r < table.length; r++)
+        for (int c = 0; c < table[r].length; c++)
+          table[r][c] = random.nextInt(4) == 0 ? random.nextInt(table.length) : -1;
+
+      CombTable comb = new CombTable(table, -1);
+      assertSame(table, comb);
+      assertTrue(comb.next.length <= table.length * table[0].length + table[0].length);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+
+import junit.framework.TestCase;
+
+/**
+ * DFACacheTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class DFACacheTest extends TestCase {
+
+  private File dir;
+  private File cache;
+
+  /**
+   * Constructor for DFACacheTest.
+   */
+  public DFACacheTest() {
+    super("DFA cache test");
+  }
+
+  protected void setUp() throws IOException {
+    dir = TestFiles.createDir();
+    cache = new File(dir, "cache");
+  }
+
+  protected void tearDown() {
+    TestFiles.delete(dir);
+  }
+
+  private File spec(String name, String options, String rules) throws IOException {
+    return TestFiles.spec(dir, name, options, rules);
+  }
+
+  private static GeneratorContext context(File cacheDir, ByteArrayOutputStream messages) {
+    GeneratorOptions options = new GeneratorOptions();
+    options.progress = false;
+    options.no_backup = true;
+    options.cache = cacheDir;
+    GeneratorContext context = new GeneratorContext(options);
+    context.setOutputStream(messages);
+    return context;
+  }
+
+  private String generate(File spec, File cacheDir, ByteArrayOutputStream messages) throws IOException {
+    return generate(spec, context(cacheDir, messages));
+  }
+
+  private String generate(File spec, GeneratorContext context) throws IOException {
+    Main.generate(spec, context);
+
+    // without the header, which contains the time of generation
+    String source = TestFiles.read(new File(dir, spec.getName().replace(".flex", ".java")));
+    return source.substring(source.indexOf("class "));
+  }
+
+  private static final String RULES =
+    "\"if\" | \"while\" { return 1; }\n"+
+    "[a-z]+ / [0-9] { return 2; }\n"+
+    "[a-z]+ { return 3; }\n"+
+    "[^] { return 4; }\n";
+
+  public void testHit() throws IOException {
+    File spec = spec("Cached", "", RULES);
+    String expected = generate(spec, null, new ByteArrayOutputStream());
+
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    assertEquals(expected, generate(spec, cache, first));
+    assertTrue(first.toString().indexOf("Reusing") < 0);
+    assertEquals(1, cache.list().length);
+
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    assertEquals(expected, generate(spec, cache, second));
+    assertTrue(second.toString().indexOf("Reusing") >= 0);
+  }
+
+  public void testCodeChanges() throws IOException {
+    generate(spec("Cached", "%pack", RULES), cache, new ByteArrayOutputStream());
+
+    // other action code, user code and generation method
+    File spec = spec("Cached", "%table\n%{\n  int x;\n%}", RULES.replace("return 3;", "return 5;"));
+    String expected = generate(spec, null, new ByteArrayOutputStream());
+
+    ByteArrayOutputStream messages = new ByteArrayOutputStream();
+    assertEquals(expected, generate(spec, cache, messages));
+    assertTrue(messages.toString().indexOf("Reusing") >= 0);
+    assertEquals(1, cache.list().length);
+  }
+
+  public void testRuleChanges() throws IOException {
+    generate(spec("Cached", "", RULES), cache, new ByteArrayOutputStream());
+
+    // equal actions are merged into one
+    File spec = spec("Cached", "", RULES.replace("return 1;", "return 3;"));
+    ByteArrayOutputStream messages = new ByteArrayOutputStream();
+    generate(spec, cache, messages);
+    assertTrue(messages.toString().indexOf("Reusing") < 0);
+
+    spec = spec("Cached", "", RULES.replace("[a-z]+ {", "[a-y]+ {"));
+    messages = new ByteArrayOutputStream();
+    generate(spec, cache, messages);
+    assertTrue(messages.toString().indexOf("Reusing") < 0);
+    assertEquals(3, cache.list().length);
+  }
+
+  public void testSameReport() throws IOException {
+    // the last rule can never be matched
+    File spec = spec("Cached", "", RULES+"\"if\" { return 5; }\n");
+    generate(spec, cache, new ByteArrayOutputStream());
+
+    GeneratorContext uncached = context(null, new ByteArrayOutputStream());
+    generate(spec, uncached);
+
+    ByteArrayOutputStream messages = new ByteArrayOutputStream();
+    GeneratorContext cached = context(cache, messages);
+    generate(spec, cached);
+    assertTrue(messages.toString().indexOf("Reusing") >= 0);
+
+    GeneratorStats stats = uncached.getStats();
+    assertEquals(stats.getDFAStates(), cached.getStats().getDFAStates());
+    assertEquals(stats.getMinimizedStates(), cached.getStats().getMinimizedStates());
+    assertTrue(messages.toString().indexOf(stats.getDFAStates()+" states before minimization, "+
+                                           stats.getMinimizedStates()+" states in minimized DFA") >= 0);
+
+    assertEquals(1, cached.getWarnings());
+    assertEquals(uncached.getDiagnostics().toString(), cached.getDiagnostics().toString());
+  }
+}
@@ -0,0 +1,109 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+
+import junit.framework.TestCase;
+
+/**
+ * GeneratorContextTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class GeneratorContextTest extends TestCase {
+
+  private File dir;
+
+  /**
+   * Constructor for GeneratorContextTest.
+   */
+  public GeneratorContextTest() {
+    super("GeneratorContext test");
+  }
+
+  protected void setUp() throws IOException {
+    dir = TestFiles.createDir();
+  }
+
+  protected void tearDown() {
+    TestFiles.delete(dir);
+  }
+
+  private File spec(String name, String options) throws IOException {
+    return TestFiles.spec(dir, name, options, "[a-z]+ { return 1; }\n[^] { return 2; }\n");
+  }
+
+  public void testParallel() throws Exception {
+    final File [] specs = new File [8];
+    final GeneratorContext [] contexts = new GeneratorContext [specs.length];
+    final Throwable [] failures = new Throwable [specs.length];
+
+    for (int i = 0; i < specs.length; i++) {
+      specs[i] = spec("Scanner"+i, i % 2 == 0 ? "%apiprivate" : "unused = x");
+      contexts[i] = TestFiles.context();
+    }
+
+    Thread [] threads = new Thread [specs.length];
+    for (int i = 0; i < specs.length; i++) {
+      final int n = i;
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            Main.generate(specs[n], contexts[n]);
+          }
+          catch (Throwable e) {
+            failures[n] = e;
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    for (int i = 0; i < specs.length; i++) threads[i].join();
+
+    for (int i = 0; i < specs.length; i++) {
+      assertNull(failures[i]);
+      assertEquals(0, contexts[i].getErrors());
+      assertEquals(i % 2 == 0 ? 0 : 1, contexts[i].getWarnings());
+
+      String source = TestFiles.read(new File(dir, "Scanner"+i+".java"));
+      assertEquals(i % 2 == 0, source.indexOf(" public int yylex()") < 0);
+    }
+  }
+
+  public void testApiPrivate() throws IOException {
+    Skeleton.readDefault();
+    Main.generate(spec("Private", "%apiprivate"), TestFiles.context());
+
+    // %apiprivate in one run does not affect the static skeleton
+    boolean isPublic = false;
+    for (int i = 0; i < Skeleton.line.length; i++)
+      isPublic |= Skeleton.line[i].indexOf(" public ") >= 0;
+    assertTrue(isPublic);
+  }
+
+  public void testErrors() throws IOException {
+    GeneratorContext context = TestFiles.context();
+    File file = TestFiles.write(new File(dir, "Broken.flex"), "%%\n%%\n[a- { }\n");
+
+    try {
+      Main.generate(file, context);
+      fail("generated a scanner for a broken specification");
+    }
+    catch (GeneratorException e) {
+      // expected
+    }
+
+    assertTrue(context.getErrors() > 0);
+    assertNull(GeneratorContext.bound());
+  }
+}
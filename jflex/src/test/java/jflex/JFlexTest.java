@@ -0,0 +1,144 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * JFlexTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class JFlexTest extends TestCase {
+
+  /**
+   * Constructor for JFlexTest.
+   */
+  public JFlexTest() {
+    super("JFlex in-memory API test");
+  }
+
+  public void testGenerate() {
+    String spec = TestFiles.spec("InMemory", "%tableresource", "[a-z]+ { return 1; }\n[^] { return 2; }\n");
+    GeneratedScanner scanner = JFlex.generate(new StringReader(spec), TestFiles.options());
+
+    assertTrue(scanner.getMessages(), scanner.isSuccess());
+    assertEquals("InMemory", scanner.getClassName());
+    assertTrue(scanner.getSource().indexOf("class InMemory") >= 0);
+    assertTrue(scanner.getResources().containsKey("InMemory.bin"));
+    assertTrue(scanner.getDiagnostics().isEmpty());
+
+    GeneratorStats stats = scanner.getStats();
+    assertTrue(stats.getNFAStates() > 0);
+    assertTrue(stats.getMinimizedStates() > 0);
+    assertTrue(stats.getMinimizedStates() <= stats.getDFAStates());
+
+    assertFalse(new File("InMemory.java").exists());
+    assertFalse(new File("InMemory.bin").exists());
+  }
+
+  public void testInclude() {
+    final Map<String, String> files = new HashMap<String, String>();
+    files.put("letters.inc", "letter = [a-z]\n");
+
+    IncludeResolver resolver = new IncludeResolver() {
+      public Reader open(String name) {
+        String content = files.get(name);
+        return content == null ? null : new StringReader(content);
+      }
+    };
+
+    String spec = TestFiles.spec("Included", "%include letters.inc", "{letter}+ { return 1; }\n[^] { return 2; }\n");
+    GeneratedScanner scanner = JFlex.generate("Included.flex", new StringReader(spec), TestFiles.options(), resolver);
+    assertTrue(scanner.getMessages(), scanner.isSuccess());
+
+    spec = TestFiles.spec("Missing", "%include digits.inc", "[^] { return 2; }\n");
+    scanner = JFlex.generate("Missing.flex", new StringReader(spec), TestFiles.options(), resolver);
+    assertFalse(scanner.isSuccess());
+    assertNull(scanner.getSource());
+  }
+
+  public void testDiagnostics() {
+    String spec = TestFiles.spec("Broken", "", "[a-z]+ { return 1; }\n[a-z] { return 2; }\n[^] { return 3; }\n");
+    GeneratedScanner scanner = JFlex.generate("Broken.flex", new StringReader(spec), TestFiles.options(), null);
+
+    // the second rule can never be matched
+    assertTrue(scanner.isSuccess());
+    assertEquals(1, scanner.getDiagnostics().size());
+    Diagnostic warning = scanner.getDiagnostics().get(0);
+    assertFalse(warning.isError());
+    assertEquals(new File("Broken.flex"), warning.getFile());
+    assertEquals(7, warning.getLine());
+
+    spec = TestFiles.spec("Broken", "", "[a- { return 1; }\n");
+    scanner = JFlex.generate("Broken.flex", new StringReader(spec), TestFiles.options(), null);
+    assertFalse(scanner.isSuccess());
+    assertTrue(scanner.getDiagnostics().get(0).isError());
+  }
+
+  public void testBudget() {
+    String spec = TestFiles.spec("Exploding", "%xstate STRING", 
+                                 "[ab]* a [ab]{12} { return 1; }\n"+   // line 6
+                                 "<STRING> [^]     { return 2; }\n"+
+                                 "[^]              { return 3; }\n");
+    GeneratorOptions options = TestFiles.options();
+    options.maxStates = 500;
+    GeneratedScanner scanner = JFlex.generate("Exploding.flex", new StringReader(spec), options, null);
+
+    assertFalse(scanner.isSuccess());
+    assertNull(scanner.getSource());
+
+    List<Diagnostic> diagnostics = scanner.getDiagnostics();
+    assertTrue(diagnostics.get(0).isError());
+    assertTrue(diagnostics.get(0).getMessage().indexOf("--maxstates") >= 0);
+
+    // the rule, its bounded repeat and the lexical state
+    assertEquals(6, diagnostics.get(1).getLine());
+    assertEquals(0, diagnostics.get(1).getColumn());
+    assertEquals(6, diagnostics.get(2).getLine());
+    assertTrue(diagnostics.get(2).getColumn() > 0);
+    assertTrue(diagnostics.get(2).getMessage().indexOf("repeat") >= 0);
+    assertTrue(diagnostics.get(3).getMessage().indexOf("YYINITIAL") >= 0);
+    assertEquals(4, diagnostics.size());
+
+    options.maxStates = 0;
+    scanner = JFlex.generate("Exploding.flex", new StringReader(spec), options, null);
+    assertTrue(scanner.getMessages(), scanner.isSuccess());
+  }
+
+  public void testConcurrent() throws InterruptedException {
+    final GeneratorOptions options = TestFiles.options();
+    final GeneratedScanner [] scanners = new GeneratedScanner [8];
+    Thread [] threads = new Thread [scanners.length];
+
+    for (int i = 0; i < threads.length; i++) {
+      final int n = i;
+      threads[i] = new Thread() {
+        public void run() {
+          String spec = TestFiles.spec("Scanner"+n, n % 2 == 0 ? "%apiprivate" : "",
+                                       "[a-z]{1,"+(n+1)+"} { return 1; }\n[^] { return 2; }\n");
+          scanners[n] = JFlex.generate(new StringReader(spec), options);
+        }
+      };
+      threads[i].start();
+    }
+
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+      assertTrue(scanners[i].isSuccess());
+      assertEquals("Scanner"+i, scanners[i].getClassName());
+      assertEquals(i % 2 == 0, scanners[i].getSource().indexOf(" public int yylex()") < 0);
+    }
+  }
+}
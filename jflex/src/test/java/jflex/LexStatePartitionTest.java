@@ -0,0 +1,106 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import junit.framework.TestCase;
+
+/**
+ * LexStatePartitionTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class LexStatePartitionTest extends TestCase {
+
+  /**
+   * Constructor for LexStatePartitionTest.
+   */
+  public LexStatePartitionTest() {
+    super("LexStatePartition test");
+  }
+
+  /**
+   * Lexical state 0: 0 -a-> 1, 0 -b-> 1, 0 -c-> 4
+   * Lexical state 1: 2 -a-> 3, 2 -c-> 4, 3 -a-> 3
+   * Lexical state 2: 5 (no transitions)
+   */
+  private DFA dfa() {
+    DFA dfa = new DFA(6, 3, 3);
+    dfa.setEntryState(0, 0);
+    dfa.setEntryState(1, 0);
+    dfa.setEntryState(2, 2);
+    dfa.setEntryState(3, 2);
+    dfa.setEntryState(4, 5);
+    dfa.setEntryState(5, 5);
+    dfa.addTransition(0, (char) 0, 1);
+    dfa.addTransition(0, (char) 1, 1);
+    dfa.addTransition(0, (char) 2, 4);
+    dfa.addTransition(2, (char) 0, 3);
+    dfa.addTransition(2, (char) 2, 4);
+    dfa.addTransition(3, (char) 0, 3);
+    dfa.setFinal(1, true);
+    dfa.setFinal(3, true);
+    dfa.setFinal(4, true);
+    return dfa;
+  }
+
+  public void testPartition() {
+    LexStatePartition p = new LexStatePartition(dfa());
+
+    assertEquals(2, p.numParts);
+    assertEquals(0, p.lexStatePart[0]);
+    assertEquals(1, p.lexStatePart[1]);
+    assertEquals(0, p.lexStatePart[2]);
+
+    assertEquals(0, p.statePart[0]);
+    assertEquals(-1, p.statePart[1]);
+    assertEquals(1, p.statePart[2]);
+    assertEquals(1, p.statePart[3]);
+    assertEquals(-1, p.statePart[4]);
+    assertEquals(-1, p.statePart[5]);
+  }
+
+  public void testColumns() {
+    LexStatePartition p = new LexStatePartition(dfa());
+
+    // a and b behave the same in lexical state 0, but not in 1
+    assertEquals(2, p.numCols[0]);
+    assertEquals(p.colMap[0][0], p.colMap[0][1]);
+    assertEquals(3, p.numCols[1]);
+    assertEquals(3, p.maxCols);
+
+    int [] row = p.row(0);
+    assertEquals(2, row.length);
+    assertEquals(1, row[p.colMap[0][1]]);
+    assertEquals(4, row[p.colMap[0][2]]);
+
+    row = p.row(3);
+    assertEquals(3, row.length);
+    assertEquals(3, row[p.colMap[1][0]]);
+    assertEquals(DFA.NO_TARGET, row[p.colMap[1][1]]);
+
+    row = p.row(4);
+    assertEquals(3, row.length);
+    for (int i = 0; i < row.length; i++)
+      assertEquals(DFA.NO_TARGET, row[i]);
+  }
+
+  public void testSharedState() {
+    DFA dfa = dfa();
+    // lexical state 2 now reaches state 3, which has transitions
+    dfa.addTransition(5, (char) 1, 3);
+
+    LexStatePartition p = new LexStatePartition(dfa);
+
+    assertEquals(2, p.numParts);
+    assertEquals(1, p.lexStatePart[2]);
+    assertEquals(1, p.statePart[5]);
+  }
+}
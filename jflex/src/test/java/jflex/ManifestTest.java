@@ -0,0 +1,116 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+
+import junit.framework.TestCase;
+
+/**
+ * ManifestTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class ManifestTest extends TestCase {
+
+  private File dir;
+  private File spec;
+  private File include;
+  private File output;
+
+  /**
+   * Constructor for ManifestTest.
+   */
+  public ManifestTest() {
+    super("Manifest test");
+  }
+
+  protected void setUp() throws IOException {
+    dir = TestFiles.createDir();
+    include = TestFiles.write(new File(dir, "rules.inc"), "word = [a-z]+\n");
+    spec = TestFiles.spec(dir, "Words", "%include "+include.getAbsolutePath(),
+                          "{word} { return 1; }\n[^] { return 2; }\n");
+    output = new File(dir, "Words.java");
+  }
+
+  protected void tearDown() {
+    TestFiles.delete(dir);
+  }
+
+  private static GeneratorContext context() {
+    GeneratorOptions options = TestFiles.options();
+    options.no_backup = true;
+    options.keep_unchanged = true;
+    return TestFiles.context(options);
+  }
+
+  private Manifest generate() throws IOException {
+    GeneratorContext context = context();
+    Manifest manifest = new Manifest(Manifest.fileFor(output), spec, context);
+    Main.generate(spec, context);
+    manifest.write();
+
+    assertTrue(context.getInputFiles().contains(include.getAbsoluteFile()));
+    assertTrue(context.getOutputFiles().contains(output.getAbsoluteFile()));
+    return manifest;
+  }
+
+  private boolean isUpToDate(GeneratorContext context) {
+    return new Manifest(Manifest.fileFor(output), spec, context).isUpToDate();
+  }
+
+  public void testUpToDate() throws IOException {
+    assertFalse(isUpToDate(context()));
+    generate();
+    assertTrue(isUpToDate(context()));
+
+    GeneratorContext table = context();
+    table.options.gen_method = Options.TABLE;
+    assertFalse(isUpToDate(table));
+  }
+
+  public void testOptions() throws IOException {
+    generate();
+
+    GeneratorContext classfile = context();
+    classfile.options.classfile = true;
+    assertFalse(isUpToDate(classfile));
+
+    GeneratorContext companion = context();
+    companion.options.companion = "Actions";
+    assertFalse(isUpToDate(companion));
+
+    GeneratorContext lazy = context();
+    lazy.options.lazy = true;
+    assertFalse(isUpToDate(lazy));
+  }
+
+  public void testInclude() throws IOException {
+    generate();
+    TestFiles.write(include, "word = [a-zA-Z]+\n");
+    assertFalse(isUpToDate(context()));
+  }
+
+  public void testOutputChanged() throws IOException {
+    generate();
+    TestFiles.write(output, "// edited\n");
+    assertFalse(isUpToDate(context()));
+  }
+
+  public void testKeepUnchanged() throws IOException {
+    generate();
+    long old = (output.lastModified() / 1000 - 10) * 1000;
+    output.setLastModified(old);
+
+    generate();
+    assertEquals(old, output.lastModified());
+  }
+}
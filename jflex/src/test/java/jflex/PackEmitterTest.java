@@ -64,4 +64,24 @@ public class PackEmitterTest extends TestCase {
       "    \"\\40\\41\\42\\43",
       p.toString());
   }
+
+  public void testTypeFor() {
+    assertEquals("byte", PackEmitter.typeFor(-1, 127));
+    assertEquals("short", PackEmitter.typeFor(-1, 128));
+    assertEquals("short", PackEmitter.typeFor(0, 0x7FFF));
+    assertEquals("char", PackEmitter.typeFor(0, 0x8000));
+    assertEquals("int", PackEmitter.typeFor(-1, 0x8000));
+    assertEquals("int", PackEmitter.typeFor(0, 0x10000));
+  }
+
+  public void testInitTyped() {
+    p.setType("short");
+    p.emitInit();
+    assertEquals(
+      "  private static final short [] ZZ_BLA = zzUnpackBla();" + Out.NL +
+      Out.NL +
+      "  private static final String ZZ_BLA_PACKED_0 =" + Out.NL +
+      "    \"", 
+      p.toString());
+  }
 }
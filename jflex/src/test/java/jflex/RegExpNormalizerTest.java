@@ -0,0 +1,118 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the normalization of regular expressions
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class RegExpNormalizerTest extends TestCase implements sym {
+
+  private RegExps regExps;
+  private Macros macros;
+  private RegExpNormalizer normalizer;
+
+  protected void setUp() {
+    regExps = new RegExps();
+    macros = new Macros();
+    normalizer = new RegExpNormalizer(regExps, macros);
+  }
+
+  private static RegExp ch(char c) {
+    return new RegExp1(CHAR, c);
+  }
+
+  private static RegExp ccl(char start, char end) {
+    List<Interval> list = new ArrayList<Interval>();
+    list.add(new Interval(start, end));
+    return new RegExp1(CCLASS, list);
+  }
+
+  private static RegExp bar(RegExp r1, RegExp r2) {
+    return new RegExp2(BAR, r1, r2);
+  }
+
+  private static RegExp unary(int type, RegExp content) {
+    return new RegExp1(type, content);
+  }
+
+  private void assertClass(String intervals, RegExp r) {
+    assertEquals(CCLASS, r.type);
+    assertEquals(intervals, ((RegExp1) r).content.toString());
+  }
+
+  public void testCharAlternatives() {
+    RegExp r = normalizer.normalize(bar(ch('a'), bar(ccl('b','c'), ch('a'))));
+    assertClass("[['a'-'c']]", r);
+
+    // other alternatives stay in place, duplicates are removed
+    RegExp s = new RegExp1(STRING, "xy");
+    r = normalizer.normalize(bar(bar(s, ch('a')), bar(new RegExp1(STRING, "xy"), ch('z'))));
+    assertEquals(BAR, r.type);
+    assertSame(regExps.intern(s), ((RegExp2) r).r1);
+    assertClass("[['a'], ['z']]", ((RegExp2) r).r2);
+
+    // a single char stays a char
+    r = normalizer.normalize(bar(ch('a'), s));
+    assertSame(regExps.intern(ch('a')), ((RegExp2) r).r1);
+  }
+
+  public void testStarPlusQuestion() {
+    RegExp a = ch('a');
+    RegExp star = regExps.intern(unary(STAR, ch('a')));
+
+    assertSame(star, normalizer.normalize(unary(STAR, unary(STAR, ch('a')))));
+    assertSame(star, normalizer.normalize(unary(PLUS, unary(QUESTION, ch('a')))));
+    assertSame(star, normalizer.normalize(unary(QUESTION, unary(PLUS, ch('a')))));
+    assertSame(star, normalizer.normalize(unary(STAR, unary(PLUS, unary(QUESTION, a)))));
+    assertSame(star, normalizer.normalize(new RegExp2(CONCAT, unary(STAR, ch('a')), unary(STAR, ch('a')))));
+
+    RegExp plus = regExps.intern(unary(PLUS, ch('a')));
+    assertSame(plus, normalizer.normalize(plus));
+    assertSame(plus, normalizer.normalize(unary(PLUS, unary(PLUS, ch('a')))));
+
+    // (a*|b)+ = (a|b)* = [ab]*
+    RegExp r = normalizer.normalize(unary(PLUS, bar(unary(STAR, ch('a')), ch('b'))));
+    assertEquals(STAR, r.type);
+    assertClass("[['a'-'b']]", (RegExp) ((RegExp1) r).content);
+  }
+
+  public void testLiterals() {
+    RegExp r = normalizer.normalize(new RegExp2(CONCAT, ch('i'), new RegExp1(STRING, "f")));
+    assertEquals(STRING, r.type);
+    assertEquals("if", ((RegExp1) r).content);
+
+    // a{3}
+    RegExp a = ch('a');
+    r = new RegExp2(CONCAT, new RegExp2(CONCAT, a, a), a);
+    regExps.addConstruct(r, REPEAT, 1, 2);
+    RegExp n = normalizer.normalize(r);
+    assertEquals(STRING, n.type);
+    assertEquals("aaa", ((RegExp1) n).content);
+    assertEquals(REPEAT, regExps.getConstruct(n)[0]);
+  }
+
+  public void testMacrosAndGroups() {
+    macros.insert("m", bar(ch('a'), ch('b')));
+    RegExp r = normalizer.normalize(unary(STAR, new RegExp1(MACROUSE, "m")));
+    assertEquals(STAR, r.type);
+    assertClass("[['a'-'b']]", (RegExp) ((RegExp1) r).content);
+
+    RegExp g = unary(STAR, unary(STAR, new RegExpGroup("x", bar(ch('a'), ch('b')))));
+    assertSame(g, normalizer.normalize(g));
+  }
+}
@@ -53,4 +53,30 @@ public class RegExpTests extends TestCase implements sym {
     assertTrue(!s.isCharClass(m));
     assertTrue(u.isCharClass(m));
   }
+
+  public void testIntern() {
+    RegExps regExps = new RegExps();
+    RegExp a1 = new RegExp2(CONCAT, new RegExp1(CHAR, 'a'), new RegExp1(STAR, new RegExp1(CHAR, 'b')));
+    RegExp a2 = new RegExp2(CONCAT, new RegExp1(CHAR, 'a'), new RegExp1(STAR, new RegExp1(CHAR, 'b')));
+    RegExp c = new RegExp2(BAR, new RegExp1(CHAR, 'a'), new RegExp1(STAR, new RegExp1(CHAR, 'b')));
+    RegExp g = new RegExpGroup("x", new RegExp1(CHAR, 'a'));
+
+    assertSame(a1, regExps.intern(a1));
+    assertSame(a1, regExps.intern(a2));
+    assertSame(a1, regExps.intern(a1));
+
+    // subexpressions are shared, different types are not
+    RegExp2 bar = (RegExp2) regExps.intern(c);
+    assertSame(c, bar);
+    assertSame(((RegExp2) a1).r1, bar.r1);
+    assertSame(((RegExp2) a1).r2, bar.r2);
+    assertNotSame(regExps.intern(g), ((RegExp2) a1).r1);
+    assertSame(((RegExpGroup) g).content, ((RegExp2) a1).r1);
+    assertNotSame(g, regExps.intern(new RegExpGroup("y", new RegExp1(CHAR, 'a'))));
+    assertNull(regExps.intern(null));
+
+    // shared nodes count once per use
+    Macros m = new Macros();
+    assertEquals(4+4, new RegExp2(CONCAT, bar.r2, bar.r2).size(m));
+  }
 }
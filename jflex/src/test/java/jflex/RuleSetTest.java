@@ -0,0 +1,156 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import junit.framework.TestCase;
+
+/**
+ * RuleSetTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class RuleSetTest extends TestCase {
+
+  /**
+   * Constructor for RuleSetTest.
+   */
+  public RuleSetTest() {
+    super("Runtime lexer test");
+  }
+
+  /**
+   * @return rule id, start and end of all tokens, separated by spaces
+   */
+  private static String tokens(CompiledLexer lexer, String input) {
+    StringBuilder result = new StringBuilder();
+    LexerMatcher m = lexer.matcher(input);
+    while (m.next()) {
+      if (result.length() > 0) result.append(' ');
+      result.append(m.rule()+":"+m.text());
+    }
+    return result.toString();
+  }
+
+  public void testLongestMatch() {
+    CompiledLexer lexer = new RuleSet()
+      .addMacro("digit", "[0-9]")
+      .addRule(1, "if")
+      .addRule(2, "[a-z]+")
+      .addRule(3, "{digit}+(\\.{digit}+)?")
+      .addRule(4, "[ ]+")
+      .addRule(5, "[^]")
+      .compile();
+
+    assertEquals("1:if 4:  2:iffy 4:  3:3.14 5:. 3:3 5:.", tokens(lexer, "if iffy 3.14.3."));
+    assertEquals("", tokens(lexer, ""));
+  }
+
+  public void testStates() {
+    CompiledLexer lexer = new RuleSet()
+      .addExclusiveState("STRING")
+      .addRule(1, "\\\"")
+      .addRule(2, "[a-z]+")
+      .addRule(3, "\\\"", "STRING")
+      .addRule(4, "[^\\\"]+", "STRING")
+      .compile();
+
+    LexerMatcher m = lexer.matcher("ab\"cd ef\"gh");
+    StringBuilder result = new StringBuilder();
+    while (m.next()) {
+      result.append(m.rule()+":"+m.text()+" ");
+      if (m.rule() == 1) m.setState("STRING");
+      if (m.rule() == 3) m.setState("YYINITIAL");
+    }
+    assertEquals("2:ab 1:\" 4:cd ef 3:\" 2:gh ", result.toString());
+    assertTrue(lexer.getStates().contains("STRING"));
+  }
+
+  public void testLookahead() {
+    CompiledLexer lexer = new RuleSet()
+      .addRule(1, "^[a-z]+")
+      .addRule(2, "[a-z]+ / [0-9]")
+      .addRule(3, "[a-z]+ / [0-9]+x")
+      .addRule(4, "[a-z]+$")
+      .addRule(5, "[a-z]+")
+      .addRule(6, "[^]")
+      .compile();
+
+    assertEquals("1:ab 6:  2:cd 6:1 6:  3:ef 6:1 6:2 5:x 6:  4:gh 6:\n 1:ij",
+                 tokens(lexer, "ab cd1 ef12x gh\nij"));
+
+    // split position found by forward and backward pass
+    lexer = new RuleSet().addRule(1, "a+ / a*b").addRule(2, "[^]").compile();
+    assertEquals("1:aaa 2:b", tokens(lexer, "aaab"));
+  }
+
+  public void testRuleIds() {
+    CompiledLexer lexer = new RuleSet()
+      .setCaseless(true)
+      .addState("OTHER")
+      .addMacro("word", "[a-z]+")
+      .addRule(-3, "\"{ return 9; }\"")
+      .addRule(42, "{word}")
+      .addRule(42, "[0-9]+")
+      .addRule(0, "[^]")
+      .compile();
+
+    assertEquals("-3:{ RETURN 9; } 0:  42:ab 42:12", tokens(lexer, "{ RETURN 9; } ab12"));
+  }
+
+  public void testPushback() {
+    CompiledLexer lexer = new RuleSet().addRule(1, "[a-z]+").compile();
+
+    LexerMatcher m = lexer.matcher("abc");
+    assertTrue(m.next());
+    m.pushback(2);
+    assertEquals("a", m.text());
+    assertTrue(m.next());
+    assertEquals("bc", m.text());
+    assertFalse(m.next());
+    assertEquals(-1, m.rule());
+  }
+
+  public void testNoMatch() {
+    LexerMatcher m = new RuleSet().addRule(1, "a").compile().matcher("ab");
+    assertTrue(m.next());
+    try {
+      m.next();
+      fail("b must not match");
+    }
+    catch (IllegalStateException e) {
+      assertEquals(-1, m.rule());
+    }
+  }
+
+  public void testCache() {
+    CompiledLexer lexer = new RuleSet().setCaseless(true).addRule(7, "begin").compile();
+    assertSame(lexer, new RuleSet().setCaseless(true).addRule(7, "begin").compile());
+    assertEquals("7:BeGiN", tokens(lexer, "BeGiN"));
+  }
+
+  public void testErrors() {
+    try {
+      new RuleSet().addRule(1, "[a-").compile();
+      fail("invalid regular expression");
+    }
+    catch (RuleSetException e) {
+      assertTrue(e.getDiagnostics().get(0).isError());
+    }
+
+    try {
+      new RuleSet().addRule(1, "{undefined}").compile();
+      fail("undefined macro");
+    }
+    catch (RuleSetException e) {
+      assertFalse(e.getDiagnostics().isEmpty());
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+import java.net.*;
+
+import junit.framework.TestCase;
+
+/**
+ * ServerTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class ServerTest extends TestCase {
+
+  private File dir;
+  private Server server;
+  private Thread thread;
+  private IOException failure;
+  private String home;
+
+  /**
+   * Constructor for ServerTest.
+   */
+  public ServerTest() {
+    super("Server test");
+  }
+
+  protected void setUp() throws IOException {
+    dir = TestFiles.createDir();
+
+    // keep the token file out of the real home directory
+    home = System.getProperty("user.home");
+    System.setProperty("user.home", dir.getPath());
+
+    server = new Server(0, 1, 4);
+    server.setTimeout(500);
+    server.start();
+    thread = new Thread() {
+      public void run() {
+        try {
+          server.run();
+        }
+        catch (IOException e) {
+          failure = e;
+        }
+      }
+    };
+    thread.start();
+  }
+
+  protected void tearDown() throws InterruptedException {
+    thread.join();
+    assertNull(failure);
+    assertFalse(Client.tokenFile(server.getPort()).exists());
+    System.setProperty("user.home", home);
+
+    TestFiles.delete(dir);
+  }
+
+  private void spec(String name, String rules) throws IOException {
+    TestFiles.spec(dir, name, "%unicode\n%caseless", rules);
+  }
+
+  public void testGenerate() throws Exception {
+    final int n = 6;
+    for (int i = 0; i < n; i++)
+      spec("Scanner"+i, "\\p{L}+ { return "+i+"; }\n[^] { return -1; }\n");
+
+    final int [] status = new int [n];
+    final ByteArrayOutputStream [] messages = new ByteArrayOutputStream [n];
+    Thread [] clients = new Thread [n];
+
+    for (int i = 0; i < n; i++) {
+      final int k = i;
+      messages[k] = new ByteArrayOutputStream();
+      clients[k] = new Thread() {
+        public void run() {
+          try {
+            String [] argv = { "-q", "--nobak", "Scanner"+k+".flex" };
+            status[k] = Client.run(server.getPort(), dir, argv, messages[k]);
+          }
+          catch (IOException e) {
+            status[k] = -1;
+          }
+        }
+      };
+      clients[k].start();
+    }
+
+    for (int i = 0; i < n; i++) {
+      clients[i].join();
+      assertEquals(messages[i].toString(), 0, status[i]);
+      assertTrue(new File(dir, "Scanner"+i+".java").isFile());
+    }
+  }
+
+  public void testErrors() throws IOException {
+    spec("Broken", "[a- { }\n");
+
+    ByteArrayOutputStream messages = new ByteArrayOutputStream();
+    String [] argv = { "--nobak", "Broken.flex" };
+    assertEquals(1, Client.run(server.getPort(), dir, argv, messages));
+    assertTrue(messages.toString().indexOf("Broken.flex") >= 0);
+    assertFalse(new File(dir, "Broken.java").exists());
+  }
+
+  public void testToken() throws IOException {
+    spec("Scanner", "[a-z]+ { return 1; }\n");
+    assertTrue(Client.tokenFile(server.getPort()).isFile());
+
+    Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), server.getPort());
+    try {
+      // in one write, the server may close the socket after the token
+      ByteArrayOutputStream request = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(request);
+      out.writeUTF("guess");
+      out.writeUTF(dir.getAbsolutePath());
+      out.writeInt(2);
+      out.writeUTF("--nobak");
+      out.writeUTF("Scanner.flex");
+      socket.getOutputStream().write(request.toByteArray());
+
+      // dropped without an answer, reset if the rest was not read
+      int answer;
+      try {
+        answer = socket.getInputStream().read();
+      }
+      catch (SocketException e) {
+        answer = -1;
+      }
+      assertEquals(-1, answer);
+    }
+    finally {
+      socket.close();
+    }
+    assertFalse(new File(dir, "Scanner.java").exists());
+  }
+
+  public void testTimeout() throws IOException {
+    Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), server.getPort());
+    try {
+      socket.setSoTimeout(10000);
+
+      // nothing sent, dropped after the request timeout
+      assertEquals(-1, socket.getInputStream().read());
+    }
+    finally {
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import junit.framework.TestCase;
+
+/**
+ * StateProfileTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class StateProfileTest extends TestCase {
+
+  /**
+   * Constructor for StateProfileTest.
+   */
+  public StateProfileTest() {
+    super("StateProfile test");
+  }
+
+  /**
+   * 0 -a-> 1, 0 -b-> 2, 2 -b-> 3, 3 -b-> 3, input classes 2 and 3
+   * behave the same.
+   */
+  private DFA dfa() {
+    DFA dfa = new DFA(2, 4, 1);
+    dfa.setEntryState(0, 0);
+    dfa.setEntryState(1, 0);
+    dfa.addTransition(0, (char) 0, 1);
+    dfa.addTransition(0, (char) 1, 2);
+    dfa.addTransition(2, (char) 1, 3);
+    dfa.addTransition(3, (char) 1, 3);
+    dfa.addTransition(3, (char) 2, 3);
+    dfa.addTransition(3, (char) 3, 3);
+    dfa.setFinal(1, true);
+    dfa.setFinal(3, true);
+    return dfa;
+  }
+
+  public void testColumnMap() {
+    int [] colMap = dfa().columnMap();
+    assertEquals(4, colMap.length);
+    assertEquals(0, colMap[0]);
+    assertEquals(1, colMap[1]);
+    assertEquals(2, colMap[2]);
+    assertEquals(2, colMap[3]);
+  }
+
+  public void testOrder() {
+    DFA dfa = dfa();
+    StateProfile profile = new StateProfile(dfa);
+
+    profile.counts[3][2] = 100;
+    profile.counts[0][1] = 10;
+    profile.counts[2][1] = 5;
+
+    int [] newNumber = profile.order();
+
+    // hottest state first, then the chain starting at the next hottest
+    assertEquals(0, newNumber[3]);
+    assertEquals(1, newNumber[0]);
+    assertEquals(2, newNumber[2]);
+    assertEquals(3, newNumber[1]);
+  }
+
+  public void testRenumber() {
+    DFA dfa = dfa();
+    int signature = dfa.signature();
+    int [] newNumber = { 1, 3, 2, 0 };
+
+    dfa.renumber(newNumber);
+
+    assertEquals(1, dfa.entryState[0]);
+    assertEquals(3, dfa.table[1][0]);
+    assertEquals(2, dfa.table[1][1]);
+    assertEquals(0, dfa.table[2][1]);
+    assertEquals(0, dfa.table[0][3]);
+    assertEquals(DFA.NO_TARGET, dfa.table[3][0]);
+    assertTrue(dfa.isFinal[3]);
+    assertTrue(dfa.isFinal[0]);
+    assertFalse(dfa.isFinal[1]);
+    assertTrue(signature != dfa.signature());
+  }
+}
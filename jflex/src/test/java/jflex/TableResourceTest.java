@@ -0,0 +1,72 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * TableResourceTest
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+public class TableResourceTest extends TestCase {
+
+  /**
+   * Constructor for TableResourceTest.
+   */
+  public TableResourceTest() {
+    super("TableResource test");
+  }
+
+  private TableResource resource() {
+    TableResource resource = new TableResource();
+    int a = resource.newTable();
+    int b = resource.newTable();
+    resource.append(a, 'x');
+    resource.append(b, '\uffff');
+    resource.append(a, '\u0000');
+    resource.append(b, '\u1234');
+    return resource;
+  }
+
+  public void testRoundTrip() throws IOException {
+    TableResource resource = resource();
+    byte [] bytes = resource.toBytes();
+
+    assertEquals(4+2+4+(4+4)+(4+4), bytes.length);
+
+    TableResource read = TableResource.read(new ByteArrayInputStream(bytes));
+    assertEquals(2, read.size());
+    assertEquals("x\u0000", read.get(0));
+    assertEquals("\uffff\u1234", read.get(1));
+    assertEquals(resource.checksum(), read.checksum());
+  }
+
+  public void testChecksum() {
+    TableResource resource = resource();
+    long checksum = resource.checksum();
+    resource.append(0, 'y');
+    assertTrue(checksum != resource.checksum());
+  }
+
+  public void testNoResource() {
+    try {
+      TableResource.read(new ByteArrayInputStream(new byte [] { 1, 2, 3, 4, 0, 1 }));
+      fail("accepted data without magic number");
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+}
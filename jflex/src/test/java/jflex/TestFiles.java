@@ -0,0 +1,119 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ * JFlex 1.5                                                               *
+ * Copyright (C) 1998-2010  Gerwin Klein <lsf@jflex.de>                    *
+ * All rights reserved.                                                    *
+ *                                                                         *
+ * License: BSD                                                            *
+ *                                                                         *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package jflex;
+
+import java.io.*;
+
+/**
+ * Temporary directories, specifications and quiet generator contexts
+ * for the tests that run the generator.
+ *
+ * @author Gerwin Klein
+ * @version $Revision$, $Date$
+ */
+final class TestFiles {
+
+  private TestFiles() {
+  }
+
+  /**
+   * Creates a new empty directory for temporary files.
+   */
+  static File createDir() throws IOException {
+    File dir = File.createTempFile("jflex", "");
+    dir.delete();
+    dir.mkdir();
+    return dir;
+  }
+
+  /**
+   * Deletes a file, or a directory with all its contents.
+   */
+  static void delete(File file) {
+    File [] files = file.listFiles();
+    if (files != null)
+      for (int i = 0; i < files.length; i++) delete(files[i]);
+    file.delete();
+  }
+
+  /**
+   * Returns a specification of a scanner class with <code>%int</code>
+   * return type.
+   *
+   * @param name     the name of the scanner class
+   * @param options  further options and declarations
+   * @param rules    the lexical rules
+   */
+  static String spec(String name, String options, String rules) {
+    return "%%\n%class "+name+"\n%int\n"+options+"\n%%\n"+rules;
+  }
+
+  /**
+   * Writes a specification (see {@link #spec(String,String,String)})
+   * to <code>name.flex</code> in a directory.
+   *
+   * @return the specification file
+   */
+  static File spec(File dir, String name, String options, String rules) throws IOException {
+    return write(new File(dir, name+".flex"), spec(name, options, rules));
+  }
+
+  /**
+   * Writes a text to a file.
+   *
+   * @return the file
+   */
+  static File write(File file, String text) throws IOException {
+    Writer w = new FileWriter(file);
+    w.write(text);
+    w.close();
+    return file;
+  }
+
+  /**
+   * Returns the contents of a text file.
+   */
+  static String read(File file) throws IOException {
+    StringBuilder result = new StringBuilder();
+    Reader r = new FileReader(file);
+    char [] buf = new char [4096];
+    int n;
+    while ((n = r.read(buf)) > 0) result.append(buf, 0, n);
+    r.close();
+    return result.toString();
+  }
+
+  /**
+   * Returns options without verbose and progress output.
+   */
+  static GeneratorOptions options() {
+    GeneratorOptions options = new GeneratorOptions();
+    options.verbose = false;
+    options.progress = false;
+    return options;
+  }
+
+  /**
+   * Returns a context for a run with the given options that keeps its
+   * messages out of the test output.
+   */
+  static GeneratorContext context(GeneratorOptions options) {
+    GeneratorContext context = new GeneratorContext(options);
+    context.setOutputStream(new ByteArrayOutputStream());
+    return context;
+  }
+
+  /**
+   * Returns a quiet context for a run with {@link #options()}.
+   */
+  static GeneratorContext context() {
+    return context(options());
+  }
+}
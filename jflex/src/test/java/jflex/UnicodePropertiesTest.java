@@ -371,4 +371,52 @@ public class UnicodePropertiesTest extends TestCase {
       assertTrue("Version '6.0' not supported: " + e, false);
     }
   }
+
+  public void testSharedVersionData() {
+    try {
+      UnicodeProperties properties_1 = new UnicodeProperties("6");
+      UnicodeProperties properties_2 = new UnicodeProperties("6.0.0");
+      IntCharSet set_1 = properties_1.getIntCharSet("Lu");
+      assertSame("Instances of the same version should share their sets",
+                 set_1, properties_2.getIntCharSet("General Category : Uppercase Letter"));
+      assertSame("Instances of the same version should share their caseless"
+                 + " matches", properties_1.getCaselessMatches('i'),
+                 properties_2.getCaselessMatches('I'));
+      assertEquals(properties_1.getPropertyValues(),
+                   properties_2.getPropertyValues());
+      assertTrue("\\p{L} should contain 'A' (\\p{Lu})",
+                 properties_2.getIntCharSet("L").contains('A'));
+    } catch (UnicodeProperties.UnsupportedUnicodeVersionException e) {
+      assertTrue("Version '6.0' not supported: " + e, false);
+    }
+  }
+
+  public void testCaselessIntervals() {
+    try {
+      UnicodeProperties properties = new UnicodeProperties("6.0");
+      IntCharSet set = new IntCharSet(new Interval('a', 'z'));
+      IntCharSet caseless = set.getCaseless(properties);
+      assertTrue("caseless [a-z] should contain 'A'-'Z'",
+                 caseless.and(new IntCharSet(new Interval('A', 'Z')))
+                   .equals(new IntCharSet(new Interval('A', 'Z'))));
+      assertTrue("caseless [a-z] should contain the Kelvin sign",
+                 caseless.contains('\u212A'));
+      assertTrue("caseless [a-z] should contain the long s",
+                 caseless.contains('\u017F'));
+      assertFalse("caseless [a-z] should not contain '0'",
+                  caseless.contains('0'));
+
+      IntCharSet all = new IntCharSet(new Interval('\u0000', '\uFFFF'));
+      assertEquals(all, all.getCaseless(properties));
+
+      for (char c = 0x100; c < 0x180; c++) {
+        IntCharSet expected = new IntCharSet(c);
+        IntCharSet matches = properties.getCaselessMatches(c);
+        if (null != matches) expected.add(matches);
+        assertEquals(expected, new IntCharSet(c).getCaseless(properties));
+      }
+    } catch (UnicodeProperties.UnsupportedUnicodeVersionException e) {
+      assertTrue("Version '6.0' not supported: " + e, false);
+    }
+  }
 }
@@ -19,21 +19,37 @@
  * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
 package de.jflex.plugin.maven;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Resource;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
 
+import jflex.GeneratorContext;
+import jflex.GeneratorOptions;
 import jflex.Main;
+import jflex.Manifest;
 import jflex.Options;
 
 /**
@@ -88,6 +104,18 @@ public class JFlexMojo extends AbstractMojo {
 	 */
 	private int staleMillis;
 
+	/**
+	 * Whether to decide by content instead of modification dates if a
+	 * scanner needs to be generated again. A manifest next to each
+	 * generated file (with suffix <code>.manifest</code>) records content
+	 * hashes of the grammar file, all files it includes, the skeleton and
+	 * the profile, together with the JFlex version and the options. Output
+	 * files whose content did not change are not rewritten.
+	 * 
+	 * @parameter expression="${jflex.incremental}" default-value="false"
+	 */
+	private boolean incremental;
+
 	/**
 	 * Whether source code generation should be verbose.
 	 * 
@@ -119,7 +147,7 @@ public class JFlexMojo extends AbstractMojo {
 
 	/**
 	 * The generation method to use for the scanner. Valid values are
-	 * <code>switch</code>, <code>table</code> and <code>pack</code>.
+	 * <code>switch</code>, <code>table</code>, <code>pack</code> and <code>comb</code>.
 	 * Please see the <a href="http://jflex.de/manual.html#CodeGeneration">JFlex
 	 * manual</a> for more details about the various methods.
 	 * 
@@ -127,6 +155,22 @@ public class JFlexMojo extends AbstractMojo {
 	 */
 	private String generationMethod = "pack"; // NOPMD
 
+	/**
+	 * A flag whether to generate scanners that count their transitions for a
+	 * profile (see <code>profile</code>).
+	 * 
+	 * @parameter default-value="false"
+	 */
+	private boolean instrument;
+
+	/**
+	 * Transition profile, written by an instrumented scanner, to order the
+	 * DFA states by.
+	 * 
+	 * @parameter
+	 */
+	private File profile;
+
 	/**
 	 * A flag whether to perform the DFA minimization step during scanner
 	 * generation.
@@ -143,6 +187,40 @@ public class JFlexMojo extends AbstractMojo {
 	 */
 	private boolean backup = true; // NOPMD
 
+	/**
+	 * Abort the generation of a grammar file if its DFA gets more states
+	 * than this, and report the rules that cause the growth. 0 for no limit.
+	 * 
+	 * @parameter default-value="0"
+	 */
+	private int maxStates;
+
+	/**
+	 * Abort the generation of a grammar file if its DFA is estimated to need
+	 * more megabytes than this. 0 for no limit.
+	 * 
+	 * @parameter default-value="0"
+	 */
+	private int maxMemory;
+
+	/**
+	 * Abort the generation of a grammar file if its DFA construction takes
+	 * more seconds than this. 0 for no limit.
+	 * 
+	 * @parameter default-value="0"
+	 */
+	private int maxTime;
+
+	/**
+	 * The number of grammar files to generate concurrently. Each file is
+	 * generated in its own generator context, and its messages are logged
+	 * together after it is done, in the order of the files. Grammar files
+	 * that generate the same output file are processed one after the other.
+	 * 
+	 * @parameter expression="${jflex.parallelism}" default-value="1"
+	 */
+	private int parallelism = 1;
+
 	/**
 	 * Generate java parsers from lexer definition files.
 	 * 
@@ -157,6 +235,13 @@ public class JFlexMojo extends AbstractMojo {
 		// the whole point of this plugin compared to running the ant plugin
 		project.addCompileSourceRoot(outputDirectory.getPath());
 
+		// scanners generated with %tableresource read their tables from
+		// the class path, so the .bin files go to the classes directory
+		Resource tables = new Resource();
+		tables.setDirectory(outputDirectory.getPath());
+		tables.addInclude("**/*.bin");
+		project.addResource(tables);
+
 		List<File> filesIt;
 		if (lexDefinitions != null) {
 			// use arguments provided in the plugin configuration
@@ -174,13 +259,16 @@ public class JFlexMojo extends AbstractMojo {
 			}
 		}
 		// process all lexDefinitions
+		Map<File, Generation> generations = new LinkedHashMap<File, Generation>();
 		Iterator<File> fileIterator = filesIt.iterator();
 		while (fileIterator.hasNext()) {
 			File lexDefinition = fileIterator.next();
 			lexDefinition = getAbsolutePath(lexDefinition);
 
-			parseLexDefinition(lexDefinition);
+			parseLexDefinition(lexDefinition, generations);
 		}
+
+		generate(generations.values());
 	}
 
 	/**
@@ -191,12 +279,15 @@ public class JFlexMojo extends AbstractMojo {
 	 * 
 	 * @param lexDefinition
 	 *            Lexer definiton file or directory to process.
+	 * @param generations
+	 *            the generations to run, by output file
 	 * @throws MojoFailureException
 	 *             if the file is not found.
 	 * @throws MojoExecutionException
 	 */
 	@SuppressWarnings("unchecked")
-	private void parseLexDefinition(File lexDefinition)
+	private void parseLexDefinition(File lexDefinition,
+			Map<File, Generation> generations)
 			throws MojoFailureException, MojoExecutionException {
 		assert lexDefinition.isAbsolute() : lexDefinition;
 
@@ -205,19 +296,23 @@ public class JFlexMojo extends AbstractMojo {
 			String[] extensions = { "jflex", "jlex", "lex", "flex" };
 			getLog().debug("Processing lexer files found in "
 					+ lexDefinition);
-			Iterator<File> fileIterator = FileUtils.iterateFiles(lexDefinition,
-					extensions, true);
+			// sorted, so that the order of the files does not depend on
+			// the file system
+			List<File> lexFiles = new ArrayList<File>(FileUtils.listFiles(
+					lexDefinition, extensions, true));
+			Collections.sort(lexFiles);
+			Iterator<File> fileIterator = lexFiles.iterator();
 			while (fileIterator.hasNext()) {
 				File lexFile = fileIterator.next();
-				parseLexFile(lexFile);
+				parseLexFile(lexFile, generations);
 			}
 		} else {
-			parseLexFile(lexDefinition);
+			parseLexFile(lexDefinition, generations);
 		}
 	}
 
-	private void parseLexFile(File lexFile) throws MojoFailureException,
-			MojoExecutionException {
+	private void parseLexFile(File lexFile, Map<File, Generation> generations)
+			throws MojoFailureException, MojoExecutionException {
 		assert lexFile.isAbsolute() : lexFile;
 
 		getLog().debug("Generationg Java code from " + lexFile.getName());
@@ -238,44 +333,219 @@ public class JFlexMojo extends AbstractMojo {
 		File generatedFile = new File(outputDirectory,
 				classInfo.getOutputFilename());
 
+		GeneratorContext context = createContext(generatedFile);
+		Manifest manifest = null;
+
 		/* Generate only if needs to */
-		if (lexFile.lastModified() - generatedFile.lastModified() <= this.staleMillis) {
-			getLog().info("  " + generatedFile.getName() + " is up to date.");
-			getLog().debug("StaleMillis = "+staleMillis+"ms");
-			return;
+		if (incremental) {
+			manifest = new Manifest(Manifest.fileFor(generatedFile), lexFile,
+					context);
+			if (manifest.isUpToDate()) {
+				getLog().info("  " + generatedFile.getName() + " is up to date.");
+				return;
+			}
+		} else {
+			long lastModified = lexFile.lastModified();
+			if (profile != null) {
+				lastModified = Math.max(lastModified, profile.lastModified());
+			}
+			if (lastModified - generatedFile.lastModified() <= this.staleMillis) {
+				getLog().info("  " + generatedFile.getName() + " is up to date.");
+				getLog().debug("StaleMillis = "+staleMillis+"ms");
+				return;
+			}
+		}
+
+		Generation generation = generations.get(generatedFile);
+		if (generation == null) {
+			generation = new Generation(generatedFile);
+			generations.put(generatedFile, generation);
 		}
+		generation.add(lexFile, context, manifest);
+	}
+
+	/**
+	 * Creates the generator context for an output file.
+	 * 
+	 * @param generatedFile
+	 *            the file to generate
+	 * @return the context
+	 * @throws MojoExecutionException
+	 *             in case of illegal options or skeleton
+	 */
+	private GeneratorContext createContext(File generatedFile)
+			throws MojoExecutionException {
+		GeneratorOptions options = createOptions(generatedFile);
+		options.keep_unchanged = incremental;
 
-		/*
-		 * set options. Very strange that JFlex expects this in a static way.
-		 */
-		Options.setDefaults();
-		Options.setDir(generatedFile.getParentFile());
-		Options.dump = verbose;
-		Options.verbose = verbose;
-		Options.dot = dot;
+		GeneratorContext context = new GeneratorContext(options);
 		if (skeleton != null) {
-			Options.setSkeleton(skeleton);
+			try {
+				context.setSkeleton(skeleton);
+			} catch (Exception e) {
+				throw new MojoExecutionException("Cannot read skeleton "
+						+ skeleton);
+			}
 		}
-		Options.jlex = jlex;
+		return context;
+	}
 
-		Options.no_minimize = !minimize; // NOPMD
-		Options.no_backup = !backup;     // NOPMD
+	/**
+	 * Creates the generator options for an output file.
+	 * 
+	 * @param generatedFile
+	 *            the file to generate
+	 * @return the options
+	 * @throws MojoExecutionException
+	 *             in case of an illegal generation method
+	 */
+	private GeneratorOptions createOptions(File generatedFile)
+			throws MojoExecutionException {
+		GeneratorOptions options = new GeneratorOptions();
+		try {
+			options.setDir(generatedFile.getParentFile());
+		} catch (Exception e) {
+			throw new MojoExecutionException(e.getMessage());
+		}
+		options.dump = verbose;
+		options.verbose = verbose;
+		options.dot = dot;
+		options.jlex = jlex;
+		options.instrument = instrument;
+		options.profile = profile;
+
+		options.no_minimize = !minimize; // NOPMD
+		options.no_backup = !backup;     // NOPMD
+		options.maxStates = maxStates;
+		options.maxMemory = maxMemory;
+		options.maxTime = maxTime;
 		if ("switch".equals(generationMethod)) {
-			Options.gen_method = Options.SWITCH;
+			options.gen_method = Options.SWITCH;
 		} else if ("table".equals(generationMethod)) {
-			Options.gen_method = Options.TABLE;
+			options.gen_method = Options.TABLE;
 		} else if ("pack".equals(generationMethod)) {
-			Options.gen_method = Options.PACK;
+			options.gen_method = Options.PACK;
+		} else if ("comb".equals(generationMethod)) {
+			options.gen_method = Options.COMB;
 		} else {
 			throw new MojoExecutionException("Illegal generation method: "
 					+ generationMethod);
 		}
+		return options;
+	}
 
+	/**
+	 * Runs generations, concurrently if <code>parallelism</code> is greater
+	 * than one, and logs their messages in order.
+	 * 
+	 * @param generations
+	 *            the generations to run
+	 * @throws MojoExecutionException
+	 *             for the first generation in order that failed
+	 */
+	private void generate(Collection<Generation> generations)
+			throws MojoExecutionException {
+		List<Generation> pending = new ArrayList<Generation>(generations);
+
+		if (parallelism <= 1 || pending.size() <= 1) {
+			for (Generation generation : pending) {
+				generation.call();
+				report(generation);
+			}
+			return;
+		}
+
+		getLog().debug("Generating " + pending.size() + " scanners with "
+				+ parallelism + " threads");
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				parallelism, pending.size()));
 		try {
-			Main.generate(lexFile);
-			getLog().info("  generated " + generatedFile);
-		} catch (Exception e) {
-			throw new MojoExecutionException(e.getMessage());
+			List<Future<Generation>> results = new ArrayList<Future<Generation>>();
+			for (Generation generation : pending) {
+				results.add(executor.submit(generation));
+			}
+			for (Future<Generation> result : results) {
+				report(result.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted");
+		} catch (ExecutionException e) {
+			throw new MojoExecutionException(e.getCause().toString());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Logs the messages of a generation.
+	 * 
+	 * @throws MojoExecutionException
+	 *             if the generation failed
+	 */
+	private void report(Generation generation) throws MojoExecutionException {
+		try {
+			BufferedReader messages = new BufferedReader(new StringReader(
+					generation.messages.toString()));
+			String line;
+			while ((line = messages.readLine()) != null) {
+				if (line.length() == 0) {
+					continue;
+				}
+				if (generation.failure != null) {
+					getLog().error(line);
+				} else {
+					getLog().info(line);
+				}
+			}
+		} catch (IOException e) {
+			// cannot happen for a StringReader
+		}
+
+		if (generation.failure != null) {
+			throw new MojoExecutionException(generation.failure.getMessage());
+		}
+		getLog().info("  generated " + generation.generatedFile);
+	}
+
+	/**
+	 * The generation of one output file from one or more grammar files, in
+	 * a generator context of its own.
+	 */
+	private static final class Generation implements Callable<Generation> {
+		final File generatedFile;
+		final List<File> lexFiles = new ArrayList<File>();
+		final List<GeneratorContext> contexts = new ArrayList<GeneratorContext>();
+		final List<Manifest> manifests = new ArrayList<Manifest>();
+		final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		Exception failure;
+
+		Generation(File generatedFile) {
+			this.generatedFile = generatedFile;
+		}
+
+		void add(File lexFile, GeneratorContext context, Manifest manifest) {
+			lexFiles.add(lexFile);
+			contexts.add(context);
+			manifests.add(manifest);
+		}
+
+		public Generation call() {
+			for (int i = 0; i < lexFiles.size(); i++) {
+				try {
+					GeneratorContext context = contexts.get(i);
+					context.setOutputStream(messages);
+					Main.generate(lexFiles.get(i), context);
+					if (manifests.get(i) != null) {
+						manifests.get(i).write();
+					}
+				} catch (Exception e) {
+					failure = e;
+					break;
+				}
+			}
+			return this;
 		}
 	}
 
@@ -19,7 +19,11 @@
  * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
 package de.jflex.plugin.maven;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.maven.plugin.testing.AbstractMojoTestCase;
 import org.apache.maven.plugin.testing.stubs.MavenProjectStub;
@@ -130,4 +134,73 @@ public class JFlexMojoTest extends AbstractMojoTestCase {
 		assertTrue("produced file is a file: " + produced, produced.isFile());
 	}
 
+	/**
+	 * Runs the parallel test case with the given parallelism into a sub
+	 * directory of its output directory.
+	 * 
+	 * @param name
+	 *            The name of the sub directory.
+	 * @param parallelism
+	 *            The number of generations to run at the same time.
+	 * @return The directory of the generated package.
+	 * @throws Exception
+	 */
+	protected File generate(String name, int parallelism) throws Exception {
+		JFlexMojo mojo = newMojo("parallel-test");
+		File outDir = new File(
+				(File) getVariableValueFromObject(mojo, "outputDirectory"), name);
+		setVariableValueToObject(mojo, "outputDirectory", outDir);
+		setVariableValueToObject(mojo, "parallelism", parallelism);
+
+		// older output files would be up to date
+		File packageDir = getExpectedOutputFile(mojo).getParentFile();
+		File[] old = packageDir.listFiles();
+		if (old != null) {
+			for (File file : old) {
+				file.delete();
+			}
+		}
+
+		mojo.execute();
+		return getExpectedOutputFile(mojo).getParentFile();
+	}
+
+	/**
+	 * Reads the contents of a file.
+	 * 
+	 * @param file
+	 *            The file to read.
+	 * @return The contents.
+	 * @throws IOException
+	 */
+	protected static byte[] read(File file) throws IOException {
+		byte[] content = new byte[(int) file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(content);
+		} finally {
+			in.close();
+		}
+		return content;
+	}
+
+	/**
+	 * Tests configuration with several input files generated in parallel:
+	 * the output is the same as with sequential generation.
+	 * 
+	 * @throws Exception
+	 */
+	public void testParallel() throws Exception {
+		File sequential = generate("sequential", 1);
+		File parallel = generate("parallel", 4);
+
+		String[] names = { "JAMWikiPreProcessor.java", "Words.java" };
+		for (String name : names) {
+			File produced = new File(parallel, name);
+			assertTrue("produced file is a file: " + produced, produced.isFile());
+			assertTrue("same as sequential output: " + produced, Arrays.equals(
+					read(new File(sequential, name)), read(produced)));
+		}
+	}
+
 }
@@ -0,0 +1,38 @@
+jflex-profile -825684866 19 14
+0 1 400
+0 3 200
+0 6 200
+0 8 400
+0 9 400
+0 11 1800
+0 12 200
+2 2 200
+2 8 200
+3 3 600
+3 4 200
+3 8 1800
+3 11 600
+4 4 200
+5 7 200
+6 9 200
+6 10 200
+6 11 200
+7 1 400
+7 3 200
+7 6 200
+7 8 399
+7 9 400
+7 12 200
+8 13 200
+9 11 600
+10 5 200
+11 1 200
+12 9 200
+13 3 200
+13 8 600
+13 11 400
+13 13 200
+14 3 400
+15 4 200
+16 11 200
+17 12 200